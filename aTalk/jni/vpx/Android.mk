@@ -17,7 +17,6 @@ LOCAL_LDLIBS += -Wl,--no-warn-shared-textrel
 LOCAL_STATIC_LIBRARIES := vpx_static
 LOCAL_SRC_FILES := \
  org_atalk_impl_neomedia_codec_video_VPX.c
-# org_atalk_impl_neomedia_recording_WebmWriter.cc
 LOCAL_C_INCLUDES := $(LOCAL_PATH)/include
 LOCAL_CFLAGS = -DFIXED_POINT -DUSE_KISS_FFT -DEXPORT="" -UHAVE_CONFIG_H -Wdeprecated-declarations
 
@@ -59,6 +59,11 @@ public class ConfigurationActivator implements BundleActivator
 	public void stop(BundleContext bundleContext)
 			throws Exception
 	{
+		ConfigurationService configurationService = LibJitsi.getConfigurationService();
+
+		// write the property changes still pending in the SQLiteConfigurationStore
+		if (configurationService != null)
+			configurationService.storeConfiguration();
 	}
 
 	/**
@@ -1,6 +1,6 @@
 /*
  * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
- * 
+ *
  * Distributable under LGPL license. See terms of license at gnu.org.
  */
 package net.java.sip.communicator.impl.configuration;
@@ -22,8 +22,16 @@ import java.util.*;
 /**
  * Implements a <tt>ConfigurationStore</tt> which stores property name-value associations in an
  * SQLite database.
+ * <p>
+ * All the properties are loaded at once into a snapshot which is replaced on every change, so
+ * that reads never wait on a lock nor query the database, even for the properties which do not
+ * exist. The changes are written to the database in a single transaction {@link #WRITE_DELAY} ms
+ * after the last of them, and at most {@link #MAX_WRITE_DELAY} ms after the first of them, or
+ * on {@link #flush()}, e.g. when an account is stored. The property names are indexed in {@link PropertyNameTrie}s.
+ * The runtime <tt>HashTable</tt> inherited from <tt>HashtableConfigurationStore</tt> is not used.
  *
  * @author Lyubomir Marinov
+ * @author Eng Chong Meng
  */
 public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 {
@@ -36,12 +44,73 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	public static final String COLUMN_NAME = "Name";
 	public static final String COLUMN_VALUE = "Value";
 
+	/**
+	 * The time in ms without further changes after which the changes are written.
+	 */
+	private static final long WRITE_DELAY = 500;
+
+	/**
+	 * The maximum time in ms a change waits before it is written.
+	 */
+	private static final long MAX_WRITE_DELAY = 2000;
+
+	/**
+	 * The instance created by the <tt>ConfigurationService</tt> or <tt>null</tt> if none.
+	 */
+	private static volatile SQLiteConfigurationStore instance;
+
 	/**
 	 * aTalk backend SQLite database
 	 */
 	private final SQLiteOpenHelper openHelper;
 	private static SQLiteDatabase mDB = null;
 
+	/**
+	 * The values of all the properties by name, <tt>null</tt> until loaded. The map is never
+	 * modified but replaced with a modified copy.
+	 */
+	private volatile Map<String, Object> snapshot;
+
+	/**
+	 * The names of table {@link #TABLE_NAME}.
+	 */
+	private PropertyNameTrie propertyNames;
+
+	/**
+	 * The names of table {@link AccountID#TBL_PROPERTIES}, without their account UUID.
+	 */
+	private PropertyNameTrie accountPropertyNames;
+
+	/**
+	 * The changes not written yet by the name of their property, in the order they were made.
+	 */
+	private final Map<String, Write> pendingWrites = new LinkedHashMap<>();
+
+	/**
+	 * The number of changes made so far.
+	 */
+	private long writeCount;
+
+	/**
+	 * The time in ms the first of {@link #pendingWrites} was made.
+	 */
+	private long firstPendingWriteTime;
+
+	/**
+	 * The timer which writes {@link #pendingWrites}.
+	 */
+	private Timer writeTimer;
+
+	/**
+	 * The scheduled write of {@link #pendingWrites} or <tt>null</tt>.
+	 */
+	private TimerTask writeTask;
+
+	/**
+	 * The lock which keeps the batches of changes written in order.
+	 */
+	private final Object writeLock = new Object();
+
 	/**
 	 * Initializes a new <tt>SQLiteConfigurationStore</tt> instance.
 	 */
@@ -50,14 +119,59 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 		Context context = ServiceUtils.getService(ConfigurationActivator.getBundleContext(),
 				OSGiService.class);
 		openHelper = DatabaseBackend.getInstance(context);
+		instance = this;
+	}
+
+	/**
+	 * Gets the instance created by the <tt>ConfigurationService</tt>, through which the accounts
+	 * read their properties and make sure the changes of their properties are written.
+	 *
+	 * @return the instance created by the <tt>ConfigurationService</tt> or <tt>null</tt> if none
+	 */
+	public static SQLiteConfigurationStore getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Gets the properties of an account from table {@link AccountID#TBL_PROPERTIES}, including the
+	 * changes which are not written yet.
+	 *
+	 * @param accountUuid
+	 * 		the UUID of the account
+	 * @return the values of the properties of the account by name, without the account UUID
+	 */
+	public Map<String, String> getAccountProperties(String accountUuid)
+	{
+		Map<String, String> accountProperties = new HashMap<>();
+		String prefix = accountUuid + ".";
+
+		for (Map.Entry<String, Object> entry : getSnapshot().entrySet()) {
+			String name = entry.getKey();
+
+			if (name.startsWith(prefix)) {
+				accountProperties.put(name.substring(prefix.length()),
+						String.valueOf(entry.getValue()));
+			}
+		}
+		return accountProperties;
+	}
+
+	/**
+	 * Writes the changes made so far to the database now rather than after a delay, e.g. because
+	 * an account has been created or modified and the process may be killed any time.
+	 */
+	public void flush()
+	{
+		storePendingWrites();
 	}
 
 	/**
 	 * Overrides {@link HashtableConfigurationStore#getProperty(String)}. If this
 	 * <tt>ConfigurationStore</tt> contains a value associated with the specified property name,
 	 * returns it. Otherwise, searches for a system property with the specified name and returns
-	 * its value. If property name starts with "acc", the look up the value in table
-	 * AccountID.TBL_PROPERTIES for the specified accountUuid, otherwise use table TABLE_NAME
+	 * its value. If property name starts with "acc", the value is the one in table
+	 * AccountID.TBL_PROPERTIES for the specified accountUuid, otherwise the one in table TABLE_NAME
 	 *
 	 * @param name
 	 * 		the name of the property to get the value of
@@ -70,41 +184,12 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	@Override
 	public Object getProperty(String name)
 	{
-		Cursor cursor = null;
-		Object value = properties.get(name);
-		if (value == null) {
-			String[] columns = {COLUMN_VALUE};
-			synchronized (openHelper) {
-				mDB = openHelper.getReadableDatabase();
-				if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
-					int idx = name.indexOf(".");
-					if (idx == -1) {
-						value = name;  // just return the accountUuid
-					}
-					else {
-						String[] args = {name.substring(0, idx), name.substring(idx + 1)};
-						cursor = mDB.query(AccountID.TBL_PROPERTIES, columns,
-								AccountID.ACCOUNT_UUID + "=? AND " + COLUMN_NAME + "=?",
-								args, null, null, null, "1");
-					}
-				}
-				else {
-					cursor = mDB.query(TABLE_NAME, columns,
-							COLUMN_NAME + "=?", new String[]{name}, null, null, null, "1");
-				}
-				if (cursor != null) {
-					try {
-						if ((cursor.getCount() == 1) && cursor.moveToFirst())
-							value = cursor.getString(0);
-					} finally {
-						cursor.close();
-					}
-				}
-			}
-			if (value == null)
-				value = System.getProperty(name);
-		}
-		return value;
+		// just return the accountUuid
+		if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX) && (name.indexOf('.') == -1))
+			return name;
+
+		Object value = getSnapshot().get(name);
+		return (value != null) ? value : System.getProperty(name);
 	}
 
 	/**
@@ -119,29 +204,76 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	@Override
 	public String[] getPropertyNames(String name)
 	{
-		List<String> propertyNames = new ArrayList<>();
-		String tableName;
+		getSnapshot();
+		synchronized (this) {
+			List<String> names = getPropertyNameTrie(name).getNames();
+			return names.toArray(new String[names.size()]);
+		}
+	}
 
-		synchronized (openHelper) {
-			mDB = openHelper.getReadableDatabase();
-			if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
-				tableName = AccountID.TBL_PROPERTIES;
-			}
-			else {
-				tableName = TABLE_NAME;
-			}
+	/**
+	 * Implements {@link DatabaseConfigurationStore#getPropertyNamesByPrefix(String, boolean)}.
+	 *
+	 * @param prefix
+	 * 		the prefix of the property names, i.e. everything before their last dot
+	 * @param exactPrefixMatch
+	 * 		<tt>true</tt> to only get the names whose prefix is <tt>prefix</tt>; <tt>false</tt> to
+	 * 		also get the names whose prefix starts with <tt>prefix</tt>
+	 * @return the property names with the specified prefix
+	 */
+	@Override
+	public List<String> getPropertyNamesByPrefix(String prefix, boolean exactPrefixMatch)
+	{
+		getSnapshot();
+		synchronized (this) {
+			return getPropertyNameTrie(prefix).getNamesByPrefix(prefix, exactPrefixMatch);
+		}
+	}
 
-			Cursor cursor = mDB.query(tableName, new String[]{COLUMN_NAME},
-					null, null, null, null, COLUMN_NAME + " ASC");
+	/**
+	 * Implements {@link DatabaseConfigurationStore#getPropertyNamesBySuffix(String)}.
+	 *
+	 * @param suffix
+	 * 		the suffix of the property names, i.e. everything after their last dot
+	 * @return the property names with the specified suffix
+	 */
+	@Override
+	public List<String> getPropertyNamesBySuffix(String suffix)
+	{
+		getSnapshot();
+		synchronized (this) {
+			return getPropertyNameTrie(suffix).getNamesBySuffix(suffix);
+		}
+	}
+
+	/**
+	 * Gets the names of the table which {@link #getPropertyNames(String)} searches for a name.
+	 */
+	private PropertyNameTrie getPropertyNameTrie(String name)
+	{
+		return name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)
+				? accountPropertyNames : propertyNames;
+	}
+
+	/**
+	 * Gets the values of all the properties, loading them on first use.
+	 *
+	 * @return the values of all the properties by name
+	 */
+	private Map<String, Object> getSnapshot()
+	{
+		Map<String, Object> snapshot = this.snapshot;
+
+		if (snapshot == null) {
 			try {
-				while (cursor.moveToNext()) {
-					propertyNames.add(cursor.getString(0));
-				}
-			} finally {
-				cursor.close();
+				reloadConfiguration();
 			}
+			catch (IOException e) {
+				// reloadConfiguration does not throw it
+			}
+			snapshot = this.snapshot;
 		}
-		return propertyNames.toArray(new String[propertyNames.size()]);
+		return snapshot;
 	}
 
 	/**
@@ -152,11 +284,77 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	 * @throws IOException
 	 * 		if there is an input error while reading from the underlying database (storage)
 	 */
-
 	protected void reloadConfiguration()
 			throws IOException
 	{
-		// TODO Auto-generated method stub
+		while (true) {
+			long count;
+
+			storePendingWrites();
+			synchronized (this) {
+				count = writeCount;
+			}
+
+			Map<String, Object> snapshot = new HashMap<>();
+			PropertyNameTrie propertyNames = new PropertyNameTrie();
+			PropertyNameTrie accountPropertyNames = new PropertyNameTrie();
+
+			synchronized (openHelper) {
+				mDB = openHelper.getReadableDatabase();
+
+				String[] columns = {COLUMN_NAME, COLUMN_VALUE};
+				Cursor cursor = mDB.query(TABLE_NAME, columns, null, null, null, null, null);
+				try {
+					while (cursor.moveToNext()) {
+						String name = cursor.getString(0);
+
+						propertyNames.add(name);
+						// such a name is looked up in AccountID.TBL_PROPERTIES instead
+						if (!name.startsWith(AccountID.ACCOUNT_UUID_PREFIX))
+							snapshot.put(name, cursor.getString(1));
+					}
+				} finally {
+					cursor.close();
+				}
+
+				columns = new String[]{AccountID.ACCOUNT_UUID, COLUMN_NAME, COLUMN_VALUE};
+				cursor = mDB.query(AccountID.TBL_PROPERTIES, columns, null, null, null, null, null);
+				try {
+					while (cursor.moveToNext()) {
+						String name = cursor.getString(1);
+
+						accountPropertyNames.add(name);
+						snapshot.put(cursor.getString(0) + "." + name, cursor.getString(2));
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+
+			// Reload again should a change be made meanwhile, the loaded values may not have it.
+			synchronized (this) {
+				if (count == writeCount) {
+					this.snapshot = snapshot;
+					this.propertyNames = propertyNames;
+					this.accountPropertyNames = accountPropertyNames;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Overrides {@link DatabaseConfigurationStore#storeConfiguration()}. Writes the changes made
+	 * so far to the database.
+	 *
+	 * @throws IOException
+	 * 		never; a change which fails to be written is logged
+	 */
+	@Override
+	protected void storeConfiguration()
+			throws IOException
+	{
+		flush();
 	}
 
 	/**
@@ -172,26 +370,54 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	 */
 	public void removeProperty(String name)
 	{
-		super.removeProperty(name);
-		synchronized (openHelper) {
-			mDB = openHelper.getWritableDatabase();
-			if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
-				int idx = name.indexOf(".");
-				// remove user account if only accountUuid is specified
-				if (idx == -1) {
-					String[] args = {name};
-					mDB.delete(AccountID.TABLE_NAME, AccountID.ACCOUNT_UUID + "=?", args);
-				}
-				// Otherwise remove the accountProperty from the AccountID.TBL_PROPERTIES
-				else {
-					String[] args = {name.substring(0, idx), name.substring(idx + 1)};
-					mDB.delete(AccountID.TBL_PROPERTIES,
-							AccountID.ACCOUNT_UUID + "=? AND " + COLUMN_NAME + "=?", args);
+		getSnapshot();
+
+		Write write;
+		if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
+			int idx = name.indexOf(".");
+			// remove user account if only accountUuid is specified
+			if (idx == -1) {
+				String[] args = {name};
+				write = new Write(AccountID.TABLE_NAME, null, AccountID.ACCOUNT_UUID + "=?", args);
+			}
+			// Otherwise remove the accountProperty from the AccountID.TBL_PROPERTIES
+			else {
+				String[] args = {name.substring(0, idx), name.substring(idx + 1)};
+				write = new Write(AccountID.TBL_PROPERTIES, null,
+						AccountID.ACCOUNT_UUID + "=? AND " + COLUMN_NAME + "=?", args);
+			}
+		}
+		else {
+			write = new Write(TABLE_NAME, null, COLUMN_NAME + "=?", new String[]{name});
+		}
+
+		synchronized (this) {
+			Map<String, Object> snapshot = new HashMap<>(this.snapshot);
+
+			if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX) && (name.indexOf('.') == -1)) {
+				// the properties of the account are deleted along with it
+				String prefix = name + ".";
+				Iterator<String> names = snapshot.keySet().iterator();
+
+				while (names.hasNext()) {
+					String accountProperty = names.next();
+
+					if (accountProperty.startsWith(prefix)) {
+						names.remove();
+						accountPropertyNames.remove(accountProperty.substring(prefix.length()));
+					}
 				}
 			}
+			else if (snapshot.containsKey(name)) {
+				snapshot.remove(name);
+				removePropertyName(name);
+			}
 			else {
-				mDB.delete(TABLE_NAME, COLUMN_NAME + "=?", new String[]{name});
+				// the database does not have it either
+				return;
 			}
+			this.snapshot = snapshot;
+			queue(name, write);
 		}
 		// logger.warn("### Remove property from table: " + name);
 	}
@@ -210,28 +436,173 @@ public class SQLiteConfigurationStore extends DatabaseConfigurationStore
 	@Override
 	public void setNonSystemProperty(String name, Object value)
 	{
-		synchronized (openHelper) {
-			SQLiteDatabase mDB = openHelper.getWritableDatabase();
-			String tableName = TABLE_NAME;
+		getSnapshot();
+
+		String tableName = TABLE_NAME;
+		ContentValues contentValues = new ContentValues();
+		contentValues.put(COLUMN_VALUE, value.toString());
 
-			ContentValues contentValues = new ContentValues();
-			contentValues.put(COLUMN_VALUE, value.toString());
+		if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
+			int idx = name.indexOf(".");
+			contentValues.put(AccountID.ACCOUNT_UUID, name.substring(0, idx));
+			contentValues.put(COLUMN_NAME, name.substring(idx + 1));
+			tableName = AccountID.TBL_PROPERTIES;
+		}
+		else {
+			contentValues.put(COLUMN_NAME, name);
+		}
+
+		synchronized (this) {
+			Map<String, Object> snapshot = new HashMap<>(this.snapshot);
 
-			if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX)) {
-				int idx = name.indexOf(".");
-				contentValues.put(AccountID.ACCOUNT_UUID, name.substring(0, idx));
-				contentValues.put(COLUMN_NAME,  name.substring(idx + 1));
-				tableName = AccountID.TBL_PROPERTIES;
+			if (!snapshot.containsKey(name))
+				addPropertyName(name);
+			snapshot.put(name, value);
+			this.snapshot = snapshot;
+			queue(name, new Write(tableName, contentValues, null, null));
+		}
+		// logger.warn("### Set setNonSystem Property: " + name + ": " + value);
+	}
+
+	/**
+	 * Adds the name of a property to the trie of its table.
+	 */
+	private void addPropertyName(String name)
+	{
+		if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX))
+			accountPropertyNames.add(name.substring(name.indexOf('.') + 1));
+		else
+			propertyNames.add(name);
+	}
+
+	/**
+	 * Removes the name of a property from the trie of its table.
+	 */
+	private void removePropertyName(String name)
+	{
+		if (name.startsWith(AccountID.ACCOUNT_UUID_PREFIX))
+			accountPropertyNames.remove(name.substring(name.indexOf('.') + 1));
+		else
+			propertyNames.remove(name);
+	}
+
+	/**
+	 * Queues the write of a change, replacing any pending change of the same property, and
+	 * schedules the write of the pending changes. Must be called with the lock of this instance.
+	 *
+	 * @param name
+	 * 		the name of the changed property
+	 * @param write
+	 * 		the write of the change
+	 */
+	private void queue(String name, Write write)
+	{
+		long now = System.currentTimeMillis();
+
+		if (pendingWrites.isEmpty())
+			firstPendingWriteTime = now;
+		// keep the changes in order, e.g. a property set again after its account was removed
+		pendingWrites.remove(name);
+		pendingWrites.put(name, write);
+		writeCount++;
+
+		if (writeTimer == null)
+			writeTimer = new Timer(SQLiteConfigurationStore.class.getName(), true);
+		if (writeTask != null)
+			writeTask.cancel();
+		writeTask = new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				storePendingWrites();
 			}
-			else {
-				contentValues.put(COLUMN_NAME, name);
+		};
+		long delay = Math.min(WRITE_DELAY, firstPendingWriteTime + MAX_WRITE_DELAY - now);
+		writeTimer.schedule(writeTask, Math.max(delay, 0));
+	}
+
+	/**
+	 * Writes the pending changes in a single transaction, or one by one should the transaction
+	 * fail so that a single bad change does not lose the others.
+	 */
+	private void storePendingWrites()
+	{
+		synchronized (writeLock) {
+			List<Write> batch;
+
+			synchronized (this) {
+				if (writeTask != null) {
+					writeTask.cancel();
+					writeTask = null;
+				}
+				if (pendingWrites.isEmpty())
+					return;
+				batch = new ArrayList<>(pendingWrites.values());
+				pendingWrites.clear();
 			}
-			if (mDB.replace(tableName, null, contentValues) == -1)
-				throw new RuntimeException("Failed to set non-system property");
+
+			synchronized (openHelper) {
+				mDB = openHelper.getWritableDatabase();
+
+				boolean stored = false;
+				mDB.beginTransaction();
+				try {
+					for (Write write : batch)
+						write.store(mDB);
+					mDB.setTransactionSuccessful();
+					stored = true;
+				}
+				catch (RuntimeException e) {
+					logger.error("Failed to store " + batch.size() + " properties at once", e);
+				} finally {
+					mDB.endTransaction();
+				}
+
+				if (!stored) {
+					for (Write write : batch) {
+						try {
+							write.store(mDB);
+						}
+						catch (RuntimeException e) {
+							logger.error("Failed to store property change in " + write.table, e);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A pending change of a property: the replacement of its row or the deletion of its rows.
+	 */
+	private static class Write
+	{
+		final String table;
+
+		/**
+		 * The values of the replacing row, <tt>null</tt> for a deletion.
+		 */
+		final ContentValues values;
+
+		final String whereClause;
+
+		final String[] whereArgs;
+
+		Write(String table, ContentValues values, String whereClause, String[] whereArgs)
+		{
+			this.table = table;
+			this.values = values;
+			this.whereClause = whereClause;
+			this.whereArgs = whereArgs;
 		}
 
-		// cmeng to take care of properties and accountproperties ????
-		super.setNonSystemProperty(name, value);
-		// logger.warn("### Set setNonSystem Property: " + name + ": " + value);
+		void store(SQLiteDatabase db)
+		{
+			if (values == null)
+				db.delete(table, whereClause, whereArgs);
+			else if (db.replace(table, null, values) == -1)
+				throw new RuntimeException("Failed to set non-system property");
+		}
 	}
 }
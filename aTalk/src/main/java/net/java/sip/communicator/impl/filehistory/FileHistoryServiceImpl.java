@@ -395,6 +395,7 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
 		String[] args = {String.valueOf(ChatSession.MODE_MULTI)};
 		String[] columns = {ChatSession.SESSION_UUID};
 
+		DatabaseBackend.getMessageJournal().flush();
 		Cursor cursor = mDB.query(ChatSession.TABLE_NAME, columns,
 				ChatSession.MODE + "=?", args, null, null, null);
 		while (cursor.moveToNext()) {
@@ -430,6 +431,8 @@ public class FileHistoryServiceImpl implements FileHistoryService, ServiceListen
 	private void purgeLocallyStoredHistory(Contact contact, String sessionUuid)
 	{
 		String[] args = {sessionUuid};
+		// Queued messages of the session must not be stored after it is purged
+		DatabaseBackend.getMessageJournal().flush();
 		if (contact != null) {
 			mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
 		}
@@ -0,0 +1,296 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The records of a history stored as an append-only log of {@link LogSegment}s. Records are
+ * appended to the last segment until it reaches {@link #SEGMENT_SIZE}, then a new segment is
+ * started. Deleting a record only flags it, and a segment is removed as a whole once all of its
+ * records are deleted. Updating a record appends the new version and deletes the old one.
+ * <p>
+ * Writers are serialized on the <tt>HistoryLog</tt> instance. Readers take a snapshot of the
+ * segments and of their lengths with {@link #getSegments()} and {@link LogCursor}, so they never
+ * block writers and see no record appended after their query started.
+ *
+ * @author Eng Chong Meng
+ */
+class HistoryLog
+{
+	/**
+	 * The length in bytes after which a segment is sealed and a new one is started.
+	 */
+	static final long SEGMENT_SIZE = 1 << 20;
+
+	/**
+	 * The directory of the segment files.
+	 */
+	private final File directory;
+
+	/**
+	 * The segments in the order of their IDs, i.e. of their creation. Replaced rather than
+	 * modified so that readers can iterate over it without locking.
+	 */
+	private volatile LogSegment[] segments;
+
+	/**
+	 * Opens the log in a specific directory, creating the latter if necessary.
+	 *
+	 * @param directory
+	 *        the directory of the segment files
+	 * @throws IOException
+	 *         if the segments cannot be read
+	 */
+	HistoryLog(File directory)
+		throws IOException
+	{
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Failed to create history directory " + directory);
+
+		List<Long> ids = new ArrayList<>();
+		File[] files = directory.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				long id = LogSegment.getId(file);
+
+				if (id >= 0)
+					ids.add(id);
+			}
+		}
+		Collections.sort(ids);
+
+		LogSegment[] segments = new LogSegment[ids.size()];
+
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = LogSegment.open(directory, ids.get(i));
+		this.segments = segments;
+	}
+
+	/**
+	 * Gets a snapshot of the segments of this log.
+	 *
+	 * @return the segments of this log in the order of their creation
+	 */
+	LogSegment[] getSegments()
+	{
+		return segments;
+	}
+
+	/**
+	 * Gets the number of records of this log which are not deleted.
+	 *
+	 * @return the number of records of this log which are not deleted
+	 */
+	int countRecords()
+	{
+		int count = 0;
+
+		for (LogSegment segment : segments)
+			count += segment.getLiveCount();
+		return count;
+	}
+
+	/**
+	 * Appends a record to this log.
+	 *
+	 * @param names
+	 *        the property names of the record
+	 * @param values
+	 *        the property values of the record
+	 * @param timestamp
+	 *        the timestamp of the record
+	 * @return the appended record
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	synchronized LogSegment.Entry append(String[] names, String[] values, long timestamp)
+		throws IOException
+	{
+		return getAppendSegment().append(names, values, timestamp);
+	}
+
+	/**
+	 * Replaces a record of this log with a new version.
+	 *
+	 * @param entry
+	 *        the record to replace
+	 * @param names
+	 *        the property names of the new version
+	 * @param values
+	 *        the property values of the new version
+	 * @param timestamp
+	 *        the timestamp of the new version
+	 * @return the new version
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	synchronized LogSegment.Entry replace(LogSegment.Entry entry, String[] names, String[] values,
+		long timestamp)
+		throws IOException
+	{
+		// Append first so that a failure loses the update rather than the record.
+		LogSegment.Entry newEntry = append(names, values, timestamp);
+
+		delete(Collections.singletonList(entry));
+		return newEntry;
+	}
+
+	/**
+	 * Deletes records of this log.
+	 *
+	 * @param entries
+	 *        the records to delete
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	synchronized void delete(Collection<LogSegment.Entry> entries)
+		throws IOException
+	{
+		Set<LogSegment> modified = new HashSet<>();
+
+		for (LogSegment.Entry entry : entries) {
+			entry.segment.delete(entry);
+			modified.add(entry.segment);
+		}
+
+		List<LogSegment> removed = new ArrayList<>();
+
+		for (LogSegment segment : modified) {
+			if (segment.getLiveCount() == 0 && !segment.isOpen())
+				removed.add(segment);
+			else
+				segment.flushIndex();
+		}
+		if (!removed.isEmpty()) {
+			List<LogSegment> segments = new ArrayList<>(Arrays.asList(this.segments));
+
+			segments.removeAll(removed);
+			this.segments = segments.toArray(new LogSegment[segments.size()]);
+			for (LogSegment segment : removed)
+				segment.remove();
+		}
+	}
+
+	/**
+	 * Deletes the oldest records of this log so that it keeps at most a specific number of them.
+	 *
+	 * @param maxRecords
+	 *        the number of records to keep
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	synchronized void trim(int maxRecords)
+		throws IOException
+	{
+		int excess = countRecords() - maxRecords;
+
+		if (excess <= 0)
+			return;
+
+		List<LogSegment.Entry> oldest = new ArrayList<>(excess);
+		LogCursor cursor = new LogCursor(segments, true, Long.MIN_VALUE, Long.MAX_VALUE, null,
+			null);
+
+		while (oldest.size() < excess && cursor.hasNext())
+			oldest.add(cursor.next());
+		delete(oldest);
+	}
+
+	/**
+	 * Deletes the records of this log which were appended at or after a specific position, e.g. to
+	 * roll back an interrupted migration. A position is the ID of the segment which was appended
+	 * to at the time and its length then, or <tt>-1</tt> and <tt>0</tt> if the log was empty.
+	 *
+	 * @param segmentId
+	 *        the ID of the segment of the position
+	 * @param position
+	 *        the length of the segment at the time
+	 * @return the number of deleted records
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	synchronized int deleteFrom(long segmentId, long position)
+		throws IOException
+	{
+		List<LogSegment.Entry> entries = new ArrayList<>();
+
+		for (LogSegment segment : segments) {
+			if (segment.id < segmentId)
+				continue;
+
+			long limit = segment.getLength();
+			LogSegment.Reader reader = segment.newReader(limit);
+			long p = (segment.id == segmentId) ? position : 0;
+			LogSegment.Entry entry;
+
+			while (p < limit && (entry = reader.readForward(p)) != null) {
+				if (!entry.deleted)
+					entries.add(entry);
+				p += entry.size;
+			}
+		}
+		if (!entries.isEmpty())
+			delete(entries);
+		return entries.size();
+	}
+
+	/**
+	 * Seals the segment which is appended to so that its summary is persisted and the log opens
+	 * fast the next time.
+	 *
+	 * @throws IOException
+	 *         if writing the summary fails
+	 */
+	synchronized void close()
+		throws IOException
+	{
+		LogSegment[] segments = this.segments;
+
+		if (segments.length != 0)
+			segments[segments.length - 1].seal();
+	}
+
+	/**
+	 * Gets the segment to append a record to, sealing the last segment and starting a new one if
+	 * the former is full.
+	 *
+	 * @return the segment to append the record to
+	 * @throws IOException
+	 *         if sealing or creating a segment fails
+	 */
+	private LogSegment getAppendSegment()
+		throws IOException
+	{
+		LogSegment[] segments = this.segments;
+		LogSegment last = (segments.length == 0) ? null : segments[segments.length - 1];
+
+		if (last != null && last.getLength() < SEGMENT_SIZE) {
+			if (!last.isOpen())
+				last.reopen();
+			return last;
+		}
+		if (last != null)
+			last.seal();
+
+		// The IDs order the segments and name their files, so they must increase.
+		long id = System.currentTimeMillis();
+
+		if (last != null && id <= last.id)
+			id = last.id + 1;
+
+		LogSegment segment = LogSegment.create(directory, id);
+		LogSegment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+
+		newSegments[segments.length] = segment;
+		this.segments = newSegments;
+		return segment;
+	}
+}
@@ -68,6 +68,8 @@ public class HistoryServiceImpl implements HistoryService
 
 	private final boolean cacheEnabled;
 
+	private final boolean logStoreEnabled;
+
 	private SQLiteDatabase mDB;
 
 	/**
@@ -95,6 +97,8 @@ public class HistoryServiceImpl implements HistoryService
 		this.builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
 		this.cacheEnabled = getConfigurationService(bundleContext)
 				.getBoolean(CACHE_ENABLED_PROPERTY, false);
+		this.logStoreEnabled = getConfigurationService(bundleContext)
+				.getBoolean(LOG_STORE_ENABLED_PROPERTY, false);
 		this.fileAccessService = getFileAccessService(bundleContext);
 		mDB = DatabaseBackend.getWritableDB();
 	}
@@ -168,7 +172,7 @@ public class HistoryServiceImpl implements HistoryService
 			}
 			else {
 				File dir = this.createHistoryDirectories(id);
-				HistoryImpl history = new HistoryImpl(id, dir, recordStructure, this);
+				History history = createHistoryImpl(id, dir, recordStructure);
 
 				File dbDatFile = new File(dir, HistoryServiceImpl.DATA_FILE);
 				DBStructSerializer dbss = new DBStructSerializer(this);
@@ -181,6 +185,38 @@ public class HistoryServiceImpl implements HistoryService
 		return retVal;
 	}
 
+	/**
+	 * Creates the <tt>History</tt> implementation of a history directory: a <tt>LogHistoryImpl</tt>
+	 * if the log store is enabled, otherwise a <tt>HistoryImpl</tt> over its XML files.
+	 *
+	 * @param id
+	 * 		the identifier of the history
+	 * @param dir
+	 * 		the directory of the history
+	 * @param recordStructure
+	 * 		the structure of the records of the history
+	 * @return the <tt>History</tt> implementation
+	 */
+	History createHistoryImpl(HistoryID id, File dir, HistoryRecordStructure recordStructure)
+	{
+		if (logStoreEnabled)
+			return new LogHistoryImpl(id, dir, recordStructure, this);
+		else
+			return new HistoryImpl(id, dir, recordStructure, this);
+	}
+
+	/**
+	 * Closes a history which is no longer used, e.g. before its directory is removed or moved.
+	 *
+	 * @param history
+	 * 		the history to close or <tt>null</tt>
+	 */
+	private static void closeHistory(History history)
+	{
+		if (history instanceof LogHistoryImpl)
+			((LogHistoryImpl) history).close();
+	}
+
 	protected FileAccessService getFileAccessService()
 	{
 		return this.fileAccessService;
@@ -299,6 +335,15 @@ public class HistoryServiceImpl implements HistoryService
 	public void purgeLocallyStoredHistory(HistoryID id)
 			throws IOException
 	{
+		// close the histories stored in the directory before removing it
+		String[] subIds = id.getID();
+		synchronized (this.histories) {
+			for (Map.Entry<HistoryID, History> entry : histories.entrySet()) {
+				if (entry.getKey().equals(id) || isSubHistory(subIds, entry.getKey()))
+					closeHistory(entry.getValue());
+			}
+		}
+
 		// get the history directory corresponding the given id
 		File dir = this.createHistoryDirectories(id);
 		if (logger.isTraceEnabled())
@@ -328,6 +373,8 @@ public class HistoryServiceImpl implements HistoryService
 	public void purgeLocallyStoredHistory(Contact contact, String sessionUuid)
 	{
 		String[] args = {sessionUuid};
+		// Queued messages of the session must not be stored after it is purged
+		DatabaseBackend.getMessageJournal().flush();
 		if (contact != null) {
 			mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
 		}
@@ -341,6 +388,10 @@ public class HistoryServiceImpl implements HistoryService
 	 */
 	public void purgeLocallyCachedHistories()
 	{
+		synchronized (this.histories) {
+			for (History history : histories.values())
+				closeHistory(history);
+		}
 		histories.clear();
 	}
 
@@ -448,6 +499,8 @@ public class HistoryServiceImpl implements HistoryService
 		File oldDir = this.createHistoryDirectories(oldId);
 		File newDir = getDirForHistory(newId);
 
+		closeHistory(histories.get(oldId));
+
 		// make sure parent path is existing
 		newDir.getParentFile().mkdirs();
 
@@ -0,0 +1,154 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+/**
+ * A bloom filter over the character trigrams of the (lower-cased) property values of the records
+ * of a {@link LogSegment}. Keyword searches match substrings, so a segment can only contain a
+ * record which matches a keyword if it contains every trigram of the keyword; segments for which
+ * this is not the case are skipped without being read. Keywords shorter than a trigram cannot be
+ * filtered and are reported as possibly contained.
+ *
+ * @author Eng Chong Meng
+ */
+class KeywordBloomFilter
+{
+	/**
+	 * The size in bytes of the filter, a power of two. With three hashes per trigram, it keeps
+	 * the false positive rate of a keyword trigram below 10% for about 50000 distinct trigrams.
+	 */
+	static final int SIZE = 1 << 15;
+
+	/**
+	 * The number of bits set per trigram.
+	 */
+	private static final int HASH_COUNT = 3;
+
+	/**
+	 * The bits of the filter.
+	 */
+	private final byte[] bits;
+
+	/**
+	 * Initializes a new empty <tt>KeywordBloomFilter</tt>.
+	 */
+	KeywordBloomFilter()
+	{
+		this(new byte[SIZE]);
+	}
+
+	/**
+	 * Initializes a new <tt>KeywordBloomFilter</tt> with specific bits.
+	 *
+	 * @param bits
+	 *        the bits of the filter, {@link #SIZE} bytes
+	 */
+	KeywordBloomFilter(byte[] bits)
+	{
+		this.bits = bits;
+	}
+
+	/**
+	 * Gets the bits of this filter.
+	 *
+	 * @return the bits of this filter
+	 */
+	byte[] getBits()
+	{
+		return bits;
+	}
+
+	/**
+	 * Adds the trigrams of a text to this filter.
+	 *
+	 * @param text
+	 *        the text
+	 */
+	void add(String text)
+	{
+		for (int i = 0, end = text.length() - 2; i < end; i++)
+			set(hash(text, i));
+	}
+
+	/**
+	 * Determines whether this filter may contain a keyword, i.e. all of its trigrams.
+	 *
+	 * @param keyword
+	 *        the keyword
+	 * @return <tt>false</tt> if no text added to this filter contains <tt>keyword</tt>
+	 */
+	boolean mightContain(String keyword)
+	{
+		for (int i = 0, end = keyword.length() - 2; i < end; i++) {
+			if (!isSet(hash(keyword, i)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Hashes the lower-cased trigram of a text at a specific index.
+	 *
+	 * @param text
+	 *        the text
+	 * @param index
+	 *        the index of the first character of the trigram
+	 * @return the 64-bit hash of the trigram
+	 */
+	private static long hash(String text, int index)
+	{
+		long h = ((long) Character.toLowerCase(text.charAt(index)) << 32)
+				| (Character.toLowerCase(text.charAt(index + 1)) << 16)
+				| Character.toLowerCase(text.charAt(index + 2));
+
+		// The finalizer of MurmurHash3.
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Sets the bits of a hash.
+	 *
+	 * @param hash
+	 *        the hash
+	 */
+	private void set(long hash)
+	{
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = (h1 + i * h2) & (SIZE * 8 - 1);
+
+			bits[bit >>> 3] |= 1 << (bit & 7);
+		}
+	}
+
+	/**
+	 * Determines whether the bits of a hash are set.
+	 *
+	 * @param hash
+	 *        the hash
+	 * @return <tt>true</tt> if all bits of <tt>hash</tt> are set
+	 */
+	private boolean isSet(long hash)
+	{
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = (h1 + i * h2) & (SIZE * 8 - 1);
+
+			if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0)
+				return false;
+		}
+		return true;
+	}
+}
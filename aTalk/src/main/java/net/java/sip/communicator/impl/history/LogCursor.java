@@ -0,0 +1,325 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import java.util.*;
+
+/**
+ * Iterates lazily over the records of a {@link HistoryLog} which are not deleted, have a timestamp
+ * in a specific period and are accepted by a {@link Filter}, in the order of their timestamps
+ * (forward) or in the reverse order (backward). The segments are merged because their timestamp
+ * ranges may overlap, e.g. after a record has been inserted or updated. A segment is only read
+ * once the merge reaches its timestamp range, and it is skipped altogether if the range does not
+ * overlap the period or if its {@link KeywordBloomFilter} rules out the keywords. In a segment
+ * whose records are in timestamp order, reading starts at the sparse index entry closest to the
+ * start of the period; the records of other segments are sorted in memory.
+ *
+ * @author Eng Chong Meng
+ */
+class LogCursor
+	implements Iterator<LogSegment.Entry>
+{
+	/**
+	 * Decides which records a <tt>LogCursor</tt> returns.
+	 */
+	interface Filter
+	{
+		/**
+		 * Determines whether a record is to be returned.
+		 *
+		 * @param entry
+		 *        the record
+		 * @return <tt>true</tt> if <tt>entry</tt> is to be returned
+		 */
+		boolean accept(LogSegment.Entry entry);
+	}
+
+	/**
+	 * Whether the records are returned in the order of their timestamps.
+	 */
+	private final boolean forward;
+
+	/**
+	 * The start (inclusive) of the period of the timestamps of the returned records.
+	 */
+	private final long start;
+
+	/**
+	 * The end (exclusive) of the period of the timestamps of the returned records.
+	 */
+	private final long end;
+
+	/**
+	 * The filter of the returned records or <tt>null</tt>.
+	 */
+	private final Filter filter;
+
+	/**
+	 * The segments which have not been opened yet, in the order in which the merge reaches them.
+	 */
+	private final LinkedList<LogSegment> pending = new LinkedList<>();
+
+	/**
+	 * The open segments ordered by their next record.
+	 */
+	private final PriorityQueue<SegmentStream> streams;
+
+	/**
+	 * The next record to return or <tt>null</tt> if it has not been found yet.
+	 */
+	private LogSegment.Entry next;
+
+	/**
+	 * Initializes a new <tt>LogCursor</tt> instance.
+	 *
+	 * @param segments
+	 *        the segments of the log
+	 * @param forward
+	 *        <tt>true</tt> to return the records in the order of their timestamps or
+	 *        <tt>false</tt> for the reverse order
+	 * @param start
+	 *        the start (inclusive) of the period of the timestamps of the returned records
+	 * @param end
+	 *        the end (exclusive) of the period of the timestamps of the returned records
+	 * @param keywords
+	 *        keywords which the returned records contain, used to skip segments, or <tt>null</tt>
+	 * @param filter
+	 *        the filter of the returned records or <tt>null</tt>
+	 */
+	LogCursor(LogSegment[] segments, final boolean forward, long start, long end,
+		String[] keywords, Filter filter)
+	{
+		this.forward = forward;
+		this.start = start;
+		this.end = end;
+		this.filter = filter;
+
+		for (LogSegment segment : segments) {
+			if (segment.getLiveCount() != 0 && segment.getMinTimestamp() < end
+				&& segment.getMaxTimestamp() >= start
+				&& (keywords == null || segment.mightContain(keywords)))
+				pending.add(segment);
+		}
+		Collections.sort(pending, new Comparator<LogSegment>()
+		{
+			@Override
+			public int compare(LogSegment s1, LogSegment s2)
+			{
+				return forward
+					? compareLongs(s1.getMinTimestamp(), s2.getMinTimestamp())
+					: compareLongs(s2.getMaxTimestamp(), s1.getMaxTimestamp());
+			}
+		});
+		streams = new PriorityQueue<>(Math.max(pending.size(), 1), new Comparator<SegmentStream>()
+		{
+			@Override
+			public int compare(SegmentStream s1, SegmentStream s2)
+			{
+				LogSegment.Entry e1 = s1.head;
+				LogSegment.Entry e2 = s2.head;
+				int c = compareLongs(e1.timestamp, e2.timestamp);
+
+				if (c == 0)
+					c = compareLongs(e1.segment.id, e2.segment.id);
+				if (c == 0)
+					c = compareLongs(e1.position, e2.position);
+				return forward ? c : -c;
+			}
+		});
+	}
+
+	/**
+	 * Compares two <tt>long</tt> values like <tt>Long.compare</tt>, which Android API levels
+	 * before 19 lack.
+	 */
+	private static int compareLongs(long l1, long l2)
+	{
+		return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (next == null)
+			next = advance();
+		return next != null;
+	}
+
+	@Override
+	public LogSegment.Entry next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		LogSegment.Entry entry = next;
+
+		next = null;
+		return entry;
+	}
+
+	@Override
+	public void remove()
+	{
+		throw new UnsupportedOperationException("Cannot remove elements from underlaying collection.");
+	}
+
+	/**
+	 * Finds the next record to return.
+	 *
+	 * @return the next record to return or <tt>null</tt> if there are no more
+	 */
+	private LogSegment.Entry advance()
+	{
+		while (true) {
+			openPendingSegments();
+
+			SegmentStream stream = streams.poll();
+
+			if (stream == null)
+				return null;
+
+			LogSegment.Entry entry = stream.head;
+
+			if (stream.advance())
+				streams.add(stream);
+			if (filter == null || filter.accept(entry))
+				return entry;
+		}
+	}
+
+	/**
+	 * Opens the pending segments which may have a record that precedes the next record of the
+	 * open segments.
+	 */
+	private void openPendingSegments()
+	{
+		while (!pending.isEmpty()) {
+			LogSegment segment = pending.getFirst();
+			SegmentStream top = streams.peek();
+
+			if (top != null
+				&& (forward
+					? segment.getMinTimestamp() > top.head.timestamp
+					: segment.getMaxTimestamp() < top.head.timestamp))
+				break;
+
+			pending.removeFirst();
+
+			SegmentStream stream = new SegmentStream(segment);
+
+			if (stream.advance())
+				streams.add(stream);
+		}
+	}
+
+	/**
+	 * The records of a segment which are not deleted and have a timestamp in the period of the
+	 * cursor, in the order of the cursor.
+	 */
+	private class SegmentStream
+	{
+		/**
+		 * The reader of the segment.
+		 */
+		private final LogSegment.Reader reader;
+
+		/**
+		 * The records of an unsorted segment in the order of the cursor or <tt>null</tt> if the
+		 * segment is sorted.
+		 */
+		private final Iterator<LogSegment.Entry> sortedEntries;
+
+		/**
+		 * The position of the next record to read from a sorted segment, forward, or the end of
+		 * it, backward.
+		 */
+		private long position;
+
+		/**
+		 * The next record of the segment or <tt>null</tt> if there are no more.
+		 */
+		LogSegment.Entry head;
+
+		SegmentStream(LogSegment segment)
+		{
+			long limit = segment.getLength();
+
+			reader = segment.newReader(limit);
+			if (segment.isSorted()) {
+				sortedEntries = null;
+				position = forward ? segment.seekForward(start) : segment.seekBackward(end, limit);
+			}
+			else {
+				sortedEntries = sort();
+			}
+		}
+
+		/**
+		 * Reads all records of an unsorted segment which are in the period of the cursor and
+		 * sorts them in the order of the cursor.
+		 */
+		private Iterator<LogSegment.Entry> sort()
+		{
+			List<LogSegment.Entry> entries = new ArrayList<>();
+			LogSegment.Entry entry;
+
+			for (long pos = 0; (entry = reader.readForward(pos)) != null;
+				pos += entry.size) {
+				if (!entry.deleted && entry.timestamp >= start && entry.timestamp < end)
+					entries.add(entry);
+			}
+			// Stable, so records with equal timestamps stay in the order of their positions.
+			Collections.sort(entries, new Comparator<LogSegment.Entry>()
+			{
+				@Override
+				public int compare(LogSegment.Entry e1, LogSegment.Entry e2)
+				{
+					return compareLongs(e1.timestamp, e2.timestamp);
+				}
+			});
+			if (!forward)
+				Collections.reverse(entries);
+			return entries.iterator();
+		}
+
+		/**
+		 * Moves {@link #head} to the next record.
+		 *
+		 * @return <tt>true</tt> if there is a next record
+		 */
+		boolean advance()
+		{
+			head = null;
+			if (sortedEntries != null) {
+				if (sortedEntries.hasNext())
+					head = sortedEntries.next();
+				return head != null;
+			}
+			while (true) {
+				LogSegment.Entry entry;
+
+				if (forward) {
+					entry = reader.readForward(position);
+					if (entry == null || entry.timestamp >= end)
+						return false;
+					position += entry.size;
+					if (entry.deleted || entry.timestamp < start)
+						continue;
+				}
+				else {
+					entry = reader.readBackward(position);
+					if (entry == null || entry.timestamp < start)
+						return false;
+					position = entry.position;
+					if (entry.deleted || entry.timestamp >= end)
+						continue;
+				}
+				head = entry;
+				return true;
+			}
+		}
+	}
+}
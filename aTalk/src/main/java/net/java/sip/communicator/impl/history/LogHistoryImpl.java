@@ -0,0 +1,220 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.*;
+import net.java.sip.communicator.service.history.records.HistoryRecordStructure;
+import net.java.sip.communicator.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A <tt>History</tt> which stores its records in a {@link HistoryLog} rather than in XML files
+ * which have to be parsed as a whole for every query and rewritten for every record. The log is
+ * opened on first use, and the XML files of the history, if any, are then migrated into it by
+ * {@link XmlHistoryMigrator}.
+ *
+ * @author Eng Chong Meng
+ */
+public class LogHistoryImpl implements History
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>LogHistoryImpl</tt> class for logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(LogHistoryImpl.class);
+
+	private final HistoryID id;
+
+	private HistoryRecordStructure historyRecordStructure;
+
+	private final HistoryServiceImpl historyServiceImpl;
+
+	private final File directory;
+
+	private HistoryReader reader;
+
+	/**
+	 * The <tt>InteractiveHistoryReader</tt>.
+	 */
+	private InteractiveHistoryReader interactiveReader;
+
+	private HistoryWriter writer;
+
+	/**
+	 * The log of the records or <tt>null</tt> if it has not been opened yet.
+	 */
+	private HistoryLog log;
+
+	/**
+	 * Creates an instance of <tt>LogHistoryImpl</tt> by specifying the history identifier, the
+	 * directory, the <tt>HistoryRecordStructure</tt> to use and the parent
+	 * <tt>HistoryServiceImpl</tt>.
+	 *
+	 * @param id
+	 *        the identifier
+	 * @param directory
+	 *        the directory
+	 * @param historyRecordStructure
+	 *        the structure
+	 * @param historyServiceImpl
+	 *        the parent history service
+	 */
+	protected LogHistoryImpl(HistoryID id, File directory,
+		HistoryRecordStructure historyRecordStructure, HistoryServiceImpl historyServiceImpl)
+	{
+		this.id = id;
+		this.directory = directory;
+		this.historyServiceImpl = historyServiceImpl;
+		this.historyRecordStructure = historyRecordStructure;
+	}
+
+	/**
+	 * Returns the identifier of this history.
+	 *
+	 * @return the identifier of this history
+	 */
+	public HistoryID getID()
+	{
+		return id;
+	}
+
+	/**
+	 * Returns the current <tt>HistoryRecordStructure</tt>.
+	 *
+	 * @return the current <tt>HistoryRecordStructure</tt>
+	 */
+	public HistoryRecordStructure getHistoryRecordsStructure()
+	{
+		return historyRecordStructure;
+	}
+
+	/**
+	 * Sets the given <tt>structure</tt> to be the new history records structure used in this
+	 * history implementation.
+	 *
+	 * @param structure
+	 *        the new <tt>HistoryRecordStructure</tt> to use
+	 */
+	public void setHistoryRecordsStructure(HistoryRecordStructure structure)
+	{
+		this.historyRecordStructure = structure;
+
+		try {
+			File dbDatFile = new File(directory, HistoryServiceImpl.DATA_FILE);
+			DBStructSerializer dbss = new DBStructSerializer(historyServiceImpl);
+			dbss.writeHistory(dbDatFile, this);
+		}
+		catch (IOException e) {
+			logger.debug("Could not create new history structure");
+		}
+	}
+
+	public synchronized HistoryReader getReader()
+	{
+		if (reader == null)
+			reader = new LogHistoryReaderImpl(this);
+		return reader;
+	}
+
+	/**
+	 * Returns an object that can be used to read and query this history. The
+	 * <tt>InteractiveHistoryReader</tt> differs from the <tt>HistoryReader</tt> in the way it
+	 * manages query results. It allows to cancel a search at any time and to track history
+	 * results through a <tt>HistoryQueryListener</tt>.
+	 *
+	 * @return an object that can be used to read and query this history
+	 */
+	public synchronized InteractiveHistoryReader getInteractiveReader()
+	{
+		if (interactiveReader == null)
+			interactiveReader = new LogInteractiveHistoryReaderImpl(this);
+		return interactiveReader;
+	}
+
+	public synchronized HistoryWriter getWriter()
+	{
+		if (writer == null)
+			writer = new LogHistoryWriterImpl(this);
+		return writer;
+	}
+
+	/**
+	 * Gets the directory of this history.
+	 *
+	 * @return the directory of this history
+	 */
+	File getDirectory()
+	{
+		return directory;
+	}
+
+	protected HistoryServiceImpl getHistoryServiceImpl()
+	{
+		return historyServiceImpl;
+	}
+
+	/**
+	 * Gets the log of the records of this history, opening it and migrating the XML files of this
+	 * history into it on first use.
+	 *
+	 * @return the log of the records of this history
+	 * @throws IOException
+	 *         if the log cannot be opened
+	 */
+	synchronized HistoryLog getLog()
+		throws IOException
+	{
+		if (log == null) {
+			HistoryLog log = new HistoryLog(directory);
+
+			try {
+				XmlHistoryMigrator.migrate(this, log);
+			}
+			catch (RuntimeException re) {
+				// Keep the XML files for a later attempt rather than lose access to the history.
+				logger.error("Failed to migrate the XML files of history " + id, re);
+			}
+			this.log = log;
+		}
+		return log;
+	}
+
+	/**
+	 * Gets the log of the records of this history for a query which cannot throw an
+	 * <tt>IOException</tt>.
+	 *
+	 * @return the log of the records of this history
+	 * @throws RuntimeException
+	 *         if the log cannot be opened
+	 */
+	HistoryLog getLogForQuery()
+		throws RuntimeException
+	{
+		try {
+			return getLog();
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException("Failed to open history " + id, ioe);
+		}
+	}
+
+	/**
+	 * Closes the log of the records of this history so that it opens fast the next time.
+	 */
+	synchronized void close()
+	{
+		if (log != null) {
+			try {
+				log.close();
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to close history " + id, ioe);
+			}
+			log = null;
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.HistoryReader;
+import net.java.sip.communicator.service.history.QueryResultSet;
+import net.java.sip.communicator.service.history.event.HistorySearchProgressListener;
+import net.java.sip.communicator.service.history.event.ProgressEvent;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+
+import java.util.*;
+
+/**
+ * The <tt>HistoryReader</tt> of a {@link LogHistoryImpl}. Queries by period and keywords return a
+ * {@link LogQueryResultSet} which reads the matching records lazily through a {@link LogCursor},
+ * so the records are not loaded before they are iterated and segments outside of the period or
+ * without the keywords are not read at all. Queries for the last records read the log backward and
+ * stop after the requested count.
+ *
+ * @author Eng Chong Meng
+ */
+public class LogHistoryReaderImpl implements HistoryReader
+{
+	private final LogHistoryImpl history;
+
+	private final Vector<HistorySearchProgressListener> progressListeners = new Vector<>();
+
+	/**
+	 * Creates an instance of <tt>LogHistoryReaderImpl</tt>.
+	 *
+	 * @param history
+	 *        the parent History implementation
+	 */
+	protected LogHistoryReaderImpl(LogHistoryImpl history)
+	{
+		this.history = history;
+	}
+
+	public QueryResultSet<HistoryRecord> findByStartDate(Date startDate)
+		throws RuntimeException
+	{
+		return find(startDate, null, null, null, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findByEndDate(Date endDate)
+		throws RuntimeException
+	{
+		return find(null, endDate, null, null, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findByPeriod(Date startDate, Date endDate)
+		throws RuntimeException
+	{
+		return find(startDate, endDate, null, null, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findByKeyword(String keyword, String field)
+		throws RuntimeException
+	{
+		return findByKeywords(new String[] { keyword }, field);
+	}
+
+	public QueryResultSet<HistoryRecord> findByKeywords(String[] keywords, String field)
+		throws RuntimeException
+	{
+		return find(null, null, keywords, field, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findByPeriod(Date startDate, Date endDate,
+		String[] keywords, String field)
+		throws UnsupportedOperationException
+	{
+		return find(startDate, endDate, keywords, field, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findLast(int count)
+		throws RuntimeException
+	{
+		return findLast(count, null, null, false);
+	}
+
+	public QueryResultSet<HistoryRecord> findLast(int count, String[] keywords, String field,
+		boolean caseSensitive)
+		throws RuntimeException
+	{
+		return findBackward(null, count, keywords, field, caseSensitive);
+	}
+
+	public QueryResultSet<HistoryRecord> findByKeyword(String keyword, String field,
+		boolean caseSensitive)
+		throws RuntimeException
+	{
+		return findByKeywords(new String[] { keyword }, field, caseSensitive);
+	}
+
+	public QueryResultSet<HistoryRecord> findByKeywords(String[] keywords, String field,
+		boolean caseSensitive)
+		throws RuntimeException
+	{
+		return find(null, null, keywords, field, caseSensitive);
+	}
+
+	public QueryResultSet<HistoryRecord> findByPeriod(Date startDate, Date endDate,
+		String[] keywords, String field, boolean caseSensitive)
+		throws UnsupportedOperationException
+	{
+		return find(startDate, endDate, keywords, field, caseSensitive);
+	}
+
+	public QueryResultSet<HistoryRecord> findFirstRecordsAfter(Date date, int count)
+		throws RuntimeException
+	{
+		LogCursor cursor = newCursor(true, date, null, null, null, false);
+
+		return new LogQueryResultSet(cursor, count);
+	}
+
+	public QueryResultSet<HistoryRecord> findLastRecordsBefore(Date date, int count)
+		throws RuntimeException
+	{
+		return findBackward(date, count, null, null, false);
+	}
+
+	/**
+	 * Finds the last records before a specific date which contain all of specific keywords.
+	 *
+	 * @param endDate
+	 *        the date before which the records are or <tt>null</tt>
+	 * @param count
+	 *        the maximum number of records to find
+	 * @param keywords
+	 *        the keywords or <tt>null</tt>
+	 * @param field
+	 *        the field where to look for the keywords
+	 * @param caseSensitive
+	 *        whether the keywords are case sensitive
+	 * @return the found records, oldest first
+	 */
+	private QueryResultSet<HistoryRecord> findBackward(Date endDate, int count, String[] keywords,
+		String field, boolean caseSensitive)
+	{
+		LogCursor cursor = newCursor(false, null, endDate, keywords, field, caseSensitive);
+		LinkedList<LogSegment.Entry> entries = new LinkedList<>();
+
+		while (entries.size() < count && cursor.hasNext())
+			entries.addFirst(cursor.next());
+		return new LogQueryResultSet(entries.iterator(), count);
+	}
+
+	/**
+	 * Finds the records in a specific period which contain all of specific keywords, firing
+	 * progress events as the returned result set is read.
+	 *
+	 * @param startDate
+	 *        the start of the period or <tt>null</tt>
+	 * @param endDate
+	 *        the end of the period or <tt>null</tt>
+	 * @param keywords
+	 *        the keywords or <tt>null</tt>
+	 * @param field
+	 *        the field where to look for the keywords
+	 * @param caseSensitive
+	 *        whether the keywords are case sensitive
+	 * @return the found records, oldest first
+	 */
+	private QueryResultSet<HistoryRecord> find(final Date startDate, final Date endDate,
+		final String[] keywords, String field, boolean caseSensitive)
+	{
+		LogCursor cursor = newCursor(true, startDate, endDate, keywords, field, caseSensitive);
+
+		fireProgressStateChanged(startDate, endDate, keywords,
+			HistorySearchProgressListener.PROGRESS_MINIMUM_VALUE);
+		return new LogQueryResultSet(cursor, Integer.MAX_VALUE)
+		{
+			@Override
+			protected void queryCompleted()
+			{
+				fireProgressStateChanged(startDate, endDate, keywords,
+					HistorySearchProgressListener.PROGRESS_MAXIMUM_VALUE);
+			}
+		};
+	}
+
+	/**
+	 * Initializes a new <tt>LogCursor</tt> over the records of the history in a specific period
+	 * which contain all of specific keywords.
+	 *
+	 * @param forward
+	 *        <tt>true</tt> for the oldest records first or <tt>false</tt> for the newest first
+	 * @param startDate
+	 *        the start of the period or <tt>null</tt>
+	 * @param endDate
+	 *        the end of the period or <tt>null</tt>
+	 * @param keywords
+	 *        the keywords or <tt>null</tt>
+	 * @param field
+	 *        the field where to look for the keywords
+	 * @param caseSensitive
+	 *        whether the keywords are case sensitive
+	 * @return the new cursor
+	 */
+	LogCursor newCursor(boolean forward, Date startDate, Date endDate, String[] keywords,
+		String field, boolean caseSensitive)
+	{
+		return newCursor(history.getLogForQuery(), forward, startDate, endDate, keywords, field,
+			caseSensitive);
+	}
+
+	/**
+	 * Initializes a new <tt>LogCursor</tt> over the records of a log in a specific period which
+	 * contain all of specific keywords in a specific field, with the semantics of
+	 * <tt>HistoryReaderImpl</tt>: a record matches if the value of the field contains every
+	 * keyword, and no record matches keywords if there is no field.
+	 *
+	 * @param log
+	 *        the log
+	 * @param forward
+	 *        <tt>true</tt> for the oldest records first or <tt>false</tt> for the newest first
+	 * @param startDate
+	 *        the start of the period or <tt>null</tt>
+	 * @param endDate
+	 *        the end of the period or <tt>null</tt>
+	 * @param keywords
+	 *        the keywords or <tt>null</tt>
+	 * @param field
+	 *        the field where to look for the keywords
+	 * @param caseSensitive
+	 *        whether the keywords are case sensitive
+	 * @return the new cursor
+	 */
+	static LogCursor newCursor(HistoryLog log, boolean forward, Date startDate, Date endDate,
+		final String[] keywords, final String field, final boolean caseSensitive)
+	{
+		long start = (startDate == null) ? Long.MIN_VALUE : startDate.getTime();
+		long end = (endDate == null) ? Long.MAX_VALUE : endDate.getTime();
+		LogCursor.Filter filter = null;
+		String[] bloomKeywords = null;
+
+		if (keywords != null && keywords.length > 0) {
+			bloomKeywords = keywords;
+			filter = new LogCursor.Filter()
+			{
+				@Override
+				public boolean accept(LogSegment.Entry entry)
+				{
+					String value = (field == null) ? null : entry.getValue(field);
+
+					return value != null
+						&& HistoryReaderImpl.matchKeyword(value, keywords, caseSensitive);
+				}
+			};
+		}
+		return new LogCursor(log.getSegments(), forward, start, end, bloomKeywords, filter);
+	}
+
+	private void fireProgressStateChanged(Date startDate, Date endDate, String[] keywords,
+		int progress)
+	{
+		ProgressEvent event = new ProgressEvent(this, startDate, endDate, keywords, progress);
+
+		synchronized (progressListeners) {
+			Iterator<HistorySearchProgressListener> iter = progressListeners.iterator();
+			while (iter.hasNext()) {
+				HistorySearchProgressListener item = iter.next();
+				item.progressChanged(event);
+			}
+		}
+	}
+
+	/**
+	 * Adding progress listener for monitoring progress of search process
+	 *
+	 * @param listener
+	 *        HistorySearchProgressListener
+	 */
+	public void addSearchProgressListener(HistorySearchProgressListener listener)
+	{
+		synchronized (progressListeners) {
+			progressListeners.add(listener);
+		}
+	}
+
+	/**
+	 * Removing progress listener
+	 *
+	 * @param listener
+	 *        HistorySearchProgressListener
+	 */
+	public void removeSearchProgressListener(HistorySearchProgressListener listener)
+	{
+		synchronized (progressListeners) {
+			progressListeners.remove(listener);
+		}
+	}
+
+	/**
+	 * Count the number of records of the history which are not deleted, as kept in the summaries
+	 * of the log segments.
+	 *
+	 * @return the number of records
+	 * @throws UnsupportedOperationException
+	 *         Thrown if an exception occurs during the execution of the query, such as internal IO
+	 *         error.
+	 */
+	public int countRecords()
+		throws UnsupportedOperationException
+	{
+		return history.getLogForQuery().countRecords();
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.HistoryWriter;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+import net.java.sip.communicator.service.history.records.HistoryRecordStructure;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The <tt>HistoryWriter</tt> of a {@link LogHistoryImpl}. A record is appended to the log of the
+ * history, so adding it costs the same however many records the history has. Updating a record
+ * appends its new version, with the time of the update as timestamp like <tt>HistoryWriterImpl</tt>
+ * does, and deletes the old version.
+ *
+ * @author Eng Chong Meng
+ */
+public class LogHistoryWriterImpl implements HistoryWriter
+{
+	private static final String CDATA_SUFFIX = "_CDATA";
+
+	private final LogHistoryImpl history;
+
+	private final String[] structPropertyNames;
+
+	protected LogHistoryWriterImpl(LogHistoryImpl history)
+	{
+		this.history = history;
+
+		HistoryRecordStructure struct = history.getHistoryRecordsStructure();
+		this.structPropertyNames = struct.getPropertyNames();
+	}
+
+	public void addRecord(HistoryRecord record)
+		throws IOException
+	{
+		addRecord(record.getPropertyNames(), record.getPropertyValues(), record.getTimestamp(), -1);
+	}
+
+	public void addRecord(String[] propertyValues)
+		throws IOException
+	{
+		addRecord(structPropertyNames, propertyValues, new Date(), -1);
+	}
+
+	public void addRecord(String[] propertyValues, Date timestamp)
+		throws IOException
+	{
+		addRecord(structPropertyNames, propertyValues, timestamp, -1);
+	}
+
+	/**
+	 * Stores the passed propertyValues complying with the historyRecordStructure.
+	 *
+	 * @param propertyValues
+	 *        The values of the record.
+	 * @param maxNumberOfRecords
+	 *        the maximum number of records to keep or value of -1 to ignore this param.
+	 *
+	 * @throws IOException
+	 */
+	public void addRecord(String[] propertyValues, int maxNumberOfRecords)
+		throws IOException
+	{
+		addRecord(structPropertyNames, propertyValues, new Date(), maxNumberOfRecords);
+	}
+
+	/**
+	 * Appends a new record to the log. The <tt>_CDATA</tt> suffix of property names is removed
+	 * and properties without a value are omitted, as <tt>HistoryWriterImpl</tt> does.
+	 *
+	 * @param propertyNames
+	 *        String[]
+	 * @param propertyValues
+	 *        String[]
+	 * @param date
+	 *        Date
+	 * @param maxNumberOfRecords
+	 *        the maximum number of records to keep or value of -1 to ignore this param.
+	 * @throws IOException
+	 */
+	private void addRecord(String[] propertyNames, String[] propertyValues, Date date,
+		int maxNumberOfRecords)
+		throws IOException
+	{
+		List<String> names = new ArrayList<>(propertyNames.length);
+		List<String> values = new ArrayList<>(propertyNames.length);
+
+		for (int i = 0; i < propertyNames.length; i++) {
+			if (propertyValues[i] != null) {
+				String name = propertyNames[i];
+
+				if (name.endsWith(CDATA_SUFFIX))
+					name = name.substring(0, name.length() - CDATA_SUFFIX.length());
+				names.add(name);
+				values.add(propertyValues[i]);
+			}
+		}
+
+		HistoryLog log = history.getLog();
+
+		synchronized (log) {
+			log.append(names.toArray(new String[names.size()]),
+				values.toArray(new String[values.size()]), date.getTime());
+			if (maxNumberOfRecords > -1)
+				log.trim(maxNumberOfRecords);
+		}
+	}
+
+	/**
+	 * Inserts a record with a specific timestamp. The log keeps the records in the order of their
+	 * timestamps for queries, so the record is simply appended.
+	 *
+	 * @param propertyValues
+	 *        The values of the record.
+	 * @param timestamp
+	 *        The timestamp of the record.
+	 * @param timestampProperty
+	 *        the property name for the timestamp of the record
+	 *
+	 * @throws IOException
+	 */
+	public void insertRecord(String[] propertyValues, Date timestamp, String timestampProperty)
+		throws IOException
+	{
+		addRecord(structPropertyNames, propertyValues, timestamp, -1);
+	}
+
+	/**
+	 * Updates a record by searching for record with idProperty which have idValue and
+	 * updating/creating the property with newValue.
+	 *
+	 * @param idProperty
+	 *        name of the id property
+	 * @param idValue
+	 *        value of the id property
+	 * @param property
+	 *        the property to change
+	 * @param newValue
+	 *        the value of the changed property.
+	 */
+	public void updateRecord(final String idProperty, final String idValue, String property,
+		String newValue)
+		throws IOException
+	{
+		HistoryLog log = history.getLog();
+
+		synchronized (log) {
+			LogCursor cursor = new LogCursor(log.getSegments(), true, Long.MIN_VALUE,
+				Long.MAX_VALUE, new String[] { idValue }, new LogCursor.Filter()
+				{
+					@Override
+					public boolean accept(LogSegment.Entry entry)
+					{
+						return idValue.equals(entry.getValue(idProperty));
+					}
+				});
+
+			if (!cursor.hasNext())
+				return;
+
+			LogSegment.Entry entry = cursor.next();
+			String[] names = entry.names;
+			String[] values = entry.values.clone();
+			int index = Arrays.asList(names).indexOf(property);
+
+			if (index < 0) {
+				names = Arrays.copyOf(names, names.length + 1);
+				values = Arrays.copyOf(values, values.length + 1);
+				index = names.length - 1;
+				names[index] = property;
+			}
+			values[index] = newValue;
+
+			// change the timestamp, to reflect there was a change
+			log.replace(entry, names, values, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Updates history record using given <tt>HistoryRecordUpdater</tt> instance to find which is
+	 * the record to be updated and to get the new values for the fields
+	 *
+	 * @param updater
+	 *        the <tt>HistoryRecordUpdater</tt> instance.
+	 */
+	public void updateRecord(HistoryRecordUpdater updater)
+		throws IOException
+	{
+		HistoryLog log = history.getLog();
+
+		synchronized (log) {
+			HistoryRecordStructure structure = history.getHistoryRecordsStructure();
+			LogCursor cursor = new LogCursor(log.getSegments(), true, Long.MIN_VALUE,
+				Long.MAX_VALUE, null, null);
+			Map<LogSegment.Entry, String[]> changes = new LinkedHashMap<>();
+
+			while (cursor.hasNext()) {
+				LogSegment.Entry entry = cursor.next();
+				String[] propertyValues = new String[structure.getPropertyCount()];
+				int i = 0;
+
+				for (String propertyName : structure.getPropertyNames())
+					propertyValues[i++] = entry.getValue(propertyName);
+				updater.setHistoryRecord(new HistoryRecord(structure, propertyValues));
+				if (!updater.isMatching())
+					continue;
+
+				Map<String, String> updates = updater.getUpdateChanges();
+				String[] values = entry.values.clone();
+				boolean changed = false;
+
+				for (int j = 0; j < entry.names.length; j++) {
+					if (updates.containsKey(entry.names[j])) {
+						values[j] = updates.get(entry.names[j]);
+						changed = true;
+					}
+				}
+				if (changed)
+					changes.put(entry, values);
+			}
+
+			// change the timestamp, to reflect there was a change
+			long now = System.currentTimeMillis();
+
+			for (Map.Entry<LogSegment.Entry, String[]> change : changes.entrySet())
+				log.replace(change.getKey(), change.getKey().names, change.getValue(), now);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.*;
+import net.java.sip.communicator.service.history.event.HistoryQueryStatusEvent;
+
+import java.util.Date;
+
+/**
+ * The <tt>InteractiveHistoryReader</tt> of a {@link LogHistoryImpl}. Like
+ * <tt>InteractiveHistoryReaderImpl</tt>, it reports the matching records newest first through a
+ * <tt>HistoryQuery</tt> from a separate thread, but it reads them from a backward
+ * {@link LogCursor} and stops as soon as the requested number of records has been found.
+ *
+ * @author Eng Chong Meng
+ */
+public class LogInteractiveHistoryReaderImpl implements InteractiveHistoryReader
+{
+	/**
+	 * The <tt>LogHistoryImpl</tt> where this reader is registered.
+	 */
+	private final LogHistoryImpl history;
+
+	/**
+	 * Creates an instance of <tt>LogInteractiveHistoryReaderImpl</tt> by specifying the
+	 * corresponding <tt>history</tt> implementation.
+	 *
+	 * @param history
+	 *        the corresponding <tt>LogHistoryImpl</tt> to read from
+	 */
+	public LogInteractiveHistoryReaderImpl(LogHistoryImpl history)
+	{
+		this.history = history;
+	}
+
+	/**
+	 * Searches the history for all records containing the <tt>keyword</tt>.
+	 *
+	 * @param keyword
+	 *        the keyword to search for
+	 * @param field
+	 *        the field where to look for the keyword
+	 * @param recordCount
+	 *        limits the result to this record count
+	 * @return the found records
+	 */
+	public HistoryQuery findByKeyword(String keyword, String field, int recordCount)
+	{
+		return findByKeywords(new String[] { keyword }, field, recordCount);
+	}
+
+	/**
+	 * Searches the history for all records containing all <tt>keywords</tt>.
+	 *
+	 * @param keywords
+	 *        array of keywords we search for
+	 * @param field
+	 *        the field where to look for the keyword
+	 * @param recordCount
+	 *        limits the result to this record count
+	 * @return the found records
+	 */
+	public HistoryQuery findByKeywords(String[] keywords, String field, int recordCount)
+	{
+		return find(null, null, keywords, field, false, recordCount);
+	}
+
+	/**
+	 * Finds the history results corresponding to the given criteria.
+	 *
+	 * @param startDate
+	 *        the start date
+	 * @param endDate
+	 *        the end date
+	 * @param keywords
+	 *        an array of keywords to search for
+	 * @param field
+	 *        the field, where to search the keywords
+	 * @param caseSensitive
+	 *        indicates if the search should be case sensitive
+	 * @param resultCount
+	 *        the desired number of results
+	 * @return the <tt>HistoryQuery</tt> that could be used to track the results or to cancel the
+	 *         search
+	 */
+	private HistoryQuery find(final Date startDate, final Date endDate, final String[] keywords,
+		final String field, final boolean caseSensitive, final int resultCount)
+	{
+		StringBuilder queryString = new StringBuilder();
+		for (String s : keywords) {
+			queryString.append(' ');
+			queryString.append(s);
+		}
+
+		final HistoryQueryImpl query = new HistoryQueryImpl(queryString.toString());
+		new Thread()
+		{
+			@Override
+			public void run()
+			{
+				find(startDate, endDate, keywords, field, caseSensitive, resultCount, query);
+			}
+		}.start();
+
+		return query;
+	}
+
+	/**
+	 * Finds the history results corresponding to the given criteria, newest first.
+	 *
+	 * @param startDate
+	 *        the start date
+	 * @param endDate
+	 *        the end date
+	 * @param keywords
+	 *        an array of keywords to search for
+	 * @param field
+	 *        the field, where to search the keywords
+	 * @param caseSensitive
+	 *        indicates if the search should be case sensitive
+	 * @param resultCount
+	 *        the desired number of results
+	 * @param query
+	 *        the query tracking the results
+	 */
+	private void find(Date startDate, Date endDate, String[] keywords, String field,
+		boolean caseSensitive, int resultCount, HistoryQueryImpl query)
+	{
+		LogCursor cursor = LogHistoryReaderImpl.newCursor(history.getLogForQuery(), false,
+			startDate, endDate, keywords, field, caseSensitive);
+
+		while (resultCount > 0 && !query.isCanceled() && cursor.hasNext()) {
+			query.addHistoryRecord(cursor.next().toHistoryRecord());
+			resultCount--;
+		}
+
+		if (query.isCanceled())
+			query.setStatus(HistoryQueryStatusEvent.QUERY_CANCELED);
+		else
+			query.setStatus(HistoryQueryStatusEvent.QUERY_COMPLETED);
+	}
+}
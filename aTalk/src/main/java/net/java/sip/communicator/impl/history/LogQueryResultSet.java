@@ -0,0 +1,170 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.QueryResultSet;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+
+import java.util.*;
+
+/**
+ * A <tt>QueryResultSet</tt> over the records returned by an iterator over the records of a
+ * {@link HistoryLog}, e.g. a {@link LogCursor}. Records are only read from the log when the result
+ * set is iterated up to them and are kept so that the result set can be iterated back, like
+ * {@link OrderedQueryResultSet}.
+ *
+ * @author Eng Chong Meng
+ */
+public class LogQueryResultSet
+	implements QueryResultSet<HistoryRecord>
+{
+	/**
+	 * The records which have not been read yet.
+	 */
+	private final Iterator<LogSegment.Entry> source;
+
+	/**
+	 * The maximum number of records of this result set.
+	 */
+	private final int limit;
+
+	/**
+	 * The records which have been read.
+	 */
+	private final List<HistoryRecord> records = new ArrayList<>();
+
+	/**
+	 * Whether {@link #source} has no more records.
+	 */
+	private boolean exhausted;
+
+	private int currentPos = -1;
+
+	/**
+	 * Initializes a new <tt>LogQueryResultSet</tt> instance.
+	 *
+	 * @param source
+	 *        the records of the result set
+	 * @param limit
+	 *        the maximum number of records of the result set
+	 */
+	LogQueryResultSet(Iterator<LogSegment.Entry> source, int limit)
+	{
+		this.source = source;
+		this.limit = limit;
+	}
+
+	/**
+	 * Reads records until there are more than a specific number or no more.
+	 *
+	 * @param index
+	 *        the index of the record to read
+	 * @return <tt>true</tt> if the record at <tt>index</tt> has been read
+	 */
+	private boolean fill(int index)
+	{
+		while (records.size() <= index && !exhausted) {
+			if (records.size() < limit && source.hasNext()) {
+				records.add(source.next().toHistoryRecord());
+			}
+			else {
+				exhausted = true;
+				queryCompleted();
+			}
+		}
+		return index < records.size();
+	}
+
+	/**
+	 * Notifies that all records of this result set have been read. Does nothing by default.
+	 */
+	protected void queryCompleted()
+	{
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the iteration has more elements.
+	 *
+	 * @return <tt>true</tt> if the iterator has more elements.
+	 */
+	public boolean hasNext()
+	{
+		return fill(currentPos + 1);
+	}
+
+	/**
+	 * Returns true if the iteration has elements preceeding the current one.
+	 *
+	 * @return true if the iterator has preceeding elements.
+	 */
+	public boolean hasPrev()
+	{
+		return currentPos - 1 >= 0;
+	}
+
+	/**
+	 * Returns the next element in the iteration.
+	 *
+	 * @return the next element in the iteration.
+	 */
+	public HistoryRecord next()
+	{
+		currentPos++;
+		if (!fill(currentPos))
+			throw new NoSuchElementException();
+		return records.get(currentPos);
+	}
+
+	/**
+	 * A strongly-typed variant of <tt>next()</tt>.
+	 *
+	 * @return the next history record.
+	 * @throws NoSuchElementException
+	 *         iteration has no more elements.
+	 */
+	public HistoryRecord nextRecord()
+		throws NoSuchElementException
+	{
+		return next();
+	}
+
+	/**
+	 * Returns the previous element in the iteration.
+	 *
+	 * @return the previous element in the iteration.
+	 * @throws NoSuchElementException
+	 *         iteration has no more elements.
+	 */
+	public HistoryRecord prev()
+		throws NoSuchElementException
+	{
+		currentPos--;
+		if (currentPos < 0)
+			throw new NoSuchElementException();
+		return records.get(currentPos);
+	}
+
+	/**
+	 * A strongly-typed variant of <tt>prev()</tt>.
+	 *
+	 * @return the previous history record.
+	 * @throws NoSuchElementException
+	 *         iteration has no more elements.
+	 */
+	public HistoryRecord prevRecord()
+		throws NoSuchElementException
+	{
+		return prev();
+	}
+
+	/**
+	 * Removes from the underlying collection the last element returned by the iterator (optional operation).
+	 */
+	public void remove()
+	{
+		throw new UnsupportedOperationException("Cannot remove elements from underlaying collection.");
+	}
+}
@@ -0,0 +1,1077 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+import net.java.sip.communicator.util.Logger;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * A segment of a {@link HistoryLog}: a file <tt>&lt;id&gt;.log</tt> to which records are only
+ * appended, and a file <tt>&lt;id&gt;.idx</tt> which holds the summary of the segment once it is
+ * no longer appended to. The summary consists of the record counts, the range of the record
+ * timestamps, a sparse index which maps the timestamp of every {@link #INDEX_INTERVAL}th record to
+ * its position and the {@link KeywordBloomFilter} of the record values. A segment whose summary is
+ * missing or stale (e.g. the one which was being appended to when the application was killed) is
+ * scanned to rebuild it, and a torn record at its end is truncated.
+ * <p>
+ * A record is stored as <tt>length, flags, crc, timestamp, count, (name, value)*, length</tt> so
+ * that the segment can be read in both directions. The flags of a record are the only bytes which
+ * are written in place, to delete the record; the CRC covers everything after them.
+ *
+ * @author Eng Chong Meng
+ */
+class LogSegment
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>LogSegment</tt> class for logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(LogSegment.class);
+
+	/**
+	 * The suffix of the names of segment files.
+	 */
+	static final String LOG_SUFFIX = ".log";
+
+	/**
+	 * The suffix of the names of segment summary files.
+	 */
+	static final String INDEX_SUFFIX = ".idx";
+
+	/**
+	 * The number of records per entry of the sparse index.
+	 */
+	static final int INDEX_INTERVAL = 64;
+
+	/**
+	 * The flag of a deleted record.
+	 */
+	private static final int FLAG_DELETED = 1;
+
+	/**
+	 * The length in bytes of a record body without the properties: flags, CRC, timestamp and
+	 * property count.
+	 */
+	private static final int BODY_HEADER_LENGTH = 1 + 4 + 8 + 2;
+
+	/**
+	 * The magic number of summary files, <tt>HIDX</tt>.
+	 */
+	private static final int INDEX_MAGIC = 0x48494458;
+
+	/**
+	 * The version of the format of summary files.
+	 */
+	private static final int INDEX_VERSION = 1;
+
+	/**
+	 * The size in bytes of the blocks in which segments are read.
+	 */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * The charset of the property names and values.
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The ID of this segment, the timestamp of its first record (or the next free one) which
+	 * orders segments by creation.
+	 */
+	final long id;
+
+	/**
+	 * The file which holds the records.
+	 */
+	private final File logFile;
+
+	/**
+	 * The file which holds the summary.
+	 */
+	private final File indexFile;
+
+	/**
+	 * The length in bytes of the records which have been completely written.
+	 */
+	private volatile long length;
+
+	/**
+	 * The number of records.
+	 */
+	private int count;
+
+	/**
+	 * The number of records which are not deleted.
+	 */
+	private volatile int liveCount;
+
+	/**
+	 * The lowest record timestamp.
+	 */
+	private volatile long minTimestamp = Long.MAX_VALUE;
+
+	/**
+	 * The highest record timestamp.
+	 */
+	private volatile long maxTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Whether the records are in the order of their timestamps.
+	 */
+	private volatile boolean sorted = true;
+
+	/**
+	 * The timestamps of the sparse index.
+	 */
+	private volatile long[] indexTimestamps = new long[16];
+
+	/**
+	 * The positions of the sparse index.
+	 */
+	private volatile long[] indexPositions = new long[16];
+
+	/**
+	 * The number of entries of the sparse index.
+	 */
+	private volatile int indexSize;
+
+	/**
+	 * The bloom filter of the record values while this segment is appended to.
+	 */
+	private KeywordBloomFilter bloom;
+
+	/**
+	 * The bloom filter of the record values loaded from the summary of a segment which is no
+	 * longer appended to.
+	 */
+	private SoftReference<KeywordBloomFilter> sealedBloom;
+
+	/**
+	 * The position in {@link #indexFile} of the bloom filter.
+	 */
+	private long bloomPosition;
+
+	/**
+	 * The file to which records are appended or <tt>null</tt> if this segment is sealed.
+	 */
+	private RandomAccessFile out;
+
+	/**
+	 * Initializes a new <tt>LogSegment</tt> instance.
+	 *
+	 * @param directory
+	 *        the directory of the segment files
+	 * @param id
+	 *        the ID of the segment
+	 */
+	private LogSegment(File directory, long id)
+	{
+		this.id = id;
+		logFile = new File(directory, id + LOG_SUFFIX);
+		indexFile = new File(directory, id + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Creates a new empty segment to append records to.
+	 *
+	 * @param directory
+	 *        the directory of the segment files
+	 * @param id
+	 *        the ID of the segment
+	 * @return the new segment
+	 * @throws IOException
+	 *         if the segment file cannot be created
+	 */
+	static LogSegment create(File directory, long id)
+		throws IOException
+	{
+		LogSegment segment = new LogSegment(directory, id);
+
+		segment.bloom = new KeywordBloomFilter();
+		segment.out = new RandomAccessFile(segment.logFile, "rw");
+		segment.out.setLength(0);
+		return segment;
+	}
+
+	/**
+	 * Opens an existing segment. Its summary is read from its summary file if the latter is up to
+	 * date or rebuilt by scanning the records otherwise.
+	 *
+	 * @param directory
+	 *        the directory of the segment files
+	 * @param id
+	 *        the ID of the segment
+	 * @return the segment
+	 * @throws IOException
+	 *         if reading the segment fails
+	 */
+	static LogSegment open(File directory, long id)
+		throws IOException
+	{
+		LogSegment segment = new LogSegment(directory, id);
+
+		if (!segment.readIndex())
+			segment.rebuild();
+		return segment;
+	}
+
+	/**
+	 * Gets the ID of the segment of a file.
+	 *
+	 * @param file
+	 *        the file
+	 * @return the ID of the segment of <tt>file</tt> or <tt>-1</tt> if it is not a segment file
+	 */
+	static long getId(File file)
+	{
+		String name = file.getName();
+
+		if (!name.endsWith(LOG_SUFFIX))
+			return -1;
+		try {
+			return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+		}
+		catch (NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads the summary of this segment from its summary file.
+	 *
+	 * @return <tt>true</tt> if the summary file is up to date and has been read
+	 */
+	private boolean readIndex()
+	{
+		if (!indexFile.isFile())
+			return false;
+
+		DataInputStream in = null;
+
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION)
+				return false;
+
+			long length = in.readLong();
+
+			if (length != logFile.length())
+				return false;
+
+			count = in.readInt();
+			liveCount = in.readInt();
+			minTimestamp = in.readLong();
+			maxTimestamp = in.readLong();
+			sorted = in.readBoolean();
+
+			int indexSize = in.readInt();
+			long[] indexTimestamps = new long[Math.max(indexSize, 16)];
+			long[] indexPositions = new long[indexTimestamps.length];
+
+			for (int i = 0; i < indexSize; i++) {
+				indexTimestamps[i] = in.readLong();
+				indexPositions[i] = in.readLong();
+			}
+			this.indexTimestamps = indexTimestamps;
+			this.indexPositions = indexPositions;
+			this.indexSize = indexSize;
+			bloomPosition = getIndexHeaderLength(indexSize);
+			this.length = length;
+			return true;
+		}
+		catch (IOException ioe) {
+			logger.warn("Failed to read history index " + indexFile, ioe);
+			return false;
+		}
+		finally {
+			closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Gets the length in bytes of the part of a summary file which precedes the bloom filter.
+	 *
+	 * @param indexSize
+	 *        the number of entries of the sparse index
+	 * @return the length of the part of the summary file which precedes the bloom filter
+	 */
+	private static long getIndexHeaderLength(int indexSize)
+	{
+		return 4 + 4 + 8 + 4 + 4 + 8 + 8 + 1 + 4 + indexSize * 16L;
+	}
+
+	/**
+	 * Writes the summary of this segment to its summary file.
+	 *
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	private void writeIndex()
+		throws IOException
+	{
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out
+			= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		KeywordBloomFilter bloom = getBloomFilter();
+
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(length);
+			out.writeInt(count);
+			out.writeInt(liveCount);
+			out.writeLong(minTimestamp);
+			out.writeLong(maxTimestamp);
+			out.writeBoolean(sorted);
+			out.writeInt(indexSize);
+			for (int i = 0; i < indexSize; i++) {
+				out.writeLong(indexTimestamps[i]);
+				out.writeLong(indexPositions[i]);
+			}
+			out.write(bloom.getBits());
+		}
+		finally {
+			out.close();
+		}
+		if (!tmpFile.renameTo(indexFile)) {
+			indexFile.delete();
+			if (!tmpFile.renameTo(indexFile))
+				throw new IOException("Failed to write history index " + indexFile);
+		}
+		bloomPosition = getIndexHeaderLength(indexSize);
+	}
+
+	/**
+	 * Rebuilds the summary of this segment by scanning its records and truncates a torn record
+	 * at its end.
+	 *
+	 * @throws IOException
+	 *         if reading or truncating fails
+	 */
+	private void rebuild()
+		throws IOException
+	{
+		long fileLength = logFile.length();
+		Reader reader = new Reader(fileLength);
+		KeywordBloomFilter bloom = new KeywordBloomFilter();
+		long position = 0;
+		Entry entry;
+
+		length = fileLength;
+		while (position < fileLength && (entry = reader.readForward(position)) != null) {
+			addToSummary(entry.position, entry.timestamp, entry.values, bloom);
+			if (entry.deleted)
+				liveCount--;
+			position += entry.size;
+		}
+		if (position < fileLength) {
+			logger.warn("Truncating history segment " + logFile + " from " + fileLength + " to "
+				+ position + " bytes");
+
+			RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+
+			try {
+				raf.setLength(position);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		length = position;
+		this.bloom = bloom;
+		writeIndex();
+		this.bloom = null;
+		sealedBloom = new SoftReference<>(bloom);
+	}
+
+	/**
+	 * Adds a record to the summary of this segment.
+	 *
+	 * @param position
+	 *        the position of the record
+	 * @param timestamp
+	 *        the timestamp of the record
+	 * @param values
+	 *        the property values of the record
+	 * @param bloom
+	 *        the bloom filter to add the values to
+	 */
+	private void addToSummary(long position, long timestamp, String[] values,
+		KeywordBloomFilter bloom)
+	{
+		if (count % INDEX_INTERVAL == 0) {
+			if (indexSize == indexTimestamps.length) {
+				indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+				indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+			}
+			indexTimestamps[indexSize] = timestamp;
+			indexPositions[indexSize] = position;
+			indexSize++;
+		}
+		if (timestamp < maxTimestamp)
+			sorted = false;
+		if (timestamp < minTimestamp)
+			minTimestamp = timestamp;
+		if (timestamp > maxTimestamp)
+			maxTimestamp = timestamp;
+		for (String value : values)
+			bloom.add(value);
+		count++;
+		liveCount++;
+	}
+
+	/**
+	 * Reopens a sealed segment to append records to it.
+	 *
+	 * @throws IOException
+	 *         if the segment file cannot be opened
+	 */
+	void reopen()
+		throws IOException
+	{
+		bloom = getBloomFilter();
+		sealedBloom = null;
+		out = new RandomAccessFile(logFile, "rw");
+		// The summary becomes stale with the first appended record.
+		indexFile.delete();
+	}
+
+	/**
+	 * Seals this segment: no more records are appended and its summary is written.
+	 *
+	 * @throws IOException
+	 *         if writing the summary fails
+	 */
+	void seal()
+		throws IOException
+	{
+		if (out == null)
+			return;
+
+		try {
+			out.close();
+		}
+		finally {
+			out = null;
+			writeIndex();
+			sealedBloom = new SoftReference<>(bloom);
+			bloom = null;
+		}
+	}
+
+	/**
+	 * Appends a record to this segment.
+	 *
+	 * @param names
+	 *        the property names of the record
+	 * @param values
+	 *        the property values of the record
+	 * @param timestamp
+	 *        the timestamp of the record
+	 * @return the appended record
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	Entry append(String[] names, String[] values, long timestamp)
+		throws IOException
+	{
+		byte[] record = encode(names, values, timestamp);
+		long position = length;
+
+		out.seek(position);
+		out.write(record);
+		addToSummary(position, timestamp, values, bloom);
+		length = position + record.length;
+		return new Entry(this, position, record.length, false, timestamp, names, values);
+	}
+
+	/**
+	 * Marks a record of this segment deleted.
+	 *
+	 * @param entry
+	 *        the record
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	void delete(Entry entry)
+		throws IOException
+	{
+		if (out != null) {
+			out.seek(entry.position + 4);
+			out.write(FLAG_DELETED);
+		}
+		else {
+			RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+
+			try {
+				raf.seek(entry.position + 4);
+				raf.write(FLAG_DELETED);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		liveCount--;
+	}
+
+	/**
+	 * Writes the summary of this segment if it is sealed, e.g. after records have been deleted.
+	 *
+	 * @throws IOException
+	 *         if writing fails
+	 */
+	void flushIndex()
+		throws IOException
+	{
+		if (out == null)
+			writeIndex();
+	}
+
+	/**
+	 * Closes this segment and removes its files.
+	 */
+	void remove()
+	{
+		closeQuietly(out);
+		out = null;
+		logFile.delete();
+		indexFile.delete();
+	}
+
+	/**
+	 * Determines whether records are appended to this segment.
+	 *
+	 * @return <tt>true</tt> if records are appended to this segment
+	 */
+	boolean isOpen()
+	{
+		return out != null;
+	}
+
+	/**
+	 * Gets the length in bytes of the records of this segment.
+	 *
+	 * @return the length in bytes of the records of this segment
+	 */
+	long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Gets the number of records which are not deleted.
+	 *
+	 * @return the number of records which are not deleted
+	 */
+	int getLiveCount()
+	{
+		return liveCount;
+	}
+
+	/**
+	 * Gets the lowest record timestamp.
+	 *
+	 * @return the lowest record timestamp or {@link Long#MAX_VALUE} if there are no records
+	 */
+	long getMinTimestamp()
+	{
+		return minTimestamp;
+	}
+
+	/**
+	 * Gets the highest record timestamp.
+	 *
+	 * @return the highest record timestamp or {@link Long#MIN_VALUE} if there are no records
+	 */
+	long getMaxTimestamp()
+	{
+		return maxTimestamp;
+	}
+
+	/**
+	 * Determines whether the records are in the order of their timestamps.
+	 *
+	 * @return <tt>true</tt> if the records are in the order of their timestamps
+	 */
+	boolean isSorted()
+	{
+		return sorted;
+	}
+
+	/**
+	 * Determines whether a record of this segment may contain all of a set of keywords.
+	 *
+	 * @param keywords
+	 *        the keywords
+	 * @return <tt>false</tt> if no record of this segment contains all of <tt>keywords</tt>
+	 */
+	boolean mightContain(String[] keywords)
+	{
+		KeywordBloomFilter bloom;
+
+		try {
+			bloom = getBloomFilter();
+		}
+		catch (IOException ioe) {
+			logger.warn("Failed to read history bloom filter " + indexFile, ioe);
+			return true;
+		}
+		for (String keyword : keywords) {
+			if (!bloom.mightContain(keyword))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the bloom filter of this segment, loading it from the summary file if necessary.
+	 *
+	 * @return the bloom filter of this segment
+	 * @throws IOException
+	 *         if reading the summary file fails
+	 */
+	private synchronized KeywordBloomFilter getBloomFilter()
+		throws IOException
+	{
+		KeywordBloomFilter bloom = this.bloom;
+
+		if (bloom == null && sealedBloom != null)
+			bloom = sealedBloom.get();
+		if (bloom == null) {
+			byte[] bits = new byte[KeywordBloomFilter.SIZE];
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+
+			try {
+				raf.seek(bloomPosition);
+				raf.readFully(bits);
+			}
+			finally {
+				raf.close();
+			}
+			bloom = new KeywordBloomFilter(bits);
+			sealedBloom = new SoftReference<>(bloom);
+		}
+		return bloom;
+	}
+
+	/**
+	 * Gets the position from which to read forward to find the records with timestamps at or
+	 * after a specific time.
+	 *
+	 * @param timestamp
+	 *        the time
+	 * @return the position from which to read forward
+	 */
+	long seekForward(long timestamp)
+	{
+		if (!sorted)
+			return 0;
+
+		// Read the size first so that the arrays are at least as large.
+		int size = indexSize;
+		long[] timestamps = indexTimestamps;
+		long[] positions = indexPositions;
+		int i = Arrays.binarySearch(timestamps, 0, size, timestamp);
+
+		if (i < 0)
+			i = -i - 1;
+		// The records before the last index entry with a lower timestamp are all lower.
+		while (i > 0 && timestamps[i - 1] >= timestamp)
+			i--;
+		return (i == 0) ? 0 : positions[i - 1];
+	}
+
+	/**
+	 * Gets the position from which to read backward to find the records with timestamps before a
+	 * specific time.
+	 *
+	 * @param timestamp
+	 *        the time
+	 * @param limit
+	 *        the length of the segment to consider
+	 * @return the position from which to read backward
+	 */
+	long seekBackward(long timestamp, long limit)
+	{
+		if (!sorted)
+			return limit;
+
+		int size = indexSize;
+		long[] timestamps = indexTimestamps;
+		long[] positions = indexPositions;
+		int i = Arrays.binarySearch(timestamps, 0, size, timestamp);
+
+		if (i < 0)
+			i = -i - 1;
+		// The records after the first index entry with a higher or equal timestamp are all so.
+		while (i > 0 && timestamps[i - 1] >= timestamp)
+			i--;
+		return (i == size) ? limit : Math.min(positions[i], limit);
+	}
+
+	/**
+	 * Encodes a record.
+	 *
+	 * @param names
+	 *        the property names
+	 * @param values
+	 *        the property values
+	 * @param timestamp
+	 *        the timestamp
+	 * @return the encoded record
+	 * @throws IOException
+	 *         if a property is too long
+	 */
+	private static byte[] encode(String[] names, String[] values, long timestamp)
+		throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		// length, flags and CRC are filled in below.
+		out.writeInt(0);
+		out.writeByte(0);
+		out.writeInt(0);
+		out.writeLong(timestamp);
+		out.writeShort(names.length);
+		for (int i = 0; i < names.length; i++) {
+			byte[] name = names[i].getBytes(UTF_8);
+			byte[] value = values[i].getBytes(UTF_8);
+
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeInt(value.length);
+			out.write(value);
+		}
+		out.writeInt(0);
+
+		byte[] record = bytes.toByteArray();
+		int bodyLength = record.length - 8;
+		CRC32 crc = new CRC32();
+
+		crc.update(record, 9, record.length - 13);
+		putInt(record, 0, bodyLength);
+		putInt(record, 5, (int) crc.getValue());
+		putInt(record, record.length - 4, bodyLength);
+		return record;
+	}
+
+	/**
+	 * Writes a big-endian <tt>int</tt> into a byte array.
+	 */
+	private static void putInt(byte[] buf, int off, int value)
+	{
+		buf[off] = (byte) (value >>> 24);
+		buf[off + 1] = (byte) (value >>> 16);
+		buf[off + 2] = (byte) (value >>> 8);
+		buf[off + 3] = (byte) value;
+	}
+
+	/**
+	 * Reads a big-endian <tt>int</tt> from a byte array.
+	 */
+	private static int getInt(byte[] buf, int off)
+	{
+		return ((buf[off] & 0xFF) << 24) | ((buf[off + 1] & 0xFF) << 16)
+			| ((buf[off + 2] & 0xFF) << 8) | (buf[off + 3] & 0xFF);
+	}
+
+	/**
+	 * Reads a big-endian <tt>long</tt> from a byte array.
+	 */
+	private static long getLong(byte[] buf, int off)
+	{
+		return ((long) getInt(buf, off) << 32) | (getInt(buf, off + 4) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Closes a <tt>Closeable</tt> ignoring any <tt>IOException</tt>.
+	 */
+	private static void closeQuietly(Closeable closeable)
+	{
+		if (closeable != null) {
+			try {
+				closeable.close();
+			}
+			catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Initializes a new <tt>Reader</tt> of the records of this segment.
+	 *
+	 * @param limit
+	 *        the length of the segment to read, e.g. {@link #getLength()} at the start of a query
+	 * @return the new reader
+	 */
+	Reader newReader(long limit)
+	{
+		return new Reader(limit);
+	}
+
+	/**
+	 * A record of a segment.
+	 */
+	static final class Entry
+	{
+		/**
+		 * The segment of the record.
+		 */
+		final LogSegment segment;
+
+		/**
+		 * The position of the record in the segment.
+		 */
+		final long position;
+
+		/**
+		 * The length in bytes of the record.
+		 */
+		final int size;
+
+		/**
+		 * Whether the record is deleted.
+		 */
+		final boolean deleted;
+
+		/**
+		 * The timestamp of the record.
+		 */
+		final long timestamp;
+
+		/**
+		 * The property names of the record.
+		 */
+		final String[] names;
+
+		/**
+		 * The property values of the record.
+		 */
+		final String[] values;
+
+		Entry(LogSegment segment, long position, int size, boolean deleted, long timestamp,
+			String[] names, String[] values)
+		{
+			this.segment = segment;
+			this.position = position;
+			this.size = size;
+			this.deleted = deleted;
+			this.timestamp = timestamp;
+			this.names = names;
+			this.values = values;
+		}
+
+		/**
+		 * Gets the value of a property of the record.
+		 *
+		 * @param name
+		 *        the property name
+		 * @return the value of property <tt>name</tt> or <tt>null</tt> if the record has none
+		 */
+		String getValue(String name)
+		{
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name))
+					return values[i];
+			}
+			return null;
+		}
+
+		/**
+		 * Creates a <tt>HistoryRecord</tt> of the record.
+		 *
+		 * @return a <tt>HistoryRecord</tt> of the record
+		 */
+		HistoryRecord toHistoryRecord()
+		{
+			return new HistoryRecord(names, values, new Date(timestamp));
+		}
+	}
+
+	/**
+	 * Reads the records of a segment forward or backward through a block buffer. The segment file
+	 * is only open while a block is read so that an abandoned query leaks no file descriptor.
+	 */
+	final class Reader
+	{
+		/**
+		 * The length of the segment to read.
+		 */
+		private final long limit;
+
+		/**
+		 * The block buffer.
+		 */
+		private byte[] block = new byte[BLOCK_SIZE];
+
+		/**
+		 * The position in the segment of {@link #block}.
+		 */
+		private long blockPosition;
+
+		/**
+		 * The number of bytes in {@link #block}.
+		 */
+		private int blockLength;
+
+		/**
+		 * Initializes a new <tt>Reader</tt> instance.
+		 *
+		 * @param limit
+		 *        the length of the segment to read
+		 */
+		private Reader(long limit)
+		{
+			this.limit = limit;
+		}
+
+		/**
+		 * Ensures that a range of the segment is in {@link #block}.
+		 *
+		 * @param position
+		 *        the position of the range
+		 * @param length
+		 *        the length of the range
+		 * @param backward
+		 *        whether the next range to be read likely precedes this one
+		 * @return the offset in {@link #block} of the range
+		 * @throws IOException
+		 *         if reading fails
+		 */
+		private int fill(long position, int length, boolean backward)
+			throws IOException
+		{
+			if (position >= blockPosition && position + length <= blockPosition + blockLength)
+				return (int) (position - blockPosition);
+
+			if (length > block.length)
+				block = new byte[length];
+
+			long start = backward ? Math.max(0, position + length - block.length) : position;
+			int count = (int) Math.min(block.length, limit - start);
+			RandomAccessFile raf = new RandomAccessFile(logFile, "r");
+
+			try {
+				raf.seek(start);
+				raf.readFully(block, 0, count);
+			}
+			finally {
+				raf.close();
+			}
+			blockPosition = start;
+			blockLength = count;
+			return (int) (position - start);
+		}
+
+		/**
+		 * Reads the record at a specific position.
+		 *
+		 * @param position
+		 *        the position of the record
+		 * @return the record or <tt>null</tt> if there is no valid record at <tt>position</tt>
+		 */
+		Entry readForward(long position)
+		{
+			try {
+				if (position + 8 + BODY_HEADER_LENGTH > limit)
+					return null;
+
+				int bodyLength = getInt(block, fill(position, 4, false));
+
+				if (bodyLength < BODY_HEADER_LENGTH || position + 8 + bodyLength > limit)
+					return null;
+				return decode(position, bodyLength, false);
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to read history segment " + logFile, ioe);
+				return null;
+			}
+		}
+
+		/**
+		 * Reads the record which ends at a specific position.
+		 *
+		 * @param end
+		 *        the position at which the record ends
+		 * @return the record or <tt>null</tt> if there is no valid record before <tt>end</tt>
+		 */
+		Entry readBackward(long end)
+		{
+			try {
+				if (end < 8 + BODY_HEADER_LENGTH || end > limit)
+					return null;
+
+				int bodyLength = getInt(block, fill(end - 4, 4, true));
+				long position = end - 8 - bodyLength;
+
+				if (bodyLength < BODY_HEADER_LENGTH || position < 0)
+					return null;
+				return decode(position, bodyLength, true);
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to read history segment " + logFile, ioe);
+				return null;
+			}
+		}
+
+		/**
+		 * Decodes the record at a specific position.
+		 *
+		 * @param position
+		 *        the position of the record
+		 * @param bodyLength
+		 *        the length of the body of the record
+		 * @param backward
+		 *        whether the segment is read backward
+		 * @return the record or <tt>null</tt> if it is corrupt
+		 * @throws IOException
+		 *         if reading fails
+		 */
+		private Entry decode(long position, int bodyLength, boolean backward)
+			throws IOException
+		{
+			int off = fill(position, bodyLength + 8, backward);
+			byte[] buf = block;
+
+			if (getInt(buf, off) != bodyLength || getInt(buf, off + 4 + bodyLength) != bodyLength)
+				return null;
+
+			CRC32 crc = new CRC32();
+
+			crc.update(buf, off + 9, bodyLength - 5);
+			if ((int) crc.getValue() != getInt(buf, off + 5))
+				return null;
+
+			boolean deleted = (buf[off + 4] & FLAG_DELETED) != 0;
+			long timestamp = getLong(buf, off + 9);
+			int propertyCount = ((buf[off + 17] & 0xFF) << 8) | (buf[off + 18] & 0xFF);
+			String[] names = new String[propertyCount];
+			String[] values = new String[propertyCount];
+			int p = off + 19;
+
+			for (int i = 0; i < propertyCount; i++) {
+				int nameLength = ((buf[p] & 0xFF) << 8) | (buf[p + 1] & 0xFF);
+
+				names[i] = new String(buf, p + 2, nameLength, UTF_8);
+				p += 2 + nameLength;
+
+				int valueLength = getInt(buf, p);
+
+				values[i] = new String(buf, p + 4, valueLength, UTF_8);
+				p += 4 + valueLength;
+			}
+			return new Entry(LogSegment.this, position, bodyLength + 8, deleted, timestamp, names,
+				values);
+		}
+	}
+}
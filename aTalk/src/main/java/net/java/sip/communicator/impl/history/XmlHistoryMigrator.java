@@ -0,0 +1,288 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.history;
+
+import net.java.sip.communicator.service.history.History;
+import net.java.sip.communicator.service.history.HistoryID;
+import net.java.sip.communicator.service.history.records.HistoryRecord;
+import net.java.sip.communicator.util.Logger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static net.java.sip.communicator.service.history.HistoryService.DATE_FORMAT;
+
+/**
+ * Migrates the XML files of a history into its {@link HistoryLog}. The files are read with
+ * {@link HistoryImpl}, which repairs broken files, oldest first, and each file is renamed with
+ * the {@link #MIGRATED_SUFFIX} once all of its records have been appended to the log, so that an
+ * interrupted migration resumes with the first file which has not been migrated. The position in
+ * the log at which the records of a file start is recorded in the {@link #PROGRESS_FILE_NAME}
+ * beforehand, and the records of a file whose migration was interrupted are deleted from the log
+ * before it is migrated again so that none is duplicated. Records without a valid timestamp are
+ * skipped. The renamed files are kept so that they can be restored should the log store be
+ * disabled.
+ *
+ * @author Eng Chong Meng
+ */
+public class XmlHistoryMigrator
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>XmlHistoryMigrator</tt> class for logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(XmlHistoryMigrator.class);
+
+	/**
+	 * The suffix appended to the names of the XML files which have been migrated.
+	 */
+	public static final String MIGRATED_SUFFIX = ".migrated";
+
+	/**
+	 * The name of the file in the directory of a history which records the XML file being
+	 * migrated and the position in the log at which its records start.
+	 */
+	static final String PROGRESS_FILE_NAME = "migration.progress";
+
+	/**
+	 * Migrates the XML files of all histories of a <tt>HistoryServiceImpl</tt> which uses the log
+	 * store, e.g. ahead of time rather than on first use of every history.
+	 *
+	 * @param historyService
+	 *        the <tt>HistoryServiceImpl</tt>
+	 * @return the number of migrated records
+	 * @throws IOException
+	 *         if the log of a history cannot be opened
+	 */
+	public static int migrateAll(HistoryServiceImpl historyService)
+		throws IOException
+	{
+		int count = 0;
+		Iterator<HistoryID> ids = historyService.getExistingIDs();
+
+		while (ids.hasNext()) {
+			History history = historyService.getHistory(ids.next());
+
+			if (history instanceof LogHistoryImpl) {
+				LogHistoryImpl logHistory = (LogHistoryImpl) history;
+
+				// Opening the log migrates the XML files if it has not been opened yet.
+				count += migrate(logHistory, logHistory.getLog());
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Migrates the XML files of a history into its log.
+	 *
+	 * @param history
+	 *        the history
+	 * @param log
+	 *        the log of <tt>history</tt>
+	 * @return the number of migrated records
+	 * @throws IOException
+	 *         if appending to the log fails
+	 */
+	static int migrate(LogHistoryImpl history, HistoryLog log)
+		throws IOException
+	{
+		File directory = history.getDirectory();
+		File progressFile = new File(directory, PROGRESS_FILE_NAME);
+		String[] fileNames = directory.list();
+		boolean hasXmlFiles = false;
+
+		if (fileNames != null) {
+			for (String fileName : fileNames) {
+				if (fileName.endsWith(HistoryImpl.SUPPORTED_FILETYPE)) {
+					hasXmlFiles = true;
+					break;
+				}
+			}
+		}
+
+		synchronized (log) {
+			// A previous migration was interrupted before it renamed the file it was migrating.
+			if (progressFile.exists())
+				rollBack(directory, progressFile, log);
+			if (!hasXmlFiles)
+				return 0;
+
+			HistoryImpl xmlHistory = new HistoryImpl(history.getID(), directory,
+				history.getHistoryRecordsStructure(), history.getHistoryServiceImpl());
+			Vector<String> files
+				= HistoryReaderImpl.filterFilesByDate(xmlHistory.getFileList(), null, null);
+			SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+			int count = 0;
+			int skipped = 0;
+
+			for (String fileName : files) {
+				File file = new File(directory, fileName);
+
+				writeProgress(progressFile, fileName, log);
+				try {
+					Document doc = xmlHistory.getDocumentForFile(fileName);
+
+					if (doc != null) {
+						NodeList nodes = doc.getElementsByTagName("record");
+
+						for (int i = 0; i < nodes.getLength(); i++) {
+							HistoryRecord record = toHistoryRecord(nodes.item(i), sdf);
+
+							if (record == null) {
+								logger.warn("Skipped malformed record " + i + " of history file "
+									+ file);
+								skipped++;
+								continue;
+							}
+							log.append(record.getPropertyNames(), record.getPropertyValues(),
+								record.getTimestamp().getTime());
+							count++;
+						}
+					}
+					if (!file.renameTo(new File(directory, fileName + MIGRATED_SUFFIX)))
+						throw new IOException("Failed to rename migrated history file " + file);
+				}
+				catch (IOException | RuntimeException e) {
+					// Leave the log as it was before this file so that it is migrated again later.
+					logger.error("Failed to migrate history file " + file, e);
+					rollBack(directory, progressFile, log);
+					throw e;
+				}
+				if (!progressFile.delete())
+					logger.warn("Failed to delete " + progressFile);
+			}
+			if (count != 0 || skipped != 0) {
+				logger.info("Migrated " + count + " records of history " + history.getID()
+					+ ", skipped " + skipped + " malformed records");
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Creates a <tt>HistoryRecord</tt> of a record element of an XML history file.
+	 *
+	 * @param node
+	 *        the record element
+	 * @param sdf
+	 *        the format of the timestamps of the XML history files
+	 * @return the <tt>HistoryRecord</tt> or <tt>null</tt> if <tt>node</tt> has no valid timestamp
+	 */
+	private static HistoryRecord toHistoryRecord(Node node, SimpleDateFormat sdf)
+	{
+		NamedNodeMap attributes = node.getAttributes();
+		Node ts = (attributes == null) ? null : attributes.getNamedItem("timestamp");
+
+		if (ts == null || ts.getNodeValue() == null)
+			return null;
+
+		Date timestamp;
+
+		try {
+			timestamp = sdf.parse(ts.getNodeValue());
+		}
+		catch (ParseException e) {
+			try {
+				timestamp = new Date(Long.parseLong(ts.getNodeValue()));
+			}
+			catch (NumberFormatException nfe) {
+				return null;
+			}
+		}
+		return HistoryReaderImpl.filterByKeyword(node.getChildNodes(), timestamp, null, null,
+			false);
+	}
+
+	/**
+	 * Records in the progress file of a history the file which is about to be migrated and the
+	 * position in the log at which its records will start, so that they can be rolled back should
+	 * the migration of the file be interrupted.
+	 *
+	 * @param progressFile
+	 *        the progress file
+	 * @param fileName
+	 *        the name of the XML file which is about to be migrated
+	 * @param log
+	 *        the log the records of the file are appended to
+	 * @throws IOException
+	 *         if writing the progress file fails
+	 */
+	private static void writeProgress(File progressFile, String fileName, HistoryLog log)
+		throws IOException
+	{
+		LogSegment[] segments = log.getSegments();
+		LogSegment last = (segments.length == 0) ? null : segments[segments.length - 1];
+		String progress = fileName + "\n" + ((last == null) ? -1 : last.id) + "\n"
+			+ ((last == null) ? 0 : last.getLength()) + "\n";
+		FileOutputStream out = new FileOutputStream(progressFile);
+
+		try {
+			out.write(progress.getBytes("UTF-8"));
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Deletes from a log the records of the XML file recorded in a progress file if the file has
+	 * not been renamed, i.e. if its migration did not complete, and deletes the progress file.
+	 *
+	 * @param directory
+	 *        the directory of the history
+	 * @param progressFile
+	 *        the progress file
+	 * @param log
+	 *        the log of the history
+	 * @throws IOException
+	 *         if the progress file cannot be read or deleting the records fails
+	 */
+	private static void rollBack(File directory, File progressFile, HistoryLog log)
+		throws IOException
+	{
+		BufferedReader in = new BufferedReader(
+			new InputStreamReader(new FileInputStream(progressFile), "UTF-8"));
+		String fileName;
+		long segmentId;
+		long position;
+
+		try {
+			fileName = in.readLine();
+			segmentId = Long.parseLong(in.readLine());
+			position = Long.parseLong(in.readLine());
+		}
+		catch (NumberFormatException nfe) {
+			// The progress file was torn while written, i.e. before any record was appended.
+			fileName = null;
+			segmentId = 0;
+			position = 0;
+		}
+		finally {
+			in.close();
+		}
+		if (fileName != null && new File(directory, fileName).exists()) {
+			int count = log.deleteFrom(segmentId, position);
+
+			if (count != 0)
+				logger.info("Rolled back " + count + " records migrated from " + fileName);
+		}
+		if (!progressFile.delete())
+			throw new IOException("Failed to delete " + progressFile);
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import net.java.sip.communicator.service.msghistory.MessageHistoryPager;
+import net.java.sip.communicator.util.Logger;
+
+import org.atalk.util.ExecutorUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The <tt>MessageHistoryPager</tt> of <tt>MessageHistoryServiceImpl</tt>. Pages are read by
+ * keyset: a page is the messages after (or before) the (timestamp, UUID) key of the last message of
+ * the previous page, which the index of the messages table on (session UUID, timestamp, UUID)
+ * seeks directly, so only the messages of the page are read however deep in the history it is.
+ * <p>
+ * As the history is mostly paged back while scrolling, the next older page is prefetched in the
+ * background as soon as a page is returned. Newer pages are not prefetched since new messages may
+ * be stored meanwhile.
+ *
+ * @author Eng Chong Meng
+ */
+class MessageHistoryPagerImpl implements MessageHistoryPager
+{
+	/**
+	 * The logger for this class.
+	 */
+	private static final Logger logger = Logger.getLogger(MessageHistoryPagerImpl.class);
+
+	/**
+	 * The thread which prefetches the pages of all the pagers.
+	 */
+	private static final ExecutorService prefetcher
+			= ExecutorUtils.newFixedThreadPool(1, true, "MessageHistoryPager");
+
+	private final MessageHistoryServiceImpl service;
+
+	/**
+	 * The paged chat session UUIDs mapped to the <tt>Contact</tt> or <tt>ChatRoom</tt> of the
+	 * session.
+	 */
+	private final Map<String, Object> sessions;
+
+	private final int pageSize;
+
+	/**
+	 * The key of the oldest message returned so far or <tt>null</tt>.
+	 */
+	private Key oldest;
+
+	/**
+	 * The key of the newest message returned so far or <tt>null</tt>.
+	 */
+	private Key newest;
+
+	private boolean hasPrevious = true;
+
+	/**
+	 * The page older than {@link #oldest} being prefetched or <tt>null</tt>.
+	 */
+	private Future<Page> prefetched;
+
+	/**
+	 * The key from which {@link #prefetched} is read.
+	 */
+	private Key prefetchedKey;
+
+	/**
+	 * Creates a pager through the messages of specific chat sessions.
+	 *
+	 * @param service
+	 * 		the <tt>MessageHistoryServiceImpl</tt> which reads the pages
+	 * @param sessions
+	 * 		the chat session UUIDs mapped to the <tt>Contact</tt> or <tt>ChatRoom</tt> of the session
+	 * @param pageSize
+	 * 		the maximum number of messages of a page
+	 */
+	MessageHistoryPagerImpl(MessageHistoryServiceImpl service, Map<String, Object> sessions,
+			int pageSize)
+	{
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("pageSize: " + pageSize);
+
+		this.service = service;
+		this.sessions = sessions;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public synchronized List<EventObject> previousPage()
+	{
+		if (!hasPrevious)
+			return Collections.emptyList();
+
+		Page page = null;
+		if ((prefetched != null) && equals(prefetchedKey, oldest)) {
+			try {
+				page = prefetched.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				logger.warn("Failed to prefetch message history page", e.getCause());
+			}
+		}
+		prefetched = null;
+		if (page == null)
+			page = service.findPage(sessions, oldest, true, pageSize);
+
+		if (page.events.size() < pageSize)
+			hasPrevious = false;
+		if (!page.events.isEmpty()) {
+			oldest = page.first;
+			if (newest == null)
+				newest = page.last;
+		}
+		if (hasPrevious)
+			prefetch();
+		return page.events;
+	}
+
+	@Override
+	public synchronized List<EventObject> nextPage()
+	{
+		if (newest == null)
+			return Collections.emptyList();
+
+		Page page = service.findPage(sessions, newest, false, pageSize);
+		if (!page.events.isEmpty())
+			newest = page.last;
+		return page.events;
+	}
+
+	@Override
+	public synchronized boolean hasPrevious()
+	{
+		return hasPrevious;
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		if (prefetched != null) {
+			prefetched.cancel(false);
+			prefetched = null;
+		}
+		hasPrevious = false;
+		newest = null;
+	}
+
+	/**
+	 * Starts reading the page older than {@link #oldest} in the background.
+	 */
+	private void prefetch()
+	{
+		final Key key = oldest;
+
+		prefetchedKey = key;
+		prefetched = prefetcher.submit(new Callable<Page>()
+		{
+			@Override
+			public Page call()
+			{
+				return service.findPage(sessions, key, true, pageSize);
+			}
+		});
+	}
+
+	private static boolean equals(Key k1, Key k2)
+	{
+		return (k1 == null) ? (k2 == null) : k1.equals(k2);
+	}
+
+	/**
+	 * The position of a message in the history: its timestamp, then its UUID among the messages
+	 * with the same timestamp.
+	 */
+	static class Key implements Comparable<Key>
+	{
+		final long timestamp;
+
+		final String uuid;
+
+		Key(long timestamp, String uuid)
+		{
+			this.timestamp = timestamp;
+			this.uuid = (uuid == null) ? "" : uuid;
+		}
+
+		/**
+		 * Compares this key to another key in the order of the history.
+		 */
+		@Override
+		public int compareTo(Key key)
+		{
+			if (timestamp != key.timestamp)
+				return (timestamp < key.timestamp) ? -1 : 1;
+			return uuid.compareTo(key.uuid);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return (o instanceof Key) && (((Key) o).timestamp == timestamp)
+					&& ((Key) o).uuid.equals(uuid);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int) (timestamp ^ (timestamp >>> 32)) * 31 + uuid.hashCode();
+		}
+	}
+
+	/**
+	 * A page of messages, oldest first.
+	 */
+	static class Page
+	{
+		final List<EventObject> events;
+
+		/**
+		 * The key of the oldest message of the page or <tt>null</tt> if it is empty.
+		 */
+		final Key first;
+
+		/**
+		 * The key of the newest message of the page or <tt>null</tt> if it is empty.
+		 */
+		final Key last;
+
+		Page(List<EventObject> events, Key first, Key last)
+		{
+			this.events = events;
+			this.first = first;
+			this.last = last;
+		}
+	}
+}
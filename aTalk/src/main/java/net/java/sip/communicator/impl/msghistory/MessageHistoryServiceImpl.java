@@ -35,6 +35,7 @@ import net.java.sip.communicator.util.account.AccountUtils;
 
 import org.atalk.android.gui.chat.*;
 import org.atalk.persistance.DatabaseBackend;
+import org.atalk.persistance.MessageJournal;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.util.StringUtils;
 import org.jxmpp.util.XmppStringUtils;
@@ -73,6 +74,11 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	 */
 	private static final String ORDER_ASC = ChatMessage.TIME_STAMP + " ASC";
 	private static final String ORDER_DESC = ChatMessage.TIME_STAMP + " DESC";
+	/**
+	 * Sort database message records by their keyset (TimeStamp, UUID) in ASC or DESC
+	 */
+	private static final String ORDER_KEY_ASC = ORDER_ASC + ", " + ChatMessage.UUID + " ASC";
+	private static final String ORDER_KEY_DESC = ORDER_DESC + ", " + ChatMessage.UUID + " DESC";
 	/**
 	 * Indicates if history logging is enabled.
 	 */
@@ -99,6 +105,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	private ServiceRegistration messageSourceServiceReg = null;
 
 	private SQLiteDatabase mDB;
+	private MessageJournal mJournal;
 	private ContentValues contentValues = new ContentValues();
 
 	/**
@@ -112,6 +119,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	{
 		this.bundleContext = bc;
 		mDB = DatabaseBackend.getWritableDB();
+		mJournal = DatabaseBackend.getMessageJournal();
 
 		ServiceReference refConfig
 				= bundleContext.getServiceReference(ConfigurationService.class.getName());
@@ -157,6 +165,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 			configService.removePropertyChangeListener(msgHistoryPropListener);
 
 		stopMessageHistoryService();
+
+		// Store the messages still queued for the background writer
+		mJournal.flush();
 	}
 
 	/**
@@ -368,9 +379,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(contact);
 		Cursor cursor;
 		String[] args = {sessionUuid, startTimeStamp};
-		cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
-				args, null, null, ORDER_ASC);
+				args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -397,9 +408,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(contact);
 		Cursor cursor;
 		String[] args = {sessionUuid, endTimeStamp};
-		cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-				args, null, null, ORDER_ASC);
+				args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -430,9 +441,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(contact);
 		Cursor cursor;
 		String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
-		cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-						+ ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_ASC);
+						+ ChatMessage.TIME_STAMP + "<?", args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -509,8 +520,8 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 			String sessionUuid = getSessionUuidByJid(contact);
 			Cursor cursor;
 			String[] args = {sessionUuid};
-			cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
-					+ "=?", args, null, null, ORDER_DESC, String.valueOf(count));
+			cursor = queryMessages(ChatMessage.SESSION_UUID
+					+ "=?", args, ORDER_DESC, String.valueOf(count));
 
 			while (cursor.moveToNext()) {
 				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -545,9 +556,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 			String sessionUuid = getSessionUuidByJid(contact);
 			String[] args = {sessionUuid, startTimeStamp};
 			Cursor cursor;
-			cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+			cursor = queryMessages(
 					ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
-					args, null, null, ORDER_ASC, String.valueOf(count));
+					args, ORDER_ASC, String.valueOf(count));
 
 			while (cursor.moveToNext()) {
 				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -583,9 +594,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 			String sessionUuid = getSessionUuidByJid(contact);
 			Cursor cursor;
 			String[] args = {sessionUuid, endTimeStamp};
-			cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+			cursor = queryMessages(
 					ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-					args, null, null, ORDER_DESC, String.valueOf(count));
+					args, ORDER_DESC, String.valueOf(count));
 
 			while (cursor.moveToNext()) {
 				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
@@ -669,8 +680,8 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 				}
 				args = argList.toArray(new String[argList.size()]);
 
-				cursorMsg = mDB.query(ChatMessage.TABLE_NAME, null, whereCondition, args,
-						null, null, ORDER_DESC, String.valueOf(count));
+				cursorMsg = queryMessages(whereCondition, args,
+						ORDER_DESC, String.valueOf(count));
 
 
 				while (cursorMsg.moveToNext()) {
@@ -936,6 +947,23 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		}
 	}
 
+	/**
+	 * Used to convert HistoryRecord in the message event of the <tt>Contact</tt> or
+	 * <tt>ChatRoom</tt> of its chat session
+	 *
+	 * @param cursor
+	 * 		HistoryRecord in cursor
+	 * @param owner
+	 * 		the <tt>Contact</tt> or <tt>ChatRoom</tt> of the chat session of the record
+	 * @return EventObject
+	 */
+	private EventObject convertHistoryRecordToMessageEvent(Cursor cursor, Object owner)
+	{
+		return (owner instanceof ChatRoom)
+				? convertHistoryRecordToMessageEvent(cursor, (ChatRoom) owner)
+				: convertHistoryRecordToMessageEvent(cursor, (Contact) owner);
+	}
+
 	/**
 	 * Used to convert HistoryRecord in ChatRoomMessageDeliveredEvent or
 	 * ChatRoomMessageReceivedEvent which are returned in cursor by the finder methods
@@ -1393,7 +1421,30 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		contentValues.put(ChatMessage.DIRECTION, direction);
 		contentValues.put(ChatMessage.STATUS, ChatMessage.DIR_OUT.equals(direction) ? 0 : 1);
 
-		mDB.insert(ChatMessage.TABLE_NAME, null, contentValues);
+		// Stored and indexed in a batch with the other messages written meanwhile
+		mJournal.insert(new ContentValues(contentValues), true);
+	}
+
+	/**
+	 * Queries the messages table once all the messages written so far are stored, so that
+	 * readers always see their own writes.
+	 *
+	 * @param selection
+	 * 		the WHERE clause
+	 * @param selectionArgs
+	 * 		the arguments of the WHERE clause
+	 * @param orderBy
+	 * 		the ORDER BY clause
+	 * @param limit
+	 * 		the LIMIT clause or <tt>null</tt>
+	 * @return the cursor of the messages
+	 */
+	private Cursor queryMessages(String selection, String[] selectionArgs, String orderBy,
+			String limit)
+	{
+		mJournal.flush();
+		return mDB.query(ChatMessage.TABLE_NAME, null, selection, selectionArgs, null, null,
+				orderBy, limit);
 	}
 
 	//============ service change events handler ================//
@@ -1489,31 +1540,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	public Collection<EventObject> findByPeriod(MetaContact metaContact, Date startDate,
 			Date endDate, String[] keywords, boolean caseSensitive)
 	{
-		HashSet<EventObject> result = new HashSet<>();
-		String startTimeStamp = String.valueOf(startDate.getTime());
-		String endTimeStamp = String.valueOf(endDate.getTime());
-		String filterLike = "( ";
-		for (String word : keywords) {
-			filterLike += ChatMessage.MSG_BODY + " LIKE '%" + word + "%' OR ";
-		}
-		filterLike = filterLike.substring(0, filterLike.length() - 4) + " )";
-
-		Iterator<Contact> contacts = metaContact.getContacts();
-		while (contacts.hasNext()) {
-			Contact contact = contacts.next();
-			String sessionUuid = getSessionUuidByJid(contact);
-			String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
-
-			Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-					ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-							+ ChatMessage.TIME_STAMP + "<? AND " + filterLike, args, null,
-					null, ORDER_ASC);
-
-			while (cursor.moveToNext()) {
-				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
-			}
-		}
-		return result;
+		return findByKeywords(metaContact, startDate, endDate, keywords);
 	}
 
 	/**
@@ -1531,24 +1558,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	public Collection<EventObject> findByKeyword(MetaContact metaContact, String keyword,
 			boolean caseSensitive)
 	{
-		HashSet<EventObject> result = new HashSet<>();
-		String filterLike = "( " + ChatMessage.MSG_BODY + " LIKE '%" + keyword + "%' )";
-
-		Iterator<Contact> contacts = metaContact.getContacts();
-		while (contacts.hasNext()) {
-			Contact contact = contacts.next();
-			String sessionUuid = getSessionUuidByJid(contact);
-			String[] args = {sessionUuid};
-
-			Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-					ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null,
-					ORDER_ASC);
-
-			while (cursor.moveToNext()) {
-				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
-			}
-		}
-		return result;
+		return findByKeywords(metaContact, null, null, new String[]{keyword});
 	}
 
 	/**
@@ -1566,28 +1576,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	public Collection<EventObject> findByKeywords(MetaContact metaContact,
 			String[] keywords, boolean caseSensitive)
 	{
-		HashSet<EventObject> result = new HashSet<>();
-		String filterLike = "( ";
-		for (String word : keywords) {
-			filterLike += ChatMessage.MSG_BODY + " LIKE '%" + word + "%' OR ";
-		}
-		filterLike = filterLike.substring(0, filterLike.length() - 4) + " )";
-
-		Iterator<Contact> contacts = metaContact.getContacts();
-		while (contacts.hasNext()) {
-			Contact contact = contacts.next();
-			String sessionUuid = getSessionUuidByJid(contact);
-			String[] args = {sessionUuid};
-
-			Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-					ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null,
-					ORDER_ASC);
-
-			while (cursor.moveToNext()) {
-				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
-			}
-		}
-		return result;
+		return findByKeywords(metaContact, null, null, keywords);
 	}
 
 	/**
@@ -1606,9 +1595,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid, startTimeStamp};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		Cursor cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
-				args, null, null, ORDER_ASC);
+				args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -1632,9 +1621,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid, endTimeStamp};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		Cursor cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-				args, null, null, ORDER_ASC);
+				args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -1661,9 +1650,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		Cursor cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-						+ ChatMessage.TIME_STAMP + "<?", args, null, null, ORDER_ASC);
+						+ ChatMessage.TIME_STAMP + "<?", args, ORDER_ASC, null);
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -1710,26 +1699,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	public Collection<EventObject> findByPeriod(ChatRoom room, Date startDate, Date
 			endDate, String[] keywords, boolean caseSensitive)
 	{
-		HashSet<EventObject> result = new HashSet<>();
-		String startTimeStamp = String.valueOf(startDate.getTime());
-		String endTimeStamp = String.valueOf(endDate.getTime());
-		String sessionUuid = getSessionUuidByJid(room);
-		String[] args = {sessionUuid, startTimeStamp, endTimeStamp};
-		String filterLike = "( ";
-		for (String word : keywords) {
-			filterLike += ChatMessage.MSG_BODY + " LIKE '%" + word + "%' OR ";
-		}
-		filterLike = filterLike.substring(0, filterLike.length() - 4) + " )";
-
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=? AND "
-						+ ChatMessage.TIME_STAMP + "<? AND " + filterLike, args, null, null,
-				ORDER_ASC);
-
-		while (cursor.moveToNext()) {
-			result.add(convertHistoryRecordToMessageEvent(cursor, room));
-		}
-		return result;
+		return findByKeywords(room, startDate, endDate, keywords);
 	}
 
 	/**
@@ -1761,18 +1731,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	public Collection<EventObject> findByKeyword(ChatRoom room, String keyword,
 			boolean caseSensitive)
 	{
-		HashSet<EventObject> result = new HashSet<>();
-		String sessionUuid = getSessionUuidByJid(room);
-		String[] args = {sessionUuid};
-		String filterLike = "( " + ChatMessage.MSG_BODY + " LIKE '%" + keyword + "%' )";
-
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-				ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
-
-		while (cursor.moveToNext()) {
-			result.add(convertHistoryRecordToMessageEvent(cursor, room));
-		}
-		return result;
+		return findByKeywords(room, null, null, new String[]{keyword});
 	}
 
 	/**
@@ -1804,25 +1763,405 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	 */
 	public Collection<EventObject> findByKeywords(ChatRoom room, String[] keywords,
 			boolean caseSensitive)
+	{
+		return findByKeywords(room, null, null, keywords);
+	}
+
+	/**
+	 * Returns a page of the messages exchanged by all the contacts in the supplied metaContact
+	 * which contain any of the given keywords, the best matches first.
+	 *
+	 * @param metaContact
+	 * 		MetaContact
+	 * @param keywords
+	 * 		array of keywords
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param offset
+	 * 		the number of best matches to skip
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return List of MessageReceivedEvents or MessageDeliveredEvents
+	 */
+	public List<EventObject> searchMessages(MetaContact metaContact, String[] keywords,
+			Date startDate, Date endDate, int offset, int count)
+	{
+		return searchMessages(getSessions(metaContact), keywords, startDate, endDate, offset,
+				count);
+	}
+
+	/**
+	 * Returns a page of the messages exchanged in the supplied chat room which contain any of the
+	 * given keywords, the best matches first.
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @param keywords
+	 * 		array of keywords
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param offset
+	 * 		the number of best matches to skip
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return List of ChatRoomMessageReceivedEvents or ChatRoomMessageDeliveredEvents
+	 */
+	public List<EventObject> searchMessages(ChatRoom room, String[] keywords, Date startDate,
+			Date endDate, int offset, int count)
+	{
+		return searchMessages(getSessions(room), keywords, startDate, endDate, offset, count);
+	}
+
+	/**
+	 * Returns a pager through the messages exchanged by all the contacts in the supplied
+	 * metaContact, starting from the most recent messages
+	 *
+	 * @param metaContact
+	 * 		MetaContact
+	 * @param pageSize
+	 * 		the maximum number of messages of a page
+	 * @return the MessageHistoryPager
+	 */
+	public MessageHistoryPager getHistoryPager(MetaContact metaContact, int pageSize)
+	{
+		return new MessageHistoryPagerImpl(this, getSessions(metaContact), pageSize);
+	}
+
+	/**
+	 * Returns a pager through the messages exchanged in the supplied chat room, starting from the
+	 * most recent messages
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @param pageSize
+	 * 		the maximum number of messages of a page
+	 * @return the MessageHistoryPager
+	 */
+	public MessageHistoryPager getHistoryPager(ChatRoom room, int pageSize)
+	{
+		return new MessageHistoryPagerImpl(this, getSessions(room), pageSize);
+	}
+
+	/**
+	 * Reads the page of the messages of the given chat sessions just before or after a key. The
+	 * messages of each session are queried separately, so that each query is a seek in the index
+	 * on (chatSessionUuid, timeStamp, uuid) which reads at most <tt>count</tt> messages, and the
+	 * results are merged.
+	 *
+	 * @param sessions
+	 * 		the chat session UUIDs mapped to the <tt>Contact</tt> or <tt>ChatRoom</tt> of the session
+	 * @param key
+	 * 		the key of the message next to the page or <tt>null</tt> to read the most recent messages
+	 * @param older
+	 * 		<tt>true</tt> to read the messages before <tt>key</tt>, <tt>false</tt> after it
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return the page
+	 */
+	MessageHistoryPagerImpl.Page findPage(Map<String, Object> sessions,
+			MessageHistoryPagerImpl.Key key, boolean older, int count)
+	{
+		TreeMap<MessageHistoryPagerImpl.Key, EventObject> page = new TreeMap<>();
+		String selection = ChatMessage.SESSION_UUID + "=?";
+		String orderBy = older ? ORDER_KEY_DESC : ORDER_KEY_ASC;
+
+		if (key != null) {
+			// (timeStamp, uuid) < (?, ?) which the index can seek on any SQLite version
+			String op = older ? "<" : ">";
+			selection += " AND " + ChatMessage.TIME_STAMP + op + "=? AND ("
+					+ ChatMessage.TIME_STAMP + op + "? OR " + ChatMessage.UUID + op + "?)";
+		}
+
+		for (Map.Entry<String, Object> session : sessions.entrySet()) {
+			String[] args = (key == null) ? new String[]{session.getKey()}
+					: new String[]{session.getKey(), String.valueOf(key.timestamp),
+					String.valueOf(key.timestamp), key.uuid};
+
+			Cursor cursor = queryMessages(selection, args, orderBy, String.valueOf(count));
+			int timeStampColumn = cursor.getColumnIndex(ChatMessage.TIME_STAMP);
+			int uuidColumn = cursor.getColumnIndex(ChatMessage.UUID);
+			while (cursor.moveToNext()) {
+				page.put(new MessageHistoryPagerImpl.Key(cursor.getLong(timeStampColumn),
+								cursor.getString(uuidColumn)),
+						convertHistoryRecordToMessageEvent(cursor, session.getValue()));
+
+				// keep the count messages nearest to key
+				if (page.size() > count) {
+					if (older)
+						page.pollFirstEntry();
+					else
+						page.pollLastEntry();
+				}
+			}
+			cursor.close();
+		}
+
+		if (page.isEmpty())
+			return new MessageHistoryPagerImpl.Page(new ArrayList<EventObject>(), null, null);
+		return new MessageHistoryPagerImpl.Page(new ArrayList<>(page.values()),
+				page.firstKey(), page.lastKey());
+	}
+
+	/**
+	 * Returns the chat sessions of all the contacts in the supplied metaContact.
+	 *
+	 * @param metaContact
+	 * 		MetaContact
+	 * @return the chat session UUIDs mapped to their <tt>Contact</tt>
+	 */
+	private Map<String, Object> getSessions(MetaContact metaContact)
+	{
+		Map<String, Object> sessions = new HashMap<>();
+
+		Iterator<Contact> contacts = metaContact.getContacts();
+		while (contacts.hasNext()) {
+			Contact contact = contacts.next();
+			sessions.put(getSessionUuidByJid(contact), contact);
+		}
+		return sessions;
+	}
+
+	/**
+	 * Returns the chat session of the supplied chat room.
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @return the chat session UUID mapped to <tt>room</tt>
+	 */
+	private Map<String, Object> getSessions(ChatRoom room)
+	{
+		Map<String, Object> sessions = new HashMap<>();
+
+		sessions.put(getSessionUuidByJid(room), room);
+		return sessions;
+	}
+
+	/**
+	 * Returns the messages exchanged by all the contacts in the supplied metaContact in the given
+	 * period which contain any of the given keywords, looked up in the {@link MessageSearchIndex}.
+	 *
+	 * @param metaContact
+	 * 		MetaContact
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param keywords
+	 * 		array of keywords
+	 * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+	 */
+	private Collection<EventObject> findByKeywords(MetaContact metaContact, Date startDate,
+			Date endDate, String[] keywords)
 	{
 		HashSet<EventObject> result = new HashSet<>();
-		String sessionUuid = getSessionUuidByJid(room);
-		String[] args = {sessionUuid};
-		String filterLike = "( ";
-		for (String word : keywords) {
-			filterLike += ChatMessage.MSG_BODY + " LIKE '%" + word + "%' OR ";
+
+		Iterator<Contact> contacts = metaContact.getContacts();
+		while (contacts.hasNext()) {
+			Contact contact = contacts.next();
+			Cursor cursor = queryByKeywords(getSessionUuidByJid(contact), startDate, endDate,
+					keywords);
+
+			if (cursor == null)
+				break;
+			while (cursor.moveToNext()) {
+				result.add(convertHistoryRecordToMessageEvent(cursor, contact));
+			}
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the messages exchanged in the supplied chat room in the given period which contain
+	 * any of the given keywords, looked up in the {@link MessageSearchIndex}.
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param keywords
+	 * 		array of keywords
+	 * @return Collection of MessageReceivedEvents or MessageDeliveredEvents
+	 */
+	private Collection<EventObject> findByKeywords(ChatRoom room, Date startDate, Date endDate,
+			String[] keywords)
+	{
+		HashSet<EventObject> result = new HashSet<>();
+		Cursor cursor = queryByKeywords(getSessionUuidByJid(room), startDate, endDate, keywords);
+
+		if (cursor != null) {
+			while (cursor.moveToNext()) {
+				result.add(convertHistoryRecordToMessageEvent(cursor, room));
+			}
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Queries the messages of a chat session in the given period which contain any of the given
+	 * keywords. The keywords are bound as parameters of the full-text query, or of the
+	 * <tt>LIKE</tt> filters of the keywords which cannot be looked up in the index, so that they
+	 * are never interpreted as SQL.
+	 *
+	 * @param sessionUuid
+	 * 		the chat session UUID
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param keywords
+	 * 		array of keywords
+	 * @return the cursor of the messages in the order of their timestamps or <tt>null</tt> if
+	 * no keyword can match a message
+	 */
+	private Cursor queryByKeywords(String sessionUuid, Date startDate, Date endDate,
+			String[] keywords)
+	{
+		String matchQuery = MessageSearchIndex.toMatchQuery(keywords);
+		String[] patterns = MessageSearchIndex.toLikePatterns(keywords);
+		if ((matchQuery == null) && (patterns.length == 0))
+			return null;
+
+		boolean hasPeriod = (startDate != null) || (endDate != null);
+		List<String> args = new ArrayList<>(4);
+
+		if (matchQuery != null)
+			args.add(matchQuery);
+		Collections.addAll(args, patterns);
+		args.add(sessionUuid);
+		if (hasPeriod)
+			addPeriodArgs(args, startDate, endDate);
+
+		mJournal.flush();
+		return mDB.rawQuery(MessageSearchIndex.getMessagesQuery(matchQuery != null,
+				patterns.length, 1, hasPeriod), args.toArray(new String[args.size()]));
+	}
+
+	/**
+	 * Returns a page of the messages of the given chat sessions which contain any of the given
+	 * keywords, ranked by the {@link MessageSearchIndex}. Only the ranking columns of the
+	 * {@link MessageSearchIndex#MAX_RANKED_HITS} most recent matches are read; the messages
+	 * themselves are only read for the requested page. The matches of the keywords which cannot
+	 * be looked up in the index rank below the matches of the index.
+	 *
+	 * @param sessions
+	 * 		the chat session UUIDs mapped to the <tt>Contact</tt> or <tt>ChatRoom</tt> of the session
+	 * @param keywords
+	 * 		array of keywords
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param offset
+	 * 		the number of best matches to skip
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return List of the message events of the page, the best matches first
+	 */
+	private List<EventObject> searchMessages(Map<String, Object> sessions, String[] keywords,
+			Date startDate, Date endDate, int offset, int count)
+	{
+		List<EventObject> result = new ArrayList<>();
+		String matchQuery = MessageSearchIndex.toMatchQuery(keywords);
+		String[] patterns = MessageSearchIndex.toLikePatterns(keywords);
+		if (((matchQuery == null) && (patterns.length == 0)) || sessions.isEmpty()
+				|| (count <= 0))
+			return result;
+
+		boolean hasPeriod = (startDate != null) || (endDate != null);
+		List<String> filterArgs = new ArrayList<>();
+
+		filterArgs.addAll(sessions.keySet());
+		if (hasPeriod)
+			addPeriodArgs(filterArgs, startDate, endDate);
+
+		Map<Long, MessageSearchIndex.Hit> hits = new HashMap<>();
+		Cursor cursor;
+		mJournal.flush();
+		if (matchQuery != null) {
+			List<String> args = new ArrayList<>(filterArgs.size() + 1);
+
+			args.add(matchQuery);
+			args.addAll(filterArgs);
+			cursor = mDB.rawQuery(MessageSearchIndex.getHitsQuery(sessions.size(), hasPeriod),
+					args.toArray(new String[args.size()]));
+			while (cursor.moveToNext()) {
+				hits.put(cursor.getLong(0), new MessageSearchIndex.Hit(cursor.getLong(0),
+						cursor.getLong(1), cursor.getString(2), cursor.getBlob(3)));
+			}
+			cursor.close();
 		}
-		filterLike = filterLike.substring(0, filterLike.length() - 4) + " )";
+		if (patterns.length != 0) {
+			List<String> args = new ArrayList<>(filterArgs.size() + patterns.length);
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
-				ChatMessage.SESSION_UUID + "=? AND " + filterLike, args, null, null, ORDER_ASC);
+			Collections.addAll(args, patterns);
+			args.addAll(filterArgs);
+			cursor = mDB.rawQuery(MessageSearchIndex.getScanHitsQuery(patterns.length,
+					sessions.size(), hasPeriod), args.toArray(new String[args.size()]));
+			while (cursor.moveToNext()) {
+				long rowId = cursor.getLong(0);
+				if (!hits.containsKey(rowId)) {
+					hits.put(rowId, new MessageSearchIndex.Hit(rowId, cursor.getLong(1),
+							cursor.getString(2), 0));
+				}
+			}
+			cursor.close();
+		}
+
+		List<MessageSearchIndex.Hit> ranked = new ArrayList<>(hits.values());
+		MessageSearchIndex.rank(ranked);
+		List<MessageSearchIndex.Hit> page = MessageSearchIndex.getPage(ranked, offset, count);
+		if (page.isEmpty())
+			return result;
+
+		String[] rowIds = new String[page.size()];
+		for (int i = 0; i < rowIds.length; i++) {
+			rowIds[i] = String.valueOf(page.get(i).rowId);
+		}
 
+		Map<Long, EventObject> events = new HashMap<>();
+		cursor = mDB.rawQuery(MessageSearchIndex.getPageQuery(rowIds.length), rowIds);
+		int rowIdColumn = cursor.getColumnIndex(MessageSearchIndex.ROW_ID);
+		int sessionColumn = cursor.getColumnIndex(ChatMessage.SESSION_UUID);
 		while (cursor.moveToNext()) {
-			result.add(convertHistoryRecordToMessageEvent(cursor, room));
+			Object owner = sessions.get(cursor.getString(sessionColumn));
+			events.put(cursor.getLong(rowIdColumn),
+					convertHistoryRecordToMessageEvent(cursor, owner));
+		}
+		cursor.close();
+
+		for (MessageSearchIndex.Hit hit : page) {
+			EventObject event = events.get(hit.rowId);
+			// the message may have been deleted since the hits were read
+			if (event != null)
+				result.add(event);
 		}
 		return result;
 	}
 
+	/**
+	 * Adds the start (inclusive) and end (exclusive) timestamps of a period to query arguments.
+	 *
+	 * @param args
+	 * 		the query arguments
+	 * @param startDate
+	 * 		Date the start date of the period or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the period or <tt>null</tt>
+	 */
+	private static void addPeriodArgs(List<String> args, Date startDate, Date endDate)
+	{
+		args.add(String.valueOf((startDate == null) ? Long.MIN_VALUE : startDate.getTime()));
+		args.add(String.valueOf((endDate == null) ? Long.MAX_VALUE : endDate.getTime()));
+	}
+
 	/**
 	 * Returns the supplied number of recent messages exchanged in the supplied chat room
 	 *
@@ -1838,8 +2177,8 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null, ChatMessage.SESSION_UUID
-				+ "=?", args, null, null, ORDER_DESC, String.valueOf(count));
+		Cursor cursor = queryMessages(ChatMessage.SESSION_UUID
+				+ "=?", args, ORDER_DESC, String.valueOf(count));
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -1869,9 +2208,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid, startTimeStamp};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		Cursor cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + ">=?",
-				args, null, null, ORDER_DESC, String.valueOf(count));
+				args, ORDER_DESC, String.valueOf(count));
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -1900,9 +2239,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String sessionUuid = getSessionUuidByJid(room);
 		String[] args = {sessionUuid, endTimeStamp};
 
-		Cursor cursor = mDB.query(ChatMessage.TABLE_NAME, null,
+		Cursor cursor = queryMessages(
 				ChatMessage.SESSION_UUID + "=? AND " + ChatMessage.TIME_STAMP + "<?",
-				args, null, null, ORDER_DESC, String.valueOf(count));
+				args, ORDER_DESC, String.valueOf(count));
 
 		while (cursor.moveToNext()) {
 			result.add(convertHistoryRecordToMessageEvent(cursor, room));
@@ -2029,6 +2368,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 		String[] args = {String.valueOf(ChatSession.MODE_MULTI)};
 		String[] columns = {ChatSession.SESSION_UUID};
 
+		mJournal.flush();
 		Cursor cursor = mDB.query(ChatSession.TABLE_NAME, columns, ChatSession.MODE + "=?",
 				args, null, null, null);
 		while (cursor.moveToNext()) {
@@ -2078,6 +2418,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	private void purgeLocallyStoredHistory(Contact contact, String sessionUuid)
 	{
 		String[] args = {sessionUuid};
+		mJournal.flush();
 		if (contact != null) {
 			mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.SESSION_UUID + "=?", args);
 		}
@@ -2091,6 +2432,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 	 */
 	private void purgeLocallyStoredHistory(List<String> msgUUIDs)
 	{
+		mJournal.flush();
 		for (String uuid : msgUUIDs) {
 			String[] args = {uuid};
 			mDB.delete(ChatMessage.TABLE_NAME, ChatMessage.UUID + "=?", args);
@@ -0,0 +1,453 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import org.atalk.android.gui.chat.ChatMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * The full-text index of the message bodies of {@link ChatMessage#TABLE_NAME}: an FTS4 table whose
+ * <tt>docid</tt> is the <tt>rowid</tt> of the indexed message. Chat messages are indexed as they are
+ * written by <tt>MessageHistoryServiceImpl</tt>; triggers drop deleted messages from the index and
+ * follow edits of indexed message bodies.
+ * <p>
+ * The simple tokenizer splits the text at ASCII punctuation and white space only, so a keyword
+ * which contains other characters (e.g. of a script written without spaces) or no token
+ * character at all cannot be looked up in the index. Such keywords are matched with a
+ * <tt>LIKE</tt> scan of the messages of the searched sessions instead.
+ * <p>
+ * This class only holds the SQL and the query and ranking logic so that it is independent of the
+ * Android database API, and can be benchmarked over JDBC.
+ *
+ * @author Eng Chong Meng
+ */
+public class MessageSearchIndex
+{
+	/**
+	 * The name of the FTS4 table.
+	 */
+	public static final String TABLE_NAME = ChatMessage.TABLE_NAME + "_fts";
+
+	/**
+	 * The name of the column of the message rowid in the results of {@link #getPageQuery(int)}.
+	 */
+	public static final String ROW_ID = "ftsRowId";
+
+	/**
+	 * The statements which create the index and its triggers.
+	 */
+	public static final String[] CREATE_STATEMENTS = {
+			"CREATE VIRTUAL TABLE " + TABLE_NAME + " USING fts4(" + ChatMessage.MSG_BODY + ")",
+			"CREATE TRIGGER " + TABLE_NAME + "_delete AFTER DELETE ON " + ChatMessage.TABLE_NAME
+					+ " BEGIN DELETE FROM " + TABLE_NAME + " WHERE docid = old.rowid; END",
+			"CREATE TRIGGER " + TABLE_NAME + "_update AFTER UPDATE OF " + ChatMessage.MSG_BODY
+					+ " ON " + ChatMessage.TABLE_NAME + " BEGIN UPDATE " + TABLE_NAME + " SET "
+					+ ChatMessage.MSG_BODY + " = new." + ChatMessage.MSG_BODY
+					+ " WHERE docid = old.rowid; END"
+	};
+
+	/**
+	 * The statement which indexes the existing chat messages, e.g. after the index is created.
+	 */
+	public static final String REBUILD_STATEMENT = "INSERT INTO " + TABLE_NAME + "(docid, "
+			+ ChatMessage.MSG_BODY + ") SELECT rowid, " + ChatMessage.MSG_BODY + " FROM "
+			+ ChatMessage.TABLE_NAME + " WHERE " + ChatMessage.MSG_BODY + " IS NOT NULL AND "
+			+ ChatMessage.MSG_TYPE + " NOT IN (" + ChatMessage.MESSAGE_FILE_TRANSFER_RECEIVE + ", "
+			+ ChatMessage.MESSAGE_FILE_TRANSFER_SEND + ", "
+			+ ChatMessage.MESSAGE_FILE_TRANSFER_HISTORY + ")";
+
+	/**
+	 * The statement which removes the message with a specific <tt>UUID</tt> from the index before
+	 * a message with the same <tt>UUID</tt> is inserted. The <tt>ON CONFLICT REPLACE</tt> of
+	 * {@link ChatMessage#TABLE_NAME} deletes the old row and inserts the new one with a new rowid
+	 * without running the delete trigger (<tt>recursive_triggers</tt> is off), which would leave
+	 * the old docid orphaned in the index.
+	 */
+	public static final String UNINDEX_STATEMENT = "DELETE FROM " + TABLE_NAME
+			+ " WHERE docid IN (SELECT rowid FROM " + ChatMessage.TABLE_NAME + " WHERE "
+			+ ChatMessage.UUID + " = ?)";
+
+	/**
+	 * The statement which indexes a message; binds the message rowid and body. Replaces the entry
+	 * of a docid orphaned by an earlier version which did not remove replaced messages.
+	 */
+	public static final String INDEX_STATEMENT
+			= "INSERT OR REPLACE INTO " + TABLE_NAME + "(docid, " + ChatMessage.MSG_BODY + ") VALUES (?, ?)";
+
+	/**
+	 * The maximum number of the most recent hits which are ranked by a search, bounding the time
+	 * and the memory a search for a frequent keyword takes.
+	 */
+	public static final int MAX_RANKED_HITS = 1000;
+
+	/**
+	 * The BM25 parameter which saturates the term frequency.
+	 */
+	private static final double K1 = 1.2;
+
+	/**
+	 * The BM25 parameter which normalizes the term frequency by the message length.
+	 */
+	private static final double B = 0.75;
+
+	/**
+	 * Gets the FTS query which matches the messages containing any of the keywords which can be
+	 * looked up in the index. Like the <tt>LIKE '%keyword%'</tt> filters which it replaces, it
+	 * matches case-insensitively (for ASCII), but a keyword matches the start of words rather than
+	 * any substring; a keyword of several words matches them as a phrase.
+	 *
+	 * @param keywords
+	 * 		the keywords
+	 * @return the FTS query or <tt>null</tt> if no keyword can be looked up in the index
+	 */
+	public static String toMatchQuery(String[] keywords)
+	{
+		StringBuilder query = new StringBuilder();
+
+		for (String keyword : keywords) {
+			if (keyword == null)
+				continue;
+
+			if (isScanned(keyword))
+				continue;
+
+			// Double quotes delimit phrases; the tokenizer drops other punctuation.
+			String phrase = keyword.replace('"', ' ').trim();
+
+			if (query.length() != 0)
+				query.append(" OR ");
+			query.append('"').append(phrase).append("*\"");
+		}
+		return (query.length() == 0) ? null : query.toString();
+	}
+
+	/**
+	 * Gets the <tt>LIKE</tt> patterns of the keywords which cannot be looked up in the index. The
+	 * patterns escape the <tt>LIKE</tt> wildcards with a backslash.
+	 *
+	 * @param keywords
+	 * 		the keywords
+	 * @return the <tt>LIKE</tt> patterns, possibly none
+	 */
+	public static String[] toLikePatterns(String[] keywords)
+	{
+		List<String> patterns = new ArrayList<>();
+
+		for (String keyword : keywords) {
+			if (keyword == null || keyword.isEmpty() || !isScanned(keyword))
+				continue;
+
+			StringBuilder pattern = new StringBuilder(keyword.length() + 4).append('%');
+
+			for (int i = 0; i < keyword.length(); i++) {
+				char c = keyword.charAt(i);
+
+				if (c == '%' || c == '_' || c == '\\')
+					pattern.append('\\');
+				pattern.append(c);
+			}
+			patterns.add(pattern.append('%').toString());
+		}
+		return patterns.toArray(new String[patterns.size()]);
+	}
+
+	/**
+	 * Determines whether a keyword cannot be looked up in the index: the FTS4 simple tokenizer
+	 * only splits ASCII text into words, so a keyword with a non-ASCII character may start in the
+	 * middle of a token, and a keyword without an ASCII letter or digit has no token at all.
+	 *
+	 * @param keyword
+	 * 		the keyword
+	 * @return <tt>true</tt> if <tt>keyword</tt> is to be matched with a <tt>LIKE</tt> scan
+	 */
+	private static boolean isScanned(String keyword)
+	{
+		boolean hasTokenChar = false;
+
+		for (int i = 0; i < keyword.length(); i++) {
+			char c = keyword.charAt(i);
+
+			if (c >= 0x80)
+				return true;
+			if (Character.isLetterOrDigit(c))
+				hasTokenChar = true;
+		}
+		return !hasTokenChar;
+	}
+
+	/**
+	 * Gets the query of the messages of specific sessions which match an FTS query or any of
+	 * specific <tt>LIKE</tt> patterns, in the order of their timestamps. Binds the FTS query if
+	 * <tt>hasMatch</tt>, the <tt>LIKE</tt> patterns, the session UUIDs and, if <tt>hasPeriod</tt>,
+	 * the start (inclusive) and end (exclusive) timestamps.
+	 *
+	 * @param hasMatch
+	 * 		whether there is an FTS query
+	 * @param patternCount
+	 * 		the number of <tt>LIKE</tt> patterns
+	 * @param sessionCount
+	 * 		the number of session UUIDs
+	 * @param hasPeriod
+	 * 		whether the messages are restricted to a period
+	 * @return the query
+	 */
+	public static String getMessagesQuery(boolean hasMatch, int patternCount, int sessionCount,
+			boolean hasPeriod)
+	{
+		StringBuilder filter = new StringBuilder();
+
+		if (hasMatch) {
+			filter.append("rowid IN (SELECT docid FROM ").append(TABLE_NAME).append(" WHERE ")
+					.append(TABLE_NAME).append(" MATCH ?)");
+		}
+		for (int i = 0; i < patternCount; i++) {
+			if (filter.length() != 0)
+				filter.append(" OR ");
+			filter.append(getLikeFilter());
+		}
+		return "SELECT * FROM " + ChatMessage.TABLE_NAME + " WHERE (" + filter + ") AND "
+				+ getSessionAndPeriodFilter("", sessionCount, hasPeriod)
+				+ " ORDER BY " + ChatMessage.TIME_STAMP + " ASC";
+	}
+
+	/**
+	 * Gets the query of the hits of an FTS query among the messages of specific sessions, i.e. of
+	 * the columns rowid, timestamp, session UUID and <tt>matchinfo</tt> which {@link #rank(List)}
+	 * needs. Only the {@link #MAX_RANKED_HITS} most recently written hits are read: the index
+	 * yields them in the descending order of their docids without sorting. Binds the FTS query,
+	 * the session UUIDs and, if <tt>hasPeriod</tt>, the start (inclusive) and end (exclusive)
+	 * timestamps.
+	 *
+	 * @param sessionCount
+	 * 		the number of session UUIDs
+	 * @param hasPeriod
+	 * 		whether the messages are restricted to a period
+	 * @return the query
+	 */
+	public static String getHitsQuery(int sessionCount, boolean hasPeriod)
+	{
+		return "SELECT m.rowid, m." + ChatMessage.TIME_STAMP + ", m." + ChatMessage.SESSION_UUID
+				+ ", matchinfo(" + TABLE_NAME + ", 'pcnalx') FROM " + TABLE_NAME + " JOIN "
+				+ ChatMessage.TABLE_NAME + " m ON m.rowid = " + TABLE_NAME + ".docid WHERE "
+				+ TABLE_NAME + " MATCH ? AND "
+				+ getSessionAndPeriodFilter("m.", sessionCount, hasPeriod)
+				+ " ORDER BY " + TABLE_NAME + ".docid DESC LIMIT " + MAX_RANKED_HITS;
+	}
+
+	/**
+	 * Gets the query of the hits of <tt>LIKE</tt> patterns among the messages of specific
+	 * sessions, i.e. of the columns rowid, timestamp and session UUID, which are ranked below the
+	 * hits of the index. Only the {@link #MAX_RANKED_HITS} most recently written hits are read.
+	 * Binds the <tt>LIKE</tt> patterns, the session UUIDs and, if <tt>hasPeriod</tt>, the start
+	 * (inclusive) and end (exclusive) timestamps.
+	 *
+	 * @param patternCount
+	 * 		the number of <tt>LIKE</tt> patterns
+	 * @param sessionCount
+	 * 		the number of session UUIDs
+	 * @param hasPeriod
+	 * 		whether the messages are restricted to a period
+	 * @return the query
+	 */
+	public static String getScanHitsQuery(int patternCount, int sessionCount, boolean hasPeriod)
+	{
+		StringBuilder filter = new StringBuilder();
+
+		for (int i = 0; i < patternCount; i++) {
+			if (i != 0)
+				filter.append(" OR ");
+			filter.append(getLikeFilter());
+		}
+		return "SELECT rowid, " + ChatMessage.TIME_STAMP + ", " + ChatMessage.SESSION_UUID
+				+ " FROM " + ChatMessage.TABLE_NAME + " WHERE (" + filter + ") AND "
+				+ getSessionAndPeriodFilter("", sessionCount, hasPeriod)
+				+ " ORDER BY rowid DESC LIMIT " + MAX_RANKED_HITS;
+	}
+
+	/**
+	 * Gets the query of the messages with specific rowids, which adds their rowid as
+	 * {@link #ROW_ID} to their columns.
+	 *
+	 * @param count
+	 * 		the number of rowids
+	 * @return the query
+	 */
+	public static String getPageQuery(int count)
+	{
+		return "SELECT rowid AS " + ROW_ID + ", * FROM " + ChatMessage.TABLE_NAME
+				+ " WHERE rowid IN (" + getPlaceholders(count) + ")";
+	}
+
+	/**
+	 * Gets the filter of the messages whose body matches a <tt>LIKE</tt> pattern.
+	 */
+	private static String getLikeFilter()
+	{
+		return ChatMessage.MSG_BODY + " LIKE ? ESCAPE '\\'";
+	}
+
+	/**
+	 * Gets the filter of the messages of specific sessions and, optionally, of a period.
+	 */
+	private static String getSessionAndPeriodFilter(String alias, int sessionCount,
+			boolean hasPeriod)
+	{
+		String filter = alias + ChatMessage.SESSION_UUID + " IN (" + getPlaceholders(sessionCount)
+				+ ")";
+
+		if (hasPeriod) {
+			filter += " AND " + alias + ChatMessage.TIME_STAMP + ">=? AND " + alias
+					+ ChatMessage.TIME_STAMP + "<?";
+		}
+		return filter;
+	}
+
+	/**
+	 * Gets a comma-separated list of a specific number of <tt>?</tt> placeholders.
+	 */
+	private static String getPlaceholders(int count)
+	{
+		StringBuilder placeholders = new StringBuilder(count * 2);
+
+		for (int i = 0; i < count; i++) {
+			if (i != 0)
+				placeholders.append(',');
+			placeholders.append('?');
+		}
+		return placeholders.toString();
+	}
+
+	/**
+	 * Computes the BM25 score of a hit from its <tt>matchinfo(..., 'pcnalx')</tt>.
+	 *
+	 * @param matchinfo
+	 * 		the <tt>matchinfo</tt> blob, 32-bit integers in native byte order
+	 * @return the score of the hit, higher for better hits
+	 */
+	public static double score(byte[] matchinfo)
+	{
+		ByteBuffer buf = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+		int phraseCount = buf.getInt(0);
+		int columnCount = buf.getInt(4);
+		long rowCount = buf.getInt(8) & 0xFFFFFFFFL;
+		double score = 0;
+
+		for (int column = 0; column < columnCount; column++) {
+			double avgLength = Math.max(buf.getInt((3 + column) * 4), 1);
+			double length = buf.getInt((3 + columnCount + column) * 4);
+			double norm = K1 * (1 - B + B * length / avgLength);
+
+			for (int phrase = 0; phrase < phraseCount; phrase++) {
+				int x = 3 + 2 * columnCount + 3 * (phrase * columnCount + column);
+				int hits = buf.getInt(x * 4);
+
+				if (hits == 0)
+					continue;
+
+				int docsWithHits = buf.getInt((x + 2) * 4);
+				// Plus 1 so that terms in most messages still contribute positively.
+				double idf = Math.log(1 + (rowCount - docsWithHits + 0.5) / (docsWithHits + 0.5));
+
+				score += idf * hits * (K1 + 1) / (hits + norm);
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Sorts hits from the best to the worst, the most recent first among equally good hits.
+	 *
+	 * @param hits
+	 * 		the hits to sort
+	 */
+	public static void rank(List<Hit> hits)
+	{
+		Collections.sort(hits, new Comparator<Hit>()
+		{
+			@Override
+			public int compare(Hit h1, Hit h2)
+			{
+				int c = Double.compare(h2.score, h1.score);
+
+				if (c == 0)
+					c = (h1.timestamp > h2.timestamp) ? -1 : ((h1.timestamp == h2.timestamp) ? 0 : 1);
+				return c;
+			}
+		});
+	}
+
+	/**
+	 * Gets a page of a list.
+	 *
+	 * @param list
+	 * 		the list
+	 * @param offset
+	 * 		the index of the first element of the page
+	 * @param limit
+	 * 		the maximum number of elements of the page
+	 * @return the page, possibly empty
+	 */
+	public static <T> List<T> getPage(List<T> list, int offset, int limit)
+	{
+		int from = Math.min(Math.max(offset, 0), list.size());
+		int to = (int) Math.min((long) from + Math.max(limit, 0), list.size());
+
+		return list.subList(from, to);
+	}
+
+	/**
+	 * A message which matches an FTS query.
+	 */
+	public static class Hit
+	{
+		/**
+		 * The rowid of the message.
+		 */
+		public final long rowId;
+
+		/**
+		 * The timestamp of the message.
+		 */
+		public final long timestamp;
+
+		/**
+		 * The UUID of the session of the message.
+		 */
+		public final String sessionUuid;
+
+		/**
+		 * The score of the message.
+		 */
+		public final double score;
+
+		public Hit(long rowId, long timestamp, String sessionUuid, byte[] matchinfo)
+		{
+			this(rowId, timestamp, sessionUuid, score(matchinfo));
+		}
+
+		public Hit(long rowId, long timestamp, String sessionUuid, double score)
+		{
+			this.rowId = rowId;
+			this.timestamp = timestamp;
+			this.sessionUuid = sessionUuid;
+			this.score = score;
+		}
+	}
+}
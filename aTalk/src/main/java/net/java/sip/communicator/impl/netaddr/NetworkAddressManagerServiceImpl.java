@@ -22,6 +22,7 @@ import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.NetworkUtils;
 
 import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.neomedia.DefaultStreamConnector;
 import org.atalk.util.OSUtils;
 import org.ice4j.*;
 import org.ice4j.ice.*;
@@ -444,9 +445,10 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
 		int port = preferredPort;
 		for (int i = 0; i < bindRetries; i++) {
 			try {
-				return new DatagramSocket(port, laddr);
+				// Backed by a DatagramChannel so that the shared DatagramReactor may serve it.
+				return DefaultStreamConnector.createChannelDatagramSocket(laddr, port);
 			}
-			catch (SocketException se) {
+			catch (IOException se) {
 				if (logger.isInfoEnabled()) {
 					logger.info("Retrying a bind because of a failure to bind to address "
 							+ laddr + " and port " + port);
@@ -0,0 +1,309 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.packetlogging;
+
+import net.java.sip.communicator.util.Logger;
+
+import org.atalk.service.fileaccess.FileCategory;
+import org.atalk.service.packetlogging.PacketLoggingConfiguration;
+import org.atalk.util.concurrent.RecordRing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes pcap records into the rotated <tt>atalkN.pcap</tt> segment files through memory-mapped
+ * windows. A window is mapped (and thus the file preallocated) ahead of the records which are
+ * written into it so that writing a record is a plain copy into memory. When a segment reaches the
+ * configured size limit, it is truncated to the records it holds, the older segments are shifted
+ * and a new <tt>atalk0.pcap</tt> is started.
+ * <p>
+ * A segment which is not closed properly (e.g. because the application is killed) ends with the
+ * preallocated zeros of its last window. The segments left behind are therefore truncated after
+ * their last record before the first segment is started. Instances of this class are not
+ * thread-safe.
+ *
+ * @author Eng Chong Meng
+ */
+class MappedPcapWriter
+		implements RecordRing.RecordHandler
+{
+	/**
+	 * Our Logger.
+	 */
+	private static final Logger logger = Logger.getLogger(MappedPcapWriter.class);
+
+	/**
+	 * The length in bytes of the pcap global header.
+	 */
+	static final int GLOBAL_HEADER_LENGTH = 24;
+
+	/**
+	 * The length in bytes of the pcap record header.
+	 */
+	private static final int RECORD_HEADER_LENGTH = 16;
+
+	/**
+	 * The maximum size in bytes of a mapped window.
+	 */
+	private static final int WINDOW_SIZE = 1 << 22;
+
+	/**
+	 * The configuration which specifies the size limit and the number of the segments.
+	 */
+	private final PacketLoggingConfiguration configuration;
+
+	/**
+	 * The segment files, the current one first.
+	 */
+	private File[] files;
+
+	/**
+	 * The current segment file or <tt>null</tt> if none is open.
+	 */
+	private RandomAccessFile segment;
+
+	/**
+	 * The currently mapped window of {@link #segment}.
+	 */
+	private MappedByteBuffer window;
+
+	/**
+	 * The position in {@link #segment} at which {@link #window} starts.
+	 */
+	private long windowPosition;
+
+	/**
+	 * Initializes a new <tt>MappedPcapWriter</tt> instance.
+	 *
+	 * @param configuration
+	 * 		the configuration which specifies the size limit and the number of the segments
+	 */
+	MappedPcapWriter(PacketLoggingConfiguration configuration)
+	{
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Writes a pcap record into the current segment.
+	 *
+	 * @param buf
+	 * 		the buffer which contains the record
+	 * @param off
+	 * 		the offset in <tt>buf</tt> at which the record starts
+	 * @param len
+	 * 		the length in bytes of the record
+	 * @throws IOException
+	 * 		if opening, mapping or rotating the segments fails
+	 */
+	@Override
+	public void handleRecord(byte[] buf, int off, int len)
+			throws IOException
+	{
+		if (segment == null)
+			rotate();
+
+		if (window.remaining() < len) {
+			long position = windowPosition + window.position();
+			long limit = configuration.getLimit();
+
+			if (limit > 0 && position > GLOBAL_HEADER_LENGTH && position + len > limit) {
+				rotate();
+				position = windowPosition + window.position();
+			}
+			if (window.remaining() < len)
+				map(position, len);
+		}
+		window.put(buf, off, len);
+	}
+
+	/**
+	 * Truncates the current segment to the records it holds and closes it.
+	 */
+	void close()
+	{
+		if (segment == null)
+			return;
+
+		try {
+			long length = windowPosition + window.position();
+
+			window.force();
+			window = null;
+			segment.setLength(length);
+		}
+		catch (IOException ioe) {
+			logger.warn("Failed to truncate packet log segment", ioe);
+		}
+		finally {
+			try {
+				segment.close();
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to close packet log segment", ioe);
+			}
+			segment = null;
+		}
+	}
+
+	/**
+	 * Closes the current segment, shifts the segments and starts a new one with the pcap global
+	 * header.
+	 *
+	 * @throws IOException
+	 * 		if creating or mapping the new segment fails
+	 */
+	private void rotate()
+			throws IOException
+	{
+		close();
+
+		int fileCount = Math.max(configuration.getLogfileCount(), 1);
+
+		if (files == null || files.length != fileCount) {
+			boolean recover = (files == null);
+
+			files = new File[fileCount];
+			for (int i = 0; i < fileCount; i++) {
+				try {
+					files[i] = PacketLoggingActivator.getFileAccessService()
+							.getPrivatePersistentFile(new File(PacketLoggingActivator.LOGGING_DIR_NAME,
+									"atalk" + i + ".pcap").toString(), FileCategory.LOG);
+				}
+				catch (Exception e) {
+					files = null;
+					throw new IOException("Failed to get packet log file", e);
+				}
+			}
+			if (recover) {
+				for (File file : files) {
+					if (file.exists())
+						recover(file);
+				}
+			}
+		}
+
+		for (int i = fileCount - 2; i >= 0; i--) {
+			File f1 = files[i];
+			File f2 = files[i + 1];
+
+			if (f1.exists()) {
+				if (f2.exists())
+					f2.delete();
+				f1.renameTo(f2);
+			}
+		}
+
+		segment = new RandomAccessFile(files[0], "rw");
+		segment.setLength(0);
+		map(0, GLOBAL_HEADER_LENGTH);
+		writeGlobalHeader();
+	}
+
+	/**
+	 * Truncates a segment after its last record, dropping the preallocated zeros left behind by a
+	 * segment which has not been closed properly. Records are written in order and pcap record
+	 * headers are never all zeros, so the segment ends at the first record header which is zero or
+	 * which describes a record beyond the end of the file.
+	 *
+	 * @param file
+	 * 		the segment to recover
+	 */
+	private void recover(File file)
+	{
+		RandomAccessFile raf = null;
+
+		try {
+			raf = new RandomAccessFile(file, "rw");
+
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+			long position = GLOBAL_HEADER_LENGTH;
+
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			while (position + RECORD_HEADER_LENGTH <= length) {
+				header.clear();
+				if (channel.read(header, position) < RECORD_HEADER_LENGTH)
+					break;
+
+				long seconds = header.getInt(0) & 0xFFFFFFFFL;
+				long inclLen = header.getInt(8) & 0xFFFFFFFFL;
+				long end = position + RECORD_HEADER_LENGTH + inclLen;
+
+				if ((seconds == 0 && inclLen == 0) || end > length)
+					break;
+				position = end;
+			}
+			if (position < length)
+				raf.setLength(position);
+		}
+		catch (IOException ioe) {
+			logger.warn("Failed to recover packet log segment " + file, ioe);
+		}
+		finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				}
+				catch (IOException ioe) {
+					logger.warn("Failed to close packet log segment", ioe);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Maps the window of the current segment which starts at a specific position.
+	 *
+	 * @param position
+	 * 		the position in the segment at which the window is to start
+	 * @param minSize
+	 * 		the minimum size of the window
+	 * @throws IOException
+	 * 		if mapping fails
+	 */
+	private void map(long position, int minSize)
+			throws IOException
+	{
+		long limit = configuration.getLimit();
+		long size = WINDOW_SIZE;
+
+		if (limit > 0)
+			size = Math.min(size, limit - position);
+		size = Math.max(size, minSize);
+
+		window = segment.getChannel().map(FileChannel.MapMode.READ_WRITE, position, size);
+		windowPosition = position;
+	}
+
+	/**
+	 * Writes the pcap global header at the start of the current segment.
+	 */
+	private void writeGlobalHeader()
+	{
+		window.order(ByteOrder.LITTLE_ENDIAN);
+		/* magic number */
+		window.putInt(0xa1b2c3d4);
+		/* major version number */
+		window.putShort((short) 2);
+		/* minor version number */
+		window.putShort((short) 4);
+		/* GMT to local correction */
+		window.putInt(0);
+		/* accuracy of timestamps */
+		window.putInt(0);
+		/* max length of captured packets, in octets */
+		window.putInt(configuration.getSnaplen());
+		/* data link type(ethernet) */
+		window.putInt(1);
+	}
+}
@@ -17,6 +17,7 @@ package net.java.sip.communicator.impl.packetlogging;
 
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.packetlogging.PacketLoggingConfiguration;
+import org.atalk.service.packetlogging.PacketLoggingService;
 
 /**
  * Extends PacketLoggingConfiguration by storing and loading values from configuration service.
@@ -56,6 +57,14 @@ public class PacketLoggingConfigurationImpl extends PacketLoggingConfiguration
             configService.getLong(PACKET_LOGGING_FILE_SIZE_PROPERTY_NAME, getLimit()));
         super.setLogfileCount(
             configService.getInt(PACKET_LOGGING_FILE_COUNT_PROPERTY_NAME, getLogfileCount()));
+        super.setSnaplen(
+            configService.getInt(PACKET_LOGGING_SNAPLEN_PROPERTY_NAME, getSnaplen()));
+        for (PacketLoggingService.ProtocolName protocol : PacketLoggingService.ProtocolName.values())
+        {
+            super.setSampling(protocol,
+                configService.getInt(PACKET_LOGGING_SAMPLING_PROPERTY_NAME_PREFIX + protocol,
+                    getSampling(protocol)));
+        }
     }
 
     /**
@@ -147,4 +156,29 @@ public class PacketLoggingConfigurationImpl extends PacketLoggingConfiguration
         PacketLoggingActivator.getConfigurationService().setProperty(
                 PACKET_LOGGING_FILE_COUNT_PROPERTY_NAME, logfileCount);
     }
+
+    /**
+     * Changes the maximum number of bytes captured of each packet.
+     * @param snaplen the new maximum number of bytes.
+     */
+    @Override
+    public void setSnaplen(int snaplen)
+    {
+        super.setSnaplen(snaplen);
+        PacketLoggingActivator.getConfigurationService().setProperty(
+                PACKET_LOGGING_SNAPLEN_PROPERTY_NAME, getSnaplen());
+    }
+
+    /**
+     * Changes the sampling of the packets of a protocol.
+     * @param protocol the protocol.
+     * @param sampling N to log one packet out of every N.
+     */
+    @Override
+    public void setSampling(PacketLoggingService.ProtocolName protocol, int sampling)
+    {
+        super.setSampling(protocol, sampling);
+        PacketLoggingActivator.getConfigurationService().setProperty(
+                PACKET_LOGGING_SAMPLING_PROPERTY_NAME_PREFIX + protocol, getSampling(protocol));
+    }
 }
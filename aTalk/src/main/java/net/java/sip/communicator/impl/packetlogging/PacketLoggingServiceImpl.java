@@ -15,24 +15,26 @@
  */
 package net.java.sip.communicator.impl.packetlogging;
 
-import com.google.common.collect.EvictingQueue;
-
 import net.java.sip.communicator.util.Logger;
 
-import org.atalk.service.fileaccess.FileCategory;
 import org.atalk.service.packetlogging.PacketLoggingConfiguration;
 import org.atalk.service.packetlogging.PacketLoggingService;
+import org.atalk.util.concurrent.RecordRing;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Packet Logging Service implementation dumping logs in pcap(tcpdump/wireshark) format file.
+ * The logging threads build complete pcap records into a lock-free <tt>RecordRing</tt>
+ * without allocating and a saver thread drains them into memory-mapped segment files through a
+ * <tt>MappedPcapWriter</tt>. Packets are truncated to the configured snaplen and sampled per
+ * protocol so that logging can stay enabled without disturbing the media path.
  *
  * @author Damian Minkov
+ * @author Eng Chong Meng
  */
 public class PacketLoggingServiceImpl implements PacketLoggingService {
 	/**
@@ -40,23 +42,32 @@ public class PacketLoggingServiceImpl implements PacketLoggingService {
 	 */
 	private static final Logger logger = Logger.getLogger(PacketLoggingServiceImpl.class);
 
-    /**
-     * The max size of the <tt>EvictingQueue</tt> that the saver thread
-     * is using.
-     *
-     * TODO this needs to be configurable eventually.
-     */
-    private static final int EVICTING_QUEUE_MAX_SIZE = 1000;
+	/**
+	 * The capacity in bytes of the <tt>RecordRing</tt> the packets are queued into, i.e.
+	 * about a second of RTP video at 1000 packets per second.
+	 */
+	private static final int RING_CAPACITY = 1 << 20;
+
+	/**
+	 * The time in nanoseconds the saver thread lets packets accumulate after it has saved some so
+	 * that the logging threads wake it up at most once per batch rather than once per packet.
+	 */
+	private static final long SAVER_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * The length in bytes of the pcap record header.
+	 */
+	private static final int RECORD_HEADER_LENGTH = 16;
 
-    /**
-	 * The OutputStream we are currently writing to.
+	/**
+	 * The ring the packets are queued into, created upon the first logged packet.
 	 */
-	private FileOutputStream outputStream = null;
+	private volatile RecordRing ring;
 
 	/**
-	 * The thread that queues packets and saves them to file.
+	 * The thread that saves the queued packets to file.
 	 */
-	private SaverThread saverThread = new SaverThread();
+	private final SaverThread saverThread = new SaverThread();
 
 	/**
 	 * The current configuration.
@@ -143,146 +154,36 @@ public class PacketLoggingServiceImpl implements PacketLoggingService {
 					(byte) 0x6e, (byte) 0xcc, (byte) 0x76, (byte) 0xbd  // options
 			};
 
-	/**
-	 * Using this object to lock and protected the two counters used for tcp seq and ack numbers.
-	 */
-	private Object tcpCounterLock = new Object();
-
 	/**
 	 * The seq that the sender will send.
 	 */
-	private long srcCount = 1;
+	private final AtomicLong srcCount = new AtomicLong(1);
 
 	/**
 	 * This is the ack number send from the sender.
 	 */
-	private long dstCount = 1;
-
-	/**
-	 * A counter watching how much has been written to the file.
-	 */
-	private long written = 0;
+	private final AtomicLong dstCount = new AtomicLong(1);
 
 	/**
-	 * All the files we can use for writing.
+	 * The number of packets offered for logging per protocol, indexed by the ordinals of the
+	 * <tt>ProtocolName</tt>s, which the sampling is based on.
 	 */
-	private File[] files;
+	private final AtomicIntegerArray offeredCounts
+			= new AtomicIntegerArray(ProtocolName.values().length);
 
 	/**
-	 * Starting the packet logger. Generating the files we can use, rotate any previous files and
-	 * open the current file for writing.
+	 * Starting the packet logger. The files are generated and rotated when the first packet is
+	 * saved.
 	 */
 	public void start() {
 		saverThread.start();
 	}
 
-	/**
-	 * Generates the files we will later use for writing.
-	 *
-	 * @throws Exception
-	 */
-	private void getFileNames()
-			throws Exception {
-		int fileCount = getConfiguration().getLogfileCount();
-
-		files = new File[fileCount];
-		for (int i = 0; i < fileCount; i++) {
-			files[i] = PacketLoggingActivator.getFileAccessService().getPrivatePersistentFile(
-					new File(PacketLoggingActivator.LOGGING_DIR_NAME,
-							"atalk" + i + ".pcap").toString(), FileCategory.LOG);
-		}
-	}
-
-	/**
-	 * Rotates any existing files and use the newly created first one for writing.
-	 *
-	 * @throws IOException
-	 */
-	private void rotateFiles()
-			throws IOException {
-		if (outputStream != null) {
-			outputStream.flush();
-			outputStream.close();
-		}
-
-		for (int i = getConfiguration().getLogfileCount() - 2; i >= 0; i--) {
-			File f1 = files[i];
-			File f2 = files[i + 1];
-
-			if (f1.exists()) {
-				if (f2.exists())
-					f2.delete();
-				f1.renameTo(f2);
-			}
-		}
-
-		outputStream = new FileOutputStream(files[0]);
-		written = 0;
-		createGlobalHeader();
-	}
-
 	/**
 	 * Stops the packet logging.
 	 */
 	public void stop() {
 		saverThread.stopRunning();
-
-		if (outputStream != null) {
-			try {
-				outputStream.flush();
-				outputStream.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			} finally {
-				outputStream = null;
-			}
-		}
-	}
-
-	/**
-	 * Creates pcap file global header.
-	 *
-	 * @throws IOException
-	 */
-	private void createGlobalHeader()
-			throws IOException {
-        /* magic number(swapped) */
-		outputStream.write(0xd4);
-		outputStream.write(0xc3);
-		outputStream.write(0xb2);
-		outputStream.write(0xa1);
-
-        /* major version number */
-		outputStream.write(0x02);
-		outputStream.write(0x00);
-
-        /* minor version number */
-		outputStream.write(0x04);
-		outputStream.write(0x00);
-
-        /* GMT to local correction */
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-
-        /* accuracy of timestamps */
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-
-        /* max length of captured packets, in octets */
-		outputStream.write(0xff);
-		outputStream.write(0xff);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-
-        /* data link type(ethernet) */
-		outputStream.write(0x01);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
-		outputStream.write(0x00);
 	}
 
 	/**
@@ -379,205 +280,159 @@ public class PacketLoggingServiceImpl implements PacketLoggingService {
 			byte[] packetContent,
 			int packetOffset,
 			int packetLength) {
-		saverThread.queuePacket(
-				new Packet(protocol,
-						sourceAddress,
-						sourcePort,
-						destinationAddress,
-						destinationPort,
-						transport,
-						sender,
-						packetContent,
-						packetOffset,
-						packetLength));
-	}
+		PacketLoggingConfiguration cfg = getConfiguration();
+		int sampling = cfg.getSampling(protocol);
+
+		if (sampling > 1
+				&& (offeredCounts.getAndIncrement(protocol.ordinal()) % sampling) != 0)
+			return;
+
+		RecordRing ring = this.ring;
+
+		if (ring == null)
+			ring = getRing();
+
+		// if one of the addresses is ipv4 we are using ipv4,
+		// local udp addresses come as 0.0.0.0.0....0.0.0 when
+		// ipv6 is enabled in the underlying os
+		boolean isIPv4 = sourceAddress.length == 4 || destinationAddress.length == 4;
+		boolean isUDP = (transport == TransportName.UDP);
+		int ipHeaderLength = isIPv4 ? ipHeaderTemplate.length : ip6HeaderTemplate.length;
+		int transportHeaderLength
+				= isUDP ? udpHeaderTemplate.length : tcpHeaderTemplate.length;
+		int fakeHeaderLen = fakeEthernetHeader.length + ipv4EtherType.length
+				+ ipHeaderLength + transportHeaderLength;
+		int origLen = packetLength + fakeHeaderLen;
+		int inclLen = Math.min(origLen, Math.max(cfg.getSnaplen(), fakeHeaderLen));
+		int recordLength = RECORD_HEADER_LENGTH + inclLen;
+		int index = ring.claim(recordLength);
+
+		if (index < 0)
+			return;
+
+		byte[] buf = ring.getBuffer();
+		int off = index;
+		long current = System.currentTimeMillis();
 
-	/**
-	 * Returns the current Packet Logging Configuration.
-	 *
-	 * @return the Packet Logging Configuration.
-	 */
-	public PacketLoggingConfiguration getConfiguration() {
-		if (packetLoggingConfiguration == null)
-			packetLoggingConfiguration = new PacketLoggingConfigurationImpl();
+		try {
+			off = writeIntLE((int) (current / 1000), buf, off);
+			off = writeIntLE((int) ((current % 1000) * 1000), buf, off);
+			off = writeIntLE(inclLen, buf, off);
+			off = writeIntLE(origLen, buf, off);
 
-		return packetLoggingConfiguration;
-	}
+			off = copy(fakeEthernetHeader, buf, off);
+			off = copy(isIPv4 ? ipv4EtherType : ipv6EtherType, buf, off);
 
-	/**
-	 * Dump the packet to the output file stream.
-	 *
-	 * @param packet the packet ot save.
-	 * @throws Exception when error occurs saving to file stream or when rotating files.
-	 */
-	private void savePacket(Packet packet)
-			throws Exception {
-        // if one of the addresses is ipv4 we are using ipv4,
-        // local udp addresses come as 0.0.0.0.0....0.0.0 when
-        // ipv6 is enabled in the underlying os
-		boolean isIPv4 = packet.sourceAddress.length == 4
-				|| packet.destinationAddress.length == 4;
-
-		byte[] ipHeader;
-
-		if (isIPv4) {
-			ipHeader = new byte[ipHeaderTemplate.length];
-			System.arraycopy(
-					ipHeaderTemplate, 0, ipHeader, 0, ipHeader.length);
-			System.arraycopy(packet.sourceAddress,
-					0,
-					ipHeader,
-					12,
-					4);
-			System.arraycopy(packet.destinationAddress,
-					0,
-					ipHeader,
-					16,
-					4);
-		}
-		else {
-			ipHeader = new byte[ip6HeaderTemplate.length];
-			System.arraycopy(
-					ip6HeaderTemplate, 0, ipHeader, 0, ipHeader.length);
-			System.arraycopy(packet.sourceAddress,
-					0,
-					ipHeader,
-					8,
-					16);
-
-			System.arraycopy(packet.destinationAddress,
-					0,
-					ipHeader,
-					24,
-					16);
-		}
+			int ipOff = off;
+			int transportLen = packetLength + transportHeaderLength;
 
-		byte[] transportHeader;
-		short len;
-		if (packet.transport == TransportName.UDP) {
-			byte[] udpHeader = new byte[udpHeaderTemplate.length];
-			transportHeader = udpHeader;
-			System.arraycopy(udpHeaderTemplate, 0,
-					udpHeader, 0, udpHeader.length);
-
-			writeShort(packet.sourcePort, udpHeader, 0);
-			writeShort(packet.destinationPort, udpHeader, 2);
-			len = (short) (packet.packetLength + udpHeader.length);
-			writeShort(len, udpHeader, 4);
-		}
-		else {
-			transportHeader = new byte[tcpHeaderTemplate.length];
-			System.arraycopy(tcpHeaderTemplate, 0, transportHeader,
-					0, transportHeader.length);
-
-			writeShort(packet.sourcePort, transportHeader, 0);
-			writeShort(packet.destinationPort, transportHeader, 2);
+			if (isIPv4) {
+				off = copy(ipHeaderTemplate, buf, off);
+				System.arraycopy(sourceAddress, 0, buf, ipOff + 12, 4);
+				System.arraycopy(destinationAddress, 0, buf, ipOff + 16, 4);
+				writeShort(transportLen + ipHeaderLength, buf, ipOff + 2);
+				buf[ipOff + 9] = isUDP ? (byte) 0x11 : (byte) 0x06;
 
-			len = (short) (packet.packetLength + transportHeader.length);
+				int chk2 = computeChecksum(buf, ipOff, ipHeaderLength);
+				buf[ipOff + 10] = (byte) (chk2 >> 8);
+				buf[ipOff + 11] = (byte) (chk2 & 0xff);
+			}
+			else {
+				off = copy(ip6HeaderTemplate, buf, off);
+				System.arraycopy(sourceAddress, 0, buf, ipOff + 8, 16);
+				System.arraycopy(destinationAddress, 0, buf, ipOff + 24, 16);
+				writeShort(transportLen, buf, ipOff + 4);
+				buf[ipOff + 6] = isUDP ? (byte) 0x11 : (byte) 0x06;
+			}
 
-			if (packet.sender) {
-				long seqnum;
-				long acknum;
-				synchronized (tcpCounterLock) {
-					seqnum = srcCount;
-					srcCount += packet.packetLength;
-					acknum = dstCount;
-				}
+			int transportOff = off;
 
-				intToBytes((int) (seqnum & 0xffffffff),
-						transportHeader, 4);
-				intToBytes((int) (acknum & 0xffffffff),
-						transportHeader, 8);
+			if (isUDP) {
+				off = copy(udpHeaderTemplate, buf, off);
+				writeShort(sourcePort, buf, transportOff);
+				writeShort(destinationPort, buf, transportOff + 2);
+				writeShort(transportLen, buf, transportOff + 4);
 			}
 			else {
+				off = copy(tcpHeaderTemplate, buf, off);
+				writeShort(sourcePort, buf, transportOff);
+				writeShort(destinationPort, buf, transportOff + 2);
+
 				long seqnum;
 				long acknum;
-				synchronized (tcpCounterLock) {
-					seqnum = dstCount;
-					dstCount += packet.packetLength;
-					acknum = srcCount;
-				}
 
-				intToBytes((int) (seqnum & 0xffffffff),
-						transportHeader, 4);
-				intToBytes((int) (acknum & 0xffffffff),
-						transportHeader, 8);
+				if (sender) {
+					seqnum = srcCount.getAndAdd(packetLength);
+					acknum = dstCount.get();
+				}
+				else {
+					seqnum = dstCount.getAndAdd(packetLength);
+					acknum = srcCount.get();
+				}
+				intToBytes((int) seqnum, buf, transportOff + 4);
+				intToBytes((int) acknum, buf, transportOff + 8);
 			}
-		}
-
-		// now set ip header total length
-		if (isIPv4) {
-			short ipTotalLen = (short) (len + ipHeader.length);
-			writeShort(ipTotalLen, ipHeader, 2);
-
-			if (packet.transport == TransportName.UDP)
-				ipHeader[9] = (byte) 0x11;
-			else
-				ipHeader[9] = (byte) 0x06;
 
-			int chk2 = computeChecksum(ipHeader);
-			ipHeader[10] = (byte) (chk2 >> 8);
-			ipHeader[11] = (byte) (chk2 & 0xff);
+			System.arraycopy(packetContent, packetOffset, buf, off, inclLen - fakeHeaderLen);
 		}
-		else {
-			writeShort(len, ipHeader, 4);
-
-			if (packet.transport == TransportName.UDP)
-				ipHeader[6] = (byte) 0x11;
-			else
-				ipHeader[6] = (byte) 0x06;
+		finally {
+			// A claimed record must always be committed or the saver thread stalls on it.
+			ring.commit(index, recordLength);
+			saverThread.wakeUp();
 		}
+	}
 
-		long current = System.currentTimeMillis();
-		int tsSec = (int) (current / 1000);
-		int tsUsec = (int) ((current % 1000) * 1000);
-		int feakHeaderLen = fakeEthernetHeader.length +
-                (isIPv4 ? ipv4EtherType : ipv6EtherType).length +
-				ipHeader.length + transportHeader.length;
-		int inclLen = packet.packetLength + feakHeaderLen;
-		int origLen = inclLen;
-
-		synchronized (this) {
-			// open files only if needed
-			if (outputStream == null) {
-				getFileNames();
-				rotateFiles();// this one opens the file for write
-			}
+	/**
+	 * Gets the ring the packets are queued into, creating it if necessary.
+	 *
+	 * @return the ring the packets are queued into
+	 */
+	private synchronized RecordRing getRing()
+	{
+		if (ring == null)
+			ring = new RecordRing(RING_CAPACITY);
+		return ring;
+	}
 
-			long limit = getConfiguration().getLimit();
-			if ((limit > 0) && (written > limit))
-				rotateFiles();
-
-			addInt(tsSec);
-			addInt(tsUsec);
-			addInt(inclLen);
-			addInt(origLen);
-
-			outputStream.write(fakeEthernetHeader);
-            outputStream.write(isIPv4 ? ipv4EtherType : ipv6EtherType);
-			outputStream.write(ipHeader);
-			outputStream.write(transportHeader);
-			outputStream.write(
-					packet.packetContent,
-					packet.packetOffset,
-					packet.packetLength);
-			outputStream.flush();
-			written += inclLen + 16;
-		}
+	/**
+	 * Returns the current Packet Logging Configuration.
+	 *
+	 * @return the Packet Logging Configuration.
+	 */
+	public PacketLoggingConfiguration getConfiguration() {
+		if (packetLoggingConfiguration == null)
+			packetLoggingConfiguration = new PacketLoggingConfigurationImpl();
+
+		return packetLoggingConfiguration;
 	}
 
 	/**
-	 * Writes int to the file. Used for packet headers.
+	 * Puts an int value to the array in little endian byte order as used by the pcap headers.
 	 *
-	 * @param d the value to write.
-	 * @throws IOException
+	 * @param value value to convert to bytes.
+	 * @param data destination data
+	 * @param offset offset in the data
+	 * @return the offset in the data after the value
 	 */
-	private void addInt(int d)
-			throws IOException {
-		outputStream.write((d & 0xff));
-		outputStream.write(((d & 0xff00) >> 8));
-		outputStream.write(((d & 0xff0000) >> 16));
-		outputStream.write(((d & 0xff000000) >> 24));
+	private static int writeIntLE(int value, byte[] data, int offset) {
+		data[offset] = (byte) value;
+		data[offset + 1] = (byte) (value >> 8);
+		data[offset + 2] = (byte) (value >> 16);
+		data[offset + 3] = (byte) (value >> 24);
+		return offset + 4;
+	}
+
+	/**
+	 * Copies a header template to the array.
+	 *
+	 * @param template the header template.
+	 * @param data destination data
+	 * @param offset offset in the data
+	 * @return the offset in the data after the copied template
+	 */
+	private static int copy(byte[] template, byte[] data, int offset) {
+		System.arraycopy(template, 0, data, offset, template.length);
+		return offset + template.length;
 	}
 
 	/**
@@ -611,18 +466,19 @@ public class PacketLoggingServiceImpl implements PacketLoggingService {
 	/**
 	 * Calculates checksum assuming the checksum is a 16-bit header field.
 	 */
-	private int computeChecksum(byte[] data) {
+	private static int computeChecksum(byte[] data, int offset, int length) {
 		int total = 0;
-		int i = 0;
+		int i = offset;
+		int end = offset + length;
 
 		// Don't Skip existing checksum cause its set to 0000
-		int imax = data.length - (data.length % 2);
+		int imax = end - (length % 2);
 
 		while (i < imax) {
 			total += (((data[i++] & 0xff) << 8) | (data[i++] & 0xff));
 		}
 
-		if (i < data.length)
+		if (i < end)
 			total += ((data[i] & 0xff) << 8);
 
 		// Fold to 16 bits
@@ -635,181 +491,132 @@ public class PacketLoggingServiceImpl implements PacketLoggingService {
 	}
 
 	/**
-	 * The data we receive and that we will dump in a file.
+	 * Dumps packets in separate thread so we don't block our calling thread.
 	 */
-	private static class Packet {
-		/**
-		 * The protocol logging this packet.
-		 */
-		ProtocolName protocol;
-
-		/**
-		 * The source address of the packet.
-		 */
-		byte[] sourceAddress;
-
-		/**
-		 * The source port of the packet.
-		 */
-		int sourcePort;
-
-		/**
-		 * The destination address of the packet.
-		 */
-		byte[] destinationAddress;
-
-		/**
-		 * The destination port of the packet.
-		 */
-		int destinationPort;
-
-		/**
-		 * Is the packet a udp one.
-		 */
-		TransportName transport;
-
-		/**
-		 * Are we sending the packet, or false if we are receiving.
-		 */
-		boolean sender;
-
+	private class SaverThread
+			extends Thread {
 		/**
-		 * Array containing packet content.
+		 * start/stop indicator.
 		 */
-		byte[] packetContent;
+		private volatile boolean stopped = true;
 
 		/**
-		 * The offset in the packetContent where packet content is.
+		 * Whether this thread is (about to be) parked until a packet is queued.
 		 */
-		int packetOffset;
+		private volatile boolean parked;
 
 		/**
-		 * The length of the packet content.
+		 * The writer of the segment files, which is only accessed by this thread.
 		 */
-		int packetLength;
+		private MappedPcapWriter writer;
 
 		/**
-		 * Creates a packet with the needed data.
-		 *
-		 * @param protocol the source protocol that logs this packet.
-		 * @param sourceAddress The source address of the packet.
-		 * @param sourcePort The source port of the packet.
-		 * @param destinationAddress The destination address of the packet.
-		 * @param destinationPort The destination port of the packet.
-		 * @param transport the transport this packet uses.
-		 * @param sender Are we sending the packet,
-		 * or false if we are receiving.
-		 * @param packetContent Array containing packet content.
-		 * @param packetOffset The offset in the packetContent
-		 * where packet content is.
-		 * @param packetLength The length of the packet content.
+		 * The number of dropped packets which has last been reported.
 		 */
-		private Packet(ProtocolName protocol,
-				byte[] sourceAddress,
-				int sourcePort,
-				byte[] destinationAddress,
-				int destinationPort,
-				TransportName transport,
-				boolean sender,
-				byte[] packetContent,
-				int packetOffset,
-				int packetLength) {
-			this.protocol = protocol;
-			this.sourceAddress = sourceAddress;
-			this.sourcePort = sourcePort;
-			this.destinationAddress = destinationAddress;
-			this.destinationPort = destinationPort;
-			this.transport = transport;
-			this.sender = sender;
-			this.packetContent = packetContent;
-			this.packetOffset = packetOffset;
-			this.packetLength = packetLength;
-		}
-	}
+		private long reportedDroppedCount;
 
-	/**
-	 * Dumps packet in separate thread so we don't block our calling thread.
-	 */
-	private class SaverThread
-			extends Thread {
-		/**
-		 * start/stop indicator.
-		 */
-		private boolean stopped = true;
-
-		/**
-		 * List of packets queued to be written in the file.
-		 */
-        private final EvictingQueue<Packet> pktsToSave
-            = EvictingQueue.create(EVICTING_QUEUE_MAX_SIZE);
 		/**
 		 * Initializes a new <tt>SaverThread</tt>.
 		 */
 		SaverThread() {
 			setName(PacketLoggingServiceImpl.class.getName() + " SaverThread");
+			setDaemon(true);
 		}
 
 		/**
-		 * Sends instant messages in separate thread so we don't block
-		 * our calling thread.
+		 * Drains the queued packets into the segment files until stopped and then saves the
+		 * packets queued by then.
 		 */
 		@Override
 		public void run() {
 			stopped = false;
-			while (!stopped) {
-				Packet pktToSave;
-
-				synchronized (this) {
-					if (pktsToSave.isEmpty()) {
-						try {
-							wait();
-						} catch (InterruptedException iex) {
-						}
+			try {
+				while (!stopped) {
+					if (drain() != 0) {
+						LockSupport.parkNanos(this, SAVER_BATCH_NANOS);
 						continue;
 					}
 
-                    pktToSave = pktsToSave.poll();
+					/*
+					 * Announce the parking before checking the ring a last time: a packet queued
+					 * after the check sees the announcement and unparks us.
+					 */
+					parked = true;
+					RecordRing ring = PacketLoggingServiceImpl.this.ring;
+
+					if (!stopped && (ring == null || ring.isEmpty()))
+						LockSupport.park(this);
+					parked = false;
 				}
+				drain();
+			}
+			finally {
+				if (writer != null) {
+					writer.close();
+					writer = null;
+				}
+			}
+		}
 
-				if (pktToSave != null) {
-					try {
-						savePacket(pktToSave);
-					} catch (Throwable t) {
-                        /*
-                         * XXX ThreadDeath must be rethrown; otherwise, the
-                         * related Thread will not die.
-                         */
-						if (t instanceof ThreadDeath)
-							throw (ThreadDeath) t;
-						else
-							logger.error("Error writing packet to file", t);
-					}
+		/**
+		 * Saves the queued packets.
+		 *
+		 * @return the number of saved packets.
+		 */
+		private int drain() {
+			RecordRing ring = PacketLoggingServiceImpl.this.ring;
+
+			if (ring == null)
+				return 0;
+
+			if (writer == null)
+				writer = new MappedPcapWriter(getConfiguration());
+
+			int count = 0;
+
+			while (true) {
+				try {
+					int drained = ring.drain(writer);
+
+					count += drained;
+					if (drained == 0)
+						break;
+				} catch (Throwable t) {
+					/*
+					 * XXX ThreadDeath must be rethrown; otherwise, the
+					 * related Thread will not die.
+					 */
+					if (t instanceof ThreadDeath)
+						throw (ThreadDeath) t;
+					else
+						logger.error("Error writing packet to file", t);
 				}
 			}
+
+			long droppedCount = ring.getDroppedCount();
+
+			if (droppedCount != reportedDroppedCount) {
+				logger.warn("Queue is full, " + (droppedCount - reportedDroppedCount)
+						+ " packets have been dropped.");
+				reportedDroppedCount = droppedCount;
+			}
+			return count;
 		}
 
 		/**
-		 * Interrupts this sender so that it would no longer send messages.
+		 * Wakes this saver up if it is parked because it has found no packets to save.
 		 */
-		public synchronized void stopRunning() {
-			stopped = true;
-			notifyAll();
+		void wakeUp() {
+			if (parked)
+				LockSupport.unpark(this);
 		}
 
 		/**
-		 * Schedule new packet for save.
-		 *
-		 * @param packet new packet to save.
+		 * Interrupts this saver so that it saves the queued packets and stops.
 		 */
-        public synchronized void queuePacket(Packet packet)
-        {
-            if (EVICTING_QUEUE_MAX_SIZE - pktsToSave.size() == 0)
-            {
-                logger.warn("Queue is full, packets are being evicted.");
-            }
-
-			pktsToSave.add(packet);
-			notifyAll();
+		public void stopRunning() {
+			stopped = true;
+			LockSupport.unpark(this);
 		}
 	}
 }
@@ -40,6 +40,13 @@ public interface HistoryService
 	 */
 	public static String CACHE_ENABLED_PROPERTY = "history.CACHE_ENABLED";
 
+	/**
+	 * Property used in implementation to store the records of new and existing histories in an
+	 * indexed append-only log rather than in XML files; the XML files of a history are migrated to
+	 * the log when the history is first used. Disabled by default.
+	 */
+	public static String LOG_STORE_ENABLED_PROPERTY = "history.LOG_STORE_ENABLED";
+
 	/**
 	 * Date format used in the XML history database.
 	 */
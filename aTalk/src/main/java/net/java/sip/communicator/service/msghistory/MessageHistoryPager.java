@@ -0,0 +1,50 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.msghistory;
+
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Pages through the message history of a contact or chat room in both directions, starting from
+ * the most recent messages. Each page continues exactly where the previous page in the same
+ * direction stopped, even among messages with the same timestamp, and costs the same however far
+ * back in the history it is.
+ *
+ * @author Eng Chong Meng
+ */
+public interface MessageHistoryPager
+{
+	/**
+	 * Returns the page of messages just older than all the messages returned so far, or the most
+	 * recent messages on the first call.
+	 *
+	 * @return List of MessageReceivedEvents or MessageDeliveredEvents, oldest first; empty when
+	 * there are no older messages
+	 */
+	List<EventObject> previousPage();
+
+	/**
+	 * Returns the page of messages just newer than all the messages returned so far.
+	 *
+	 * @return List of MessageReceivedEvents or MessageDeliveredEvents, oldest first; empty when
+	 * there are no newer messages or no page has been returned yet
+	 */
+	List<EventObject> nextPage();
+
+	/**
+	 * Returns whether there may be messages older than all the messages returned so far.
+	 *
+	 * @return <tt>false</tt> if the oldest message has been returned
+	 */
+	boolean hasPrevious();
+
+	/**
+	 * Releases the resources of this pager, e.g. discards the prefetched page.
+	 */
+	void close();
+}
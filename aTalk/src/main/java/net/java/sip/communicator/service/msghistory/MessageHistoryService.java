@@ -164,6 +164,27 @@ public interface MessageHistoryService
 	Collection<EventObject> findByKeywords(MetaContact contact, String[] keywords,
 			boolean caseSensitive);
 
+	/**
+	 * Returns a page of the messages exchanged by all the contacts in the supplied metaContact
+	 * which contain any of the given keywords, the best matches first.
+	 *
+	 * @param contact
+	 * 		MetaContact
+	 * @param keywords
+	 * 		array of keywords
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param offset
+	 * 		the number of best matches to skip
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return List of MessageReceivedEvents or MessageDeliveredEvents
+	 */
+	List<EventObject> searchMessages(MetaContact contact, String[] keywords, Date startDate,
+			Date endDate, int offset, int count);
+
 	/**
 	 * Returns the supplied number of recent messages exchanged by all the contacts in the
 	 * supplied metaContact
@@ -176,6 +197,18 @@ public interface MessageHistoryService
 	 */
 	Collection<EventObject> findLast(MetaContact contact, int count);
 
+	/**
+	 * Returns a pager through the messages exchanged by all the contacts in the supplied
+	 * metaContact, starting from the most recent messages
+	 *
+	 * @param contact
+	 * 		MetaContact
+	 * @param pageSize
+	 * 		the maximum number of messages of a page
+	 * @return the MessageHistoryPager
+	 */
+	MessageHistoryPager getHistoryPager(MetaContact contact, int pageSize);
+
 	/**
 	 * Returns the supplied number of recent messages after the given date exchanged by all the
 	 * contacts in the supplied metaContact
@@ -355,6 +388,39 @@ public interface MessageHistoryService
 	Collection<EventObject> findByKeywords(ChatRoom room, String[] keywords,
 			boolean caseSensitive);
 
+	/**
+	 * Returns a page of the messages exchanged in the supplied chat room which contain any of the
+	 * given keywords, the best matches first.
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @param keywords
+	 * 		array of keywords
+	 * @param startDate
+	 * 		Date the start date of the conversations or <tt>null</tt>
+	 * @param endDate
+	 * 		Date the end date of the conversations or <tt>null</tt>
+	 * @param offset
+	 * 		the number of best matches to skip
+	 * @param count
+	 * 		the maximum number of messages of the page
+	 * @return List of ChatRoomMessageReceivedEvents or ChatRoomMessageDeliveredEvents
+	 */
+	List<EventObject> searchMessages(ChatRoom room, String[] keywords, Date startDate,
+			Date endDate, int offset, int count);
+
+	/**
+	 * Returns a pager through the messages exchanged in the supplied chat room, starting from the
+	 * most recent messages
+	 *
+	 * @param room
+	 * 		The chat room
+	 * @param pageSize
+	 * 		the maximum number of messages of a page
+	 * @return the MessageHistoryPager
+	 */
+	MessageHistoryPager getHistoryPager(ChatRoom room, int pageSize);
+
 	/**
 	 * Returns the supplied number of recent messages exchanged in the supplied chat room
 	 *
@@ -10,6 +10,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
+import net.java.sip.communicator.impl.configuration.SQLiteConfigurationStore;
 import net.java.sip.communicator.service.credentialsstorage.CredentialsStorageService;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.account.AccountUtils;
@@ -1545,16 +1546,23 @@ public class AccountID
 		accountProperties.put(ProtocolProviderFactory.KEYS,
 				cursor.getString(cursor.getColumnIndex(KEYS)));
 
-		// Retrieve the remaining account properties from table
-		String args[] = {accountUuid};
-		cursor = db.query(TBL_PROPERTIES, null, ACCOUNT_UUID + "=?", args, null, null, null);
-		int columnName = cursor.getColumnIndex("Name");
-		int columnValue = cursor.getColumnIndex("Value");
+		// Retrieve the remaining account properties from the configuration store, which has the
+		// changes not written to table TBL_PROPERTIES yet, or from the table without a store
+		SQLiteConfigurationStore store = SQLiteConfigurationStore.getInstance();
+		if (store != null) {
+			accountProperties.putAll(store.getAccountProperties(accountUuid));
+		}
+		else {
+			String args[] = {accountUuid};
+			cursor = db.query(TBL_PROPERTIES, null, ACCOUNT_UUID + "=?", args, null, null, null);
+			int columnName = cursor.getColumnIndex("Name");
+			int columnValue = cursor.getColumnIndex("Value");
 
-		while (cursor.moveToNext()) {
-			accountProperties.put(cursor.getString(columnName), cursor.getString(columnValue));
+			while (cursor.moveToNext()) {
+				accountProperties.put(cursor.getString(columnName), cursor.getString(columnValue));
+			}
+			cursor.close();
 		}
-		cursor.close();
 		return factory.createAccount(accountProperties);
 	}
 
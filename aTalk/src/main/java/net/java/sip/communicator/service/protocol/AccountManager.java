@@ -10,6 +10,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 
+import net.java.sip.communicator.impl.configuration.SQLiteConfigurationStore;
 import net.java.sip.communicator.service.credentialsstorage.CredentialsStorageService;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
@@ -564,11 +565,24 @@ public class AccountManager
 
 		if (configurationProperties.size() > 0)
 			configurationService.setProperties(configurationProperties);
+		flushConfiguration();
 
 		if (logger.isDebugEnabled())
 			logger.debug("Stored account for id " + accountUid);
 	}
 
+	/**
+	 * Writes the account property changes still pending in the <tt>SQLiteConfigurationStore</tt>
+	 * to the database. Android usually kills the process without stopping the bundles, so an
+	 * account change waiting for the batched write would otherwise be lost.
+	 */
+	private void flushConfiguration()
+	{
+		SQLiteConfigurationStore store = SQLiteConfigurationStore.getInstance();
+		if (store != null)
+			store.flush();
+	}
+
 	/**
 	 * Gets account node name under which account configuration properties are stored.
 	 *
@@ -616,6 +630,7 @@ public class AccountManager
 		}
 
 		// null means account has been removed.
+		flushConfiguration();
 		return (getStoredAccountUUID(factory, accountID.getAccountUniqueID()) == null);
 	}
 
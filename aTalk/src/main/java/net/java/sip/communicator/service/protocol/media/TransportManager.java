@@ -379,15 +379,15 @@ public abstract class TransportManager<U extends MediaAwareCallPeer<?, ?, ?>> {
 					if ((socket = connector.getDataSocket()) != null) {
 						InetSocketAddress dataAddress = target.getDataAddress();
 
-						socket.send(new DatagramPacket(buf, buf.length, dataAddress.getAddress(),
-								dataAddress.getPort()));
+						DefaultStreamConnector.send(socket, new DatagramPacket(buf, buf.length,
+								dataAddress.getAddress(), dataAddress.getPort()));
 					}
 
 					// control/RTCP
 					if ((socket = connector.getControlSocket()) != null) {
 						InetSocketAddress controlAddress = target.getControlAddress();
 
-						socket.send(new DatagramPacket(buf, buf.length,
+						DefaultStreamConnector.send(socket, new DatagramPacket(buf, buf.length,
 								controlAddress.getAddress(), controlAddress.getPort()));
 					}
 				}
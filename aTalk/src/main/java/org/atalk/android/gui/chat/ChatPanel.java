@@ -14,7 +14,7 @@ import net.java.sip.communicator.service.contactlist.MetaContact;
 import net.java.sip.communicator.service.filehistory.FileRecord;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.gui.event.*;
-import net.java.sip.communicator.service.metahistory.MetaHistoryService;
+import net.java.sip.communicator.service.msghistory.*;
 import net.java.sip.communicator.service.muc.ChatRoomWrapper;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -82,11 +82,6 @@ public class ChatPanel implements Chat, MessageListener
 	 */
 	private ChatTransport mCurrentChatTransport;
 
-	/**
-	 * The chat history filter for retrieving history messages.
-	 */
-	private final String[] chatHistoryFilter = ChatSession.chatHistoryFilter;
-
 	/**
 	 * Messages cache used by this session; to cache msg arrived when the chatFragment
 	 * is not in view e.g. standby, while in contactList view or when scroll out of view.
@@ -110,6 +105,11 @@ public class ChatPanel implements Chat, MessageListener
 	 */
 	private boolean historyLoaded = false;
 
+	/**
+	 * Pages back through the history of the chat session, created on the first load of history.
+	 */
+	private MessageHistoryPager historyPager;
+
 	/**
 	 * Registered chatFragment to be informed of any messageReceived event
 	 */
@@ -272,6 +272,8 @@ public class ChatPanel implements Chat, MessageListener
 		mCurrentChatTransport.removeInstantMessageListener(this);
 		mCurrentChatTransport.removeSmsMessageListener(this);
 		mChatSession.dispose();
+		if (historyPager != null)
+			historyPager.close();
 	}
 
 	/**
@@ -396,31 +398,38 @@ public class ChatPanel implements Chat, MessageListener
 			return msgCache;
 		}
 
-		final MetaHistoryService metaHistory = AndroidGUIActivator.getMetaHistoryService();
+		final MessageHistoryService mhs = AndroidGUIActivator.getMessageHistoryService();
 
-		// If the MetaHistoryService is not registered we have nothing to do here. The history
+		// If the MessageHistoryService is not registered we have nothing to do here. The history
 		// could be "disabled" from the user through one of the configuration forms.
-		if (metaHistory == null)
+		if (mhs == null)
 			return msgCache;
 
-		Collection<Object> history;
-		// descriptor can either be metaContact or chatRoomWrapper (ChatRoom)
-		Object descriptor = mChatSession.getDescriptor();
+		MessageHistoryPager pager;
+		synchronized (cacheLock) {
+			if (historyPager == null) {
+				// descriptor can either be metaContact or chatRoomWrapper (ChatRoom)
+				Object descriptor = mChatSession.getDescriptor();
 
-		if (msgCache.size() == 0) {
-			// first time fetch, so read in last HISTORY_CHUNK_SIZE of history messages
-			history = metaHistory.findLast(chatHistoryFilter, descriptor, HISTORY_CHUNK_SIZE);
-		}
-		else {
-			// read in earlier than the 'last fetch date' of HISTORY_CHUNK_SIZE messages
-			ChatMessage oldest;
-			synchronized (cacheLock) {
-				oldest = msgCache.get(0);
+				if (descriptor instanceof MetaContact) {
+					historyPager = mhs.getHistoryPager((MetaContact) descriptor,
+							HISTORY_CHUNK_SIZE);
+				}
+				else if (descriptor instanceof ChatRoomWrapper) {
+					historyPager = mhs.getHistoryPager(
+							((ChatRoomWrapper) descriptor).getChatRoom(), HISTORY_CHUNK_SIZE);
+				}
+				else {
+					return msgCache;
+				}
 			}
-			history = metaHistory.findLastMessagesBefore(chatHistoryFilter, descriptor,
-					oldest.getDate(), HISTORY_CHUNK_SIZE);
+			pager = historyPager;
 		}
 
+		// first time fetch reads in the last HISTORY_CHUNK_SIZE of history messages, and then
+		// the HISTORY_CHUNK_SIZE messages just before the ones already read
+		Collection<EventObject> history = pager.previousPage();
+
 		// Convert events into messages
 		ArrayList<ChatMessage> historyMsgs = new ArrayList<>();
 
@@ -939,8 +948,14 @@ public class ChatPanel implements Chat, MessageListener
 	 */
 	public void clearMsgCache()
 	{
-		msgCache.clear();
-		this.historyLoaded = false;
+		synchronized (cacheLock) {
+			msgCache.clear();
+			this.historyLoaded = false;
+			if (historyPager != null) {
+				historyPager.close();
+				historyPager = null;
+			}
+		}
 	}
 
 	@Override
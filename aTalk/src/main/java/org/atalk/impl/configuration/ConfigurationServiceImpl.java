@@ -194,17 +194,10 @@ public class ConfigurationServiceImpl implements ConfigurationService
 			changeEventDispatcher.fireVetoableChange(propertyName, oldValue, property);
 
 		// no exception was thrown - lets change the property and fire a change event
-		// cmeng - define the location where to store the change properties - can be removed??? file system not use
-		try {
-			storeConfiguration();
-		}
-		catch (IOException ex) {
-			logger.error("Failed to store configuration after a property change");
-		}
-
 		if (logger.isTraceEnabled())
 			logger.trace(propertyName + "( oldValue=" + oldValue + ", newValue=" + property + ".");
 		doSetProperty(propertyName, property, isSystem);
+		storeChangedConfiguration();
 
 		if (changeEventDispatcher.hasPropertyChangeListeners(propertyName))
 			changeEventDispatcher.firePropertyChange(propertyName, oldValue, property);
@@ -236,13 +229,7 @@ public class ConfigurationServiceImpl implements ConfigurationService
 
 		for (Map.Entry<String, Object> property : properties.entrySet())
 			doSetProperty(property.getKey(), property.getValue(), false);
-
-		try {
-			storeConfiguration();
-		}
-		catch (IOException ex) {
-			logger.error("Failed to store configuration after property changes");
-		}
+		storeChangedConfiguration();
 
 		for (Map.Entry<String, Object> property : properties.entrySet()) {
 			String propertyName = property.getKey();
@@ -315,12 +302,24 @@ public class ConfigurationServiceImpl implements ConfigurationService
 		for (String pName : childPropertyNames) {
 			removePropertyInternal(pName);
 		}
+		storeChangedConfiguration();
+	}
+
+	/**
+	 * Stores the configuration after property changes. A <tt>DatabaseConfigurationStore</tt>
+	 * writes its changes to its database by itself, in batches, so it is only told to write them
+	 * on {@link #storeConfiguration()}.
+	 */
+	private void storeChangedConfiguration()
+	{
+		if (store instanceof DatabaseConfigurationStore)
+			return;
 
 		try {
 			storeConfiguration();
 		}
 		catch (IOException ex) {
-			logger.error("Failed to store configuration after a property change");
+			logger.error("Failed to store configuration after property changes");
 		}
 	}
 
@@ -441,8 +440,14 @@ public class ConfigurationServiceImpl implements ConfigurationService
 		}
 
 		// now get property names from the current store.
-		getPropertyNamesByPrefix(prefix, exactPrefixMatch,
-				store.getPropertyNames(prefix), resultKeySet);
+		if (store instanceof DatabaseConfigurationStore) {
+			resultKeySet.addAll(((DatabaseConfigurationStore) store)
+					.getPropertyNamesByPrefix(prefix, exactPrefixMatch));
+		}
+		else {
+			getPropertyNamesByPrefix(prefix, exactPrefixMatch,
+					store.getPropertyNames(prefix), resultKeySet);
+		}
 
 		// finally, get property names from mutable default property set.
 		if (defaultProperties.size() > 0) {
@@ -520,6 +525,11 @@ public class ConfigurationServiceImpl implements ConfigurationService
 	{
 		List<String> resultKeySet = new LinkedList<>();
 
+		if (store instanceof DatabaseConfigurationStore) {
+			resultKeySet.addAll(((DatabaseConfigurationStore) store)
+					.getPropertyNamesBySuffix(suffix));
+			return resultKeySet;
+		}
 		for (String key : store.getPropertyNames(suffix)) {
 			int ix = key.lastIndexOf('.');
 
@@ -8,7 +8,7 @@ package org.atalk.impl.configuration;
 import org.atalk.util.xml.XMLException;
 
 import java.io.*;
-import java.util.Hashtable;
+import java.util.*;
 
 /**
  * @author Lyubomir Marinov
@@ -47,6 +47,33 @@ public abstract class DatabaseConfigurationStore extends HashtableConfigurationS
 	protected abstract void reloadConfiguration()
 			throws IOException;
 
+	/**
+	 * Gets the names of the properties which have values associated in this
+	 * <tt>ConfigurationStore</tt> and have a specific prefix, i.e. the names among
+	 * {@link #getPropertyNames(String)} of <tt>prefix</tt> which
+	 * <tt>ConfigurationServiceImpl#getPropertyNamesByPrefix(String, boolean)</tt> would select.
+	 *
+	 * @param prefix
+	 * 		the prefix of the property names, i.e. everything before their last dot
+	 * @param exactPrefixMatch
+	 * 		<tt>true</tt> to only get the names whose prefix is <tt>prefix</tt>; <tt>false</tt> to
+	 * 		also get the names whose prefix starts with <tt>prefix</tt>
+	 * @return the property names with the specified prefix
+	 */
+	public abstract List<String> getPropertyNamesByPrefix(String prefix, boolean exactPrefixMatch);
+
+	/**
+	 * Gets the names of the properties which have values associated in this
+	 * <tt>ConfigurationStore</tt> and have a specific suffix, i.e. the names among
+	 * {@link #getPropertyNames(String)} of <tt>suffix</tt> which
+	 * <tt>ConfigurationServiceImpl#getPropertyNamesBySuffix(String)</tt> would select.
+	 *
+	 * @param suffix
+	 * 		the suffix of the property names, i.e. everything after their last dot
+	 * @return the property names with the specified suffix
+	 */
+	public abstract List<String> getPropertyNamesBySuffix(String suffix);
+
 	/**
 	 * Removes all property name-value associations currently present in this
 	 * <tt>ConfigurationStore</tt> and de-serializes new property name-value associations from a
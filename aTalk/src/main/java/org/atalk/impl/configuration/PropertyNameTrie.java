@@ -0,0 +1,245 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.configuration;
+
+import java.util.*;
+
+/**
+ * Indexes property names by their dot-separated components so that the names with a specific
+ * prefix or suffix are found without going through all the names. The prefix and suffix matches
+ * are those of <tt>ConfigurationServiceImpl#getPropertyNamesByPrefix(String, boolean)</tt> and
+ * <tt>ConfigurationServiceImpl#getPropertyNamesBySuffix(String)</tt>. A name may be added more than
+ * once and is then returned as many times as it has been added.
+ * <p>
+ * <tt>PropertyNameTrie</tt> is not thread-safe.
+ *
+ * @author Eng Chong Meng
+ */
+public class PropertyNameTrie
+{
+	/**
+	 * The node of the empty name, whose children are the first components of the names.
+	 */
+	private final Node root = new Node(null, null);
+
+	/**
+	 * The nodes of the added names with at least two components by their last component.
+	 */
+	private final Map<String, Set<Node>> nodesBySuffix = new HashMap<>();
+
+	/**
+	 * Adds a name to this trie.
+	 *
+	 * @param name
+	 * 		the property name to add
+	 */
+	public void add(String name)
+	{
+		Node node = root;
+
+		for (String component : split(name)) {
+			Node child = node.children.get(component);
+
+			if (child == null) {
+				child = new Node(node, component);
+				node.children.put(component, child);
+			}
+			node = child;
+		}
+		if ((node.count++ == 0) && (node.parent != root)) {
+			Set<Node> nodes = nodesBySuffix.get(node.component);
+
+			if (nodes == null) {
+				nodes = new HashSet<>();
+				nodesBySuffix.put(node.component, nodes);
+			}
+			nodes.add(node);
+		}
+	}
+
+	/**
+	 * Removes a name from this trie once. Does nothing if the name is not in this trie.
+	 *
+	 * @param name
+	 * 		the property name to remove
+	 */
+	public void remove(String name)
+	{
+		Node node = find(split(name), -1);
+
+		if ((node == null) || (node.count == 0) || (--node.count != 0))
+			return;
+
+		if (node.parent != root) {
+			Set<Node> nodes = nodesBySuffix.get(node.component);
+
+			nodes.remove(node);
+			if (nodes.isEmpty())
+				nodesBySuffix.remove(node.component);
+		}
+		// prune the nodes which no longer lead to a name
+		while ((node != root) && (node.count == 0) && node.children.isEmpty()) {
+			node.parent.children.remove(node.component);
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Gets all the names of this trie.
+	 *
+	 * @return the names in ascending order
+	 */
+	public List<String> getNames()
+	{
+		List<String> names = new ArrayList<>();
+
+		for (Node child : root.children.values())
+			collect(child, names);
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gets the names of this trie with a specific prefix. The prefix of a name is everything
+	 * before its last dot; names without a dot have no prefix.
+	 *
+	 * @param prefix
+	 * 		the prefix of the names to get
+	 * @param exactPrefixMatch
+	 * 		<tt>true</tt> to only get the names whose prefix is <tt>prefix</tt>; <tt>false</tt> to
+	 * 		get the names whose prefix starts with <tt>prefix</tt>
+	 * @return the names in ascending order
+	 */
+	public List<String> getNamesByPrefix(String prefix, boolean exactPrefixMatch)
+	{
+		String[] components = split(prefix);
+		List<String> names = new ArrayList<>();
+
+		if (exactPrefixMatch) {
+			Node node = find(components, -1);
+
+			if (node != null) {
+				for (Node child : node.children.values())
+					child.addTo(names);
+			}
+		}
+		else {
+			Node node = find(components, components.length - 1);
+
+			if (node != null) {
+				// The prefix may end within a component: the names below the children starting
+				// with that partial component match, but not the names of the children themselves.
+				String last = components[components.length - 1];
+
+				for (Node child : node.children.values()) {
+					if (child.component.startsWith(last)) {
+						for (Node grandchild : child.children.values())
+							collect(grandchild, names);
+					}
+				}
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gets the names of this trie with a specific suffix. The suffix of a name is everything after
+	 * its last dot; names without a dot have no suffix.
+	 *
+	 * @param suffix
+	 * 		the suffix of the names to get
+	 * @return the names in ascending order
+	 */
+	public List<String> getNamesBySuffix(String suffix)
+	{
+		Set<Node> nodes = nodesBySuffix.get(suffix);
+		List<String> names = new ArrayList<>();
+
+		if (nodes != null) {
+			for (Node node : nodes)
+				node.addTo(names);
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gets the node of the first components of a name.
+	 *
+	 * @param components
+	 * 		the components of the name
+	 * @param length
+	 * 		the number of components to follow, -1 for all of them
+	 * @return the node or <tt>null</tt> if no name of this trie starts with the components
+	 */
+	private Node find(String[] components, int length)
+	{
+		Node node = root;
+
+		if (length == -1)
+			length = components.length;
+		for (int i = 0; (i < length) && (node != null); i++)
+			node = node.children.get(components[i]);
+		return node;
+	}
+
+	/**
+	 * Adds the names of a node and all its descendants to a list.
+	 */
+	private static void collect(Node node, List<String> names)
+	{
+		node.addTo(names);
+		for (Node child : node.children.values())
+			collect(child, names);
+	}
+
+	/**
+	 * Splits a name into its components, keeping the empty ones so that e.g. "a." and "a" differ.
+	 */
+	private static String[] split(String name)
+	{
+		return name.split("\\.", -1);
+	}
+
+	/**
+	 * A name or the beginning of names, one component deeper than its parent.
+	 */
+	private static class Node
+	{
+		final Node parent;
+
+		final String component;
+
+		/**
+		 * The name of this node, <tt>null</tt> for the root.
+		 */
+		final String name;
+
+		final Map<String, Node> children = new HashMap<>();
+
+		/**
+		 * The number of times the name of this node has been added and not removed.
+		 */
+		int count;
+
+		Node(Node parent, String component)
+		{
+			this.parent = parent;
+			this.component = component;
+			if (parent == null)
+				name = null;
+			else
+				name = (parent.name == null) ? component : (parent.name + '.' + component);
+		}
+
+		void addTo(List<String> names)
+		{
+			for (int i = 0; i < count; i++)
+				names.add(name);
+		}
+	}
+}
@@ -17,6 +17,8 @@ import org.atalk.service.neomedia.*;
 import org.atalk.service.neomedia.codec.Constants;
 import org.atalk.service.neomedia.device.MediaDevice;
 import org.atalk.service.neomedia.event.*;
+import org.atalk.service.neomedia.stats.JitterBufferStats;
+import org.atalk.util.ConfigUtils;
 import org.atalk.util.Logger;
 import org.atalk.util.event.PropertyChangeNotifier;
 
@@ -69,6 +71,27 @@ public class AudioMediaStreamImpl extends MediaStreamImpl
 	 */
 	private static final Logger logger = Logger.getLogger(AudioMediaStreamImpl.class);
 
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> boolean property which
+	 * specifies whether the received audio is to be played out through a neomedia-owned adaptive
+	 * jitter buffer by default.
+	 */
+	public static final String ADAPTIVE_JITTER_BUFFER_PNAME
+			= AudioMediaStreamImpl.class.getName() + ".ADAPTIVE_JITTER_BUFFER";
+
+	/**
+	 * The length in milliseconds of the FMJ receive buffer when the received audio is played out
+	 * through an adaptive jitter buffer. FMJ is then to merely hand the packets over as they
+	 * arrive.
+	 */
+	private static final long ADAPTIVE_JITTER_BUFFER_RECEIVE_BUFFER_LENGTH = 20;
+
+	/**
+	 * The indicator which determines whether the received audio is to be played out through an
+	 * adaptive jitter buffer.
+	 */
+	private boolean adaptiveJitterBufferEnabled;
+
 	/**
 	 * A <tt>PropertyChangeNotifier<tt> which will inform this <tt>AudioStream</tt> if a selected
 	 * audio device (capture, playback or notification device) has changed. We want to listen to
@@ -136,6 +159,10 @@ public class AudioMediaStreamImpl extends MediaStreamImpl
 			SrtpControl srtpControl)
 	{
 		super(connector, device, srtpControl);
+		// The super constructor may have set the device session already.
+		setAdaptiveJitterBufferEnabled(ConfigUtils.getBoolean(LibJitsi.getConfigurationService(),
+				ADAPTIVE_JITTER_BUFFER_PNAME, false));
+
 		MediaService mediaService = LibJitsi.getMediaService();
 
 		if (mediaService instanceof PropertyChangeNotifier) {
@@ -297,7 +324,11 @@ public class AudioMediaStreamImpl extends MediaStreamImpl
 		 */
 		long bufferLength = 120;
 
-		if (cfg != null) {
+		if (adaptiveJitterBufferEnabled) {
+			// The adaptive jitter buffer absorbs the jitter after the decoding.
+			bufferLength = ADAPTIVE_JITTER_BUFFER_RECEIVE_BUFFER_LENGTH;
+		}
+		else if (cfg != null) {
 			String bufferLengthStr = cfg.getString(PROPERTY_NAME_RECEIVE_BUFFER_LENGTH);
 
 			try {
@@ -393,6 +424,7 @@ public class AudioMediaStreamImpl extends MediaStreamImpl
 				 */
 				if (outputVolumeControl != null)
 					deviceSession.setOutputVolumeControl(outputVolumeControl);
+				deviceSession.setAdaptiveJitterBufferEnabled(adaptiveJitterBufferEnabled);
 			}
 		} finally {
 			super.deviceSessionChanged(oldValue, newValue);
@@ -420,6 +452,53 @@ public class AudioMediaStreamImpl extends MediaStreamImpl
 		}
 	}
 
+	/**
+	 * Gets the statistics of the adaptive jitter buffer through which the audio received by this
+	 * stream is played out.
+	 *
+	 * @return the statistics of the adaptive jitter buffer through which the audio received by
+	 * this stream is played out or <tt>null</tt> if it is not played out through one
+	 */
+	public JitterBufferStats getJitterBufferStats()
+	{
+		AudioMediaDeviceSession deviceSession = getDeviceSession();
+
+		return (deviceSession == null) ? null : deviceSession.getJitterBufferStats();
+	}
+
+	/**
+	 * Determines whether the audio received by this stream is played out through an adaptive
+	 * jitter buffer.
+	 *
+	 * @return <tt>true</tt> if the audio received by this stream is played out through an adaptive
+	 * jitter buffer; otherwise, <tt>false</tt>
+	 */
+	public boolean isAdaptiveJitterBufferEnabled()
+	{
+		return adaptiveJitterBufferEnabled;
+	}
+
+	/**
+	 * Sets whether the audio received by this stream is to be played out through an adaptive
+	 * jitter buffer which adapts the playout delay to the observed jitter by stretching the
+	 * decoded audio in time, rather than through the jitter buffer of FMJ only. Is to be invoked
+	 * before the stream is started because the FMJ receive buffer is configured and the playback
+	 * renderers are created once only.
+	 *
+	 * @param adaptiveJitterBufferEnabled
+	 * 		<tt>true</tt> to play the received audio out through an adaptive jitter buffer;
+	 * 		otherwise, <tt>false</tt>
+	 */
+	public void setAdaptiveJitterBufferEnabled(boolean adaptiveJitterBufferEnabled)
+	{
+		this.adaptiveJitterBufferEnabled = adaptiveJitterBufferEnabled;
+
+		AudioMediaDeviceSession deviceSession = getDeviceSession();
+
+		if (deviceSession != null)
+			deviceSession.setAdaptiveJitterBufferEnabled(adaptiveJitterBufferEnabled);
+	}
+
 	/**
 	 * Returns the <tt>MediaDeviceSession</tt> associated with this stream after first casting
 	 * it to
@@ -0,0 +1,667 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia;
+
+import net.sf.fmj.media.util.MediaThread;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.*;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the RTP and RTCP sockets of all media streams from a small, fixed pool of
+ * <tt>Selector</tt> loops and worker threads so that the number of threads does not grow with the
+ * number of streams. <tt>RTPConnectorInputStream</tt>s register their <tt>DatagramChannel</tt>s
+ * instead of starting a receive thread each and the send queues of
+ * <tt>RTPConnectorOutputStream</tt>s which send without blocking are drained by the loops instead
+ * of a send thread each.
+ *
+ * The loops never block: they only wait for channels to become readable and hand each readable
+ * channel to a worker, which drains it and passes the packets on to the media stack, so a slow
+ * stream holds up a single worker rather than every stream of a loop. A channel is not watched
+ * while a worker is receiving from it so that its packets are received in order.
+ *
+ * Only sockets which have a <tt>DatagramChannel</tt> of their own are served, i.e. the sockets
+ * created through <tt>DefaultStreamConnector#createChannelDatagramSocket</tt> which the raw UDP
+ * transports (<tt>DefaultStreamConnector</tt> and the <tt>TransportManager</tt>s through the
+ * <tt>NetworkAddressManagerService</tt>) use.
+ *
+ * ICE is out of scope: the <tt>DelegatingDatagramSocket</tt>s of ice4j (e.g. the
+ * <tt>MultiplexingDatagramSocket</tt>s of the selected pair) demultiplex STUN, DTLS and RTP in
+ * ice4j itself, and may relay through TURN or TCP, so reading their underlying channel would bypass
+ * ice4j and sending may block. Their streams keep a receive and a send thread each.
+ *
+ * The reactor is enabled by default and may be disabled through the
+ * <tt>ConfigurationService</tt> and/or <tt>System</tt> property {@link #ENABLED_PNAME}.
+ *
+ * @author Eng Chong Meng
+ */
+public class DatagramReactor
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>DatagramReactor</tt> class and its instances.
+	 */
+	private static final Logger logger = Logger.getLogger(DatagramReactor.class);
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> boolean property which
+	 * specifies whether the shared reactor is to be used by the RTP connector streams.
+	 */
+	public static final String ENABLED_PNAME = DatagramReactor.class.getName() + ".ENABLED";
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> integer property which
+	 * specifies the number of <tt>Selector</tt> loops (i.e. threads) of the shared reactor.
+	 */
+	public static final String THREAD_COUNT_PNAME
+			= DatagramReactor.class.getName() + ".THREAD_COUNT";
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> integer property which
+	 * specifies the number of worker threads of the shared reactor which receive from the readable
+	 * channels.
+	 */
+	public static final String WORKER_COUNT_PNAME
+			= DatagramReactor.class.getName() + ".WORKER_COUNT";
+
+	/**
+	 * Whether the RTP connector streams are to use the shared reactor.
+	 */
+	private static final boolean ENABLED;
+
+	/**
+	 * The number of <tt>Selector</tt> loops of the shared reactor.
+	 */
+	private static final int THREAD_COUNT;
+
+	/**
+	 * The number of worker threads of the shared reactor.
+	 */
+	private static final int WORKER_COUNT;
+
+	static {
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+		ENABLED = ConfigUtils.getBoolean(cfg, ENABLED_PNAME, true);
+
+		int threadCount = ConfigUtils.getInt(cfg, THREAD_COUNT_PNAME, -1);
+		if (threadCount < 1)
+			threadCount = Math.min(2, Runtime.getRuntime().availableProcessors());
+		THREAD_COUNT = threadCount;
+
+		int workerCount = ConfigUtils.getInt(cfg, WORKER_COUNT_PNAME, -1);
+		if (workerCount < 1)
+			workerCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+		WORKER_COUNT = workerCount;
+	}
+
+	/**
+	 * The shared instance, initialized upon first use.
+	 */
+	private static DatagramReactor instance;
+
+	/**
+	 * Gets the shared <tt>DatagramReactor</tt>, creating it if necessary.
+	 *
+	 * @return the shared <tt>DatagramReactor</tt>
+	 * @throws IOException
+	 * 		if a <tt>Selector</tt> cannot be opened
+	 */
+	public static synchronized DatagramReactor getInstance()
+			throws IOException
+	{
+		if (instance == null)
+			instance = new DatagramReactor(THREAD_COUNT, WORKER_COUNT);
+		return instance;
+	}
+
+	/**
+	 * Determines whether the RTP connector streams are to use the shared reactor instead of
+	 * dedicated receive and send threads.
+	 *
+	 * @return <tt>true</tt> if the shared reactor is to be used; otherwise, <tt>false</tt>
+	 */
+	public static boolean isEnabled()
+	{
+		return ENABLED;
+	}
+
+	/**
+	 * The <tt>Selector</tt> loops of this reactor.
+	 */
+	private final SelectorLoop[] loops;
+
+	/**
+	 * The index of the loop to be assigned the next executor (round-robin).
+	 */
+	private final AtomicInteger nextLoop = new AtomicInteger();
+
+	/**
+	 * The channels currently registered with this reactor.
+	 */
+	private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The threads which receive from the readable channels on behalf of the loops.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Initializes a new <tt>DatagramReactor</tt> and starts its <tt>Selector</tt> loops.
+	 *
+	 * @param threadCount
+	 * 		the number of <tt>Selector</tt> loops (i.e. threads)
+	 * @param workerCount
+	 * 		the number of worker threads which receive from the readable channels
+	 * @throws IOException
+	 * 		if a <tt>Selector</tt> cannot be opened
+	 */
+	public DatagramReactor(int threadCount, int workerCount)
+			throws IOException
+	{
+		workers = ExecutorUtils.newFixedThreadPool(workerCount, true,
+			DatagramReactor.class.getName() + ".worker");
+		loops = new SelectorLoop[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			loops[i] = new SelectorLoop(i);
+	}
+
+	/**
+	 * Gets the <tt>Selector</tt> loop with the least registered channels.
+	 *
+	 * @return the <tt>Selector</tt> loop with the least registered channels
+	 */
+	private SelectorLoop getLeastLoadedLoop()
+	{
+		SelectorLoop leastLoaded = loops[0];
+
+		for (SelectorLoop loop : loops) {
+			if (loop.registrationCount.get() < leastLoaded.registrationCount.get())
+				leastLoaded = loop;
+		}
+		return leastLoaded;
+	}
+
+	/**
+	 * Gets the statistics of all channels currently registered with this reactor.
+	 *
+	 * @return the <tt>Registration</tt>s of all channels currently registered with this reactor
+	 */
+	public List<Registration> getRegistrations()
+	{
+		return Collections.unmodifiableList(registrations);
+	}
+
+	/**
+	 * Gets the number of <tt>Selector</tt> loops (i.e. threads) of this reactor.
+	 *
+	 * @return the number of <tt>Selector</tt> loops of this reactor
+	 */
+	public int getThreadCount()
+	{
+		return loops.length;
+	}
+
+	/**
+	 * Returns an <tt>Executor</tt> which runs its tasks, in order, on one of the <tt>Selector</tt>
+	 * loops of this reactor. Tasks must not block.
+	 *
+	 * @return an <tt>Executor</tt> bound to one of the <tt>Selector</tt> loops of this reactor
+	 */
+	public ScheduledExecutor newExecutor()
+	{
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	/**
+	 * Registers a specific <tt>DatagramChannel</tt> with this reactor. The channel is switched to
+	 * non-blocking mode and <tt>handler</tt> is invoked on a worker thread whenever datagrams are
+	 * available for receiving.
+	 *
+	 * @param channel
+	 * 		the <tt>DatagramChannel</tt> to register
+	 * @param handler
+	 * 		the <tt>Handler</tt> to invoke when <tt>channel</tt> is readable
+	 * @return the <tt>Registration</tt> which represents the association of <tt>channel</tt> with
+	 * this reactor and carries its statistics
+	 */
+	public Registration register(DatagramChannel channel, Handler handler)
+	{
+		SelectorLoop loop = getLeastLoadedLoop();
+		Registration registration = new Registration(loop, channel, handler);
+
+		loop.registrationCount.incrementAndGet();
+		registrations.add(registration);
+		loop.execute(registration);
+		return registration;
+	}
+
+	/**
+	 * Receives the notifications of a <tt>DatagramReactor</tt> about a registered channel.
+	 */
+	public interface Handler
+	{
+		/**
+		 * Gets the number of packets which were received from the registered channel but were
+		 * dropped before they could be read (e.g. because they were superseded by newer packets).
+		 *
+		 * @return the number of dropped packets
+		 */
+		long getNumberOfDroppedPackets();
+
+		/**
+		 * Notifies this <tt>Handler</tt> that the registered channel is readable. Invoked on a
+		 * worker thread of the reactor and never concurrently for the same channel. The channel
+		 * is not watched until the method returns so it should drain what is available.
+		 *
+		 * @return the number of datagrams drained from the channel or <tt>-1</tt> if the channel
+		 * is no longer usable and is to be unregistered
+		 */
+		int readyToReceive();
+	}
+
+	/**
+	 * An <tt>Executor</tt> which is also able to run a task after a delay.
+	 */
+	public interface ScheduledExecutor
+			extends Executor
+	{
+		/**
+		 * Runs a specific task after a specific delay.
+		 *
+		 * @param task
+		 * 		the task to run
+		 * @param delayNanos
+		 * 		the delay in nanoseconds after which <tt>task</tt> is to be run
+		 */
+		void schedule(Runnable task, long delayNanos);
+	}
+
+	/**
+	 * Represents the registration of a <tt>DatagramChannel</tt> with a <tt>DatagramReactor</tt>
+	 * and carries the per-socket backlog and drop statistics.
+	 */
+	public class Registration
+			implements Runnable
+	{
+		private final DatagramChannel channel;
+
+		private final Handler handler;
+
+		/**
+		 * The <tt>SelectionKey</tt> of the channel. Accessed on the loop thread only.
+		 */
+		private SelectionKey key;
+
+		/**
+		 * The number of datagrams drained during the last wakeup.
+		 */
+		private volatile int lastBacklog;
+
+		private final SelectorLoop loop;
+
+		/**
+		 * The maximum number of datagrams drained during one wakeup.
+		 */
+		private volatile int maxBacklog;
+
+		/**
+		 * The total number of datagrams drained from the channel.
+		 */
+		private volatile long packets;
+
+		/**
+		 * The number of times the channel was found readable.
+		 */
+		private volatile long wakeups;
+
+		/**
+		 * The task which receives from the channel on a worker thread.
+		 */
+		private final Runnable receiveTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				receive();
+			}
+		};
+
+		/**
+		 * The task which watches the channel again after {@link #receiveTask} has run.
+		 */
+		private final Runnable resumeTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (key != null && key.isValid())
+					key.interestOps(SelectionKey.OP_READ);
+			}
+		};
+
+		private Registration(SelectorLoop loop, DatagramChannel channel, Handler handler)
+		{
+			this.loop = loop;
+			this.channel = channel;
+			this.handler = handler;
+		}
+
+		/**
+		 * Unregisters the channel from the reactor. The channel is left open.
+		 */
+		public void cancel()
+		{
+			if (registrations.remove(this)) {
+				loop.registrationCount.decrementAndGet();
+				loop.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (key != null)
+							key.cancel();
+					}
+				});
+			}
+		}
+
+		/**
+		 * Gets the channel represented by this registration.
+		 *
+		 * @return the channel represented by this registration
+		 */
+		public DatagramChannel getChannel()
+		{
+			return channel;
+		}
+
+		/**
+		 * Gets the number of datagrams drained from the channel during the last wakeup.
+		 *
+		 * @return the number of datagrams drained from the channel during the last wakeup
+		 */
+		public int getLastBacklog()
+		{
+			return lastBacklog;
+		}
+
+		/**
+		 * Gets the maximum number of datagrams drained from the channel during one wakeup.
+		 *
+		 * @return the maximum number of datagrams drained from the channel during one wakeup
+		 */
+		public int getMaxBacklog()
+		{
+			return maxBacklog;
+		}
+
+		/**
+		 * Gets the number of packets received from the channel and dropped before they were read.
+		 *
+		 * @return the number of dropped packets
+		 */
+		public long getNumberOfDroppedPackets()
+		{
+			return handler.getNumberOfDroppedPackets();
+		}
+
+		/**
+		 * Gets the total number of datagrams drained from the channel.
+		 *
+		 * @return the total number of datagrams drained from the channel
+		 */
+		public long getNumberOfPackets()
+		{
+			return packets;
+		}
+
+		/**
+		 * Gets the number of times the channel was found readable.
+		 *
+		 * @return the number of times the channel was found readable
+		 */
+		public long getNumberOfWakeups()
+		{
+			return wakeups;
+		}
+
+		/**
+		 * Hands the channel, which is readable, to a worker and stops watching it until the
+		 * worker is done. Runs on the loop thread.
+		 */
+		private void readyToReceive()
+		{
+			key.interestOps(0);
+			try {
+				workers.execute(receiveTask);
+			}
+			catch (RejectedExecutionException ree) {
+				logger.error("Failed to receive from " + channel, ree);
+				cancel();
+			}
+		}
+
+		/**
+		 * Invokes the handler because the channel is readable. Runs on a worker thread.
+		 */
+		private void receive()
+		{
+			int count;
+
+			try {
+				count = handler.readyToReceive();
+			}
+			catch (Throwable t) {
+				if (t instanceof ThreadDeath)
+					throw (ThreadDeath) t;
+				// The loop serves other channels and must not die because of this one.
+				logger.error("Failed to receive from " + channel, t);
+				count = 0;
+			}
+			if (count < 0) {
+				cancel();
+			}
+			else {
+				wakeups++;
+				packets += count;
+				lastBacklog = count;
+				if (count > maxBacklog)
+					maxBacklog = count;
+				loop.execute(resumeTask);
+			}
+		}
+
+		/**
+		 * Registers the channel with the <tt>Selector</tt> of the loop. Runs on the loop thread.
+		 */
+		@Override
+		public void run()
+		{
+			if (!registrations.contains(this))
+				return;
+			try {
+				channel.configureBlocking(false);
+				key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+			}
+			catch (IOException ioe) {
+				logger.error("Failed to register " + channel + " with the reactor", ioe);
+				cancel();
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Registration{channel=" + channel + ", wakeups=" + wakeups + ", packets="
+					+ packets + ", lastBacklog=" + lastBacklog + ", maxBacklog=" + maxBacklog
+					+ ", dropped=" + getNumberOfDroppedPackets() + "}";
+		}
+	}
+
+	/**
+	 * A thread which waits on a <tt>Selector</tt> for readable channels, hands them to the workers
+	 * and runs tasks submitted through its <tt>Executor</tt> interface in between.
+	 */
+	private static class SelectorLoop
+			implements Runnable, ScheduledExecutor
+	{
+		/**
+		 * The number of channels registered with this loop.
+		 */
+		final AtomicInteger registrationCount = new AtomicInteger();
+
+		final Selector selector;
+
+		/**
+		 * The tasks submitted to this loop from any thread.
+		 */
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * The delayed tasks of this loop ordered by their due time. Accessed on the loop thread
+		 * only.
+		 */
+		private final PriorityQueue<TimerTask> timers = new PriorityQueue<>();
+
+		/**
+		 * The sequence number of the next delayed task, used to keep tasks which are due at the
+		 * same time in the order of their submission.
+		 */
+		private long timerSeq;
+
+		SelectorLoop(int index)
+				throws IOException
+		{
+			selector = Selector.open();
+
+			Thread thread = new Thread(this);
+
+			thread.setDaemon(true);
+			thread.setName(DatagramReactor.class.getName() + ".loop-" + index);
+			RTPConnectorInputStream.setThreadPriority(thread, MediaThread.getNetworkPriority());
+			thread.start();
+		}
+
+		@Override
+		public void execute(Runnable task)
+		{
+			tasks.offer(task);
+			selector.wakeup();
+		}
+
+		@Override
+		public void schedule(final Runnable task, final long delayNanos)
+		{
+			execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					timers.add(new TimerTask(System.nanoTime() + delayNanos, timerSeq++, task));
+				}
+			});
+		}
+
+		@Override
+		public void run()
+		{
+			while (true) {
+				try {
+					runTasks();
+
+					TimerTask next = timers.peek();
+					long timeoutMillis = 0;
+
+					if (next != null) {
+						timeoutMillis = Math.max(1,
+								(next.dueTime - System.nanoTime() + 999999) / 1000000);
+					}
+					selector.select(timeoutMillis);
+
+					Set<SelectionKey> selectedKeys = selector.selectedKeys();
+
+					for (SelectionKey key : selectedKeys) {
+						if (key.isValid() && key.isReadable())
+							((Registration) key.attachment()).readyToReceive();
+					}
+					selectedKeys.clear();
+
+					long now = System.nanoTime();
+
+					while ((next = timers.peek()) != null && next.dueTime - now <= 0) {
+						timers.poll();
+						runTask(next.task);
+					}
+				}
+				catch (ClosedSelectorException cse) {
+					break;
+				}
+				catch (Throwable t) {
+					if (t instanceof ThreadDeath)
+						throw (ThreadDeath) t;
+					logger.error("Error in the reactor loop: ", t);
+				}
+			}
+		}
+
+		private void runTask(Runnable task)
+		{
+			try {
+				task.run();
+			}
+			catch (Throwable t) {
+				if (t instanceof ThreadDeath)
+					throw (ThreadDeath) t;
+				logger.error("Failed to run a reactor task: ", t);
+			}
+		}
+
+		private void runTasks()
+		{
+			Runnable task;
+
+			while ((task = tasks.poll()) != null)
+				runTask(task);
+		}
+	}
+
+	/**
+	 * A task to be run by a <tt>SelectorLoop</tt> at a specific time.
+	 */
+	private static class TimerTask
+			implements Comparable<TimerTask>
+	{
+		final long dueTime;
+
+		final long seq;
+
+		final Runnable task;
+
+		TimerTask(long dueTime, long seq, Runnable task)
+		{
+			this.dueTime = dueTime;
+			this.seq = seq;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(TimerTask o)
+		{
+			long diff = dueTime - o.dueTime;
+
+			if (diff == 0)
+				diff = seq - o.seq;
+			return (diff < 0) ? -1 : ((diff == 0) ? 0 : 1);
+		}
+	}
+}
@@ -15,12 +15,14 @@ package org.atalk.impl.neomedia;
 
 import org.atalk.service.neomedia.*;
 import org.atalk.util.*;
+import org.atalk.util.concurrent.*;
 import org.json.simple.JSONObject;
 
 import java.beans.PropertyChangeListener;
 import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implements {@link ActiveSpeakerDetector} with inspiration from the paper &quot;Dominant Speaker
@@ -63,10 +65,22 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	/**
 	 * The interval of time in milliseconds of idle execution of <tt>DecisionMaker</tt> after which
 	 * the latter should cease to exist. The interval does not have to be very long because the
-	 * background threads running the <tt>DecisionMaker</tt>s are pooled anyway.
+	 * background threads running the <tt>DecisionMaker</tt>s are shared anyway.
 	 */
 	private static final long DECISION_MAKER_IDLE_TIMEOUT = 15 * 1000;
 
+	/**
+	 * The number of background threads which run the <tt>DecisionMaker</tt>s of all
+	 * <tt>DominantSpeakerIdentification</tt> instances.
+	 */
+	private static final int DECISION_MAKER_THREAD_COUNT = 2;
+
+	/**
+	 * The resolution in milliseconds of the scheduling of the <tt>DecisionMaker</tt>s. Well below
+	 * {@link #LEVEL_IDLE_TIMEOUT} and {@link #DECISION_INTERVAL}.
+	 */
+	private static final long DECISION_MAKER_TICK = 10;
+
 	/**
 	 * The name of the <tt>DominantSpeakerIdentification</tt> property <tt>dominantSpeaker</tt>
 	 * which specifies the dominant speaker identified by synchronization source identifier (SSRC).
@@ -168,10 +182,18 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	private static final long SPEAKER_IDLE_TIMEOUT = 60 * 60 * 1000;
 
 	/**
-	 * The pool of <tt>Thread</tt>s which run <tt>DominantSpeakerIdentification</tt>s.
+	 * The number of (audio) levels which may be reported or measured for a <tt>Speaker</tt>
+	 * between two subsequent runs of its <tt>DecisionMaker</tt> without being lost. Must be a
+	 * power of two.
 	 */
-	private static final ExecutorService threadPool
-			= ExecutorUtils.newCachedThreadPool(true, "DominantSpeakerIdentification");
+	private static final int PENDING_LEVEL_COUNT = 64;
+
+	/**
+	 * The <tt>Executor</tt> which runs the <tt>DecisionMaker</tt>s of all
+	 * <tt>DominantSpeakerIdentification</tt>s on a few shared threads.
+	 */
+	private static final TimerWheelExecutor decisionMakerExecutor = new TimerWheelExecutor(
+			"DominantSpeakerIdentification", DECISION_MAKER_THREAD_COUNT, DECISION_MAKER_TICK);
 
 	static {
 		DEBUG = logger.isDebugEnabled();
@@ -235,9 +257,9 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	}
 
 	/**
-	 * The background thread which repeatedly makes the (global) decision about speaker switches.
+	 * The background task which repeatedly makes the (global) decision about speaker switches.
 	 */
-	private DecisionMaker decisionMaker;
+	private volatile DecisionMaker decisionMaker;
 
 	/**
 	 * The synchronization source identifier/SSRC of the dominant speaker in this multipoint
@@ -256,7 +278,7 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	 * The time in milliseconds of the most recent (audio) level report or measurement (regardless
 	 * of the <tt>Speaker</tt>).
 	 */
-	private long lastLevelChangedTime;
+	private volatile long lastLevelChangedTime;
 
 	/**
 	 * The last/latest time at which this <tt>DominantSpeakerIdentification</tt> notified the
@@ -282,9 +304,10 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 
 	/**
 	 * The <tt>Speaker</tt>s in the multipoint conference associated with this
-	 * <tt>ActiveSpeakerDetector</tt>.
+	 * <tt>ActiveSpeakerDetector</tt>. Looked up without locking by the threads which report or
+	 * measure audio levels and modified by the <tt>DecisionMaker</tt> only.
 	 */
-	private final Map<Long, Speaker> speakers = new HashMap<>();
+	private final ConcurrentMap<Long, Speaker> speakers = new ConcurrentHashMap<>();
 
 	/**
 	 * Initializes a new <tt>DominantSpeakerIdentification</tT> instance.
@@ -438,18 +461,23 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	 * @return the <tt>Speaker</tt> in this multipoint conference identified by the specified
 	 * <tt>ssrc</tt>
 	 */
-	private synchronized Speaker getOrCreateSpeaker(long ssrc)
+	private Speaker getOrCreateSpeaker(long ssrc)
 	{
 		Long key = ssrc;
 		Speaker speaker = speakers.get(key);
 
 		if (speaker == null) {
-			speaker = new Speaker(ssrc);
-			speakers.put(key, speaker);
+			Speaker newSpeaker = new Speaker(ssrc);
+
+			speaker = speakers.putIfAbsent(key, newSpeaker);
+			if (speaker == null) {
+				speaker = newSpeaker;
 
-			// Since we've created a new Speaker in the multipoint conference, we'll very likely
-			// need to make a decision whether there have been speaker switch events soon.
-			maybeStartDecisionMaker();
+				// Since we've created a new Speaker in the multipoint conference, we'll very
+				// likely need to make a decision whether there have been speaker switch events
+				// soon.
+				maybeStartDecisionMaker();
+			}
 		}
 		return speaker;
 	}
@@ -460,28 +488,25 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	@Override
 	public void levelChanged(long ssrc, int level)
 	{
-		Speaker speaker;
 		long now = System.currentTimeMillis();
-
-		synchronized (this) {
-			speaker = getOrCreateSpeaker(ssrc);
-
-			// Note that this ActiveSpeakerDetector is still in use. When it is
-			// not in use long enough, its DecisionMaker i.e. background thread
-			// will prepare itself and, consequently, this
-			// DominantSpeakerIdentification for garbage collection.
-			if (lastLevelChangedTime < now) {
-				lastLevelChangedTime = now;
-
-				// A report or measurement of an audio level indicates that this
-				// DominantSpeakerIdentification is in use and, consequently,
-				// that it'll very likely need to make a decision whether there
-				// have been speaker switch events soon.
+		Speaker speaker = getOrCreateSpeaker(ssrc);
+
+		// Note that this ActiveSpeakerDetector is still in use. When it is
+		// not in use long enough, its DecisionMaker i.e. background task
+		// will prepare itself and, consequently, this
+		// DominantSpeakerIdentification for garbage collection. Concurrent
+		// reports may race here but they all move the time forward.
+		if (lastLevelChangedTime < now) {
+			lastLevelChangedTime = now;
+
+			// A report or measurement of an audio level indicates that this
+			// DominantSpeakerIdentification is in use and, consequently,
+			// that it'll very likely need to make a decision whether there
+			// have been speaker switch events soon.
+			if (decisionMaker == null)
 				maybeStartDecisionMaker();
-			}
 		}
-		if (speaker != null)
-			speaker.levelChanged(level, now);
+		speaker.levelChanged(level, now);
 	}
 
 	/**
@@ -583,10 +608,10 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	}
 
 	/**
-	 * Starts a background thread which is to repeatedly make the (global) decision about speaker
-	 * switches if such a background thread has not been started yet and if the current state of
-	 * this <tt>DominantSpeakerIdentification</tt> justifies the start of such a background thread
-	 * (e.g. there is at least one <tt>Speaker</tt> in this multipoint conference).
+	 * Schedules a background task which is to repeatedly make the (global) decision about speaker
+	 * switches if such a background task has not been scheduled yet and if the current state of
+	 * this <tt>DominantSpeakerIdentification</tt> justifies the scheduling of such a background
+	 * task (e.g. there is at least one <tt>Speaker</tt> in this multipoint conference).
 	 */
 	private synchronized void maybeStartDecisionMaker()
 	{
@@ -596,8 +621,7 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 
 			this.decisionMaker = decisionMaker;
 			try {
-				threadPool.execute(decisionMaker);
-				scheduled = true;
+				scheduled = decisionMakerExecutor.registerRecurringRunnable(decisionMaker);
 			} finally {
 				if (!scheduled)
 					this.decisionMaker = null;
@@ -699,17 +723,21 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	 * very likely not have a level within a certain time-frame of the
 	 * <tt>DominantSpeakerIdentification</tt> algorithm. Additionally, removes the non-dominant
 	 * <tt>Speaker</tt>s who have not received or measured audio levels for far too long (i.e.
-	 * {@link #SPEAKER_IDLE_TIMEOUT}).
+	 * {@link #SPEAKER_IDLE_TIMEOUT}). The levels reported or measured since the previous
+	 * invocation are taken into the history of the respective <tt>Speaker</tt>s first.
 	 *
 	 * @param now
 	 * 		the time at which the timing out is being detected
 	 */
-	private synchronized void timeoutIdleLevels(long now)
+	private void timeoutIdleLevels(long now)
 	{
 		Iterator<Map.Entry<Long, Speaker>> i = speakers.entrySet().iterator();
 
 		while (i.hasNext()) {
 			Speaker speaker = i.next().getValue();
+
+			speaker.drainLevels();
+
 			long idle = now - speaker.getLastLevelChangedTime();
 
 			// Remove a non-dominant Speaker if he/she has been idle for far too long.
@@ -724,26 +752,34 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	}
 
 	/**
-	 * Represents the background thread which repeatedly makes the (global) decision about speaker
+	 * Represents the background task which repeatedly makes the (global) decision about speaker
 	 * switches. Weakly references an associated <tt>DominantSpeakerIdentification</tt> instance in
 	 * order to eventually detect that the multipoint conference has actually expired and that the
-	 * background <tt>Thread</tt> should perish.
+	 * background task should perish. Runs on one of the threads of
+	 * {@link #decisionMakerExecutor} which are shared by all multipoint conferences instead of
+	 * sleeping in a thread of its own.
 	 *
 	 * @author Lyubomir Marinov
 	 */
-	private static class DecisionMaker implements Runnable
+	private static class DecisionMaker implements RecurringRunnable
 	{
 		/**
-		 * The <tt>DominantSpeakerIdentification</tt> instance which is repeatedly run into this
-		 * background thread in order to make the (global) decision about speaker switches. It is a
+		 * The <tt>DominantSpeakerIdentification</tt> instance which is repeatedly run by this
+		 * background task in order to make the (global) decision about speaker switches. It is a
 		 * <tt>WeakReference</tt> in order to eventually detect that the multipoint conference has
-		 * actually expired and that this background <tt>Thread</tt> should perish.
+		 * actually expired and that this background task should perish.
 		 */
 		private final WeakReference<DominantSpeakerIdentification> algorithm;
 
+		/**
+		 * The time in milliseconds at which {@link #algorithm} is to be run next. Accessed by the
+		 * thread of {@link #decisionMakerExecutor} which runs this instance only.
+		 */
+		private long nextRunTime = 0;
+
 		/**
 		 * Initializes a new <tt>DecisionMaker</tt> instance which is to repeatedly run a specific
-		 * <tt>DominantSpeakerIdentification</tt> into a background thread in order to make the
+		 * <tt>DominantSpeakerIdentification</tt> in a background task in order to make the
 		 * (global) decision about speaker switches.
 		 *
 		 * @param algorithm
@@ -752,54 +788,43 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 */
 		public DecisionMaker(DominantSpeakerIdentification algorithm)
 		{
-			this.algorithm = new WeakReference<DominantSpeakerIdentification>(algorithm);
+			this.algorithm = new WeakReference<>(algorithm);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long getTimeUntilNextRun()
+		{
+			return nextRunTime - System.currentTimeMillis();
 		}
 
 		/**
-		 * Repeatedly runs {@link #algorithm} i.e. makes the (global) decision about speaker
-		 * switches until the multipoint conference expires.
+		 * Runs {@link #algorithm} i.e. makes the (global) decision about speaker switches once
+		 * and de-registers this instance from {@link #decisionMakerExecutor} when the multipoint
+		 * conference expires.
 		 */
 		@Override
 		public void run()
 		{
-			try {
-				do {
-					DominantSpeakerIdentification algorithm = this.algorithm.get();
-					if (algorithm == null) {
-						break;
-					}
-					else {
-						long sleep = algorithm.runInDecisionMaker(this);
+			DominantSpeakerIdentification algorithm = this.algorithm.get();
+			long sleep = (algorithm == null) ? -1 : algorithm.runInDecisionMaker(this);
 
-						// A negative sleep value is explicitly supported i.e.
-						// expected and is contracted to mean that this DecisionMaker is
-						// instructed by the algorithm to commit suicide.
-						if (sleep < 0) {
-							break;
-						}
-						else if (sleep > 0) {
-							// Before sleeping, make the currentThread release its reference to
-							// the associated DominantSpeakerIdentification instance.
-							algorithm = null;
-							try {
-								Thread.sleep(sleep);
-							}
-							catch (InterruptedException ie) {
-								// Continue with the next iteration.
-							}
-						}
-					}
-				} while (true);
-			} finally {
-				// Notify the algorithm that this background thread will no
-				// longer run it in order to make the (global) decision about
-				// speaker switches. Subsequently, the algorithm may decide to
-				// spawn another background thread to run the same task.
-				DominantSpeakerIdentification algorithm = this.algorithm.get();
+			// A negative sleep value is explicitly supported i.e. expected and is contracted to
+			// mean that this DecisionMaker is instructed by the algorithm to commit suicide.
+			if (sleep < 0) {
+				decisionMakerExecutor.deRegisterRecurringRunnable(this);
 
+				// Notify the algorithm that this background task will no longer run it in order
+				// to make the (global) decision about speaker switches. Subsequently, the
+				// algorithm may decide to schedule another background task to run the same task.
 				if (algorithm != null)
 					algorithm.decisionMakerExited(this);
 			}
+			else {
+				nextRunTime = System.currentTimeMillis() + sleep;
+			}
 		}
 	}
 
@@ -838,6 +863,12 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 	/**
 	 * Represents a speaker in a multipoint conference identified by synchronization source
 	 * identifier/SSRC.
+	 * <p>
+	 * The (audio) levels are reported or measured without locking: they are published in a ring
+	 * of {@link #PENDING_LEVEL_COUNT} slots and taken into the history of this <tt>Speaker</tt>
+	 * in batches by the <tt>DecisionMaker</tt>, which is the only thread to access the history
+	 * and the speech activity scores.
+	 * </p>
 	 *
 	 * @author Lyubomir Marinov
 	 */
@@ -858,13 +889,21 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 * <tt>DominantSpeakerIdentification</tt> will presume that this <tt>Speaker</tt> was muted
 		 * for the duration of a certain frame.
 		 */
-		private long lastLevelChangedTime = System.currentTimeMillis();
+		private volatile long lastLevelChangedTime = System.currentTimeMillis();
 
 		/**
-		 * The (history of) audio levels received or measured for this <tt>Speaker</tt>.
+		 * The (history of) audio levels received or measured for this <tt>Speaker</tt>. It is a
+		 * circular buffer in which the last audio level is at {@link #levelsHead} and the
+		 * preceding ones follow it.
 		 */
 		private final byte[] levels;
 
+		/**
+		 * The index in {@link #levels} of the last audio level received or measured for this
+		 * <tt>Speaker</tt>.
+		 */
+		private int levelsHead = 0;
+
 		private final byte[] longs = new byte[LONG_COUNT];
 
 		/**
@@ -900,6 +939,25 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 */
 		private int nextMinLevelWindowLength;
 
+		/**
+		 * The audio levels reported or measured for this <tt>Speaker</tt> which are yet to be
+		 * taken into {@link #levels}. A slot holds a level in its least significant byte and the
+		 * (truncated) index of the level plus one in the rest so that {@link #drainLevels()} may
+		 * tell a level which has been published from a stale one.
+		 */
+		private final AtomicIntegerArray pendingLevels
+				= new AtomicIntegerArray(PENDING_LEVEL_COUNT);
+
+		/**
+		 * The index of the next audio level to be taken from {@link #pendingLevels}.
+		 */
+		private long pendingLevelsReadIndex = 0;
+
+		/**
+		 * The index of the next audio level to be put into {@link #pendingLevels}.
+		 */
+		private final AtomicLong pendingLevelsWriteIndex = new AtomicLong();
+
 		/**
 		 * The synchronization source identifier/SSRC of this <tt>Speaker</tt> which is unique
 		 * within a multipoint conference.
@@ -931,8 +989,11 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 			byte minLevel = (byte) (this.minLevel + N1_SUBUNIT_LENGTH);
 			boolean changed = false;
 
-			for (int i = 0; i < immediates.length; ++i) {
-				byte level = levels[i];
+			for (int i = 0, l = levelsHead; i < immediates.length; ++i) {
+				byte level = levels[l];
+
+				if (++l == levels.length)
+					l = 0;
 
 				if (level < minLevel)
 					level = MIN_LEVEL;
@@ -985,13 +1046,38 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 			mediumSpeechActivityScore = computeSpeechActivityScore(mediums[0], N2, 0.5, 24);
 		}
 
+		/**
+		 * Takes the audio levels reported or measured for this <tt>Speaker</tt> since the last
+		 * invocation into the history of audio levels of this <tt>Speaker</tt>. A level which has
+		 * been claimed but is still being published is left for the next invocation.
+		 */
+		void drainLevels()
+		{
+			long writeIndex = pendingLevelsWriteIndex.get();
+			long readIndex = pendingLevelsReadIndex;
+
+			// The levels which have been overwritten are older than the history anyway.
+			if (writeIndex - readIndex > PENDING_LEVEL_COUNT)
+				readIndex = writeIndex - PENDING_LEVEL_COUNT;
+
+			for (; readIndex < writeIndex; readIndex++) {
+				int pendingLevel = pendingLevels.get((int) readIndex & (PENDING_LEVEL_COUNT - 1));
+
+				if ((pendingLevel >>> 8) != pendingLevelTag(readIndex))
+					break;
+				pushLevel((byte) pendingLevel);
+			}
+			pendingLevelsReadIndex = readIndex;
+		}
+
 		/**
 		 * Evaluates the speech activity scores of this <tt>Speaker</tt> for the immediate, medium,
 		 * and long time-intervals. Invoked when it is time to decide whether there has been a
 		 * speaker switch event.
 		 */
-		synchronized void evaluateSpeechActivityScores()
+		void evaluateSpeechActivityScores()
 		{
+			drainLevels();
 			if (computeImmediates()) {
 				evaluateImmediateSpeechActivityScore();
 				if (computeMediums()) {
@@ -1009,7 +1095,7 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 * @return the time in milliseconds at which an actual (audio) level was reported or
 		 * measured for this <tt>Speaker</tt> last
 		 */
-		public synchronized long getLastLevelChangedTime()
+		public long getLastLevelChangedTime()
 		{
 			return lastLevelChangedTime;
 		}
@@ -1029,8 +1115,10 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 			byte[] src = this.levels;
 			byte[] dst = new byte[src.length];
 
-			for (int s = src.length - 1, d = 0; d < dst.length; --s, ++d) {
+			for (int s = levelsHead, d = dst.length - 1; d >= 0; --d) {
 				dst[d] = src[s];
+				if (++s == src.length)
+					s = 0;
 			}
 			return dst;
 		}
@@ -1080,28 +1168,27 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 * 		the (local <tt>System</tt>) time in milliseconds at which the specified
 		 * 		<tt>level</tt> has been received or measured
 		 */
-		public synchronized void levelChanged(int level, long time)
+		public void levelChanged(int level, long time)
 		{
 			// It sounds relatively reasonable that late audio levels should better be discarded.
 			if (lastLevelChangedTime <= time) {
 				lastLevelChangedTime = time;
 
 				// Ensure that the specified level is within the supported range.
-				byte b;
+				int b;
 				if (level < MIN_LEVEL)
 					b = MIN_LEVEL;
 				else if (level > MAX_LEVEL)
 					b = MAX_LEVEL;
 				else
-					b = (byte) level;
+					b = level;
 
-				// Push the specified level into the history of audio levels
-				// received or measured for this Speaker.
-				System.arraycopy(levels, 0, levels, 1, levels.length - 1);
-				levels[0] = b;
+				// Publish the specified level to be pushed into the history of audio levels
+				// received or measured for this Speaker by the DecisionMaker.
+				long writeIndex = pendingLevelsWriteIndex.getAndIncrement();
 
-				// Determine the minimum level received or measured for this Speaker.
-				updateMinLevel(b);
+				pendingLevels.lazySet((int) writeIndex & (PENDING_LEVEL_COUNT - 1),
+						(pendingLevelTag(writeIndex) << 8) | b);
 			}
 		}
 
@@ -1110,9 +1197,43 @@ public class DominantSpeakerIdentification extends AbstractActiveSpeakerDetector
 		 * a certain time which very likely means that this <tt>Speaker</tt> will not have a level
 		 * within a certain time-frame of a <tt>DominantSpeakerIdentification</tt> algorithm.
 		 */
-		public synchronized void levelTimedOut()
+		public void levelTimedOut()
+		{
+			pushLevel((byte) MIN_LEVEL);
+		}
+
+		/**
+		 * Gets the tag which identifies a specific index of {@link #pendingLevels} in the slot
+		 * of the index. Never zero for the first indices so that the initial zeroes of the slots
+		 * are not mistaken for levels.
+		 *
+		 * @param index
+		 * 		the index of a level put into {@link #pendingLevels}
+		 * @return the tag of <tt>index</tt>
+		 */
+		private static int pendingLevelTag(long index)
 		{
-			levelChanged(MIN_LEVEL, lastLevelChangedTime);
+			return (int) (index + 1) & 0xFFFFFF;
+		}
+
+		/**
+		 * Pushes a specific audio level into the history of audio levels received or measured for
+		 * this <tt>Speaker</tt>.
+		 *
+		 * @param level
+		 * 		the audio level which has been received or measured for this <tt>Speaker</tt>
+		 */
+		private void pushLevel(byte level)
+		{
+			int levelsHead = this.levelsHead;
+
+			// The preceding levels are shifted by moving the head rather than copying them.
+			levelsHead = ((levelsHead == 0) ? levels.length : levelsHead) - 1;
+			levels[levelsHead] = level;
+			this.levelsHead = levelsHead;
+
+			// Determine the minimum level received or measured for this Speaker.
+			updateMinLevel(level);
 		}
 
 		/**
@@ -18,9 +18,11 @@ import org.atalk.impl.neomedia.rtp.FrameMarkingHeaderExtension;
 import org.atalk.impl.neomedia.rtp.MediaStreamTrackReceiver;
 import org.atalk.impl.neomedia.rtp.StreamRTPManager;
 import org.atalk.impl.neomedia.rtp.TransportCCEngine;
+import org.atalk.impl.neomedia.rtp.pacing.PacketPacer;
 import org.atalk.impl.neomedia.rtp.remotebitrateestimator.RemoteBitrateEstimatorWrapper;
 import org.atalk.impl.neomedia.rtp.translator.RTPTranslatorImpl;
 import org.atalk.impl.neomedia.stats.MediaStreamStats2Impl;
+import org.atalk.impl.neomedia.stats.MediaStreamStatsExporter;
 import org.atalk.impl.neomedia.transform.AbsSendTimeEngine;
 import org.atalk.impl.neomedia.transform.CachingTransformer;
 import org.atalk.impl.neomedia.transform.DebugTransformEngine;
@@ -462,6 +464,7 @@ public class MediaStreamImpl extends AbstractMediaStream
         // setConnector(connector). This is to ensure mediaStreamStats is initialized before
         // StaticEngine makes reference to it.
         this.mediaStreamStatsImpl = new MediaStreamStats2Impl(this);
+        MediaStreamStatsExporter.register(mediaStreamStatsImpl);
 
         if (connector != null)
             setConnector(connector);
@@ -800,6 +803,8 @@ public class MediaStreamImpl extends AbstractMediaStream
             transformEngineChain = null;
         }
 
+        MediaStreamStatsExporter.unregister(mediaStreamStatsImpl);
+
         if (transportCCEngine != null) {
             transportCCEngine.removeMediaStream(this);
         }
@@ -881,6 +886,40 @@ public class MediaStreamImpl extends AbstractMediaStream
     protected void configureDataOutputStream(RTPConnectorOutputStream dataOutputStream)
     {
         dataOutputStream.setPriority(getPriority());
+        configurePacer(dataOutputStream);
+    }
+
+    /**
+     * Tells the pacer of a specific <tt>RTPConnectorOutputStream</tt> the priority of the media of
+     * this <tt>MediaStreamImpl</tt> and the payload types of its retransmissions and forward error
+     * correction.
+     *
+     * @param dataOutputStream
+     *         the <tt>RTPConnectorOutputStream</tt> to be used by an <tt>RTPManager</tt> of this
+     *         <tt>MediaStreamImpl</tt>
+     */
+    private void configurePacer(RTPConnectorOutputStream dataOutputStream)
+    {
+        PacketPacer<?> pacer = dataOutputStream.getPacer();
+
+        if (pacer == null)
+            return;
+
+        pacer.setMediaPriority(MediaType.AUDIO.equals(getMediaType())
+                ? PacketPacer.Priority.AUDIO : PacketPacer.Priority.VIDEO);
+
+        List<Byte> retransmissionPayloadTypes = new ArrayList<>();
+
+        for (Map.Entry<Byte, MediaFormat> e : getDynamicRTPPayloadTypes().entrySet()) {
+            String encoding = e.getValue().getEncoding();
+
+            if (Constants.RTX.equalsIgnoreCase(encoding)
+                    || Constants.ULPFEC.equalsIgnoreCase(encoding)
+                    || Constants.FLEXFEC_03.equalsIgnoreCase(encoding)) {
+                retransmissionPayloadTypes.add(e.getKey());
+            }
+        }
+        pacer.setRetransmissionPayloadTypes(retransmissionPayloadTypes);
     }
 
     /**
@@ -1152,7 +1191,13 @@ public class MediaStreamImpl extends AbstractMediaStream
         // created (e.g. abs-send-time). So take into account their
         // configuration.
         enableRTPExtensions();
-        return new TransformEngineChain(engineChain.toArray(new TransformEngine[engineChain.size()]));
+
+        TransformEngineChain chain
+                = new TransformEngineChain(engineChain.toArray(new TransformEngine[engineChain.size()]));
+
+        chain.setLatencyHistograms(mediaStreamStatsImpl.getReceiveLatencyHistogram(),
+                mediaStreamStatsImpl.getSendLatencyHistogram());
+        return chain;
     }
 
     /**
@@ -3728,6 +3773,19 @@ public class MediaStreamImpl extends AbstractMediaStream
         if (rtxTransformer != null) {
             rtxTransformer.onDynamicPayloadTypesChanged();
         }
+
+        AbstractRTPConnector rtpConnector = getRTPConnector();
+        if (rtpConnector != null) {
+            try {
+                RTPConnectorOutputStream dataOutputStream
+                        = rtpConnector.getDataOutputStream(false);
+
+                if (dataOutputStream != null)
+                    configurePacer(dataOutputStream);
+            } catch (IOException ioe) {
+                logger.warn("Failed to update the payload types of the pacer: " + ioe);
+            }
+        }
     }
 
     /**
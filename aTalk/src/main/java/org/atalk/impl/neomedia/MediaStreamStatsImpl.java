@@ -13,6 +13,8 @@ import org.atalk.impl.neomedia.rtcp.*;
 import org.atalk.impl.neomedia.rtp.StreamRTPManager;
 import org.atalk.impl.neomedia.rtp.TransportCCEngine;
 import org.atalk.impl.neomedia.stats.MediaStreamStats2Impl;
+import org.atalk.impl.neomedia.transform.TransformEngineWrapper;
+import org.atalk.impl.neomedia.transform.fec.FECTransformEngine;
 import org.atalk.impl.neomedia.transform.rtcp.StatisticsEngine;
 import org.atalk.service.neomedia.*;
 import org.atalk.service.neomedia.control.FECDecoderControl;
@@ -24,6 +26,9 @@ import org.atalk.util.*;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.media.control.JitterBufferControl;
 import javax.media.format.VideoFormat;
@@ -58,12 +63,25 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	 */
 	private static final Logger logger = Logger.getLogger(MediaStreamStatsImpl.class);
 
+	/**
+	 * The number of the most recent SRs of which {@link #emission2reception} keeps the times.
+	 */
+	private static final int EMISSION2RECEPTION_SIZE = 128;
+
 	/**
 	 * Keeps track of when a given Network Time Protocol (NTP) time (found in an SR) has been
 	 * received. This is used to compute the correct Round-Trip-Time (RTT) in the translator case.
+	 * A ring of the most recent SRs, each slot of which packs the emission time in NTP short
+	 * format in the upper and the reception time in the lower 32 bits, so that it is written and
+	 * read without a lock.
+	 */
+	private final AtomicLongArray emission2reception
+			= new AtomicLongArray(EMISSION2RECEPTION_SIZE);
+
+	/**
+	 * The number of SRs which have been written into {@link #emission2reception}.
 	 */
-	private final Map<Long, Long> emission2reception
-			= Collections.synchronizedMap(new LRUCache<Long, Long>(100));
+	private final AtomicInteger emission2receptionCount = new AtomicInteger();
 
 	/**
 	 * Computes an Exponentially Weighted Moving Average (EWMA). Thus, the most recent history
@@ -275,7 +293,7 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	 * The list of listeners to be notified when RTCP packets are received.
 	 */
 	private final List<RTCPPacketListener> rtcpPacketListeners
-			= Collections.synchronizedList(new LinkedList<RTCPPacketListener>());
+			= new CopyOnWriteArrayList<>();
 
 	/**
 	 * Creates a new instance of stats concerning a MediaStream.
@@ -323,8 +341,8 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 					MediaStreamStatsImpl stats
 							= (MediaStreamStatsImpl) receiveStream.getMediaStreamStats();
 
-					Long lsrReceipt = stats.emission2reception.get(lsr);
-					if (lsrReceipt == null) {
+					long lsrReceipt = stats.getReceptionTime(lsr);
+					if (lsrReceipt == -1) {
 						return -1;
 					}
 					lsr = lsrReceipt;
@@ -1329,14 +1347,26 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	public void rembReceived(RTCPREMBPacket remb)
 	{
 		if (remb != null) {
-			synchronized (rtcpPacketListeners) {
-				for (RTCPPacketListener listener : rtcpPacketListeners) {
-					listener.rembReceived(remb);
-				}
+			for (RTCPPacketListener listener : rtcpPacketListeners) {
+				listener.rembReceived(remb);
 			}
 		}
 	}
 
+	/**
+	 * Notifies this instance that an RTCP REMB packet was received. The packet is materialized
+	 * only if there are <tt>RTCPPacketListener</tt>s to notify.
+	 *
+	 * @param remb
+	 * 		the cursor positioned at the packet.
+	 */
+	public void rembReceived(RTCPPacketCursor remb)
+	{
+		if (!rtcpPacketListeners.isEmpty()) {
+			rembReceived(remb.toREMBPacket());
+		}
+	}
+
 	/**
 	 * Notifies this instance that an RTCP NACK packet was received.
 	 *
@@ -1346,14 +1376,43 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	public void nackReceived(NACKPacket nack)
 	{
 		if (nack != null) {
-			synchronized (rtcpPacketListeners) {
-				for (RTCPPacketListener listener : rtcpPacketListeners) {
-					listener.nackReceived(nack);
-				}
+			for (RTCPPacketListener listener : rtcpPacketListeners) {
+				listener.nackReceived(nack);
 			}
 		}
 	}
 
+	/**
+	 * Notifies this instance that an RTCP NACK packet was received. The packet is materialized
+	 * only if there are <tt>RTCPPacketListener</tt>s to notify.
+	 *
+	 * @param nack
+	 * 		the cursor positioned at the packet.
+	 */
+	public void nackReceived(RTCPPacketCursor nack)
+	{
+		if (!rtcpPacketListeners.isEmpty()) {
+			nackReceived(nack.toNACKPacket());
+		}
+	}
+
+	/**
+	 * Notifies this instance that an RTCP SR packet was received. The packet is materialized
+	 * only if there are <tt>RTCPPacketListener</tt>s to notify.
+	 *
+	 * @param sr
+	 * 		the cursor positioned at the packet.
+	 */
+	public void srReceived(RTCPPacketCursor sr)
+	{
+		if (rtcpPacketListeners.isEmpty()) {
+			srReceived(sr.getNtpTimestampMSW(), sr.getNtpTimestampLSW());
+		}
+		else {
+			srReceived(sr.toSRPacket());
+		}
+	}
+
 	/**
 	 * Notifies this instance that an RTCP SR packet was received.
 	 *
@@ -1363,20 +1422,52 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	public void srReceived(RTCPSRPacket sr)
 	{
 		if (sr != null) {
-			long emisionTime = TimeUtils.toNtpShortFormat(
-					TimeUtils.constuctNtp(sr.ntptimestampmsw, sr.ntptimestamplsw));
+			srReceived(sr.ntptimestampmsw, sr.ntptimestamplsw);
 
-			long arrivalTime = TimeUtils.toNtpShortFormat(
-					TimeUtils.toNtpTime(System.currentTimeMillis()));
+			for (RTCPPacketListener listener : rtcpPacketListeners) {
+				listener.srReceived(sr);
+			}
+		}
+	}
 
-			emission2reception.put(emisionTime, arrivalTime);
+	/**
+	 * Records the time of reception of an RTCP SR packet with a specific NTP timestamp.
+	 *
+	 * @param ntptimestampmsw
+	 * 		the most significant word of the NTP timestamp of the SR.
+	 * @param ntptimestamplsw
+	 * 		the least significant word of the NTP timestamp of the SR.
+	 */
+	private void srReceived(long ntptimestampmsw, long ntptimestamplsw)
+	{
+		long emisionTime = TimeUtils.toNtpShortFormat(
+				TimeUtils.constuctNtp(ntptimestampmsw, ntptimestamplsw));
 
-			synchronized (rtcpPacketListeners) {
-				for (RTCPPacketListener listener : rtcpPacketListeners) {
-					listener.srReceived(sr);
-				}
-			}
+		long arrivalTime = TimeUtils.toNtpShortFormat(
+				TimeUtils.toNtpTime(System.currentTimeMillis()));
+
+		emission2reception.set(
+				emission2receptionCount.getAndIncrement() & (EMISSION2RECEPTION_SIZE - 1),
+				(emisionTime << 32) | (arrivalTime & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * Gets the time of reception of the RTCP SR packet with a specific NTP timestamp.
+	 *
+	 * @param emissionTime
+	 * 		the NTP timestamp of the SR in NTP short format.
+	 * @return the time of reception in NTP short format of the SR with NTP timestamp
+	 * <tt>emissionTime</tt> or <tt>-1</tt> if it is not one of the most recently received SRs.
+	 */
+	private long getReceptionTime(long emissionTime)
+	{
+		for (int i = 0; i < EMISSION2RECEPTION_SIZE; i++) {
+			long slot = emission2reception.get(i);
+
+			if (slot != 0 && (slot >>> 32) == emissionTime)
+				return slot & 0xFFFFFFFFL;
 		}
+		return -1;
 	}
 
 	/**
@@ -1416,10 +1507,20 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 		if (!feedbackReports.isEmpty()) {
 
 			MediaStreamStats2Impl extended = getExtended();
+			TransformEngineWrapper<FECTransformEngine> fecTransformEngineWrapper
+					= mediaStreamImpl.getFecTransformEngine();
+			FECTransformEngine fecTransformEngine = (fecTransformEngineWrapper == null)
+					? null : fecTransformEngineWrapper.getWrapped();
+
 			for (RTCPFeedback rtcpFeedback : feedbackReports) {
 				updateNewReceivedFeedback(rtcpFeedback);
 				extended.rtcpReceiverReportReceived(
 						rtcpFeedback.getSSRC(), rtcpFeedback.getFractionLost());
+				// Adapt the FlexFEC protection of the stream to the loss.
+				if (fecTransformEngine != null) {
+					fecTransformEngine.rtcpReceiverReportReceived(
+							rtcpFeedback.getSSRC(), rtcpFeedback.getFractionLost());
+				}
 			}
 		}
 	}
@@ -1471,6 +1572,20 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 		return mediaStreamImpl.getMediaStreamStats();
 	}
 
+	/**
+	 * Notifies listeners that a transport-wide-cc packet was received. The packet is
+	 * materialized only if there are <tt>RTCPPacketListener</tt>s to notify.
+	 *
+	 * @param tccPacket
+	 * 		the cursor positioned at the packet.
+	 */
+	public void tccPacketReceived(RTCPPacketCursor tccPacket)
+	{
+		if (!rtcpPacketListeners.isEmpty()) {
+			tccPacketReceived(tccPacket.toTCCPacket());
+		}
+	}
+
 	/**
 	 * Notifies listeners that a transport-wide-cc packet was received.
 	 * Listeners may include Remote Bitrate Estimators or Bandwidth Estimators
@@ -1480,10 +1595,8 @@ public class MediaStreamStatsImpl implements MediaStreamStats
 	public void tccPacketReceived(RTCPTCCPacket tccPacket)
 	{
 		if (tccPacket != null) {
-			synchronized (rtcpPacketListeners) {
-				for (RTCPPacketListener listener : rtcpPacketListeners) {
-					listener.tccReceived(tccPacket);
-				}
+			for (RTCPPacketListener listener : rtcpPacketListeners) {
+				listener.tccReceived(tccPacket);
 			}
 		}
 	}
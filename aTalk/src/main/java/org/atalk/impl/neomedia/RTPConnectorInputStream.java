@@ -9,6 +9,8 @@ import net.sf.fmj.media.util.MediaThread;
 
 import org.atalk.impl.neomedia.jmfext.media.protocol.AbstractPushBufferStream;
 import org.atalk.impl.neomedia.protocol.PushBufferStreamAdapter;
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
+import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.service.packetlogging.PacketLoggingService;
@@ -17,8 +19,9 @@ import org.ice4j.socket.DatagramPacketFilter;
 
 import java.io.*;
 import java.net.*;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Arrays;
 
 import javax.media.Buffer;
 import javax.media.protocol.*;
@@ -48,6 +51,45 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	 */
 	public static final int PACKET_RECEIVE_BUFFER_LENGTH = 4 * 1024;
 
+	/**
+	 * The default value of {@link #batchReceive} for new instances i.e. whether an
+	 * <tt>RTPConnectorInputStream</tt> backed by a <tt>DatagramChannel</tt> drains all datagrams
+	 * available on each wakeup of its receive thread instead of receiving them one at a time.
+	 * Streams served by the shared <tt>DatagramReactor</tt> always receive in batches; this applies
+	 * to the channel-backed streams which have a receive thread because the reactor is disabled
+	 * or could not be initialized.
+	 */
+	private static final boolean BATCH_RECEIVE;
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> boolean property which
+	 * specifies the value of {@link #BATCH_RECEIVE}.
+	 */
+	private static final String BATCH_RECEIVE_PNAME
+			= RTPConnectorInputStream.class.getName() + ".BATCH_RECEIVE";
+
+	/**
+	 * The maximum number of datagrams which are received and reverse-transformed together in the
+	 * batched receive mode.
+	 */
+	public static final int RECEIVE_BATCH_SIZE;
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> integer property which
+	 * specifies the value of {@link #RECEIVE_BATCH_SIZE}.
+	 */
+	private static final String RECEIVE_BATCH_SIZE_PNAME
+			= RTPConnectorInputStream.class.getName() + ".RECEIVE_BATCH_SIZE";
+
+	static {
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+		BATCH_RECEIVE = ConfigUtils.getBoolean(cfg, BATCH_RECEIVE_PNAME, true);
+
+		int receiveBatchSize = ConfigUtils.getInt(cfg, RECEIVE_BATCH_SIZE_PNAME, 16);
+		RECEIVE_BATCH_SIZE = (receiveBatchSize > 0) ? receiveBatchSize : 16;
+	}
+
 	/**
 	 * Sets a specific priority on a specific <tt>Thread</tt>.
 	 *
@@ -87,6 +129,29 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	 */
 	private final byte[] buffer = new byte[PACKET_RECEIVE_BUFFER_LENGTH];
 
+	/**
+	 * The <tt>RawPacket</tt>s received during one wakeup in the batched receive mode.
+	 */
+	private RawPacket[] batch;
+
+	/**
+	 * The <tt>DatagramPacket</tt> view of {@link #buffer} which is handed to the
+	 * <tt>DatagramPacketFilter</tt>s in the batched receive mode.
+	 */
+	private DatagramPacket batchDatagramPacket;
+
+	/**
+	 * The <tt>ByteBuffer</tt> view of {@link #buffer} into which datagrams are received in the
+	 * batched receive mode.
+	 */
+	private ByteBuffer batchByteBuffer;
+
+	/**
+	 * Whether the receive thread of this instance is to drain all datagrams available on its
+	 * <tt>DatagramChannel</tt> (if any) per wakeup and to reverse-transform them in a single call.
+	 */
+	private boolean batchReceive = BATCH_RECEIVE;
+
 	/**
 	 * Whether this stream is closed. Used to control the termination of worker thread.
 	 */
@@ -109,6 +174,11 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	 */
 	private boolean ioError = false;
 
+	/**
+	 * Number of received packets which were superseded by a newer packet before they were read.
+	 */
+	private long numberOfDroppedPackets = 0;
+
 	/**
 	 * Number of received bytes.
 	 */
@@ -136,15 +206,22 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	private final PushBufferStream pushBufferStream;
 
 	/**
-	 * The pool of <tt>RawPacket</tt> instances to reduce their allocations and garbage collection.
+	 * The background/daemon <tt>Thread</tt> which invokes {@link #receive(DatagramPacket)}.
 	 */
-	private final Queue<RawPacket> rawPacketPool
-			= new LinkedBlockingQueue<>(RTPConnectorOutputStream.POOL_CAPACITY);
+	private Thread receiveThread;
 
 	/**
-	 * The background/daemon <tt>Thread</tt> which invokes {@link #receive(DatagramPacket)}.
+	 * The <tt>Selector</tt> on which the receive thread waits for datagrams in the batched receive
+	 * mode. Kept so that {@link #close()} can wake the receive thread up.
 	 */
-	private Thread receiveThread;
+	private Selector receiveSelector;
+
+	/**
+	 * The registration of the <tt>DatagramChannel</tt> of this instance with the shared
+	 * <tt>DatagramReactor</tt> if the latter receives on behalf of this instance instead of
+	 * {@link #receiveThread}.
+	 */
+	private DatagramReactor.Registration reactorRegistration;
 
 	protected final T socket;
 
@@ -289,6 +366,12 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	public synchronized void close()
 	{
 		closed = true;
+		if (receiveSelector != null)
+			receiveSelector.wakeup();
+		if (reactorRegistration != null) {
+			reactorRegistration.cancel();
+			reactorRegistration = null;
+		}
 		if (socket != null) {
 			/*
              * The classes DatagramSocket and Socket implement the interface
@@ -327,27 +410,39 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	{
 		RawPacket[] pkts = new RawPacket[1];
 
-		RawPacket pkt = rawPacketPool.poll();
-		if (pkt == null)
-			pkt = new RawPacket();
-
-		byte[] buffer = pkt.getBuffer();
-		int length = datagramPacket.getLength();
-		if (buffer == null || buffer.length < length) {
-			buffer = new byte[length];
-			pkt.setBuffer(buffer);
-		}
-
-		System.arraycopy(datagramPacket.getData(), datagramPacket.getOffset(), buffer, 0, length);
-		pkt.setBuffer(buffer);
-		pkt.setOffset(0);
-		pkt.setLength(length);
-		pkt.setFlags(0);
+		pkts[0] = copyToRawPacket(datagramPacket);
+		return pkts;
+	}
 
-		pkts[0] = pkt;
+	/**
+	 * Reverse-transforms a batch of <tt>RawPacket</tt>s received in the batched receive mode before
+	 * they are made available to reading. The default implementation returns <tt>pkts</tt> as is;
+	 * allows extenders to filter and/or modify all packets of the batch in a single call.
+	 *
+	 * @param pkts
+	 * 		the <tt>RawPacket</tt>s received during one wakeup of the receive thread. Elements
+	 * 		which are <tt>null</tt> are to be ignored.
+	 * @return the <tt>RawPacket</tt>s to be made available to reading
+	 */
+	protected RawPacket[] createRawPackets(RawPacket[] pkts)
+	{
 		return pkts;
 	}
 
+	/**
+	 * Copies the packet data of a specific <tt>DatagramPacket</tt> into a <tt>RawPacket</tt> taken
+	 * from the shared {@link RawPacketPool}.
+	 *
+	 * @param datagramPacket
+	 * 		the <tt>DatagramPacket</tt> containing the packet data
+	 * @return a <tt>RawPacket</tt> which contains the packet data of <tt>datagramPacket</tt>
+	 */
+	private RawPacket copyToRawPacket(DatagramPacket datagramPacket)
+	{
+		return RawPacketPool.acquireCopy(datagramPacket.getData(), datagramPacket.getOffset(),
+				datagramPacket.getLength());
+	}
+
 	/**
 	 * Log the packet.
 	 *
@@ -443,6 +538,29 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 		return 2 * 1024; // twice the MTU size, just to be safe.
 	}
 
+	/**
+	 * Returns the number of received packets which were superseded by a newer packet before they
+	 * were read from this stream.
+	 *
+	 * @return the number of dropped packets
+	 */
+	public long getNumberOfDroppedPackets()
+	{
+		return numberOfDroppedPackets;
+	}
+
+	/**
+	 * Gets the statistics (e.g. the backlog per wakeup) of the <tt>DatagramChannel</tt> of this
+	 * instance if it is served by the shared <tt>DatagramReactor</tt>.
+	 *
+	 * @return the <tt>DatagramReactor.Registration</tt> of this instance or <tt>null</tt> if this
+	 * instance receives through its own thread
+	 */
+	public synchronized DatagramReactor.Registration getReactorRegistration()
+	{
+		return reactorRegistration;
+	}
+
 	/**
 	 * Returns the number of received bytes for the stream.
 	 *
@@ -453,6 +571,18 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 		return numberOfReceivedBytes;
 	}
 
+	/**
+	 * Gets the <tt>DatagramChannel</tt> through which this instance may receive packets in the
+	 * batched receive mode. The default implementation returns <tt>null</tt> which means that
+	 * packets are always received one at a time through {@link #receive(DatagramPacket)}.
+	 *
+	 * @return the <tt>DatagramChannel</tt> of the socket of this instance or <tt>null</tt>
+	 */
+	protected DatagramChannel getDatagramChannel()
+	{
+		return null;
+	}
+
 	/**
 	 * Gets the {@code PacketLoggingService} (to be) utilized by this instance.
 	 *
@@ -467,8 +597,14 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 
 	private synchronized void maybeStartReceiveThread()
 	{
-		if (receiveThread == null) {
+		if (reactorRegistration != null) {
+			// The shared reactor receives on behalf of this instance.
+		}
+		else if (receiveThread == null) {
 			if ((socket != null) && !closed && (transferHandler != null)) {
+				if (DatagramReactor.isEnabled() && registerWithReactor())
+					return;
+
 				receiveThread = new Thread()
 				{
 					@Override
@@ -490,20 +626,58 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 		}
 	}
 
+	/**
+	 * Registers the <tt>DatagramChannel</tt> of this instance (if any) with the shared
+	 * <tt>DatagramReactor</tt> which is to receive on behalf of this instance instead of a
+	 * dedicated receive thread.
+	 *
+	 * @return <tt>true</tt> if the channel of this instance was registered; otherwise,
+	 * <tt>false</tt>
+	 */
+	private boolean registerWithReactor()
+	{
+		final DatagramChannel channel = getDatagramChannel();
+
+		if (channel == null)
+			return false;
+
+		DatagramReactor reactor;
+
+		try {
+			reactor = DatagramReactor.getInstance();
+		}
+		catch (IOException ioe) {
+			logger.warn("Failed to initialize the shared reactor, using a receive thread: " + ioe);
+			return false;
+		}
+		reactorRegistration = reactor.register(channel, new DatagramReactor.Handler()
+		{
+			@Override
+			public long getNumberOfDroppedPackets()
+			{
+				return numberOfDroppedPackets;
+			}
+
+			@Override
+			public int readyToReceive()
+			{
+				return closed ? -1 : receiveBatch(channel);
+			}
+		});
+		return true;
+	}
+
 	/**
 	 * Pools the specified <tt>RawPacket</tt> in order to avoid future allocations and to reduce
 	 * the
 	 * effects of garbage collection.
 	 *
 	 * @param pkt
-	 * 		the <tt>RawPacket</tt> to be offered to {@link #rawPacketPool}
+	 * 		the <tt>RawPacket</tt> to be returned to the shared {@link RawPacketPool}
 	 */
 	private void poolRawPacket(RawPacket pkt)
 	{
-		pkt.setFlags(0);
-		pkt.setLength(0);
-		pkt.setOffset(0);
-		rawPacketPool.offer(pkt);
+		RawPacketPool.release(pkt);
 	}
 
 	/**
@@ -629,6 +803,28 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 	 */
 	private void runInReceiveThread()
 	{
+		DatagramChannel channel = batchReceive ? getDatagramChannel() : null;
+
+		if (channel != null) {
+			try {
+				runInReceiveThread(channel);
+				return;
+			}
+			catch (IOException ioe) {
+				if (closed)
+					return;
+				logger.warn("Failed to receive in batches, falling back to per-packet receive: "
+						+ ioe);
+				try {
+					channel.configureBlocking(true);
+				}
+				catch (IOException e) {
+					ioError = true;
+					return;
+				}
+			}
+		}
+
 		DatagramPacket p = new DatagramPacket(buffer, 0, PACKET_RECEIVE_BUFFER_LENGTH);
 
 		while (!closed) {
@@ -662,6 +858,135 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 		}
 	}
 
+	/**
+	 * Listens for incoming datagrams on a specific <tt>DatagramChannel</tt> and, upon each wakeup,
+	 * drains all available datagrams (up to {@link #RECEIVE_BATCH_SIZE}) into pooled
+	 * <tt>RawPacket</tt>s, reverse-transforms them through {@link #createRawPackets(RawPacket[])}
+	 * in a single call and makes them available for reading.
+	 *
+	 * @param channel
+	 * 		the <tt>DatagramChannel</tt> to receive datagrams from
+	 * @throws IOException
+	 * 		if <tt>channel</tt> cannot be switched to non-blocking mode and registered with a
+	 * 		<tt>Selector</tt>
+	 */
+	private void runInReceiveThread(DatagramChannel channel)
+			throws IOException
+	{
+		Selector selector = Selector.open();
+
+		try {
+			synchronized (this) {
+				if (closed)
+					return;
+				receiveSelector = selector;
+			}
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+
+			while (!closed) {
+				selector.select();
+				selector.selectedKeys().clear();
+
+				if (receiveBatch(channel) < 0)
+					break;
+			}
+		}
+		catch (ClosedSelectorException | ClosedChannelException e) {
+			if (!closed)
+				throw e;
+		}
+		finally {
+			synchronized (this) {
+				receiveSelector = null;
+			}
+			selector.close();
+		}
+	}
+
+	/**
+	 * Drains up to {@link #RECEIVE_BATCH_SIZE} datagrams available on a specific non-blocking
+	 * <tt>DatagramChannel</tt> into pooled <tt>RawPacket</tt>s, reverse-transforms them through
+	 * {@link #createRawPackets(RawPacket[])} in a single call and makes them available for reading.
+	 * Invoked by the receive thread of this instance or by the shared <tt>DatagramReactor</tt>.
+	 *
+	 * @param channel
+	 * 		the <tt>DatagramChannel</tt> to receive datagrams from
+	 * @return the number of datagrams received from <tt>channel</tt> or <tt>-1</tt> if receiving
+	 * failed and this stream is to stop receiving
+	 */
+	private int receiveBatch(DatagramChannel channel)
+	{
+		if (batch == null) {
+			batch = new RawPacket[RECEIVE_BATCH_SIZE];
+			batchByteBuffer = ByteBuffer.wrap(buffer);
+			batchDatagramPacket = new DatagramPacket(buffer, 0, PACKET_RECEIVE_BUFFER_LENGTH);
+		}
+
+		DatagramPacket p = batchDatagramPacket;
+		int received = 0;
+		int count = 0;
+
+		try {
+			while (received < batch.length) {
+				batchByteBuffer.clear();
+
+				SocketAddress source = channel.receive(batchByteBuffer);
+
+				if (source == null)
+					break;
+
+				received++;
+				p.setData(buffer, 0, batchByteBuffer.position());
+				p.setSocketAddress(source);
+				numberOfReceivedBytes += (long) p.getLength();
+
+				// Do the DatagramPacketFilters accept the received DatagramPacket?
+				if (accept(p))
+					batch[count++] = copyToRawPacket(p);
+			}
+		}
+		catch (IOException e) {
+			ioError = true;
+			received = -1;
+		}
+
+		if (count != 0) {
+			try {
+				RawPacket[] pkts = createRawPackets(batch);
+
+				if (pkts != null)
+					transferData(pkts);
+			}
+			catch (Exception e) {
+				// The receive thread should not die as a result of a failure in the
+				// transformation of the batch.
+				logger.error("Failed to receive a batch of " + count + " packets: ", e);
+			}
+			finally {
+				// The transformation may have returned another array so the batch may still
+				// reference packets which were already made available to reading.
+				Arrays.fill(batch, 0, count, null);
+			}
+		}
+		return received;
+	}
+
+	/**
+	 * Enables or disables the batched receive mode of this <tt>RTPConnectorInputStream</tt>. The
+	 * setting takes effect only if it is made before the receive thread of this instance is started
+	 * (i.e. before the first call to {@link #setTransferHandler(SourceTransferHandler)}) and only if
+	 * {@link #getDatagramChannel()} returns non-<tt>null</tt>.
+	 *
+	 * @param batchReceive
+	 * 		<tt>true</tt> to drain all datagrams available on each wakeup and reverse-transform
+	 * 		them in a single call; <tt>false</tt> to receive packets one at a time
+	 */
+	public void setBatchReceive(boolean batchReceive)
+	{
+		this.batchReceive = batchReceive;
+	}
+
 	/**
 	 * Enables or disables this <tt>RTPConnectorInputStream</tt>. While the stream is disabled, it
 	 * does not accept any packets.
@@ -742,6 +1067,7 @@ public abstract class RTPConnectorInputStream<T> implements PushSourceStream
 						this.pkt = pkt;
 					}
 					if (oldPkt != null) {
+						numberOfDroppedPackets++;
 						/*
 						 * Return oldPkt to the pool because it was made available to reading
 						 * and it
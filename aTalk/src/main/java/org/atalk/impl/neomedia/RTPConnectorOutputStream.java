@@ -7,6 +7,8 @@ package org.atalk.impl.neomedia;
 
 import net.sf.fmj.media.util.MediaThread;
 
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
+import org.atalk.impl.neomedia.rtp.pacing.PacketPacer;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
@@ -23,8 +25,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.LockSupport;
 
 import javax.media.rtp.OutputDataStream;
@@ -189,12 +191,6 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     private PacketLoggingService pktLogging;
 
-    /**
-     * The pool of <tt>RawPacket</tt> instances which reduces the number of allocations performed by
-     * {@link #packetize(byte[], int, int, Object)}.
-     */
-    private final LinkedBlockingQueue<RawPacket> rawPacketPool = new LinkedBlockingQueue<>(POOL_CAPACITY);
-
     /**
      * Stream targets' IP addresses and ports.
      */
@@ -222,9 +218,23 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      * a specific socket.
      */
     public RTPConnectorOutputStream()
+    {
+        this(false);
+    }
+
+    /**
+     * Initializes a new <tt>RTPConnectorOutputStream</tt> which is to send packet data out through
+     * a specific socket.
+     *
+     * @param nonBlockingSend
+     *         <tt>true</tt> if {@link #sendToTarget(RawPacket, InetSocketAddress)} never blocks so
+     *         that the send queue may be drained by the shared {@link DatagramReactor} instead of a
+     *         send thread of its own; otherwise, <tt>false</tt>
+     */
+    protected RTPConnectorOutputStream(boolean nonBlockingSend)
     {
         if (USE_SEND_THREAD) {
-            queue = new Queue();
+            queue = new Queue(nonBlockingSend);
         }
         else {
             queue = null;
@@ -256,6 +266,10 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
             closed = true;
 
             removeTargets();
+            if (queue != null && queue.executor != null) {
+                // Let the shared reactor release the queued buffers.
+                queue.scheduleDrain();
+            }
         }
     }
 
@@ -283,37 +297,30 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     protected RawPacket[] packetize(byte[] buf, int off, int len, Object context)
     {
-        RawPacket[] pkts = new RawPacket[1];
-
-        RawPacket pkt = rawPacketPool.poll();
-        byte[] pktBuffer;
-
-        if (pkt == null) {
-            pktBuffer = new byte[len];
-            pkt = new RawPacket();
-        }
-        else {
-            pktBuffer = pkt.getBuffer();
-        }
-
-        if (pktBuffer.length < len) {
-            /*
-			 * XXX It may be argued that if the buffer length is insufficient once, it will be
-			 * insufficient more than once. That is why we recreate it without returning a packet to
-			 * the pool.
-			 */
-            pktBuffer = new byte[len];
-        }
-
-        pkt.setBuffer(pktBuffer);
-        pkt.setFlags(0);
-        pkt.setLength(len);
-        pkt.setOffset(0);
-
-        System.arraycopy(buf, off, pktBuffer, 0, len);
+        // The packet is returned to the shared pool once it has been sent.
+        return packetize(RawPacketPool.acquireCopy(buf, off, len), context);
+    }
 
-        pkts[0] = pkt;
-        return pkts;
+    /**
+     * Creates the packets to be sent from a <tt>RawPacket</tt> which this instance owns, e.g. one
+     * which was filled from the <tt>byte[]</tt> given to {@link #write(byte[], int, int)} when it
+     * was queued. Returns an array of one or more elements, with <tt>pkt</tt> as its first element
+     * (and <tt>null</tt> for all other elements).
+     *
+     * Allows extenders to intercept the array and possibly filter and/or modify it without copying
+     * the packet data again.
+     *
+     * @param pkt
+     *         the packet to be sent to the targets of this instance. Its ownership passes to this
+     *         method: it is returned to the shared pool once it has been sent or dropped.
+     * @param context
+     *         the {@code Object} provided to {@link #write(byte[], int, int, java.lang.Object)}. The
+     *         implementation of {@code RTPConnectorOutputStream} ignores the {@code context}.
+     * @return an array with <tt>pkt</tt> as its single element
+     */
+    protected RawPacket[] packetize(RawPacket pkt, Object context)
+    {
+        return new RawPacket[] { pkt };
     }
 
     /**
@@ -326,6 +333,39 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     protected abstract void doLogPacket(RawPacket packet, InetSocketAddress target);
 
+    /**
+     * Returns the number of packets which are waiting in the send queue of this stream.
+     *
+     * @return the number of packets in the send queue or <tt>0</tt> if packets are sent by the
+     * writing thread
+     */
+    public int getQueueBacklog()
+    {
+        return (queue == null) ? 0 : queue.pacer.size();
+    }
+
+    /**
+     * Returns the pacer which orders and paces the packets in the send queue of this stream.
+     *
+     * @return the pacer of the send queue of this stream or <tt>null</tt> if packets are sent by
+     * the writing thread
+     */
+    public PacketPacer<?> getPacer()
+    {
+        return (queue == null) ? null : queue.pacer;
+    }
+
+    /**
+     * Returns the number of packets dropped because they were written while the send queue of this
+     * stream was full.
+     *
+     * @return the number of dropped packets
+     */
+    public int getNumberOfDroppedPackets()
+    {
+        return numDroppedPackets;
+    }
+
     /**
      * Returns the number of bytes sent trough this stream
      *
@@ -404,7 +444,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     private boolean send(RawPacket packet)
     {
         if (!isSocketValid()) {
-            rawPacketPool.offer(packet);
+            RawPacketPool.release(packet);
             return false;
         }
 
@@ -424,14 +464,14 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     }
                 }
             } catch (IOException ioe) {
-                rawPacketPool.offer(packet);
+                RawPacketPool.release(packet);
                 // too many msg hangs the system, show only 1 in 50
                 if ((numberOfPackets % 50) == 0)
                     logger.warn("Failed to send a packet to target " + target + ":" + ioe);
                 return false;
             }
         }
-        rawPacketPool.offer(packet);
+        RawPacketPool.release(packet);
         return true;
     }
 
@@ -638,7 +678,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     }
                 }
                 else {
-                    rawPacketPool.offer(pkt);
+                    RawPacketPool.release(pkt);
                 }
             }
         }
@@ -667,10 +707,16 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     private class Queue
     {
         /**
-         * The {@link java.util.Queue} which holds {@link Buffer}s to be processed by
-         * {@link #sendThread}.
+         * The maximum number of {@link Buffer}s processed by one run of {@link #drainTask} before
+         * it yields the loop of the shared {@link DatagramReactor} to other streams.
          */
-        final ArrayBlockingQueue<Buffer> queue = new ArrayBlockingQueue<>(PACKET_QUEUE_CAPACITY);
+        static final int MAX_BUFFERS_PER_DRAIN = 32;
+
+        /**
+         * The pacer which holds {@link Buffer}s to be processed by {@link #sendThread} in queues
+         * by priority and releases them at the pacing bitrate, if any.
+         */
+        final PacketPacer<Buffer> pacer = new PacketPacer<>(Math.max(PACKET_QUEUE_CAPACITY, 1));
 
         /**
          * A pool of {@link RTPConnectorOutputStream.Queue.Buffer}
@@ -703,10 +749,35 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
 
         /**
          * The {@link Thread} which is to read {@link Buffer}s from this {@link Queue} and send them
-         * to this {@link RTPConnectorOutputStream} 's targets.
+         * to this {@link RTPConnectorOutputStream} 's targets. {@code null} if {@link #executor}
+         * does that instead.
          */
         final Thread sendThread;
 
+        /**
+         * The executor of the shared {@link DatagramReactor} which drains this {@link Queue} instead
+         * of a dedicated {@link #sendThread}; {@code null} if the reactor is not enabled or the
+         * sending may block.
+         */
+        final DatagramReactor.ScheduledExecutor executor;
+
+        /**
+         * Whether {@link #drainTask} is scheduled on (or running in) {@link #executor}.
+         */
+        final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+        /**
+         * The task which drains this {@link Queue} on {@link #executor}.
+         */
+        final Runnable drainTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        };
+
         /**
          * The instance optionally used to gather and print statistics about
          * this queue.
@@ -715,13 +786,33 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
 
         /**
          * Initializes a new {@link Queue} instance and starts its send thread.
+         *
+         * @param nonBlockingSend
+         *         <tt>true</tt> if the sending never blocks and may thus be done by the shared
+         *         {@link DatagramReactor} instead of the send thread
          */
-        private Queue()
+        private Queue(boolean nonBlockingSend)
         {
             if (logger.isTraceEnabled()) {
                 queueStats = new QueueStatistics(getClass().getSimpleName() + "-" + hashCode());
             }
 
+            DatagramReactor.ScheduledExecutor executor = null;
+
+            if (nonBlockingSend && DatagramReactor.isEnabled()) {
+                try {
+                    executor = DatagramReactor.getInstance().newExecutor();
+                } catch (IOException ioe) {
+                    logger.warn("Failed to initialize the shared reactor, using a send thread: "
+                            + ioe);
+                }
+            }
+            this.executor = executor;
+            if (executor != null) {
+                sendThread = null;
+                return;
+            }
+
             sendThread = new Thread()
             {
                 @Override
@@ -750,36 +841,163 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
             if (closed)
                 return;
 
-            Buffer buffer = getBuffer(len);
-            System.arraycopy(buf, off, buffer.buf, 0, len);
-            buffer.len = len;
+            Buffer buffer = getBuffer();
+
+            // The only copy of the data on the send path: the queued packet is handed over to
+            // packetize(RawPacket, Object) and the transform chain as is.
+            buffer.pkt = RawPacketPool.acquireCopy(buf, off, len);
             buffer.context = context;
 
             long now = System.currentTimeMillis();
-            if (queue.size() >= PACKET_QUEUE_CAPACITY) {
-                // Drop from the head of the queue.
-                Buffer b = queue.poll();
-                if (b != null) {
-                    if (queueStats != null) {
-                        queueStats.remove(now);
+            // If the pacer is full, it drops the oldest Buffer of the lowest priority.
+            Buffer b = pacer.offer(buffer, len, pacer.classify(buf, off, len), System.nanoTime());
+
+            if (queueStats != null) {
+                queueStats.add(now);
+            }
+            if (b != null) {
+                if (queueStats != null) {
+                    queueStats.remove(now);
+                }
+                RawPacketPool.release(b.pkt);
+                recycle(b);
+                numDroppedPackets++;
+                if (logDroppedPacket(numDroppedPackets)) {
+                    logger.warn("Packets dropped (hashCode=" + hashCode() + "): "
+                            + numDroppedPackets);
+                }
+            }
+            if (executor != null) {
+                scheduleDrain();
+            }
+        }
+
+        /**
+         * Schedules {@link #drainTask} on {@link #executor} unless it is already scheduled.
+         */
+        private void scheduleDrain()
+        {
+            if (drainScheduled.compareAndSet(false, true)) {
+                executor.execute(drainTask);
+            }
+        }
+
+        /**
+         * Reads {@link Buffer}s from {@link #pacer}, "packetizes" and sends them on a loop of the
+         * shared {@link DatagramReactor}. Processes a limited number of {@link Buffer}s per run in
+         * order to not starve the other streams served by the same loop and, if a pacing policy
+         * is configured, reschedules itself instead of blocking the loop.
+         */
+        private void drain()
+        {
+            if (closed) {
+                pacer.clear();
+                drainScheduled.set(false);
+                return;
+            }
+
+            for (int processed = 0; ; processed++) {
+                if (perNanos > 0 && maxBuffers > 0) {
+                    long time = System.nanoTime();
+                    long nanosElapsedTime = time - intervalStartTimeNanos;
+
+                    if (nanosElapsedTime >= perNanos) {
+                        intervalStartTimeNanos = time;
+                        buffersProcessedInCurrentInterval = 0;
                     }
-                    pool.offer(b);
-                    numDroppedPackets++;
-                    if (logDroppedPacket(numDroppedPackets)) {
-                        logger.warn("Packets dropped (hashCode=" + hashCode() + "): "
-                                + numDroppedPackets);
+                    else if (buffersProcessedInCurrentInterval >= maxBuffers) {
+                        executor.schedule(drainTask, perNanos - nanosElapsedTime);
+                        return;
                     }
                 }
+                if (processed >= MAX_BUFFERS_PER_DRAIN) {
+                    executor.execute(drainTask);
+                    return;
+                }
+
+                long now = System.nanoTime();
+                Buffer buffer = pacer.poll(now);
+
+                if (buffer == null) {
+                    long delayNanos = pacer.getTimeUntilNextPollNanos(now);
+
+                    // The pacer holds back what is queued until its budget allows it.
+                    if (delayNanos > 0) {
+                        executor.schedule(drainTask, delayNanos);
+                        return;
+                    }
+                    if (delayNanos < 0)
+                        break;
+                    continue;
+                }
+
+                RawPacket[] pkts = packetize(buffer);
+
+                if (pkts != null && send(pkts)) {
+                    buffersProcessedInCurrentInterval++;
+                }
             }
 
-            if (queue.offer(buffer) && queueStats != null) {
-                queueStats.add(now);
+            drainScheduled.set(false);
+            // A Buffer may have been added after the last poll and before drainScheduled was reset.
+            if (!pacer.isEmpty()) {
+                scheduleDrain();
             }
         }
 
         /**
-         * Reads {@link Buffer}s from {@link #queue}, "packetizes" them through
-         * {@link RTPConnectorOutputStream#packetize(byte[], int, int, Object)} and sends the
+         * "Packetizes" a specific {@link Buffer} through
+         * {@link RTPConnectorOutputStream#packetize(RawPacket, Object)} and returns it to
+         * {@link #pool}.
+         *
+         * @param buffer
+         *         the {@link Buffer} to packetize
+         * @return the resulting packets or {@code null} if the packetization failed
+         */
+        private RawPacket[] packetize(Buffer buffer)
+        {
+            if (queueStats != null) {
+                queueStats.remove(System.currentTimeMillis());
+            }
+
+            RawPacket pkt = buffer.pkt;
+            Object context = buffer.context;
+
+            recycle(buffer);
+            try {
+                return RTPConnectorOutputStream.this.packetize(pkt, context);
+            } catch (Exception e) {
+                // The sending thread must not die because of a failure
+                // in the conversion to RawPacket[] or any of the
+                // transformations (because of e.g. parsing errors).
+                // The transformers may have released or replaced pkt
+                // already so it is left to the garbage collector.
+                logger.error("Failed to handle an outgoing packet: ", e);
+                return null;
+            }
+        }
+
+        /**
+         * Sends specific packets to this {@link RTPConnectorOutputStream}'s targets.
+         *
+         * @param pkts
+         *         the packets to send
+         * @return {@code false} if sending failed with an exception; otherwise, {@code true}
+         */
+        private boolean send(RawPacket[] pkts)
+        {
+            try {
+                RTPConnectorOutputStream.this.write(pkts);
+                return true;
+            } catch (Exception e) {
+                logger.error("Failed to send a packet: ", e);
+                return false;
+            }
+        }
+
+        /**
+         * Reads {@link Buffer}s from {@link #pacer}, "packetizes" them through
+         * {@link RTPConnectorOutputStream#packetize(RawPacket, Object)} and sends the
          * resulting packets to this {@link RTPConnectorOutputStream}'s targets.
          *
          * If a pacing policy is configured, makes sure that it is respected. Note that this pacing
@@ -801,7 +1019,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                 while (!closed) {
                     Buffer buffer;
                     try {
-                        buffer = queue.poll(500, TimeUnit.MILLISECONDS);
+                        buffer = pacer.take(TimeUnit.MILLISECONDS.toNanos(500));
                     } catch (InterruptedException iex) {
                         continue;
                     }
@@ -815,29 +1033,13 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                         continue;
                     }
 
-                    if (queueStats != null) {
-                        queueStats.remove(System.currentTimeMillis());
-                    }
+                    // We will sooner or later process the Buffer. Since this
+                    // may take a non-negligible amount of time, do it before
+                    // taking pacing into account.
+                    RawPacket[] pkts = packetize(buffer);
 
-                    RawPacket[] pkts;
-                    try {
-                        // We will sooner or later process the Buffer. Since this
-
-                        // may take a non-negligible amount of time, do it
-                        // before
-                        // taking pacing into account.
-                        pkts
-                                = packetize(
-                                buffer.buf, 0, buffer.len,
-                                buffer.context);
-                    } catch (Exception e) {
-                        // The sending thread must not die because of a failure
-                        // in the conversion to RawPacket[] or any of the
-                        // transformations (because of e.g. parsing errors).
-                        logger.error("Failed to handle an outgoing packet: ", e);
+                    if (pkts == null) {
                         continue;
-                    } finally {
-                        pool.offer(buffer);
                     }
 
                     if (perNanos > 0 && maxBuffers > 0) {
@@ -853,18 +1055,13 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                         }
                     }
 
-                    try {
-                        RTPConnectorOutputStream.this.write(pkts);
-                    } catch (Exception e) {
-                        logger.error("Failed to send a packet: ", e);
-                        continue;
+                    if (send(pkts)) {
+                        buffersProcessedInCurrentInterval++;
                     }
 
-                    buffersProcessedInCurrentInterval++;
-
                 }
             } finally {
-                queue.clear();
+                pacer.clear();
             }
         }
 
@@ -885,24 +1082,39 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         }
 
         /**
-         * @return a free {@link Buffer} instance with a byte array with a length of at least
-         * {@code len}.
+         * @return a free {@link Buffer} instance.
          */
-        private Buffer getBuffer(int len)
+        private Buffer getBuffer()
         {
             Buffer buffer = pool.poll();
             if (buffer == null)
                 buffer = new Buffer();
-            if (buffer.buf == null || buffer.buf.length < len)
-                buffer.buf = new byte[len];
 
             return buffer;
         }
 
+        /**
+         * Clears a specific {@link Buffer} and returns it to {@link #pool}.
+         *
+         * @param buffer
+         *         the {@link Buffer} to recycle
+         */
+        private void recycle(Buffer buffer)
+        {
+            buffer.pkt = null;
+            buffer.context = null;
+            pool.offer(buffer);
+        }
+
+        /**
+         * A packet waiting in {@link #pacer} together with the context it was written with.
+         */
         private class Buffer
         {
-            byte[] buf;
-            int len;
+            /**
+             * The pooled packet which holds the data to be sent.
+             */
+            RawPacket pkt;
             Object context;
 
             private Buffer()
@@ -7,6 +7,7 @@ package org.atalk.impl.neomedia;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.DatagramChannel;
 
 import org.atalk.impl.neomedia.transform.TransformInputStream;
 import org.atalk.service.libjitsi.LibJitsi;
@@ -32,6 +33,23 @@ public class RTPConnectorUDPInputStream extends TransformInputStream<DatagramSoc
 		super(socket);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Returns the <tt>DatagramChannel</tt> of the socket of this instance if it was created through
+	 * one (e.g. by {@link DatagramChannel#open()}) and <tt>null</tt> otherwise. A
+	 * <tt>DelegatingDatagramSocket</tt> (e.g. a <tt>MultiplexingDatagramSocket</tt>) exposes the
+	 * channel of its delegate and receiving from it directly would bypass the filtering of the
+	 * ice4j stack, so such sockets are always read one packet at a time.
+	 */
+	@Override
+	protected DatagramChannel getDatagramChannel()
+	{
+		if (socket instanceof DelegatingDatagramSocket)
+			return null;
+		return socket.getChannel();
+	}
+
 	/**
 	 * Log the packet.
 	 *
@@ -8,10 +8,13 @@ package org.atalk.impl.neomedia;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.service.packetlogging.PacketLoggingService;
+import org.ice4j.socket.DelegatingDatagramSocket;
 import org.ice4j.socket.MultiplexingDatagramSocket;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 /**
  * RTPConnectorOutputStream implementation for UDP protocol.
@@ -33,9 +36,29 @@ public class RTPConnectorUDPOutputStream extends RTPConnectorOutputStream
 	 */
 	public RTPConnectorUDPOutputStream(DatagramSocket socket)
 	{
+		super(isNonBlockingSend(socket));
 		this.socket = socket;
 	}
 
+	/**
+	 * Determines whether sending through a specific <tt>DatagramSocket</tt> does not block so
+	 * that the send queue may be drained by the shared <tt>DatagramReactor</tt>. A socket with a
+	 * <tt>DatagramChannel</tt> of its own waits for room in its send buffer at most, and not at
+	 * all once the <tt>RTPConnectorUDPInputStream</tt> served by the reactor has switched the
+	 * channel to non-blocking mode. A <tt>DelegatingDatagramSocket</tt> of ice4j may relay through
+	 * TURN or TCP and is therefore given a send thread.
+	 *
+	 * @param socket
+	 *        the <tt>DatagramSocket</tt> to send through
+	 * @return <tt>true</tt> if sending through <tt>socket</tt> does not block; otherwise,
+	 *         <tt>false</tt>
+	 */
+	private static boolean isNonBlockingSend(DatagramSocket socket)
+	{
+		return (socket != null) && !(socket instanceof DelegatingDatagramSocket)
+			&& (socket.getChannel() != null);
+	}
+
 	/**
 	 * Sends a specific <tt>RawPacket</tt> through this <tt>OutputDataStream</tt> to a specific
 	 * <tt>InetSocketAddress</tt>.
@@ -54,8 +77,26 @@ public class RTPConnectorUDPOutputStream extends RTPConnectorOutputStream
 	protected void sendToTarget(RawPacket packet, InetSocketAddress target)
 		throws IOException
 	{
-		socket.send(new DatagramPacket(packet.getBuffer(), packet.getOffset(), packet.getLength(),
-			target.getAddress(), target.getPort()));
+		/*
+		 * The socket is shared with the RTPConnectorUDPInputStream which may have switched its
+		 * DatagramChannel to non-blocking mode (to receive in batches) in which case
+		 * DatagramSocket#send(DatagramPacket) throws an IllegalBlockingModeException.
+		 */
+		DatagramChannel channel = (socket instanceof DelegatingDatagramSocket)
+			? null : socket.getChannel();
+
+		if (channel != null && !channel.isBlocking()) {
+			ByteBuffer buf = ByteBuffer.wrap(packet.getBuffer(), packet.getOffset(),
+				packet.getLength());
+
+			if (channel.send(buf, target) == 0)
+				throw new IOException("Socket send buffer full, dropped " + packet.getLength()
+					+ " bytes to " + target);
+		}
+		else {
+			socket.send(new DatagramPacket(packet.getBuffer(), packet.getOffset(),
+				packet.getLength(), target.getAddress(), target.getPort()));
+		}
 	}
 
 	/**
@@ -10,6 +10,7 @@ import org.atalk.impl.neomedia.control.ImgStreamingControl;
 import org.atalk.impl.neomedia.device.*;
 import org.atalk.impl.neomedia.rtcp.RTCPReceiverFeedbackTermination;
 import org.atalk.impl.neomedia.rtp.*;
+import org.atalk.impl.neomedia.rtp.pacing.PacketPacer;
 import org.atalk.impl.neomedia.rtp.remotebitrateestimator.*;
 import org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation.BandwidthEstimatorImpl;
 import org.atalk.impl.neomedia.transform.*;
@@ -27,6 +28,7 @@ import org.atalk.util.*;
 import org.atalk.util.concurrent.RecurringRunnableExecutor;
 import org.atalk.util.event.*;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.*;
 
@@ -413,6 +415,12 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 	 */
 	private BandwidthEstimatorImpl bandwidthEstimator;
 
+	/**
+	 * The pacer of the data output stream which listens to {@link #bandwidthEstimator} or
+	 * <tt>null</tt>.
+	 */
+	private PacketPacer<?> estimatorPacer;
+
 	/**
 	 * The {@link CachingTransformer} which caches outgoing/incoming packets
 	 * from/to this {@link VideoMediaStreamImpl}.
@@ -578,6 +586,8 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 		try {
 			super.close();
 		} finally {
+			stopPacingByBandwidthEstimator();
+
 			if (cachingTransformer != null) {
 				recurringRunnableExecutor.deRegisterRecurringRunnable(cachingTransformer);
 			}
@@ -600,6 +610,8 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 	protected void configureDataOutputStream(RTPConnectorOutputStream dataOutputStream)
 	{
 		super.configureDataOutputStream(dataOutputStream);
+		if (bandwidthEstimator != null)
+			paceByBandwidthEstimator(dataOutputStream);
 
 		/*
 		 * XXX Android's current video CaptureDevice is based on MediaRecorder which gives no
@@ -623,6 +635,42 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 		}
 	}
 
+	/**
+	 * Makes the pacer of a specific <tt>RTPConnectorOutputStream</tt> pace at the bitrate
+	 * estimated by {@link #bandwidthEstimator} so that the bursts of this stream do not exceed the
+	 * available bandwidth.
+	 *
+	 * @param dataOutputStream
+	 * 		the <tt>RTPConnectorOutputStream</tt> to be used by an <tt>RTPManager</tt> of this
+	 * 		<tt>MediaStreamImpl</tt>
+	 */
+	private synchronized void paceByBandwidthEstimator(RTPConnectorOutputStream dataOutputStream)
+	{
+		PacketPacer<?> pacer = dataOutputStream.getPacer();
+
+		if (pacer == estimatorPacer)
+			return;
+
+		// the estimates are no longer of interest to the pacer of a replaced output stream
+		stopPacingByBandwidthEstimator();
+		if (pacer != null && PacketPacer.ENABLED) {
+			pacer.setTargetBitrate(bandwidthEstimator.getLatestEstimate());
+			bandwidthEstimator.addListener(pacer);
+			estimatorPacer = pacer;
+		}
+	}
+
+	/**
+	 * Stops giving the estimates of {@link #bandwidthEstimator} to {@link #estimatorPacer}.
+	 */
+	private synchronized void stopPacingByBandwidthEstimator()
+	{
+		if (estimatorPacer != null) {
+			bandwidthEstimator.removeListener(estimatorPacer);
+			estimatorPacer = null;
+		}
+	}
+
 	/**
 	 * Performs any optional configuration on the <tt>BufferControl</tt> of the specified
 	 * <tt>RTPManager</tt> which is to be used as the <tt>RTPManager</tt> of this
@@ -1118,6 +1166,10 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 	protected void rtpConnectorChanged(AbstractRTPConnector oldValue,
 			AbstractRTPConnector newValue)
 	{
+		// the output stream of the new connector is paced once it is created
+		if (oldValue != newValue)
+			stopPacingByBandwidthEstimator();
+
 		super.rtpConnectorChanged(oldValue, newValue);
 
 		if (newValue != null) {
@@ -1228,6 +1280,20 @@ public class VideoMediaStreamImpl extends MediaStreamImpl
 		if (bandwidthEstimator == null) {
 			bandwidthEstimator = new BandwidthEstimatorImpl(this);
 			logger.info("Creating a BandwidthEstimator for stream " + this);
+
+			AbstractRTPConnector rtpConnector = getRTPConnector();
+
+			if (rtpConnector != null) {
+				try {
+					RTPConnectorOutputStream dataOutputStream
+							= rtpConnector.getDataOutputStream(false);
+
+					if (dataOutputStream != null)
+						paceByBandwidthEstimator(dataOutputStream);
+				} catch (IOException ioe) {
+					logger.warn("Failed to pace by the bandwidth estimation: " + ioe);
+				}
+			}
 		}
 		return bandwidthEstimator;
 	}
@@ -847,6 +847,22 @@ public class AudioMixer
 		return ((input instanceof AudioFormat) && input.isSameEncoding(pattern));
 	}
 
+	/**
+	 * Gets the audio level of the media of a specific input <tt>DataSource</tt> if it has been
+	 * measured already, e.g. for the purposes of audio level indications. Allows the mixing to
+	 * leave silent inputs out without inspecting their samples. The default implementation knows
+	 * no audio levels.
+	 *
+	 * @param dataSource
+	 * 		the input <tt>DataSource</tt> to get the audio level of
+	 * @return the last measured audio level of <tt>dataSource</tt> in the range of
+	 * <tt>SimpleAudioLevelListener</tt> or <tt>-1</tt> if it is not known
+	 */
+	protected int getAudioLevel(DataSource dataSource)
+	{
+		return -1;
+	}
+
 	/**
 	 * Reads media from a specific <tt>PushBufferStream</tt> which belongs to a specific
 	 * <tt>DataSource</tt> into a specific output <tt>Buffer</tt>. Allows extenders to tap into the
@@ -7,6 +7,7 @@ package org.atalk.impl.neomedia.conference;
 
 import org.atalk.impl.neomedia.control.ControlsAdapter;
 import org.atalk.impl.neomedia.protocol.*;
+import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.util.*;
 
 import java.io.IOException;
@@ -38,6 +39,21 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 	 */
 	private static final Logger logger = Logger.getLogger(AudioMixerPushBufferStream.class);
 
+	/**
+	 * The default value of {@link #SILENCE_LEVEL_PNAME}: -87 dBov, well below the noise floor of
+	 * a microphone and thus inaudible in a mix.
+	 */
+	private static final int DEFAULT_SILENCE_LEVEL = 40;
+
+	/**
+	 * The name of the property which specifies the audio level (in the range of
+	 * <tt>SimpleAudioLevelListener</tt>) at or below which an input whose audio level has been
+	 * measured is considered silent and is left out of the mixes. A negative value mixes all
+	 * inputs.
+	 */
+	public static final String SILENCE_LEVEL_PNAME
+			= AudioMixerPushBufferStream.class.getName() + ".SILENCE_LEVEL";
+
 	/**
 	 * The <tt>AudioMixer</tt> which created this <tt>AudioMixerPushBufferStream</tt>.
 	 */
@@ -113,6 +129,25 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 		}
 	};
 
+	/**
+	 * The <tt>MixMinusEngine</tt> which computes the mixes pushed to {@link #outStreams}. Only
+	 * used by the thread which executes {@link #transferData(Buffer)}.
+	 */
+	private final MixMinusEngine mixMinusEngine;
+
+	/**
+	 * The indices of the input samples to exclude from the mix of an output stream. Only used by
+	 * the thread which executes {@link #transferData(Buffer)}.
+	 */
+	private int[] excluded = new int[0];
+
+	/**
+	 * The audio levels of the input samples of a frame as reported by
+	 * {@link AudioMixer#getAudioLevel(DataSource)}. Only used by the thread which executes
+	 * {@link #transferData(Buffer)}.
+	 */
+	private int[] inLevels = new int[0];
+
 	/**
 	 * A copy of {@link #outStreams} which will cause no <tt>ConcurrentModificationException</tt>
 	 * and which has been introduced to reduce allocations and garbage collection.
@@ -132,6 +167,9 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 	{
 		this.audioMixer = audioMixer;
 		this.outFormat = outFormat;
+
+		mixMinusEngine = new MixMinusEngine(ConfigUtils.getInt(
+				LibJitsi.getConfigurationService(), SILENCE_LEVEL_PNAME, DEFAULT_SILENCE_LEVEL));
 	}
 
 	/**
@@ -746,16 +784,16 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 	}
 
 	/**
-	 * Pushes a copy of a specific set of input audio samples to a specific
-	 * <tt>AudioMixingPushBufferStream</tt> for audio mixing. Audio samples read from input
-	 * <tt>DataSource</tt>s which the <tt>AudioMixingPushBufferDataSource</tt> owner of the
-	 * specified <tt>AudioMixingPushBufferStream</tt> has specified to not be included in the
-	 * output mix are not pushed to the <tt>AudioMixingPushBufferStream</tt> .
+	 * Pushes the mix of a specific set of input audio samples to a specific
+	 * <tt>AudioMixingPushBufferStream</tt>. The mix is derived from the total computed by
+	 * {@link #mixMinusEngine} by excluding the audio samples read from input <tt>DataSource</tt>s
+	 * which the <tt>AudioMixingPushBufferDataSource</tt> owner of the specified
+	 * <tt>AudioMixingPushBufferStream</tt> has specified to not be included in the output mix.
 	 *
 	 * @param outStream
-	 * 		the <tt>AudioMixingPushBufferStream</tt> to push the specified set of audio samples to
+	 * 		the <tt>AudioMixingPushBufferStream</tt> to push the mix to
 	 * @param inSampleDesc
-	 * 		the set of audio samples to be pushed to <tt>outStream</tt> for audio mixing
+	 * 		the set of audio samples the total of {@link #mixMinusEngine} has been computed from
 	 * @param maxInSampleCount
 	 * 		the maximum number of audio samples available in <tt>inSamples</tt>
 	 */
@@ -765,52 +803,57 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 		short[][] inSamples = inSampleDesc.inSamples;
 		InStreamDesc[] inStreams = inSampleDesc.inStreams;
 
-		inSamples = inSamples.clone();
-
 		CaptureDevice captureDevice = audioMixer.captureDevice;
 		AudioMixingPushBufferDataSource outDataSource = outStream.getDataSource();
 		boolean outDataSourceIsSendingDTMF
 				= (captureDevice instanceof AudioMixingPushBufferDataSource)
 				&& outDataSource.isSendingDTMF();
 		boolean outDataSourceIsMute = outDataSource.isMute();
+		short[] toneSignal = null;
+		int excludedCount = 0;
+
+		if (excluded.length < inSamples.length)
+			excluded = new int[inSamples.length];
 
-		for (int i = 0, o = 0; i < inSamples.length; i++) {
+		for (int i = 0; i < inSamples.length; i++) {
 			InStreamDesc inStreamDesc = inStreams[i];
 			DataSource inDataSource = inStreamDesc.inDataSourceDesc.inDataSource;
 
 			if (outDataSourceIsSendingDTMF && (inDataSource == captureDevice)) {
 				PushBufferStream inStream = (PushBufferStream) inStreamDesc.getInStream();
 				AudioFormat inStreamFormat = (AudioFormat) inStream.getFormat();
-				// Generate the inband DTMF signal.
-				short[] nextToneSignal = outDataSource.getNextToneSignal(
+				// Generate the inband DTMF signal in place of the captured audio.
+				toneSignal = outDataSource.getNextToneSignal(
 						inStreamFormat.getSampleRate(), inStreamFormat.getSampleSizeInBits());
 
-				inSamples[i] = nextToneSignal;
-				if (maxInSampleCount < nextToneSignal.length)
-					maxInSampleCount = nextToneSignal.length;
+				if (maxInSampleCount < toneSignal.length)
+					maxInSampleCount = toneSignal.length;
+				excluded[excludedCount++] = i;
 			}
 			else if (outDataSource.equals(inStreamDesc.getOutDataSource())
 					|| (outDataSourceIsMute && (inDataSource == captureDevice))) {
-				inSamples[i] = null;
+				excluded[excludedCount++] = i;
 			}
+		}
 
-			/*
-			 * Have the samples of the contributing streams at the head of the sample set (and the
-			 * non-contributing at the tail) in order to optimize determining the number of
-			 * contributing streams later on and, consequently, the mixing.
-			 */
-			short[] inStreamSamples = inSamples[i];
+		short[] mix = shortArrayCache.allocateShortArray(maxInSampleCount);
 
-			if (inStreamSamples != null) {
-				if (i != o) {
-					inSamples[o] = inStreamSamples;
-					inSamples[i] = null;
-				}
-				o++;
-			}
-		}
+		mixMinusEngine.mixMinus(inSamples, excluded, excludedCount, toneSignal, mix,
+				maxInSampleCount);
+		outStream.setMix(mix, maxInSampleCount, inSampleDesc.getTimeStamp());
+	}
 
-		outStream.setInSamples(inSamples, maxInSampleCount, inSampleDesc.getTimeStamp());
+	/**
+	 * Returns a <tt>short</tt> array, e.g. a mix which has been read out of an
+	 * <tt>AudioMixingPushBufferStream</tt>, into the cache of this instance.
+	 *
+	 * @param shortArray
+	 * 		the <tt>short</tt> array to return into the cache. If <tt>null</tt>, the method does
+	 * 		nothing.
+	 */
+	void deallocateShortArray(short[] shortArray)
+	{
+		shortArrayCache.deallocateShortArray(shortArray);
 	}
 
 	/**
@@ -986,11 +1029,24 @@ class AudioMixerPushBufferStream extends ControlsAdapter
 						.toArray(new AudioMixingPushBufferStream[this.outStreams.size()]);
 			}
 		}
+		/*
+		 * Sum the input samples once and derive the mix of each output stream from the total so
+		 * that the cost of the mixing grows linearly with the number of inputs and outputs.
+		 */
+		InStreamDesc[] inStreams = inSampleDesc.inStreams;
+
+		if (inLevels.length < inSamples.length)
+			inLevels = new int[inSamples.length];
+		for (int i = 0; i < inSamples.length; i++) {
+			inLevels[i] = (inSamples[i] == null) ? -1
+					: audioMixer.getAudioLevel(inStreams[i].inDataSourceDesc.inDataSource);
+		}
+		mixMinusEngine.mixTotal(inSamples, inLevels, maxInSampleCount);
 		for (AudioMixingPushBufferStream outStream : outStreams)
 			setInSamples(outStream, inSampleDesc, maxInSampleCount);
 
 		/*
-		 * The input samples have already been delivered to the output streams and are no longer
+		 * The input samples have already been mixed for the output streams and are no longer
 		 * necessary.
 		 */
 		for (int i = 0; i < inSamples.length; i++) {
@@ -9,7 +9,6 @@ import org.atalk.impl.neomedia.control.ControlsAdapter;
 import org.atalk.util.*;
 
 import java.io.IOException;
-import java.util.Arrays;
 
 import javax.media.*;
 import javax.media.format.*;
@@ -31,32 +30,6 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 	 */
 	private static final Logger logger = Logger.getLogger(AudioMixingPushBufferStream.class);
 
-	/**
-	 * Gets the maximum possible value for an audio sample of a specific <tt>AudioFormat</tt>.
-	 *
-	 * @param outFormat
-	 * 		the <tt>AudioFormat</tt> of which to get the maximum possible value for an audio
-	 * 		sample
-	 * @return the maximum possible value for an audio sample of the specified <tt>AudioFormat</tt>
-	 * @throws UnsupportedFormatException
-	 * 		if the specified <tt>outFormat</tt> is not supported by the underlying implementation
-	 */
-	private static int getMaxOutSample(AudioFormat outFormat)
-			throws UnsupportedFormatException
-	{
-		switch (outFormat.getSampleSizeInBits()) {
-			case 8:
-				return Byte.MAX_VALUE;
-			case 16:
-				return Short.MAX_VALUE;
-			case 32:
-				return Integer.MAX_VALUE;
-			case 24:
-			default:
-				throw new UnsupportedFormatException("Format.getSampleSizeInBits()", outFormat);
-		}
-	}
-
 	/**
 	 * The <tt>AudioMixerPushBufferStream</tt> which reads data from the input <tt>DataSource</tt>s
 	 * and pushes it to this instance to be mixed.
@@ -77,32 +50,25 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 	private final AudioMixingPushBufferDataSource dataSource;
 
 	/**
-	 * The collection of input audio samples still not mixed and read through this
-	 * <tt>AudioMixingPushBufferStream</tt>.
+	 * The mix of the input audio samples computed by the <tt>AudioMixerPushBufferStream</tt> for
+	 * this instance and still not read through this <tt>AudioMixingPushBufferStream</tt>.
 	 */
-	private short[][] inSamples;
+	private short[] mix;
 
 	/**
-	 * The maximum number of per-stream audio samples available through <tt>inSamples</tt>.
+	 * The number of audio samples available through {@link #mix}.
 	 */
-	private int maxInSampleCount;
-
-	/**
-	 * The audio samples output by the last invocation of
-	 * {@link #mix(short[][], AudioFormat, int)}.
-	 * Cached in order to reduce allocations and garbage collection.
-	 */
-	private short[] outSamples;
+	private int mixSampleCount;
 
 	/**
 	 * The <tt>Object</tt> which synchronizes the access to the data to be read from this
-	 * <tt>PushBufferStream</tt> i.e. to {@link #inSamples}, {@link #maxInSampleCount} and
+	 * <tt>PushBufferStream</tt> i.e. to {@link #mix}, {@link #mixSampleCount} and
 	 * {@link #timeStamp}.
 	 */
 	private final Object readSyncRoot = new Object();
 
 	/**
-	 * The time stamp of {@link #inSamples} to be reported in the specified <tt>Buffer</tt> when
+	 * The time stamp of {@link #mix} to be reported in the specified <tt>Buffer</tt> when
 	 * data is read from this instance.
 	 */
 	private long timeStamp = Buffer.TIME_UNKNOWN;
@@ -133,15 +99,6 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 		this.dataSource = dataSource;
 	}
 
-	private short[] allocateOutSamples(int minSize)
-	{
-		short[] outSamples = this.outSamples;
-
-		if ((outSamples == null) || (outSamples.length < minSize))
-			this.outSamples = outSamples = new short[minSize];
-		return outSamples;
-	}
-
 	/**
 	 * Implements {@link SourceStream#endOfStream()}. Delegates to the wrapped
 	 * <tt>AudioMixerPushBufferStream</tt> because this instance is just a facet to it.
@@ -152,7 +109,7 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 	public boolean endOfStream()
 	{
 		/*
-		 * TODO If the inSamples haven't been consumed yet, don't report the end of this stream
+		 * TODO If the mix hasn't been consumed yet, don't report the end of this stream
 		 * even if the wrapped stream has reached its end.
 		 */
 		return audioMixerStream.endOfStream();
@@ -208,87 +165,8 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 	}
 
 	/**
-	 * Mixes as in audio mixing a specified collection of audio sample sets and returns the
-	 * resulting mix audio sample set in a specific <tt>AudioFormat</tt>.
-	 *
-	 * @param inSamples
-	 * 		the collection of audio sample sets to be mixed into one audio sample set in the sense
-	 * 		of audio mixing
-	 * @param outFormat
-	 * 		the <tt>AudioFormat</tt> in which the resulting mix audio sample set is to be
-	 * 		produced. The <tt>format</tt> property of the specified <tt>outBuffer</tt> is expected
-	 * 		to be set to the same value but it is provided as a method argument in order to avoid
-	 * 		casting from <tt>Format</tt> to <tt>AudioFormat</tt> .
-	 * @param outSampleCount
-	 * 		the size of the resulting mix audio sample set to be produced
-	 * @return the resulting audio sample set of the audio mixing of the specified input audio
-	 * sample sets
-	 */
-	private short[] mix(short[][] inSamples, AudioFormat outFormat, int outSampleCount)
-	{
-		short[] outSamples;
-
-		/*
-		 * The trivial case of performing mixing the samples of a single stream. Then there is
-		 * nothing to mix and the input becomes the output.
-		 */
-		if ((inSamples.length == 1) || (inSamples[1] == null)) {
-			short[] inStreamSamples = inSamples[0];
-			int inStreamSampleCount;
-
-			if (inStreamSamples == null) {
-				inStreamSampleCount = 0;
-				outSamples = allocateOutSamples(outSampleCount);
-			}
-			else if (inStreamSamples.length < outSampleCount) {
-				inStreamSampleCount = inStreamSamples.length;
-				outSamples = allocateOutSamples(outSampleCount);
-				System.arraycopy(inStreamSamples, 0, outSamples, 0, inStreamSampleCount);
-			}
-			else {
-				inStreamSampleCount = outSampleCount;
-				outSamples = inStreamSamples;
-			}
-			if (inStreamSampleCount != outSampleCount) {
-				Arrays.fill(outSamples, inStreamSampleCount, outSampleCount, (short) 0);
-			}
-			return outSamples;
-		}
-
-		outSamples = allocateOutSamples(outSampleCount);
-		Arrays.fill(outSamples, 0, outSampleCount, (short) 0);
-
-		float maxOutSample;
-
-		try {
-			maxOutSample = getMaxOutSample(outFormat);
-		}
-		catch (UnsupportedFormatException ufex) {
-			throw new UnsupportedOperationException(ufex);
-		}
-
-		for (short[] inStreamSamples : inSamples) {
-			if (inStreamSamples != null) {
-
-				int inStreamSampleCount = Math.min(inStreamSamples.length, outSampleCount);
-				if (inStreamSampleCount != 0) {
-					for (int i = 0; i < inStreamSampleCount; i++) {
-						int inStreamSample = inStreamSamples[i];
-						int outSample = outSamples[i];
-
-						outSamples[i] = (short) (inStreamSample + outSample
-								- Math.round(inStreamSample * (outSample / maxOutSample)));
-					}
-				}
-			}
-		}
-		return outSamples;
-	}
-
-	/**
-	 * Implements {@link PushBufferStream#read(Buffer)}. If <tt>inSamples</tt> are available, mixes
-	 * them and writes the mix to the specified <tt>Buffer</tt> performing the necessary data type
-	 * conversions.
+	 * Implements {@link PushBufferStream#read(Buffer)}. If a mix is available, writes it to the
+	 * specified <tt>Buffer</tt> performing the necessary data type conversions.
 	 *
 	 * @param buffer
 	 * 		the <tt>Buffer</tt> to receive the data read from this instance
@@ -298,31 +176,30 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 	public void read(Buffer buffer)
 			throws IOException
 	{
-		short[][] inSamples;
-		int maxInSampleCount;
+		short[] outSamples;
+		int outSampleCount;
 		long timeStamp;
 
 		synchronized (readSyncRoot) {
-			inSamples = this.inSamples;
-			maxInSampleCount = this.maxInSampleCount;
+			outSamples = this.mix;
+			outSampleCount = this.mixSampleCount;
 			timeStamp = this.timeStamp;
 
-			this.inSamples = null;
-			this.maxInSampleCount = 0;
+			this.mix = null;
+			this.mixSampleCount = 0;
 			// For the purposes of debugging, we want to have the last known
 			// value of the field timeStamp at all times. The reset of the
-			// values of the fields inSamples and/or maxInSampleCount should suffice.
+			// values of the fields mix and/or mixSampleCount should suffice.
 			// this.timeStamp = Buffer.TIME_UNKNOWN;
 		}
 
-		if ((inSamples == null) || (inSamples.length == 0) || (maxInSampleCount <= 0)) {
+		if ((outSamples == null) || (outSampleCount <= 0)) {
+			audioMixerStream.deallocateShortArray(outSamples);
 			buffer.setDiscard(true);
 			return;
 		}
 
 		AudioFormat outFormat = getFormat();
-		short[] outSamples = mix(inSamples, outFormat, maxInSampleCount);
-		int outSampleCount = Math.min(maxInSampleCount, outSamples.length);
 
 		if (Format.byteArray.equals(outFormat.getDataType())) {
 			int outLength;
@@ -359,28 +236,34 @@ public class AudioMixingPushBufferStream extends ControlsAdapter
 		else {
 			throw new UnsupportedOperationException("AudioMixingPushBufferStream.read(Buffer)");
 		}
+		audioMixerStream.deallocateShortArray(outSamples);
 	}
 
 	/**
-	 * Sets the collection of audio sample sets to be mixed in the sense of audio mixing by this
-	 * stream when data is read from it. Triggers a push to the clients of this stream.
+	 * Sets the mix of the input audio samples to be output by this stream when data is read from
+	 * it. Triggers a push to the clients of this stream. The ownership of <tt>mix</tt> passes to
+	 * this instance which returns it to the <tt>AudioMixerPushBufferStream</tt> once read or
+	 * superseded.
 	 *
-	 * @param inSamples
-	 * 		the collection of audio sample sets to be mixed by this stream when data is read from
-	 * 		it
-	 * @param maxInSampleCount
-	 * 		the maximum number of per-stream audio samples available through <tt>inSamples</tt>
+	 * @param mix
+	 * 		the mix of the input audio samples to be output by this stream
+	 * @param mixSampleCount
+	 * 		the number of audio samples available through <tt>mix</tt>
 	 * @param timeStamp
-	 * 		the time stamp of <tt>inSamples</tt> to be reported in the specified <tt>Buffer</tt>
-	 * 		when data is read from this instance
+	 * 		the time stamp of <tt>mix</tt> to be reported in the specified <tt>Buffer</tt> when
+	 * 		data is read from this instance
 	 */
-	void setInSamples(short[][] inSamples, int maxInSampleCount, long timeStamp)
+	void setMix(short[] mix, int mixSampleCount, long timeStamp)
 	{
+		short[] unread;
+
 		synchronized (readSyncRoot) {
-			this.inSamples = inSamples;
-			this.maxInSampleCount = maxInSampleCount;
+			unread = this.mix;
+			this.mix = mix;
+			this.mixSampleCount = mixSampleCount;
 			this.timeStamp = timeStamp;
 		}
+		audioMixerStream.deallocateShortArray(unread);
 
 		BufferTransferHandler transferHandler = this.transferHandler;
 		if (transferHandler != null)
@@ -0,0 +1,284 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.conference;
+
+import org.atalk.service.neomedia.event.SimpleAudioLevelListener;
+
+import java.util.Arrays;
+
+/**
+ * Mixes the audio samples of the input streams of an <tt>AudioMixer</tt> for all of its output
+ * streams in time linear in the number of participants. The samples of all (non-silent) inputs
+ * are summed once per frame into an <tt>int</tt> accumulator and the mix of every output is
+ * derived from the total by subtracting the inputs the output is not to hear (typically its own)
+ * i.e. the so-called mix-minus. The result is limited to the range of 16-bit samples only after
+ * the subtraction so that an input which saturates the total is not distorted in the mixes which
+ * exclude it.
+ * <p>
+ * The limiting is soft: a mix is passed through unchanged up to three quarters of full scale and
+ * compressed smoothly into the remaining quarter above that, so that the sum of several loud
+ * inputs is squashed rather than cut flat. There is no gain control across samples though, so a
+ * sustained overload is still audibly compressed.
+ * <p>
+ * An input is considered silent and is left out of the total when its audio level, as measured
+ * already for the audio level indications of the conference, is known and at or below a specific
+ * level. The level of an input is that of its previous frames so an input which starts to talk
+ * may be left out of the mixes for the duration of a frame; the default level is far below
+ * audible speech for that reason. The samples themselves are never inspected.
+ * <p>
+ * Instances of this class are not thread-safe. An instance is meant to be used by the single
+ * thread which pushes the input samples of an <tt>AudioMixerPushBufferStream</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+class MixMinusEngine
+{
+	/**
+	 * The absolute value of a mixed sample above which {@link #limit(int)} compresses it.
+	 */
+	private static final int KNEE = 3 * Short.MAX_VALUE / 4;
+
+	/**
+	 * The range of 16-bit sample values above {@link #KNEE}.
+	 */
+	private static final int HEADROOM = Short.MAX_VALUE - KNEE;
+
+	/**
+	 * The audio level at or below which an input is considered silent. The audio levels are those
+	 * of <tt>SimpleAudioLevelListener</tt> i.e. from {@link SimpleAudioLevelListener#MIN_LEVEL} for
+	 * silence to {@link SimpleAudioLevelListener#MAX_LEVEL} for 0 dBov.
+	 */
+	private final int silenceLevel;
+
+	/**
+	 * The sum of the samples of the contributing inputs of the current frame.
+	 */
+	private int[] total = new int[0];
+
+	/**
+	 * The number of valid elements of {@link #total}. Elements beyond it are zero.
+	 */
+	private int totalSampleCount;
+
+	/**
+	 * The flags which indicate which of the inputs of the current frame contribute to
+	 * {@link #total}.
+	 */
+	private boolean[] contributing = new boolean[0];
+
+	/**
+	 * The number of inputs of the current frame which contribute to {@link #total}.
+	 */
+	private int contributingCount;
+
+	/**
+	 * Initializes a new <tt>MixMinusEngine</tt> instance.
+	 *
+	 * @param silenceLevel
+	 * 		the audio level at or below which an input is considered silent and is left out of the
+	 * 		mix or a negative value to mix all inputs
+	 */
+	MixMinusEngine(int silenceLevel)
+	{
+		this.silenceLevel = silenceLevel;
+	}
+
+	/**
+	 * Sums the samples of the non-silent inputs of a frame into the total of this instance.
+	 *
+	 * @param inSamples
+	 * 		the samples of the inputs of the frame; a <tt>null</tt> element denotes a silent
+	 * 		input. An input may be shorter than <tt>sampleCount</tt> in which case it is padded
+	 * 		with silence.
+	 * @param inLevels
+	 * 		the audio levels of the inputs of the frame, <tt>-1</tt> for an input whose level is
+	 * 		not known, or <tt>null</tt> if no level is known
+	 * @param sampleCount
+	 * 		the number of samples of the frame
+	 * @return the number of inputs which contribute to the total
+	 */
+	int mixTotal(short[][] inSamples, int[] inLevels, int sampleCount)
+	{
+		if (total.length < sampleCount)
+			total = new int[sampleCount];
+		else
+			Arrays.fill(total, 0, Math.max(totalSampleCount, sampleCount), 0);
+		if (contributing.length < inSamples.length)
+			contributing = new boolean[inSamples.length];
+
+		int[] total = this.total;
+		int count = 0;
+
+		for (int i = 0; i < inSamples.length; i++) {
+			short[] samples = inSamples[i];
+			boolean contributes = false;
+
+			if (samples != null && !isSilent(inLevels, i)) {
+				int length = Math.min(samples.length, sampleCount);
+
+				for (int s = 0; s < length; s++)
+					total[s] += samples[s];
+				contributes = true;
+				count++;
+			}
+			contributing[i] = contributes;
+		}
+		totalSampleCount = sampleCount;
+		contributingCount = count;
+		return count;
+	}
+
+	/**
+	 * Determines whether a specific input of the current frame contributes to the total.
+	 *
+	 * @param inIndex
+	 * 		the index of the input in the array given to {@link #mixTotal(short[][], int[], int)}
+	 * @return <tt>true</tt> if the input contributes to the total; otherwise, <tt>false</tt>
+	 */
+	boolean isContributing(int inIndex)
+	{
+		return (inIndex < contributing.length) && contributing[inIndex];
+	}
+
+	/**
+	 * Gets the number of inputs of the current frame which contribute to the total.
+	 *
+	 * @return the number of inputs of the current frame which contribute to the total
+	 */
+	int getContributingCount()
+	{
+		return contributingCount;
+	}
+
+	/**
+	 * Computes the mix of an output of the current frame which is the total less specific inputs
+	 * plus an optional signal which is heard by the output only (e.g. an inband DTMF tone).
+	 *
+	 * @param inSamples
+	 * 		the samples of the inputs of the frame as given to
+	 * 		{@link #mixTotal(short[][], int[], int)}
+	 * @param excluded
+	 * 		the indices in <tt>inSamples</tt> of the inputs to exclude from the mix
+	 * @param excludedCount
+	 * 		the number of valid elements of <tt>excluded</tt>
+	 * @param extra
+	 * 		the samples to add to the mix or <tt>null</tt>
+	 * @param outSamples
+	 * 		the array to write the mix into; its length must be at least <tt>sampleCount</tt>
+	 * @param sampleCount
+	 * 		the number of samples of the mix
+	 */
+	void mixMinus(short[][] inSamples, int[] excluded, int excludedCount, short[] extra,
+			short[] outSamples, int sampleCount)
+	{
+		int[] total = this.total;
+		int length = Math.min(totalSampleCount, sampleCount);
+
+		/*
+		 * Exclude the inputs which have not contributed to the total in the first place and put
+		 * the remaining ones at the head of excluded so that the loops below can be simple.
+		 */
+		int e = 0;
+
+		for (int i = 0; i < excludedCount; i++) {
+			int inIndex = excluded[i];
+
+			if (isContributing(inIndex))
+				excluded[e++] = inIndex;
+		}
+
+		if (e == 0) {
+			for (int s = 0; s < length; s++)
+				outSamples[s] = limit(total[s]);
+		}
+		else if (e == 1) {
+			short[] own = inSamples[excluded[0]];
+			int ownLength = Math.min(own.length, length);
+			int s = 0;
+
+			for (; s < ownLength; s++)
+				outSamples[s] = limit(total[s] - own[s]);
+			for (; s < length; s++)
+				outSamples[s] = limit(total[s]);
+		}
+		else {
+			for (int s = 0; s < length; s++) {
+				int sample = total[s];
+
+				for (int i = 0; i < e; i++) {
+					short[] samples = inSamples[excluded[i]];
+
+					if (s < samples.length)
+						sample -= samples[s];
+				}
+				outSamples[s] = limit(sample);
+			}
+		}
+		if (length < sampleCount)
+			Arrays.fill(outSamples, length, sampleCount, (short) 0);
+
+		if (extra != null) {
+			int extraLength = Math.min(extra.length, sampleCount);
+
+			/*
+			 * The mix has been limited already so the addition may be limited twice. The extra
+			 * signal is not expected in a mix with more than a few contributors though.
+			 */
+			for (int s = 0; s < extraLength; s++)
+				outSamples[s] = limit(outSamples[s] + extra[s]);
+		}
+	}
+
+	/**
+	 * Limits a sum of 16-bit samples to the range of 16-bit samples. Sums within {@link #KNEE}
+	 * are returned as they are and the excess of the others is compressed into
+	 * {@link #HEADROOM} with a slope of <tt>1</tt> at the knee.
+	 *
+	 * @param sample
+	 * 		the sum of 16-bit samples to limit
+	 * @return the 16-bit sample <tt>sample</tt> is limited to
+	 */
+	static short limit(int sample)
+	{
+		if (sample > KNEE)
+			return (short) (KNEE + compress(sample - KNEE));
+		if (sample < -KNEE)
+			return (short) -(KNEE + compress(-sample - KNEE));
+		return (short) sample;
+	}
+
+	/**
+	 * Compresses the excess of a sum of samples over {@link #KNEE} into {@link #HEADROOM}.
+	 *
+	 * @param excess
+	 * 		the positive excess of the absolute value of a sum of samples over <tt>KNEE</tt>
+	 * @return the compressed excess, less than <tt>HEADROOM</tt>
+	 */
+	private static int compress(int excess)
+	{
+		return (int) ((long) excess * HEADROOM / (excess + HEADROOM));
+	}
+
+	/**
+	 * Determines whether a specific input is silent according to its audio level.
+	 *
+	 * @param inLevels
+	 * 		the audio levels of the inputs or <tt>null</tt>
+	 * @param inIndex
+	 * 		the index of the input
+	 * @return <tt>true</tt> if the level of the input is known and at or below
+	 * 		{@link #silenceLevel}; otherwise, <tt>false</tt>
+	 */
+	private boolean isSilent(int[] inLevels, int inIndex)
+	{
+		if (inLevels == null || inIndex >= inLevels.length)
+			return false;
+
+		int level = inLevels[inIndex];
+
+		return (level >= 0) && (level <= silenceLevel);
+	}
+}
@@ -11,9 +11,11 @@ import javax.media.format.*;
 
 import org.atalk.impl.neomedia.audiolevel.AudioLevelEffect;
 import org.atalk.impl.neomedia.audiolevel.AudioLevelEffect2;
+import org.atalk.impl.neomedia.jitterbuffer.JitterBufferRenderer;
 import org.atalk.impl.neomedia.jmfext.media.renderer.audio.AbstractAudioRenderer;
 import org.atalk.service.neomedia.VolumeControl;
 import org.atalk.service.neomedia.event.SimpleAudioLevelListener;
+import org.atalk.service.neomedia.stats.JitterBufferStats;
 import org.atalk.util.Logger;
 
 /**
@@ -32,6 +34,17 @@ public class AudioMediaDeviceSession extends MediaDeviceSession
 	 */
 	private static final Logger logger = Logger.getLogger(AudioMediaDeviceSession.class);
 
+	/**
+	 * The indicator which determines whether the received audio is to be played out through an
+	 * <tt>AdaptiveJitterBuffer</tt> rather than directly by the <tt>Renderer</tt>s of the players.
+	 */
+	private boolean adaptiveJitterBufferEnabled = false;
+
+	/**
+	 * The <tt>JitterBufferRenderer</tt> created last by this instance or <tt>null</tt>.
+	 */
+	private volatile JitterBufferRenderer jitterBufferRenderer;
+
 	/**
 	 * The <tt>Effect</tt> that we will register with our <tt>DataSource</tt> in order to measure
 	 * the audio levels of the local user.
@@ -81,6 +94,7 @@ public class AudioMediaDeviceSession extends MediaDeviceSession
 		AudioMediaDeviceSession amds = (AudioMediaDeviceSession) deviceSession;
 		setStreamAudioLevelListener(amds.streamAudioLevelEffect.getAudioLevelListener());
 		setLocalUserAudioLevelListener(amds.localUserAudioLevelEffect.getAudioLevelListener());
+		setAdaptiveJitterBufferEnabled(amds.isAdaptiveJitterBufferEnabled());
 	}
 
 	/**
@@ -88,17 +102,40 @@ public class AudioMediaDeviceSession extends MediaDeviceSession
 	 *
 	 * Overrides the super implementation in order to configure the <tt>VolumeControl</tt> of the
 	 * returned <tt>Renderer</tt> for the purposes of having call/telephony conference-specific
-	 * volume (levels).
+	 * volume (levels) and to play the received audio out through an adaptive jitter buffer if
+	 * enabled.
 	 */
 	@Override
 	protected Renderer createRenderer(Player player, TrackControl trackControl)
 	{
 		Renderer renderer = super.createRenderer(player, trackControl);
-		if (renderer != null)
+		if (renderer != null) {
 			setVolumeControl(renderer, outputVolumeControl);
+			if (adaptiveJitterBufferEnabled) {
+				JitterBufferRenderer jitterBufferRenderer = new JitterBufferRenderer(renderer);
+
+				this.jitterBufferRenderer = jitterBufferRenderer;
+				renderer = jitterBufferRenderer;
+			}
+		}
 		return renderer;
 	}
 
+	/**
+	 * Gets the statistics of the adaptive jitter buffer through which the received audio is played
+	 * out.
+	 *
+	 * @return the statistics of the adaptive jitter buffer through which the received audio is
+	 * played out or <tt>null</tt> if the audio is not played out through an adaptive jitter
+	 * buffer (yet)
+	 */
+	public JitterBufferStats getJitterBufferStats()
+	{
+		JitterBufferRenderer jitterBufferRenderer = this.jitterBufferRenderer;
+
+		return (jitterBufferRenderer == null) ? null : jitterBufferRenderer.getJitterBuffer();
+	}
+
 	/**
 	 * Returns the last audio level that was measured by this device session for the specified
 	 * <tt>ssrc</tt>.
@@ -235,6 +272,30 @@ public class AudioMediaDeviceSession extends MediaDeviceSession
 		trackControl.setCodecChain(new Codec[] { streamAudioLevelEffect });
 	}
 
+	/**
+	 * Determines whether the received audio is to be played out through an adaptive jitter buffer.
+	 *
+	 * @return <tt>true</tt> if the received audio is to be played out through an adaptive jitter
+	 * buffer; otherwise, <tt>false</tt>
+	 */
+	public boolean isAdaptiveJitterBufferEnabled()
+	{
+		return adaptiveJitterBufferEnabled;
+	}
+
+	/**
+	 * Sets whether the received audio is to be played out through an adaptive jitter buffer. Takes
+	 * effect for the players created after the call only.
+	 *
+	 * @param adaptiveJitterBufferEnabled
+	 *        <tt>true</tt> to play the received audio out through an adaptive jitter buffer;
+	 *        otherwise, <tt>false</tt>
+	 */
+	public void setAdaptiveJitterBufferEnabled(boolean adaptiveJitterBufferEnabled)
+	{
+		this.adaptiveJitterBufferEnabled = adaptiveJitterBufferEnabled;
+	}
+
 	/**
 	 * Sets the <tt>SimpleAudioLevelListener</tt> that this session should be notifying about
 	 * changes in local audio level related information. This class only supports a single listener
@@ -288,6 +288,24 @@ public class AudioMixerMediaDevice extends AbstractMediaDevice
 						super.connect(dataSource, inputDataSource);
 				}
 
+				/**
+				 * {@inheritDoc}
+				 *
+				 * Reports the levels of the <tt>ReceiveStream</tt>s which are measured for their
+				 * stream audio level listeners.
+				 */
+				@Override
+				protected int getAudioLevel(DataSource dataSource)
+				{
+					if (dataSource instanceof ReceiveStreamPushBufferDataSource) {
+						ReceiveStream receiveStream = ((ReceiveStreamPushBufferDataSource)
+								dataSource).getReceiveStream();
+
+						return audioLevelCache.getLevel(0xFFFFFFFFL & receiveStream.getSSRC());
+					}
+					return -1;
+				}
+
 				@Override
 				protected void read(PushBufferStream stream, Buffer buffer, DataSource dataSource)
 						throws IOException
@@ -681,6 +699,8 @@ public class AudioMixerMediaDevice extends AbstractMediaDevice
 							dispatcher.setAudioLevelCache(null, -1);
 						} finally {
 							streamAudioLevelListeners.remove(stream);
+							// The mixer must not take a stale level for the current one.
+							audioLevelCache.removeLevel(0xFFFFFFFFL & stream.getSSRC());
 						}
 					}
 				}
@@ -0,0 +1,620 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import org.atalk.service.neomedia.stats.JitterBufferStats;
+import org.atalk.util.Logger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Implements an adaptive jitter buffer for decoded 16-bit linear audio. Frames are inserted by
+ * the thread which receives them into a lock-free array of slots indexed by their sequence numbers
+ * and are played out one at a time by a thread which is paced by the audio device. The delays of
+ * the arrivals of the frames relative to the least delayed one of the last
+ * {@link #MIN_DELAY_WINDOW} are accounted into a <tt>DelayHistogram</tt> which determines how many
+ * frames the buffer is to hold. Instead of dropping frames or inserting silence, the
+ * playout delay converges to the target by stretching frames with <tt>Wsola</tt>: a frame is
+ * expanded by one pitch period while the buffer holds less than the target and accelerated by one
+ * pitch period while it holds more. Frames which are missing when they are due are concealed by
+ * extending the audio played last.
+ * <p>
+ * Exactly one thread may call {@link #insert(long, short[], int, long)} and exactly one (other)
+ * thread may call {@link #playout()} at any one time. The statistics may be read by any thread.
+ *
+ * @author Eng Chong Meng
+ */
+public class AdaptiveJitterBuffer implements JitterBufferStats
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>AdaptiveJitterBuffer</tt> class and its instances for
+	 * logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(AdaptiveJitterBuffer.class);
+
+	/**
+	 * The number of slots of a jitter buffer i.e. about 5 seconds of 20 ms frames. Must be a power
+	 * of two.
+	 */
+	private static final int SLOT_COUNT = 256;
+
+	/**
+	 * The mask which maps a sequence number to the index of its slot.
+	 */
+	private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+	/**
+	 * The quantile of the relative delays which the playout delay is to absorb.
+	 */
+	private static final double DELAY_QUANTILE = 0.95;
+
+	/**
+	 * The maximum number of frames the jitter buffer is to adapt to.
+	 */
+	private static final int MAX_TARGET_LEVEL = 50;
+
+	/**
+	 * The number of consecutive frames which are concealed before the concealment fades out
+	 * completely and the jitter buffer starts buffering anew.
+	 */
+	private static final int MAX_CONCEALED_FRAMES = 10;
+
+	/**
+	 * The number of frames by which the buffered frames have to exceed the target before the
+	 * playout is accelerated. Prevents the playout from alternating between expansion and
+	 * acceleration.
+	 */
+	private static final int ACCELERATE_HYSTERESIS = 1;
+
+	/**
+	 * The number of the most recent frames among which the least delayed one is the reference of
+	 * the relative delays i.e. about 1.3 seconds of 20 ms frames. Must be a power of two.
+	 */
+	private static final int MIN_DELAY_WINDOW = 64;
+
+	/**
+	 * The value of a sequence number (of a <tt>javax.media.Buffer</tt>) which is not known.
+	 */
+	public static final long SEQUENCE_UNKNOWN = Long.MAX_VALUE - 1;
+
+	/**
+	 * A frame of audio held by a slot of a jitter buffer.
+	 */
+	private static class Frame
+	{
+		/**
+		 * The extended sequence number of the frame.
+		 */
+		final long seq;
+
+		/**
+		 * The samples of the frame.
+		 */
+		final short[] samples;
+
+		/**
+		 * The number of valid elements of {@link #samples}.
+		 */
+		final int length;
+
+		Frame(long seq, short[] samples, int length)
+		{
+			this.seq = seq;
+			this.samples = samples;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * The number of interleaved channels of the audio.
+	 */
+	private final int channels;
+
+	/**
+	 * The number of sample frames per second of the audio.
+	 */
+	private final int sampleRate;
+
+	/**
+	 * The slots which hold the frames which have been inserted and not played out yet. A frame with
+	 * sequence number <tt>seq</tt> resides at index <tt>seq & SLOT_MASK</tt>.
+	 */
+	private final AtomicReferenceArray<Frame> slots = new AtomicReferenceArray<>(SLOT_COUNT);
+
+	/**
+	 * The histogram of the relative delays of the inserted frames which determines the number
+	 * of frames to buffer. Updated by the inserting thread only.
+	 */
+	private final DelayHistogram delayHistogram
+			= new DelayHistogram(DELAY_QUANTILE, 1, MAX_TARGET_LEVEL);
+
+	/**
+	 * The time stretcher which adapts the playout delay and conceals missing frames. Used by the
+	 * playout thread only.
+	 */
+	private final Wsola wsola;
+
+	/**
+	 * The number of samples of the frame inserted last. Used as the duration of frames which are
+	 * concealed or buffered.
+	 */
+	private volatile int frameLength;
+
+	/**
+	 * The highest extended sequence number which has been inserted or <tt>-1</tt>.
+	 */
+	private volatile long highestSeq = -1;
+
+	/**
+	 * The lowest extended sequence number which has been inserted since the jitter buffer started
+	 * buffering or <tt>-1</tt>.
+	 */
+	private volatile long firstSeq = -1;
+
+	/**
+	 * The extended sequence number of the next frame to be played out, published by the playout
+	 * thread so that the inserting thread may discard late frames. <tt>-1</tt> until the playout
+	 * starts.
+	 */
+	private volatile long playoutSeq = -1;
+
+	/**
+	 * The sequence number (as it is given to {@link #insert(long, short[], int, long)}) of the
+	 * frame inserted last or <tt>-1</tt>. Used by the inserting thread only.
+	 */
+	private long lastSeq = -1;
+
+	/**
+	 * The extended sequence number of the frame inserted last. Used by the inserting thread only.
+	 */
+	private long lastExtendedSeq = -1;
+
+	/**
+	 * The arrival times of the most recent frames less the durations of the frames which precede
+	 * them in the sequence i.e. the times at which the first frame would have arrived had it been
+	 * delayed as much. Used by the inserting thread only.
+	 */
+	private final long[] arrivalBases = new long[MIN_DELAY_WINDOW];
+
+	/**
+	 * The number of elements written into {@link #arrivalBases}. Used by the inserting thread
+	 * only.
+	 */
+	private long arrivalBaseCount;
+
+	/**
+	 * The sequence number to assign to the next frame inserted without one. Used by the inserting
+	 * thread only.
+	 */
+	private long localSeq;
+
+	/**
+	 * The extended sequence number of the next frame to be played out or <tt>-1</tt>. Used by the
+	 * playout thread only.
+	 */
+	private long nextSeq = -1;
+
+	/**
+	 * The indicator which determines whether the jitter buffer is waiting for the target number of
+	 * frames to arrive before (re)starting the playout. Used by the playout thread only.
+	 */
+	private boolean buffering = true;
+
+	/**
+	 * The number of frames which have been concealed in a row. Used by the playout thread only.
+	 */
+	private int concealedRun;
+
+	/**
+	 * The samples output by the last call to {@link #playout()}.
+	 */
+	private short[] output = new short[0];
+
+	/**
+	 * The number of valid elements of {@link #output}.
+	 */
+	private int outputLength;
+
+	/*
+	 * The statistics. Every counter is written by a single thread (the inserting one or the playout
+	 * one) so volatile suffices for the readers.
+	 */
+	private volatile int playoutDelayMs;
+
+	private volatile long playedFrames;
+
+	private volatile long concealedFrames;
+
+	private volatile long expandedFrames;
+
+	private volatile long acceleratedFrames;
+
+	private volatile long latePackets;
+
+	private volatile long overflowPackets;
+
+	/**
+	 * Initializes a new <tt>AdaptiveJitterBuffer</tt> instance.
+	 *
+	 * @param sampleRate
+	 * 		the number of sample frames per second of the audio
+	 * @param channels
+	 * 		the number of interleaved channels of the audio
+	 */
+	public AdaptiveJitterBuffer(int sampleRate, int channels)
+	{
+		this.sampleRate = sampleRate;
+		this.channels = Math.max(channels, 1);
+		frameLength = (sampleRate / 50) * this.channels;
+		wsola = new Wsola(sampleRate, this.channels);
+	}
+
+	/**
+	 * Inserts a frame into this jitter buffer.
+	 *
+	 * @param seq
+	 * 		the (RTP) sequence number of the frame or {@link #SEQUENCE_UNKNOWN} if it is not known,
+	 * 		in which case the frames are assumed to be inserted in order without any loss
+	 * @param samples
+	 * 		the interleaved samples of the frame. The ownership passes to this jitter buffer.
+	 * @param length
+	 * 		the number of samples of the frame
+	 * @param arrivalNanos
+	 * 		the time in nanoseconds (as returned by {@link System#nanoTime()}) at which the frame
+	 * 		arrived
+	 */
+	public void insert(long seq, short[] samples, int length, long arrivalNanos)
+	{
+		if (length <= 0)
+			return;
+
+		long extendedSeq = extendSeq(seq);
+		long playoutSeq = this.playoutSeq;
+
+		if (playoutSeq >= 0 && extendedSeq < playoutSeq) {
+			latePackets++;
+			return;
+		}
+
+		frameLength = length;
+		updateDelayHistogram(extendedSeq, length, arrivalNanos);
+
+		Frame frame = new Frame(extendedSeq, samples, length);
+		Frame overwritten = slots.getAndSet((int) extendedSeq & SLOT_MASK, frame);
+
+		if (overwritten != null && overwritten.seq != extendedSeq)
+			overflowPackets++;
+		if (firstSeq < 0 || extendedSeq < firstSeq)
+			firstSeq = extendedSeq;
+		if (extendedSeq > highestSeq)
+			highestSeq = extendedSeq;
+	}
+
+	/**
+	 * Plays out the next frame of this jitter buffer. The output is available through
+	 * {@link #getOutput()} and {@link #getOutputLength()}. Its duration is that of a frame unless
+	 * it has been stretched.
+	 */
+	public void playout()
+	{
+		int frameLength = this.frameLength;
+		long highestSeq = this.highestSeq;
+		int targetLevel = delayHistogram.getTargetLevel();
+
+		if (nextSeq < 0) {
+			long firstSeq = this.firstSeq;
+
+			if (firstSeq < 0) {
+				outputSilence(frameLength);
+				return;
+			}
+			nextSeq = firstSeq;
+		}
+		else if (highestSeq - nextSeq >= SLOT_COUNT) {
+			// The playout has stalled for longer than the slots can hold. Start over with the
+			// frames which are still held.
+			logger.warn("Jitter buffer overflow, skipping "
+					+ (highestSeq - targetLevel + 1 - nextSeq) + " frames");
+			nextSeq = highestSeq - targetLevel + 1;
+			buffering = true;
+			wsola.reset();
+		}
+
+		// The number of frames from the next one to be played out to the latest one inclusive.
+		int level = (int) Math.max(highestSeq - nextSeq + 1, 0);
+
+		if (buffering) {
+			if (level < targetLevel) {
+				outputSilence(frameLength);
+				updatePlayoutDelay(level, frameLength);
+				return;
+			}
+			buffering = false;
+		}
+
+		int index = (int) nextSeq & SLOT_MASK;
+		Frame frame = slots.get(index);
+
+		if (frame != null && frame.seq == nextSeq && slots.compareAndSet(index, frame, null)) {
+			nextSeq++;
+			playoutSeq = nextSeq;
+
+			short[] samples = frame.samples;
+			int length = frame.length;
+
+			if (concealedRun > 0) {
+				wsola.merge(samples, 0, length, concealGain(concealedRun));
+				concealedRun = 0;
+			}
+
+			// The number of frames which remain buffered after this one.
+			int remaining = level - 1;
+			int stretchedLength = -1;
+
+			ensureOutputCapacity(length + wsola.getMaxExpansion());
+			if (remaining + 1 < targetLevel) {
+				stretchedLength = wsola.expand(samples, 0, length, output);
+				if (stretchedLength >= 0)
+					expandedFrames++;
+			}
+			else if (remaining > targetLevel + ACCELERATE_HYSTERESIS) {
+				stretchedLength = wsola.accelerate(samples, 0, length, output);
+				if (stretchedLength >= 0)
+					acceleratedFrames++;
+			}
+			if (stretchedLength < 0) {
+				System.arraycopy(samples, 0, output, 0, length);
+				outputLength = length;
+			}
+			else
+				outputLength = stretchedLength;
+			wsola.remember(output, 0, outputLength);
+			playedFrames++;
+			updatePlayoutDelay(remaining, length);
+		}
+		else {
+			/*
+			 * The frame is missing. If later frames have arrived and enough are buffered, it is
+			 * most probably lost so move on. Otherwise, it may still arrive late and concealing it
+			 * grows the playout delay by a frame.
+			 */
+			if (level > 1 && level >= targetLevel) {
+				nextSeq++;
+				playoutSeq = nextSeq;
+			}
+
+			ensureOutputCapacity(frameLength);
+			if (concealedRun < MAX_CONCEALED_FRAMES) {
+				wsola.conceal(output, 0, frameLength, concealGain(concealedRun),
+						concealGain(concealedRun + 1));
+				outputLength = frameLength;
+				concealedRun++;
+				concealedFrames++;
+			}
+			else {
+				// The concealment has faded out. Wait for the target number of frames again.
+				outputSilence(frameLength);
+				concealedRun = 0;
+				buffering = true;
+				wsola.reset();
+			}
+			updatePlayoutDelay(level, frameLength);
+		}
+	}
+
+	/**
+	 * Gets the samples output by the last call to {@link #playout()}.
+	 *
+	 * @return the samples output by the last call to {@link #playout()}
+	 */
+	public short[] getOutput()
+	{
+		return output;
+	}
+
+	/**
+	 * Gets the number of samples output by the last call to {@link #playout()}.
+	 *
+	 * @return the number of samples output by the last call to {@link #playout()}
+	 */
+	public int getOutputLength()
+	{
+		return outputLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getPlayoutDelayMs()
+	{
+		return playoutDelayMs;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getTargetDelayMs()
+	{
+		return (int) (1000L * delayHistogram.getTargetLevel() * (frameLength / channels)
+				/ sampleRate);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getPlayedFrames()
+	{
+		return playedFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getConcealedFrames()
+	{
+		return concealedFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getExpandedFrames()
+	{
+		return expandedFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getAcceleratedFrames()
+	{
+		return acceleratedFrames;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getLatePackets()
+	{
+		return latePackets;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getOverflowPackets()
+	{
+		return overflowPackets;
+	}
+
+	/**
+	 * Accounts for the arrival of a frame in {@link #delayHistogram}.
+	 *
+	 * @param extendedSeq
+	 * 		the extended sequence number of the frame
+	 * @param length
+	 * 		the number of samples of the frame
+	 * @param arrivalNanos
+	 * 		the time in nanoseconds at which the frame arrived
+	 */
+	private void updateDelayHistogram(long extendedSeq, int length, long arrivalNanos)
+	{
+		long frameNanos = 1000000000L * (length / channels) / sampleRate;
+
+		if (frameNanos <= 0)
+			return;
+
+		long[] arrivalBases = this.arrivalBases;
+		long arrivalBase = arrivalNanos - extendedSeq * frameNanos;
+
+		arrivalBases[(int) arrivalBaseCount & (MIN_DELAY_WINDOW - 1)] = arrivalBase;
+		arrivalBaseCount++;
+
+		long minArrivalBase = arrivalBase;
+		int count = (int) Math.min(arrivalBaseCount, MIN_DELAY_WINDOW);
+
+		for (int i = 0; i < count; i++) {
+			if (arrivalBases[i] < minArrivalBase)
+				minArrivalBase = arrivalBases[i];
+		}
+		delayHistogram.update(
+				(int) ((arrivalBase - minArrivalBase + frameNanos - 1) / frameNanos));
+	}
+
+	/**
+	 * Converts a sequence number as given to {@link #insert(long, short[], int, long)} into an
+	 * extended sequence number which does not wrap around.
+	 *
+	 * @param seq
+	 * 		the sequence number to extend
+	 * @return the extended sequence number of <tt>seq</tt>
+	 */
+	private long extendSeq(long seq)
+	{
+		long extendedSeq;
+
+		if (seq < 0 || seq == SEQUENCE_UNKNOWN)
+			extendedSeq = localSeq;
+		else if (lastSeq < 0)
+			extendedSeq = (seq <= 0xFFFF) ? (1 << 16) + seq : seq;
+		else if (seq <= 0xFFFF && lastSeq <= 0xFFFF) {
+			// The signed 16-bit distance from the last sequence number handles the wrap around.
+			extendedSeq = lastExtendedSeq + (short) (seq - lastSeq);
+		}
+		else
+			extendedSeq = lastExtendedSeq + (seq - lastSeq);
+		if (seq >= 0 && seq != SEQUENCE_UNKNOWN) {
+			lastSeq = seq;
+			lastExtendedSeq = extendedSeq;
+		}
+		if (extendedSeq >= localSeq)
+			localSeq = extendedSeq + 1;
+		return extendedSeq;
+	}
+
+	/**
+	 * Gets the gain of the concealment after a specific number of frames have been concealed in a
+	 * row. The gain fades out linearly to silence over {@link #MAX_CONCEALED_FRAMES} after the
+	 * first two frames.
+	 *
+	 * @param concealedRun
+	 * 		the number of frames concealed in a row
+	 * @return the gain of the concealment
+	 */
+	private static double concealGain(int concealedRun)
+	{
+		if (concealedRun <= 2)
+			return 1;
+		return Math.max(0, 1 - (double) (concealedRun - 2) / (MAX_CONCEALED_FRAMES - 2));
+	}
+
+	/**
+	 * Ensures that {@link #output} has at least a specific number of elements.
+	 *
+	 * @param length
+	 * 		the minimum number of elements of {@link #output}
+	 */
+	private void ensureOutputCapacity(int length)
+	{
+		if (output.length < length)
+			output = new short[length];
+	}
+
+	/**
+	 * Outputs a frame of silence.
+	 *
+	 * @param length
+	 * 		the number of samples of silence to output
+	 */
+	private void outputSilence(int length)
+	{
+		ensureOutputCapacity(length);
+		for (int i = 0; i < length; i++)
+			output[i] = 0;
+		outputLength = length;
+	}
+
+	/**
+	 * Updates the playout delay published as a statistic.
+	 *
+	 * @param frames
+	 * 		the number of frames which are buffered
+	 * @param frameLength
+	 * 		the number of samples of a frame
+	 */
+	private void updatePlayoutDelay(int frames, int frameLength)
+	{
+		playoutDelayMs = (int) (1000L * frames * (frameLength / channels) / sampleRate);
+	}
+}
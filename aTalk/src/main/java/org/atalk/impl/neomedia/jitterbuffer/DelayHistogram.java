@@ -0,0 +1,141 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+/**
+ * Estimates the number of frames an <tt>AdaptiveJitterBuffer</tt> has to hold in order to absorb
+ * the jitter of the arrivals of the frames. The delay of every frame relative to the least delayed
+ * frame of the recent past, expressed in frame durations, goes into a histogram which forgets past
+ * observations exponentially. The target level covers a specific quantile of the histogram plus
+ * the frame which is being played out.
+ * <p>
+ * Instances of this class are not thread-safe. They are meant to be updated by the thread which
+ * inserts frames into the jitter buffer. The target level is published through a
+ * <tt>volatile</tt> field though and may be read by any thread.
+ *
+ * @author Eng Chong Meng
+ */
+class DelayHistogram
+{
+	/**
+	 * The number of buckets of the histogram. A relative delay of more frames than that is
+	 * accounted into the last bucket.
+	 */
+	static final int BUCKET_COUNT = 64;
+
+	/**
+	 * The factor with which the probabilities of the histogram are multiplied upon every update
+	 * so that observations older than a few thousand frames (i.e. about a minute of 20 ms frames)
+	 * have a negligible weight.
+	 */
+	private static final double FORGET_FACTOR = 0.9993;
+
+	/**
+	 * The probabilities of the relative delays, indexed by the number of frames.
+	 */
+	private final double[] probabilities = new double[BUCKET_COUNT];
+
+	/**
+	 * The quantile of the relative delays which the target level is to cover.
+	 */
+	private final double quantile;
+
+	/**
+	 * The maximum target level.
+	 */
+	private final int maxLevel;
+
+	/**
+	 * The minimum target level.
+	 */
+	private final int minLevel;
+
+	/**
+	 * The number of frames the jitter buffer is to hold as computed by the last update.
+	 */
+	private volatile int targetLevel;
+
+	/**
+	 * Initializes a new <tt>DelayHistogram</tt> instance.
+	 *
+	 * @param quantile
+	 * 		the quantile of the relative delays which the target level is to cover e.g.
+	 * 		<tt>0.95</tt>
+	 * @param minLevel
+	 * 		the minimum target level in frames
+	 * @param maxLevel
+	 * 		the maximum target level in frames
+	 */
+	DelayHistogram(double quantile, int minLevel, int maxLevel)
+	{
+		this.quantile = quantile;
+		this.minLevel = Math.max(minLevel, 1);
+		this.maxLevel = Math.max(Math.min(maxLevel, BUCKET_COUNT), this.minLevel);
+		reset();
+	}
+
+	/**
+	 * Gets the number of frames the jitter buffer is to hold in order to absorb the observed
+	 * jitter.
+	 *
+	 * @return the number of frames the jitter buffer is to hold
+	 */
+	int getTargetLevel()
+	{
+		return targetLevel;
+	}
+
+	/**
+	 * Forgets all observations and starts over from the assumption that the frames arrive in
+	 * time.
+	 */
+	void reset()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			probabilities[i] = 0;
+		probabilities[0] = 1;
+		targetLevel = minLevel;
+	}
+
+	/**
+	 * Accounts for the arrival of a frame.
+	 *
+	 * @param relativeDelayFrames
+	 * 		the delay of the frame relative to the least delayed frame of the recent past in frame
+	 * 		durations, rounded up
+	 */
+	void update(int relativeDelayFrames)
+	{
+		int bucket;
+
+		if (relativeDelayFrames < 0)
+			bucket = 0;
+		else if (relativeDelayFrames >= BUCKET_COUNT)
+			bucket = BUCKET_COUNT - 1;
+		else
+			bucket = relativeDelayFrames;
+
+		double[] probabilities = this.probabilities;
+
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			probabilities[i] *= FORGET_FACTOR;
+		probabilities[bucket] += 1 - FORGET_FACTOR;
+
+		// The probabilities sum up to 1 so the quantile is found walking from the small delays.
+		double cumulative = 0;
+		int level = BUCKET_COUNT - 1;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulative += probabilities[i];
+			if (cumulative >= quantile) {
+				level = i;
+				break;
+			}
+		}
+		// One more frame is the one which is being played out.
+		targetLevel = Math.max(minLevel, Math.min(level + 1, maxLevel));
+	}
+}
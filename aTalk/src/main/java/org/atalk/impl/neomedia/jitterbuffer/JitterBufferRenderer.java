@@ -0,0 +1,355 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import org.atalk.impl.neomedia.jmfext.media.renderer.audio.AbstractAudioRenderer;
+import org.atalk.util.ArrayIOUtils;
+import org.atalk.util.Logger;
+
+import javax.media.*;
+import javax.media.format.AudioFormat;
+
+/**
+ * Wraps an audio <tt>Renderer</tt> in order to play the received audio out through an
+ * <tt>AdaptiveJitterBuffer</tt>. The decoded <tt>Buffer</tt>s given to {@link #process(Buffer)}
+ * are inserted into the jitter buffer as they arrive and a dedicated playout thread pulls one
+ * frame at a time out of the jitter buffer into the wrapped <tt>Renderer</tt>. The latter blocks
+ * while the audio device is busy so the playout is paced by the clock of the device rather than
+ * by the arrivals. In case the wrapped <tt>Renderer</tt> does not block, the playout thread does
+ * not run ahead of the wall clock by more than {@link #MAX_AHEAD_NANOS}.
+ * <p>
+ * Formats other than 16-bit linear audio are passed through to the wrapped <tt>Renderer</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+public class JitterBufferRenderer implements Renderer
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>JitterBufferRenderer</tt> class and its instances for
+	 * logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(JitterBufferRenderer.class);
+
+	/**
+	 * The maximum duration in nanoseconds of the audio which the playout thread writes into the
+	 * wrapped <tt>Renderer</tt> ahead of the wall clock.
+	 */
+	private static final long MAX_AHEAD_NANOS = 60 * 1000000L;
+
+	/**
+	 * The wrapped <tt>Renderer</tt> which renders the audio played out of {@link #jitterBuffer}.
+	 */
+	private final Renderer renderer;
+
+	/**
+	 * The <tt>AdaptiveJitterBuffer</tt> through which the audio is played out or <tt>null</tt> if
+	 * the input format is not supported by it and the input is passed through.
+	 */
+	private AdaptiveJitterBuffer jitterBuffer;
+
+	/**
+	 * The input format of this <tt>Renderer</tt>.
+	 */
+	private AudioFormat inputFormat;
+
+	/**
+	 * The indicator which determines whether the samples of {@link #inputFormat} are big endian.
+	 */
+	private boolean bigEndian;
+
+	/**
+	 * The thread which plays the audio out of {@link #jitterBuffer} into {@link #renderer}.
+	 */
+	private volatile Thread playoutThread;
+
+	/**
+	 * Initializes a new <tt>JitterBufferRenderer</tt> instance.
+	 *
+	 * @param renderer
+	 * 		the <tt>Renderer</tt> to render the audio played out of the jitter buffer
+	 */
+	public JitterBufferRenderer(Renderer renderer)
+	{
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Gets the <tt>AdaptiveJitterBuffer</tt> through which this <tt>Renderer</tt> plays the audio
+	 * out.
+	 *
+	 * @return the <tt>AdaptiveJitterBuffer</tt> through which this <tt>Renderer</tt> plays the
+	 * audio out or <tt>null</tt> if its input format is not supported by the jitter buffer
+	 */
+	public synchronized AdaptiveJitterBuffer getJitterBuffer()
+	{
+		return jitterBuffer;
+	}
+
+	/**
+	 * Gets the wrapped <tt>Renderer</tt>.
+	 *
+	 * @return the wrapped <tt>Renderer</tt>
+	 */
+	public Renderer getRenderer()
+	{
+		return renderer;
+	}
+
+	public Format[] getSupportedInputFormats()
+	{
+		return renderer.getSupportedInputFormats();
+	}
+
+	public synchronized Format setInputFormat(Format format)
+	{
+		Format setFormat = renderer.setInputFormat(format);
+
+		if (setFormat instanceof AudioFormat) {
+			AudioFormat audioFormat = (AudioFormat) setFormat;
+
+			if (!audioFormat.equals(inputFormat)) {
+				inputFormat = audioFormat;
+				bigEndian = (audioFormat.getEndian() == AudioFormat.BIG_ENDIAN);
+
+				int sampleRate = (int) audioFormat.getSampleRate();
+				int channels = audioFormat.getChannels();
+
+				if (AudioFormat.LINEAR.equals(audioFormat.getEncoding())
+						&& audioFormat.getSampleSizeInBits() == 16 && sampleRate > 0) {
+					jitterBuffer = new AdaptiveJitterBuffer(sampleRate,
+							(channels == Format.NOT_SPECIFIED) ? 1 : channels);
+				}
+				else {
+					jitterBuffer = null;
+					logger.warn("Not playing " + audioFormat + " out through a jitter buffer.");
+				}
+			}
+		}
+		return setFormat;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Inserts the samples of <tt>buffer</tt> into the jitter buffer of this instance. They will be
+	 * given to the wrapped <tt>Renderer</tt> by the playout thread.
+	 */
+	public int process(Buffer buffer)
+	{
+		AdaptiveJitterBuffer jitterBuffer;
+		boolean bigEndian;
+
+		synchronized (this) {
+			jitterBuffer = this.jitterBuffer;
+			bigEndian = this.bigEndian;
+		}
+		if (jitterBuffer == null)
+			return renderer.process(buffer);
+
+		Object data = buffer.getData();
+		int length = buffer.getLength();
+		int offset = buffer.getOffset();
+
+		if (buffer.isDiscard() || data == null || length <= 0)
+			return BUFFER_PROCESSED_OK;
+		if (offset < 0 || !(data instanceof byte[]))
+			return BUFFER_PROCESSED_FAILED;
+
+		byte[] bytes = (byte[]) data;
+		short[] samples = new short[length / 2];
+
+		for (int i = 0; i < samples.length; i++, offset += 2) {
+			samples[i] = bigEndian
+					? (short) ((bytes[offset] << 8) | (bytes[offset + 1] & 0xFF))
+					: ArrayIOUtils.readShort(bytes, offset);
+		}
+		jitterBuffer.insert(buffer.getSequenceNumber(), samples, samples.length,
+				System.nanoTime());
+		return BUFFER_PROCESSED_OK;
+	}
+
+	public synchronized void start()
+	{
+		renderer.start();
+		if (jitterBuffer != null && playoutThread == null) {
+			playoutThread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					runInPlayoutThread();
+				}
+			};
+			playoutThread.setDaemon(true);
+			playoutThread.setName(getClass().getName() + ".playoutThread");
+			playoutThread.start();
+		}
+	}
+
+	public void stop()
+	{
+		stopPlayoutThread();
+		renderer.stop();
+	}
+
+	public String getName()
+	{
+		return renderer.getName();
+	}
+
+	public void open()
+			throws ResourceUnavailableException
+	{
+		renderer.open();
+	}
+
+	public void close()
+	{
+		stopPlayoutThread();
+		renderer.close();
+	}
+
+	public void reset()
+	{
+		renderer.reset();
+	}
+
+	public Object[] getControls()
+	{
+		return renderer.getControls();
+	}
+
+	public Object getControl(String controlType)
+	{
+		return renderer.getControl(controlType);
+	}
+
+	/**
+	 * Plays the audio out of {@link #jitterBuffer} into {@link #renderer} until
+	 * {@link #playoutThread} is stopped.
+	 */
+	private void runInPlayoutThread()
+	{
+		AbstractAudioRenderer.useAudioThreadPriority();
+
+		Buffer buffer = new Buffer();
+		byte[] bytes = new byte[0];
+		long startNanos = System.nanoTime();
+		long playedNanos = 0;
+
+		try {
+			while (true) {
+				AdaptiveJitterBuffer jitterBuffer;
+				AudioFormat format;
+				boolean bigEndian;
+
+				synchronized (this) {
+					if (!Thread.currentThread().equals(playoutThread))
+						break;
+					jitterBuffer = this.jitterBuffer;
+					format = inputFormat;
+					bigEndian = this.bigEndian;
+				}
+				if (jitterBuffer == null)
+					break;
+
+				jitterBuffer.playout();
+
+				short[] samples = jitterBuffer.getOutput();
+				int length = jitterBuffer.getOutputLength();
+				int byteLength = 2 * length;
+
+				if (bytes.length < byteLength)
+					bytes = new byte[byteLength];
+				for (int i = 0; i < length; i++) {
+					short sample = samples[i];
+
+					if (bigEndian) {
+						bytes[2 * i] = (byte) (sample >> 8);
+						bytes[2 * i + 1] = (byte) sample;
+					}
+					else
+						ArrayIOUtils.writeShort(sample, bytes, 2 * i);
+				}
+
+				buffer.setData(bytes);
+				buffer.setOffset(0);
+				buffer.setLength(byteLength);
+				buffer.setFormat(format);
+				buffer.setFlags(0);
+
+				int processed;
+
+				do {
+					processed = renderer.process(buffer);
+				}
+				while ((processed & INPUT_BUFFER_NOT_CONSUMED) != 0
+						&& (processed & BUFFER_PROCESSED_FAILED) == 0
+						&& Thread.currentThread().equals(playoutThread));
+
+				// Do not run ahead of the wall clock if the renderer has not blocked.
+				int channels = format.getChannels();
+
+				if (channels == Format.NOT_SPECIFIED)
+					channels = 1;
+				playedNanos += 1000000000L * (length / channels) / (long) format.getSampleRate();
+
+				long aheadNanos = startNanos + playedNanos - System.nanoTime();
+
+				if (aheadNanos > MAX_AHEAD_NANOS) {
+					try {
+						Thread.sleep((aheadNanos - MAX_AHEAD_NANOS) / 1000000L);
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				else if (aheadNanos < -MAX_AHEAD_NANOS) {
+					// The renderer has fallen behind e.g. because it has been stalled. Do not try
+					// to catch up on the lost time.
+					startNanos = System.nanoTime();
+					playedNanos = 0;
+				}
+			}
+		} finally {
+			synchronized (this) {
+				if (Thread.currentThread().equals(playoutThread)) {
+					playoutThread = null;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops {@link #playoutThread} and waits for it to exit.
+	 */
+	private synchronized void stopPlayoutThread()
+	{
+		Thread playoutThread = this.playoutThread;
+
+		if (playoutThread == null)
+			return;
+
+		this.playoutThread = null;
+		if (Thread.currentThread().equals(playoutThread))
+			return;
+
+		boolean interrupted = false;
+
+		while (playoutThread.isAlive()) {
+			try {
+				wait(20);
+			}
+			catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
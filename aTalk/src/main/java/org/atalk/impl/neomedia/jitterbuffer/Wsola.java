@@ -0,0 +1,452 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+/**
+ * Stretches frames of 16-bit linear audio in time by the means of waveform similarity overlap-add
+ * (WSOLA). The period at which a frame is most similar to itself (i.e. the pitch period of voiced
+ * speech) is searched for by normalized cross-correlation and exactly one such period is either
+ * removed from the frame (to accelerate the playout) or repeated in it (to expand the playout),
+ * cross-fading the seam so that no discontinuity is heard. The same search over the audio played
+ * last extends it periodically with a decaying gain in order to conceal frames which are missing.
+ * <p>
+ * Samples of multiple channels are interleaved and the similarity is evaluated on their sum.
+ * Instances of this class are not thread-safe. They are meant to be used by the playout thread of
+ * an <tt>AdaptiveJitterBuffer</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+class Wsola
+{
+	/**
+	 * The normalized cross-correlation at and above which a period is considered similar enough to
+	 * its successor for the frame to be stretched without audible artifacts.
+	 */
+	private static final double MIN_CORRELATION = 0.7;
+
+	/**
+	 * The energy per sample below which a segment is considered silent. Silence may be stretched
+	 * regardless of its correlation.
+	 */
+	private static final double SILENCE_ENERGY = 64 * 64;
+
+	/**
+	 * The number of interleaved channels.
+	 */
+	private final int channels;
+
+	/**
+	 * The shortest period searched for in sample frames i.e. 2.5 ms (400 Hz).
+	 */
+	private final int minPeriod;
+
+	/**
+	 * The longest period searched for in sample frames i.e. about 16 ms (60 Hz).
+	 */
+	private final int maxPeriod;
+
+	/**
+	 * The most recently played samples from which missing frames are concealed.
+	 */
+	private final short[] history;
+
+	/**
+	 * The number of valid samples at the end of {@link #history}.
+	 */
+	private int historyLength;
+
+	/**
+	 * The period in sample frames with which the current concealment extends {@link #history} or
+	 * <tt>0</tt> if no concealment is in progress.
+	 */
+	private int concealPeriod;
+
+	/**
+	 * The position in sample frames within the last period of {@link #history} of the next
+	 * concealed sample.
+	 */
+	private int concealPhase;
+
+	/**
+	 * The correlation of the period found by the last call to
+	 * {@link #findPeriod(short[], int, int, int, boolean)}.
+	 */
+	private double correlation;
+
+	/**
+	 * Initializes a new <tt>Wsola</tt> instance.
+	 *
+	 * @param sampleRate
+	 * 		the sample rate of the audio to stretch
+	 * @param channels
+	 * 		the number of interleaved channels of the audio to stretch
+	 */
+	Wsola(int sampleRate, int channels)
+	{
+		this.channels = Math.max(channels, 1);
+		minPeriod = Math.max(sampleRate / 400, 2);
+		maxPeriod = Math.max(sampleRate / 60, minPeriod);
+		history = new short[2 * maxPeriod * this.channels];
+	}
+
+	/**
+	 * Removes one period from a frame.
+	 *
+	 * @param in
+	 * 		the samples of the frame
+	 * @param inOffset
+	 * 		the offset in <tt>in</tt> of the frame
+	 * @param inLength
+	 * 		the number of samples of the frame
+	 * @param out
+	 * 		the array to write the accelerated frame into; at least <tt>inLength</tt> long
+	 * @return the number of samples written into <tt>out</tt> or <tt>-1</tt> if the frame has no
+	 * period which may be removed without audible artifacts, in which case <tt>out</tt> is left
+	 * untouched
+	 */
+	int accelerate(short[] in, int inOffset, int inLength, short[] out)
+	{
+		int period = findStretchPeriod(in, inOffset, inLength);
+
+		if (period <= 0)
+			return -1;
+
+		int channels = this.channels;
+		int overlap = period * channels;
+
+		// Fade from the first period into the second one and continue after the latter.
+		crossFade(in, inOffset, in, inOffset + overlap, out, 0, period);
+		System.arraycopy(in, inOffset + 2 * overlap, out, overlap, inLength - 2 * overlap);
+		return inLength - overlap;
+	}
+
+	/**
+	 * Repeats one period of a frame.
+	 *
+	 * @param in
+	 * 		the samples of the frame
+	 * @param inOffset
+	 * 		the offset in <tt>in</tt> of the frame
+	 * @param inLength
+	 * 		the number of samples of the frame
+	 * @param out
+	 * 		the array to write the expanded frame into; at least {@link #getMaxExpansion()} longer
+	 * 		than <tt>inLength</tt>
+	 * @return the number of samples written into <tt>out</tt> or <tt>-1</tt> if the frame has no
+	 * period which may be repeated without audible artifacts, in which case <tt>out</tt> is left
+	 * untouched
+	 */
+	int expand(short[] in, int inOffset, int inLength, short[] out)
+	{
+		int period = findStretchPeriod(in, inOffset, inLength);
+
+		if (period <= 0)
+			return -1;
+
+		int channels = this.channels;
+		int overlap = period * channels;
+
+		// Play the first period, fade from the second one back into the first one and continue
+		// with the second one i.e. the first period is heard twice.
+		System.arraycopy(in, inOffset, out, 0, overlap);
+		crossFade(in, inOffset + overlap, in, inOffset, out, overlap, period);
+		System.arraycopy(in, inOffset + overlap, out, 2 * overlap, inLength - overlap);
+		return inLength + overlap;
+	}
+
+	/**
+	 * Gets the maximum number of samples by which {@link #expand(short[], int, int, short[])}
+	 * lengthens a frame.
+	 *
+	 * @return the maximum number of samples by which a frame is lengthened
+	 */
+	int getMaxExpansion()
+	{
+		return maxPeriod * channels;
+	}
+
+	/**
+	 * Determines whether a concealment is in progress i.e. whether the last samples output by
+	 * this instance were generated by {@link #conceal(short[], int, int, double, double)}.
+	 *
+	 * @return <tt>true</tt> if a concealment is in progress; otherwise, <tt>false</tt>
+	 */
+	boolean isConcealing()
+	{
+		return concealPeriod > 0;
+	}
+
+	/**
+	 * Generates samples in place of a missing frame by extending the most recently played samples
+	 * periodically. The gain ramps linearly over the generated samples so that consecutive
+	 * concealments may fade out.
+	 *
+	 * @param out
+	 * 		the array to write the generated samples into
+	 * @param outOffset
+	 * 		the offset in <tt>out</tt> at which to start writing
+	 * @param length
+	 * 		the number of samples to generate
+	 * @param fromGain
+	 * 		the gain of the first generated sample
+	 * @param toGain
+	 * 		the gain of the last generated sample
+	 */
+	void conceal(short[] out, int outOffset, int length, double fromGain, double toGain)
+	{
+		int channels = this.channels;
+
+		if (concealPeriod == 0) {
+			int historyFrames = historyLength / channels;
+			int period = findPeriod(history, history.length - historyLength, historyFrames,
+					Math.min(maxPeriod, historyFrames / 2), true);
+
+			if (period <= 0) {
+				// Too little has been played to conceal anything. Fill in with silence.
+				for (int i = 0; i < length; i++)
+					out[outOffset + i] = 0;
+				return;
+			}
+			concealPeriod = period;
+			concealPhase = 0;
+		}
+
+		short[] history = this.history;
+		int period = concealPeriod;
+		int periodStart = history.length - period * channels;
+		int frames = length / channels;
+		double gainStep = (frames > 1) ? (toGain - fromGain) / (frames - 1) : 0;
+		double gain = fromGain;
+		int phase = concealPhase;
+
+		for (int f = 0; f < frames; f++) {
+			int from = periodStart + phase * channels;
+
+			for (int c = 0; c < channels; c++)
+				out[outOffset++] = (short) (history[from + c] * gain);
+			if (++phase == period)
+				phase = 0;
+			gain += gainStep;
+		}
+		concealPhase = phase;
+	}
+
+	/**
+	 * Ends a concealment (if any is in progress) with a frame which has been received. The start of
+	 * the frame is cross-faded with the continuation of the concealment so that the transition is
+	 * smooth. The frame is then remembered as the most recently played samples.
+	 *
+	 * @param frame
+	 * 		the samples of the frame which are to be played next. Modified in place.
+	 * @param offset
+	 * 		the offset in <tt>frame</tt> of the samples
+	 * @param length
+	 * 		the number of samples
+	 * @param gain
+	 * 		the gain with which the concealment would have continued
+	 */
+	void merge(short[] frame, int offset, int length, double gain)
+	{
+		if (concealPeriod > 0) {
+			int channels = this.channels;
+			int frames = Math.min(concealPeriod, length / channels);
+
+			if (frames > 0) {
+				short[] continuation = new short[frames * channels];
+
+				conceal(continuation, 0, continuation.length, gain, gain);
+				crossFade(continuation, 0, frame, offset, frame, offset, frames);
+			}
+			concealPeriod = 0;
+		}
+		remember(frame, offset, length);
+	}
+
+	/**
+	 * Remembers samples as the most recently played ones.
+	 *
+	 * @param samples
+	 * 		the samples which have been played
+	 * @param offset
+	 * 		the offset in <tt>samples</tt> of the played samples
+	 * @param length
+	 * 		the number of played samples
+	 */
+	void remember(short[] samples, int offset, int length)
+	{
+		short[] history = this.history;
+		int capacity = history.length;
+
+		if (length >= capacity) {
+			System.arraycopy(samples, offset + length - capacity, history, 0, capacity);
+			historyLength = capacity;
+		}
+		else {
+			System.arraycopy(history, length, history, 0, capacity - length);
+			System.arraycopy(samples, offset, history, capacity - length, length);
+			historyLength = Math.min(historyLength + length, capacity);
+		}
+	}
+
+	/**
+	 * Forgets the most recently played samples and ends any concealment in progress e.g. because
+	 * the playout has been interrupted for long enough to start over.
+	 */
+	void reset()
+	{
+		historyLength = 0;
+		concealPeriod = 0;
+		concealPhase = 0;
+	}
+
+	/**
+	 * Finds the period of a frame which is to be removed or repeated in order to stretch it.
+	 *
+	 * @param in
+	 * 		the samples of the frame
+	 * @param inOffset
+	 * 		the offset in <tt>in</tt> of the frame
+	 * @param inLength
+	 * 		the number of samples of the frame
+	 * @return the period in sample frames or <tt>-1</tt> if the frame is not to be stretched
+	 */
+	private int findStretchPeriod(short[] in, int inOffset, int inLength)
+	{
+		int frames = inLength / channels;
+		int period = findPeriod(in, inOffset, frames, Math.min(maxPeriod, frames / 2), false);
+
+		return (period > 0 && correlation >= MIN_CORRELATION) ? period : -1;
+	}
+
+	/**
+	 * Finds the period at which specific samples are most similar to themselves i.e. the period
+	 * the segment of which is most similar to the adjacent segment of the same length. Sets
+	 * {@link #correlation} to the normalized cross-correlation of the two segments of the found
+	 * period or to <tt>1</tt> if they are silent.
+	 *
+	 * @param in
+	 * 		the samples to search
+	 * @param inOffset
+	 * 		the offset in <tt>in</tt> of the samples
+	 * @param frames
+	 * 		the number of sample frames to search
+	 * @param maxPeriod
+	 * 		the longest period to consider which must not exceed half of <tt>frames</tt>
+	 * @param fromEnd
+	 * 		<tt>true</tt> to compare the two periods which end the samples (i.e. those which
+	 * 		border on what is to be generated after them) or <tt>false</tt> to compare the two
+	 * 		periods which start the samples
+	 * @return the period in sample frames or <tt>-1</tt> if <tt>maxPeriod</tt> is shorter than
+	 * the shortest period
+	 */
+	private int findPeriod(short[] in, int inOffset, int frames, int maxPeriod, boolean fromEnd)
+	{
+		if (maxPeriod < minPeriod) {
+			correlation = 0;
+			return -1;
+		}
+
+		int bestPeriod = minPeriod;
+		double bestCorrelation = -1;
+		boolean silent = false;
+
+		for (int period = minPeriod; period <= maxPeriod; period++) {
+			int start = fromEnd ? frames - 2 * period : 0;
+			double cross = 0;
+			double energy1 = 0;
+			double energy2 = 0;
+
+			for (int i = 0; i < period; i++) {
+				double a = frameSum(in, inOffset, start + i);
+				double b = frameSum(in, inOffset, start + period + i);
+
+				cross += a * b;
+				energy1 += a * a;
+				energy2 += b * b;
+			}
+
+			if (energy1 + energy2 < SILENCE_ENERGY * 2 * period) {
+				// Silence is as similar to itself as it gets. Prefer the longest period of it.
+				bestPeriod = period;
+				bestCorrelation = 1;
+				silent = true;
+			}
+			else if (!silent) {
+				double c = cross / Math.sqrt(energy1 * energy2);
+
+				if (c > bestCorrelation) {
+					bestPeriod = period;
+					bestCorrelation = c;
+				}
+			}
+		}
+		correlation = bestCorrelation;
+		return bestPeriod;
+	}
+
+	/**
+	 * Gets the sum of the samples of all channels of a sample frame.
+	 *
+	 * @param in
+	 * 		the interleaved samples
+	 * @param inOffset
+	 * 		the offset in <tt>in</tt> of the first sample frame
+	 * @param frame
+	 * 		the index of the sample frame
+	 * @return the sum of the samples of all channels of the sample frame
+	 */
+	private double frameSum(short[] in, int inOffset, int frame)
+	{
+		int channels = this.channels;
+		int i = inOffset + frame * channels;
+
+		if (channels == 1)
+			return in[i];
+
+		int sum = 0;
+
+		for (int c = 0; c < channels; c++)
+			sum += in[i + c];
+		return sum;
+	}
+
+	/**
+	 * Cross-fades linearly from one segment of samples into another.
+	 *
+	 * @param from
+	 * 		the samples which fade out
+	 * @param fromOffset
+	 * 		the offset in <tt>from</tt> of the segment which fades out
+	 * @param to
+	 * 		the samples which fade in
+	 * @param toOffset
+	 * 		the offset in <tt>to</tt> of the segment which fades in
+	 * @param out
+	 * 		the array to write the cross-fade into. May be <tt>to</tt> with <tt>outOffset</tt>
+	 * 		equal to <tt>toOffset</tt>.
+	 * @param outOffset
+	 * 		the offset in <tt>out</tt> at which to start writing
+	 * @param frames
+	 * 		the number of sample frames of the cross-fade
+	 */
+	private void crossFade(short[] from, int fromOffset, short[] to, int toOffset, short[] out,
+			int outOffset, int frames)
+	{
+		int channels = this.channels;
+
+		for (int f = 0; f < frames; f++) {
+			int weight = ((f + 1) << 15) / (frames + 1);
+
+			for (int c = 0; c < channels; c++) {
+				int i = f * channels + c;
+				int sample = (from[fromOffset + i] * ((1 << 15) - weight)
+						+ to[toOffset + i] * weight) >> 15;
+
+				out[outOffset + i] = (short) sample;
+			}
+		}
+	}
+}
@@ -31,14 +31,36 @@ public class RawPacketScheduler
 	 */
 	private final long clockRate;
 
+	/**
+	 * The factor by which the packets are scheduled faster than real time. A rate which is not
+	 * positive disables the scheduling i.e. the packets are read as fast as possible.
+	 */
+	private final double rate;
+
 	/**
 	 * Ctor.
 	 *
 	 * @param clockRate
 	 */
 	public RawPacketScheduler(long clockRate)
+	{
+		this(clockRate, 1);
+	}
+
+	/**
+	 * Initializes a new <tt>RawPacketScheduler</tt> which schedules the packets at a specific
+	 * multiple of real time.
+	 *
+	 * @param clockRate
+	 *        the RTP clock rate
+	 * @param rate
+	 *        the factor by which the packets are to be scheduled faster than real time e.g. 1 for
+	 *        real time, 4 for four times real time and 0 for no scheduling at all
+	 */
+	public RawPacketScheduler(long clockRate, double rate)
 	{
 		this.clockRate = clockRate;
+		this.rate = rate;
 	}
 
 	/**
@@ -56,7 +78,7 @@ public class RawPacketScheduler
 	public void schedule(RawPacket rtpPacket)
 		throws InterruptedException
 	{
-		if (!RTPPacketPredicate.INSTANCE.test(rtpPacket)) {
+		if (rate <= 0 || !RTPPacketPredicate.INSTANCE.test(rtpPacket)) {
 			return;
 		}
 
@@ -70,7 +92,7 @@ public class RawPacketScheduler
 
         long rtpDiff = RTPUtils.rtpTimestampDiff(lastRtpTimestamp, previous);
 
-		long nanos = (rtpDiff * 1000 * 1000 * 1000) / clockRate;
+		long nanos = (long) ((rtpDiff * 1000 * 1000 * 1000) / clockRate / rate);
 		if (nanos > 0) {
 			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
 		}
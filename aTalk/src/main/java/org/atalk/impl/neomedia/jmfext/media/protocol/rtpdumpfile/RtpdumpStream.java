@@ -15,7 +15,9 @@
 package org.atalk.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
 
 import org.atalk.impl.neomedia.jmfext.media.protocol.AbstractVideoPullBufferStream;
+import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.util.ConfigUtils;
 import org.atalk.util.Logger;
 
 import java.io.IOException;
@@ -37,6 +39,13 @@ public class RtpdumpStream extends AbstractVideoPullBufferStream<DataSource>
 	 */
 	private static final Logger logger = Logger.getLogger(RtpdumpStream.class);
 
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> property which
+	 * specifies the factor by which the rtpdump files are to be replayed faster than real time.
+	 * The default is 1 (i.e. real time) and 0 replays the files as fast as possible.
+	 */
+	public static final String RATE_PNAME = RtpdumpStream.class.getName() + ".RATE";
+
 	/**
 	 * The <tt>RawPacketScheduler</tt> responsible for throttling our RTP packet reading.
 	 */
@@ -89,7 +98,19 @@ public class RtpdumpStream extends AbstractVideoPullBufferStream<DataSource>
 			clockRate = 1000 * 1000 * 1000;
 		}
 
-		this.rawPacketScheduler = new RawPacketScheduler(clockRate);
+		double rate = 1;
+		String rateStr = ConfigUtils.getString(LibJitsi.getConfigurationService(), RATE_PNAME,
+			null);
+
+		if (rateStr != null) {
+			try {
+				rate = Double.parseDouble(rateStr);
+			}
+			catch (NumberFormatException nfe) {
+				logger.warn("Invalid " + RATE_PNAME + ": " + rateStr);
+			}
+		}
+		this.rawPacketScheduler = new RawPacketScheduler(clockRate, rate);
 		String rtpdumpFilePath = dataSource.getLocator().getRemainder();
 		this.rtpFileReader = new RtpdumpFileReader(rtpdumpFilePath);
 	}
@@ -150,6 +150,14 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
      */
     private static String AUDIO_CODEC_PNAME = "neomedia.recording.AUDIO_CODEC";
 
+    /**
+     * The name of the property which controls whether the recorder should write all the VP8 and
+     * opus streams as tracks of a single webm file instead of a file per stream. The opus frames
+     * are then written as received, so neither silence is inserted for lost packets nor are the
+     * audio levels of the streams available for active speaker detection.
+     */
+    private static final String MUX_TRACKS_PNAME = "neomedia.recording.MUX_TRACKS";
+
     /**
      * The <tt>ContentDescriptor</tt> to use when saving audio.
      */
@@ -230,6 +238,18 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
      */
     private final boolean performActiveSpeakerDetection;
 
+    /**
+     * Controls whether this <tt>RecorderRtpImpl</tt> should write all the VP8 and opus streams
+     * into {@link #muxer}.
+     */
+    private final boolean muxTracks;
+
+    /**
+     * The <tt>WebmMuxer</tt> shared by the streams if {@link #muxTracks}, created when the first
+     * stream starts.
+     */
+    private WebmMuxer muxer;
+
     StreamRTPManager streamRTPManager;
 
     private SynchronizerImpl synchronizer;
@@ -248,10 +268,12 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
         this.translator = (RTPTranslatorImpl) translator;
 
         boolean performActiveSpeakerDetection = false;
+        boolean muxTracks = false;
 
         if (cfg != null) {
             performActiveSpeakerDetection
                     = cfg.getBoolean(PERFORM_ASD_PNAME, performActiveSpeakerDetection);
+            muxTracks = cfg.getBoolean(MUX_TRACKS_PNAME, muxTracks);
 
             // setting custom audio codec
             String audioCodec = cfg.getString(AUDIO_CODEC_PNAME);
@@ -261,6 +283,7 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
             }
         }
         this.performActiveSpeakerDetection = performActiveSpeakerDetection;
+        this.muxTracks = muxTracks;
     }
 
     /**
@@ -423,6 +446,13 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
             if (activeSpeakerDetector != null)
                 activeSpeakerDetector.removeActiveSpeakerChangedListener(this);
 
+            synchronized (this) {
+                if (muxer != null) {
+                    muxer.close();
+                    muxer = null;
+                }
+            }
+
             started = false;
         }
 
@@ -660,6 +690,13 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
 
             boolean audio = desc.format instanceof AudioFormat;
 
+            if (audio && isMuxed(desc)) {
+                // Pass the opus frames through to the muxer as they are.
+                processor.setContentDescriptor(new ContentDescriptor(ContentDescriptor.RAW));
+                processor.realize();
+                return;
+            }
+
             if (audio) {
                 ContentDescriptor cd = processor.setContentDescriptor(AUDIO_CONTENT_DESCRIPTOR);
                 if (!AUDIO_CONTENT_DESCRIPTOR.equals(cd)) {
@@ -754,12 +791,24 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
             boolean audio = desc.format instanceof AudioFormat;
             String suffix = audio ? AUDIO_FILENAME_SUFFIX : VIDEO_FILENAME_SUFFIX;
 
-            // XXX '\' on windows?
-            String filename = getNextFilename(path + "/" + ssrc, suffix);
-            desc.filename = filename;
-
+            String filename;
             DataSink dataSink;
-            if (audio) {
+            if (isMuxed(desc)) {
+                WebmMuxer sharedMuxer;
+                try {
+                    sharedMuxer = getMuxer();
+                } catch (IOException ioe) {
+                    logger.error("Could not create WebmMuxer: " + ioe);
+                    removeReceiveStream(desc, false);
+                    return;
+                }
+                filename = sharedMuxer.getFilename();
+                dataSink = new WebmDataSink(sharedMuxer, desc.dataSource, getSynchronizer());
+            }
+            else if (audio) {
+                // XXX '\' on windows?
+                filename = getNextFilename(path + "/" + ssrc, suffix);
+
                 try {
                     dataSink = Manager.createDataSink(desc.dataSource,
                             new MediaLocator("file:" + filename));
@@ -771,8 +820,10 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
 
             }
             else {
+                filename = getNextFilename(path + "/" + ssrc, suffix);
                 dataSink = new WebmDataSink(filename, desc.dataSource);
             }
+            desc.filename = filename;
 
             if (logger.isInfoEnabled())
                 logger.info("Created DataSink (" + dataSink + ") for SSRC=" + ssrc
@@ -786,7 +837,7 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
                 return;
             }
 
-            if (!audio) {
+            if (dataSink instanceof WebmDataSink) {
                 final WebmDataSink webmDataSink = (WebmDataSink) dataSink;
                 webmDataSink.setSsrc(ssrc);
                 webmDataSink.setEventHandler(eventHandler);
@@ -913,6 +964,41 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
         return false;
     }
 
+    /**
+     * Determines whether a specific stream is to be written into the shared {@link #muxer}.
+     *
+     * @param desc
+     *         the <tt>ReceiveStreamDesc</tt> of the stream
+     * @return <tt>true</tt> if the stream is to be written into the shared {@link #muxer}
+     */
+    private boolean isMuxed(ReceiveStreamDesc desc)
+    {
+        return muxTracks && (desc.format instanceof VideoFormat
+                || Constants.OPUS_RTP.equalsIgnoreCase(desc.format.getEncoding()));
+    }
+
+    /**
+     * Gets the <tt>WebmMuxer</tt> shared by the streams, creating it if needed.
+     *
+     * @return the <tt>WebmMuxer</tt> shared by the streams
+     * @throws IOException
+     *         if the <tt>WebmMuxer</tt> cannot be created
+     */
+    private synchronized WebmMuxer getMuxer()
+            throws IOException
+    {
+        if (muxer == null) {
+            String filename = getNextFilename(path + "/recording", VIDEO_FILENAME_SUFFIX);
+
+            if (filename == null)
+                throw new IOException("No free file name in " + path);
+            muxer = new WebmMuxer(filename);
+            if (logger.isInfoEnabled())
+                logger.info("Created WebmMuxer on " + filename);
+        }
+        return muxer;
+    }
+
     /**
      * Returns "prefix"+"suffix" if the file with this name does not exist. Otherwise, returns the
      * first inexistant filename of the form "prefix-"+i+"suffix", for an integer i. i is bounded by
@@ -8,6 +8,7 @@ package org.atalk.impl.neomedia.recording;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.MediaType;
+import org.atalk.service.neomedia.codec.Constants;
 import org.atalk.service.neomedia.control.KeyFrameControl;
 import org.atalk.service.neomedia.recording.*;
 import org.atalk.util.Logger;
@@ -16,13 +17,18 @@ import java.io.IOException;
 
 import javax.media.*;
 import javax.media.datasink.DataSinkListener;
+import javax.media.format.AudioFormat;
 import javax.media.format.VideoFormat;
 import javax.media.protocol.*;
 
 /**
- * A <tt>DataSink</tt> implementation which writes output in webm format.
+ * A <tt>DataSink</tt> implementation which writes output in webm format. The output is either a
+ * file of its own or a track of a <tt>WebmMuxer</tt> shared with the other streams of a
+ * recording, in which case opus audio is supported as well as VP8 video and the tracks are
+ * aligned on the timeline of the muxer with the help of a <tt>SynchronizerImpl</tt>.
  *
  * @author Boris Grozev
+ * @author Eng Chong Meng
  */
 public class WebmDataSink implements DataSink, BufferTransferHandler
 {
@@ -38,15 +44,67 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 	private static final boolean USE_RECORDING_ENDED_EVENTS = false;
 
 	/**
-	 * The <tt>WebmWriter</tt> which we use to write the frames to a file.
+	 * The maximum time in milliseconds for which a <tt>WebmDataSink</tt> which shares its
+	 * <tt>WebmMuxer</tt> waits for the <tt>SynchronizerImpl</tt> to be able to map the RTP
+	 * timestamps of its stream to local time before it falls back to the time of arrival of the
+	 * first frame.
 	 */
-	private WebmWriter writer = null;
+	private static final long MAX_SYNCHRONIZATION_WAIT = 3000;
+
+	/**
+	 * The <tt>WebmMuxer</tt> which we use to write the frames to a file.
+	 */
+	private WebmMuxer muxer = null;
+
+	/**
+	 * Whether {@link #muxer} is shared with other <tt>WebmDataSink</tt>s rather than created and
+	 * closed by this instance.
+	 */
+	private final boolean sharedMuxer;
+
+	/**
+	 * The <tt>SynchronizerImpl</tt> used to align the track of this instance with the other tracks
+	 * of a shared {@link #muxer}, or <tt>null</tt>.
+	 */
+	private final SynchronizerImpl synchronizer;
+
+	/**
+	 * The number of the track of this instance in {@link #muxer} or <tt>-1</tt> if the track has
+	 * not been added yet.
+	 */
+	private int track = -1;
+
+	/**
+	 * Whether this instance writes opus audio rather than VP8 video.
+	 */
+	private boolean audio = false;
+
+	/**
+	 * The number of audio channels, if {@link #audio}.
+	 */
+	private int channels = 2;
+
+	/**
+	 * The RTP clock rate of the stream.
+	 */
+	private long clockRate = 90000;
+
+	/**
+	 * The timestamp in the timeline of {@link #muxer} of the first frame written.
+	 */
+	private long timecodeOffset = 0;
+
+	/**
+	 * The time as returned by <tt>System.currentTimeMillis()</tt> at which the first frame was
+	 * received.
+	 */
+	private long firstReceivedTime = -1;
 
 	private RecorderEventHandler eventHandler;
 	private long ssrc = -1;
 
 	/**
-	 * Whether this <tt>DataSink</tt> is open and should write to its <tt>WebmWriter</tt>.
+	 * Whether this <tt>DataSink</tt> is open and should write to its <tt>WebmMuxer</tt>.
 	 */
 	private boolean open = false;
 	private final Object openCloseSyncRoot = new Object();
@@ -71,8 +129,6 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 	 */
 	private Buffer buffer = new Buffer();
 
-	private WebmWriter.FrameDescriptor fd = new WebmWriter.FrameDescriptor();
-
 	/**
 	 * Our <tt>DataSource</tt>.
 	 */
@@ -130,6 +186,29 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 	 * 		the <tt>DataSource</tt> to use.
 	 */
 	public WebmDataSink(String filename, DataSource dataSource)
+	{
+		this(filename, dataSource, null, null);
+	}
+
+	/**
+	 * Initialize a new <tt>WebmDataSink</tt> instance which writes into a track of a
+	 * <tt>WebmMuxer</tt> shared with other streams.
+	 *
+	 * @param muxer
+	 * 		the <tt>WebmMuxer</tt> to write into. Not closed by the new instance.
+	 * @param dataSource
+	 * 		the <tt>DataSource</tt> to use.
+	 * @param synchronizer
+	 * 		the <tt>SynchronizerImpl</tt> to align the track of the new instance with the other
+	 * 		tracks of <tt>muxer</tt>.
+	 */
+	public WebmDataSink(WebmMuxer muxer, DataSource dataSource, SynchronizerImpl synchronizer)
+	{
+		this(muxer.getFilename(), dataSource, muxer, synchronizer);
+	}
+
+	private WebmDataSink(String filename, DataSource dataSource, WebmMuxer muxer,
+			SynchronizerImpl synchronizer)
 	{
 		ConfigurationService cfg = LibJitsi.getConfigurationService();
 		this.autoKeyframeRequestInterval
@@ -140,6 +219,9 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 		}
 		this.filename = filename;
 		this.dataSource = dataSource;
+		this.muxer = muxer;
+		this.sharedMuxer = (muxer != null);
+		this.synchronizer = synchronizer;
 	}
 
 	/**
@@ -162,8 +244,8 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 					logger.debug("Not closing WebmDataSink: already closed.");
 				return;
 			}
-			if (writer != null)
-				writer.close();
+			if (muxer != null && !sharedMuxer)
+				muxer.close();
 			if (USE_RECORDING_ENDED_EVENTS && (eventHandler != null)
 					&& (firstFrameTime != -1) && (lastFramePts != -1)) {
 				RecorderEvent event = new RecorderEvent();
@@ -175,7 +257,7 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 				// STARTED and ENDED events matches the duration of the file
 				event.setDuration(lastFramePts);
 
-				event.setMediaType(MediaType.VIDEO);
+				event.setMediaType(audio ? MediaType.AUDIO : MediaType.VIDEO);
 				eventHandler.handleEvent(event);
 			}
 			open = false;
@@ -214,8 +296,20 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 
 				// XXX: should we allow for multiple streams in the data source?
 				for (PushBufferStream stream : streams) {
+					Format format = stream.getFormat();
+
 					// XXX whats the proper way to check for this? and handle?
-					if (!stream.getFormat().matches(new VideoFormat("VP8")))
+					if (sharedMuxer && format instanceof AudioFormat
+							&& Constants.OPUS_RTP.equalsIgnoreCase(format.getEncoding())) {
+						AudioFormat audioFormat = (AudioFormat) format;
+
+						audio = true;
+						if (audioFormat.getChannels() > 0)
+							channels = audioFormat.getChannels();
+						if (audioFormat.getSampleRate() > 0)
+							clockRate = (long) audioFormat.getSampleRate();
+					}
+					else if (!format.matches(new VideoFormat("VP8")))
 						throw new IOException("Unsupported stream format");
 
 					stream.setTransferHandler(this);
@@ -249,10 +343,12 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 	public void start()
 			throws IOException
 	{
-		writer = new WebmWriter(filename);
+		if (!sharedMuxer) {
+			muxer = new WebmMuxer(filename);
+			if (logger.isInfoEnabled())
+				logger.info("Created WebmMuxer on " + filename);
+		}
 		dataSource.start();
-		if (logger.isInfoEnabled())
-			logger.info("Created WebmWriter on " + filename);
 	}
 
 	/**
@@ -314,6 +410,9 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 			int offset = buffer.getOffset();
 			int len = buffer.getLength();
 
+			if (firstReceivedTime == -1)
+				firstReceivedTime = System.currentTimeMillis();
+
 			/*
 			 * Until an SDES packet is received by FMJ, it doesn't correctly set the packets'
 			 * timestamps. To avoid waiting, we use the RTP time stamps directly. We can do this
@@ -322,17 +421,26 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 			long rtpTimeStamp = buffer.getRtpTimeStamp();
 			// long rtpTimeStamp = buffer.getTimeStamp();
 
+			if (audio) {
+				if (!buffer.isDiscard() && len > 0)
+					writeAudioFrame(data, offset, len, rtpTimeStamp);
+				return;
+			}
+
 			boolean key = isKeyFrame(data, offset);
 			boolean valid = isKeyFrameValid(data, offset);
 			if (waitingForKeyframe && key) {
-				if (valid) {
-					waitingForKeyframe = false;
+				if (valid && (timecodeOffset = getTimecodeOffset(rtpTimeStamp)) != -1) {
 					width = getWidth(data, offset);
 					height = getHeight(data, offset);
+					track = muxer.addVideoTrack(WebmMuxer.CODEC_VP8, "video-" + ssrc, width, height);
+					if (track == -1)
+						return;
+
+					waitingForKeyframe = false;
 					firstFrameRtpTimestamp = rtpTimeStamp;
 					firstFrameTime = System.currentTimeMillis();
 
-					writer.writeWebmFileHeader(width, height);
 					if (logger.isInfoEnabled())
 						logger.info("Received the first keyframe (width=" + width
 								+ "; height=" + height + ")" + " ssrc=" + ssrc);
@@ -353,12 +461,16 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 						eventHandler.handleEvent(event);
 					}
 				}
-				else {
+				else if (!valid) {
 					keyframeRequested = false;
 					if (logger.isInfoEnabled())
 						logger.info("Received an invalid first keyframe. "
 								+ "Requesting a new one." + ssrc);
 				}
+				else if (logger.isDebugEnabled()) {
+					logger.debug("Dropping a keyframe until the stream can be synchronized. "
+							+ ssrc);
+				}
 			}
 
 			framesSinceLastKeyframeRequest++;
@@ -405,25 +517,112 @@ public class WebmDataSink implements DataSink, BufferTransferHandler
 						}
 					}
 				}
-				fd.buffer = data;
-				fd.offset = offset;
-				fd.length = len;
-				fd.flags = key ? WebmWriter.FLAG_FRAME_IS_KEY : 0;
-				if (!isShowFrame(data, offset))
-					fd.flags |= WebmWriter.FLAG_FRAME_IS_INVISIBLE;
-
-				long diff = rtpTimeStamp - firstFrameRtpTimestamp;
-				if (diff < -(1L << 31))
-					diff += 1L << 32;
-				// pts is in milliseconds, the VP8 rtp clock rate is 90000
-				fd.pts = diff / 90;
-				writer.writeFrame(fd);
-
-				lastFramePts = fd.pts;
+				long pts = getPts(rtpTimeStamp);
+
+				if (!muxer.writeFrame(track, data, offset, len, timecodeOffset + pts, key,
+						!isShowFrame(data, offset))) {
+					// The muxer drops the frames until the next keyframe so ask for one.
+					if (!keyframeRequested && keyFrameControl != null) {
+						keyframeRequested = keyFrameControl.requestKeyFrame(true);
+						framesSinceLastKeyframeRequest = 0;
+					}
+				}
+
+				lastFramePts = pts;
 			}
 		} // synchronized
 	}
 
+	/**
+	 * Writes an opus frame into the track of this instance, adding the track first if needed.
+	 *
+	 * @param data
+	 * 		the buffer containing the opus frame.
+	 * @param offset
+	 * 		the offset in <tt>data</tt> where the opus frame starts.
+	 * @param len
+	 * 		the length in bytes of the opus frame.
+	 * @param rtpTimeStamp
+	 * 		the RTP time stamp of the opus frame.
+	 */
+	private void writeAudioFrame(byte[] data, int offset, int len, long rtpTimeStamp)
+	{
+		if (track == -1) {
+			if ((timecodeOffset = getTimecodeOffset(rtpTimeStamp)) == -1)
+				return;
+			track = muxer.addAudioTrack(WebmMuxer.CODEC_OPUS, "audio-" + ssrc, 48000, channels);
+			if (track == -1)
+				return;
+
+			firstFrameRtpTimestamp = rtpTimeStamp;
+			firstFrameTime = System.currentTimeMillis();
+			if (logger.isInfoEnabled())
+				logger.info("Received the first audio frame. ssrc=" + ssrc);
+
+			if (eventHandler != null) {
+				RecorderEvent event = new RecorderEvent();
+				event.setType(RecorderEvent.Type.RECORDING_STARTED);
+				event.setSsrc(ssrc);
+				event.setFilename(filename);
+				event.setInstant(firstFrameTime);
+				event.setRtpTimestamp(rtpTimeStamp);
+				event.setMediaType(MediaType.AUDIO);
+				eventHandler.handleEvent(event);
+			}
+		}
+
+		long pts = getPts(rtpTimeStamp);
+
+		muxer.writeFrame(track, data, offset, len, timecodeOffset + pts, true, false);
+		lastFramePts = pts;
+	}
+
+	/**
+	 * Gets the timestamp in the timeline of {@link #muxer} at which the track of this instance is
+	 * to start. A track of a shared muxer starts at the local time to which the
+	 * <tt>SynchronizerImpl</tt> maps its first frame so that all the tracks line up; if the
+	 * mapping is not known after {@link #MAX_SYNCHRONIZATION_WAIT}, the time of arrival is used
+	 * instead.
+	 *
+	 * @param rtpTimeStamp
+	 * 		the RTP time stamp of the first frame of the track.
+	 * @return the timestamp in milliseconds at which the track is to start or <tt>-1</tt> if the
+	 * frame is to be dropped while waiting for the synchronization.
+	 */
+	private long getTimecodeOffset(long rtpTimeStamp)
+	{
+		if (!sharedMuxer)
+			return 0;
+
+		long localTime = (synchronizer == null)
+				? -1 : synchronizer.getLocalTime(ssrc, rtpTimeStamp);
+
+		if (localTime == -1) {
+			long now = System.currentTimeMillis();
+
+			if (now - firstReceivedTime < MAX_SYNCHRONIZATION_WAIT)
+				return -1;
+			localTime = now;
+		}
+		return Math.max(localTime - muxer.getStartTime(), 0);
+	}
+
+	/**
+	 * Gets the presentation timestamp of a frame relative to the first frame of the track.
+	 *
+	 * @param rtpTimeStamp
+	 * 		the RTP time stamp of the frame.
+	 * @return the presentation timestamp in milliseconds of the frame relative to the first
+	 * frame of the track.
+	 */
+	private long getPts(long rtpTimeStamp)
+	{
+		long diff = rtpTimeStamp - firstFrameRtpTimestamp;
+		if (diff < -(1L << 31))
+			diff += 1L << 32;
+		return diff * 1000 / clockRate;
+	}
+
 	/**
 	 * Returns <tt>true</tt> if the VP8 compressed frame contained in <tt>buf</tt> at offset
 	 * <tt>offset</tt> is a keyframe. TODO: move it to a more general class?
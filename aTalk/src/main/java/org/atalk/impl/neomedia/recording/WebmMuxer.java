@@ -0,0 +1,1166 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.recording;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.Logger;
+import org.atalk.util.concurrent.RecordRing;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes any number of audio and video tracks into a single WebM (Matroska) file without native
+ * code. The threads which deliver the frames only copy them into a preallocated
+ * <tt>RecordRing</tt> and never wait; a background thread drains the ring and streams the frames
+ * to the file as <tt>SimpleBlock</tt>s of <tt>Cluster</tt>s. A new cluster is started at every
+ * video keyframe and at least every {@link #MAX_CLUSTER_DURATION} milliseconds, and the clusters
+ * which start with a keyframe are indexed by <tt>Cues</tt>.
+ * <p>
+ * Nothing but the cues is kept in memory for the duration of a recording. The size of a cluster
+ * is patched in place when the cluster ends, and the <tt>SeekHead</tt>, the duration, the cues and
+ * the size of the <tt>Segment</tt> are written when the muxer is closed. The <tt>Tracks</tt> are
+ * written into space reserved after the <tt>Info</tt> whenever a track is added, so tracks may be
+ * added after writing has started (e.g. when another participant joins a recorded conference).
+ * <p>
+ * The timestamps of the frames are in milliseconds since {@link #getStartTime()}.
+ *
+ * @author Eng Chong Meng
+ */
+public class WebmMuxer
+		implements RecordRing.RecordHandler
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>WebmMuxer</tt> class and its instances for logging
+	 * output.
+	 */
+	private static final Logger logger = Logger.getLogger(WebmMuxer.class);
+
+	/**
+	 * The name of the property which specifies the capacity in bytes of the ring through which the
+	 * frames are handed to the writing thread.
+	 */
+	private static final String RING_CAPACITY_PNAME
+			= WebmMuxer.class.getName() + ".RING_CAPACITY";
+
+	/**
+	 * The default capacity in bytes of the ring through which the frames are handed to the writing
+	 * thread, i.e. a few seconds of a video track at the bitrates of a call. The writing thread is
+	 * woken up by every frame, so the ring only has to absorb the stalls of the file system.
+	 */
+	private static final int DEFAULT_RING_CAPACITY = 1 << 20;
+
+	/**
+	 * The Matroska codec ID of VP8.
+	 */
+	public static final String CODEC_VP8 = "V_VP8";
+
+	/**
+	 * The Matroska codec ID of Opus.
+	 */
+	public static final String CODEC_OPUS = "A_OPUS";
+
+	/**
+	 * The maximum duration in milliseconds of a cluster.
+	 */
+	private static final int MAX_CLUSTER_DURATION = 5000;
+
+	/**
+	 * The minimum interval in milliseconds between two cue points.
+	 */
+	private static final int MIN_CUE_INTERVAL = 1000;
+
+	/**
+	 * The maximum number of tracks, limited by the one-byte track numbers of the blocks.
+	 */
+	private static final int MAX_TRACKS = 126;
+
+	/**
+	 * The number of bytes reserved for the <tt>SeekHead</tt>.
+	 */
+	private static final int SEEK_HEAD_RESERVED = 96;
+
+	/**
+	 * The number of bytes reserved for the <tt>Tracks</tt>.
+	 */
+	private static final int TRACKS_RESERVED = 4096;
+
+	/**
+	 * The length in bytes of the header which precedes a frame in the ring: the track number, the
+	 * flags and the timestamp.
+	 */
+	private static final int FRAME_HEADER_LENGTH = 16;
+
+	/**
+	 * The flag of a frame which is a keyframe.
+	 */
+	private static final int FLAG_KEY = 0x80;
+
+	/**
+	 * The flag of a frame which is not to be displayed.
+	 */
+	private static final int FLAG_INVISIBLE = 0x08;
+
+	/**
+	 * The value of an 8-byte element size which marks the size as unknown.
+	 */
+	private static final long UNKNOWN_SIZE = 0x01FFFFFFFFFFFFFFL;
+
+	private static final int ID_EBML = 0x1A45DFA3;
+	private static final int ID_EBML_VERSION = 0x4286;
+	private static final int ID_EBML_READ_VERSION = 0x42F7;
+	private static final int ID_EBML_MAX_ID_LENGTH = 0x42F2;
+	private static final int ID_EBML_MAX_SIZE_LENGTH = 0x42F3;
+	private static final int ID_DOC_TYPE = 0x4282;
+	private static final int ID_DOC_TYPE_VERSION = 0x4287;
+	private static final int ID_DOC_TYPE_READ_VERSION = 0x4285;
+	private static final int ID_SEGMENT = 0x18538067;
+	private static final int ID_SEEK_HEAD = 0x114D9B74;
+	private static final int ID_SEEK = 0x4DBB;
+	private static final int ID_SEEK_ID = 0x53AB;
+	private static final int ID_SEEK_POSITION = 0x53AC;
+	private static final int ID_INFO = 0x1549A966;
+	private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+	private static final int ID_DURATION = 0x4489;
+	private static final int ID_MUXING_APP = 0x4D80;
+	private static final int ID_WRITING_APP = 0x5741;
+	private static final int ID_TRACKS = 0x1654AE6B;
+	private static final int ID_TRACK_ENTRY = 0xAE;
+	private static final int ID_TRACK_NUMBER = 0xD7;
+	private static final int ID_TRACK_UID = 0x73C5;
+	private static final int ID_TRACK_TYPE = 0x83;
+	private static final int ID_FLAG_LACING = 0x9C;
+	private static final int ID_NAME = 0x536E;
+	private static final int ID_CODEC_ID = 0x86;
+	private static final int ID_CODEC_PRIVATE = 0x63A2;
+	private static final int ID_CODEC_DELAY = 0x56AA;
+	private static final int ID_SEEK_PRE_ROLL = 0x56BB;
+	private static final int ID_VIDEO = 0xE0;
+	private static final int ID_PIXEL_WIDTH = 0xB0;
+	private static final int ID_PIXEL_HEIGHT = 0xBA;
+	private static final int ID_AUDIO = 0xE1;
+	private static final int ID_SAMPLING_FREQUENCY = 0xB5;
+	private static final int ID_CHANNELS = 0x9F;
+	private static final int ID_CLUSTER = 0x1F43B675;
+	private static final int ID_TIMECODE = 0xE7;
+	private static final int ID_SIMPLE_BLOCK = 0xA3;
+	private static final int ID_CUES = 0x1C53BB6B;
+	private static final int ID_CUE_POINT = 0xBB;
+	private static final int ID_CUE_TIME = 0xB3;
+	private static final int ID_CUE_TRACK_POSITIONS = 0xB7;
+	private static final int ID_CUE_TRACK = 0xF7;
+	private static final int ID_CUE_CLUSTER_POSITION = 0xF1;
+	private static final int ID_VOID = 0xEC;
+
+	/**
+	 * The name of the file into which this muxer writes.
+	 */
+	private final String filename;
+
+	/**
+	 * The time as returned by <tt>System.currentTimeMillis()</tt> which corresponds to the
+	 * timestamp zero.
+	 */
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * The ring through which the frames are handed to {@link #writerThread}.
+	 */
+	private final RecordRing ring;
+
+	/**
+	 * The encoded <tt>TrackEntry</tt> elements of the tracks added to this muxer, the track with
+	 * number <tt>n</tt> at index <tt>n - 1</tt>.
+	 */
+	private final List<byte[]> trackEntries = new ArrayList<>();
+
+	/**
+	 * Whether the tracks added to this muxer are video tracks, indexed by track number.
+	 */
+	private final boolean[] videoTracks = new boolean[MAX_TRACKS + 1];
+
+	/**
+	 * Whether the frames of a track are to be dropped until its next keyframe because a frame of
+	 * the track has been dropped, indexed by track number.
+	 */
+	private final boolean[] waitingForKeyframe = new boolean[MAX_TRACKS + 1];
+
+	/**
+	 * The total length in bytes of {@link #trackEntries}.
+	 */
+	private int trackEntriesLength;
+
+	/**
+	 * Whether at least one video track has been added to this muxer.
+	 */
+	private volatile boolean hasVideo;
+
+	/**
+	 * The file into which this muxer writes.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * The channel of {@link #file}.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The buffer into which the elements are encoded before they are written to
+	 * {@link #channel}.
+	 */
+	private final ByteBuffer out = ByteBuffer.allocate(1 << 16);
+
+	/**
+	 * A buffer which wraps the storage of {@link #ring} so that large frames are written without
+	 * copying them into {@link #out}.
+	 */
+	private final ByteBuffer ringView;
+
+	/**
+	 * The position in {@link #file} at which the contents of {@link #out} are to be written.
+	 */
+	private long outPosition;
+
+	/**
+	 * The position in {@link #file} of the data of the <tt>Segment</tt>, to which the positions
+	 * in the <tt>SeekHead</tt> and the <tt>Cues</tt> are relative.
+	 */
+	private long segmentDataPosition;
+
+	/**
+	 * The position in {@link #file} of the <tt>Info</tt> element.
+	 */
+	private long infoPosition;
+
+	/**
+	 * The position in {@link #file} of the value of the <tt>Duration</tt> element.
+	 */
+	private long durationPosition;
+
+	/**
+	 * The position in {@link #file} of the space reserved for the <tt>Tracks</tt>.
+	 */
+	private long tracksPosition;
+
+	/**
+	 * The number of tracks written into the <tt>Tracks</tt> so far. Only accessed by
+	 * {@link #writerThread}.
+	 */
+	private int writtenTrackCount;
+
+	/**
+	 * The position in {@link #file} of the current cluster or <tt>-1</tt> if no cluster is open.
+	 */
+	private long clusterPosition = -1;
+
+	/**
+	 * The timestamp of the current cluster.
+	 */
+	private long clusterTimecode;
+
+	/**
+	 * The greatest timestamp of the frames written so far.
+	 */
+	private long maxTimecode;
+
+	/**
+	 * The times of the cue points.
+	 */
+	private long[] cueTimes = new long[64];
+
+	/**
+	 * The positions relative to {@link #segmentDataPosition} of the clusters of the cue points.
+	 */
+	private long[] cuePositions = new long[64];
+
+	/**
+	 * The track numbers of the cue points.
+	 */
+	private int[] cueTracks = new int[64];
+
+	/**
+	 * The number of cue points.
+	 */
+	private int cueCount;
+
+	/**
+	 * Whether {@link #close()} has been called.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Whether writing to {@link #file} has failed.
+	 */
+	private volatile boolean failed;
+
+	/**
+	 * Whether {@link #writerThread} is (about to be) parked until a frame is queued.
+	 */
+	private volatile boolean writerParked;
+
+	/**
+	 * The thread which drains {@link #ring} and writes to {@link #file}.
+	 */
+	private final Thread writerThread;
+
+	/**
+	 * Initializes a new <tt>WebmMuxer</tt> which writes into a specific file and starts its
+	 * writing thread.
+	 *
+	 * @param filename
+	 * 		the name of the file to write into
+	 * @throws IOException
+	 * 		if the file cannot be opened or its header cannot be written
+	 */
+	public WebmMuxer(String filename)
+			throws IOException
+	{
+		int ringCapacity = DEFAULT_RING_CAPACITY;
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+		if (cfg != null)
+			ringCapacity = cfg.getInt(RING_CAPACITY_PNAME, ringCapacity);
+
+		this.filename = filename;
+		ring = new RecordRing(ringCapacity);
+		ringView = ByteBuffer.wrap(ring.getBuffer());
+
+		file = new RandomAccessFile(filename, "rw");
+		try {
+			file.setLength(0);
+			channel = file.getChannel();
+			writeHeader();
+		}
+		catch (IOException ioe) {
+			file.close();
+			throw ioe;
+		}
+
+		writerThread = new Thread("WebmMuxer " + filename)
+		{
+			@Override
+			public void run()
+			{
+				runInWriterThread();
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Gets the name of the file into which this muxer writes.
+	 *
+	 * @return the name of the file into which this muxer writes
+	 */
+	public String getFilename()
+	{
+		return filename;
+	}
+
+	/**
+	 * Gets the time as returned by <tt>System.currentTimeMillis()</tt> which corresponds to the
+	 * timestamp zero of the frames.
+	 *
+	 * @return the time which corresponds to the timestamp zero of the frames
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	/**
+	 * Gets the number of frames which have been dropped because the ring was full.
+	 *
+	 * @return the number of frames which have been dropped because the ring was full
+	 */
+	public long getDroppedCount()
+	{
+		return ring.getDroppedCount();
+	}
+
+	/**
+	 * Adds a video track.
+	 *
+	 * @param codecId
+	 * 		the Matroska codec ID of the track e.g. {@link #CODEC_VP8}
+	 * @param name
+	 * 		the name of the track or <tt>null</tt>
+	 * @param width
+	 * 		the width in pixels of the video
+	 * @param height
+	 * 		the height in pixels of the video
+	 * @return the number of the new track or <tt>-1</tt> if no more tracks can be added
+	 */
+	public int addVideoTrack(String codecId, String name, int width, int height)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		int video = beginMaster(buf, ID_VIDEO);
+
+		putUInt(buf, ID_PIXEL_WIDTH, width);
+		putUInt(buf, ID_PIXEL_HEIGHT, height);
+		endMaster(buf, video);
+		buf.flip();
+		return addTrack(1, codecId, name, null, 0, buf);
+	}
+
+	/**
+	 * Adds an audio track. The codec private data and the delays which Matroska requires for
+	 * {@link #CODEC_OPUS} are filled in.
+	 *
+	 * @param codecId
+	 * 		the Matroska codec ID of the track e.g. {@link #CODEC_OPUS}
+	 * @param name
+	 * 		the name of the track or <tt>null</tt>
+	 * @param samplingFrequency
+	 * 		the sampling frequency in Hz of the audio
+	 * @param channels
+	 * 		the number of channels of the audio
+	 * @return the number of the new track or <tt>-1</tt> if no more tracks can be added
+	 */
+	public int addAudioTrack(String codecId, String name, int samplingFrequency, int channels)
+	{
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		int audio = beginMaster(buf, ID_AUDIO);
+
+		putFloat(buf, ID_SAMPLING_FREQUENCY, samplingFrequency);
+		putUInt(buf, ID_CHANNELS, channels);
+		endMaster(buf, audio);
+		buf.flip();
+
+		byte[] codecPrivate = null;
+		int preSkip = 0;
+
+		if (CODEC_OPUS.equals(codecId)) {
+			// RFC 7845 identification header, which decoders expect as the codec private data.
+			preSkip = 312;
+			codecPrivate = new byte[19];
+			System.arraycopy("OpusHead".getBytes(), 0, codecPrivate, 0, 8);
+			codecPrivate[8] = 1;
+			codecPrivate[9] = (byte) channels;
+			codecPrivate[10] = (byte) preSkip;
+			codecPrivate[11] = (byte) (preSkip >> 8);
+			codecPrivate[12] = (byte) samplingFrequency;
+			codecPrivate[13] = (byte) (samplingFrequency >> 8);
+			codecPrivate[14] = (byte) (samplingFrequency >> 16);
+			codecPrivate[15] = (byte) (samplingFrequency >> 24);
+		}
+		return addTrack(2, codecId, name, codecPrivate, preSkip, buf);
+	}
+
+	/**
+	 * Encodes the <tt>TrackEntry</tt> of a new track and adds it to {@link #trackEntries}. The
+	 * writing thread writes the <tt>Tracks</tt> anew before the first frame of the track.
+	 *
+	 * @param trackType
+	 * 		the Matroska track type, <tt>1</tt> for video and <tt>2</tt> for audio
+	 * @param codecId
+	 * 		the Matroska codec ID of the track
+	 * @param name
+	 * 		the name of the track or <tt>null</tt>
+	 * @param codecPrivate
+	 * 		the codec private data of the track or <tt>null</tt>
+	 * @param preSkip
+	 * 		the number of samples at 48 kHz which the decoder of an Opus track is to discard
+	 * @param settings
+	 * 		the encoded <tt>Video</tt> or <tt>Audio</tt> element of the track
+	 * @return the number of the new track or <tt>-1</tt> if no more tracks can be added
+	 */
+	private synchronized int addTrack(int trackType, String codecId, String name,
+			byte[] codecPrivate, int preSkip, ByteBuffer settings)
+	{
+		if (closed || failed)
+			return -1;
+
+		int number = trackEntries.size() + 1;
+		ByteBuffer buf = ByteBuffer.allocate(256);
+		int entry = beginMaster(buf, ID_TRACK_ENTRY);
+
+		putUInt(buf, ID_TRACK_NUMBER, number);
+		putUInt(buf, ID_TRACK_UID, (startTime << 8) + number);
+		putUInt(buf, ID_TRACK_TYPE, trackType);
+		putUInt(buf, ID_FLAG_LACING, 0);
+		if (name != null)
+			putString(buf, ID_NAME, name);
+		putString(buf, ID_CODEC_ID, codecId);
+		if (codecPrivate != null) {
+			putId(buf, ID_CODEC_PRIVATE);
+			putSize(buf, codecPrivate.length);
+			buf.put(codecPrivate);
+		}
+		if (preSkip != 0) {
+			putUInt(buf, ID_CODEC_DELAY, preSkip * 1000000000L / 48000);
+			putUInt(buf, ID_SEEK_PRE_ROLL, 80000000L);
+		}
+		buf.put(settings);
+		endMaster(buf, entry);
+
+		// Leave room for the Tracks header and for a Void element after the Tracks.
+		if (number > MAX_TRACKS
+				|| 12 + trackEntriesLength + buf.position() + 9 > TRACKS_RESERVED) {
+			logger.warn("Cannot add track " + number + " to " + filename);
+			return -1;
+		}
+
+		trackEntries.add(Arrays.copyOf(buf.array(), buf.position()));
+		trackEntriesLength += buf.position();
+		if (trackType == 1) {
+			videoTracks[number] = true;
+			hasVideo = true;
+		}
+		return number;
+	}
+
+	/**
+	 * Queues a frame to be written. Never waits: the frame is copied into the ring and dropped if
+	 * the ring is full. After a frame of a video track has been dropped, the following frames of
+	 * the track are dropped until its next keyframe so that the file never contains frames which
+	 * cannot be decoded.
+	 *
+	 * @param track
+	 * 		the number of the track of the frame, as returned when the track was added
+	 * @param buf
+	 * 		the buffer which contains the frame
+	 * @param off
+	 * 		the offset in <tt>buf</tt> at which the frame starts
+	 * @param len
+	 * 		the length in bytes of the frame
+	 * @param timecode
+	 * 		the timestamp of the frame in milliseconds since {@link #getStartTime()}
+	 * @param key
+	 * 		whether the frame is a keyframe
+	 * @param invisible
+	 * 		whether the frame is not to be displayed
+	 * @return <tt>true</tt> if the frame has been queued, <tt>false</tt> if it has been dropped
+	 */
+	public boolean writeFrame(int track, byte[] buf, int off, int len, long timecode,
+			boolean key, boolean invisible)
+	{
+		if (closed || failed || track < 1 || track > MAX_TRACKS)
+			return false;
+		if (waitingForKeyframe[track] && !key)
+			return false;
+
+		int index = ring.claim(FRAME_HEADER_LENGTH + len);
+
+		if (index == -1) {
+			if (videoTracks[track])
+				waitingForKeyframe[track] = true;
+			return false;
+		}
+		waitingForKeyframe[track] = false;
+
+		byte[] ringBuffer = ring.getBuffer();
+		int flags = (key ? FLAG_KEY : 0) | (invisible ? FLAG_INVISIBLE : 0);
+
+		writeInt(ringBuffer, index, track);
+		writeInt(ringBuffer, index + 4, flags);
+		writeInt(ringBuffer, index + 8, (int) (timecode >>> 32));
+		writeInt(ringBuffer, index + 12, (int) timecode);
+		System.arraycopy(buf, off, ringBuffer, index + FRAME_HEADER_LENGTH, len);
+		ring.commit(index, FRAME_HEADER_LENGTH + len);
+		if (writerParked)
+			LockSupport.unpark(writerThread);
+		return true;
+	}
+
+	/**
+	 * Writes the queued frames, finishes the file and closes it. Waits for the writing thread to
+	 * finish so must not be called on a thread which is not to block.
+	 */
+	public void close()
+	{
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		LockSupport.unpark(writerThread);
+
+		boolean interrupted = false;
+
+		while (writerThread.isAlive()) {
+			try {
+				writerThread.join();
+			}
+			catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		long dropped = ring.getDroppedCount();
+
+		if (dropped != 0)
+			logger.warn("Dropped " + dropped + " frames while recording " + filename);
+	}
+
+	/**
+	 * Runs in {@link #writerThread}: writes the queued frames until this muxer is closed and
+	 * then finishes and closes the file.
+	 */
+	private void runInWriterThread()
+	{
+		try {
+			while (true) {
+				if (ring.drain(this) == 0) {
+					if (closed && ring.isEmpty())
+						break;
+					flush();
+
+					/*
+					 * Announce the parking before checking the ring a last time: a frame queued
+					 * after the check sees the announcement and unparks us.
+					 */
+					writerParked = true;
+					if (!closed && ring.isEmpty())
+						LockSupport.park(this);
+					writerParked = false;
+				}
+			}
+			writeTrailer();
+		}
+		catch (IOException ioe) {
+			failed = true;
+			logger.error("Failed to write " + filename, ioe);
+		}
+		finally {
+			try {
+				file.close();
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to close " + filename, ioe);
+			}
+		}
+	}
+
+	/**
+	 * Writes a frame drained from {@link #ring} as a <tt>SimpleBlock</tt>, starting a new cluster
+	 * first if needed.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void handleRecord(byte[] buf, int off, int len)
+			throws IOException
+	{
+		int track = readInt(buf, off);
+		int flags = readInt(buf, off + 4);
+		long timecode = ((long) readInt(buf, off + 8) << 32) | (readInt(buf, off + 12) & 0xFFFFFFFFL);
+		int dataOff = off + FRAME_HEADER_LENGTH;
+		int dataLen = len - FRAME_HEADER_LENGTH;
+		boolean key = (flags & FLAG_KEY) != 0;
+
+		if (track > writtenTrackCount)
+			writeTracks();
+
+		long relative = timecode - clusterTimecode;
+
+		if (clusterPosition == -1
+				|| relative >= MAX_CLUSTER_DURATION
+				|| relative < Short.MIN_VALUE
+				|| (key && videoTracks[track] && relative > 0)) {
+			startCluster(timecode, key ? track : 0);
+			relative = timecode - clusterTimecode;
+		}
+		if (timecode > maxTimecode)
+			maxTimecode = timecode;
+
+		ensure(16);
+		putId(out, ID_SIMPLE_BLOCK);
+		putSize(out, dataLen + 4);
+		out.put((byte) (0x80 | track));
+		out.putShort((short) relative);
+		out.put((byte) flags);
+		if (dataLen <= out.remaining()) {
+			out.put(buf, dataOff, dataLen);
+		}
+		else {
+			flush();
+			ringView.limit(dataOff + dataLen).position(dataOff);
+			while (ringView.hasRemaining())
+				outPosition += channel.write(ringView, outPosition);
+			ringView.clear();
+		}
+	}
+
+	/**
+	 * Ends the current cluster, if any, and starts a new one.
+	 *
+	 * @param timecode
+	 * 		the timestamp of the new cluster
+	 * @param keyTrack
+	 * 		the number of the track of which a keyframe starts the new cluster or <tt>0</tt>
+	 */
+	private void startCluster(long timecode, int keyTrack)
+			throws IOException
+	{
+		endCluster();
+
+		ensure(32);
+		clusterPosition = outPosition + out.position();
+		clusterTimecode = Math.max(timecode, 0);
+		putId(out, ID_CLUSTER);
+		out.putLong(UNKNOWN_SIZE);
+		putUInt(out, ID_TIMECODE, clusterTimecode);
+
+		if (keyTrack != 0 && (videoTracks[keyTrack] || !hasVideo)
+				&& (cueCount == 0 || clusterTimecode - cueTimes[cueCount - 1] >= MIN_CUE_INTERVAL)) {
+			if (cueCount == cueTimes.length) {
+				cueTimes = Arrays.copyOf(cueTimes, cueCount * 2);
+				cuePositions = Arrays.copyOf(cuePositions, cueCount * 2);
+				cueTracks = Arrays.copyOf(cueTracks, cueCount * 2);
+			}
+			cueTimes[cueCount] = clusterTimecode;
+			cuePositions[cueCount] = clusterPosition - segmentDataPosition;
+			cueTracks[cueCount] = keyTrack;
+			cueCount++;
+		}
+	}
+
+	/**
+	 * Patches the size of the current cluster, if any.
+	 */
+	private void endCluster()
+			throws IOException
+	{
+		if (clusterPosition == -1)
+			return;
+
+		long sizePosition = clusterPosition + 4;
+
+		flush();
+		patchSize(sizePosition, outPosition - sizePosition - 8);
+		clusterPosition = -1;
+	}
+
+	/**
+	 * Writes the EBML header, the start of the <tt>Segment</tt> and the <tt>Info</tt> and reserves
+	 * space for the <tt>SeekHead</tt> and the <tt>Tracks</tt>.
+	 */
+	private void writeHeader()
+			throws IOException
+	{
+		int ebml = beginMaster(out, ID_EBML);
+
+		putUInt(out, ID_EBML_VERSION, 1);
+		putUInt(out, ID_EBML_READ_VERSION, 1);
+		putUInt(out, ID_EBML_MAX_ID_LENGTH, 4);
+		putUInt(out, ID_EBML_MAX_SIZE_LENGTH, 8);
+		putString(out, ID_DOC_TYPE, "webm");
+		putUInt(out, ID_DOC_TYPE_VERSION, 4);
+		putUInt(out, ID_DOC_TYPE_READ_VERSION, 2);
+		endMaster(out, ebml);
+
+		putId(out, ID_SEGMENT);
+		out.putLong(UNKNOWN_SIZE);
+		segmentDataPosition = out.position();
+
+		putVoid(out, SEEK_HEAD_RESERVED);
+
+		infoPosition = out.position();
+		int info = beginMaster(out, ID_INFO);
+
+		putUInt(out, ID_TIMECODE_SCALE, 1000000);
+		putString(out, ID_MUXING_APP, "aTalk");
+		putString(out, ID_WRITING_APP, "aTalk");
+		putId(out, ID_DURATION);
+		putSize(out, 8);
+		durationPosition = out.position();
+		out.putDouble(0);
+		endMaster(out, info);
+
+		tracksPosition = out.position();
+		putVoid(out, TRACKS_RESERVED);
+		flush();
+	}
+
+	/**
+	 * Writes the <tt>Tracks</tt> with all the tracks added so far into the space reserved for
+	 * them.
+	 */
+	private void writeTracks()
+			throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(TRACKS_RESERVED);
+		int count;
+
+		synchronized (this) {
+			count = trackEntries.size();
+
+			int tracks = beginMaster(buf, ID_TRACKS);
+
+			for (byte[] entry : trackEntries)
+				buf.put(entry);
+			endMaster(buf, tracks);
+		}
+		putVoid(buf, buf.remaining());
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf, tracksPosition + buf.position());
+		writtenTrackCount = count;
+	}
+
+	/**
+	 * Ends the current cluster and writes the <tt>Cues</tt>, the <tt>SeekHead</tt>, the duration
+	 * and the size of the <tt>Segment</tt>.
+	 */
+	private void writeTrailer()
+			throws IOException
+	{
+		endCluster();
+
+		long cuesPosition = -1;
+
+		if (cueCount != 0) {
+			long cuesSize = 0;
+
+			for (int i = 0; i < cueCount; i++)
+				cuesSize += 2 + getCuePointSize(i);
+
+			cuesPosition = outPosition + out.position();
+			ensure(12);
+			putId(out, ID_CUES);
+			putSize8(out, cuesSize);
+			for (int i = 0; i < cueCount; i++) {
+				ensure(40);
+				putId(out, ID_CUE_POINT);
+				putSize(out, getCuePointSize(i));
+				putUInt(out, ID_CUE_TIME, cueTimes[i]);
+				putId(out, ID_CUE_TRACK_POSITIONS);
+				putSize(out, getCueTrackPositionsSize(i));
+				putUInt(out, ID_CUE_TRACK, cueTracks[i]);
+				putUInt(out, ID_CUE_CLUSTER_POSITION, cuePositions[i]);
+			}
+		}
+		flush();
+
+		ByteBuffer buf = ByteBuffer.allocate(SEEK_HEAD_RESERVED);
+		int seekHead = beginMaster(buf, ID_SEEK_HEAD);
+
+		putSeek(buf, ID_INFO, infoPosition - segmentDataPosition);
+		putSeek(buf, ID_TRACKS, tracksPosition - segmentDataPosition);
+		if (cuesPosition != -1)
+			putSeek(buf, ID_CUES, cuesPosition - segmentDataPosition);
+		endMaster(buf, seekHead);
+		putVoid(buf, buf.remaining());
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf, segmentDataPosition + buf.position());
+
+		buf = ByteBuffer.allocate(8);
+		buf.putDouble(maxTimecode).flip();
+		while (buf.hasRemaining())
+			channel.write(buf, durationPosition + buf.position());
+
+		patchSize(segmentDataPosition - 8, outPosition - segmentDataPosition);
+	}
+
+	/**
+	 * Gets the size of the data of a <tt>CuePoint</tt>.
+	 *
+	 * @param i
+	 * 		the index of the cue point
+	 * @return the size of the data of the <tt>CuePoint</tt> with index <tt>i</tt>
+	 */
+	private int getCuePointSize(int i)
+	{
+		return 2 + getUIntLength(cueTimes[i]) + 2 + getCueTrackPositionsSize(i);
+	}
+
+	/**
+	 * Gets the size of the data of the <tt>CueTrackPositions</tt> of a cue point.
+	 *
+	 * @param i
+	 * 		the index of the cue point
+	 * @return the size of the data of the <tt>CueTrackPositions</tt> of the cue point with index
+	 * <tt>i</tt>
+	 */
+	private int getCueTrackPositionsSize(int i)
+	{
+		return 2 + getUIntLength(cueTracks[i]) + 2 + getUIntLength(cuePositions[i]);
+	}
+
+	/**
+	 * Writes an 8-byte element size at a specific position in {@link #file}.
+	 *
+	 * @param position
+	 * 		the position in {@link #file} of the size
+	 * @param size
+	 * 		the size to write
+	 */
+	private void patchSize(long position, long size)
+			throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(8);
+
+		putSize8(buf, size);
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf, position + buf.position());
+	}
+
+	/**
+	 * Makes sure that {@link #out} has room for a specific number of bytes.
+	 *
+	 * @param length
+	 * 		the number of bytes
+	 */
+	private void ensure(int length)
+			throws IOException
+	{
+		if (out.remaining() < length)
+			flush();
+	}
+
+	/**
+	 * Writes the contents of {@link #out} to {@link #file}.
+	 */
+	private void flush()
+			throws IOException
+	{
+		out.flip();
+		while (out.hasRemaining())
+			outPosition += channel.write(out, outPosition);
+		out.clear();
+	}
+
+	/**
+	 * Writes the ID and a placeholder for the 8-byte size of a master element.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID of the element
+	 * @return the position in <tt>buf</tt> at which the data of the element starts
+	 */
+	private static int beginMaster(ByteBuffer buf, int id)
+	{
+		putId(buf, id);
+		buf.putLong(UNKNOWN_SIZE);
+		return buf.position();
+	}
+
+	/**
+	 * Writes the size of a master element started with {@link #beginMaster(ByteBuffer, int)}.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param dataPosition
+	 * 		the position returned by {@link #beginMaster(ByteBuffer, int)}
+	 */
+	private static void endMaster(ByteBuffer buf, int dataPosition)
+	{
+		buf.putLong(dataPosition - 8, 0x0100000000000000L | (buf.position() - dataPosition));
+	}
+
+	/**
+	 * Writes an element ID.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID to write
+	 */
+	private static void putId(ByteBuffer buf, int id)
+	{
+		if ((id & 0xFF000000) != 0)
+			buf.put((byte) (id >>> 24));
+		if ((id & 0xFFFF0000) != 0)
+			buf.put((byte) (id >>> 16));
+		if ((id & 0xFFFFFF00) != 0)
+			buf.put((byte) (id >>> 8));
+		buf.put((byte) id);
+	}
+
+	/**
+	 * Writes an element size with as few bytes as possible.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param size
+	 * 		the size to write
+	 */
+	private static void putSize(ByteBuffer buf, long size)
+	{
+		int length = 1;
+
+		while (length < 8 && size >= (1L << (7 * length)) - 1)
+			length++;
+		for (int i = length - 1; i >= 0; i--) {
+			long b = size >>> (8 * i);
+
+			if (i == length - 1)
+				b |= 0x80 >> (length - 1);
+			buf.put((byte) b);
+		}
+	}
+
+	/**
+	 * Writes an element size with 8 bytes.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param size
+	 * 		the size to write
+	 */
+	private static void putSize8(ByteBuffer buf, long size)
+	{
+		buf.putLong(0x0100000000000000L | size);
+	}
+
+	/**
+	 * Gets the number of bytes of an unsigned integer element value.
+	 *
+	 * @param value
+	 * 		the value
+	 * @return the number of bytes of <tt>value</tt>
+	 */
+	private static int getUIntLength(long value)
+	{
+		int length = 1;
+
+		while (length < 8 && (value >>> (8 * length)) != 0)
+			length++;
+		return length;
+	}
+
+	/**
+	 * Writes an unsigned integer element.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID of the element
+	 * @param value
+	 * 		the value of the element
+	 */
+	private static void putUInt(ByteBuffer buf, int id, long value)
+	{
+		int length = getUIntLength(value);
+
+		putId(buf, id);
+		putSize(buf, length);
+		for (int i = length - 1; i >= 0; i--)
+			buf.put((byte) (value >>> (8 * i)));
+	}
+
+	/**
+	 * Writes an 8-byte float element.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID of the element
+	 * @param value
+	 * 		the value of the element
+	 */
+	private static void putFloat(ByteBuffer buf, int id, double value)
+	{
+		putId(buf, id);
+		putSize(buf, 8);
+		buf.putDouble(value);
+	}
+
+	/**
+	 * Writes an ASCII string element.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID of the element
+	 * @param value
+	 * 		the value of the element
+	 */
+	private static void putString(ByteBuffer buf, int id, String value)
+	{
+		putId(buf, id);
+		putSize(buf, value.length());
+		for (int i = 0; i < value.length(); i++)
+			buf.put((byte) value.charAt(i));
+	}
+
+	/**
+	 * Writes a <tt>Seek</tt> element.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param id
+	 * 		the ID of the element which is sought
+	 * @param position
+	 * 		the position of the sought element relative to the data of the <tt>Segment</tt>
+	 */
+	private static void putSeek(ByteBuffer buf, int id, long position)
+	{
+		putId(buf, ID_SEEK);
+		putSize(buf, 7 + 3 + getUIntLength(position));
+		putId(buf, ID_SEEK_ID);
+		putSize(buf, 4);
+		buf.putInt(id);
+		putUInt(buf, ID_SEEK_POSITION, position);
+	}
+
+	/**
+	 * Writes a <tt>Void</tt> element which occupies a specific number of bytes.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param length
+	 * 		the total length in bytes of the element, zero or at least 9
+	 */
+	private static void putVoid(ByteBuffer buf, int length)
+	{
+		if (length == 0)
+			return;
+
+		putId(buf, ID_VOID);
+		putSize8(buf, length - 9);
+		for (int i = 9; i < length; i++)
+			buf.put((byte) 0);
+	}
+
+	/**
+	 * Reads a big-endian <tt>int</tt>.
+	 *
+	 * @param buf
+	 * 		the buffer to read from
+	 * @param off
+	 * 		the offset in <tt>buf</tt> of the <tt>int</tt>
+	 * @return the <tt>int</tt> at <tt>off</tt> in <tt>buf</tt>
+	 */
+	private static int readInt(byte[] buf, int off)
+	{
+		return ((buf[off] & 0xFF) << 24) | ((buf[off + 1] & 0xFF) << 16)
+				| ((buf[off + 2] & 0xFF) << 8) | (buf[off + 3] & 0xFF);
+	}
+
+	/**
+	 * Writes a big-endian <tt>int</tt>.
+	 *
+	 * @param buf
+	 * 		the buffer to write into
+	 * @param off
+	 * 		the offset in <tt>buf</tt> at which to write
+	 * @param value
+	 * 		the <tt>int</tt> to write
+	 */
+	private static void writeInt(byte[] buf, int off, int value)
+	{
+		buf[off] = (byte) (value >>> 24);
+		buf[off + 1] = (byte) (value >>> 16);
+		buf[off + 2] = (byte) (value >>> 8);
+		buf[off + 3] = (byte) value;
+	}
+}
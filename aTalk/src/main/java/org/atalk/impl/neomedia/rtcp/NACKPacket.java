@@ -127,6 +127,23 @@ public class NACKPacket extends RTCPFBPacket
 		super(base);
 	}
 
+	/**
+	 * Initializes a new <tt>NACKPacket</tt> instance with specific "packet sender SSRC" and
+	 * "media source SSRC" values and a specific FCI field.
+	 *
+	 * @param senderSSRC
+	 * 		the value to use for the "packet sender SSRC" field.
+	 * @param sourceSSRC
+	 * 		the value to use for the "media source SSRC" field.
+	 * @param fci
+	 * 		the PID/BLP pairs of the NACK packet; not copied.
+	 */
+	public NACKPacket(long senderSSRC, long sourceSSRC, byte[] fci)
+	{
+		super(FMT, RTPFB, senderSSRC, sourceSSRC);
+		this.fci = fci;
+	}
+
 	/**
 	 * Initializes a new <tt>NACKPacket</tt> instance with specific "packet sender SSRC" and
 	 * "media source SSRC" values and which describes a specific set of sequence numbers.
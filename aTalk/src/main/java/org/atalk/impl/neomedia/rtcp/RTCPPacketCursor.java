@@ -0,0 +1,696 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtcp;
+
+import net.sf.fmj.media.rtp.*;
+
+import org.atalk.service.neomedia.ByteArrayBuffer;
+import org.atalk.util.RTPUtils;
+
+/**
+ * A flyweight, cursor-style view of the RTCP packets contained in a compound RTCP packet. Unlike
+ * {@link RTCPIterator} and {@link RTCPPacketParserEx}, it allocates nothing while walking the
+ * compound packet: the fields of the current RTCP packet (SR, RR, SDES, RTPFB/NACK, RTPFB/TCC,
+ * PSFB/REMB) are read in place from the underlying byte array. An instance may be reused for any
+ * number of compound packets by calling one of the <tt>reset</tt> methods.
+ * <p>
+ * The <tt>toXXXPacket</tt> methods materialize the current RTCP packet into the FMJ-based object
+ * model for the consumers which require it (e.g. <tt>RTCPPacketListener</tt>s).
+ * <p>
+ * Instances of this class are not thread-safe. If multiple threads access an instance
+ * concurrently, it must be synchronized externally.
+ *
+ * @author Eng Chong Meng
+ */
+public class RTCPPacketCursor
+{
+	/**
+	 * The length in bytes of the sender info of an SR packet.
+	 */
+	private static final int SENDER_INFO_LENGTH = 20;
+
+	/**
+	 * The length in bytes of a report block of an SR or RR packet.
+	 */
+	private static final int REPORT_BLOCK_LENGTH = 24;
+
+	/**
+	 * The unique identifier 'R' 'E' 'M' 'B' of an RTCP REMB packet.
+	 */
+	private static final int REMB_IDENTIFIER = ('R' << 24) | ('E' << 16) | ('M' << 8) | 'B';
+
+	/**
+	 * The <tt>ByteArrayBuffer</tt> which holds the compound RTCP packet, if this instance was reset
+	 * with one. Required by {@link #remove()} to update the length of the compound packet.
+	 */
+	private ByteArrayBuffer baf;
+
+	/**
+	 * The byte array which holds the compound RTCP packet.
+	 */
+	private byte[] buf;
+
+	/**
+	 * The offset in {@link #buf} of the current RTCP packet or, before the first call to
+	 * {@link #next()}, of the compound RTCP packet.
+	 */
+	private int off;
+
+	/**
+	 * The length in bytes of the current RTCP packet or <tt>0</tt> if there is no current RTCP
+	 * packet.
+	 */
+	private int len;
+
+	/**
+	 * The offset in {@link #buf} at which the compound RTCP packet ends.
+	 */
+	private int end;
+
+	/**
+	 * Initializes a new <tt>RTCPPacketCursor</tt> instance which is to be reset before use.
+	 */
+	public RTCPPacketCursor()
+	{
+	}
+
+	/**
+	 * Initializes a new <tt>RTCPPacketCursor</tt> instance positioned before the first RTCP
+	 * packet of a specific compound RTCP packet.
+	 *
+	 * @param baf
+	 * 		the <tt>ByteArrayBuffer</tt> which holds the compound RTCP packet
+	 */
+	public RTCPPacketCursor(ByteArrayBuffer baf)
+	{
+		reset(baf);
+	}
+
+	/**
+	 * Positions this cursor before the first RTCP packet of a specific compound RTCP packet.
+	 *
+	 * @param baf
+	 * 		the <tt>ByteArrayBuffer</tt> which holds the compound RTCP packet
+	 * @return this <tt>RTCPPacketCursor</tt>
+	 */
+	public RTCPPacketCursor reset(ByteArrayBuffer baf)
+	{
+		if (baf == null)
+			reset(null, 0, 0);
+		else
+			reset(baf.getBuffer(), baf.getOffset(), baf.getLength());
+		this.baf = baf;
+		return this;
+	}
+
+	/**
+	 * Positions this cursor before the first RTCP packet of a specific compound RTCP packet.
+	 *
+	 * @param buf
+	 * 		the byte array which holds the compound RTCP packet
+	 * @param off
+	 * 		the offset in <tt>buf</tt> at which the compound RTCP packet starts
+	 * @param len
+	 * 		the length in bytes of the compound RTCP packet
+	 * @return this <tt>RTCPPacketCursor</tt>
+	 */
+	public RTCPPacketCursor reset(byte[] buf, int off, int len)
+	{
+		this.baf = null;
+		this.buf = buf;
+		this.off = off;
+		this.len = 0;
+		this.end = (buf == null) ? off : Math.min(off + Math.max(len, 0), buf.length);
+		return this;
+	}
+
+	/**
+	 * Advances this cursor to the next RTCP packet of the compound RTCP packet.
+	 *
+	 * @return <tt>true</tt> if this cursor was positioned at a valid RTCP packet or
+	 * <tt>false</tt> if the compound RTCP packet has no more (valid) RTCP packets
+	 */
+	public boolean next()
+	{
+		if (buf == null)
+			return false;
+
+		int nextOff = off + len;
+		int remaining = end - nextOff;
+		int pktLen = RTCPHeaderUtils.getLength(buf, nextOff, remaining);
+
+		if (pktLen < RTCPHeader.SIZE || pktLen > remaining
+				|| RTCPHeaderUtils.getVersion(buf, nextOff, remaining) != RTCPHeader.VERSION) {
+			off = end;
+			len = 0;
+			return false;
+		}
+		off = nextOff;
+		len = pktLen;
+		return true;
+	}
+
+	/**
+	 * Removes the current RTCP packet from the compound RTCP packet by moving the RTCP packets
+	 * which follow it. This cursor is left positioned before the RTCP packet which followed the
+	 * removed one so that {@link #next()} continues the walk. Requires this cursor to have been
+	 * reset with a <tt>ByteArrayBuffer</tt> so that its length may be updated.
+	 *
+	 * @throws IllegalStateException
+	 * 		if there is no current RTCP packet or no <tt>ByteArrayBuffer</tt> to update
+	 */
+	public void remove()
+	{
+		if (len == 0 || baf == null)
+			throw new IllegalStateException();
+
+		System.arraycopy(buf, off + len, buf, off, end - off - len);
+		end -= len;
+		baf.setLength(baf.getLength() - len);
+		len = 0;
+	}
+
+	/**
+	 * @return the byte array which holds the compound RTCP packet
+	 */
+	public byte[] getBuffer()
+	{
+		return buf;
+	}
+
+	/**
+	 * @return the offset in {@link #getBuffer()} of the current RTCP packet
+	 */
+	public int getOffset()
+	{
+		return off;
+	}
+
+	/**
+	 * @return the length in bytes of the current RTCP packet
+	 */
+	public int getLength()
+	{
+		return len;
+	}
+
+	/**
+	 * @return the packet type (PT) of the current RTCP packet
+	 */
+	public int getPacketType()
+	{
+		return buf[off + 1] & 0xff;
+	}
+
+	/**
+	 * @return the 5-bit report count (RC) of an SR, RR or SDES packet or the feedback message
+	 * type (FMT) of an RTCP FB packet
+	 */
+	public int getReportCount()
+	{
+		return buf[off] & 0x1f;
+	}
+
+	/**
+	 * @return the SSRC of the sender of the current RTCP packet (of the first chunk in the case of
+	 * SDES) or <tt>-1</tt> if the packet is too short to carry it
+	 */
+	public long getSenderSSRC()
+	{
+		return (len < 8) ? -1 : readUnsignedInt(off + 4);
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is an SR which carries a full sender info
+	 */
+	public boolean isSR()
+	{
+		return getPacketType() == RTCPPacket.SR && len >= 8 + SENDER_INFO_LENGTH;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is an RR
+	 */
+	public boolean isRR()
+	{
+		return getPacketType() == RTCPPacket.RR;
+	}
+
+	/**
+	 * @return the most significant word of the NTP timestamp of the sender info of an SR
+	 */
+	public long getNtpTimestampMSW()
+	{
+		return readUnsignedInt(off + 8);
+	}
+
+	/**
+	 * @return the least significant word of the NTP timestamp of the sender info of an SR
+	 */
+	public long getNtpTimestampLSW()
+	{
+		return readUnsignedInt(off + 12);
+	}
+
+	/**
+	 * @return the RTP timestamp of the sender info of an SR
+	 */
+	public long getRtpTimestamp()
+	{
+		return readUnsignedInt(off + 16);
+	}
+
+	/**
+	 * @return the sender's packet count of the sender info of an SR
+	 */
+	public long getSenderPacketCount()
+	{
+		return readUnsignedInt(off + 20);
+	}
+
+	/**
+	 * @return the sender's octet count of the sender info of an SR
+	 */
+	public long getSenderOctetCount()
+	{
+		return readUnsignedInt(off + 24);
+	}
+
+	/**
+	 * Gets the number of report blocks of an SR or RR packet which are present in full within the
+	 * packet i.e. a report count which disagrees with the packet length is not trusted.
+	 *
+	 * @return the number of report blocks of an SR or RR packet
+	 */
+	public int getReportBlockCount()
+	{
+		int first = getReportBlockOffset(0);
+
+		if (first < 0)
+			return 0;
+		return Math.min(getReportCount(), (off + len - first) / REPORT_BLOCK_LENGTH);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the SSRC of the source which the <tt>i</tt>-th report block of an SR or RR is about
+	 */
+	public long getReportBlockSSRC(int i)
+	{
+		return readUnsignedInt(getReportBlockOffset(i));
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the fraction lost of the <tt>i</tt>-th report block of an SR or RR
+	 */
+	public int getFractionLost(int i)
+	{
+		return buf[getReportBlockOffset(i) + 4] & 0xff;
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the (signed, 24-bit) cumulative number of packets lost of the <tt>i</tt>-th report
+	 * block of an SR or RR
+	 */
+	public int getCumulativePacketsLost(int i)
+	{
+		int blockOff = getReportBlockOffset(i);
+
+		return (buf[blockOff + 5] << 16) | ((buf[blockOff + 6] & 0xff) << 8)
+				| (buf[blockOff + 7] & 0xff);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the extended highest sequence number received of the <tt>i</tt>-th report block of
+	 * an SR or RR
+	 */
+	public long getExtendedHighestSequenceNumber(int i)
+	{
+		return readUnsignedInt(getReportBlockOffset(i) + 8);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the interarrival jitter of the <tt>i</tt>-th report block of an SR or RR
+	 */
+	public long getJitter(int i)
+	{
+		return readUnsignedInt(getReportBlockOffset(i) + 12);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the last SR timestamp (LSR) of the <tt>i</tt>-th report block of an SR or RR
+	 */
+	public long getLSR(int i)
+	{
+		return readUnsignedInt(getReportBlockOffset(i) + 16);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the delay since last SR (DLSR) of the <tt>i</tt>-th report block of an SR or RR
+	 */
+	public long getDLSR(int i)
+	{
+		return readUnsignedInt(getReportBlockOffset(i) + 20);
+	}
+
+	/**
+	 * Gets the offset in {@link #getBuffer()} of a specific report block of the current SR or RR.
+	 *
+	 * @param i
+	 * 		the zero-based index of the report block
+	 * @return the offset of the <tt>i</tt>-th report block or <tt>-1</tt> if the current RTCP
+	 * packet is neither an SR nor an RR
+	 */
+	private int getReportBlockOffset(int i)
+	{
+		switch (getPacketType()) {
+			case RTCPPacket.SR:
+				return off + 8 + SENDER_INFO_LENGTH + i * REPORT_BLOCK_LENGTH;
+			case RTCPPacket.RR:
+				return off + 8 + i * REPORT_BLOCK_LENGTH;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Looks an SDES item of a specific type up in the chunk of a specific source of the current
+	 * SDES packet. The value of the item is <tt>getBuffer()[offset, offset + length)</tt> where
+	 * <tt>offset</tt> is the returned value and <tt>length</tt> is
+	 * <tt>getBuffer()[offset - 1] &amp; 0xff</tt>.
+	 *
+	 * @param ssrc
+	 * 		the SSRC/CSRC of the chunk to look the item up in
+	 * @param itemType
+	 * 		the type of the SDES item to look up e.g. <tt>RTCPSDESItem.CNAME</tt>
+	 * @return the offset in {@link #getBuffer()} of the value of the SDES item or <tt>-1</tt> if
+	 * there is no such item
+	 */
+	public int findSDESItem(long ssrc, int itemType)
+	{
+		if (getPacketType() != RTCPPacket.SDES)
+			return -1;
+
+		int pktEnd = off + len;
+		int chunkOff = off + 4;
+
+		for (int c = getReportCount(); c > 0 && chunkOff + 4 <= pktEnd; c--) {
+			boolean match = (readUnsignedInt(chunkOff) == ssrc);
+			int itemOff = chunkOff + 4;
+
+			// The list of items of a chunk is terminated by a null item.
+			while (itemOff < pktEnd && buf[itemOff] != 0) {
+				if (itemOff + 2 > pktEnd)
+					return -1;
+
+				int itemLen = buf[itemOff + 1] & 0xff;
+
+				if (itemOff + 2 + itemLen > pktEnd)
+					return -1;
+				if (match && (buf[itemOff] & 0xff) == itemType)
+					return itemOff + 2;
+				itemOff += 2 + itemLen;
+			}
+			if (match)
+				return -1;
+
+			// Skip the null item and the padding to the next 32-bit boundary.
+			chunkOff = off + (((itemOff - off) / 4) + 1) * 4;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is an RTPFB or a PSFB packet which carries
+	 * both the sender and the media source SSRCs
+	 */
+	public boolean isFB()
+	{
+		int pt = getPacketType();
+
+		return (pt == RTCPFBPacket.RTPFB || pt == RTCPFBPacket.PSFB) && len >= 12;
+	}
+
+	/**
+	 * @return the SSRC of the media source of an RTPFB or PSFB packet
+	 */
+	public long getMediaSSRC()
+	{
+		return readUnsignedInt(off + 8);
+	}
+
+	/**
+	 * @return the offset in {@link #getBuffer()} of the FCI of an RTPFB or PSFB packet
+	 */
+	public int getFCIOffset()
+	{
+		return off + 12;
+	}
+
+	/**
+	 * @return the length in bytes of the FCI of an RTPFB or PSFB packet
+	 */
+	public int getFCILength()
+	{
+		return len - 12;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is a generic NACK
+	 */
+	public boolean isNACK()
+	{
+		return isFB() && getPacketType() == RTCPFBPacket.RTPFB
+				&& getReportCount() == NACKPacket.FMT;
+	}
+
+	/**
+	 * @return the number of PID/BLP pairs in the FCI of a generic NACK
+	 */
+	public int getNACKCount()
+	{
+		return getFCILength() / 4;
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the PID/BLP pair
+	 * @return the packet ID (PID) of the <tt>i</tt>-th PID/BLP pair of a generic NACK
+	 */
+	public int getNACKPid(int i)
+	{
+		return RTPUtils.readUint16AsInt(buf, getFCIOffset() + i * 4);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the PID/BLP pair
+	 * @return the bitmask of following lost packets (BLP) of the <tt>i</tt>-th PID/BLP pair of a
+	 * generic NACK
+	 */
+	public int getNACKBlp(int i)
+	{
+		return RTPUtils.readUint16AsInt(buf, getFCIOffset() + i * 4 + 2);
+	}
+
+	/**
+	 * @return the number of RTP sequence numbers reported lost by a generic NACK
+	 */
+	public int getNACKLostPacketCount()
+	{
+		int count = 0;
+
+		for (int i = getNACKCount() - 1; i >= 0; i--)
+			count += 1 + Integer.bitCount(getNACKBlp(i));
+		return count;
+	}
+
+	/**
+	 * Writes the RTP sequence numbers reported lost by a generic NACK into a specific array in the
+	 * order in which they are reported.
+	 *
+	 * @param lost
+	 * 		the array to write the sequence numbers into
+	 * @return the number of sequence numbers written into <tt>lost</tt> which is at most its
+	 * length
+	 */
+	public int getNACKLostPackets(int[] lost)
+	{
+		int count = 0;
+
+		for (int i = 0, n = getNACKCount(); i < n && count < lost.length; i++) {
+			int pid = getNACKPid(i);
+			int blp = getNACKBlp(i);
+
+			lost[count++] = pid;
+			for (int j = 0; j < 16 && count < lost.length; j++) {
+				if ((blp & (1 << j)) != 0)
+					lost[count++] = (pid + 1 + j) & 0xffff;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is a transport-cc feedback packet
+	 */
+	public boolean isTCC()
+	{
+		return isFB() && getPacketType() == RTCPFBPacket.RTPFB
+				&& getReportCount() == RTCPTCCPacket.FMT;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current RTCP packet is a REMB packet
+	 */
+	public boolean isREMB()
+	{
+		return isFB() && getPacketType() == RTCPFBPacket.PSFB
+				&& getReportCount() == RTCPREMBPacket.FMT && len >= 20
+				&& RTPUtils.readInt(buf, getFCIOffset()) == REMB_IDENTIFIER;
+	}
+
+	/**
+	 * @return the 6-bit exponent of the bitrate of a REMB packet
+	 */
+	public int getREMBExp()
+	{
+		return (buf[getFCIOffset() + 5] & 0xfc) >> 2;
+	}
+
+	/**
+	 * @return the 18-bit mantissa of the bitrate of a REMB packet
+	 */
+	public int getREMBMantissa()
+	{
+		int fciOff = getFCIOffset();
+
+		return ((buf[fciOff + 5] & 0x03) << 16) | ((buf[fciOff + 6] & 0xff) << 8)
+				| (buf[fciOff + 7] & 0xff);
+	}
+
+	/**
+	 * @return the bitrate in bits per second of a REMB packet
+	 */
+	public long getREMBBitrate()
+	{
+		return ((long) getREMBMantissa()) << getREMBExp();
+	}
+
+	/**
+	 * @return the number of SSRCs of a REMB packet which are present in full within the packet
+	 */
+	public int getREMBSSRCCount()
+	{
+		return Math.min(buf[getFCIOffset() + 4] & 0xff, (getFCILength() - 8) / 4);
+	}
+
+	/**
+	 * @param i
+	 * 		the zero-based index of the SSRC
+	 * @return the <tt>i</tt>-th SSRC of a REMB packet
+	 */
+	public long getREMBSSRC(int i)
+	{
+		return readUnsignedInt(getFCIOffset() + 8 + i * 4);
+	}
+
+	/**
+	 * Materializes the current SR packet.
+	 *
+	 * @return a new <tt>RTCPSRPacket</tt> which represents the current SR packet
+	 */
+	public RTCPSRPacket toSRPacket()
+	{
+		RTCPReportBlock[] reports = new RTCPReportBlock[getReportBlockCount()];
+
+		for (int i = 0; i < reports.length; i++) {
+			reports[i] = new RTCPReportBlock((int) getReportBlockSSRC(i), getFractionLost(i),
+					getCumulativePacketsLost(i), getExtendedHighestSequenceNumber(i),
+					(int) getJitter(i), getLSR(i), getDLSR(i));
+		}
+
+		RTCPSRPacket sr = new RTCPSRPacket((int) getSenderSSRC(), reports);
+
+		sr.ntptimestampmsw = getNtpTimestampMSW();
+		sr.ntptimestamplsw = getNtpTimestampLSW();
+		sr.rtptimestamp = getRtpTimestamp();
+		sr.packetcount = getSenderPacketCount();
+		sr.octetcount = getSenderOctetCount();
+		return sr;
+	}
+
+	/**
+	 * Materializes the current generic NACK packet.
+	 *
+	 * @return a new <tt>NACKPacket</tt> which represents the current generic NACK packet
+	 */
+	public NACKPacket toNACKPacket()
+	{
+		return new NACKPacket(getSenderSSRC(), getMediaSSRC(), copyFCI());
+	}
+
+	/**
+	 * Materializes the current transport-cc feedback packet.
+	 *
+	 * @return a new <tt>RTCPTCCPacket</tt> which represents the current transport-cc packet
+	 */
+	public RTCPTCCPacket toTCCPacket()
+	{
+		return new RTCPTCCPacket(getSenderSSRC(), getMediaSSRC(), copyFCI());
+	}
+
+	/**
+	 * Materializes the current REMB packet.
+	 *
+	 * @return a new <tt>RTCPREMBPacket</tt> which represents the current REMB packet
+	 */
+	public RTCPREMBPacket toREMBPacket()
+	{
+		long[] dest = new long[getREMBSSRCCount()];
+
+		for (int i = 0; i < dest.length; i++)
+			dest[i] = getREMBSSRC(i);
+		return new RTCPREMBPacket(getSenderSSRC(), getMediaSSRC(), getREMBExp(),
+				getREMBMantissa(), dest);
+	}
+
+	/**
+	 * @return a copy of the FCI of the current RTPFB or PSFB packet
+	 */
+	private byte[] copyFCI()
+	{
+		byte[] fci = new byte[Math.max(getFCILength(), 0)];
+
+		System.arraycopy(buf, getFCIOffset(), fci, 0, fci.length);
+		return fci;
+	}
+
+	/**
+	 * Reads an unsigned 32-bit integer from {@link #buf}.
+	 *
+	 * @param off
+	 * 		the offset in {@link #buf} of the integer
+	 * @return the unsigned 32-bit integer at <tt>off</tt> in {@link #buf}
+	 */
+	private long readUnsignedInt(int off)
+	{
+		return RTPUtils.readUint32AsLong(buf, off);
+	}
+}
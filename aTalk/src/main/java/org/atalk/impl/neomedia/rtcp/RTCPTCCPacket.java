@@ -100,9 +100,15 @@ public class RTCPTCCPacket
      */
     public static long getReferenceTime(ByteArrayBuffer fciBuffer)
     {
-        byte[] buf = fciBuffer.getBuffer();
-        int off = fciBuffer.getOffset();
+        return getReferenceTime(fciBuffer.getBuffer(), fciBuffer.getOffset());
+    }
 
+    /**
+     * @return the reference time, with 250µs resolution, of the FCI of an RTCP
+     * TCC packet which begins at {@code off} in {@code buf}.
+     */
+    public static long getReferenceTime(byte[] buf, int off)
+    {
         // reference time. The 24 bit field uses increments of 2^6ms, and we
         // shift by 8 to change the resolution to 250µs.
         // FIXME this is supposed to be a signed int.
@@ -128,20 +134,51 @@ public class RTCPTCCPacket
             return null;
         }
 
-        byte[] buf = fciBuffer.getBuffer();
-        int off = fciBuffer.getOffset();
-        int len = fciBuffer.getLength();
+        final PacketMap packets = new PacketMap();
+        boolean parsed = visitPacketsFci(
+            fciBuffer.getBuffer(), fciBuffer.getOffset(), fciBuffer.getLength(),
+            new PacketVisitor()
+            {
+                @Override
+                public void visit(int seq, long arrivalTime250Us)
+                {
+                    packets.put(seq, arrivalTime250Us == -1 ? NEGATIVE_ONE : arrivalTime250Us);
+                }
+            });
 
+        return parsed ? packets : null;
+    }
+
+    /**
+     * Walks the packets represented in the FCI portion of an RTCP
+     * transport-cc feedback packet in the order of their sequence numbers
+     * without building a {@link PacketMap}, i.e. without boxing.
+     *
+     * Warning: the timestamps are represented in the 250µs format used by the
+     * on-the-wire format, and don't represent local time.
+     *
+     * @param buf the buffer which contains the FCI portion of the RTCP
+     * feedback packet.
+     * @param off the offset in {@code buf} at which the FCI begins.
+     * @param len the length in bytes of the FCI.
+     * @param visitor the {@link PacketVisitor} to notify about every packet.
+     * @return {@code true} if the whole FCI was parsed, or {@code false} if it
+     * is malformed, in which case {@code visitor} may have been notified about
+     * the packets which precede the malformed part.
+     */
+    public static boolean visitPacketsFci(
+            byte[] buf, int off, int len, PacketVisitor visitor)
+    {
         if (len < MIN_FCI_LENGTH) {
             logger.warn(PARSE_ERROR + "length too small: " + len);
-            return null;
+            return false;
         }
 
         // The fixed fields
         int baseSeq = RTPUtils.readUint16AsInt(buf, off);
         int packetStatusCount = RTPUtils.readUint16AsInt(buf, off + 2);
 
-        long referenceTime = getReferenceTime(fciBuffer);
+        long referenceTime = getReferenceTime(buf, off);
 
         // The offset at which the packet status chunk list starts.
         int pscOff = off + 8;
@@ -151,7 +188,7 @@ public class RTCPTCCPacket
         while (packetsRemaining > 0) {
             if (pscOff + 2 > off + len) {
                 logger.warn(PARSE_ERROR + "reached the end while reading chunks");
-                return null;
+                return false;
             }
             int packetsInChunk = getPacketCount(buf, pscOff);
             packetsRemaining -= packetsInChunk;
@@ -166,7 +203,6 @@ public class RTCPTCCPacket
         // Reset to the start of the chunks list.
         pscOff = off + 8;
         packetsRemaining = packetStatusCount;
-        PacketMap packets = new PacketMap();
         while (packetsRemaining > 0 && pscOff < deltaStart) {
             // packetsRemaining is based on the "packet status count" field,
             // which helps us find the correct number of packets described in
@@ -185,7 +221,7 @@ public class RTCPTCCPacket
                         // The delta is an 8-bit unsigned integer.
                         if (deltaOff >= off + len) {
                             logger.warn(PARSE_ERROR + " reached the end while reading delta.");
-                            return null;
+                            return false;
                         }
                         delta = buf[deltaOff++] & 0xff;
                         break;
@@ -193,7 +229,7 @@ public class RTCPTCCPacket
                         // The delta is a 6-bit signed integer.
                         if (deltaOff + 1 >= off + len) { // we're about to read 2 bytes
                             logger.warn(PARSE_ERROR + "reached the end while reading long delta.");
-                            return null;
+                            return false;
                         }
                         delta = RTPUtils.readInt16AsInt(buf, deltaOff);
                         deltaOff += 2;
@@ -206,9 +242,8 @@ public class RTCPTCCPacket
 
                 if (delta == -1) {
                     // Packet not received. We don't update the reference time,
-                    // but we push the packet in the map to indicate that it was
+                    // but we report the packet to indicate that it was
                     // marked as not received.
-                    packets.put(baseSeq, NEGATIVE_ONE);
                     if (logger.isDebugEnabled())
                     {
                         logger.debug("seq=" + baseSeq
@@ -216,6 +251,7 @@ public class RTCPTCCPacket
                                 + ",delta=" + -1
                                 + ",symbol=" + symbol);
                     }
+                    visitor.visit(baseSeq, -1);
                 }
                 else {
                     // The draft is not clear about what the reference time for
@@ -229,7 +265,7 @@ public class RTCPTCCPacket
                                 + ",symbol=" + symbol);
                     }
                     referenceTime += delta;
-                    packets.put(baseSeq, referenceTime);
+                    visitor.visit(baseSeq, referenceTime);
                 }
                 baseSeq = (baseSeq + 1) & 0xffff;
             }
@@ -238,7 +274,7 @@ public class RTCPTCCPacket
             pscOff += 2;
             packetsRemaining -= packetsInChunk;
         }
-        return packets;
+        return true;
     }
 
     /**
@@ -441,6 +477,23 @@ public class RTCPTCCPacket
         super(base);
     }
 
+    /**
+     * Initializes a new {@link RTCPTCCPacket} instance with a specific "packet sender SSRC" and
+     * "media source SSRC" values and a specific FCI field.
+     *
+     * @param senderSSRC
+     *         the value to use for the "packet sender SSRC" field.
+     * @param sourceSSRC
+     *         the value to use for the "media source SSRC" field.
+     * @param fci
+     *         the transport-cc feedback of the packet; not copied.
+     */
+    public RTCPTCCPacket(long senderSSRC, long sourceSSRC, byte[] fci)
+    {
+        super(FMT, RTPFB, senderSSRC, sourceSSRC);
+        this.fci = fci;
+    }
+
     /**
      * Initializes a new {@link RTCPTCCPacket} instance with a specific "packet sender SSRC" and
      * "media source SSRC" values, and which describes a specific set of sequence numbers.
@@ -624,6 +677,23 @@ public class RTCPTCCPacket
         return "RTCP transport-cc feedback";
     }
 
+    /**
+     * Receives the packets represented in an RTCP transport-cc feedback packet
+     * from {@link #visitPacketsFci(byte[], int, int, PacketVisitor)}.
+     */
+    public interface PacketVisitor
+    {
+        /**
+         * Notifies this visitor about a packet described by the feedback.
+         *
+         * @param seq the transport-wide sequence number of the packet.
+         * @param arrivalTime250Us the arrival time of the packet in the 250µs
+         * format used by the on-the-wire format, or -1 if the packet is
+         * marked as not received.
+         */
+        void visit(int seq, long arrivalTime250Us);
+    }
+
     /**
      * An ordered collection which maps sequence numbers to timestamps, the
      * order is by the sequence number.
@@ -19,16 +19,20 @@ import org.atalk.impl.neomedia.transform.CachingTransformer;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.util.ConfigUtils;
 import org.atalk.util.Logger;
 import org.atalk.util.concurrent.MonotonicAtomicLong;
 
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An simple interface which allows a packet to be retrieved from a
  * cache/storage by an SSRC identifier and a sequence number.
+ * <p>
+ * Packets are inserted by a single writer per SSRC (the send or receive path of the owning stream)
+ * while lookups (e.g. NACK handling by the <tt>RtxTransformer</tt>) do not take any lock.
  *
  * @author Boris Grozev
  * @author George Politis
@@ -71,65 +75,61 @@ public class RawPacketCache implements AutoCloseable
 	 * <p>
 	 * FIXME(gp) the cache size should be adaptive based on the RTT.
 	 */
-	private static int SIZE_MILLIS = cfg.getInt(NACK_CACHE_SIZE_MILLIS, 500);
+	private static int SIZE_MILLIS = ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_MILLIS, 500);
 
 	/**
 	 * The maximum number of different SSRCs for which a cache will be created.
 	 */
-	private static int MAX_SSRC_COUNT = cfg.getInt(NACK_CACHE_SIZE_STREAMS, 50);
+	private static int MAX_SSRC_COUNT = ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_STREAMS, 50);
 
 	/**
 	 * The maximum number of packets cached for each SSRC.
 	 */
-	private static int MAX_SIZE_PACKETS = cfg.getInt(NACK_CACHE_SIZE_PACKETS, 200);
+	private static int MAX_SIZE_PACKETS
+			= Math.max(1, ConfigUtils.getInt(cfg, NACK_CACHE_SIZE_PACKETS, 200));
 
 	/**
-	 * The size of {@link #pool} and {@link #containersPool}.
+	 * The number of slots of the ring of each {@link Cache} i.e. the smallest power of two which is
+	 * not less than {@link #MAX_SIZE_PACKETS}.
 	 */
-	private static int POOL_SIZE = 100;
+	private static final int RING_CAPACITY
+			= Integer.highestOneBit(Math.max(1, MAX_SIZE_PACKETS - 1)) << 1;
 
 	/**
-	 * The amount of time, after which the cache for an SSRC will be cleared,
-	 * unless new packets have been inserted.
-	 */
-	private static int SSRC_TIMEOUT_MILLIS = SIZE_MILLIS + 50;
-
-	/**
-	 * The pool of <tt>RawPacket</tt>s which we use to avoid allocation and GC.
+	 * The mask which maps a packet index to a slot of the ring of a {@link Cache}.
 	 */
-	private final Queue<RawPacket> pool = new LinkedBlockingQueue<>(POOL_SIZE);
+	private static final int RING_MASK = RING_CAPACITY - 1;
 
 	/**
-	 * A cache of unused {@link Container} instances.
+	 * The value of {@link Cache#newestIndex} of a <tt>Cache</tt> which does not contain any packets.
 	 */
-	private final Queue<Container> containersPool = new LinkedBlockingQueue<>(POOL_SIZE);
+	private static final long NO_INDEX = Long.MIN_VALUE;
 
 	/**
-	 * An object used to synchronize access to {@link #sizeInBytes},
-	 * {@link #maxSizeInBytes}, {@link #sizeInPackets} and
-	 * {@link #maxSizeInPackets}.
+	 * The amount of time, after which the cache for an SSRC will be cleared,
+	 * unless new packets have been inserted.
 	 */
-	private final Object sizesSyncRoot = new Object();
+	private static int SSRC_TIMEOUT_MILLIS = SIZE_MILLIS + 50;
 
 	/**
 	 * The current size in bytes of the cache (for all SSRCs combined).
 	 */
-	private int sizeInBytes = 0;
+	private final AtomicInteger sizeInBytes = new AtomicInteger();
 
 	/**
 	 * The maximum reached size in bytes of the cache (for all SSRCs combined).
 	 */
-	private int maxSizeInBytes = 0;
+	private final MonotonicAtomicLong maxSizeInBytes = new MonotonicAtomicLong();
 
 	/**
 	 * The current number of packets in the cache (for all SSRCs combined).
 	 */
-	private int sizeInPackets = 0;
+	private final AtomicInteger sizeInPackets = new AtomicInteger();
 
 	/**
 	 * The maximum reached number of packets in the cache (for all SSRCs combined).
 	 */
-	private int maxSizeInPackets = 0;
+	private final MonotonicAtomicLong maxSizeInPackets = new MonotonicAtomicLong();
 
 	/**
 	 * Counts the number of requests (calls to {@link #get(long, int)}) which
@@ -149,9 +149,10 @@ public class RawPacketCache implements AutoCloseable
 	private AtomicInteger totalPacketsAdded = new AtomicInteger(0);
 
 	/**
-	 * Contains a <tt>Cache</tt> instance for each SSRC.
+	 * Contains a <tt>Cache</tt> instance for each SSRC. Lookups do not lock; the creation and the
+	 * removal of caches synchronize on the map.
 	 */
-	private final Map<Long, Cache> caches = new HashMap<>();
+	private final Map<Long, Cache> caches = new ConcurrentHashMap<>();
 
 	/**
 	 * The age in milliseconds of the oldest packet retrieved from any of the
@@ -194,15 +195,18 @@ public class RawPacketCache implements AutoCloseable
 		}
 
 		synchronized (caches) {
+			for (Cache cache : caches.values())
+				cache.empty();
 			caches.clear();
 		}
-		pool.clear();
-		containersPool.clear();
 	}
 
 	/**
 	 * Gets the packet, encapsulated in a {@link Container} with the given SSRC
 	 * and RTP sequence number from the cache. If no such packet is found, returns <tt>null</tt>.
+	 * <p>
+	 * The packet is not copied but retained on behalf of the caller who must hand it back to
+	 * {@link RawPacketPool#release(RawPacket)} when done with it. The caller must not modify it.
 	 *
 	 * @param ssrc
 	 * 		The SSRC of the packet.
@@ -214,25 +218,48 @@ public class RawPacketCache implements AutoCloseable
 	 */
 	public Container getContainer(long ssrc, int seq)
 	{
-		Cache cache = getCache(ssrc & 0xffff_ffffL, false);
+		Container container = new Container();
 
-		Container container = cache != null ? cache.get(seq) : null;
+		return getContainer(ssrc, seq, container) ? container : null;
+	}
 
-		if (container != null) {
+	/**
+	 * Gets the packet with the given SSRC and RTP sequence number from the cache into a specific
+	 * {@link Container} (e.g. one reused by the caller across lookups).
+	 * <p>
+	 * The packet is not copied but retained on behalf of the caller who must hand it back to
+	 * {@link RawPacketPool#release(RawPacket)} when done with it. The caller must not modify it.
+	 *
+	 * @param ssrc
+	 * 		The SSRC of the packet.
+	 * @param seq
+	 * 		the RTP sequence number of the packet.
+	 * @param container
+	 * 		the <tt>Container</tt> to set the packet and the time it was added to.
+	 * @return <tt>true</tt> if the packet was found and <tt>container</tt> was set; otherwise,
+	 * <tt>false</tt> and <tt>container</tt> is left as it was.
+	 */
+	public boolean getContainer(long ssrc, int seq, Container container)
+	{
+		Cache cache = getCache(ssrc & 0xffff_ffffL, false);
+
+		if (cache != null && cache.get(seq, container) != null) {
 			if (container.timeAdded > 0) {
-				oldestHit.increase(System.currentTimeMillis() - container.timeAdded);
+				long age = System.currentTimeMillis() - container.timeAdded;
+				if (age > oldestHit.get())
+					oldestHit.increase(age);
 			}
 			totalHits.incrementAndGet();
+			return true;
 		}
-		else {
-			totalMisses.incrementAndGet();
-		}
-		return container;
+		totalMisses.incrementAndGet();
+		return false;
 	}
 
 	/**
 	 * Gets the packet with the given SSRC and RTP sequence number from the
-	 * cache. If no such packet is found, returns <tt>null</tt>.
+	 * cache. If no such packet is found, returns <tt>null</tt>. The caller must release the
+	 * returned packet through {@link RawPacketPool#release(RawPacket)}.
 	 *
 	 * @param ssrc
 	 * 		The SSRC of the packet.
@@ -243,8 +270,14 @@ public class RawPacketCache implements AutoCloseable
 	 */
 	public RawPacket get(long ssrc, int seq)
 	{
-		Container container = getContainer(ssrc, seq);
-		return container == null ? null : container.pkt;
+		Cache cache = getCache(ssrc & 0xffff_ffffL, false);
+		RawPacket pkt = (cache == null) ? null : cache.get(seq, null);
+
+		if (pkt != null)
+			totalHits.incrementAndGet();
+		else
+			totalMisses.incrementAndGet();
+		return pkt;
 	}
 
 	/**
@@ -260,20 +293,24 @@ public class RawPacketCache implements AutoCloseable
 	 */
 	private Cache getCache(long ssrc, boolean create)
 	{
-		synchronized (caches) {
-			Cache cache = caches.get(ssrc);
-			if (cache == null && create) {
-				if (caches.size() < MAX_SSRC_COUNT) {
-					cache = new Cache();
-					caches.put(ssrc, cache);
-				}
-				else {
-					logger.warn("Not creating a new cache for SSRC " + ssrc
-							+ ": too many SSRCs already cached.");
+		Cache cache = caches.get(ssrc);
+
+		if (cache == null && create) {
+			synchronized (caches) {
+				cache = caches.get(ssrc);
+				if (cache == null) {
+					if (caches.size() < MAX_SSRC_COUNT) {
+						cache = new Cache();
+						caches.put(ssrc, cache);
+					}
+					else {
+						logger.warn("Not creating a new cache for SSRC " + ssrc
+								+ ": too many SSRCs already cached.");
+					}
 				}
 			}
-			return cache;
 		}
+		return cache;
 	}
 
 	/**
@@ -295,40 +332,6 @@ public class RawPacketCache implements AutoCloseable
 		}
 	}
 
-	/**
-	 * Gets an unused <tt>RawPacket</tt> with at least <tt>len</tt> bytes of
-	 * buffer space.
-	 *
-	 * @param len
-	 * 		the minimum available length
-	 * @return An unused <tt>RawPacket</tt> with at least <tt>len</tt> bytes of
-	 * buffer space.
-	 */
-	private RawPacket getFreePacket(int len)
-	{
-		RawPacket pkt = pool.poll();
-		if (pkt == null)
-			pkt = new RawPacket(new byte[len], 0, 0);
-
-		if (pkt.getBuffer() == null || pkt.getBuffer().length < len)
-			pkt.setBuffer(new byte[len]);
-		pkt.setOffset(0);
-		pkt.setLength(0);
-		return pkt;
-	}
-
-	/**
-	 * @return an unused {@link Container} instance.
-	 */
-	private Container getFreeContainer()
-	{
-		Container container = containersPool.poll();
-		if (container == null) {
-			container = new Container();
-		}
-		return container;
-	}
-
 	/**
 	 * Checks for {@link Cache} instances which have not received new packets
 	 * for a period longer than {@link #SSRC_TIMEOUT_MILLIS} and removes them.
@@ -348,28 +351,33 @@ public class RawPacketCache implements AutoCloseable
 					if (logger.isDebugEnabled()) {
 						logger.debug("Removing cache for SSRC " + entry.getKey());
 					}
-					cache.empty();
 					iter.remove();
+					cache.empty();
 				}
 			}
 		}
 	}
 
 	/**
-	 * Returns a {@link Container} and its {@link RawPacket} to the list of free containers (and
-	 * packets).
+	 * Accounts for packets which have been added to and/or removed from one of the {@link Cache}s
+	 * of this instance.
 	 *
-	 * @param container
-	 * 		the container to return.
+	 * @param packets
+	 * 		the change in the number of cached packets.
+	 * @param bytes
+	 * 		the change in the number of cached bytes.
 	 */
-	private void returnContainer(Container container)
+	private void updateSizes(int packets, int bytes)
 	{
-		if (container != null) {
-			if (container.pkt != null) {
-				pool.offer(container.pkt);
-			}
-			container.pkt = null;
-			containersPool.offer(container);
+		if (packets != 0) {
+			int size = sizeInPackets.addAndGet(packets);
+			if (size > maxSizeInPackets.get())
+				maxSizeInPackets.increase(size);
+		}
+		if (bytes != 0) {
+			int size = sizeInBytes.addAndGet(bytes);
+			if (size > maxSizeInBytes.get())
+				maxSizeInBytes.increase(size);
 		}
 	}
 
@@ -384,7 +392,8 @@ public class RawPacketCache implements AutoCloseable
 	 * 		the maximum total size of the packets to retrieve.
 	 * @return the set of the most recent packets to retrieve, not exceeding the
 	 * number of bytes specified as an argument, or null if there are no packets
-	 * in the cache
+	 * in the cache. The packets are retained on behalf of the caller who must release them
+	 * through {@link RawPacketPool#release(RawPacket)}.
 	 */
 	public Set<Container> getMany(long ssrc, int bytes)
 	{
@@ -408,42 +417,72 @@ public class RawPacketCache implements AutoCloseable
 	{
 		Cache cache = getCache(ssrc, false);
 		if (cache != null) {
-			synchronized (cache) {
-				Container container = cache.doGet(seq);
-				if (container != null) {
-					container.timeAdded = ts;
-				}
-			}
+			cache.updateTimestamp(seq, ts);
 		}
 	}
 
 	/**
 	 * Implements a cache for the packets of a specific SSRC.
+	 * <p>
+	 * The packets are kept in a ring of {@link #RING_CAPACITY} preallocated {@link Slot}s indexed
+	 * by the packet index (based on its RTP sequence number, in the same way as used in SRTP
+	 * (RFC3711)) modulo the capacity, so inserting a packet allocates nothing but its pooled copy.
+	 * Slots are only written by {@link #insert(RawPacket)}, {@link #clean(long)},
+	 * {@link #empty()} and {@link #updateTimestamp(int, long)} which synchronize on this instance.
+	 * Readers do not lock: they read a slot between two reads of its version, which is odd while
+	 * the slot is written, and retain its packet before checking that the version has not changed
+	 * in the meantime.
 	 */
 	private class Cache
 	{
 		/**
-		 * The underlying container. It maps a packet index (based on its RTP
-		 * sequence number, in the same way as used in SRTP (RFC3711)) to the
-		 * <tt>RawPacket</tt> with the packet contents.
+		 * The slots of the ring.
 		 */
-		private TreeMap<Integer, Container> cache = new TreeMap<>();
+		private final Slot[] ring = new Slot[RING_CAPACITY];
 
 		/**
 		 * Last system time of insertion of a packet in this cache.
 		 */
-		private long lastInsertTime = -1;
+		private volatile long lastInsertTime = -1;
 
 		/**
 		 * A Roll Over Counter (as in by RFC3711).
 		 */
-		private int ROC = 0;
+		private volatile int ROC = 0;
 
 		/**
 		 * The highest received sequence number (as in RFC3711).
 		 */
 		private int s_l = -1;
 
+		/**
+		 * The highest packet index in this cache or {@link #NO_INDEX}.
+		 */
+		private volatile long newestIndex = NO_INDEX;
+
+		/**
+		 * The lowest packet index which may still be in this cache. Only accessed by the writer.
+		 */
+		private long oldestIndex = NO_INDEX;
+
+		/**
+		 * The number of packets added to this cache since the last call to
+		 * {@link #updateSizes(int, int)}. Only accessed by the writer.
+		 */
+		private int addedPackets = 0;
+
+		/**
+		 * The number of bytes added to this cache since the last call to
+		 * {@link #updateSizes(int, int)}. Only accessed by the writer.
+		 */
+		private int addedBytes = 0;
+
+		private Cache()
+		{
+			for (int i = 0; i < ring.length; i++)
+				ring[i] = new Slot();
+		}
+
 		/**
 		 * Inserts a packet into this <tt>Cache</tt>.
 		 *
@@ -452,38 +491,55 @@ public class RawPacketCache implements AutoCloseable
 		 */
 		private synchronized void insert(RawPacket pkt)
 		{
-			int len = pkt.getLength();
-			RawPacket cachePacket = getFreePacket(len);
-			System.arraycopy(pkt.getBuffer(), pkt.getOffset(), cachePacket.getBuffer(), 0, len);
-			cachePacket.setLength(len);
+			long index = calculateIndex(pkt.getSequenceNumber());
+			long newest = newestIndex;
 
-			int index = calculateIndex(pkt.getSequenceNumber());
-			Container container = getFreeContainer();
-			container.pkt = cachePacket;
-			container.timeAdded = System.currentTimeMillis();
+			// A packet too old to fit in the ring would overwrite a more recent one.
+			if (newest != NO_INDEX && index <= newest - RING_CAPACITY)
+				return;
+
+			// The packet is modified further down the transform chain (e.g. by SRTP), so the
+			// cache keeps its own copy in a pooled buffer.
+			int len = pkt.getLength();
+			RawPacket cachePacket = RawPacketPool.acquireCopy(pkt.getBuffer(), pkt.getOffset(), len);
+			long now = System.currentTimeMillis();
 
 			// If the packet is already in the cache, we want to update the
 			// timeAdded field for retransmission purposes. This is implemented
 			// by simply replacing the old packet.
-			Container oldContainer = cache.put(index, container);
-
-			synchronized (sizesSyncRoot) {
-				sizeInPackets++;
-				sizeInBytes += len;
-				if (oldContainer != null) {
-					sizeInPackets--;
-					sizeInBytes -= oldContainer.pkt.getLength();
-				}
-				if (sizeInPackets > maxSizeInPackets)
-					maxSizeInPackets = sizeInPackets;
-				if (sizeInBytes > maxSizeInBytes)
-					maxSizeInBytes = sizeInBytes;
-			}
-			returnContainer(oldContainer);
-			lastInsertTime = System.currentTimeMillis();
-			clean();
+			RawPacket oldPacket = ring[(int) (index & RING_MASK)].set(cachePacket, index, now);
+
+			addedPackets++;
+			addedBytes += len;
+			if (oldPacket != null)
+				remove(oldPacket);
+
+			if (newest == NO_INDEX || index > newest)
+				newestIndex = index;
+			if (oldestIndex == NO_INDEX || index < oldestIndex)
+				oldestIndex = index;
+			lastInsertTime = now;
+			clean(now);
+
+			// Insertions usually evict a packet, so the shared sizes see a single net change.
+			updateSizes(addedPackets, addedBytes);
+			addedPackets = 0;
+			addedBytes = 0;
 		}
 
+		/**
+		 * Accounts for a packet which has been removed from this cache and releases it.
+		 *
+		 * @param pkt
+		 * 		the packet which has been removed.
+		 */
+		private void remove(RawPacket pkt)
+		{
+			addedPackets--;
+			addedBytes -= pkt.getLength();
+			// The packet may still be retained by a reader of the cache.
+			RawPacketPool.release(pkt);
+		}
 
 		/**
 		 * Calculates the index of an RTP packet based on its RTP sequence
@@ -495,7 +551,7 @@ public class RawPacketCache implements AutoCloseable
 		 * @return the index of the RTP sequence number with sequence number
 		 * <tt>seq</tt>.
 		 */
-		private int calculateIndex(int seq)
+		private long calculateIndex(int seq)
 		{
 			if (s_l == -1) {
 				s_l = seq;
@@ -503,126 +559,186 @@ public class RawPacketCache implements AutoCloseable
 			}
 
 			int v = ROC;
-			if (s_l < 0x8000)
+			if (s_l < 0x8000) {
 				if (seq - s_l > 0x8000)
-					v = (int) ((ROC - 1) & 0xffff_ffffL);
-				else if (s_l - 0x1_0000 > seq)
-					v = (int) ((ROC + 1) & 0xffff_ffffL);
+					v = ROC - 1;
+			}
+			else if (s_l - 0x8000 > seq)
+				v = ROC + 1;
 
-			if (v == ROC && seq > s_l)
-				s_l = seq;
-			else if (v == ((ROC + 1) & 0xffff_ffffL)) {
+			if (v == ROC) {
+				if (seq > s_l)
+					s_l = seq;
+			}
+			else if (v == ROC + 1) {
 				s_l = seq;
 				ROC = v;
 			}
-			return seq + v * 0x1_0000;
+			return seq + v * 0x1_0000L;
 		}
 
 		/**
-		 * Returns a copy of the RTP packet with sequence number {@code seq}
-		 * from the cache, or {@code null} if the cache does not contain a
-		 * packet with this sequence number.
+		 * Returns the RTP packet with sequence number {@code seq} from the
+		 * cache, retained on behalf of the caller, or {@code null} if the
+		 * cache does not contain a packet with this sequence number.
 		 *
 		 * @param seq
 		 * 		the RTP sequence number of the packet to get.
-		 * @return a copy of the RTP packet with sequence number {@code seq}
-		 * from the cache, or {@code null} if the cache does not contain a
-		 * packet with this sequence number.
+		 * @param container
+		 * 		the {@link Container} to set the packet and the time it was added to or
+		 * 		{@code null}.
+		 * @return the retained RTP packet with sequence number {@code seq} from the cache, or
+		 * {@code null} if the cache does not contain a packet with this sequence number.
 		 */
-		private synchronized Container get(int seq)
+		private RawPacket get(int seq, Container container)
 		{
-			Container container = doGet(seq);
-
-			return container == null
-					? null
-					: new Container(new RawPacket(container.pkt.getBuffer().clone(),
-					container.pkt.getOffset(),
-					container.pkt.getLength()),
-					container.timeAdded);
+			// Since sequence numbers wrap at 2^16, we can't know with absolute
+			// certainty which packet the request refers to. We assume that it
+			// is for the latest packet (i.e. the one with the highest index).
+			int roc = ROC;
+			RawPacket pkt = retain(seq + roc * 0x1_0000L, container);
+
+			// Maybe the ROC was just bumped recently.
+			if (pkt == null && roc > 0)
+				pkt = retain(seq + (roc - 1) * 0x1_0000L, container);
+			return pkt;
 		}
 
 		/**
-		 * Returns the RTP packet with sequence number {@code seq}
-		 * from the cache, or {@code null} if the cache does not contain a
-		 * packet with this sequence number.
+		 * Sets the time at which the packet with a specific RTP sequence number was added to this
+		 * cache, if this cache contains it.
 		 *
 		 * @param seq
-		 * 		the RTP sequence number of the packet to get.
-		 * @return the RTP packet with sequence number {@code seq}
-		 * from the cache, or {@code null} if the cache does not contain a
-		 * packet with this sequence number.
+		 * 		the RTP sequence number of the packet.
+		 * @param ts
+		 * 		the time to set.
 		 */
-		private synchronized Container doGet(int seq)
+		private synchronized void updateTimestamp(int seq, long ts)
 		{
-			// Since sequence numbers wrap at 2^16, we can't know with absolute
-			// certainty which packet the request refers to. We assume that it
-			// is for the latest packet (i.e. the one with the highest index).
-			Container container = cache.get(seq + ROC * 0x1_0000);
-
-			// Maybe the ROC was just bumped recently.
-			if (container == null && ROC > 0)
-				container = cache.get(seq + (ROC - 1) * 0x1_0000);
-
 			// Since the cache only stores <tt>SIZE_MILLIS</tt> milliseconds of
 			// packets, we assume that it doesn't contain packets spanning
 			// more than one ROC.
-			return container;
+			int roc = ROC;
+			Slot slot = find(seq + roc * 0x1_0000L);
+
+			if (slot == null && roc > 0)
+				slot = find(seq + (roc - 1) * 0x1_0000L);
+			if (slot != null)
+				slot.timeAdded = ts;
+		}
+
+		/**
+		 * Gets the slot of the packet with a specific index from the ring. Only invoked by the
+		 * writer.
+		 *
+		 * @param index
+		 * 		the packet index.
+		 * @return the <tt>Slot</tt> of the packet with index <tt>index</tt> or <tt>null</tt>
+		 */
+		private Slot find(long index)
+		{
+			Slot slot = ring[(int) (index & RING_MASK)];
+
+			return (slot.pkt != null && slot.index == index) ? slot : null;
+		}
+
+		/**
+		 * Retains the packet with a specific index on behalf of the caller.
+		 *
+		 * @param index
+		 * 		the packet index.
+		 * @param container
+		 * 		the {@link Container} to set the packet and the time it was added to or
+		 * 		{@code null}.
+		 * @return the retained packet with index <tt>index</tt> or <tt>null</tt> if the packet is
+		 * not (or no longer) in the ring.
+		 */
+		private RawPacket retain(long index, Container container)
+		{
+			Slot slot = ring[(int) (index & RING_MASK)];
+			int version = slot.version;
+
+			if ((version & 1) != 0 || slot.index != index)
+				return null;
+
+			RawPacket pkt = slot.pkt;
+			long timeAdded = slot.timeAdded;
+
+			if (pkt == null || slot.version != version || !RawPacketPool.tryRetain(pkt))
+				return null;
+
+			// The writer changes the version of a slot before it releases the packet it replaces,
+			// so the packet was still held by the ring when it was retained above if the version
+			// is unchanged. Otherwise the packet may have been recycled and handed out again.
+			if (slot.version != version) {
+				RawPacketPool.release(pkt);
+				return null;
+			}
+			if (container != null) {
+				container.pkt = pkt;
+				container.timeAdded = timeAdded;
+			}
+			return pkt;
 		}
 
 		/**
 		 * Drops the oldest packets from the cache until:
-		 * 1. The cache contains at most {@link #MAX_SIZE_PACKETS} packets, and
+		 * 1. The cache spans at most {@link #MAX_SIZE_PACKETS} packet indices, and
 		 * 2. The cache only contains packets at most {@link #SIZE_MILLIS}
 		 * milliseconds older than the newest packet in the cache.
+		 *
+		 * @param now
+		 * 		the current system time in milliseconds.
 		 */
-		private synchronized void clean()
+		private synchronized void clean(long now)
 		{
-			int size = cache.size();
-			if (size <= 0)
+			long newest = newestIndex;
+
+			if (newest == NO_INDEX)
 				return;
 
-			long cleanBefore = System.currentTimeMillis() - SIZE_MILLIS;
-			Iterator<Map.Entry<Integer, Container>> iter = cache.entrySet().iterator();
-			int removedPackets = 0;
-			int removedBytes = 0;
-			while (iter.hasNext()) {
-				Container container = iter.next().getValue();
-				RawPacket pkt = container.pkt;
+			long dropUpTo = newest - MAX_SIZE_PACKETS;
+			long cleanBefore = now - SIZE_MILLIS;
 
-				if (size > MAX_SIZE_PACKETS) {
-					// Remove until we go under the max size, regardless of the timestamps.
-					size--;
+			if (oldestIndex < dropUpTo - RING_CAPACITY) {
+				// The index has jumped further than the ring can hold, so stepping through the
+				// skipped indices would be pointless. Sweep the ring instead.
+				for (Slot slot : ring) {
+					if (slot.pkt != null && slot.index <= dropUpTo)
+						remove(slot.clear());
 				}
-				else if (container.timeAdded >= 0
-						&& container.timeAdded > cleanBefore) {
+				oldestIndex = dropUpTo + 1;
+			}
+
+			for (; oldestIndex < newest; oldestIndex++) {
+				Slot slot = find(oldestIndex);
+
+				if (slot == null)
+					continue;
+				if (oldestIndex > dropUpTo && slot.timeAdded >= 0
+						&& slot.timeAdded > cleanBefore) {
 					// We reached a packet with a timestamp after 'cleanBefore'.
 					// The rest of the packets are even more recent.
 					break;
 				}
-
-				iter.remove();
-				removedBytes += pkt.getLength();
-				removedPackets++;
-				returnContainer(container);
-			}
-			synchronized (sizesSyncRoot) {
-				sizeInBytes -= removedBytes;
-				sizeInPackets -= removedPackets;
+				remove(slot.clear());
 			}
 		}
 
-		synchronized private void empty()
+		/**
+		 * Removes all packets from this cache.
+		 */
+		private synchronized void empty()
 		{
-			int removedBytes = 0;
-			for (Container container : cache.values()) {
-				removedBytes += container.pkt.getBuffer().length;
-				returnContainer(container);
-			}
-			synchronized (sizesSyncRoot) {
-				sizeInPackets -= cache.size();
-				sizeInBytes -= removedBytes;
+			for (Slot slot : ring) {
+				if (slot.pkt != null)
+					remove(slot.clear());
 			}
-			cache.clear();
+			newestIndex = NO_INDEX;
+			oldestIndex = NO_INDEX;
+			updateSizes(addedPackets, addedBytes);
+			addedPackets = 0;
+			addedBytes = 0;
 		}
 
 		/**
@@ -635,22 +751,22 @@ public class RawPacketCache implements AutoCloseable
 		 * the number of bytes specified as an argument, or null if there are
 		 * no packets in the cache.
 		 */
-		public synchronized Set<Container> getMany(int bytes)
+		public Set<Container> getMany(int bytes)
 		{
-			if (cache.isEmpty() || bytes < 1) {
+			long newest = newestIndex;
+
+			if (newest == NO_INDEX || bytes < 1) {
 				return null;
 			}
 
-			// XXX(gp) This is effectively Copy-on-Read and is inefficient. We
-			// should implement a Copy-on-Write method or something else that is
-			// more efficient than this..
+			// The packets are shared by reference rather than copied, but
+			// the caller gets its own containers.
 			Set<Container> set = new HashSet<>();
 
-			Iterator<Map.Entry<Integer, Container>> it
-					= cache.descendingMap().entrySet().iterator();
-			while (it.hasNext() && bytes > 0) {
-				Container container = it.next().getValue();
-				if (container != null && container.pkt != null) {
+			for (long index = newest; index > newest - RING_CAPACITY && bytes > 0; index--) {
+				Container container = new Container();
+
+				if (retain(index, container) != null) {
 					set.add(container);
 					bytes -= container.pkt.getLength();
 				}
@@ -659,10 +775,70 @@ public class RawPacketCache implements AutoCloseable
 		}
 	}
 
+	/**
+	 * A slot of the ring of a {@link Cache}, reused for every packet whose index maps to it.
+	 * Written by the writer of the <tt>Cache</tt> only.
+	 */
+	private static class Slot
+	{
+		/**
+		 * Incremented before and after the writer changes this slot, i.e. odd while it does.
+		 */
+		volatile int version;
+
+		/**
+		 * The index of {@link #pkt} in the <tt>Cache</tt>.
+		 */
+		volatile long index = NO_INDEX;
+
+		/**
+		 * The packet in this slot or <tt>null</tt> if this slot is empty.
+		 */
+		volatile RawPacket pkt;
+
+		/**
+		 * The time (in milliseconds since the epoch) that {@link #pkt} was added to the cache.
+		 */
+		volatile long timeAdded = -1;
+
+		/**
+		 * Puts a packet into this slot.
+		 *
+		 * @param pkt
+		 * 		the packet.
+		 * @param index
+		 * 		the index of the packet.
+		 * @param timeAdded
+		 * 		the time the packet was added.
+		 * @return the packet which was in this slot before or <tt>null</tt>
+		 */
+		RawPacket set(RawPacket pkt, long index, long timeAdded)
+		{
+			RawPacket oldPkt = this.pkt;
+
+			version++;
+			this.pkt = pkt;
+			this.index = index;
+			this.timeAdded = timeAdded;
+			version++;
+			return oldPkt;
+		}
+
+		/**
+		 * Empties this slot.
+		 *
+		 * @return the packet which was in this slot
+		 */
+		RawPacket clear()
+		{
+			return set(null, NO_INDEX, -1);
+		}
+	}
+
 	/**
 	 * A container for packets in the cache.
 	 */
-	public class Container
+	public static class Container
 	{
 		/**
 		 * The {@link RawPacket} which this container holds.
@@ -673,7 +849,7 @@ public class RawPacketCache implements AutoCloseable
 		 * The time (in milliseconds since the epoch) that the packet was
 		 * added to the cache.
 		 */
-		public long timeAdded;
+		public volatile long timeAdded;
 
 		/**
 		 * Initializes a new empty {@link Container} instance.
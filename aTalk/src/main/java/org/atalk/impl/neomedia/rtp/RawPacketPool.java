@@ -0,0 +1,276 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.util.ConfigUtils;
+import org.atalk.util.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reference-counted <tt>RawPacket</tt>s shared by all media streams. The pool keeps one
+ * slab of packets per size class (RTCP, audio and video) so that a packet is always backed by a
+ * buffer which fits the data without wasting a full MTU on e.g. an audio frame.
+ * <p>
+ * A packet obtained through {@link #acquire(int)} has a reference count of one. Holders which
+ * keep a reference beyond the scope in which they were handed the packet (e.g. the
+ * <tt>RawPacketCache</tt>) call {@link #retain(RawPacket)} and every holder calls
+ * {@link #release(RawPacket)} when done; the packet returns to its slab when the count drops to
+ * zero. Packets which were not obtained from the pool are ignored by <tt>retain</tt> and
+ * <tt>release</tt> and left to the garbage collector.
+ *
+ * @author Eng Chong Meng
+ */
+public class RawPacketPool
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>RawPacketPool</tt> class to print debug information.
+	 */
+	private static final Logger logger = Logger.getLogger(RawPacketPool.class);
+
+	/**
+	 * The buffer size of the RTCP size class.
+	 */
+	public static final int RTCP_BUFFER_SIZE = 512;
+
+	/**
+	 * The buffer size of the audio size class.
+	 */
+	public static final int AUDIO_BUFFER_SIZE = 1024;
+
+	/**
+	 * The buffer size of the video size class, large enough for an MTU-sized packet plus the SRTP
+	 * authentication tag and the RTX original sequence number.
+	 */
+	public static final int VIDEO_BUFFER_SIZE = 1664;
+
+	/**
+	 * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> integer property which
+	 * specifies the maximum number of free packets kept per size class.
+	 */
+	public static final String CAPACITY_PNAME = RawPacketPool.class.getName() + ".CAPACITY";
+
+	/**
+	 * The size classes of the pool ordered by their buffer size.
+	 */
+	private static final SizeClass[] sizeClasses;
+
+	static {
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+		int capacity = ConfigUtils.getInt(cfg, CAPACITY_PNAME, 512);
+
+		sizeClasses = new SizeClass[] {
+				new SizeClass("rtcp", RTCP_BUFFER_SIZE, capacity),
+				new SizeClass("audio", AUDIO_BUFFER_SIZE, capacity),
+				new SizeClass("video", VIDEO_BUFFER_SIZE, capacity)
+		};
+	}
+
+	/**
+	 * Gets a <tt>RawPacket</tt> with a buffer of at least <tt>len</tt> bytes, an offset and a
+	 * length of zero and a reference count of one. Packets larger than the largest size class are
+	 * allocated and are not pooled.
+	 *
+	 * @param len
+	 * 		the minimum buffer size
+	 * @return a <tt>RawPacket</tt> with a buffer of at least <tt>len</tt> bytes
+	 */
+	public static RawPacket acquire(int len)
+	{
+		for (SizeClass sizeClass : sizeClasses) {
+			if (len <= sizeClass.bufferSize)
+				return sizeClass.acquire();
+		}
+		return new RawPacket(new byte[len], 0, 0);
+	}
+
+	/**
+	 * Gets a <tt>RawPacket</tt> from the pool which contains a copy of specific data.
+	 *
+	 * @param buf
+	 * 		the buffer which contains the data to copy
+	 * @param off
+	 * 		the offset of the data in <tt>buf</tt>
+	 * @param len
+	 * 		the length of the data in <tt>buf</tt>
+	 * @return a <tt>RawPacket</tt> with a reference count of one which contains a copy of the
+	 * specified data
+	 */
+	public static RawPacket acquireCopy(byte[] buf, int off, int len)
+	{
+		RawPacket pkt = acquire(len);
+
+		System.arraycopy(buf, off, pkt.getBuffer(), 0, len);
+		pkt.setLength(len);
+		return pkt;
+	}
+
+	/**
+	 * Decrements the reference count of a specific <tt>RawPacket</tt> and returns it to the pool
+	 * if it is no longer referenced.
+	 *
+	 * @param pkt
+	 * 		the <tt>RawPacket</tt> to release. May be <tt>null</tt> or a packet which was not
+	 * 		obtained from the pool in which case the method does nothing.
+	 */
+	public static void release(RawPacket pkt)
+	{
+		if (pkt instanceof PooledRawPacket)
+			((PooledRawPacket) pkt).release();
+	}
+
+	/**
+	 * Increments the reference count of a specific <tt>RawPacket</tt> so that it is not returned
+	 * to the pool before a matching call to {@link #release(RawPacket)}.
+	 *
+	 * @param pkt
+	 * 		the <tt>RawPacket</tt> to retain. May be <tt>null</tt> or a packet which was not
+	 * 		obtained from the pool in which case the method does nothing.
+	 * @return <tt>pkt</tt>
+	 */
+	public static RawPacket retain(RawPacket pkt)
+	{
+		if (pkt instanceof PooledRawPacket)
+			((PooledRawPacket) pkt).refCount.incrementAndGet();
+		return pkt;
+	}
+
+	/**
+	 * Increments the reference count of a specific <tt>RawPacket</tt> unless it has already been
+	 * returned to the pool. Allows holders which may race with the last {@link #release(RawPacket)}
+	 * (e.g. lock-free readers of the <tt>RawPacketCache</tt>) to take a reference safely; such a
+	 * holder must still verify that the packet has not been handed out again in the meantime.
+	 *
+	 * @param pkt
+	 * 		the <tt>RawPacket</tt> to retain
+	 * @return <tt>true</tt> if <tt>pkt</tt> was retained or was not obtained from the pool;
+	 * <tt>false</tt> if <tt>pkt</tt> is no longer referenced
+	 */
+	public static boolean tryRetain(RawPacket pkt)
+	{
+		if (!(pkt instanceof PooledRawPacket))
+			return pkt != null;
+
+		AtomicInteger refCount = ((PooledRawPacket) pkt).refCount;
+
+		for (int count = refCount.get(); count > 0; count = refCount.get()) {
+			if (refCount.compareAndSet(count, count + 1))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets a description of the current state of the pool for the purposes of logging.
+	 *
+	 * @return a description of the current state of the pool
+	 */
+	public static String getStatistics()
+	{
+		StringBuilder s = new StringBuilder();
+
+		for (SizeClass sizeClass : sizeClasses) {
+			if (s.length() > 0)
+				s.append(',');
+			s.append(sizeClass.name)
+					.append("_free=").append(sizeClass.free.size())
+					.append(',').append(sizeClass.name)
+					.append("_allocated=").append(sizeClass.allocated.get());
+		}
+		return s.toString();
+	}
+
+	/**
+	 * A <tt>RawPacket</tt> which belongs to a {@link SizeClass} of the pool.
+	 */
+	private static class PooledRawPacket
+			extends RawPacket
+	{
+		/**
+		 * The buffer the packet was allocated with. Restored upon return to the pool in case a
+		 * transformer has replaced the buffer (e.g. through {@link RawPacket#grow(int)}).
+		 */
+		final byte[] slab;
+
+		final SizeClass sizeClass;
+
+		/**
+		 * The number of holders of this packet.
+		 */
+		final AtomicInteger refCount = new AtomicInteger();
+
+		PooledRawPacket(SizeClass sizeClass)
+		{
+			super(new byte[sizeClass.bufferSize], 0, 0);
+			this.sizeClass = sizeClass;
+			this.slab = getBuffer();
+		}
+
+		void release()
+		{
+			int count = refCount.decrementAndGet();
+
+			if (count == 0) {
+				setBuffer(slab);
+				setOffset(0);
+				setLength(0);
+				setFlags(0);
+				sizeClass.free.offer(this);
+			}
+			else if (count < 0) {
+				// Released more times than acquired/retained; do not pool it twice. Undo only this
+				// decrement: the packet may have been acquired again meanwhile and its count set
+				// anew by SizeClass#acquire.
+				refCount.compareAndSet(count, count + 1);
+				logger.warn("Released a RawPacket which is not referenced.", new Throwable());
+			}
+		}
+	}
+
+	/**
+	 * A slab of free packets with buffers of the same size.
+	 */
+	private static class SizeClass
+	{
+		/**
+		 * The number of packets allocated by this size class.
+		 */
+		final AtomicInteger allocated = new AtomicInteger();
+
+		final int bufferSize;
+
+		/**
+		 * The free packets of this size class. An <tt>ArrayBlockingQueue</tt> does not allocate
+		 * upon insertion unlike the linked queues.
+		 */
+		final ArrayBlockingQueue<PooledRawPacket> free;
+
+		final String name;
+
+		SizeClass(String name, int bufferSize, int capacity)
+		{
+			this.name = name;
+			this.bufferSize = bufferSize;
+			this.free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		}
+
+		PooledRawPacket acquire()
+		{
+			PooledRawPacket pkt = free.poll();
+
+			if (pkt == null) {
+				pkt = new PooledRawPacket(this);
+				allocated.incrementAndGet();
+			}
+			pkt.refCount.set(1);
+			return pkt;
+		}
+	}
+}
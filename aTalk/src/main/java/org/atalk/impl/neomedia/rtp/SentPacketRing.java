@@ -0,0 +1,127 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import org.atalk.impl.neomedia.rtp.remotebitrateestimator.RemoteBitrateEstimatorAbsSendTime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers the send times and the sizes of the most recently sent packets by their 16-bit
+ * transport-wide sequence numbers so that <tt>TransportCCEngine</tt> can resolve the packets
+ * reported by transport-cc feedback without boxing. Each slot of the ring packs everything known
+ * about a packet into a single <tt>long</tt>:
+ * <pre>
+ * | unused | valid (1) | sequence number (16) | length (16) | send time in AST format (24) |
+ * </pre>
+ * A slot is published with a single ordered write and claimed with a single compare-and-set so
+ * the send path never blocks and every packet is handed to exactly one feedback, even if the
+ * remote endpoint reports it again. A packet is forgotten when a packet which is sent
+ * {@link #SIZE} packets later takes over its slot.
+ *
+ * @author Eng Chong Meng
+ */
+class SentPacketRing
+{
+	/**
+	 * The number of slots of the ring i.e. the number of most recently sent packets which are
+	 * remembered. A power of two so that a sequence number is mapped to its slot by masking.
+	 */
+	static final int SIZE = 2048;
+
+	/**
+	 * The value of a slot which does not hold a packet and which {@link #remove(int)} returns for
+	 * a packet which is not remembered.
+	 */
+	static final long EMPTY = 0;
+
+	/**
+	 * The bit which distinguishes a slot holding a packet from an {@link #EMPTY} one.
+	 */
+	private static final long VALID = 1L << 56;
+
+	/**
+	 * The maximum length which fits into a slot. UDP does not allow longer packets anyway.
+	 */
+	private static final int MAX_LENGTH = 0xffff;
+
+	/**
+	 * The slots of the ring indexed by the sequence numbers masked with <tt>SIZE - 1</tt>.
+	 */
+	private final AtomicLongArray slots = new AtomicLongArray(SIZE);
+
+	/**
+	 * Gets the send time in AST format (24 bits, 6.18 fixed point) of a packet returned by
+	 * {@link #remove(int)}.
+	 *
+	 * @param packet
+	 * 		the packet returned by {@link #remove(int)}
+	 * @return the send time of <tt>packet</tt> in AST format
+	 */
+	static long getSendTime24Bits(long packet)
+	{
+		return packet & 0xffffffL;
+	}
+
+	/**
+	 * Gets the length in bytes of a packet returned by {@link #remove(int)}.
+	 *
+	 * @param packet
+	 * 		the packet returned by {@link #remove(int)}
+	 * @return the length in bytes of <tt>packet</tt>
+	 */
+	static int getLength(long packet)
+	{
+		return (int) ((packet >>> 24) & 0xffff);
+	}
+
+	/**
+	 * Remembers a sent packet. Safe to call concurrently as long as the callers use distinct
+	 * sequence numbers, which the atomic sequence number counter of the send path guarantees.
+	 *
+	 * @param seq
+	 * 		the transport-wide sequence number of the packet
+	 * @param length
+	 * 		the length in bytes of the packet
+	 * @param sendTimeMs
+	 * 		the time in milliseconds at which the packet was sent
+	 */
+	void put(int seq, int length, long sendTimeMs)
+	{
+		seq &= 0xffff;
+
+		long packet = VALID
+				| ((long) seq << 40)
+				| ((long) Math.min(length, MAX_LENGTH) << 24)
+				| RemoteBitrateEstimatorAbsSendTime.convertMsTo24Bits(sendTimeMs);
+
+		// The feedback path only has to see the slot eventually so an ordered write suffices.
+		slots.lazySet(seq & (SIZE - 1), packet);
+	}
+
+	/**
+	 * Removes a sent packet from this ring.
+	 *
+	 * @param seq
+	 * 		the transport-wide sequence number of the packet
+	 * @return the packet to be read with {@link #getSendTime24Bits(long)} and
+	 * {@link #getLength(long)}, or {@link #EMPTY} if the packet is not remembered (because it
+	 * was never sent, has been overwritten or has already been removed)
+	 */
+	long remove(int seq)
+	{
+		seq &= 0xffff;
+
+		int index = seq & (SIZE - 1);
+		long packet = slots.get(index);
+
+		if (packet == EMPTY || (int) ((packet >>> 40) & 0xffff) != seq)
+			return EMPTY;
+
+		// Lose to a concurrent removal or to the send path taking over the slot.
+		return slots.compareAndSet(index, packet, EMPTY) ? packet : EMPTY;
+	}
+}
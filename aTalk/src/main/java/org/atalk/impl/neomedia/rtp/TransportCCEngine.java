@@ -45,13 +45,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
 	 */
 	private static final int MAX_INCOMING_PACKETS_HISTORY = 200;
 
-	/**
-	 * The maximum number of received packets and their timestamps to save.
-	 * <p>
-	 * XXX this is an uninformed value.
-	 */
-	private static final int MAX_OUTGOING_PACKETS_HISTORY = 1000;
-
 	/**
 	 * The {@link Logger} used by the {@link TransportCCEngine} class and its
 	 * instances for logging output.
@@ -103,11 +96,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
 	 */
 	private final Object incomingPacketsSyncRoot = new Object();
 
-    /**
-     * Used to synchronize access to {@link #sentPacketDetails}.
-     */
-    private final Object sentPacketsSyncRoot = new Object();
-
     /**
 	 * The time (in milliseconds since the epoch) at which the first received
 	 * packet in {@link #incomingPackets} was received (or -1 if the map is empty).
@@ -130,11 +118,11 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
      */
     private long localReferenceTimeMs = -1;
     /**
-	 * Holds a key value pair of the packet sequence number and an object made
-	 * up of the packet send time and the packet size.
+	 * The send times and the sizes of the most recently sent packets indexed
+	 * by their transport-wide sequence numbers. Written by the send path and
+	 * read by the feedback path without locking.
 	 */
-	private Map<Integer, PacketDetail> sentPacketDetails
-			= new LRUCache<>(MAX_OUTGOING_PACKETS_HISTORY);
+	private final SentPacketRing sentPackets = new SentPacketRing();
 
 	/**
 	 * Used for estimating the bitrate from RTCP TCC feedback packets
@@ -370,59 +358,15 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
     @Override
     public void tccReceived(RTCPTCCPacket tccPacket)
     {
-        RTCPTCCPacket.PacketMap packetMap = tccPacket.getPackets();
-        long previousArrivalTimeMs = -1;
-        for (Map.Entry<Integer, Long> entry : packetMap.entrySet())
+        byte[] fci = tccPacket.fci;
+        if (fci == null)
         {
-            long arrivalTime250Us = entry.getValue();
-            if (arrivalTime250Us == -1) {
-                continue;
-            }
-
-            if (remoteReferenceTimeMs == -1)
-            {
-                remoteReferenceTimeMs = RTCPTCCPacket.getReferenceTime(
-                        new ByteArrayBufferImpl(tccPacket.fci, 0, tccPacket.fci.length)) / 4;
-
-                localReferenceTimeMs = System.currentTimeMillis();
-            }
-
-            PacketDetail packetDetail;
-            synchronized (sentPacketsSyncRoot)
-            {
-                packetDetail = sentPacketDetails.remove(entry.getKey());
-            }
-
-            if (packetDetail == null) {
-                continue;
-            }
-
-            long arrivalTimeMs = arrivalTime250Us / 4
-                - remoteReferenceTimeMs + localReferenceTimeMs;
-
-            if (logger.isDebugEnabled()) {
-                if (previousArrivalTimeMs != -1) {
-                    long diff_ms = arrivalTimeMs - previousArrivalTimeMs;
-                    logger.debug("seq=" + entry.getKey()
-                            + ", arrival_time_ms=" + arrivalTimeMs
-                            + ", diff_ms=" + diff_ms);
-                }
-                else {
-                    logger.debug("seq=" + entry.getKey()
-                            + ", arrival_time_ms=" + arrivalTimeMs);
-                }
-            }
-
-            previousArrivalTimeMs = arrivalTimeMs;
-            long sendTime24bits = RemoteBitrateEstimatorAbsSendTime
-                .convertMsTo24Bits(packetDetail.packetSendTimeMs);
-
-            bitrateEstimatorAbsSendTime.incomingPacketInfo(
-                arrivalTimeMs,
-                sendTime24bits,
-                packetDetail.packetLength,
-                tccPacket.getSourceSSRC());
+            return;
         }
+
+        // The deltas are resolved into the sent packets as they are parsed.
+        RTCPTCCPacket.visitPacketsFci(fci, 0, fci.length,
+            new FeedbackResolver(fci, tccPacket.getSourceSSRC()));
     }
 
     /**
@@ -468,11 +412,8 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
                             + ",tcc_seq=" + seq);
                 }
 
-                synchronized (sentPacketsSyncRoot)
-                {
-                    sentPacketDetails.put(seq, new PacketDetail(
-                                pkt.getLength(), System.currentTimeMillis()));
-                }
+                sentPackets.put(
+                    seq, pkt.getLength(), System.currentTimeMillis());
             }
             return pkt;
         }
@@ -552,20 +493,87 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter
     }
 
     /**
-     * {@link PacketDetail} is an object that holds the
-     * length(size) of the packet in {@link #packetLength}
-     * and the time stamps of the outgoing packet
-     * in {@link #packetSendTimeMs}
+     * Resolves the packets reported by a single RTCP transport-cc feedback
+     * packet into {@link #sentPackets} and feeds them to
+     * {@link #bitrateEstimatorAbsSendTime}.
      */
-    private class PacketDetail
+    private class FeedbackResolver
+        implements RTCPTCCPacket.PacketVisitor
     {
-        int packetLength;
-        long packetSendTimeMs;
+        /**
+         * The FCI of the feedback packet.
+         */
+        private final byte[] fci;
 
-        PacketDetail(int length, long time)
+        /**
+         * The "media source SSRC" of the feedback packet.
+         */
+        private final long sourceSSRC;
+
+        /**
+         * The arrival time of the previous packet (for debugging purposes).
+         */
+        private long previousArrivalTimeMs = -1;
+
+        /**
+         * Initializes a new {@link FeedbackResolver} instance.
+         *
+         * @param fci
+         *         the FCI of the feedback packet.
+         * @param sourceSSRC
+         *         the "media source SSRC" of the feedback packet.
+         */
+        FeedbackResolver(byte[] fci, long sourceSSRC)
+        {
+            this.fci = fci;
+            this.sourceSSRC = sourceSSRC;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void visit(int seq, long arrivalTime250Us)
         {
-            packetLength = length;
-            packetSendTimeMs = time;
+            if (arrivalTime250Us == -1) {
+                return;
+            }
+
+            if (remoteReferenceTimeMs == -1)
+            {
+                remoteReferenceTimeMs
+                    = RTCPTCCPacket.getReferenceTime(fci, 0) / 4;
+
+                localReferenceTimeMs = System.currentTimeMillis();
+            }
+
+            long packet = sentPackets.remove(seq);
+            if (packet == SentPacketRing.EMPTY) {
+                return;
+            }
+
+            long arrivalTimeMs = arrivalTime250Us / 4
+                - remoteReferenceTimeMs + localReferenceTimeMs;
+
+            if (logger.isDebugEnabled()) {
+                if (previousArrivalTimeMs != -1) {
+                    long diff_ms = arrivalTimeMs - previousArrivalTimeMs;
+                    logger.debug("seq=" + seq
+                            + ", arrival_time_ms=" + arrivalTimeMs
+                            + ", diff_ms=" + diff_ms);
+                }
+                else {
+                    logger.debug("seq=" + seq
+                            + ", arrival_time_ms=" + arrivalTimeMs);
+                }
+            }
+
+            previousArrivalTimeMs = arrivalTimeMs;
+            bitrateEstimatorAbsSendTime.incomingPacketInfo(
+                arrivalTimeMs,
+                SentPacketRing.getSendTime24Bits(packet),
+                SentPacketRing.getLength(packet),
+                sourceSSRC);
         }
     }
 }
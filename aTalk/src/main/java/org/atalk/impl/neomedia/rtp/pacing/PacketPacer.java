@@ -0,0 +1,891 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp.pacing;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.rtp.BandwidthEstimator;
+import org.atalk.util.ConfigUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements the send queue of an <tt>RTPConnectorOutputStream</tt> as a token-bucket pacer with
+ * a queue per {@link Priority}. The bucket is filled at a multiple of the target bitrate (e.g. the
+ * latest estimate of a {@link BandwidthEstimator} the pacer listens to) so that bursts such as
+ * video key frames are spread over time instead of being sent back to back. Packets are taken out
+ * of the queues in the order of their priorities; audio is never held back by the bucket but is
+ * charged to it. While no target bitrate is set, the pacer does not hold any packet back and merely
+ * orders them by priority.
+ * <p>
+ * A probe cluster temporarily raises the pacing bitrate in order to let a bandwidth estimator
+ * find out whether a higher bitrate is sustainable. The pacer only paces what it is given so
+ * padding should be written to the stream (and is queued with {@link Priority#PADDING}) if there
+ * is not enough media to probe with.
+ * <p>
+ * The queue delay i.e. the time between the offering and the taking of a packet is measured per
+ * priority and exported along with the expected time to drain the queues at the current pacing
+ * bitrate.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @param <T>
+ * 		the type of the queued packets
+ * @author Eng Chong Meng
+ */
+public class PacketPacer<T>
+		implements BandwidthEstimator.Listener
+{
+	/**
+	 * The name of the property which specifies whether the streams which estimate the available
+	 * bandwidth pace their packets at the estimated bitrate.
+	 */
+	public static final String ENABLED_PNAME = PacketPacer.class.getName() + ".ENABLED";
+
+	/**
+	 * Whether the streams which estimate the available bandwidth pace their packets at the
+	 * estimated bitrate.
+	 */
+	public static final boolean ENABLED;
+
+	/**
+	 * The name of the property which specifies the time in milliseconds of sending at the pacing
+	 * bitrate which may be accumulated in the bucket while there is nothing to send.
+	 */
+	public static final String MAX_BURST_MS_PNAME = PacketPacer.class.getName() + ".MAX_BURST_MS";
+
+	/**
+	 * The name of the property which specifies the time in milliseconds in which the queued
+	 * packets should be sent regardless of the target bitrate.
+	 */
+	public static final String MAX_QUEUE_TIME_MS_PNAME
+			= PacketPacer.class.getName() + ".MAX_QUEUE_TIME_MS";
+
+	/**
+	 * The name of the property which specifies the pacing bitrate as a percentage of the target
+	 * bitrate.
+	 */
+	public static final String PACING_FACTOR_PERCENT_PNAME
+			= PacketPacer.class.getName() + ".PACING_FACTOR_PERCENT";
+
+	/**
+	 * The time in milliseconds of sending at the pacing bitrate which may be accumulated in the
+	 * bucket while there is nothing to send.
+	 */
+	private static final int MAX_BURST_MS;
+
+	/**
+	 * The time in milliseconds in which the queued packets should be sent regardless of the
+	 * target bitrate.
+	 */
+	private static final int MAX_QUEUE_TIME_MS;
+
+	/**
+	 * The pacing bitrate as a percentage of the target bitrate. Greater than <tt>100</tt> so that
+	 * the encoders which overshoot the target for a while do not build up a queue.
+	 */
+	private static final int PACING_FACTOR_PERCENT;
+
+	/**
+	 * The time in nanoseconds after which a probe cluster which has not sent its minimum number of
+	 * packets and bytes is abandoned.
+	 */
+	private static final long PROBE_CLUSTER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * The denominator of the weight of a new sample in the moving averages of the queue delays.
+	 */
+	private static final int QUEUE_DELAY_SMOOTHING = 16;
+
+	static {
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+		ENABLED = ConfigUtils.getBoolean(cfg, ENABLED_PNAME, true);
+		MAX_BURST_MS = ConfigUtils.getInt(cfg, MAX_BURST_MS_PNAME, 10);
+		MAX_QUEUE_TIME_MS = ConfigUtils.getInt(cfg, MAX_QUEUE_TIME_MS_PNAME, 2000);
+		PACING_FACTOR_PERCENT = ConfigUtils.getInt(cfg, PACING_FACTOR_PERCENT_PNAME, 250);
+	}
+
+	/**
+	 * The number of bytes which may be sent at the pacing bitrate. Negative when audio has been
+	 * sent in excess of the bucket.
+	 */
+	private double budgetBytes = 0;
+
+	/**
+	 * The maximum number of packets in the queues of this instance.
+	 */
+	private final int capacity;
+
+	/**
+	 * The number of the packets dropped by this instance because its queues were full.
+	 */
+	private long droppedPacketCount = 0;
+
+	/**
+	 * The time in nanoseconds at which {@link #budgetBytes} was last filled.
+	 */
+	private long lastFillTimeNanos = -1;
+
+	/**
+	 * The largest queue delay in nanoseconds per priority.
+	 */
+	private final long[] maxQueueDelayNanos = new long[Priority.values.length];
+
+	/**
+	 * The priority of the packets which are neither padding nor retransmissions, e.g. audio for
+	 * the streams which carry audio.
+	 */
+	private volatile Priority mediaPriority = Priority.VIDEO;
+
+	/**
+	 * The identifier to be assigned to the next probe cluster.
+	 */
+	private int nextProbeClusterId = 0;
+
+	/**
+	 * The statistics of the probe clusters of this instance: the numbers of completed and of
+	 * abandoned clusters and the bitrate achieved by the last completed cluster.
+	 */
+	private long completedProbeClusterCount = 0, abandonedProbeClusterCount = 0,
+			lastProbeBitrateBps = -1;
+
+	/**
+	 * The probe clusters which are yet to be sent, the active one at the head.
+	 */
+	private final Deque<ProbeCluster> probeClusters = new ArrayDeque<>();
+
+	/**
+	 * The number of bytes in the queues of this instance.
+	 */
+	private long queuedBytes = 0;
+
+	/**
+	 * The moving average of the queue delay in nanoseconds per priority.
+	 */
+	private final long[] queueDelayNanos = new long[Priority.values.length];
+
+	/**
+	 * The queues of this instance indexed by the ordinals of the priorities.
+	 */
+	private final PacketQueue[] queues = new PacketQueue[Priority.values.length];
+
+	/**
+	 * The indicators, indexed by RTP payload type, of the payload types of the retransmissions
+	 * and of the forward error correction (e.g. RTX and FEC).
+	 */
+	private volatile boolean[] retransmissionPayloadTypes = new boolean[128];
+
+	/**
+	 * The number of packets taken out of this instance per priority.
+	 */
+	private final long[] sentPacketCount = new long[Priority.values.length];
+
+	/**
+	 * The number of packets in the queues of this instance.
+	 */
+	private int size = 0;
+
+	/**
+	 * The bitrate in bits per second to pace at before the pacing factor is applied or <tt>-1</tt>
+	 * if packets are not to be paced.
+	 */
+	private long targetBitrateBps = -1;
+
+	/**
+	 * The number of threads waiting in {@link #take(long)}.
+	 */
+	private int waiterCount = 0;
+
+	/**
+	 * Initializes a new <tt>PacketPacer</tt> instance.
+	 *
+	 * @param capacity
+	 * 		the maximum number of packets in the queues of the new instance
+	 */
+	public PacketPacer(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity " + capacity);
+
+		this.capacity = capacity;
+		for (int i = 0; i < queues.length; i++)
+			queues[i] = new PacketQueue();
+	}
+
+	/**
+	 * Sets the target bitrate to the new estimate of the <tt>BandwidthEstimator</tt> this instance
+	 * listens to.
+	 *
+	 * @param newValueBps
+	 * 		the new estimate in bits per second
+	 */
+	@Override
+	public void bandwidthEstimationChanged(long newValueBps)
+	{
+		setTargetBitrate(newValueBps);
+	}
+
+	/**
+	 * Determines the priority of a specific RTP packet by its payload type and padding.
+	 *
+	 * @param buf
+	 * 		the buffer which contains the RTP packet
+	 * @param off
+	 * 		the offset in <tt>buf</tt> at which the RTP packet starts
+	 * @param len
+	 * 		the length of the RTP packet
+	 * @return the priority to queue the specified RTP packet with
+	 */
+	public Priority classify(byte[] buf, int off, int len)
+	{
+		Priority mediaPriority = this.mediaPriority;
+
+		// Anything but RTP (e.g. the DTLS of the same transport) keeps the priority of the media.
+		if (len < 12 || (buf[off] & 0xC0) != 0x80)
+			return mediaPriority;
+
+		if ((buf[off] & 0x20) != 0) {
+			// A packet is padding if its payload is all padding.
+			int headerLength = 12 + 4 * (buf[off] & 0x0F);
+
+			if ((buf[off] & 0x10) != 0 && headerLength + 4 <= len) {
+				int extensionLength = ((buf[off + headerLength + 2] & 0xFF) << 8)
+						| (buf[off + headerLength + 3] & 0xFF);
+
+				headerLength += 4 + 4 * extensionLength;
+			}
+			if (headerLength < len && (buf[off + len - 1] & 0xFF) >= len - headerLength)
+				return Priority.PADDING;
+		}
+		if (retransmissionPayloadTypes[buf[off + 1] & 0x7F])
+			return Priority.RETRANSMISSION;
+		return mediaPriority;
+	}
+
+	/**
+	 * Removes all packets from the queues of this instance.
+	 */
+	public synchronized void clear()
+	{
+		for (PacketQueue queue : queues)
+			queue.clear();
+		size = 0;
+		queuedBytes = 0;
+	}
+
+	/**
+	 * Creates a probe cluster which raises the pacing bitrate to a specific bitrate until a
+	 * specific number of packets and bytes have been sent. The probe clusters are run one after
+	 * the other in the order of their creation.
+	 *
+	 * @param bitrateBps
+	 * 		the bitrate in bits per second to probe
+	 * @param minPackets
+	 * 		the minimum number of packets to send at <tt>bitrateBps</tt>
+	 * @param minBytes
+	 * 		the minimum number of bytes to send at <tt>bitrateBps</tt>
+	 * @return the identifier of the new probe cluster
+	 */
+	public synchronized int createProbeCluster(long bitrateBps, int minPackets, int minBytes)
+	{
+		if (bitrateBps <= 0)
+			throw new IllegalArgumentException("bitrateBps " + bitrateBps);
+
+		ProbeCluster probeCluster = new ProbeCluster(nextProbeClusterId++, bitrateBps,
+				minPackets, minBytes, System.nanoTime());
+
+		probeClusters.add(probeCluster);
+		return probeCluster.id;
+	}
+
+	/**
+	 * Fills {@link #budgetBytes} at a specific bitrate for the time elapsed since it was last
+	 * filled.
+	 *
+	 * @param pacingBitrateBps
+	 * 		the pacing bitrate in bits per second
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 */
+	private void fillBudget(long pacingBitrateBps, long nowNanos)
+	{
+		if (lastFillTimeNanos != -1) {
+			long elapsedNanos = Math.min(nowNanos - lastFillTimeNanos, TimeUnit.SECONDS.toNanos(1));
+
+			if (elapsedNanos > 0) {
+				double maxBudgetBytes = pacingBitrateBps * MAX_BURST_MS / 8000D;
+
+				budgetBytes = Math.min(budgetBytes + elapsedNanos * pacingBitrateBps / 8E9,
+						maxBudgetBytes);
+			}
+		}
+		lastFillTimeNanos = nowNanos;
+	}
+
+	/**
+	 * Gets the identifier of the probe cluster which is being sent.
+	 *
+	 * @return the identifier of the probe cluster which is being sent or <tt>-1</tt> if no probe
+	 * cluster is being sent
+	 */
+	public synchronized int getActiveProbeClusterId()
+	{
+		ProbeCluster probeCluster = probeClusters.peek();
+
+		return (probeCluster == null) ? -1 : probeCluster.id;
+	}
+
+	/**
+	 * Gets the moving average of the queue delay of the packets of a specific priority.
+	 *
+	 * @param priority
+	 * 		the priority of the packets
+	 * @return the moving average of the queue delay in milliseconds of the packets of the
+	 * specified priority
+	 */
+	public synchronized double getAverageQueueDelayMs(Priority priority)
+	{
+		return queueDelayNanos[priority.ordinal()] / 1E6;
+	}
+
+	/**
+	 * Gets the number of probe clusters which have been abandoned because they did not send their
+	 * minimum number of packets and bytes in time.
+	 *
+	 * @return the number of abandoned probe clusters
+	 */
+	public synchronized long getAbandonedProbeClusterCount()
+	{
+		return abandonedProbeClusterCount;
+	}
+
+	/**
+	 * Gets the number of probe clusters which have sent their minimum number of packets and
+	 * bytes.
+	 *
+	 * @return the number of completed probe clusters
+	 */
+	public synchronized long getCompletedProbeClusterCount()
+	{
+		return completedProbeClusterCount;
+	}
+
+	/**
+	 * Gets the number of packets dropped by this instance because its queues were full.
+	 *
+	 * @return the number of dropped packets
+	 */
+	public synchronized long getDroppedPacketCount()
+	{
+		return droppedPacketCount;
+	}
+
+	/**
+	 * Gets the time it takes to send the queued packets at the current pacing bitrate.
+	 *
+	 * @return the time in milliseconds it takes to send the queued packets or <tt>0</tt> if
+	 * packets are not being paced
+	 */
+	public synchronized long getExpectedQueueTimeMs()
+	{
+		long pacingBitrateBps = getPacingBitrate();
+
+		return (pacingBitrateBps <= 0) ? 0 : queuedBytes * 8000 / pacingBitrateBps;
+	}
+
+	/**
+	 * Gets the bitrate achieved by the last completed probe cluster.
+	 *
+	 * @return the bitrate in bits per second achieved by the last completed probe cluster or
+	 * <tt>-1</tt> if no probe cluster has been completed
+	 */
+	public synchronized long getLastProbeBitrate()
+	{
+		return lastProbeBitrateBps;
+	}
+
+	/**
+	 * Gets the largest queue delay of the packets of a specific priority.
+	 *
+	 * @param priority
+	 * 		the priority of the packets
+	 * @return the largest queue delay in milliseconds of the packets of the specified priority
+	 */
+	public synchronized double getMaxQueueDelayMs(Priority priority)
+	{
+		return maxQueueDelayNanos[priority.ordinal()] / 1E6;
+	}
+
+	/**
+	 * Gets the bitrate at which the packets are currently sent by this instance. It is the target
+	 * bitrate multiplied by the pacing factor, raised to drain the queues within
+	 * {@link #MAX_QUEUE_TIME_MS} and to the bitrate of the active probe cluster.
+	 *
+	 * @return the pacing bitrate in bits per second or <tt>-1</tt> if packets are not being paced
+	 */
+	public synchronized long getPacingBitrate()
+	{
+		if (targetBitrateBps <= 0)
+			return -1;
+
+		long pacingBitrateBps = targetBitrateBps * PACING_FACTOR_PERCENT / 100;
+
+		if (MAX_QUEUE_TIME_MS > 0) {
+			long drainBitrateBps = queuedBytes * 8000 / MAX_QUEUE_TIME_MS;
+
+			if (pacingBitrateBps < drainBitrateBps)
+				pacingBitrateBps = drainBitrateBps;
+		}
+
+		ProbeCluster probeCluster = probeClusters.peek();
+
+		if (probeCluster != null && pacingBitrateBps < probeCluster.bitrateBps)
+			pacingBitrateBps = probeCluster.bitrateBps;
+		return Math.max(pacingBitrateBps, 1);
+	}
+
+	/**
+	 * Gets the number of bytes in the queues of this instance.
+	 *
+	 * @return the number of bytes in the queues of this instance
+	 */
+	public synchronized long getQueuedBytes()
+	{
+		return queuedBytes;
+	}
+
+	/**
+	 * Gets the number of packets of a specific priority taken out of this instance.
+	 *
+	 * @param priority
+	 * 		the priority of the packets
+	 * @return the number of packets of the specified priority taken out of this instance
+	 */
+	public synchronized long getSentPacketCount(Priority priority)
+	{
+		return sentPacketCount[priority.ordinal()];
+	}
+
+	/**
+	 * Gets the time until {@link #poll(long)} may return a packet.
+	 *
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 * @return <tt>-1</tt> if the queues of this instance are empty, <tt>0</tt> if a packet may be
+	 * taken now or the time in nanoseconds until a packet may be taken
+	 */
+	public synchronized long getTimeUntilNextPollNanos(long nowNanos)
+	{
+		if (size == 0)
+			return -1;
+
+		long pacingBitrateBps = getPacingBitrate();
+
+		if (pacingBitrateBps <= 0 || queues[Priority.AUDIO.ordinal()].count > 0)
+			return 0;
+
+		fillBudget(pacingBitrateBps, nowNanos);
+		if (budgetBytes > 0)
+			return 0;
+		return Math.max((long) Math.ceil(-budgetBytes * 8E9 / pacingBitrateBps), 1);
+	}
+
+	/**
+	 * Determines whether the queues of this instance are empty.
+	 *
+	 * @return <tt>true</tt> if the queues of this instance are empty; otherwise, <tt>false</tt>
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Adds a specific packet to the queue of a specific priority. If the queues are full, the
+	 * oldest packet of the lowest priority is dropped to make room unless it is of a higher
+	 * priority than the specified packet in which case the latter is dropped.
+	 *
+	 * @param packet
+	 * 		the packet to add
+	 * @param length
+	 * 		the length in bytes of <tt>packet</tt>
+	 * @param priority
+	 * 		the priority of <tt>packet</tt>
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 * @return the packet dropped to make room (possibly <tt>packet</tt>) or <tt>null</tt> if no
+	 * packet has been dropped
+	 */
+	public synchronized T offer(T packet, int length, Priority priority, long nowNanos)
+	{
+		T dropped = null;
+
+		if (size >= capacity) {
+			for (int p = queues.length - 1; p >= 0; p--) {
+				PacketQueue queue = queues[p];
+
+				if (queue.count > 0) {
+					if (p < priority.ordinal())
+						dropped = packet;
+					else
+						dropped = remove(queue);
+					break;
+				}
+			}
+			droppedPacketCount++;
+			if (dropped == packet)
+				return dropped;
+		}
+
+		queues[priority.ordinal()].add(packet, length, nowNanos);
+		size++;
+		queuedBytes += length;
+		if (waiterCount > 0)
+			notifyAll();
+		return dropped;
+	}
+
+	/**
+	 * Takes the next packet out of this instance if the pacing allows it.
+	 *
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 * @return the packet of the highest priority which may be sent now or <tt>null</tt> if there
+	 * is no such packet
+	 */
+	public synchronized T poll(long nowNanos)
+	{
+		expireProbeClusters(nowNanos);
+		if (size == 0)
+			return null;
+
+		long pacingBitrateBps = getPacingBitrate();
+		boolean paced = pacingBitrateBps > 0;
+
+		if (paced)
+			fillBudget(pacingBitrateBps, nowNanos);
+
+		for (int p = 0; p < queues.length; p++) {
+			PacketQueue queue = queues[p];
+
+			if (queue.count == 0)
+				continue;
+			// Audio is sent regardless of the budget, everything else waits for it.
+			if (paced && p != Priority.AUDIO.ordinal() && budgetBytes <= 0)
+				return null;
+
+			int length = queue.lengths[queue.head];
+			long queueDelayNanos = nowNanos - queue.times[queue.head];
+			T packet = remove(queue);
+
+			if (paced)
+				budgetBytes -= length;
+			sentPacketCount[p]++;
+			this.queueDelayNanos[p]
+					+= (queueDelayNanos - this.queueDelayNanos[p]) / QUEUE_DELAY_SMOOTHING;
+			if (maxQueueDelayNanos[p] < queueDelayNanos)
+				maxQueueDelayNanos[p] = queueDelayNanos;
+			probeSent(length, nowNanos);
+			return packet;
+		}
+		return null;
+	}
+
+	/**
+	 * Abandons the probe clusters which have not been completed in time.
+	 *
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 */
+	private void expireProbeClusters(long nowNanos)
+	{
+		ProbeCluster probeCluster;
+
+		while ((probeCluster = probeClusters.peek()) != null
+				&& nowNanos - probeCluster.creationTimeNanos > PROBE_CLUSTER_TIMEOUT_NANOS) {
+			probeClusters.poll();
+			abandonedProbeClusterCount++;
+		}
+	}
+
+	/**
+	 * Accounts a sent packet to the active probe cluster, if any.
+	 *
+	 * @param length
+	 * 		the length in bytes of the sent packet
+	 * @param nowNanos
+	 * 		the current time in nanoseconds
+	 */
+	private void probeSent(int length, long nowNanos)
+	{
+		ProbeCluster probeCluster = probeClusters.peek();
+
+		if (probeCluster == null)
+			return;
+
+		if (probeCluster.sentPackets == 0) {
+			probeCluster.startTimeNanos = nowNanos;
+			probeCluster.firstPacketLength = length;
+			// Start the cluster with an empty bucket so that what has been saved up before does
+			// not go out as a burst and inflate the probed bitrate.
+			if (budgetBytes > 0)
+				budgetBytes = 0;
+		}
+		probeCluster.sentPackets++;
+		probeCluster.sentBytes += length;
+		if (probeCluster.sentPackets >= probeCluster.minPackets
+				&& probeCluster.sentBytes >= probeCluster.minBytes) {
+			long durationNanos = nowNanos - probeCluster.startTimeNanos;
+
+			probeClusters.poll();
+			completedProbeClusterCount++;
+			// The first packet starts the clock so it does not count.
+			lastProbeBitrateBps = (durationNanos > 0)
+					? (long) ((probeCluster.sentBytes - probeCluster.firstPacketLength) * 8E9
+					/ durationNanos)
+					: probeCluster.bitrateBps;
+		}
+	}
+
+	/**
+	 * Removes the oldest packet of a specific queue.
+	 *
+	 * @param queue
+	 * 		the queue to remove the oldest packet of
+	 * @return the removed packet
+	 */
+	@SuppressWarnings("unchecked")
+	private T remove(PacketQueue queue)
+	{
+		int head = queue.head;
+		T packet = (T) queue.packets[head];
+
+		queuedBytes -= queue.lengths[head];
+		size--;
+		queue.removeHead();
+		return packet;
+	}
+
+	/**
+	 * Sets the priority of the packets which are neither padding nor retransmissions.
+	 *
+	 * @param mediaPriority
+	 * 		the priority of the packets which are neither padding nor retransmissions
+	 */
+	public void setMediaPriority(Priority mediaPriority)
+	{
+		this.mediaPriority = mediaPriority;
+	}
+
+	/**
+	 * Sets the RTP payload types of the retransmissions and of the forward error correction
+	 * (e.g. RTX and FEC) which are to be queued with {@link Priority#RETRANSMISSION}.
+	 *
+	 * @param payloadTypes
+	 * 		the RTP payload types of the retransmissions and of the forward error correction
+	 */
+	public void setRetransmissionPayloadTypes(Collection<Byte> payloadTypes)
+	{
+		boolean[] retransmissionPayloadTypes = new boolean[128];
+
+		for (Byte payloadType : payloadTypes)
+			retransmissionPayloadTypes[payloadType & 0x7F] = true;
+		this.retransmissionPayloadTypes = retransmissionPayloadTypes;
+	}
+
+	/**
+	 * Sets the bitrate to pace at before the pacing factor is applied.
+	 *
+	 * @param targetBitrateBps
+	 * 		the target bitrate in bits per second or a non-positive value for no pacing
+	 */
+	public synchronized void setTargetBitrate(long targetBitrateBps)
+	{
+		this.targetBitrateBps = (targetBitrateBps > 0) ? targetBitrateBps : -1;
+	}
+
+	/**
+	 * Gets the number of packets in the queues of this instance.
+	 *
+	 * @return the number of packets in the queues of this instance
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Takes the next packet out of this instance, waiting until one is offered and the pacing
+	 * allows it to be sent.
+	 *
+	 * @param timeoutNanos
+	 * 		the maximum time in nanoseconds to wait
+	 * @return the packet of the highest priority which may be sent or <tt>null</tt> if there was
+	 * no such packet before the timeout elapsed
+	 * @throws InterruptedException
+	 * 		if the current thread was interrupted while waiting
+	 */
+	public synchronized T take(long timeoutNanos)
+			throws InterruptedException
+	{
+		long deadline = System.nanoTime() + timeoutNanos;
+
+		waiterCount++;
+		try {
+			while (true) {
+				long now = System.nanoTime();
+				T packet = poll(now);
+
+				if (packet != null)
+					return packet;
+
+				long waitNanos = deadline - now;
+
+				if (waitNanos <= 0)
+					return null;
+
+				long pollNanos = getTimeUntilNextPollNanos(now);
+
+				if (pollNanos > 0 && pollNanos < waitNanos)
+					waitNanos = pollNanos;
+				TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+			}
+		} finally {
+			waiterCount--;
+		}
+	}
+
+	/**
+	 * The priorities of the packets in the order in which they are sent.
+	 */
+	public enum Priority
+	{
+		/**
+		 * Audio, which is not held back by the pacing.
+		 */
+		AUDIO,
+
+		/**
+		 * Retransmissions (e.g. RTX) and forward error correction.
+		 */
+		RETRANSMISSION,
+
+		/**
+		 * Video.
+		 */
+		VIDEO,
+
+		/**
+		 * Padding e.g. for bandwidth probing.
+		 */
+		PADDING;
+
+		/**
+		 * The cached result of {@link #values()}.
+		 */
+		static final Priority[] values = values();
+	}
+
+	/**
+	 * A ring of queued packets along with their lengths and the times they were queued at, kept
+	 * in parallel arrays in order to not allocate per packet.
+	 */
+	private static class PacketQueue
+	{
+		int count = 0;
+
+		int head = 0;
+
+		int[] lengths = new int[16];
+
+		Object[] packets = new Object[16];
+
+		long[] times = new long[16];
+
+		void add(Object packet, int length, long time)
+		{
+			if (count == packets.length)
+				grow();
+
+			int tail = (head + count) & (packets.length - 1);
+
+			packets[tail] = packet;
+			lengths[tail] = length;
+			times[tail] = time;
+			count++;
+		}
+
+		void clear()
+		{
+			Arrays.fill(packets, null);
+			head = 0;
+			count = 0;
+		}
+
+		private void grow()
+		{
+			int newLength = packets.length * 2;
+			Object[] newPackets = new Object[newLength];
+			int[] newLengths = new int[newLength];
+			long[] newTimes = new long[newLength];
+
+			for (int i = 0; i < count; i++) {
+				int j = (head + i) & (packets.length - 1);
+
+				newPackets[i] = packets[j];
+				newLengths[i] = lengths[j];
+				newTimes[i] = times[j];
+			}
+			packets = newPackets;
+			lengths = newLengths;
+			times = newTimes;
+			head = 0;
+		}
+
+		void removeHead()
+		{
+			packets[head] = null;
+			head = (head + 1) & (packets.length - 1);
+			count--;
+		}
+	}
+
+	/**
+	 * Represents a probe cluster i.e. a number of packets to be sent at a specific bitrate in
+	 * order to probe the available bandwidth.
+	 */
+	private static class ProbeCluster
+	{
+		final long bitrateBps;
+
+		final long creationTimeNanos;
+
+		final int id;
+
+		final int minBytes;
+
+		final int minPackets;
+
+		int firstPacketLength;
+
+		long sentBytes = 0;
+
+		int sentPackets = 0;
+
+		long startTimeNanos;
+
+		ProbeCluster(int id, long bitrateBps, int minPackets, int minBytes, long creationTimeNanos)
+		{
+			this.id = id;
+			this.bitrateBps = bitrateBps;
+			this.minPackets = minPackets;
+			this.minBytes = minBytes;
+			this.creationTimeNanos = creationTimeNanos;
+		}
+	}
+}
@@ -16,7 +16,8 @@
 package org.atalk.impl.neomedia.stats;
 
 import org.atalk.service.neomedia.stats.TrackStats;
-import org.ice4j.util.RateStatistics;
+import org.atalk.util.concurrent.StripedCounter;
+import org.atalk.util.stats.ConcurrentRateStatistics;
 
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,25 +33,26 @@ public abstract class AbstractTrackStats
 	/**
 	 * The last jitter (in milliseconds).
 	 */
-	private double jitter = JITTER_UNSET;
+	private volatile double jitter = JITTER_UNSET;
 
 	/**
 	 * The RTT computed with the RTCP feedback (cf. RFC3550, section 6.4.1,
 	 * subsection "delay since last SR (DLSR): 32 bits"). {@code -1} if the RTT
 	 * has not been computed yet. Otherwise, the RTT in milliseconds.
 	 */
-	private long rtt = -1;
+	private volatile long rtt = -1;
 
     /**
-     * The total number of bytes.
+     * The total number of bytes. Striped because the aggregate statistics of a stream are updated
+     * by the threads of all its SSRCs.
      */
-    protected final AtomicLong bytes = new AtomicLong();
+    protected final StripedCounter bytes = new StripedCounter();
 
     /**
      * The total number of RTP packets. This excludes RTCP packets, because
      * the value is used to calculate the number of lost RTP packets.
      */
-    protected final AtomicLong packets = new AtomicLong();
+    protected final StripedCounter packets = new StripedCounter();
 
     /**
      * Number of bytes retransmitted.
@@ -83,12 +85,12 @@ public abstract class AbstractTrackStats
     /**
 	 * The bitrate.
 	 */
-	protected RateStatistics bitrate;
+	protected ConcurrentRateStatistics bitrate;
 
 	/**
 	 * The packet rate.
 	 */
-	protected RateStatistics packetRate;
+	protected ConcurrentRateStatistics packetRate;
 
 	/**
 	 * The length of the interval over which the average bitrate, packet rate
@@ -108,8 +110,8 @@ public abstract class AbstractTrackStats
 	{
 		this.interval = interval;
 		this.ssrc = ssrc;
-		bitrate = new RateStatistics(interval);
-		packetRate = new RateStatistics(interval, 1000F);
+		bitrate = new ConcurrentRateStatistics(interval);
+		packetRate = new ConcurrentRateStatistics(interval, 1000F);
 	}
 
 	/**
@@ -135,13 +137,13 @@ public abstract class AbstractTrackStats
 	 */
 	protected void packetProcessed(int length, long now, boolean rtp)
 	{
-		bytes.addAndGet(length);
+		bytes.add(length);
 		bitrate.update(length, now);
 
 		// Don't count RTCP packets towards the packet rate since it is used to
 		// calculate the number of lost packets.
 		if (rtp) {
-			packets.addAndGet(1);
+			packets.increment();
 			packetRate.update(1, now);
 		}
 	}
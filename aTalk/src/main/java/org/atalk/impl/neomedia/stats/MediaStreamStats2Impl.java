@@ -4,11 +4,19 @@ package org.atalk.impl.neomedia.stats;
 import org.atalk.impl.neomedia.*;
 import org.atalk.service.neomedia.stats.*;
 import org.atalk.util.Logger;
+import org.atalk.util.stats.Histogram;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Keeps the statistics of a {@link MediaStreamImpl} per SSRC and aggregated. The methods which
+ * are invoked for every packet take no locks: the counters and rates of the aggregate statistics
+ * are striped or compare-and-set, and the state of an SSRC is only updated by the thread which
+ * processes the packets of that SSRC. Jitter, RTT, packet inter-arrival time and the time spent in
+ * the transform chain are also recorded into {@link Histogram}s, which
+ * {@link MediaStreamStatsExporter} periodically exports.
+ *
  * @author Boris Grozev
  */
 public class MediaStreamStats2Impl extends MediaStreamStatsImpl
@@ -47,12 +55,44 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	private final AggregateSendTrackStats sendStats
 			= new AggregateSendTrackStats(INTERVAL, sendSsrcStats);
 
+	/**
+	 * The jitter in microseconds of the received streams.
+	 */
+	private final Histogram jitterHistogram = new Histogram(60_000_000L);
+
+	/**
+	 * The RTT in milliseconds.
+	 */
+	private final Histogram rttHistogram = new Histogram(60_000L);
+
+	/**
+	 * The time in microseconds between the arrival of two consecutive RTP packets of a
+	 * received SSRC.
+	 */
+	private final Histogram interArrivalHistogram = new Histogram(60_000_000L);
+
+	/**
+	 * The time in microseconds it takes to reverse-transform a received RTP packet.
+	 */
+	private final Histogram receiveLatencyHistogram = new Histogram(10_000_000L);
+
+	/**
+	 * The time in microseconds it takes to transform an RTP packet to be sent.
+	 */
+	private final Histogram sendLatencyHistogram = new Histogram(10_000_000L);
+
+	/**
+	 * The {@link MediaStreamImpl} of which this instance keeps the statistics.
+	 */
+	private final MediaStreamImpl mediaStream;
+
 	/**
 	 * Initializes a new {@link MediaStreamStats2Impl} instance.
 	 */
 	public MediaStreamStats2Impl(MediaStreamImpl mediaStream)
 	{
 		super(mediaStream);
+		this.mediaStream = mediaStream;
 	}
 
 	/**
@@ -68,10 +108,13 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	 */
 	public void rtpPacketReceived(long ssrc, int seq, int length)
 	{
-		synchronized (receiveStats) {
-			getReceiveStats(ssrc).rtpPacketReceived(seq, length);
-			receiveStats.packetProcessed(length, System.currentTimeMillis(), true);
-		}
+		ReceiveTrackStatsImpl stats = getReceiveStats(ssrc);
+		long interArrival = stats.rtpPacketArrived(System.nanoTime());
+
+		stats.rtpPacketReceived(seq, length);
+		receiveStats.packetProcessed(length, System.currentTimeMillis(), true);
+		if (interArrival >= 0)
+			interArrivalHistogram.record(interArrival / 1000);
 	}
 
 	/**
@@ -132,10 +175,8 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	 */
 	public void rtpPacketSent(long ssrc, int seq, int length)
 	{
-		synchronized (sendStats) {
-			getSendStats(ssrc).rtpPacketSent(seq, length);
-			sendStats.packetProcessed(length, System.currentTimeMillis(), true);
-		}
+		getSendStats(ssrc).rtpPacketSent(seq, length);
+		sendStats.packetProcessed(length, System.currentTimeMillis(), true);
 	}
 
 	/**
@@ -150,9 +191,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	 */
 	public void rtcpReceiverReportReceived(long ssrc, int fractionLost)
 	{
-		synchronized (sendStats) {
-			getSendStats(ssrc).rtcpReceiverReportReceived(fractionLost);
-		}
+		getSendStats(ssrc).rtcpReceiverReportReceived(fractionLost);
 	}
 
 	/**
@@ -166,10 +205,8 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	 */
 	public void rtcpPacketReceived(long ssrc, int length)
 	{
-		synchronized (receiveStats) {
-			getReceiveStats(ssrc).rtcpPacketReceived(length);
-			receiveStats.packetProcessed(length, System.currentTimeMillis(), false);
-		}
+		getReceiveStats(ssrc).rtcpPacketReceived(length);
+		receiveStats.packetProcessed(length, System.currentTimeMillis(), false);
 	}
 
 	/**
@@ -183,10 +220,8 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 	 */
 	public void rtcpPacketSent(long ssrc, int length)
 	{
-		synchronized (sendStats) {
-			getSendStats(ssrc).rtcpPacketSent(length);
-			sendStats.packetProcessed(length, System.currentTimeMillis(), false);
-		}
+		getSendStats(ssrc).rtcpPacketSent(length);
+		sendStats.packetProcessed(length, System.currentTimeMillis(), false);
 	}
 
 	/**
@@ -206,6 +241,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 		// the individual SSRCs(if available)
 		if (direction == StreamDirection.DOWNLOAD) {
 			receiveStats.setJitter(jitter);
+			jitterHistogram.record((long) (jitter * 1000));
 
 			// update jitter for known stats
 			ReceiveTrackStatsImpl receiveSsrcStat = receiveSsrcStats.get(ssrc);
@@ -238,6 +274,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 		// RTT value for the entire MediaStream
 		receiveStats.setRtt(rtt);
 		sendStats.setRtt(rtt);
+		rttHistogram.record(rtt);
 
 		// RTT value for individual SSRCs
 		// skip invalid ssrc
@@ -344,6 +381,79 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 		return receiveSsrcStats.values();
 	}
 
+	/**
+	 * Gets the {@link Histogram} of the jitter in microseconds of the received streams.
+	 *
+	 * @return the {@link Histogram} of the jitter in microseconds of the received streams
+	 */
+	public Histogram getJitterHistogram()
+	{
+		return jitterHistogram;
+	}
+
+	/**
+	 * Gets the {@link Histogram} of the RTT in milliseconds.
+	 *
+	 * @return the {@link Histogram} of the RTT in milliseconds
+	 */
+	public Histogram getRttHistogram()
+	{
+		return rttHistogram;
+	}
+
+	/**
+	 * Gets the {@link Histogram} of the time in microseconds between the arrival of two
+	 * consecutive RTP packets of a received SSRC.
+	 *
+	 * @return the {@link Histogram} of the packet inter-arrival time in microseconds
+	 */
+	public Histogram getInterArrivalHistogram()
+	{
+		return interArrivalHistogram;
+	}
+
+	/**
+	 * Gets the {@link Histogram} of the time in microseconds it takes to reverse-transform a
+	 * received RTP packet.
+	 *
+	 * @return the {@link Histogram} of the receive processing latency in microseconds
+	 */
+	public Histogram getReceiveLatencyHistogram()
+	{
+		return receiveLatencyHistogram;
+	}
+
+	/**
+	 * Gets the {@link Histogram} of the time in microseconds it takes to transform an RTP packet
+	 * to be sent.
+	 *
+	 * @return the {@link Histogram} of the send processing latency in microseconds
+	 */
+	public Histogram getSendLatencyHistogram()
+	{
+		return sendLatencyHistogram;
+	}
+
+	/**
+	 * Gets the {@link MediaStreamImpl} of which this instance keeps the statistics.
+	 *
+	 * @return the {@link MediaStreamImpl} of which this instance keeps the statistics
+	 */
+	public MediaStreamImpl getMediaStream()
+	{
+		return mediaStream;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JitterBufferStats getJitterBufferStats()
+	{
+		return (mediaStream instanceof AudioMediaStreamImpl)
+				? ((AudioMediaStreamImpl) mediaStream).getJitterBufferStats() : null;
+	}
+
 	/**
 	 * An {@link TrackStats} implementation which aggregates values for
 	 * a collection of {@link TrackStats} instances.
@@ -0,0 +1,389 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.stats;
+
+import org.atalk.impl.neomedia.MediaStreamImpl;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.stats.ReceiveTrackStats;
+import org.atalk.service.neomedia.stats.SendTrackStats;
+import org.atalk.util.Logger;
+import org.atalk.util.concurrent.PeriodicRunnable;
+import org.atalk.util.concurrent.RecurringRunnableExecutor;
+import org.atalk.util.stats.Histogram;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Periodically exports snapshots of the statistics of the registered {@link MediaStreamStats2Impl}
+ * instances as JSON Lines, i.e. one JSON object per stream and snapshot, to a file and/or to a
+ * local TCP socket (e.g. a collector listening on the loopback interface). The snapshot of a
+ * stream carries its bit- and packet rates, loss and the percentiles of its jitter, RTT, packet
+ * inter-arrival and processing latency histograms. Exporting is disabled unless
+ * {@link #FILE_PNAME} or {@link #PORT_PNAME} is configured, and it runs on its own thread so
+ * that it does not interfere with the processing of packets.
+ *
+ * @author Eng Chong Meng
+ */
+public class MediaStreamStatsExporter extends PeriodicRunnable
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>MediaStreamStatsExporter</tt> class for logging output.
+	 */
+	private static final Logger logger = Logger.getLogger(MediaStreamStatsExporter.class);
+
+	/**
+	 * The name of the property which specifies the path of the file to which the snapshots are
+	 * appended.
+	 */
+	public static final String FILE_PNAME = MediaStreamStatsExporter.class.getName() + ".FILE";
+
+	/**
+	 * The name of the property which specifies the port on the loopback interface to which the
+	 * snapshots are sent.
+	 */
+	public static final String PORT_PNAME = MediaStreamStatsExporter.class.getName() + ".PORT";
+
+	/**
+	 * The name of the property which specifies the interval in milliseconds between two
+	 * snapshots.
+	 */
+	public static final String INTERVAL_PNAME
+			= MediaStreamStatsExporter.class.getName() + ".INTERVAL";
+
+	/**
+	 * The default value of {@link #INTERVAL_PNAME}.
+	 */
+	private static final int DEFAULT_INTERVAL = 5000;
+
+	/**
+	 * The percentiles of the histograms which are exported.
+	 */
+	private static final double[] PERCENTILES = {0, 50, 90, 95, 99, 100};
+
+	/**
+	 * The keys of {@link #PERCENTILES} in the exported snapshots.
+	 */
+	private static final String[] PERCENTILE_KEYS = {"min", "p50", "p90", "p95", "p99", "max"};
+
+	/**
+	 * The <tt>MediaStreamStatsExporter</tt> which exports the registered streams, or
+	 * <tt>null</tt> if exporting is not configured.
+	 */
+	private static MediaStreamStatsExporter instance;
+
+	/**
+	 * Whether the configuration has been read and {@link #instance} thus initialized.
+	 */
+	private static boolean configured;
+
+	/**
+	 * The <tt>RecurringRunnableExecutor</tt> which runs {@link #instance} while there are
+	 * registered streams.
+	 */
+	private static RecurringRunnableExecutor executor;
+
+	/**
+	 * The registered {@link MediaStreamStats2Impl} instances. Weak so that a stream which is not
+	 * closed properly does not leak.
+	 */
+	private static final Map<MediaStreamStats2Impl, Boolean> streams = new WeakHashMap<>();
+
+	/**
+	 * Registers the statistics of a stream to be exported if exporting is configured.
+	 *
+	 * @param stats
+	 * 		the statistics to export
+	 */
+	public static synchronized void register(MediaStreamStats2Impl stats)
+	{
+		if (!configured) {
+			configured = true;
+			instance = createInstance();
+		}
+		if (instance == null || streams.put(stats, Boolean.TRUE) != null)
+			return;
+
+		if (executor == null) {
+			executor = new RecurringRunnableExecutor(MediaStreamStatsExporter.class.getSimpleName());
+			executor.registerRecurringRunnable(instance);
+		}
+	}
+
+	/**
+	 * Stops exporting the statistics of a stream.
+	 *
+	 * @param stats
+	 * 		the statistics to no longer export
+	 */
+	public static synchronized void unregister(MediaStreamStats2Impl stats)
+	{
+		if (streams.remove(stats) == null || !streams.isEmpty())
+			return;
+
+		if (executor != null) {
+			executor.deRegisterRecurringRunnable(instance);
+			executor.close();
+			executor = null;
+		}
+		instance.closeOutputs();
+	}
+
+	/**
+	 * Initializes the <tt>MediaStreamStatsExporter</tt> which is configured.
+	 *
+	 * @return the configured <tt>MediaStreamStatsExporter</tt> or <tt>null</tt> if exporting is
+	 * not configured
+	 */
+	private static MediaStreamStatsExporter createInstance()
+	{
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+		if (cfg == null)
+			return null;
+
+		String file = cfg.getString(FILE_PNAME);
+		int port = cfg.getInt(PORT_PNAME, -1);
+
+		if ((file == null || file.length() == 0) && port <= 0)
+			return null;
+
+		int interval = cfg.getInt(INTERVAL_PNAME, DEFAULT_INTERVAL);
+
+		return new MediaStreamStatsExporter(file, port, Math.max(interval, 100));
+	}
+
+	/**
+	 * The path of the file to which the snapshots are appended or <tt>null</tt>.
+	 */
+	private final String file;
+
+	/**
+	 * The port on the loopback interface to which the snapshots are sent or <tt>-1</tt>.
+	 */
+	private final int port;
+
+	/**
+	 * The stream to {@link #file} or <tt>null</tt> if it is not open.
+	 */
+	private Writer fileWriter;
+
+	/**
+	 * The socket to {@link #port} or <tt>null</tt> if it is not connected.
+	 */
+	private Socket socket;
+
+	/**
+	 * The stream to {@link #socket} or <tt>null</tt> if it is not connected.
+	 */
+	private Writer socketWriter;
+
+	/**
+	 * Initializes a new <tt>MediaStreamStatsExporter</tt> instance.
+	 *
+	 * @param file
+	 * 		the path of the file to which the snapshots are to be appended or <tt>null</tt>
+	 * @param port
+	 * 		the port on the loopback interface to which the snapshots are to be sent or
+	 * 		<tt>-1</tt>
+	 * @param interval
+	 * 		the interval in milliseconds between two snapshots
+	 */
+	private MediaStreamStatsExporter(String file, int port, int interval)
+	{
+		super(interval);
+		this.file = (file == null || file.length() == 0) ? null : file;
+		this.port = port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Exports a snapshot of each registered stream.
+	 */
+	@Override
+	public void run()
+	{
+		super.run();
+
+		MediaStreamStats2Impl[] snapshot;
+
+		synchronized (MediaStreamStatsExporter.class) {
+			snapshot = streams.keySet().toArray(new MediaStreamStats2Impl[streams.size()]);
+		}
+
+		long now = System.currentTimeMillis();
+		StringBuilder lines = new StringBuilder();
+
+		for (MediaStreamStats2Impl stats : snapshot) {
+			try {
+				lines.append(toJSONObject(stats, now)).append('\n');
+			}
+			catch (JSONException je) {
+				logger.warn("Failed to export media stream statistics", je);
+			}
+		}
+		if (lines.length() != 0)
+			export(lines.toString());
+	}
+
+	/**
+	 * Writes snapshots to the file and/or the socket.
+	 *
+	 * @param lines
+	 * 		the JSON Lines of the snapshots
+	 */
+	private synchronized void export(String lines)
+	{
+		if (file != null) {
+			try {
+				if (fileWriter == null)
+					fileWriter = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(file, true), "UTF-8"));
+				fileWriter.write(lines);
+				fileWriter.flush();
+			}
+			catch (IOException ioe) {
+				logger.warn("Failed to export media stream statistics to " + file, ioe);
+				fileWriter = closeQuietly(fileWriter);
+			}
+		}
+		if (port > 0) {
+			try {
+				if (socketWriter == null) {
+					socket = new Socket(InetAddress.getByName(null), port);
+					socketWriter = new BufferedWriter(new OutputStreamWriter(
+							socket.getOutputStream(), "UTF-8"));
+				}
+				socketWriter.write(lines);
+				socketWriter.flush();
+			}
+			catch (IOException ioe) {
+				// The collector may not be listening (yet); try again with the next snapshot.
+				if (logger.isDebugEnabled())
+					logger.debug("Failed to export media stream statistics to port " + port, ioe);
+				closeSocket();
+			}
+		}
+	}
+
+	/**
+	 * Gets a snapshot of the statistics of a stream.
+	 *
+	 * @param stats
+	 * 		the statistics of the stream
+	 * @param now
+	 * 		the time of the snapshot
+	 * @return the snapshot of <tt>stats</tt>
+	 * @throws JSONException
+	 * 		if a value cannot be represented in JSON
+	 */
+	private static JSONObject toJSONObject(MediaStreamStats2Impl stats, long now)
+			throws JSONException
+	{
+		MediaStreamImpl mediaStream = stats.getMediaStream();
+		ReceiveTrackStats receiveStats = stats.getReceiveStats();
+		SendTrackStats sendStats = stats.getSendStats();
+		JSONObject receive = new JSONObject();
+		JSONObject send = new JSONObject();
+		JSONObject json = new JSONObject();
+
+		receive.put("bitrate", receiveStats.getBitrate());
+		receive.put("packetRate", receiveStats.getPacketRate());
+		receive.put("bytes", receiveStats.getBytes());
+		receive.put("packets", receiveStats.getPackets());
+		receive.put("packetsLost", receiveStats.getPacketsLost());
+		receive.put("lossRate", receiveStats.getLossRate());
+		send.put("bitrate", sendStats.getBitrate());
+		send.put("packetRate", sendStats.getPacketRate());
+		send.put("bytes", sendStats.getBytes());
+		send.put("packets", sendStats.getPackets());
+		send.put("lossRate", sendStats.getLossRate());
+
+		json.put("time", now);
+		json.put("stream", mediaStream.hashCode());
+		json.put("mediaType", String.valueOf(mediaStream.getMediaType()));
+		json.put("receive", receive);
+		json.put("send", send);
+		json.put("jitterUs", toJSONObject(stats.getJitterHistogram()));
+		json.put("rttMs", toJSONObject(stats.getRttHistogram()));
+		json.put("interArrivalUs", toJSONObject(stats.getInterArrivalHistogram()));
+		json.put("receiveLatencyUs", toJSONObject(stats.getReceiveLatencyHistogram()));
+		json.put("sendLatencyUs", toJSONObject(stats.getSendLatencyHistogram()));
+		return json;
+	}
+
+	/**
+	 * Gets a snapshot of a <tt>Histogram</tt>.
+	 *
+	 * @param histogram
+	 * 		the <tt>Histogram</tt>
+	 * @return the snapshot of <tt>histogram</tt>
+	 * @throws JSONException
+	 * 		if a value cannot be represented in JSON
+	 */
+	private static JSONObject toJSONObject(Histogram histogram)
+			throws JSONException
+	{
+		long[] values = histogram.getValuesAtPercentiles(PERCENTILES);
+		JSONObject json = new JSONObject();
+
+		json.put("count", histogram.getCount());
+		json.put("mean", histogram.getMean());
+		for (int i = 0; i < values.length; i++)
+			json.put(PERCENTILE_KEYS[i], values[i]);
+		return json;
+	}
+
+	/**
+	 * Closes the file and the socket to which the snapshots are exported.
+	 */
+	private synchronized void closeOutputs()
+	{
+		fileWriter = closeQuietly(fileWriter);
+		closeSocket();
+	}
+
+	/**
+	 * Closes the socket to which the snapshots are sent.
+	 */
+	private void closeSocket()
+	{
+		socketWriter = closeQuietly(socketWriter);
+		if (socket != null) {
+			try {
+				socket.close();
+			}
+			catch (IOException ignore) {
+			}
+			socket = null;
+		}
+	}
+
+	/**
+	 * Closes a <tt>Writer</tt> ignoring any <tt>IOException</tt>.
+	 *
+	 * @param writer
+	 * 		the <tt>Writer</tt> to close or <tt>null</tt>
+	 * @return <tt>null</tt>
+	 */
+	private static Writer closeQuietly(Writer writer)
+	{
+		if (writer != null) {
+			try {
+				writer.close();
+			}
+			catch (IOException ignore) {
+			}
+		}
+		return null;
+	}
+}
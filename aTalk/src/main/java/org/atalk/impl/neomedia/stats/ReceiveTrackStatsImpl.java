@@ -15,9 +15,9 @@
  */
 package org.atalk.impl.neomedia.stats;
 
-import org.ice4j.util.*;
 import org.atalk.service.neomedia.stats.*;
 import org.atalk.util.*;
+import org.atalk.util.stats.*;
 
 import java.util.concurrent.atomic.*;
 
@@ -39,13 +39,19 @@ public class ReceiveTrackStatsImpl
     /**
      * The packet loss rate.
      */
-    private RateStatistics packetLossRate;
+    private ConcurrentRateStatistics packetLossRate;
 
     /**
      * The total number of lost packets.
      */
     private AtomicLong packetsLost = new AtomicLong();
 
+    /**
+     * The {@link System#nanoTime()} at which the last RTP packet was received
+     * or {@code -1} if none has been received yet.
+     */
+    private long lastArrivalNanos = -1;
+
 
     /**
      * Initializes a new instance.
@@ -55,7 +61,7 @@ public class ReceiveTrackStatsImpl
     ReceiveTrackStatsImpl(int interval, long ssrc)
     {
         super(interval, ssrc);
-        packetLossRate = new RateStatistics(interval, 1000F);
+        packetLossRate = new ConcurrentRateStatistics(interval, 1000F);
     }
 
     /**
@@ -120,6 +126,21 @@ public class ReceiveTrackStatsImpl
         }
     }
 
+    /**
+     * Notifies this instance that an RTP packet arrived at a specific time.
+     * @param nowNanos the {@link System#nanoTime()} at which the packet
+     * arrived.
+     * @return the time in nanoseconds since the arrival of the previous RTP
+     * packet or {@code -1} if this is the first one.
+     */
+    long rtpPacketArrived(long nowNanos)
+    {
+        long last = lastArrivalNanos;
+
+        lastArrivalNanos = nowNanos;
+        return (last == -1) ? -1 : (nowNanos - last);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -17,7 +17,7 @@ package org.atalk.impl.neomedia.stats;
 
 import org.atalk.service.neomedia.stats.SendTrackStats;
 import org.atalk.util.RTPUtils;
-import org.ice4j.util.RateStatistics;
+import org.atalk.util.stats.ConcurrentRateStatistics;
 
 /**
  * Media stream statistics implementation per send SSRC.
@@ -36,7 +36,7 @@ public class SendTrackStatsImpl extends AbstractTrackStats
     /**
      * Rate of packet that we did not send (i.e. were lost on their way to us)
      */
-    RateStatistics packetsNotSentRate = new RateStatistics(1000, 1000F);
+    ConcurrentRateStatistics packetsNotSentRate = new ConcurrentRateStatistics(1000, 1000F);
 
     /**
      * The fraction lost reported in the most recently received RTCP Receiver
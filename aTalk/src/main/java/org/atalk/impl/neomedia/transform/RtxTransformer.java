@@ -304,8 +304,12 @@ public class RtxTransformer implements TransformEngine
 		int len = pkt.getLength();
 		int off = pkt.getOffset();
 
-		byte[] newBuf = new byte[len + 2];
-		RawPacket rtxPkt = new RawPacket(newBuf, 0, len + 2);
+		// injectPacket copies the packet into the send queue, so the RTX packet
+		// can go back to the pool as soon as it has been injected.
+		RawPacket rtxPkt = RawPacketPool.acquire(len + 2);
+		byte[] newBuf = rtxPkt.getBuffer();
+
+		rtxPkt.setLength(len + 2);
 
 		int osn = pkt.getSequenceNumber();
 		int headerLength = pkt.getHeaderLength();
@@ -334,6 +338,12 @@ public class RtxTransformer implements TransformEngine
 				logger.warn("Failed to transmit an RTX packet.");
 				return false;
 			}
+			finally {
+				RawPacketPool.release(rtxPkt);
+			}
+		}
+		else {
+			RawPacketPool.release(rtxPkt);
 		}
 		return true;
 	}
@@ -377,15 +387,23 @@ public class RtxTransformer implements TransformEngine
 	/**
 	 * @param mediaSSRC
 	 * @param lostPackets
+	 * 		the sequence numbers reported lost, in the first <tt>count</tt> elements
+	 * @param count
+	 * 		the number of sequence numbers in <tt>lostPackets</tt>
+	 * @param container
+	 * 		the <tt>RawPacketCache.Container</tt> to look the packets up into
 	 */
-	private void nackReceived(long mediaSSRC, Collection<Integer> lostPackets)
+	private void nackReceived(long mediaSSRC, int[] lostPackets, int count,
+			RawPacketCache.Container container)
 	{
 		if (logger.isDebugEnabled()) {
 			logger.debug(Logger.Category.STATISTICS, "nack_received,stream = "
 					+ mediaStream.hashCode()
 					+ " ssrc = " + mediaSSRC
-					+ ",lost_packets = " + lostPackets);
+					+ ",lost_packets = "
+					+ Arrays.toString(Arrays.copyOf(lostPackets, count)));
 		}
+		int missing = count;
 		RawPacketCache cache = getCache();
 
 		if (cache != null) {
@@ -404,13 +422,11 @@ public class RtxTransformer implements TransformEngine
 			long rtt = mediaStream.getMediaStreamStats().getSendStats().getRtt();
 			long now = System.currentTimeMillis();
 
-			for (Iterator<Integer> i = lostPackets.iterator(); i.hasNext(); ) {
-				int seq = i.next();
-				RawPacketCache.Container container = cache.getContainer(mediaSSRC, seq);
-
+			for (int i = 0; i < count; i++) {
+				int seq = lostPackets[i];
 
 				MediaStreamStats2Impl stats = mediaStream.getMediaStreamStats();
-				if (container != null) {
+				if (cache.getContainer(mediaSSRC, seq, container)) {
 					// Cache hit.
 					long delay = now - container.timeAdded;
 					boolean send = (rtt == -1) || (delay >= Math.min(rtt * 0.9, rtt - 5));
@@ -431,14 +447,18 @@ public class RtxTransformer implements TransformEngine
 						// timestamp in the cache so that we use the new
 						// timestamp when we handle subsequent NACKs.
 						cache.updateTimestamp(mediaSSRC, seq, now);
-						i.remove();
+						missing--;
 					}
 
 					if (!send) {
 						stats.rtpPacketNotRetransmitted(mediaSSRC, container.pkt.getLength());
-						i.remove();
+						missing--;
 					}
 
+					// The cache retained the packet for us.
+					RawPacketPool.release(container.pkt);
+					container.pkt = null;
+
 				}
 				else {
 					stats.rtpPacketCacheMiss(mediaSSRC);
@@ -446,7 +466,7 @@ public class RtxTransformer implements TransformEngine
 			}
 		}
 
-		if (!lostPackets.isEmpty() && logger.isDebugEnabled()) {
+		if (missing != 0 && logger.isDebugEnabled()) {
 			// If retransmission requests are enabled, videobridge assumes
 			// the responsibility of requesting missing packets.
 			logger.debug("Packets missing from the cache.");
@@ -543,6 +563,11 @@ public class RtxTransformer implements TransformEngine
 				}
 			}
 		}
+
+		// The cache retained the packets for us.
+		for (RawPacketCache.Container container : lastNPackets) {
+			RawPacketPool.release(container.pkt);
+		}
 		return bytes;
 	}
 
@@ -608,6 +633,23 @@ public class RtxTransformer implements TransformEngine
 	private class RTCPTransformer
 			extends SinglePacketTransformerAdapter
 	{
+		/**
+		 * The {@link RTCPPacketCursor} which this instance uses to look for NACKs in the received
+		 * RTCP packets in place.
+		 */
+		private final RTCPPacketCursor cursor = new RTCPPacketCursor();
+
+		/**
+		 * The sequence numbers reported lost by the NACK being handled, reused across NACKs.
+		 */
+		private int[] lost = new int[32];
+
+		/**
+		 * The <tt>RawPacketCache.Container</tt> into which the packets reported lost are looked
+		 * up, reused across NACKs.
+		 */
+		private final RawPacketCache.Container container = new RawPacketCache.Container();
+
 		/**
 		 * Ctor.
 		 */
@@ -623,14 +665,16 @@ public class RtxTransformer implements TransformEngine
 		@Override
 		public RawPacket reverseTransform(RawPacket pkt)
 		{
-			RTCPIterator it = new RTCPIterator(pkt);
-			while (it.hasNext()) {
-				ByteArrayBuffer next = it.next();
-				if (NACKPacket.isNACKPacket(next)) {
-					Collection<Integer> lostPackets = NACKPacket.getLostPackets(next);
-					long mediaSSRC = NACKPacket.getSourceSSRC(next);
-					nackReceived(mediaSSRC, lostPackets);
-					it.remove();
+			RTCPPacketCursor cursor = this.cursor.reset(pkt);
+			while (cursor.next()) {
+				if (cursor.isNACK()) {
+					int count = cursor.getNACKLostPacketCount();
+					if (lost.length < count) {
+						lost = new int[count];
+					}
+					cursor.getNACKLostPackets(lost);
+					nackReceived(cursor.getMediaSSRC(), lost, count, container);
+					cursor.remove();
 				}
 			}
 			return pkt;
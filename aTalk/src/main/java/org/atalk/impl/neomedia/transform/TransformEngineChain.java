@@ -6,6 +6,7 @@
 package org.atalk.impl.neomedia.transform;
 
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.util.stats.Histogram;
 
 import java.util.*;
 
@@ -41,6 +42,18 @@ public class TransformEngineChain implements TransformEngine
 	 */
 	private PacketTransformerChain rtpTransformChain;
 
+	/**
+	 * The <tt>Histogram</tt> into which the time in microseconds it takes to reverse-transform
+	 * received RTP packets through this chain is recorded once per packet, or <tt>null</tt>.
+	 */
+	private Histogram reverseTransformLatencyHistogram;
+
+	/**
+	 * The <tt>Histogram</tt> into which the time in microseconds it takes to transform RTP packets
+	 * to be sent through this chain is recorded once per packet, or <tt>null</tt>.
+	 */
+	private Histogram transformLatencyHistogram;
+
 	/**
 	 * Creates a new <tt>TransformEngineChain</tt> using the <tt>engineChain</tt> array. Engines
 	 * will be applied in the order specified by the <tt>engineChain</tt> array for outgoing packets
@@ -245,6 +258,48 @@ public class TransformEngineChain implements TransformEngine
 		return rtpTransformer;
 	}
 
+	/**
+	 * Sets the <tt>Histogram</tt>s into which the time in microseconds it takes to transform RTP
+	 * packets through this chain is to be recorded. The time of a batch of packets is recorded
+	 * once for each packet of the batch.
+	 *
+	 * @param reverseTransformLatencyHistogram
+	 *        the <tt>Histogram</tt> for received packets or <tt>null</tt>
+	 * @param transformLatencyHistogram
+	 *        the <tt>Histogram</tt> for packets to be sent or <tt>null</tt>
+	 */
+	public void setLatencyHistograms(Histogram reverseTransformLatencyHistogram,
+		Histogram transformLatencyHistogram)
+	{
+		this.reverseTransformLatencyHistogram = reverseTransformLatencyHistogram;
+		this.transformLatencyHistogram = transformLatencyHistogram;
+	}
+
+	/**
+	 * Records the time elapsed since the start of the transformation of a batch of RTP packets
+	 * once for each packet of the batch.
+	 *
+	 * @param histogram
+	 *        the <tt>Histogram</tt> to record into
+	 * @param startNanos
+	 *        the {@link System#nanoTime()} at which the transformation started
+	 * @param pkts
+	 *        the batch of transformed packets
+	 */
+	private static void recordLatency(Histogram histogram, long startNanos, RawPacket[] pkts)
+	{
+		if (pkts == null)
+			return;
+
+		int count = 0;
+
+		for (RawPacket pkt : pkts) {
+			if (pkt != null)
+				count++;
+		}
+		histogram.record((System.nanoTime() - startNanos) / 1000, count);
+	}
+
 	/**
 	 * Sets the sequence of {@code TransformEngine}s whose {@code PacketTransformer}s this engine
 	 * chain will be applying to RTP and RTCP packets.
@@ -316,6 +371,8 @@ public class TransformEngineChain implements TransformEngine
 		public RawPacket[] reverseTransform(RawPacket pkts[])
 		{
 			TransformEngine[] engineChain = TransformEngineChain.this.engineChain;
+			Histogram histogram = rtp ? reverseTransformLatencyHistogram : null;
+			long startNanos = (histogram == null) ? 0 : System.nanoTime();
 
 			for (int i = engineChain.length - 1; i >= 0; i--) {
 				TransformEngine engine = engineChain[i];
@@ -328,6 +385,8 @@ public class TransformEngineChain implements TransformEngine
 				if (pTransformer != null)
 					pkts = pTransformer.reverseTransform(pkts);
 			}
+			if (histogram != null)
+				recordLatency(histogram, startNanos, pkts);
 			return pkts;
 		}
 
@@ -361,6 +420,8 @@ public class TransformEngineChain implements TransformEngine
 			// If the specified after is in the transformation chain, the
 			// transformation is to start after it.
 			boolean lookForAfter = after != null && engineChainAsList.contains(after);
+			Histogram histogram = rtp ? transformLatencyHistogram : null;
+			long startNanos = (histogram == null) ? 0 : System.nanoTime();
 
 			for (TransformEngine engine : engineChain) {
 				// Start the transformation after the specified TransformEngine.
@@ -379,6 +440,8 @@ public class TransformEngineChain implements TransformEngine
 				if (transformer != null)
 					pkts = transformer.transform(pkts);
 			}
+			if (histogram != null)
+				recordLatency(histogram, startNanos, pkts);
 			return pkts;
 		}
 	}
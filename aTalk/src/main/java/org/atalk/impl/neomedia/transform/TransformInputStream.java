@@ -53,8 +53,34 @@ public abstract class TransformInputStream<T> extends RTPConnectorInputStream<T>
 	@Override
 	protected RawPacket[] createRawPacket(DatagramPacket datagramPacket)
 	{
-		RawPacket[] pkts = super.createRawPacket(datagramPacket);
+		return reverseTransform(super.createRawPacket(datagramPacket));
+	}
+
+	/**
+	 * Reverse-transforms a batch of packets received in the batched receive mode through a single
+	 * call to {@link PacketTransformer#reverseTransform(RawPacket[])}.
+	 *
+	 * @param pkts
+	 *        the <tt>RawPacket</tt>s received during one wakeup of the receive thread
+	 * @return the reverse-transformed <tt>RawPacket</tt>s
+	 * @see RTPConnectorInputStream#createRawPackets(RawPacket[])
+	 */
+	@Override
+	protected RawPacket[] createRawPackets(RawPacket[] pkts)
+	{
+		return reverseTransform(pkts);
+	}
 
+	/**
+	 * Reverse-transforms specific <tt>RawPacket</tt>s through the <tt>PacketTransformer</tt> of
+	 * this instance, skipping invalid (e.g. empty) packets.
+	 *
+	 * @param pkts
+	 *        the <tt>RawPacket</tt>s to reverse-transform
+	 * @return the reverse-transformed <tt>RawPacket</tt>s
+	 */
+	private RawPacket[] reverseTransform(RawPacket[] pkts)
+	{
 		// Don't try to transform invalid (e.g. empty) packets.
 		for (int i = 0; i < pkts.length; i++) {
 			RawPacket pkt = pkts[i];
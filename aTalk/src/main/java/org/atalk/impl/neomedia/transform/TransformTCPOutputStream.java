@@ -55,13 +55,13 @@ public class TransformTCPOutputStream extends RTPConnectorTCPOutputStream
 	 * {@inheritDoc}
 	 *
 	 * Transforms the array of {@code RawPacket}s returned by the super
-	 * {@link #packetize(byte[],int,int,Object)} implementation using the associated
+	 * {@link #packetize(RawPacket,Object)} implementation using the associated
 	 * {@code PacketTransformer}.
 	 */
 	@Override
-	protected RawPacket[] packetize(byte[] buf, int off, int len, Object context)
+	protected RawPacket[] packetize(RawPacket pkt, Object context)
 	{
-		RawPacket[] pkts = super.packetize(buf, off, len, context);
+		RawPacket[] pkts = super.packetize(pkt, context);
 		return _impl.transform(pkts, context);
 	}
 
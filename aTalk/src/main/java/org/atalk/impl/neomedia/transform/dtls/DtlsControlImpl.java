@@ -141,7 +141,9 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine>
 	 */
 	static final int[] SRTP_PROTECTION_PROFILES = {
 			SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_80,
-			SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32
+			SRTPProtectionProfile.SRTP_AES128_CM_HMAC_SHA1_32,
+			SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM,
+			SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM
 	};
 
 	/**
@@ -543,6 +543,22 @@ public class DtlsPacketTransformer implements PacketTransformer
 				auth_key_length = 160 / 8;
 				RTCP_auth_tag_length = RTP_auth_tag_length = 80 / 8;
 				break;
+			case SRTPProtectionProfile.SRTP_AEAD_AES_128_GCM:
+				cipher_key_length = 128 / 8;
+				cipher_salt_length = 96 / 8;
+				cipher = SRTPPolicy.AESGCM_ENCRYPTION;
+				auth_function = SRTPPolicy.NULL_AUTHENTICATION;
+				auth_key_length = 0;
+				RTCP_auth_tag_length = RTP_auth_tag_length = 128 / 8;
+				break;
+			case SRTPProtectionProfile.SRTP_AEAD_AES_256_GCM:
+				cipher_key_length = 256 / 8;
+				cipher_salt_length = 96 / 8;
+				cipher = SRTPPolicy.AESGCM_ENCRYPTION;
+				auth_function = SRTPPolicy.NULL_AUTHENTICATION;
+				auth_key_length = 0;
+				RTCP_auth_tag_length = RTP_auth_tag_length = 128 / 8;
+				break;
 			case SRTPProtectionProfile.SRTP_NULL_HMAC_SHA1_32:
 				cipher_key_length = 0;
 				cipher_salt_length = 0;
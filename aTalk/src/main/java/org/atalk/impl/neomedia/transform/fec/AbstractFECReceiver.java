@@ -15,22 +15,31 @@
  */
 package org.atalk.impl.neomedia.transform.fec;
 
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
 import org.atalk.impl.neomedia.transform.PacketTransformer;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.util.Logger;
-import org.atalk.util.RTPUtils;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A {@link PacketTransformer} which handles incoming fec packets.  This class
  * contains only the generic fec handling logic.
  *
+ * Media and fec packets are kept (as copies) in rings indexed by their RTP
+ * sequence numbers. Every fec packet keeps count of the media packets it
+ * protects which have not been received yet and every media sequence number
+ * keeps a bit mask of the fec packets which protect it, so the arrival of a
+ * packet only touches the fec packets which it concerns. A recovery is
+ * attempted as soon as exactly one of the protected packets is missing and a
+ * recovered packet may in turn complete further fec packets.
+ *
  * @author bgrozev
  * @author bbaldino
+ * @author Eng Chong Meng
  */
 public abstract class AbstractFECReceiver implements PacketTransformer
 {
@@ -58,14 +67,23 @@ public abstract class AbstractFECReceiver implements PacketTransformer
     protected boolean handleFec = true;
 
     /**
-     * The number of media packets to keep.
+     * The number of media packets to keep, rounded up to a power of two.
      */
     private static final int MEDIA_BUF_SIZE;
 
     /**
-     * The maximum number of ulpfec packets to keep.
+     * The maximum number of fec packets to keep, rounded up to a power of
+     * two. It cannot exceed the number of bits of a <tt>long</tt> because
+     * the fec packets which protect a media packet are kept as a bit mask of
+     * their slots.
+     */
+    static final int FEC_BUF_SIZE;
+
+    /**
+     * The maximum number of media packets a single fec packet may protect:
+     * 48 with ULPFEC and 109 with FlexFEC-03.
      */
-    private static final int FEC_BUF_SIZE;
+    static final int MAX_PROTECTED_PACKETS = 128;
 
     /**
      * The name of the <tt>ConfigurationService</tt> property which specifies
@@ -88,8 +106,8 @@ public abstract class AbstractFECReceiver implements PacketTransformer
             fecBufSize = cfg.getInt(FEC_BUF_SIZE_PNAME, fecBufSize);
             mediaBufSize = cfg.getInt(MEDIA_BUF_SIZE_PNAME, mediaBufSize);
         }
-        FEC_BUF_SIZE = fecBufSize;
-        MEDIA_BUF_SIZE = mediaBufSize;
+        FEC_BUF_SIZE = ceilPowerOfTwo(Math.max(1, Math.min(fecBufSize, Long.SIZE)));
+        MEDIA_BUF_SIZE = ceilPowerOfTwo(Math.max(1, Math.min(mediaBufSize, 1 << 15)));
     }
 
     /**
@@ -98,43 +116,72 @@ public abstract class AbstractFECReceiver implements PacketTransformer
     private byte payloadType;
 
     /**
-     * Buffer which keeps (copies of) received media packets.
-     *
-     * We keep them ordered by their RTP sequence numbers, so that
-     * we can easily select the oldest one to discard when the buffer is
-     * full (when the map has more than <tt>MEDIA_BUFF_SIZE</tt> entries).
-     *
-     * We keep them in a <tt>Map</tt> so that we can easily search for a
-     * packet with a specific sequence number.
-     *
-     * Note: This might turn out to be inefficient, especially with increased
-     * buffer sizes. In the vast majority of cases (e.g. on every received
-     * packet) we do an insert at one end and a delete from the other -- this
-     * can be optimized. We very rarely (when we receive a packet out of order)
-     * need to insert at an arbitrary location.
-     * FIXME: Look at using the existing packet cache instead of our own here
+     * The ring of the (copies of) received media packets indexed by their
+     * RTP sequence numbers masked with {@link #MEDIA_BUF_SIZE} - 1. The
+     * buffers of the slots are reused.
      */
-    protected final SortedMap<Integer, RawPacket> mediaPackets = new TreeMap<Integer, RawPacket>(RTPUtils.sequenceNumberComparator);
+    private final RawPacket[] mediaPackets = new RawPacket[MEDIA_BUF_SIZE];
 
     /**
-     * Buffer which keeps (copies of) received fec packets.
-     *
-     * We keep them ordered by their RTP sequence numbers, so that
-     * we can easily select the oldest one to discard when the buffer is
-     * full (when the map has more than <tt>FEC_BUFF_SIZE</tt> entries.
-     *
-     * We keep them in a <tt>Map</tt> so that we can easily search for a
-     * packet with a specific sequence number.
-     *
-     * Note: This might turn out to be inefficient, especially with increased
-     * buffer sizes. In the vast majority of cases (e.g. on every received
-     * packet) we do an insert at one end and a delete from the other -- this
-     * can be optimized. We very rarely (when we receive a packet out of order)
-     * need to insert at an arbitrary location.
-     * FIXME: Look at using the existing packet cache instead of our own here
+     * The sequence numbers of the packets in {@link #mediaPackets} or
+     * <tt>-1</tt> for empty slots.
+     */
+    private final int[] mediaSeqs = new int[MEDIA_BUF_SIZE];
+
+    /**
+     * The sequence numbers which are protected by the fec packets of the
+     * bits of the respective elements of {@link #protectingFec}, indexed in
+     * the same way as {@link #mediaPackets}, or <tt>-1</tt>.
      */
-    protected final SortedMap<Integer, RawPacket> fecPackets = new TreeMap<Integer, RawPacket>(RTPUtils.sequenceNumberComparator);
+    private final int[] protectedSeqs = new int[MEDIA_BUF_SIZE];
 
+    /**
+     * The bit masks of the slots in {@link #fecPackets} of the fec packets
+     * which protect the respective sequence numbers in
+     * {@link #protectedSeqs} which have not been received yet.
+     */
+    private final long[] protectingFec = new long[MEDIA_BUF_SIZE];
+
+    /**
+     * The bit mask of the slots in {@link #fecPackets} of the fec packets
+     * which protect a media packet that has lost its slot in
+     * {@link #protectedSeqs} to another missing packet with the same slot.
+     * Received media packets are looked up in their protected sequence
+     * numbers instead.
+     */
+    private long untrackedFec;
+
+    /**
+     * The ring of the (copies of) received fec packets indexed by their RTP
+     * sequence numbers masked with {@link #FEC_BUF_SIZE} - 1. The buffers of
+     * the slots are reused.
+     */
+    private final RawPacket[] fecPackets = new RawPacket[FEC_BUF_SIZE];
+
+    /**
+     * The media sequence numbers protected by the packets in
+     * {@link #fecPackets}.
+     */
+    private final int[][] fecProtectedSeqs = new int[FEC_BUF_SIZE][MAX_PROTECTED_PACKETS];
+
+    /**
+     * The numbers of the valid elements of {@link #fecProtectedSeqs}.
+     */
+    private final int[] fecProtectedCounts = new int[FEC_BUF_SIZE];
+
+    /**
+     * The numbers of the media packets protected by the packets in
+     * {@link #fecPackets} which have not been received yet or <tt>-1</tt>
+     * for empty slots.
+     */
+    private final int[] fecMissingCounts = new int[FEC_BUF_SIZE];
+
+    /**
+     * The packets recovered during the current call to
+     * {@link #reverseTransform(RawPacket[])}. Reused in order to not
+     * allocate on every call.
+     */
+    private final List<RawPacket> recoveredPackets = new ArrayList<>();
 
     /**
      * Initialize the FEC receiver
@@ -148,54 +195,269 @@ public abstract class AbstractFECReceiver implements PacketTransformer
     {
         this.ssrc = ssrc;
         this.payloadType = payloadType;
+
+        for (int i = 0; i < MEDIA_BUF_SIZE; i++) {
+            mediaSeqs[i] = -1;
+            protectedSeqs[i] = -1;
+        }
+        for (int i = 0; i < FEC_BUF_SIZE; i++)
+            fecMissingCounts[i] = -1;
     }
 
     /**
-     * Saves <tt>p</tt> into <tt>fecPackets</tt>. If the size of
-     * <tt>fecPackets</tt> has reached <tt>FEC_BUFF_SIZE</tt> discards the
-     * oldest packet from it.
+     * Rounds a specific positive number up to a power of two.
+     *
+     * @param n
+     *         the number to round up
+     * @return the least power of two which is not less than <tt>n</tt>
+     */
+    private static int ceilPowerOfTwo(int n)
+    {
+        return (n <= 1) ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Copies the data of a specific packet into a specific slot packet,
+     * allocating the latter or growing its buffer if necessary.
      *
      * @param p
-     *         the packet to save.
+     *         the packet to copy.
+     * @param slot
+     *         the packet to copy into or <tt>null</tt>
+     * @return the packet which <tt>p</tt> has been copied into
      */
-    private void saveFec(RawPacket p)
+    private static RawPacket copy(RawPacket p, RawPacket slot)
+    {
+        int pLen = p.getLength();
+
+        if (slot == null) {
+            slot = new RawPacket();
+            slot.setBuffer(new byte[Math.max(pLen, FECTransformEngine.INITIAL_BUFFER_SIZE)]);
+        }
+        else if (pLen > slot.getBuffer().length) {
+            slot.setBuffer(new byte[pLen]);
+        }
+
+        System.arraycopy(p.getBuffer(), p.getOffset(), slot.getBuffer(), 0, pLen);
+        slot.setOffset(0);
+        slot.setLength(pLen);
+        return slot;
+    }
+
+    /**
+     * Gets the (copy of the) received or recovered media packet with a
+     * specific sequence number.
+     *
+     * @param seq
+     *         the RTP sequence number of the media packet to get
+     * @return the media packet with sequence number <tt>seq</tt> or
+     * <tt>null</tt> if it has not been received or is no longer kept
+     */
+    protected RawPacket getMediaPacket(int seq)
     {
-        if (fecPackets.size() >= FEC_BUF_SIZE)
-            fecPackets.remove(fecPackets.firstKey());
+        int slot = seq & (MEDIA_BUF_SIZE - 1);
 
-        fecPackets.put(p.getSequenceNumber(), p);
+        return (mediaSeqs[slot] == seq) ? mediaPackets[slot] : null;
     }
 
     /**
-     * Makes a copy of <tt>p</tt> into <tt>mediaPackets</tt>. If the size of
-     * <tt>mediaPackets</tt> has reached <tt>MEDIA_BUFF_SIZE</tt> discards
-     * the oldest packet from it and reuses it.
+     * Makes a copy of <tt>p</tt> into the media ring, replacing the packet
+     * which was kept in its slot, and updates the fec packets which protect
+     * it. Any packets recovered as a consequence are added to
+     * {@link #recoveredPackets}.
      *
      * @param p
      *         the packet to copy.
      */
-    protected void saveMedia(RawPacket p)
+    private void saveMedia(RawPacket p)
     {
-        RawPacket newMedia;
-        if (mediaPackets.size() < MEDIA_BUF_SIZE) {
-            newMedia = new RawPacket();
-            newMedia.setBuffer(new byte[FECTransformEngine.INITIAL_BUFFER_SIZE]);
-            newMedia.setOffset(0);
+        int seq = p.getSequenceNumber();
+        int slot = seq & (MEDIA_BUF_SIZE - 1);
+
+        if (mediaSeqs[slot] == seq)
+            return; // A duplicate.
+
+        mediaPackets[slot] = copy(p, mediaPackets[slot]);
+        mediaSeqs[slot] = seq;
+
+        long fecSlots = 0;
+
+        if (protectedSeqs[slot] == seq) {
+            fecSlots = protectingFec[slot];
+            protectedSeqs[slot] = -1;
+            protectingFec[slot] = 0;
         }
-        else {
-            newMedia = mediaPackets.remove(mediaPackets.firstKey());
+        if (untrackedFec != 0)
+            fecSlots |= findProtectingFec(untrackedFec, seq);
+        while (fecSlots != 0) {
+            int fecSlot = Long.numberOfTrailingZeros(fecSlots);
+
+            fecSlots &= fecSlots - 1;
+            if (fecMissingCounts[fecSlot] > 0) {
+                int missing = --fecMissingCounts[fecSlot];
+
+                if (missing == 0)
+                    removeFec(fecSlot);
+                else if (missing == 1)
+                    recover(fecSlot);
+            }
         }
+    }
 
-        int pLen = p.getLength();
-        if (pLen > newMedia.getBuffer().length) {
-            newMedia.setBuffer(new byte[pLen]);
+    /**
+     * Makes a copy of the fec packet <tt>p</tt> into the fec ring, replacing
+     * the packet which was kept in its slot, and counts the media packets
+     * protected by it which have not been received yet. If exactly one is
+     * missing, it is recovered right away.
+     *
+     * @param p
+     *         the fec packet to save.
+     */
+    private void saveFec(RawPacket p)
+    {
+        int fecSlot = p.getSequenceNumber() & (FEC_BUF_SIZE - 1);
+
+        if (fecMissingCounts[fecSlot] >= 0)
+            removeFec(fecSlot);
+
+        int[] seqs = fecProtectedSeqs[fecSlot];
+        int count = readProtectedSequenceNumbers(p, fecSlot, seqs);
+
+        if (count <= 0)
+            return;
+
+        int missing = 0;
+        long fecBit = 1L << fecSlot;
+
+        for (int i = 0; i < count; i++) {
+            int seq = seqs[i];
+            int slot = seq & (MEDIA_BUF_SIZE - 1);
+
+            if (mediaSeqs[slot] == seq)
+                continue;
+
+            missing++;
+            if (protectedSeqs[slot] != seq) {
+                // Another missing packet which is still protected shares the
+                // slot, so keep its fec packets usable for it.
+                untrackedFec |= protectingFec[slot];
+                protectedSeqs[slot] = seq;
+                protectingFec[slot] = 0;
+            }
+            protectingFec[slot] |= fecBit;
+        }
+
+        fecPackets[fecSlot] = copy(p, fecPackets[fecSlot]);
+        fecProtectedCounts[fecSlot] = count;
+        fecMissingCounts[fecSlot] = missing;
+        if (missing == 0)
+            removeFec(fecSlot);
+        else if (missing == 1)
+            recover(fecSlot);
+    }
+
+    /**
+     * Finds which of specific fec packets protect a specific media packet.
+     *
+     * @param fecSlots
+     *         the bit mask of the slots in {@link #fecPackets} of the fec
+     *         packets to look into
+     * @param seq
+     *         the RTP sequence number of the media packet
+     * @return the bit mask of the slots of the fec packets among
+     * <tt>fecSlots</tt> which protect <tt>seq</tt>
+     */
+    private long findProtectingFec(long fecSlots, int seq)
+    {
+        long protecting = 0;
+
+        while (fecSlots != 0) {
+            int fecSlot = Long.numberOfTrailingZeros(fecSlots);
+            int[] seqs = fecProtectedSeqs[fecSlot];
+            int count = fecProtectedCounts[fecSlot];
+
+            fecSlots &= fecSlots - 1;
+            for (int i = 0; i < count; i++) {
+                if (seqs[i] == seq) {
+                    protecting |= 1L << fecSlot;
+                    break;
+                }
+            }
+        }
+        return protecting;
+    }
+
+    /**
+     * Forgets about the fec packet in a specific slot of the fec ring.
+     *
+     * @param fecSlot
+     *         the slot of the fec packet to forget about
+     */
+    private void removeFec(int fecSlot)
+    {
+        int[] seqs = fecProtectedSeqs[fecSlot];
+        int count = fecProtectedCounts[fecSlot];
+        long fecMask = ~(1L << fecSlot);
+
+        for (int i = 0; i < count; i++) {
+            int seq = seqs[i];
+            int slot = seq & (MEDIA_BUF_SIZE - 1);
+
+            if (protectedSeqs[slot] == seq)
+                protectingFec[slot] &= fecMask;
+        }
+        untrackedFec &= fecMask;
+        fecProtectedCounts[fecSlot] = 0;
+        fecMissingCounts[fecSlot] = -1;
+    }
+
+    /**
+     * Recovers the single media packet which is missing from the ones
+     * protected by the fec packet in a specific slot of the fec ring. The
+     * fec packet is consumed either way.
+     *
+     * @param fecSlot
+     *         the slot of the fec packet to recover with
+     */
+    private void recover(int fecSlot)
+    {
+        int[] seqs = fecProtectedSeqs[fecSlot];
+        int count = fecProtectedCounts[fecSlot];
+        int missingSeq = -1;
+
+        for (int i = 0; i < count; i++) {
+            if (getMediaPacket(seqs[i]) == null) {
+                if (missingSeq != -1) {
+                    // A protected packet has been dropped from the media ring
+                    // in the meantime, so nothing can be recovered.
+                    missingSeq = -1;
+                    break;
+                }
+                missingSeq = seqs[i];
+            }
+        }
+
+        RawPacket fecPacket = fecPackets[fecSlot];
+
+        removeFec(fecSlot);
+        if (missingSeq == -1)
+            return;
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Attempting recovery of missing sequence number " + missingSeq);
         }
 
-        System.arraycopy(p.getBuffer(), p.getOffset(), newMedia.getBuffer(),0, pLen);
-        newMedia.setLength(pLen);
-        newMedia.setOffset(0);
+        RawPacket recovered = recover(fecPacket, fecSlot, missingSeq, seqs, count);
 
-        mediaPackets.put(newMedia.getSequenceNumber(), newMedia);
+        if (recovered != null) {
+            statistics.numRecoveredPackets++;
+            recoveredPackets.add(recovered);
+            // The recovered packet may complete other fec packets.
+            saveMedia(recovered);
+        }
+        else {
+            statistics.failedRecoveries++;
+        }
     }
 
     /**
@@ -238,6 +500,8 @@ public abstract class AbstractFECReceiver implements PacketTransformer
                 if (handleFec) {
                     saveFec(pkt);
                 }
+                // It has been copied, if at all, so return it to the pool.
+                RawPacketPool.release(pkt);
             }
             else {
                 if (handleFec) {
@@ -246,8 +510,26 @@ public abstract class AbstractFECReceiver implements PacketTransformer
             }
         }
 
-        pkts = doReverseTransform(pkts);
+        int recoveredCount = recoveredPackets.size();
 
+        if (recoveredCount != 0) {
+            int next = 0;
+
+            // Place the recovered packets in the empty spots of pkts first.
+            for (int i = 0; i < pkts.length && next < recoveredCount; i++) {
+                if (pkts[i] == null)
+                    pkts[i] = recoveredPackets.get(next++);
+            }
+            if (next < recoveredCount) {
+                RawPacket[] pkts2 = new RawPacket[pkts.length + recoveredCount - next];
+
+                System.arraycopy(pkts, 0, pkts2, 0, pkts.length);
+                for (int i = pkts.length; next < recoveredCount; i++)
+                    pkts2[i] = recoveredPackets.get(next++);
+                pkts = pkts2;
+            }
+            recoveredPackets.clear();
+        }
         return pkts;
     }
 
@@ -266,14 +548,48 @@ public abstract class AbstractFECReceiver implements PacketTransformer
     }
 
     /**
-     * Perform fec receive logic specific to the fec implementation
+     * Reads the RTP sequence numbers of the media packets protected by a
+     * specific fec packet.
+     *
+     * @param fecPacket
+     *         the fec packet
+     * @param fecSlot
+     *         the slot of the ring of fec packets, less than
+     *         {@link #FEC_BUF_SIZE}, in which a copy of <tt>fecPacket</tt> is
+     *         kept until it is given to
+     *         {@link #recover(RawPacket, int, int, int[], int)}
+     * @param seqs
+     *         the array of at least {@link #MAX_PROTECTED_PACKETS}
+     *         elements to read the sequence numbers into
+     * @return the number of sequence numbers read into <tt>seqs</tt> or
+     * <tt>-1</tt> if <tt>fecPacket</tt> is malformed
+     */
+    protected abstract int readProtectedSequenceNumbers(RawPacket fecPacket, int fecSlot,
+            int[] seqs);
+
+    /**
+     * Recovers a media packet from a fec packet and the other media packets
+     * protected by it, which are available through
+     * {@link #getMediaPacket(int)}. The recovered packet is to be obtained
+     * from the {@link RawPacketPool}.
      *
-     * @param pkts
-     *         the input media packets
-     * @return a RawPacket[] containing the given media packets as well as any
-     * media packets that were recovered
+     * @param fecPacket
+     *         the fec packet to recover with
+     * @param fecSlot
+     *         the slot of the ring of fec packets which <tt>fecPacket</tt>
+     *         was given to {@link #readProtectedSequenceNumbers(RawPacket,
+     *         int, int[])} with
+     * @param missingSeq
+     *         the RTP sequence number of the packet to recover
+     * @param seqs
+     *         the RTP sequence numbers of the media packets protected by
+     *         <tt>fecPacket</tt>, including <tt>missingSeq</tt>
+     * @param count
+     *         the number of valid elements of <tt>seqs</tt>
+     * @return the recovered packet or <tt>null</tt> if the recovery failed
      */
-    protected abstract RawPacket[] doReverseTransform(RawPacket[] pkts);
+    protected abstract RawPacket recover(RawPacket fecPacket, int fecSlot, int missingSeq,
+            int[] seqs, int count);
 
     class Statistics
     {
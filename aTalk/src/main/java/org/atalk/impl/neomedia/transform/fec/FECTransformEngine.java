@@ -7,12 +7,18 @@ package org.atalk.impl.neomedia.transform.fec;
 
 import org.atalk.impl.neomedia.rtp.MediaStreamTrackReceiver;
 import org.atalk.impl.neomedia.rtp.RTPEncodingDesc;
+import org.atalk.impl.neomedia.rtp.StreamRTPManager;
 import org.atalk.impl.neomedia.transform.PacketTransformer;
 import org.atalk.impl.neomedia.transform.TransformEngine;
+import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.MediaStream;
+import org.atalk.service.neomedia.RTPTranslator;
 import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.codec.Constants;
+import org.atalk.util.ConfigUtils;
 import org.atalk.util.Logger;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -43,6 +49,32 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
      */
     public static final int INITIAL_BUFFER_SIZE = 1500;
 
+    /**
+     * The name of the <tt>ConfigurationService</tt> property which specifies the layout of the
+     * outgoing FlexFEC-03 packets: <tt>ROW_COLUMN</tt> (the default) or <tt>RANDOM</tt>.
+     */
+    public static final String FLEXFEC_MASK_TYPE_PNAME
+            = FECTransformEngine.class.getName() + ".FLEXFEC_MASK_TYPE";
+
+    /**
+     * The layout of the outgoing FlexFEC-03 packets.
+     */
+    private static final FlexFec03Sender.MaskType FLEXFEC_MASK_TYPE;
+
+    static {
+        String maskType = ConfigUtils.getString(LibJitsi.getConfigurationService(),
+                FLEXFEC_MASK_TYPE_PNAME, FlexFec03Sender.MaskType.ROW_COLUMN.name());
+        FlexFec03Sender.MaskType flexFecMaskType;
+
+        try {
+            flexFecMaskType = FlexFec03Sender.MaskType.valueOf(maskType);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown FlexFEC mask type " + maskType);
+            flexFecMaskType = FlexFec03Sender.MaskType.ROW_COLUMN;
+        }
+        FLEXFEC_MASK_TYPE = flexFecMaskType;
+    }
+
     /**
      * The payload type for incoming ulpfec (RFC5109) packets.
      *
@@ -65,7 +97,8 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
     /**
      * The rate at which ulpfec packets will be generated and added to the stream by this
      * <tt>PacketTransformer</tt>. An ulpfec packet will be generated for every <tt>fecRate</tt>
-     * media packets. If set to 0, no ulpfec packets will be generated.
+     * media packets. If set to 0, no ulpfec packets will be generated and the FlexFEC-03
+     * protection adapts to the loss reported by the receiver.
      */
     private int fecRate = 0;
 
@@ -79,6 +112,11 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
      */
     private final Map<Long, FECSender> fecSenders = new HashMap<>();
 
+    /**
+     * Maps a media SSRC to the <tt>FlexFec03Sender</tt> to be used for packets with that SSRC.
+     */
+    private final Map<Long, FlexFec03Sender> flexFecSenders = new HashMap<>();
+
     private final MediaStream mediaStream;
 
     /**
@@ -171,6 +209,9 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
         if (ssrc == null)
             return pkts;
 
+        if (fecType == FecType.FLEXFEC_03)
+            return transformFlexFec(ssrc, pkts);
+
         FECSender fpt;
         synchronized (fecSenders) {
             fpt = fecSenders.get(ssrc);
@@ -182,6 +223,80 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
         return fpt.transform(pkts);
     }
 
+    /**
+     * Adds FlexFEC-03 packets, sent with the SSRC associated with <tt>ssrc</tt> in a FEC-FR
+     * group, to the media packets of <tt>ssrc</tt>.
+     *
+     * @param ssrc
+     *         the media SSRC of <tt>pkts</tt>
+     * @param pkts
+     *         the packets to protect
+     * @return <tt>pkts</tt> with the FlexFEC-03 packets which were added, if any.
+     */
+    private RawPacket[] transformFlexFec(long ssrc, RawPacket[] pkts)
+    {
+        FlexFec03Sender sender;
+        synchronized (flexFecSenders) {
+            sender = flexFecSenders.get(ssrc);
+            if (sender == null) {
+                long fecSsrc = getFlexFecSsrc(ssrc);
+                if (fecSsrc == -1) {
+                    // Not a media SSRC or FlexFEC has not been signaled for it.
+                    return pkts;
+                }
+                sender = new FlexFec03Sender(ssrc, fecSsrc, fecRate, outgoingPT,
+                        FLEXFEC_MASK_TYPE);
+                flexFecSenders.put(ssrc, sender);
+            }
+        }
+        return sender.transform(pkts);
+    }
+
+    /**
+     * Finds the SSRC paired with a specific media SSRC in a FEC-FR group, either of
+     * {@link #mediaStream} or, when translating, of the stream which receives the media.
+     *
+     * @param ssrc
+     *         the media SSRC
+     * @return the FlexFEC-03 SSRC paired with <tt>ssrc</tt> or -1
+     */
+    private long getFlexFecSsrc(long ssrc)
+    {
+        MediaStreamTrackReceiver receiver = mediaStream.getMediaStreamTrackReceiver();
+        RTPEncodingDesc encoding = (receiver == null) ? null : receiver.findRTPEncodingDesc(ssrc);
+
+        if (encoding == null) {
+            RTPTranslator rtpTranslator = mediaStream.getRTPTranslator();
+            StreamRTPManager receiveRTPManager = (rtpTranslator == null) ? null
+                    : rtpTranslator.findStreamRTPManagerByReceiveSSRC((int) ssrc);
+            MediaStream receiveStream = (receiveRTPManager == null) ? null
+                    : receiveRTPManager.getMediaStream();
+
+            receiver = (receiveStream == null) ? null : receiveStream.getMediaStreamTrackReceiver();
+            encoding = (receiver == null) ? null : receiver.findRTPEncodingDesc(ssrc);
+        }
+        return (encoding == null) ? -1 : encoding.getSecondarySsrc(Constants.FLEXFEC_03);
+    }
+
+    /**
+     * Notifies this instance of an RTCP reception report block about a stream it sends, so that
+     * the FlexFEC-03 protection of the stream adapts to the loss the receiver observes.
+     *
+     * @param ssrc
+     *         the SSRC of the media stream which the report block is about
+     * @param fractionLost
+     *         the fraction lost field of the report block
+     */
+    public void rtcpReceiverReportReceived(long ssrc, int fractionLost)
+    {
+        FlexFec03Sender sender;
+        synchronized (flexFecSenders) {
+            sender = flexFecSenders.get(ssrc);
+        }
+        if (sender != null)
+            sender.rtcpReceiverReportReceived(fractionLost);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -190,20 +305,27 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
     {
         Collection<AbstractFECReceiver> receivers;
         Collection<FECSender> senders;
+        Collection<FlexFec03Sender> flexSenders;
 
         synchronized (fecReceivers) {
-            receivers = fecReceivers.values();
+            receivers = new ArrayList<>(fecReceivers.values());
             fecReceivers.clear();
         }
         synchronized (fecSenders) {
-            senders = fecSenders.values();
+            senders = new ArrayList<>(fecSenders.values());
             fecSenders.clear();
         }
+        synchronized (flexFecSenders) {
+            flexSenders = new ArrayList<>(flexFecSenders.values());
+            flexFecSenders.clear();
+        }
 
         for (AbstractFECReceiver fecReceiver : receivers)
             fecReceiver.close();
         for (FECSender fecSender : senders)
             fecSender.close();
+        for (FlexFec03Sender flexFecSender : flexSenders)
+            flexFecSender.close();
     }
 
     /**
@@ -256,6 +378,10 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
             for (FECSender f : fecSenders.values())
                 f.setUlpfecPT(outgoingPT);
         }
+        synchronized (flexFecSenders) {
+            for (FlexFec03Sender f : flexFecSenders.values())
+                f.setPayloadType(outgoingPT);
+        }
         if (logger.isDebugEnabled())
             logger.debug("Setting payload type for outgoing ulpfec: " + outgoingPT);
     }
@@ -265,7 +391,8 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
      * <tt>PacketTransformer</tt>.
      *
      * @param fecRate
-     *         the rate to set, should be in [0, 16]
+     *         the rate to set, should be in [0, 16] for ulpfec and in [0, 48] for FlexFEC-03,
+     *         where 0 adapts the protection to the reported loss
      */
     public void setFecRate(int fecRate)
     {
@@ -273,6 +400,10 @@ public class FECTransformEngine implements TransformEngine, PacketTransformer
             for (FECSender f : fecSenders.values())
                 f.setFecRate(fecRate);
         }
+        synchronized (flexFecSenders) {
+            for (FlexFec03Sender f : flexFecSenders.values())
+                f.setFecRate(fecRate);
+        }
         this.fecRate = fecRate;
     }
 
@@ -0,0 +1,690 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.fec;
+
+import net.sf.fmj.media.rtp.RTPHeader;
+
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
+import org.atalk.impl.neomedia.transform.PacketTransformer;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.util.Logger;
+import org.atalk.util.RTPUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <tt>PacketTransformer</tt> which adds FlexFEC-03 packets, sent with an SSRC of their own, to
+ * a specific media SSRC. The media is protected in blocks of consecutive packets. The FEC packets
+ * of a block are described by bit masks over the positions in the block: either the rows and
+ * the columns of the block laid out as a 2-D matrix or random subsets of the block. Every media
+ * packet is XORed into the FEC packets which protect it as it passes and a FEC packet is sent as
+ * soon as the last packet it protects has passed.
+ * <p>
+ * Unless a fixed rate is set, the protection level adapts to the fraction of packets lost as
+ * reported by the receiver: no FEC at all on a clean link and more redundancy in smaller blocks
+ * as the loss grows. A new level takes effect at the start of the next block.
+ *
+ * @author Eng Chong Meng
+ */
+class FlexFec03Sender implements PacketTransformer
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>FlexFec03Sender</tt> class and its instances to print
+	 * debug information.
+	 */
+	private static final Logger logger = Logger.getLogger(FlexFec03Sender.class);
+
+	/**
+	 * The layouts of the FEC packets of a block.
+	 */
+	enum MaskType
+	{
+		/**
+		 * Every row and, if there is more than one row, every column of the block laid out as a
+		 * matrix is protected by a FEC packet. Recovers any single loss in a row and bursts as
+		 * long as a row.
+		 */
+		ROW_COLUMN,
+
+		/**
+		 * Every FEC packet protects a random subset of the block. Every packet of the block is
+		 * protected at least once.
+		 */
+		RANDOM
+	}
+
+	/**
+	 * The minimum fractions of lost packets of the protection levels from the first one up.
+	 * Level 0 sends no FEC.
+	 */
+	private static final double[] LEVEL_LOSS_THRESHOLDS = { 0.01, 0.03, 0.07, 0.12 };
+
+	/**
+	 * The number of columns of the blocks of the protection levels.
+	 */
+	private static final int[] LEVEL_COLUMNS = { 0, 10, 6, 6, 4 };
+
+	/**
+	 * The number of rows of the blocks of the protection levels. With a single row, every block
+	 * is protected by one FEC packet.
+	 */
+	private static final int[] LEVEL_ROWS = { 0, 1, 1, 6, 4 };
+
+	/**
+	 * The ratio of its threshold below which the loss has to fall for a protection level to be
+	 * left, so that the level does not flap when the loss hovers around a threshold.
+	 */
+	private static final double LEVEL_DOWN_HYSTERESIS = 0.8;
+
+	/**
+	 * The weight of a new receiver report in the smoothed loss when the loss decreases. Increases
+	 * are taken into account at once.
+	 */
+	private static final double LOSS_DECAY_WEIGHT = 0.3;
+
+	/**
+	 * The maximum number of media packets in a block. The masks of the FEC packets over the
+	 * positions in a block are <tt>long</tt>s and a FlexFEC-03 mask cannot span more than 109
+	 * packets.
+	 */
+	private static final int MAX_BLOCK_SIZE = 48;
+
+	/**
+	 * The length of the FlexFEC-03 header with a single SSRC, excluding the mask.
+	 */
+	private static final int FLEXFEC_HDR_LEN = 18;
+
+	/**
+	 * The length of the fixed RTP header.
+	 */
+	private static final int RTP_HDR_LEN = RawPacket.FIXED_HEADER_SIZE;
+
+	/**
+	 * The media SSRC which this <tt>FlexFec03Sender</tt> protects.
+	 */
+	private final long ssrc;
+
+	/**
+	 * The SSRC of the FEC packets.
+	 */
+	private final long fecSsrc;
+
+	/**
+	 * The FlexFEC-03 payload type.
+	 */
+	private byte payloadType;
+
+	/**
+	 * The layout of the FEC packets of a block.
+	 */
+	private final MaskType maskType;
+
+	/**
+	 * The fixed number of media packets protected by a FEC packet or 0 to adapt the protection
+	 * to the reported loss.
+	 */
+	private int fecRate;
+
+	/**
+	 * The loss reported by the receiver, smoothed.
+	 */
+	private double lossRate = 0;
+
+	/**
+	 * The protection level which is to be used from the start of the next block on.
+	 */
+	private int level = 0;
+
+	/**
+	 * The layout of the FEC packets of the current block or <tt>null</tt> if no FEC is sent.
+	 */
+	private Plan plan;
+
+	/**
+	 * Whether {@link #plan} is to be replaced at the start of the next block.
+	 */
+	private boolean planChanged = true;
+
+	/**
+	 * The accumulators of the FEC packets of the current block, indexed as the masks of
+	 * {@link #plan}. Reused across blocks.
+	 */
+	private Accumulator[] accumulators = new Accumulator[0];
+
+	/**
+	 * The position in the current block of the next media packet.
+	 */
+	private int position = 0;
+
+	/**
+	 * The sequence number of the first media packet of the current block.
+	 */
+	private int base;
+
+	/**
+	 * The sequence number of the last media packet.
+	 */
+	private int lastSeq = -1;
+
+	/**
+	 * The RTP timestamp of the last media packet.
+	 */
+	private long lastTimestamp;
+
+	/**
+	 * The sequence number of the next FEC packet.
+	 */
+	private int fecSeq;
+
+	/**
+	 * The generator of the masks of {@link MaskType#RANDOM}.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Number of FEC packets added.
+	 */
+	private int nbFec = 0;
+
+	/**
+	 * Creates a new <tt>FlexFec03Sender</tt> instance.
+	 *
+	 * @param ssrc
+	 * 		the media SSRC to protect.
+	 * @param fecSsrc
+	 * 		the SSRC of the FEC packets.
+	 * @param fecRate
+	 * 		the fixed number of media packets to protect by a FEC packet or 0 to adapt the
+	 * 		protection to the reported loss.
+	 * @param payloadType
+	 * 		the payload type of the FEC packets.
+	 * @param maskType
+	 * 		the layout of the FEC packets of a block.
+	 */
+	FlexFec03Sender(long ssrc, long fecSsrc, int fecRate, byte payloadType, MaskType maskType)
+	{
+		this.ssrc = ssrc;
+		this.fecSsrc = fecSsrc;
+		this.fecRate = Math.min(fecRate, MAX_BLOCK_SIZE);
+		this.payloadType = payloadType;
+		this.maskType = maskType;
+		fecSeq = random.nextInt(0x10000);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public RawPacket[] reverseTransform(RawPacket[] pkts)
+	{
+		return pkts;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized RawPacket[] transform(RawPacket[] pkts)
+	{
+		RawPacket pkt = null;
+		for (RawPacket p : pkts) {
+			if (p != null && p.getVersion() == RTPHeader.VERSION && p.getSSRCAsLong() == ssrc) {
+				pkt = p;
+				break;
+			}
+		}
+		if (pkt == null)
+			return pkts;
+
+		return transformSingle(pkt, pkts);
+	}
+
+	/**
+	 * Adds a media packet to the current block and adds to <tt>pkts</tt> the FEC packets of the
+	 * block for which it is the last protected packet.
+	 *
+	 * @param pkt
+	 * 		media packet to process.
+	 * @param pkts
+	 * 		array to try to use for output.
+	 * @return an array that contains <tt>pkt</tt> and the FEC packets which were added, if any.
+	 */
+	private RawPacket[] transformSingle(RawPacket pkt, RawPacket[] pkts)
+	{
+		int seq = pkt.getSequenceNumber();
+
+		// The masks assume consecutive sequence numbers so a gap (or a reordering) abandons the
+		// block.
+		if (position != 0 && seq != RTPUtils.applySequenceNumberDelta(lastSeq, 1))
+			position = 0;
+		lastSeq = seq;
+		lastTimestamp = pkt.getTimestamp();
+
+		if (position == 0) {
+			if (planChanged)
+				startPlan();
+			if (plan == null)
+				return pkts;
+
+			base = seq;
+			for (int i = 0; i < plan.masks.length; i++)
+				accumulators[i].reset();
+		}
+
+		Plan plan = this.plan;
+		long bit = 1L << position;
+
+		for (int i = 0; i < plan.masks.length; i++) {
+			if ((plan.masks[i] & bit) != 0)
+				accumulators[i].add(pkt);
+		}
+		for (int i = 0; i < plan.masks.length; i++) {
+			if (plan.lastPositions[i] == position)
+				pkts = add(createFecPacket(i), pkts);
+		}
+		if (++position == plan.blockSize)
+			position = 0;
+		return pkts;
+	}
+
+	/**
+	 * Adds a packet to the first empty spot of an array or to a copy of the array one element
+	 * longer.
+	 *
+	 * @param pkt
+	 * 		the packet to add.
+	 * @param pkts
+	 * 		the array to add to.
+	 * @return the array which <tt>pkt</tt> has been added to.
+	 */
+	private static RawPacket[] add(RawPacket pkt, RawPacket[] pkts)
+	{
+		for (int i = 0; i < pkts.length; i++) {
+			if (pkts[i] == null) {
+				pkts[i] = pkt;
+				return pkts;
+			}
+		}
+
+		RawPacket[] pkts2 = new RawPacket[pkts.length + 1];
+		System.arraycopy(pkts, 0, pkts2, 0, pkts.length);
+		pkts2[pkts.length] = pkt;
+		return pkts2;
+	}
+
+	/**
+	 * Builds the FEC packet with a specific index of the current block from its accumulator.
+	 *
+	 * @param index
+	 * 		the index of the FEC packet in the masks of {@link #plan}
+	 * @return the FEC packet, obtained from the {@link RawPacketPool}
+	 */
+	private RawPacket createFecPacket(int index)
+	{
+		Accumulator acc = accumulators[index];
+		byte[] mask = plan.maskBytes[index];
+		int payloadOffset = RTP_HDR_LEN + FLEXFEC_HDR_LEN + mask.length;
+		RawPacket fecPacket = RawPacketPool.acquire(payloadOffset + acc.length);
+		byte[] buf = fecPacket.getBuffer();
+
+		fecPacket.setOffset(0);
+		fecPacket.setLength(payloadOffset + acc.length);
+
+		// RTP header
+		buf[0] = (byte) 0x80; // no Padding, no Extension, no CSRCs
+		buf[1] = (byte) (payloadType & 0x7f);
+		fecPacket.setSequenceNumber(fecSeq);
+		fecPacket.setTimestamp(lastTimestamp);
+		fecPacket.setSSRC((int) fecSsrc);
+		fecSeq = RTPUtils.applySequenceNumberDelta(fecSeq, 1);
+
+		// FlexFEC-03 header: R = 0 and F = 0 (flexible mask) in place of the version.
+		int off = RTP_HDR_LEN;
+
+		buf[off] = (byte) (acc.header[0] & 0x3f);
+		buf[off + 1] = acc.header[1];
+		buf[off + 2] = (byte) (acc.lengthRecovery >> 8);
+		buf[off + 3] = (byte) acc.lengthRecovery;
+		System.arraycopy(acc.header, 4, buf, off + 4, 4);
+		buf[off + 8] = 1; // SSRCCount
+		buf[off + 9] = 0;
+		buf[off + 10] = 0;
+		buf[off + 11] = 0;
+		RTPUtils.writeInt(buf, off + 12, (int) ssrc);
+		RTPUtils.writeShort(buf, off + 16,
+				(short) RTPUtils.applySequenceNumberDelta(base, plan.firstPositions[index]));
+		System.arraycopy(mask, 0, buf, off + FLEXFEC_HDR_LEN, mask.length);
+
+		System.arraycopy(acc.payload, 0, buf, payloadOffset, acc.length);
+
+		nbFec++;
+		return fecPacket;
+	}
+
+	/**
+	 * Replaces {@link #plan} with the one of the current protection level or fixed rate.
+	 */
+	private void startPlan()
+	{
+		planChanged = false;
+
+		int columns, rows;
+
+		if (fecRate > 0) {
+			columns = fecRate;
+			rows = 1;
+		}
+		else {
+			columns = LEVEL_COLUMNS[level];
+			rows = LEVEL_ROWS[level];
+		}
+		if (columns <= 0) {
+			plan = null;
+			return;
+		}
+
+		long[] masks = (maskType == MaskType.RANDOM)
+				? randomMasks(columns * rows, (rows > 1) ? rows + columns : rows)
+				: rowColumnMasks(columns, rows);
+
+		plan = Plan.create(columns * rows, masks);
+		if (plan == null)
+			return;
+
+		if (accumulators.length < masks.length) {
+			Accumulator[] newAccumulators = Arrays.copyOf(accumulators, masks.length);
+
+			for (int i = accumulators.length; i < masks.length; i++)
+				newAccumulators[i] = new Accumulator();
+			accumulators = newAccumulators;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("FlexFEC for ssrc=" + ssrc + ": " + maskType + " masks over "
+					+ columns + "x" + rows + " blocks, " + masks.length + " FEC packets each.");
+		}
+	}
+
+	/**
+	 * Creates the masks of a block laid out as a matrix of which every row and, if there is more
+	 * than one row, every column is protected by a FEC packet.
+	 *
+	 * @param columns
+	 * 		the number of columns i.e. the length of a row
+	 * @param rows
+	 * 		the number of rows
+	 * @return the masks of the FEC packets of the block
+	 */
+	private static long[] rowColumnMasks(int columns, int rows)
+	{
+		long[] masks = new long[(rows > 1) ? rows + columns : rows];
+		long row = (1L << columns) - 1;
+
+		for (int r = 0; r < rows; r++)
+			masks[r] = row << (r * columns);
+		if (rows > 1) {
+			for (int c = 0; c < columns; c++) {
+				long column = 0;
+
+				for (int r = 0; r < rows; r++)
+					column |= 1L << (r * columns + c);
+				masks[rows + c] = column;
+			}
+		}
+		return masks;
+	}
+
+	/**
+	 * Creates random masks over a block so that every FEC packet protects about half of the
+	 * block and every packet of the block is protected at least once.
+	 *
+	 * @param blockSize
+	 * 		the number of media packets in the block
+	 * @param count
+	 * 		the number of FEC packets of the block
+	 * @return the masks of the FEC packets of the block
+	 */
+	private long[] randomMasks(int blockSize, int count)
+	{
+		long all = (blockSize == Long.SIZE) ? -1L : (1L << blockSize) - 1;
+		long[] masks = new long[count];
+		long covered = 0;
+
+		for (int i = 0; i < count; i++) {
+			masks[i] = random.nextLong() & all;
+			if (masks[i] == 0)
+				masks[i] = 1L << random.nextInt(blockSize);
+			covered |= masks[i];
+		}
+		for (int p = 0; p < blockSize; p++) {
+			if ((covered & (1L << p)) == 0)
+				masks[random.nextInt(count)] |= 1L << p;
+		}
+		return masks;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close()
+	{
+		if (logger.isInfoEnabled()) {
+			logger.info("Closing FlexFec03Sender for ssrc=" + ssrc + ". Added " + nbFec
+					+ " FlexFEC packets.");
+		}
+	}
+
+	/**
+	 * Sets the FlexFEC-03 payload type.
+	 *
+	 * @param payloadType
+	 * 		the payload type.
+	 */
+	public synchronized void setPayloadType(byte payloadType)
+	{
+		this.payloadType = payloadType;
+	}
+
+	/**
+	 * Sets a fixed number of media packets to protect by a FEC packet. The change takes effect
+	 * at the start of the next block.
+	 *
+	 * @param fecRate
+	 * 		the number of media packets to protect by a FEC packet, at most
+	 * 		{@link #MAX_BLOCK_SIZE}, or 0 to adapt the protection to the reported loss.
+	 */
+	public synchronized void setFecRate(int fecRate)
+	{
+		fecRate = Math.min(fecRate, MAX_BLOCK_SIZE);
+		if (this.fecRate != fecRate) {
+			this.fecRate = fecRate;
+			planChanged = true;
+		}
+	}
+
+	/**
+	 * Notifies this instance of the fraction of its packets which the receiver reports as lost.
+	 * The loss is smoothed and mapped to a protection level, which takes effect at the start of
+	 * the next block.
+	 *
+	 * @param fractionLost
+	 * 		the fraction lost field of an RTCP reception report block i.e. the fraction of lost
+	 * 		packets multiplied by 256.
+	 */
+	public synchronized void rtcpReceiverReportReceived(int fractionLost)
+	{
+		double loss = (fractionLost & 0xff) / 256D;
+
+		lossRate = (loss >= lossRate) ? loss
+				: (1 - LOSS_DECAY_WEIGHT) * lossRate + LOSS_DECAY_WEIGHT * loss;
+
+		int newLevel = level;
+
+		while (newLevel < LEVEL_LOSS_THRESHOLDS.length
+				&& lossRate >= LEVEL_LOSS_THRESHOLDS[newLevel])
+			newLevel++;
+		while (newLevel > 0
+				&& lossRate < LEVEL_LOSS_THRESHOLDS[newLevel - 1] * LEVEL_DOWN_HYSTERESIS)
+			newLevel--;
+
+		if (newLevel != level) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("FlexFEC protection level for ssrc=" + ssrc + " changes from "
+						+ level + " to " + newLevel + " at loss " + lossRate);
+			}
+			level = newLevel;
+			planChanged = (fecRate == 0);
+		}
+	}
+
+	/**
+	 * Gets the current protection level.
+	 *
+	 * @return the current protection level, 0 meaning no FEC.
+	 */
+	synchronized int getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * The layout of the FEC packets of a block.
+	 */
+	private static class Plan
+	{
+		/**
+		 * The number of media packets in a block.
+		 */
+		final int blockSize;
+
+		/**
+		 * The masks of the FEC packets over the positions in the block.
+		 */
+		final long[] masks;
+
+		/**
+		 * The first position protected by every FEC packet i.e. its SN base.
+		 */
+		final int[] firstPositions;
+
+		/**
+		 * The last position protected by every FEC packet i.e. the one after which it is sent.
+		 */
+		final int[] lastPositions;
+
+		/**
+		 * The FlexFEC-03 masks (including the k bits) of the FEC packets.
+		 */
+		final byte[][] maskBytes;
+
+		private Plan(int blockSize, long[] masks)
+		{
+			this.blockSize = blockSize;
+			this.masks = masks;
+			firstPositions = new int[masks.length];
+			lastPositions = new int[masks.length];
+			maskBytes = new byte[masks.length][];
+		}
+
+		/**
+		 * Creates a <tt>Plan</tt>.
+		 *
+		 * @param blockSize
+		 * 		the number of media packets in a block.
+		 * @param masks
+		 * 		the non-zero masks of the FEC packets over the positions in the block.
+		 * @return the <tt>Plan</tt> or <tt>null</tt> if a mask cannot be expressed by FlexFEC-03.
+		 */
+		static Plan create(int blockSize, long[] masks)
+		{
+			Plan plan = new Plan(blockSize, masks);
+
+			for (int i = 0; i < masks.length; i++) {
+				long mask = masks[i];
+				int first = Long.numberOfTrailingZeros(mask);
+				List<Integer> deltas = new ArrayList<>();
+
+				for (long m = mask; m != 0; m &= m - 1)
+					deltas.add(Long.numberOfTrailingZeros(m) - first);
+
+				plan.firstPositions[i] = first;
+				plan.lastPositions[i] = Long.SIZE - 1 - Long.numberOfLeadingZeros(mask);
+				try {
+					plan.maskBytes[i] = new FlexFec03Mask(0, deltas).getMaskWithKBits()
+							.toByteArray();
+				} catch (FlexFec03Mask.MalformedMaskException e) {
+					logger.error("Cannot express FlexFEC mask " + Long.toBinaryString(mask));
+					return null;
+				}
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * The XOR of the media packets protected by a FEC packet, in the sense of FlexFEC-03.
+	 */
+	private static class Accumulator
+	{
+		/**
+		 * The XOR of the first 8 bytes of the RTP headers. Only the first 2 bytes and the
+		 * timestamp are used.
+		 */
+		final byte[] header = new byte[8];
+
+		/**
+		 * The XOR of the lengths of the media packets excluding their fixed RTP headers.
+		 */
+		int lengthRecovery;
+
+		/**
+		 * The XOR of everything after the fixed RTP headers.
+		 */
+		byte[] payload = new byte[FECTransformEngine.INITIAL_BUFFER_SIZE];
+
+		/**
+		 * The number of valid bytes in {@link #payload}, the longest of the media packets.
+		 */
+		int length;
+
+		/**
+		 * Adds a media packet.
+		 *
+		 * @param media
+		 * 		the media packet to add.
+		 */
+		void add(RawPacket media)
+		{
+			byte[] mediaBuf = media.getBuffer();
+			int mediaOff = media.getOffset();
+			int mediaPayloadLen = media.getLength() - RTP_HDR_LEN;
+
+			if (mediaPayloadLen > length) {
+				if (mediaPayloadLen > payload.length)
+					payload = Arrays.copyOf(payload, mediaPayloadLen);
+				Arrays.fill(payload, length, mediaPayloadLen, (byte) 0);
+				length = mediaPayloadLen;
+			}
+
+			PacketXor.xor(mediaBuf, mediaOff, header, 0, 8);
+			lengthRecovery ^= mediaPayloadLen;
+			PacketXor.xor(mediaBuf, mediaOff + RTP_HDR_LEN, payload, 0, mediaPayloadLen);
+		}
+
+		/**
+		 * Prepares this instance for the next block.
+		 */
+		void reset()
+		{
+			Arrays.fill(header, (byte) 0);
+			lengthRecovery = 0;
+			length = 0;
+		}
+	}
+}
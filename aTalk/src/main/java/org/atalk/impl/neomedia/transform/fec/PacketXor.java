@@ -0,0 +1,61 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.fec;
+
+/**
+ * XORs packet data for the purposes of forward error correction. The loop is unrolled eight
+ * bytes at a time and works on the arrays directly, so it neither allocates nor depends on
+ * <tt>ByteBuffer</tt> views, whose <tt>getLong</tt> is not intrinsified on every Android runtime.
+ *
+ * @author Eng Chong Meng
+ */
+public class PacketXor
+{
+    /**
+     * XORs bytes of a source array into a destination array.
+     *
+     * @param src the array to XOR from
+     * @param srcOffset the offset in <tt>src</tt> of the first byte to XOR from
+     * @param dst the array to XOR into
+     * @param dstOffset the offset in <tt>dst</tt> of the first byte to XOR into
+     * @param length the number of bytes to XOR
+     */
+    public static void xor(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length)
+    {
+        int s = srcOffset;
+        int d = dstOffset;
+        int end = srcOffset + length;
+
+        for (int unrolledEnd = end - 7; s < unrolledEnd; s += 8, d += 8) {
+            dst[d] ^= src[s];
+            dst[d + 1] ^= src[s + 1];
+            dst[d + 2] ^= src[s + 2];
+            dst[d + 3] ^= src[s + 3];
+            dst[d + 4] ^= src[s + 4];
+            dst[d + 5] ^= src[s + 5];
+            dst[d + 6] ^= src[s + 6];
+            dst[d + 7] ^= src[s + 7];
+        }
+        for (; s < end; s++, d++)
+            dst[d] ^= src[s];
+    }
+
+    /**
+     * XORs bytes of a source array into a destination array one byte at a time. Kept as the
+     * reference of {@link #xor(byte[], int, byte[], int, int)}.
+     *
+     * @param src the array to XOR from
+     * @param srcOffset the offset in <tt>src</tt> of the first byte to XOR from
+     * @param dst the array to XOR into
+     * @param dstOffset the offset in <tt>dst</tt> of the first byte to XOR into
+     * @param length the number of bytes to XOR
+     */
+    static void xorBytes(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length)
+    {
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] ^= src[srcOffset + i];
+    }
+}
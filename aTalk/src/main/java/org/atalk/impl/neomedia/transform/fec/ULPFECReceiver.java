@@ -15,18 +15,17 @@
  */
 package org.atalk.impl.neomedia.transform.fec;
 
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.util.Logger;
-
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import org.atalk.util.RTPUtils;
 
 /**
  * This class handles the reception of incoming ULPFEC (RFC 5109) packets
  *
  * @author bgrozev
  * @author bbaldino
+ * @author Eng Chong Meng
  */
 public class ULPFECReceiver extends AbstractFECReceiver
 {
@@ -36,270 +35,132 @@ public class ULPFECReceiver extends AbstractFECReceiver
      */
     private static final Logger logger
             = Logger.getLogger(ULPFECReceiver.class);
+
     /**
-     * A <tt>Set</tt> of packets which will be reused every time a
-     * packet is recovered. Defined here to avoid recreating it on every call
-     * to <tt>reverseTransform</tt>.
+     * The length of the FEC header.
      */
-    private final Set<RawPacket> packetsToRemove = new HashSet<RawPacket>();
+    private static final int FEC_HEADER_LENGTH = 10;
 
-    private Reconstructor reconstructor;
+    /**
+     * The length of the FEC Level 0 header with a short mask. A long mask
+     * adds 4 more bytes.
+     */
+    private static final int LEVEL_0_HEADER_LENGTH = 4;
 
     public ULPFECReceiver(long ssrc, byte payloadType)
     {
         super(ssrc, payloadType);
-        reconstructor = new Reconstructor(mediaPackets, ssrc);
     }
 
-    protected RawPacket[] doReverseTransform(RawPacket[] pkts)
+    /**
+     * {@inheritDoc}
+     *
+     * Reads the sequence numbers from the mask of the FEC Level 0 header.
+     */
+    @Override
+    protected int readProtectedSequenceNumbers(RawPacket fecPacket, int fecSlot, int[] seqs)
     {
-        // now that we've read the input packets, see if there's a packet
-        // we could recover
-        if (handleFec) {
-            // go over our saved fec packets and see if any of them can be
-            // used to recover a media packet. Add packets which aren't
-            // needed anymore to packetsToRemove
-            packetsToRemove.clear();
-            for (Map.Entry<Integer, RawPacket> entry : fecPackets.entrySet()) {
-                RawPacket fecPacket = entry.getValue();
-                reconstructor.setFecPacket(fecPacket);
-                if (reconstructor.numMissing == 0) {
-                    // We already have all media packets for this fec packet,
-                    // no need to keep it and keep checking.
-                    packetsToRemove.add(fecPacket);
-                    continue;
-                }
+        byte[] buf = fecPacket.getBuffer();
+        int headerLength = fecPacket.getHeaderLength();
+        int idx = fecPacket.getOffset() + headerLength;
+
+        if (fecPacket.getLength() < headerLength + FEC_HEADER_LENGTH + LEVEL_0_HEADER_LENGTH)
+            return -1;
 
-                if (reconstructor.canRecover()) {
-                    packetsToRemove.add(fecPacket);
-                    RawPacket recovered = reconstructor.recover();
+        // mask length in bytes
+        int maskLen = (buf[idx] & 0x40) == 0 ? 2 : 6;
 
-                    // save it
-                    if (recovered != null) {
-                        statistics.numRecoveredPackets++;
-                        saveMedia(recovered);
+        if (fecPacket.getLength() < headerLength + FEC_HEADER_LENGTH + 2 + maskLen)
+            return -1;
 
-                        // search for an empty spot in pkts where to place
-                        // recovered
-                        boolean found = false;
-                        for (int i = 0; i < pkts.length; i++) {
-                            if (pkts[i] == null) {
-                                pkts[i] = recovered;
-                                found = true;
-                                break;
-                            }
-                        }
+        int base = RTPUtils.readUint16AsInt(buf, idx + 2);
+        int count = 0;
 
-                        if (!found) {
-                            RawPacket[] pkts2 = new RawPacket[pkts.length + 1];
-                            System.arraycopy(pkts, 0, pkts2, 0, pkts.length);
-                            pkts2[pkts.length] = recovered;
-                            pkts = pkts2;
-                        }
-                    }
+        idx += 12; // skip FEC Header and Protection Length, point to mask
+        for (int i = 0; i < maskLen; i++) {
+            int maskByte = buf[idx + i] & 0xff;
+
+            for (int j = 0; j < 8; j++) {
+                if ((maskByte & (0x80 >> j)) != 0) {
+                    //j-th bit in i-th byte in the mask is set
+                    seqs[count++] = RTPUtils.applySequenceNumberDelta(base, i * 8 + j);
                 }
             }
-
-            for (RawPacket p : packetsToRemove)
-                fecPackets.remove(p.getSequenceNumber());
         }
-        return pkts;
-
+        return count;
     }
 
     /**
-     * A class that allows the recovery of a <tt>RawPacket</tt> given a set
-     * of media packets and an ulpfec packet.
+     * {@inheritDoc}
      *
-     * Usage:
-     * 1. Create an instance specifying the map off all available media packets
-     * 2. Call setFecPacket() with an ulpfec packet
-     * 3. Check if a recovery is possible using canRecover()
-     * 4. Recover a packet with recover()
+     * Recovers the RTP header (except for the SSRC and the sequence number,
+     * which are set afterwards), the length and the payload of the missing
+     * packet.
      */
-    private static class Reconstructor
+    @Override
+    protected RawPacket recover(RawPacket fecPacket, int fecSlot, int missingSeq, int[] seqs,
+            int count)
     {
-        /**
-         * Subset of the media packets which is needed for recovery, given a
-         * specific value of <tt>fecPacket</tt>.
-         */
-        private Set<RawPacket> neededPackets = new HashSet<RawPacket>();
-
-        /**
-         * The ulpfec packet to be used for recovery.
-         */
-        private RawPacket fecPacket = null;
-
-        /**
-         * Number of media packet which are needed for recovery (given a
-         * specific value of <tt>fecPacket</tt>) which are not available.
-         * If the value is <tt>0</tt>, this indicates that all media packets
-         * referenced in <tt>fecPacket</tt> *are* available, and so no recovery
-         * is needed.
-         */
-        private int numMissing = -1;
+        byte[] fecBuf = fecPacket.getBuffer();
+        int idx = fecPacket.getOffset() + fecPacket.getHeaderLength();
 
-        /**
-         * Sequence number of the packet to be reconstructed.
-         */
-        private int sequenceNumber = -1;
-
-        /**
-         * SSRC to set on reconstructed packets.
-         */
-        private long ssrc;
-
-        /**
-         * All available media packets.
-         */
-        private Map<Integer, RawPacket> mediaPackets;
-
-        /**
-         * Initializes a new instance.
-         *
-         * @param mediaPackets
-         *         all available media packets.
-         * @param ssrc
-         *         the ssrc to use
-         */
-        Reconstructor(Map<Integer, RawPacket> mediaPackets, long ssrc)
-        {
-            this.mediaPackets = mediaPackets;
-            this.ssrc = ssrc;
+        int lengthRecovery = RTPUtils.readUint16AsInt(fecBuf, idx + 8);
+        for (int i = 0; i < count; i++) {
+            if (seqs[i] != missingSeq)
+                lengthRecovery ^= getMediaPacket(seqs[i]).getLength() - 12;
         }
-
-        /**
-         * Returns <tt>true</tt> if the <tt>RawPacket</tt> last set using
-         * <tt>setFecPacket</tt> can be used to recover a media packet,
-         * <tt>false</tt>otherwise.
-         *
-         * @return <tt>true</tt> if the <tt>RawPacket</tt> last set using
-         * <tt>setFecPacket</tt> can be used to recover a media packet,
-         * <tt>false</tt>otherwise.
-         */
-        private boolean canRecover()
-        {
-            return (numMissing == 1);
+        lengthRecovery &= 0xffff;
+
+        // check how many bytes of the payload are in the FEC packet
+        boolean longMask = (fecBuf[idx] & 0x40) != 0;
+        int protectionLength = RTPUtils.readUint16AsInt(fecBuf, idx + FEC_HEADER_LENGTH);
+        if (protectionLength < lengthRecovery) {
+            // The FEC Level 0 payload only covers part of the media
+            // packet, which isn't useful for us.
+            logger.warn("Recovered only a partial RTP packet. Discarding.");
+            return null;
         }
 
-        /**
-         * Sets the ulpfec packet to be used for recovery and also
-         * updates the values of <tt>numMissing</tt>, <tt>sequenceNumber</tt>
-         * and <tt>neededPackets</tt>.
-         *
-         * @param p
-         *         the ulpfec packet to set.
-         */
-        private void setFecPacket(RawPacket p)
-        {
-            // reset all fields specific to fecPacket
-            neededPackets.clear();
-            numMissing = 0;
-            sequenceNumber = -1;
-            fecPacket = p;
-
-            RawPacket pkt;
-
-            byte[] buf = fecPacket.getBuffer();
-            int idx = fecPacket.getOffset() + fecPacket.getHeaderLength();
-
-            // mask length in bytes
-            int maskLen = (buf[idx] & 0x40) == 0 ? 2 : 6;
-            int base = fecPacket.readUint16AsInt(fecPacket.getHeaderLength() + 2);
-
-            idx += 12; // skip FEC Header and Protection Length, point to mask
-            outer:
-            for (int i = 0; i < maskLen; i++) {
-                for (int j = 0; j < 8; j++) {
-                    if ((buf[idx + i] & (1 << (7 - j) & 0xff)) != 0) {
-                        //j-th bit in i-th byte in the mask is set
-                        pkt = mediaPackets.get(base + i * 8 + j);
-                        if (pkt != null) {
-                            neededPackets.add(pkt);
-                        }
-                        else {
-                            sequenceNumber = base + i * 8 + j;
-                            numMissing++;
-                        }
-                    }
-                    if (numMissing > 1)
-                        break outer;
-                }
-            }
-            if (numMissing != 1)
-                sequenceNumber = -1;
+        int payloadIdx = idx + FEC_HEADER_LENGTH + LEVEL_0_HEADER_LENGTH;
+        if (longMask)
+            payloadIdx += 4; //long mask
+        if (payloadIdx + lengthRecovery > fecPacket.getOffset() + fecPacket.getLength()) {
+            logger.warn("Truncated ULPFEC packet " + fecPacket.getSequenceNumber());
+            return null;
         }
 
-        /**
-         * Recovers a media packet using the ulpfec packet <tt>fecPacket</tt>
-         * and the packets in <tt>neededPackets</tt>.
-         *
-         * @return the recovered packet.
-         */
-        private RawPacket recover()
-        {
-            if (!canRecover())
-                return null;
-
-            byte[] fecBuf = fecPacket.getBuffer();
-            int idx = fecPacket.getOffset() + fecPacket.getHeaderLength();
+        RawPacket recovered = RawPacketPool.acquire(lengthRecovery + 12); //include RTP header
+        byte[] recoveredBuf = recovered.getBuffer();
 
-            int lengthRecovery = (fecBuf[idx + 8] & 0xff) << 8 |
-                    (fecBuf[idx + 9] & 0xff);
-            for (RawPacket p : neededPackets)
-                lengthRecovery ^= p.getLength() - 12;
-            lengthRecovery &= 0xffff;
+        // copy the first 8 bytes of the header and the payload protection
+        // bits from the FEC packet
+        System.arraycopy(fecBuf, idx, recoveredBuf, 0, 8);
+        System.arraycopy(fecBuf, payloadIdx, recoveredBuf, 12, lengthRecovery);
 
-            byte[] recoveredBuf = new byte[lengthRecovery + 12]; //include RTP header
-
-            // restore the first 8 bytes of the header
-            System.arraycopy(fecBuf, idx, recoveredBuf, 0, 8);
-            for (RawPacket p : neededPackets) {
-                int pOffset = p.getOffset();
-                byte[] pBuf = p.getBuffer();
-                for (int i = 0; i < 8; i++)
-                    recoveredBuf[i] ^= pBuf[pOffset + i];
-            }
+        // restore the header and the payload from the media packets
+        for (int i = 0; i < count; i++) {
+            if (seqs[i] == missingSeq)
+                continue;
 
-            // set the version to 2
-            recoveredBuf[0] &= 0x3f;
-            recoveredBuf[0] |= 0x80;
-            // the RTP header is now set, except for SSRC and seq. which are not
-            // recoverable in this way and will be set later
+            RawPacket p = getMediaPacket(seqs[i]);
+            byte[] pBuf = p.getBuffer();
+            int pOff = p.getOffset();
 
-            // check how many bytes of the payload are in the FEC packet
-            boolean longMask = (fecBuf[idx] & 0x40) != 0;
-            idx += 10; // skip FEC Header, point to FEC Level 0 Header
-            int protectionLength = ((fecBuf[idx] & 0xff) << 8) |
-                    (fecBuf[idx + 1] & 0xff);
-            if (protectionLength < lengthRecovery) {
-                // The FEC Level 0 payload only covers part of the media
-                // packet, which isn't useful for us.
-                logger.warn("Recovered only a partial RTP packet. Discarding.");
-                return null;
-            }
-
-            idx += 4; //skip the FEC Level 0 Header
-            if (longMask)
-                idx += 4; //long mask
-
-            // copy the payload protection bits from the FEC packet
-            System.arraycopy(fecBuf, idx, recoveredBuf, 12, lengthRecovery);
-
-            // restore payload from media packets
-            for (RawPacket p : neededPackets) {
-                byte[] pBuf = p.getBuffer();
-                int pLen = p.getLength();
-                int pOff = p.getOffset();
-                for (int i = 12; i < lengthRecovery + 12 && i < pLen; i++)
-                    recoveredBuf[i] ^= pBuf[pOff + i];
-            }
-
-            RawPacket recovered = new RawPacket(recoveredBuf, 0, lengthRecovery + 12);
-            recovered.setSSRC((int) this.ssrc);
-            recovered.setSequenceNumber(sequenceNumber);
-            return recovered;
+            PacketXor.xor(pBuf, pOff, recoveredBuf, 0, 8);
+            PacketXor.xor(pBuf, pOff + 12, recoveredBuf, 12,
+                    Math.min(lengthRecovery, p.getLength() - 12));
         }
-    }
 
+        // set the version to 2
+        recoveredBuf[0] &= 0x3f;
+        recoveredBuf[0] |= 0x80;
+        // the RTP header is now set, except for SSRC and seq. which are not
+        // recoverable in this way
+
+        recovered.setOffset(0);
+        recovered.setLength(lengthRecovery + 12);
+        recovered.setSSRC((int) ssrc);
+        recovered.setSequenceNumber(missingSeq);
+        return recovered;
+    }
 }
@@ -16,7 +16,6 @@
 package org.atalk.impl.neomedia.transform.rtcp;
 
 import net.sf.fmj.media.rtp.*;
-import net.sf.fmj.media.rtp.util.BadFormatException;
 import net.sf.fmj.utility.ByteBufferOutputStream;
 
 import org.atalk.impl.neomedia.*;
@@ -136,9 +135,10 @@ public class StatisticsEngine extends SinglePacketTransformer
 	private final Map<Long, Long> jitterSumMap = new HashMap<>();
 
 	/**
-	 * The {@link RTCPPacketParserEx} which this instance will use to parse RTCP packets.
+	 * The {@link RTCPPacketCursor} which this instance uses to read the received RTCP packets in
+	 * place.
 	 */
-	private final RTCPPacketParserEx parser = new RTCPPacketParserEx();
+	private final RTCPPacketCursor cursor = new RTCPPacketCursor();
 
 	/**
 	 * The <tt>PacketTransformer</tt> instance to use for RTP.
@@ -785,31 +785,16 @@ public class StatisticsEngine extends SinglePacketTransformer
 		if (isRTCP(pkt)) {
 			mediaStreamStats.rtcpPacketReceived(pkt.getRTCPSSRC(), pkt.getLength());
 
-			RTCPCompoundPacket compound;
-			Exception ex;
-			try {
-				compound = (RTCPCompoundPacket) parser.parse(
-						pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
-				ex = null;
-			}
-			catch (BadFormatException | IllegalStateException e) {
-                // In some parsing failures, FMJ swallows the original
-                // IOException and throws a runtime IllegalStateException.
-                // Handle it as if parsing failed.
-                compound = null;
-				ex = e;
-			}
+			RTCPPacketCursor cursor = this.cursor.reset(pkt);
 
-			if (compound == null
-					|| compound.packets == null
-					|| compound.packets.length == 0) {
+			if (!cursor.next()) {
 				logger.info("Failed to analyze an incoming RTCP packet for the"
-						+ " purposes of statistics.", ex);
+						+ " purposes of statistics.");
 				return pkt;
 			}
 
 			try {
-				updateReceivedMediaStreamStats(compound.packets);
+				updateReceivedMediaStreamStats(cursor);
 			}
 			catch (Throwable t) {
                 if (t instanceof InterruptedException) {
@@ -828,75 +813,81 @@ public class StatisticsEngine extends SinglePacketTransformer
 	}
 
 	/**
-	 * Processes the {@link RTCPPacket}s from {@code in} as received RTCP
-	 * packets and updates the {@link MediaStreamStats}. Adds to {@code out} the
-	 * ones which were not consumed and should be output from this instance.
+	 * Processes the RTCP packets from {@code cursor}, starting with the one it is positioned at,
+	 * as received RTCP packets and updates the {@link MediaStreamStats}. The packets are read in
+	 * place and are materialized only for the <tt>RTCPPacketListener</tt>s, if any.
 	 *
-	 * @param in
-	 * 		the input packets
-	 * @return {@code true} iff some packets were consumed.
+	 * @param cursor
+	 * 		the cursor positioned at the first RTCP packet of the compound RTCP packet
 	 */
-	private void updateReceivedMediaStreamStats(RTCPPacket[] in)
+	private void updateReceivedMediaStreamStats(RTCPPacketCursor cursor)
 	{
 		MediaStreamStatsImpl streamStats = mediaStream.getMediaStreamStats();
 
-		for (RTCPPacket rtcp : in) {
-			switch (rtcp.type) {
-				case RTCPFBPacket.PSFB:
-					if (rtcp instanceof RTCPREMBPacket) {
-						RTCPREMBPacket remb = (RTCPREMBPacket) rtcp;
+		do {
+			int type = cursor.getPacketType();
 
+			switch (type) {
+				case RTCPFBPacket.PSFB:
+					if (cursor.isREMB()) {
 						if (logger.isTraceEnabled()) {
+							RTCPREMBPacket remb = cursor.toREMBPacket();
+
 							logger.trace("remb_received,stream="
 									+ mediaStream.hashCode() + " bps="
 									+ remb.getBitrate() + ", dest: "
 									+ Arrays.toString(remb.getDest()));
 						}
-						streamStats.rembReceived(remb);
+						streamStats.rembReceived(cursor);
 					}
 					break;
 
 				case RTCPPacket.SR:
-					if (rtcp instanceof RTCPSRPacket) {
-						streamStats.srReceived((RTCPSRPacket) rtcp);
+					if (cursor.isSR()) {
+						streamStats.srReceived(cursor);
 					}
 				case RTCPPacket.RR:
 					RTCPReport report;
 					try {
-						ByteArrayOutputStream baos = new ByteArrayOutputStream();
-						rtcp.assemble(new DataOutputStream(baos));
-						byte[] buf = baos.toByteArray();
-						report = parseRTCPReport(rtcp.type, buf, 0, buf.length);
+						report = parseRTCPReport(type,
+								cursor.getBuffer(), cursor.getOffset(), cursor.getLength());
 					}
 					catch (IOException ioe) {
-						logger.error("Failed to assemble an RTCP report: " + ioe);
+						logger.error("Failed to parse an RTCP report: " + ioe);
 						report = null;
 					}
 					if (report != null) {
 						streamStats.getRTCPReports().rtcpReportReceived(report);
 					}
-				break;
+					break;
 
 				case RTCPFBPacket.RTPFB:
-					if (rtcp instanceof NACKPacket) {
+					if (cursor.isNACK()) {
 						// NACKs are currently handled in RtxTransformer and do not
 						// reach the StatisticsEngine.
-						NACKPacket nack = (NACKPacket) rtcp;
-						streamStats.nackReceived(nack);
+						streamStats.nackReceived(cursor);
 					}
-					else if (rtcp instanceof RTCPTCCPacket) {
+					else if (cursor.isTCC()) {
 						/**
 						 * Intuition: Packet is RTCP, wakeup RTCPPacketListeners which may
 						 * include BWE workers
 						 */
-						streamStats.tccPacketReceived((RTCPTCCPacket) rtcp);
+						streamStats.tccPacketReceived(cursor);
 					}
 					break;
 
 				case RTCPExtendedReport.XR:
-					if (rtcp instanceof RTCPExtendedReport) {
-						streamStats.getRTCPReports()
-								.rtcpExtendedReportReceived((RTCPExtendedReport) rtcp);
+					RTCPExtendedReport xr;
+					try {
+						xr = new RTCPExtendedReport(cursor.getBuffer(), cursor.getOffset(),
+								cursor.getLength());
+					}
+					catch (IOException ioe) {
+						logger.error("Failed to parse an RTCP XR: " + ioe);
+						xr = null;
+					}
+					if (xr != null) {
+						streamStats.getRTCPReports().rtcpExtendedReportReceived(xr);
 					}
 					break;
 
@@ -905,6 +896,7 @@ public class StatisticsEngine extends SinglePacketTransformer
 					break;
 			}
 		}
+		while (cursor.next());
 	}
 
 	/**
@@ -31,6 +31,16 @@ import ch.imvs.sdes4j.srtp.SrtpSDesFactory;
 public class SDesControlImpl extends AbstractSrtpControl<SDesTransformEngine>
 		implements SDesControl
 {
+	/**
+	 * The crypto suite of RFC 7714 which uses AES-128 in Galois/Counter Mode.
+	 */
+	public static final String AEAD_AES_128_GCM = "AEAD_AES_128_GCM";
+
+	/**
+	 * The crypto suite of RFC 7714 which uses AES-256 in Galois/Counter Mode.
+	 */
+	public static final String AEAD_AES_256_GCM = "AEAD_AES_256_GCM";
+
 	/**
 	 * List of enabled crypto suites.
 	 */
@@ -39,7 +49,7 @@ public class SDesControlImpl extends AbstractSrtpControl<SDesTransformEngine>
 	/**
 	 * List of supported crypto suites.
 	 */
-	private final List<String> supportedCryptoSuites = new ArrayList<>(7);
+	private final List<String> supportedCryptoSuites = new ArrayList<>(9);
 
 	private SrtpCryptoAttribute[] attributes;
 
@@ -71,6 +81,17 @@ public class SDesControlImpl extends AbstractSrtpControl<SDesTransformEngine>
 
 		sdesFactory = new SrtpSDesFactory();
         sdesFactory.setRandomGenerator(new SecureRandom());
+
+		// The AEAD crypto suites can be negotiated only with a sdes4j which knows their names.
+		for (String suite : new String[]{AEAD_AES_128_GCM, AEAD_AES_256_GCM}) {
+			try {
+				sdesFactory.createCryptoSuite(suite);
+				supportedCryptoSuites.add(0, suite);
+			}
+			catch (IllegalArgumentException e) {
+				// The crypto suite is unknown to sdes4j.
+			}
+		}
 	}
 
 	public SrtpCryptoAttribute getInAttribute()
@@ -112,11 +112,34 @@ public class SDesTransformEngine implements SrtpControl.TransformEngine
 		}
 
 		SrtpCryptoSuite cryptoSuite = attribute.getCryptoSuite();
+		String suite = cryptoSuite.encode();
+
+		if (SDesControlImpl.AEAD_AES_128_GCM.equals(suite)
+				|| SDesControlImpl.AEAD_AES_256_GCM.equals(suite)) {
+			// RFC 7714: GCM authenticates with a 128 bit tag and uses a 96 bit salt.
+			int keyLength = SDesControlImpl.AEAD_AES_128_GCM.equals(suite) ? 16 : 32;
+			SRTPPolicy policy = new SRTPPolicy(
+					SRTPPolicy.AESGCM_ENCRYPTION,
+					keyLength,
+					SRTPPolicy.NULL_AUTHENTICATION,
+					0,
+					16,
+					12);
+
+			return new SRTPContextFactory(
+					sender,
+					getKey(attribute, keyLength),
+					getSalt(attribute, keyLength, 12),
+					policy,
+					policy);
+		}
+
+		int keyLength = cryptoSuite.getEncKeyLength() / 8;
 
 		return new SRTPContextFactory(
 				sender, 
-				getKey(attribute), 
-				getSalt(attribute),
+				getKey(attribute, keyLength),
+				getSalt(attribute, keyLength, cryptoSuite.getSaltKeyLength() / 8),
 				new SRTPPolicy(
 						getEncryptionCipher(cryptoSuite), 
 						cryptoSuite.getEncKeyLength() / 8,
@@ -133,18 +156,15 @@ public class SDesTransformEngine implements SrtpControl.TransformEngine
 						cryptoSuite.getSaltKeyLength() / 8));
 	}
 
-	private static byte[] getKey(SrtpCryptoAttribute attribute)
+	private static byte[] getKey(SrtpCryptoAttribute attribute, int length)
 	{
-		int length = attribute.getCryptoSuite().getEncKeyLength() / 8;
 		byte[] key = new byte[length];
 		System.arraycopy(attribute.getKeyParams()[0].getKey(), 0, key, 0, length);
 		return key;
 	}
 
-	private static byte[] getSalt(SrtpCryptoAttribute attribute)
+	private static byte[] getSalt(SrtpCryptoAttribute attribute, int keyLength, int saltLength)
 	{
-		int keyLength = attribute.getCryptoSuite().getEncKeyLength() / 8;
-		int saltLength = attribute.getCryptoSuite().getSaltKeyLength() / 8;
 		byte[] salt = new byte[keyLength];
 		System.arraycopy(attribute.getKeyParams()[0].getKey(), keyLength, salt, 0, saltLength);
 		return salt;
@@ -73,6 +73,11 @@ class BaseSRTPCryptoContext
 	 */
     protected final SRTPCipherF8 cipherF8;
 
+	/**
+	 * Galois/Counter Mode cipher, defined in RFC 7714
+	 */
+	protected final SRTPCipherGCM cipherGcm;
+
 	/**
 	 * Derived session encryption key
 	 */
@@ -83,6 +88,11 @@ class BaseSRTPCryptoContext
 	 */
 	protected final byte[] ivStore = new byte[16];
 
+	/**
+	 * Temp store for the IV of {@link #cipherGcm}.
+	 */
+	protected final byte[] gcmIvStore = new byte[SRTPCipherGCM.IV_LENGTH];
+
 	/**
 	 * The HMAC object we used to do packet authentication
 	 */
@@ -146,6 +156,7 @@ class BaseSRTPCryptoContext
 		authKey = null;
         cipherCtr = null;
 		cipherF8 = null;
+		cipherGcm = null;
 		encKey = null;
 		mac = null;
 		masterKey = null;
@@ -168,11 +179,14 @@ class BaseSRTPCryptoContext
 
 		int saltKeyLength = policy.getSaltKeyLength();
 
-		masterSalt = new byte[saltKeyLength];
+		// The 96 bit master salt of AES-GCM is padded with zeros to the 112 bits which the key
+		// derivation of RFC 3711 operates on.
+		masterSalt = new byte[Math.max(saltKeyLength, 14)];
 		System.arraycopy(masterS, 0, masterSalt, 0, saltKeyLength);
 
         SRTPCipherCTR cipherCtr = null;
         SRTPCipherF8 cipherF8 = null;
+		SRTPCipherGCM cipherGcm = null;
 		byte[] encKey = null;
 		byte[] saltKey = null;
 
@@ -185,6 +199,12 @@ class BaseSRTPCryptoContext
 				//$FALL-THROUGH$
 
 			case SRTPPolicy.AESCM_ENCRYPTION:
+			case SRTPPolicy.AESGCM_ENCRYPTION:
+				// AES-GCM derives its session keys with the AES-CM PRF of RFC 3711 too.
+				if (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION) {
+					cipherGcm = SRTPCipherGCM.createCipher(encKeyLength,
+						policy.getAuthTagLength());
+				}
 	            // use OpenSSL if available and AES128 is in use
 	            if (OpenSSLWrapperLoader.isLoaded() && encKeyLength == 16) {
 	                cipherCtr = new SRTPCipherCTROpenSSL();
@@ -208,6 +228,7 @@ class BaseSRTPCryptoContext
 		}
         this.cipherCtr = cipherCtr;
 		this.cipherF8 = cipherF8;
+		this.cipherGcm = cipherGcm;
 		this.encKey = encKey;
 		this.saltKey = saltKey;
 
@@ -198,6 +198,8 @@ public class SRTCPCryptoContext extends BaseSRTPCryptoContext
 		// As last step: initialize cipher with derived encryption key.
 		if (cipherF8 != null)
             cipherF8.init(encKey, saltKey);
+		if (cipherGcm != null)
+			cipherGcm.init(encKey);
         cipherCtr.init(encKey);
 		Arrays.fill(encKey, (byte) 0);
 	}
@@ -252,6 +254,85 @@ public class SRTCPCryptoContext extends BaseSRTPCryptoContext
 			ivStore);
 	}
 
+	/**
+	 * Performs Galois/Counter Mode AES encryption and authentication, or decryption and
+	 * verification, according to RFC 7714. The fixed header and the E flag and SRTCP index are the
+	 * additional authenticated data; if the E flag is not set, the rest of the packet is as well
+	 * and nothing is encrypted. The authentication tag follows the (encrypted) payload, the E flag
+	 * and SRTCP index are not part of <tt>pkt</tt>.
+	 *
+	 * @param pkt
+	 *        the RTCP packet to be encrypted/decrypted
+	 * @param indexEflag
+	 *        the E flag and SRTCP index of <tt>pkt</tt>
+	 * @param encrypt
+	 *        <tt>true</tt> to encrypt <tt>pkt</tt> and append the authentication tag to it;
+	 *        <tt>false</tt> to verify and remove the authentication tag and decrypt <tt>pkt</tt>
+	 * @return <tt>false</tt> if <tt>pkt</tt> is to be decrypted and failed authentication;
+	 *         otherwise, <tt>true</tt>
+	 */
+	public boolean processPacketAESGCM(RawPacket pkt, int indexEflag, boolean encrypt)
+	{
+		int tagLength = policy.getAuthTagLength();
+
+		if (encrypt)
+			pkt.grow(tagLength);
+
+		int ssrc = (int) pkt.getRTCPSSRC();
+		int index = indexEflag & ~0x80000000;
+
+		/*
+		 * Compute the GCM IV (refer to section 9.1 in RFC 7714):
+		 *
+		 * k_s   XX XX XX XX XX XX XX XX XX XX XX XX
+		 * SSRC        XX XX XX XX
+		 * index                         XX XX XX XX
+		 * ---------------------------------------------XOR
+		 * IV    XX XX XX XX XX XX XX XX XX XX XX XX
+		 *        0  1  2  3  4  5  6  7  8  9 10 11
+		 */
+		gcmIvStore[0] = saltKey[0];
+		gcmIvStore[1] = saltKey[1];
+		gcmIvStore[2] = (byte) (((ssrc >> 24) & 0xff) ^ saltKey[2]);
+		gcmIvStore[3] = (byte) (((ssrc >> 16) & 0xff) ^ saltKey[3]);
+		gcmIvStore[4] = (byte) (((ssrc >> 8) & 0xff) ^ saltKey[4]);
+		gcmIvStore[5] = (byte) ((ssrc & 0xff) ^ saltKey[5]);
+		gcmIvStore[6] = saltKey[6];
+		gcmIvStore[7] = saltKey[7];
+		gcmIvStore[8] = (byte) (((index >> 24) & 0xff) ^ saltKey[8]);
+		gcmIvStore[9] = (byte) (((index >> 16) & 0xff) ^ saltKey[9]);
+		gcmIvStore[10] = (byte) (((index >> 8) & 0xff) ^ saltKey[10]);
+		gcmIvStore[11] = (byte) ((index & 0xff) ^ saltKey[11]);
+
+		rbStore[0] = (byte) (indexEflag >> 24);
+		rbStore[1] = (byte) (indexEflag >> 16);
+		rbStore[2] = (byte) (indexEflag >> 8);
+		rbStore[3] = (byte) indexEflag;
+
+		byte[] buf = pkt.getBuffer();
+		int off = pkt.getOffset();
+		int length = pkt.getLength();
+		int aadLength;
+
+		if ((indexEflag & 0x80000000) != 0)
+			aadLength = 8;
+		else
+			aadLength = encrypt ? length : length - tagLength;
+		if (aadLength < 8 || length - aadLength < (encrypt ? 0 : tagLength))
+			return false;
+
+		cipherGcm.start(encrypt, gcmIvStore);
+		cipherGcm.processAAD(buf, off, aadLength);
+		cipherGcm.processAAD(rbStore, 0, 4);
+
+		int len = cipherGcm.process(buf, off + aadLength, length - aadLength);
+
+		if (len < 0)
+			return false;
+		pkt.setLength(aadLength + len);
+		return true;
+	}
+
 	/**
 	 * Performs F8 Mode AES encryption/decryption
 	 *
@@ -305,6 +386,9 @@ public class SRTCPCryptoContext extends BaseSRTPCryptoContext
 	 */
 	synchronized public boolean reverseTransformPacket(RawPacket pkt)
 	{
+		if (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION)
+			return reverseTransformPacketAESGCM(pkt);
+
 		boolean decrypt = false;
 		int tagLength = policy.getAuthTagLength();
 		int indexEflag = pkt.getSRTCPIndex(tagLength);
@@ -371,6 +455,11 @@ public class SRTCPCryptoContext extends BaseSRTPCryptoContext
 	 */
 	synchronized public void transformPacket(RawPacket pkt)
 	{
+		if (policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION) {
+			transformPacketAESGCM(pkt);
+			return;
+		}
+
 		boolean encrypt = false;
 		/* Encrypt the packet using Counter Mode encryption */
 		if (policy.getEncType() == SRTPPolicy.AESCM_ENCRYPTION
@@ -404,6 +493,53 @@ public class SRTCPCryptoContext extends BaseSRTPCryptoContext
 		sentIndex &= ~0x80000000; // clear possible overflow
 	}
 
+	/**
+	 * Transforms a SRTCP packet protected with Galois/Counter Mode into a RTCP packet. The E flag
+	 * and SRTCP index trail the authentication tag in such a packet.
+	 *
+	 * @param pkt
+	 *        the received RTCP packet
+	 * @return <tt>true</tt> if the packet can be accepted or <tt>false</tt> if authentication or
+	 *         replay check failed
+	 */
+	private boolean reverseTransformPacketAESGCM(RawPacket pkt)
+	{
+		if (pkt.getLength() < 8 + policy.getAuthTagLength() + 4)
+			return false;
+
+		int indexEflag = pkt.getSRTCPIndex(0);
+		int index = indexEflag & ~0x80000000;
+
+		/* Replay control */
+		if (!checkReplay(index))
+			return false;
+
+		pkt.shrink(4);
+		if (!processPacketAESGCM(pkt, indexEflag, false))
+			return false;
+		update(index);
+		return true;
+	}
+
+	/**
+	 * Transforms a RTCP packet into a SRTCP packet protected with Galois/Counter Mode. The
+	 * packet is always encrypted.
+	 *
+	 * @param pkt
+	 *        the RTCP packet that is going to be sent out
+	 */
+	private void transformPacketAESGCM(RawPacket pkt)
+	{
+		int index = sentIndex | 0x80000000;
+
+		// Grow packet storage in one step
+		pkt.grow(policy.getAuthTagLength() + 4);
+		processPacketAESGCM(pkt, index, true);
+		pkt.append(rbStore, 4);
+		sentIndex++;
+		sentIndex &= ~0x80000000; // clear possible overflow
+	}
+
 	/**
 	 * Updates the SRTP packet index. The method is called after all checks were successful.
 	 *
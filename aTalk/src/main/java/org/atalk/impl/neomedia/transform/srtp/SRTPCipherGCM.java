@@ -0,0 +1,302 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import android.os.Build;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.ConfigUtils;
+import org.atalk.util.Logger;
+import org.atalk.util.OSUtils;
+
+import java.security.Provider;
+import java.security.Security;
+import java.util.*;
+
+/**
+ * SRTPCipherGCM implementations implement the AEAD_AES_128_GCM and AEAD_AES_256_GCM transforms of
+ * SRTP and SRTCP defined in RFC 7714. Unlike Counter Mode encryption followed by HMAC-SHA1,
+ * Galois/Counter Mode encrypts and authenticates the payload in a single pass and appends the
+ * authentication tag itself.
+ *
+ * A packet is processed by a call to {@link #start(boolean, byte[])} followed by calls to
+ * {@link #processAAD(byte[], int, int)} for the additional authenticated data and a single call
+ * to {@link #process(byte[], int, int)} for the data to be encrypted/decrypted.
+ *
+ * {@link #createCipher(int, int)} benchmarks GCM implemented with BouncyCastle on top of the AES
+ * <tt>BlockCipher</tt> elected by {@link AES} and the AES/GCM <tt>Cipher</tt>s of the installed
+ * <tt>java.security.Provider</tt>s once and employs the fastest unless the implementation is
+ * specified through {@link #PROVIDER_NAME_PNAME}.
+ *
+ * @author Eng Chong Meng
+ */
+public abstract class SRTPCipherGCM
+{
+    /**
+     * The length in bytes of the IV of AES-GCM in SRTP and SRTCP.
+     */
+    public static final int IV_LENGTH = 12;
+
+    /**
+     * The length in bytes of the payload of the packets which are processed for the purposes of
+     * the benchmark.
+     */
+    private static final int BENCHMARK_PAYLOAD_LENGTH = 1200;
+
+    /**
+     * The number of packets which are processed for the purposes of the benchmark.
+     */
+    private static final int BENCHMARK_PACKETS = 32;
+
+    /**
+     * The number of times the benchmark packets are processed by each implementation.
+     */
+    private static final int BENCHMARK_ROUNDS = 8;
+
+    /**
+     * The name of the <tt>ConfigurationService</tt> and/or <tt>System</tt> property which specifies
+     * the name of the <tt>java.security.Provider</tt> of the AES-GCM implementation to be employed
+     * instead of the elected one. The value <tt>BouncyCastle</tt> specifies the implementation
+     * on top of {@link AES}.
+     */
+    public static final String PROVIDER_NAME_PNAME
+            = SRTPCipherGCM.class.getName() + ".providerName";
+
+    /**
+     * The name of the <tt>java.security.Provider</tt> of the AES-GCM implementation to be
+     * employed.
+     *
+     * @see #PROVIDER_NAME_PNAME
+     */
+    private static final String PROVIDER_NAME;
+
+    /**
+     * The indicator which determines whether {@link SRTPCipherGCMSecurityProvider} may be loaded.
+     * It depends on <tt>javax.crypto.spec.GCMParameterSpec</tt> which Android provides since API
+     * level 19 only.
+     */
+    private static final boolean SECURITY_PROVIDER_SUPPORTED
+            = !OSUtils.IS_ANDROID || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+    /**
+     * The <tt>Logger</tt> used by the <tt>SRTPCipherGCM</tt> class to print out debug
+     * information.
+     */
+    private static final Logger logger = Logger.getLogger(SRTPCipherGCM.class);
+
+    /**
+     * The indicator which determines whether the benchmark of the implementations has been run.
+     */
+    private static boolean elected = false;
+
+    /**
+     * The <tt>java.security.Provider</tt> of the elected implementation or <tt>null</tt> if the
+     * BouncyCastle implementation was elected.
+     */
+    private static Provider provider;
+
+    static
+    {
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+
+        PROVIDER_NAME = ConfigUtils.getString(cfg, PROVIDER_NAME_PNAME, null);
+    }
+
+    /**
+     * Initializes a new <tt>SRTPCipherGCM</tt> instance which is implemented by the fastest
+     * implementation available at runtime.
+     *
+     * @param keySize the length in bytes of the key
+     * @param tagLength the length in bytes of the authentication tag
+     * @return a new <tt>SRTPCipherGCM</tt> instance
+     */
+    public static SRTPCipherGCM createCipher(int keySize, int tagLength)
+    {
+        Provider provider;
+
+        synchronized (SRTPCipherGCM.class)
+        {
+            if (!elected)
+            {
+                if (!SECURITY_PROVIDER_SUPPORTED)
+                    SRTPCipherGCM.provider = null;
+                else if (PROVIDER_NAME == null || PROVIDER_NAME.length() == 0)
+                    SRTPCipherGCM.provider = benchmark(keySize, tagLength);
+                else if (!"BouncyCastle".equals(PROVIDER_NAME))
+                {
+                    SRTPCipherGCM.provider = Security.getProvider(PROVIDER_NAME);
+                    if (SRTPCipherGCM.provider == null)
+                    {
+                        logger.warn("No java.security.Provider named " + PROVIDER_NAME
+                                + " is installed.");
+                        SRTPCipherGCM.provider = benchmark(keySize, tagLength);
+                    }
+                }
+                elected = true;
+                logger.info("Will employ AES-GCM implemented by "
+                        + ((SRTPCipherGCM.provider == null)
+                            ? "BouncyCastle" : SRTPCipherGCM.provider.getName())
+                        + ".");
+            }
+            provider = SRTPCipherGCM.provider;
+        }
+
+        if (provider != null)
+        {
+            try
+            {
+                return new SRTPCipherGCMSecurityProvider(provider, tagLength);
+            }
+            catch (Exception | LinkageError e)
+            {
+                logger.warn("Failed to initialize AES-GCM implemented by " + provider.getName()
+                        + ": " + e.getLocalizedMessage());
+            }
+        }
+        return new SRTPCipherGCMJava(AES.createBlockCipher(keySize), tagLength);
+    }
+
+    /**
+     * Benchmarks the available implementations of AES-GCM and returns the fastest-performing one.
+     *
+     * @param keySize the length in bytes of the key
+     * @param tagLength the length in bytes of the authentication tag
+     * @return the <tt>java.security.Provider</tt> of the fastest-performing implementation or
+     * <tt>null</tt> if the BouncyCastle implementation performed fastest
+     */
+    private static Provider benchmark(int keySize, int tagLength)
+    {
+        List<Provider> providers = new ArrayList<>();
+        Provider[] installed = Security.getProviders("Cipher.AES/GCM/NoPadding");
+
+        // null stands for the BouncyCastle implementation.
+        providers.add(null);
+        if (installed != null)
+            providers.addAll(Arrays.asList(installed));
+
+        Random random = new Random();
+        byte[] key = new byte[keySize];
+        byte[] data = new byte[BENCHMARK_PAYLOAD_LENGTH + tagLength];
+        byte[] iv = new byte[IV_LENGTH];
+        long minTime = Long.MAX_VALUE;
+        Provider minProvider = null;
+
+        random.nextBytes(key);
+        random.nextBytes(iv);
+
+        // Log information for the purposes of debugging.
+        StringBuilder log = new StringBuilder();
+
+        for (Provider provider : providers)
+        {
+            try
+            {
+                SRTPCipherGCM cipher = (provider == null)
+                        ? new SRTPCipherGCMJava(AES.createBlockCipher(keySize), tagLength)
+                        : new SRTPCipherGCMSecurityProvider(provider, tagLength);
+                long time = Long.MAX_VALUE;
+
+                cipher.init(key);
+                // The fastest round is taken into account so that the JIT warm-up of the
+                // earlier rounds does not skew the election.
+                for (int round = 0; round < BENCHMARK_ROUNDS; round++)
+                {
+                    long startTime = System.nanoTime();
+
+                    for (int i = 0; i < BENCHMARK_PACKETS; i++)
+                    {
+                        // Never reuse an IV.
+                        iv[IV_LENGTH - 1]++;
+                        if (iv[IV_LENGTH - 1] == 0)
+                            iv[IV_LENGTH - 2]++;
+                        cipher.start(true, iv);
+                        cipher.processAAD(data, 0, 12);
+                        cipher.process(data, 12, BENCHMARK_PAYLOAD_LENGTH - 12);
+                    }
+                    time = Math.min(time, System.nanoTime() - startTime);
+                }
+
+                if (time < minTime)
+                {
+                    minTime = time;
+                    minProvider = provider;
+                }
+
+                if (log.length() != 0)
+                    log.append(", ");
+                log.append((provider == null) ? "BouncyCastle" : provider.getName())
+                    .append(' ')
+                    .append(time);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof InterruptedException)
+                    Thread.currentThread().interrupt();
+                else if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+            }
+        }
+
+        if (log.length() != 0)
+        {
+            logger.info("AES-GCM benchmark (of execution times expressed in nanoseconds): "
+                    + log);
+        }
+        return minProvider;
+    }
+
+    /**
+     * Checks that a specific key has the length of an AES key.
+     *
+     * @param key the key to check
+     */
+    protected static void checkKey(byte[] key)
+    {
+        if (key.length != 16 && key.length != 24 && key.length != 32)
+            throw new IllegalArgumentException("Not an AES key length");
+    }
+
+    /**
+     * (Re)Initializes the cipher with a session encryption key.
+     *
+     * @param key the session encryption key. key.length is 16 or 32
+     */
+    public abstract void init(byte[] key);
+
+    /**
+     * Starts the processing of a packet.
+     *
+     * @param forEncryption <tt>true</tt> to encrypt and compute the authentication tag;
+     * <tt>false</tt> to decrypt and verify the authentication tag
+     * @param iv the IV of the packet. iv.length == IV_LENGTH. It is not modified and may be
+     * reused by the caller after the method returns.
+     */
+    public abstract void start(boolean forEncryption, byte[] iv);
+
+    /**
+     * Adds additional authenticated data to the packet being processed.
+     *
+     * @param data byte array holding the data
+     * @param off the offset
+     * @param len the length
+     */
+    public abstract void processAAD(byte[] data, int off, int len);
+
+    /**
+     * Encrypts or decrypts data in place and finishes the processing of the packet. When
+     * encrypting, the authentication tag is written after the ciphertext so <tt>data</tt> must
+     * have room for it. When decrypting, <tt>len</tt> includes the authentication tag at the
+     * end of the data.
+     *
+     * @param data byte array to be processed
+     * @param off the offset
+     * @param len the length
+     * @return the length of the resulting ciphertext and tag or plaintext, or <tt>-1</tt> if the
+     * authentication tag did not verify
+     */
+    public abstract int process(byte[] data, int off, int len);
+}
@@ -0,0 +1,87 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import org.bouncycastle.crypto.*;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.*;
+
+/**
+ * @see SRTPCipherGCM
+ * SRTPCipherGCM implementation using the GCM mode of BouncyCastle on top of a
+ * <tt>BlockCipher</tt> (i.e. one obtained through {@link AES#createBlockCipher(int)}).
+ *
+ * @author Eng Chong Meng
+ */
+public class SRTPCipherGCMJava extends SRTPCipherGCM
+{
+    private final GCMBlockCipher cipher;
+
+    /**
+     * The length in bits of the authentication tag.
+     */
+    private final int macSizeBits;
+
+    public SRTPCipherGCMJava(BlockCipher cipher, int tagLength)
+    {
+        this.cipher = new GCMBlockCipher(cipher);
+        this.macSizeBits = tagLength * 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The GHASH subkey is derived once here rather than for every packet.
+     */
+    public void init(byte[] key)
+    {
+        checkKey(key);
+
+        // GCMBlockCipher requires a nonce along with the key; the actual nonce of each packet is
+        // supplied by start.
+        cipher.init(true, new AEADParameters(new KeyParameter(key), macSizeBits,
+            new byte[IV_LENGTH]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void start(boolean forEncryption, byte[] iv)
+    {
+        if (iv.length != IV_LENGTH)
+            throw new IllegalArgumentException("iv.length != IV_LENGTH");
+
+        // A null key keeps the key (and GHASH subkey) set by init. GCMBlockCipher keeps a
+        // reference to the nonce in order to detect its reuse so it must not be the (reused)
+        // iv array of the caller.
+        cipher.init(forEncryption, new AEADParameters(null, macSizeBits, iv.clone()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processAAD(byte[] data, int off, int len)
+    {
+        cipher.processAADBytes(data, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int process(byte[] data, int off, int len)
+    {
+        try
+        {
+            int outLen = cipher.processBytes(data, off, len, data, off);
+
+            return outLen + cipher.doFinal(data, off + outLen);
+        }
+        catch (InvalidCipherTextException icte)
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * @see SRTPCipherGCM
+ * SRTPCipherGCM implementation using the AES/GCM/NoPadding <tt>Cipher</tt> of a specific
+ * <tt>java.security.Provider</tt> (e.g. SunJCE or AndroidOpenSSL) which may employ the AES and
+ * carry-less multiplication instructions of the CPU.
+ *
+ * @author Eng Chong Meng
+ */
+public class SRTPCipherGCMSecurityProvider extends SRTPCipherGCM
+{
+    private final Cipher cipher;
+
+    /**
+     * The length in bits of the authentication tag.
+     */
+    private final int macSizeBits;
+
+    private SecretKeySpec key;
+
+    public SRTPCipherGCMSecurityProvider(Provider provider, int tagLength)
+        throws GeneralSecurityException
+    {
+        this.cipher = Cipher.getInstance("AES/GCM/NoPadding", provider);
+        this.macSizeBits = tagLength * 8;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init(byte[] key)
+    {
+        checkKey(key);
+
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void start(boolean forEncryption, byte[] iv)
+    {
+        if (iv.length != IV_LENGTH)
+            throw new IllegalArgumentException("iv.length != IV_LENGTH");
+
+        try
+        {
+            cipher.init(forEncryption ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(macSizeBits, iv));
+        }
+        catch (GeneralSecurityException gse)
+        {
+            throw new IllegalStateException(gse);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processAAD(byte[] data, int off, int len)
+    {
+        cipher.updateAAD(data, off, len);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int process(byte[] data, int off, int len)
+    {
+        try
+        {
+            // Cipher.doFinal is copy-safe i.e. the input and the output may overlap.
+            return cipher.doFinal(data, off, len, data, off);
+        }
+        catch (BadPaddingException bpe)
+        {
+            // AEADBadTagException i.e. the authentication tag did not verify.
+            return -1;
+        }
+        catch (GeneralSecurityException gse)
+        {
+            throw new IllegalStateException(gse);
+        }
+    }
+}
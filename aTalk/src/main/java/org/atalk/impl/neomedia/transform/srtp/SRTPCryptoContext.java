@@ -406,6 +406,8 @@ public class SRTPCryptoContext extends BaseSRTPCryptoContext
 		// As last step: initialize cipher with derived encryption key.
 		if (cipherF8 != null)
             cipherF8.init(encKey, saltKey);
+		if (cipherGcm != null)
+			cipherGcm.init(encKey);
         cipherCtr.init(encKey);
 		Arrays.fill(encKey, (byte) 0);
 	}
@@ -473,6 +475,66 @@ public class SRTPCryptoContext extends BaseSRTPCryptoContext
 			ivStore);
 	}
 
+	/**
+	 * Performs Galois/Counter Mode AES encryption and authentication, or decryption and
+	 * verification, according to RFC 7714. The RTP header is the additional authenticated data and
+	 * the authentication tag follows the encrypted payload.
+	 *
+	 * @param pkt
+	 *        the RTP packet to be encrypted/decrypted
+	 * @param encrypt
+	 *        <tt>true</tt> to encrypt <tt>pkt</tt> and append the authentication tag to it;
+	 *        <tt>false</tt> to verify and remove the authentication tag and decrypt <tt>pkt</tt>
+	 * @return <tt>false</tt> if <tt>pkt</tt> is to be decrypted and failed authentication;
+	 *         otherwise, <tt>true</tt>
+	 */
+	public boolean processPacketAESGCM(RawPacket pkt, boolean encrypt)
+	{
+		if (encrypt)
+			pkt.grow(policy.getAuthTagLength());
+
+		int seqNo = pkt.getSequenceNumber();
+		int ssrc = pkt.getSSRC();
+		long index = (((long) guessedROC) << 16) | seqNo;
+
+		/*
+		 * Compute the GCM IV (refer to section 8.1 in RFC 7714):
+		 *
+		 * k_s   XX XX XX XX XX XX XX XX XX XX XX XX
+		 * SSRC        XX XX XX XX
+		 * index                   XX XX XX XX XX XX
+		 * ---------------------------------------------XOR
+		 * IV    XX XX XX XX XX XX XX XX XX XX XX XX
+		 *        0  1  2  3  4  5  6  7  8  9 10 11
+		 */
+		gcmIvStore[0] = saltKey[0];
+		gcmIvStore[1] = saltKey[1];
+
+		int i;
+
+		for (i = 2; i < 6; i++) {
+			gcmIvStore[i] = (byte) ((0xFF & (ssrc >> ((5 - i) * 8))) ^ saltKey[i]);
+		}
+
+		for (i = 6; i < 12; i++) {
+			gcmIvStore[i] = (byte) ((0xFF & (byte) (index >> ((11 - i) * 8))) ^ saltKey[i]);
+		}
+
+		byte[] buf = pkt.getBuffer();
+		int off = pkt.getOffset();
+		int headerLength = pkt.getHeaderLength();
+
+		cipherGcm.start(encrypt, gcmIvStore);
+		cipherGcm.processAAD(buf, off, headerLength);
+
+		int len = cipherGcm.process(buf, off + headerLength, pkt.getLength() - headerLength);
+
+		if (len < 0)
+			return false;
+		pkt.setLength(headerLength + len);
+		return true;
+	}
+
 	/**
 	 * Performs F8 Mode AES encryption/decryption
 	 *
@@ -540,8 +602,9 @@ public class SRTPCryptoContext extends BaseSRTPCryptoContext
 
 		// Replay control
 		if (checkReplay(seqNo, guessedIndex)) {
-			// Authenticate the packet.
-			if (authenticatePacket(pkt)) {
+			// Authenticate the packet. Galois/Counter Mode authenticates and decrypts it at once.
+			if ((policy.getEncType() == SRTPPolicy.AESGCM_ENCRYPTION)
+					? processPacketAESGCM(pkt, false) : authenticatePacket(pkt)) {
 				// If a RawPacket is flagged with Buffer.FLAG_DISCARD, then it
 				// should have been discarded earlier. Anyway, at least skip its
 				// decrypting. We flag a RawPacket with Buffer.FLAG_SILENCE when
@@ -631,6 +694,11 @@ public class SRTPCryptoContext extends BaseSRTPCryptoContext
 			case SRTPPolicy.TWOFISHF8_ENCRYPTION:
 				processPacketAESF8(pkt);
 				break;
+
+			// Encrypt and authenticate the packet using Galois/Counter Mode encryption.
+			case SRTPPolicy.AESGCM_ENCRYPTION:
+				processPacketAESGCM(pkt, true);
+				break;
 		}
 
 		/* Authenticate the packet. */
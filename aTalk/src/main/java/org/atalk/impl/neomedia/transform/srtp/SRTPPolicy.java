@@ -36,6 +36,12 @@ public class SRTPPolicy
 	 * F8 Mode TwoFish Cipher
 	 */
 	public final static int TWOFISHF8_ENCRYPTION = 4;
+
+	/**
+	 * Galois/Counter Mode AES Cipher, defined in RFC 7714. Provides the authentication as well so
+	 * it is used with {@link #NULL_AUTHENTICATION} and the authentication tag length of GCM.
+	 */
+	public final static int AESGCM_ENCRYPTION = 5;
 	/**
 	 * Null Authentication, no authentication
 	 */
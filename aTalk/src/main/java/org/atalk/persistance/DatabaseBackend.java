@@ -23,6 +23,7 @@ import android.util.Base64;
 import android.util.Log;
 
 import net.java.sip.communicator.impl.configuration.SQLiteConfigurationStore;
+import net.java.sip.communicator.impl.msghistory.MessageSearchIndex;
 import net.java.sip.communicator.impl.msghistory.MessageSourceService;
 import net.java.sip.communicator.service.callhistory.CallHistoryService;
 import net.java.sip.communicator.service.contactlist.MetaContactGroup;
@@ -66,10 +67,17 @@ public class DatabaseBackend extends SQLiteOpenHelper
 	 * Name of the database and its version number
 	 */
 	public static final String DATABASE_NAME = "dbRecords.db";
-	private static final int DATABASE_VERSION = 2;
+	private static final int DATABASE_VERSION = 4;
 	private static DatabaseBackend instance = null;
+	private static MessageJournal messageJournal = null;
 	private ProtocolProviderService mProvider;
 
+	// Create the index of the chat messages for keyset paging by session, timestamp and uuid
+	public static String CREATE_MESSAGES_INDEX_STATEMENT = "CREATE INDEX "
+			+ ChatMessage.TABLE_NAME + "_session_idx ON " + ChatMessage.TABLE_NAME + "("
+			+ ChatMessage.SESSION_UUID + ", " + ChatMessage.TIME_STAMP + ", "
+			+ ChatMessage.UUID + ");";
+
 	// Create preKeys table
 	public static String CREATE_OMEMO_DEVICES_STATEMENT = "CREATE TABLE "
 			+ SQLiteOmemoStore.OMEMO_DEVICES_TABLE_NAME + "("
@@ -151,6 +159,20 @@ public class DatabaseBackend extends SQLiteOpenHelper
 		return instance.getWritableDatabase();
 	}
 
+	/**
+	 * Get the write-behind journal of the chat messages, through which all the chat messages must
+	 * be inserted and updated
+	 *
+	 * @return the MessageJournal instance
+	 */
+	public static synchronized MessageJournal getMessageJournal()
+	{
+		if (messageJournal == null) {
+			messageJournal = new MessageJournal(getWritableDB());
+		}
+		return messageJournal;
+	}
+
 	public static SQLiteDatabase getReadableDB()
 	{
 		return instance.getReadableDatabase();
@@ -189,7 +211,7 @@ public class DatabaseBackend extends SQLiteOpenHelper
 	 * c. Group Tables: metaContactGroup & childContacts
 	 * d. contacts
 	 * e. chatSessions
-	 * f. chatMessages
+	 * f. chatMessages and their full-text search index
 	 * g. callHistory
 	 * f. recentMessages
 	 * i. Axolotl tables: identities, sessions, preKeys, signed_preKeys
@@ -327,6 +349,13 @@ public class DatabaseBackend extends SQLiteOpenHelper
 				+ ") ON DELETE CASCADE, UNIQUE(" + ChatMessage.UUID
 				+ ") ON CONFLICT REPLACE);");
 
+		db.execSQL(CREATE_MESSAGES_INDEX_STATEMENT);
+
+		// Full-text search index of the chat / MUC message bodies
+		for (String statement : MessageSearchIndex.CREATE_STATEMENTS) {
+			db.execSQL(statement);
+		}
+
 		// Call history table
 		db.execSQL("CREATE TABLE " + CallHistoryService.TABLE_NAME + " ("
 				+ CallHistoryService.UUID + " TEXT PRIMARY KEY, "
@@ -366,6 +395,9 @@ public class DatabaseBackend extends SQLiteOpenHelper
 
 		// Perform the first data migration to SQLite database
 		initDatabase(db);
+
+		// Index the migrated messages
+		db.execSQL(MessageSearchIndex.REBUILD_STATEMENT);
 	}
 
 	/**
@@ -393,8 +425,7 @@ public class DatabaseBackend extends SQLiteOpenHelper
 
 	public void createMessage(ChatMessageImpl message)
 	{
-		SQLiteDatabase db = this.getWritableDatabase();
-		db.insert(ChatMessage.TABLE_NAME, null, message.getContentValues());
+		getMessageJournal().insert(message.getContentValues(), true);
 	}
 
 	public void createAccount(AccountID accountId)
@@ -483,6 +514,7 @@ public class DatabaseBackend extends SQLiteOpenHelper
 	public ArrayList<ChatMessage> getMessages(ChatSession chatSession, int limit, long timestamp)
 	{
 		ArrayList<ChatMessage> list = new ArrayList<>();
+		getMessageJournal().flush();
 		SQLiteDatabase db = this.getReadableDatabase();
 		Cursor cursor;
 		if (timestamp == -1) {
@@ -512,6 +544,7 @@ public class DatabaseBackend extends SQLiteOpenHelper
 
 	public Iterable<ChatMessage> getMessagesIterable(final ChatSession conversation)
 	{
+		getMessageJournal().flush();
 		return new Iterable<ChatMessage>()
 		{
 			@Override
@@ -650,18 +683,12 @@ public class DatabaseBackend extends SQLiteOpenHelper
 
 	public void updateMessage(ChatMessageImpl message)
 	{
-		SQLiteDatabase db = this.getWritableDatabase();
-		String[] args = {message.getUuid()};
-		db.update(ChatMessage.TABLE_NAME, message.getContentValues(), ChatMessage.UUID
-				+ "=?", args);
+		getMessageJournal().update(message.getContentValues(), message.getUuid());
 	}
 
 	public void updateMessage(ChatMessageImpl message, String uuid)
 	{
-		SQLiteDatabase db = this.getWritableDatabase();
-		String[] args = {uuid};
-		db.update(ChatMessage.TABLE_NAME, message.getContentValues(), ChatMessage.UUID
-				+ "=?", args);
+		getMessageJournal().update(message.getContentValues(), uuid);
 	}
 
 	public void readRoster(Roster roster)
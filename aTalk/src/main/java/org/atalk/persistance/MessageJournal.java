@@ -0,0 +1,374 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.persistance;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import net.java.sip.communicator.impl.msghistory.MessageSearchIndex;
+import net.java.sip.communicator.util.Logger;
+
+import org.atalk.android.gui.chat.ChatMessage;
+
+import java.util.*;
+
+/**
+ * The write-behind journal of the inserts and updates of {@link ChatMessage#TABLE_NAME}. Writes
+ * are queued and stored by a background writer in one transaction per batch instead of one
+ * implicit transaction per message, so that a flood of messages e.g. on joining a busy chat room
+ * does not cost one commit per message. A batch is written at most {@link #MAX_DELAY} ms after its
+ * first write, or as soon as it holds {@link #MAX_BATCH_SIZE} writes. An update of a message whose
+ * insert or update is still queued is merged into it.
+ * <p>
+ * The messages table must only be read or deleted from after {@link #flush()} returns, so that
+ * readers see all the messages written so far.
+ *
+ * @author Eng Chong Meng
+ */
+public class MessageJournal
+{
+	/**
+	 * The logger
+	 */
+	private static final Logger logger = Logger.getLogger(MessageJournal.class);
+
+	/**
+	 * The maximum time in ms a write is queued before it is stored.
+	 */
+	public static final long MAX_DELAY = 250;
+
+	/**
+	 * The number of queued writes which are stored without waiting for {@link #MAX_DELAY}.
+	 */
+	public static final int MAX_BATCH_SIZE = 256;
+
+	/**
+	 * The maximum time in ms {@link #flush()} waits for the queued writes to be stored.
+	 */
+	public static final long FLUSH_TIMEOUT = 5000;
+
+	/**
+	 * The database of the messages.
+	 */
+	private final SQLiteDatabase db;
+
+	/**
+	 * The queued writes in the order they were made.
+	 */
+	private final List<Write> writes = new ArrayList<>();
+
+	/**
+	 * The queued writes by the UUID of their message.
+	 */
+	private final Map<String, Write> writesByUuid = new HashMap<>();
+
+	/**
+	 * The time in ms the first of the queued writes was made.
+	 */
+	private long firstWriteTime;
+
+	/**
+	 * The number of writes made so far.
+	 */
+	private long writeCount;
+
+	/**
+	 * The number of writes made so far which are stored.
+	 */
+	private long storedCount;
+
+	/**
+	 * Whether a thread waits for the queued writes to be stored.
+	 */
+	private boolean flushing;
+
+	/**
+	 * The thread which stores the queued writes.
+	 */
+	private Thread writer;
+
+	/**
+	 * Creates a <tt>MessageJournal</tt> which writes to a specific database.
+	 *
+	 * @param db
+	 * 		the database of the messages
+	 */
+	public MessageJournal(SQLiteDatabase db)
+	{
+		this.db = db;
+	}
+
+	/**
+	 * Queues the insert of a message.
+	 *
+	 * @param values
+	 * 		the column values of the message, which are not copied
+	 * @param index
+	 * 		whether the message body is added to the {@link MessageSearchIndex}
+	 */
+	public synchronized void insert(ContentValues values, boolean index)
+	{
+		String uuid = values.getAsString(ChatMessage.UUID);
+		Write write = (uuid == null) ? null : writesByUuid.get(uuid);
+
+		// A message replaces the message with the same UUID, as in the messages table.
+		if (write != null) {
+			write.insert = true;
+			write.values = values;
+			write.index = index;
+		}
+		else {
+			queue(new Write(true, uuid, values, index));
+		}
+		writeCount++;
+	}
+
+	/**
+	 * Queues the update of the columns of a message.
+	 *
+	 * @param values
+	 * 		the updated column values of the message, which are not copied
+	 * @param uuid
+	 * 		the UUID of the message
+	 */
+	public synchronized void update(ContentValues values, String uuid)
+	{
+		Write write = writesByUuid.get(uuid);
+
+		if (write != null) {
+			// the updated columns of the values of an insert are also copied to its index
+			write.values.putAll(values);
+		}
+		else {
+			queue(new Write(false, uuid, values, false));
+		}
+		writeCount++;
+	}
+
+	/**
+	 * Adds a write to the queue and starts the writer if needed.
+	 *
+	 * @param write
+	 * 		the write
+	 */
+	private void queue(Write write)
+	{
+		if (writes.isEmpty()) {
+			firstWriteTime = System.currentTimeMillis();
+			notifyAll();
+		}
+		else if (writes.size() + 1 >= MAX_BATCH_SIZE) {
+			notifyAll();
+		}
+		writes.add(write);
+		if (write.uuid != null)
+			writesByUuid.put(write.uuid, write);
+
+		if (writer == null)
+			startWriter();
+	}
+
+	/**
+	 * Starts the thread which stores the queued writes.
+	 */
+	private void startWriter()
+	{
+		writer = new Thread("MessageJournal")
+		{
+			@Override
+			public void run()
+			{
+				try {
+					runWriter();
+				} finally {
+					// let the next write start a new writer should this one die
+					synchronized (MessageJournal.this) {
+						writer = null;
+						notifyAll();
+					}
+				}
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Waits until all the writes made so far are stored, but no longer than
+	 * {@link #FLUSH_TIMEOUT} ms so that a reader is not blocked forever by a stuck writer.
+	 */
+	public synchronized void flush()
+	{
+		long count = writeCount;
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+		boolean interrupted = false;
+
+		while (storedCount < count) {
+			long timeout = deadline - System.currentTimeMillis();
+
+			if (timeout <= 0) {
+				logger.warn("Timed out waiting for " + (count - storedCount)
+						+ " messages to be stored");
+				break;
+			}
+			// Writes already taken by the writer are being stored, do not hurry the next ones.
+			if (!writes.isEmpty()) {
+				if (writer == null)
+					startWriter();
+				flushing = true;
+				notifyAll();
+			}
+			try {
+				wait(timeout);
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stores the queued writes batch by batch.
+	 */
+	private void runWriter()
+	{
+		while (true) {
+			List<Write> batch;
+			long count;
+
+			synchronized (this) {
+				try {
+					while (writes.isEmpty())
+						wait();
+
+					long delay;
+					while (!flushing && (writes.size() < MAX_BATCH_SIZE)
+							&& ((delay = firstWriteTime + MAX_DELAY
+							- System.currentTimeMillis()) > 0)) {
+						wait(delay);
+					}
+				}
+				catch (InterruptedException e) {
+					// Store the queued writes anyway, the journal outlives the threads using it.
+					Thread.interrupted();
+				}
+				if (writes.isEmpty())
+					continue;
+
+				batch = new ArrayList<>(writes);
+				writes.clear();
+				writesByUuid.clear();
+				count = writeCount;
+				flushing = false;
+			}
+
+			try {
+				store(batch);
+			}
+			catch (Throwable t) {
+				// e.g. an OutOfMemoryError: the batch is lost but the writer and flush() go on
+				logger.error("Failed to store " + batch.size() + " messages", t);
+			}
+
+			synchronized (this) {
+				storedCount = count;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Stores a batch of writes in a single transaction, or one by one should the transaction fail
+	 * so that a single bad write does not lose the other messages.
+	 *
+	 * @param batch
+	 * 		the writes
+	 */
+	private void store(List<Write> batch)
+	{
+		boolean stored = false;
+
+		db.beginTransaction();
+		try {
+			for (Write write : batch)
+				write.store(db);
+			db.setTransactionSuccessful();
+			stored = true;
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed to store " + batch.size() + " messages at once", e);
+		} finally {
+			db.endTransaction();
+		}
+
+		if (!stored) {
+			for (Write write : batch) {
+				try {
+					write.store(db);
+				}
+				catch (RuntimeException e) {
+					logger.error("Failed to store message " + write.uuid, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A queued insert or update of a message.
+	 */
+	private static class Write
+	{
+		boolean insert;
+
+		final String uuid;
+
+		ContentValues values;
+
+		boolean index;
+
+		Write(boolean insert, String uuid, ContentValues values, boolean index)
+		{
+			this.insert = insert;
+			this.uuid = uuid;
+			this.values = values;
+			this.index = index;
+		}
+
+		void store(SQLiteDatabase db)
+		{
+			if (!insert) {
+				String[] args = {uuid};
+				db.update(ChatMessage.TABLE_NAME, values, ChatMessage.UUID + "=?", args);
+				return;
+			}
+
+			// The insert replaces a message with the same UUID without running the delete trigger.
+			if (uuid != null)
+				db.execSQL(MessageSearchIndex.UNINDEX_STATEMENT, new Object[]{uuid});
+
+			long rowId = db.insert(ChatMessage.TABLE_NAME, null, values);
+			String body = values.getAsString(ChatMessage.MSG_BODY);
+
+			if (index && (rowId != -1) && (body != null)) {
+				Object[] args = {rowId, body};
+				db.execSQL(MessageSearchIndex.INDEX_STATEMENT, args);
+			}
+		}
+	}
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 
 import net.java.sip.communicator.impl.configuration.SQLiteConfigurationStore;
+import net.java.sip.communicator.impl.msghistory.MessageSearchIndex;
 
 import org.atalk.android.aTalkApp;
 import org.atalk.android.util.FileAccess;
@@ -13,6 +14,14 @@ import java.io.File;
 
 public class MigrationTo3
 {
+    // Create the full-text search index of the message bodies and index the existing messages
+    public static void createMessageSearchIndex(SQLiteDatabase db) {
+        for (String statement : MessageSearchIndex.CREATE_STATEMENTS) {
+            db.execSQL(statement);
+        }
+        db.execSQL(MessageSearchIndex.REBUILD_STATEMENT);
+    }
+
     public static void createOmemoTables(SQLiteDatabase db) {
         // remove old property name
         String[] args = {"replacement.%"};
@@ -0,0 +1,13 @@
+package org.atalk.persistance.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import static org.atalk.persistance.DatabaseBackend.CREATE_MESSAGES_INDEX_STATEMENT;
+
+public class MigrationTo4
+{
+    // Create the index of the chat messages used to page through the chat history
+    public static void createMessagesIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_MESSAGES_INDEX_STATEMENT);
+    }
+}
@@ -24,6 +24,10 @@ public class Migrations {
         switch (db.getVersion()) {
             case 1:
                 MigrationTo2.createOmemoTables(db);
+            case 2:
+                MigrationTo3.createMessageSearchIndex(db);
+            case 3:
+                MigrationTo4.createMessagesIndex(db);
         }
     }
 }
@@ -9,7 +9,10 @@ import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.util.Logger;
 
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 /**
  * Represents a default implementation of <tt>StreamConnector</tt> which is initialized with a
@@ -99,17 +102,83 @@ public class DefaultStreamConnector implements StreamConnector
 			int port = minPort++;
 
 			try {
-				return (bindAddr == null) ? new DatagramSocket(port) : new DatagramSocket(port,
-					bindAddr);
+				return createChannelDatagramSocket(bindAddr, port);
 			}
-			catch (SocketException se) {
+			catch (IOException ioe) {
 				logger.warn("Retrying a bind because of a failure to bind to address " + bindAddr
-					+ " and port " + port, se);
+					+ " and port " + port, ioe);
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Creates a new <tt>DatagramSocket</tt> which is backed by a <tt>DatagramChannel</tt> and is
+	 * bound to a specific local address and port. Unlike a socket created through one of the
+	 * constructors of <tt>DatagramSocket</tt>, its {@link DatagramSocket#getChannel()} is not
+	 * <tt>null</tt> so the streams of the <tt>RTPConnector</tt> it is given to may receive from it
+	 * in batches through the shared <tt>DatagramReactor</tt>. The socket is in blocking mode and
+	 * behaves as any other <tt>DatagramSocket</tt> until the reactor switches it.
+	 *
+	 * @param bindAddr
+	 *        the local <tt>InetAddress</tt> to bind to or <tt>null</tt> for the wildcard address
+	 * @param port
+	 *        the local port to bind to
+	 * @return a new <tt>DatagramSocket</tt> backed by a <tt>DatagramChannel</tt> and bound to
+	 *         <tt>bindAddr</tt> and <tt>port</tt>
+	 * @throws IOException
+	 *         if the channel cannot be opened or bound
+	 */
+	public static DatagramSocket createChannelDatagramSocket(InetAddress bindAddr, int port)
+		throws IOException
+	{
+		DatagramChannel channel = DatagramChannel.open();
+		boolean bound = false;
+
+		try {
+			DatagramSocket socket = channel.socket();
+
+			socket.bind(new InetSocketAddress(bindAddr, port));
+			bound = true;
+			return socket;
+		}
+		finally {
+			if (!bound)
+				channel.close();
+		}
+	}
+
+	/**
+	 * Sends a packet through a <tt>DatagramSocket</tt> which may have been created by
+	 * {@link #createChannelDatagramSocket(InetAddress, int)} and switched to non-blocking mode by
+	 * the shared <tt>DatagramReactor</tt>, in which case {@link DatagramSocket#send(DatagramPacket)}
+	 * throws an <tt>IllegalBlockingModeException</tt> and the packet is sent through the channel.
+	 *
+	 * @param socket
+	 *        the <tt>DatagramSocket</tt> to send through
+	 * @param p
+	 *        the packet to send
+	 * @throws IOException
+	 *         if sending fails or, in non-blocking mode, the send buffer of <tt>socket</tt> is
+	 *         full
+	 */
+	public static void send(DatagramSocket socket, DatagramPacket p)
+		throws IOException
+	{
+		DatagramChannel channel = socket.getChannel();
+
+		if ((channel != null) && !channel.isBlocking()) {
+			ByteBuffer buf = ByteBuffer.wrap(p.getData(), p.getOffset(), p.getLength());
+
+			if (channel.send(buf, p.getSocketAddress()) == 0)
+				throw new IOException("Socket send buffer full, dropped " + p.getLength()
+					+ " bytes to " + p.getSocketAddress());
+		}
+		else {
+			socket.send(p);
+		}
+	}
+
 	/**
 	 * The local <tt>InetAddress</tt> this <tt>StreamConnector</tt> attempts to bind to on demand.
 	 */
@@ -0,0 +1,61 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.service.neomedia.stats;
+
+/**
+ * Provides the statistics of the jitter buffer through which the audio received by a
+ * <tt>MediaStream</tt> is played out.
+ *
+ * @author Eng Chong Meng
+ */
+public interface JitterBufferStats
+{
+	/**
+	 * @return the current playout delay in milliseconds i.e. the duration of the audio which is
+	 * held by the jitter buffer.
+	 */
+	int getPlayoutDelayMs();
+
+	/**
+	 * @return the playout delay in milliseconds which the jitter buffer adapts to in order to
+	 * absorb the observed jitter.
+	 */
+	int getTargetDelayMs();
+
+	/**
+	 * @return the number of frames which have been played out as received, stretched or not.
+	 */
+	long getPlayedFrames();
+
+	/**
+	 * @return the number of frames which have been generated in place of frames which were lost
+	 * or had not arrived in time to be played out.
+	 */
+	long getConcealedFrames();
+
+	/**
+	 * @return the number of frames which have been stretched in order to increase the playout
+	 * delay.
+	 */
+	long getExpandedFrames();
+
+	/**
+	 * @return the number of frames which have been compressed in order to decrease the playout
+	 * delay.
+	 */
+	long getAcceleratedFrames();
+
+	/**
+	 * @return the number of packets which arrived after they were due to be played out and were
+	 * discarded.
+	 */
+	long getLatePackets();
+
+	/**
+	 * @return the number of packets which were discarded because the jitter buffer was full.
+	 */
+	long getOverflowPackets();
+}
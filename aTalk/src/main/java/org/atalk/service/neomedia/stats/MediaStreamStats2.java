@@ -67,4 +67,11 @@ public interface MediaStreamStats2 extends MediaStreamStats
 	 * @return all per-SSRC statistics for the receive direction.
 	 */
 	Collection<? extends ReceiveTrackStats> getAllReceiveStats();
+
+	/**
+	 * @return the statistics of the adaptive jitter buffer through which the
+	 * audio received by the associated {@link MediaStream} is played out, or
+	 * <tt>null</tt> if the stream does not play its audio out through one.
+	 */
+	JitterBufferStats getJitterBufferStats();
 }
@@ -64,6 +64,26 @@ public class PacketLoggingConfiguration
 	public final static String PACKET_LOGGING_FILE_SIZE_PROPERTY_NAME
 			= "packetlogging.PACKET_LOGGING_FILE_SIZE";
 
+	/**
+	 * Configuration property for the maximum number of bytes captured of each packet, including
+	 * the fake link, network and transport headers.
+	 */
+	public final static String PACKET_LOGGING_SNAPLEN_PROPERTY_NAME
+			= "packetlogging.PACKET_LOGGING_SNAPLEN";
+
+	/**
+	 * The prefix of the configuration properties for the sampling of the packets of a protocol,
+	 * followed by the name of the protocol e.g. <tt>packetlogging.PACKET_LOGGING_SAMPLING_RTP</tt>.
+	 * A value of N logs one packet out of every N.
+	 */
+	public final static String PACKET_LOGGING_SAMPLING_PROPERTY_NAME_PREFIX
+			= "packetlogging.PACKET_LOGGING_SAMPLING_";
+
+	/**
+	 * The default and maximum number of bytes captured of each packet.
+	 */
+	public final static int MAX_SNAPLEN = 65535;
+
 	/**
      * Is {@code PacketLoggingService} enabled.
 	 */
@@ -109,6 +129,22 @@ public class PacketLoggingConfiguration
 	 */
 	private int logfileCount = 3;
 
+	/**
+	 * The maximum number of bytes captured of each packet.
+	 */
+	private int snaplen = MAX_SNAPLEN;
+
+	/**
+	 * The sampling of the packets of the protocols indexed by the ordinals of their
+	 * <tt>ProtocolName</tt>s: one packet out of every N is logged.
+	 */
+	private final int[] sampling = new int[PacketLoggingService.ProtocolName.values().length];
+
+	{
+		for (int i = 0; i < sampling.length; i++)
+			sampling[i] = 1;
+	}
+
 	/**
 	 * Checks whether packet logging is enabled in the configuration.
 	 *
@@ -190,6 +226,29 @@ public class PacketLoggingConfiguration
         return logfileCount;
 	}
 
+	/**
+	 * The maximum number of bytes captured of each packet, including the fake link, network and
+	 * transport headers.
+	 *
+	 * @return the maximum number of bytes captured of each packet.
+	 */
+	public int getSnaplen()
+	{
+		return snaplen;
+	}
+
+	/**
+	 * The sampling of the packets of a protocol.
+	 *
+	 * @param protocol
+	 * 		the protocol.
+	 * @return N if one packet out of every N of <tt>protocol</tt> is logged.
+	 */
+	public int getSampling(PacketLoggingService.ProtocolName protocol)
+	{
+		return sampling[protocol.ordinal()];
+	}
+
 	/**
 	 * Change whether packet logging is enabled.
 	 *
@@ -285,4 +344,28 @@ public class PacketLoggingConfiguration
 	{
 		this.logfileCount = logfileCount;
 	}
+
+	/**
+	 * Changes the maximum number of bytes captured of each packet.
+	 *
+	 * @param snaplen
+	 * 		the new maximum number of bytes, clamped to the range supported by the pcap format.
+	 */
+	public void setSnaplen(int snaplen)
+	{
+		this.snaplen = Math.max(1, Math.min(snaplen, MAX_SNAPLEN));
+	}
+
+	/**
+	 * Changes the sampling of the packets of a protocol.
+	 *
+	 * @param protocol
+	 * 		the protocol.
+	 * @param sampling
+	 * 		N to log one packet out of every N of <tt>protocol</tt>.
+	 */
+	public void setSampling(PacketLoggingService.ProtocolName protocol, int sampling)
+	{
+		this.sampling[protocol.ordinal()] = Math.max(sampling, 1);
+	}
 }
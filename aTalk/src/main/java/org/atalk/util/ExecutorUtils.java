@@ -30,7 +30,43 @@ public class ExecutorUtils
 	 */
 	public static ExecutorService newCachedThreadPool(final boolean daemon, final String baseName)
 	{
-		return Executors.newCachedThreadPool(new ThreadFactory()
+		return Executors.newCachedThreadPool(newThreadFactory(daemon, baseName));
+	}
+
+	/**
+	 * Creates a thread pool that reuses a fixed number of threads. Optionally, the threads are
+	 * created as daemon threads and their names are based on a specific (prefix) string.
+	 *
+	 * @param nThreads
+	 * 		the number of threads in the pool
+	 * @param daemon
+	 * 		<tt>true</tt> to create the new threads as daemon threads or <tt>false</tt> to create
+	 * 		the new threads as user threads
+	 * @param baseName
+	 * 		the base/prefix to use for the names of the new threads or <tt>null</tt> to leave them
+	 * 		with their default names
+	 * @return the newly created thread pool
+	 */
+	public static ExecutorService newFixedThreadPool(int nThreads, boolean daemon,
+		String baseName)
+	{
+		return Executors.newFixedThreadPool(nThreads, newThreadFactory(daemon, baseName));
+	}
+
+	/**
+	 * Creates a <tt>ThreadFactory</tt> which optionally creates daemon threads with names based
+	 * on a specific (prefix) string.
+	 *
+	 * @param daemon
+	 * 		<tt>true</tt> to create daemon threads or <tt>false</tt> to create user threads
+	 * @param baseName
+	 * 		the base/prefix to use for the names of the new threads or <tt>null</tt> to leave them
+	 * 		with their default names
+	 * @return the new <tt>ThreadFactory</tt>
+	 */
+	private static ThreadFactory newThreadFactory(final boolean daemon, final String baseName)
+	{
+		return new ThreadFactory()
 		{
 			/**
 			 * The default <tt>ThreadFactory</tt> implementation which is augmented by this
@@ -60,6 +96,6 @@ public class ExecutorUtils
 				}
 				return t;
 			}
-		});
+		};
 	}
 }
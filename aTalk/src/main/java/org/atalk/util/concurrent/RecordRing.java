@@ -0,0 +1,239 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.util.concurrent;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated ring of variable-length records which any number of threads write into without
+ * locking and a single thread drains. A writer claims the space of its record with a
+ * compare-and-set of the tail, writes the record in place and commits it with an ordered write
+ * of its length into the marker of the slot at which the record starts. Records start at
+ * multiples of {@link #ALIGNMENT} bytes and never wrap around the end of the ring; the space left
+ * at the end is claimed together with the record and marked as padding.
+ * <p>
+ * Writers never wait: a record which does not fit into the free space of the ring is dropped and
+ * counted so that queueing never slows down the threads which write.
+ *
+ * @author Eng Chong Meng
+ */
+public class RecordRing
+{
+	/**
+	 * The alignment in bytes of the records, i.e. the number of bytes covered by a marker.
+	 */
+	public static final int ALIGNMENT = 64;
+
+	/**
+	 * Handles the records drained from a <tt>RecordRing</tt>.
+	 */
+	public interface RecordHandler
+	{
+		/**
+		 * Handles a record. The record is only valid for the duration of the call.
+		 *
+		 * @param buf
+		 * 		the buffer which contains the record
+		 * @param off
+		 * 		the offset in <tt>buf</tt> at which the record starts
+		 * @param len
+		 * 		the length in bytes of the record
+		 * @throws IOException
+		 * 		if handling the record fails
+		 */
+		void handleRecord(byte[] buf, int off, int len)
+				throws IOException;
+	}
+
+	/**
+	 * The storage of the records.
+	 */
+	private final byte[] buffer;
+
+	/**
+	 * The capacity in bytes of the ring, a power of two.
+	 */
+	private final int capacity;
+
+	/**
+	 * The markers of the slots of {@link #ALIGNMENT} bytes: the length of a committed record
+	 * which starts at the slot, the negated length of the padding which starts at the slot or
+	 * zero.
+	 */
+	private final AtomicIntegerArray markers;
+
+	/**
+	 * The position up to which the space of the ring has been claimed by writers.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The position up to which the ring has been drained.
+	 */
+	private volatile long head;
+
+	/**
+	 * The number of records which have been dropped because the ring was full.
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Initializes a new <tt>RecordRing</tt> instance.
+	 *
+	 * @param capacity
+	 * 		the capacity in bytes of the new ring, rounded up to a power of two
+	 */
+	public RecordRing(int capacity)
+	{
+		int c = ALIGNMENT;
+
+		while (c < capacity)
+			c <<= 1;
+		this.capacity = c;
+		buffer = new byte[c];
+		markers = new AtomicIntegerArray(c / ALIGNMENT);
+	}
+
+	/**
+	 * Rounds a length up to a multiple of {@link #ALIGNMENT}.
+	 *
+	 * @param length
+	 * 		the length to round up
+	 * @return <tt>length</tt> rounded up to a multiple of {@link #ALIGNMENT}
+	 */
+	private static int align(int length)
+	{
+		return (length + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+
+	/**
+	 * Gets the buffer into which the claimed records are to be written.
+	 *
+	 * @return the buffer into which the claimed records are to be written
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Gets the number of records which have been dropped because the ring was full.
+	 *
+	 * @return the number of records which have been dropped
+	 */
+	public long getDroppedCount()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Determines whether there are no records in this ring, committed or not.
+	 *
+	 * @return <tt>true</tt> if this ring is empty
+	 */
+	public boolean isEmpty()
+	{
+		return head == tail.get();
+	}
+
+	/**
+	 * Claims the space of a record. The caller is to write the record into {@link #getBuffer()}
+	 * at the returned offset and then {@link #commit(int, int)} it.
+	 *
+	 * @param length
+	 * 		the length in bytes of the record
+	 * @return the offset in {@link #getBuffer()} at which the record is to be written or
+	 * <tt>-1</tt> if the record does not fit into the free space of this ring
+	 */
+	public int claim(int length)
+	{
+		int required = align(length);
+
+		if (length <= 0 || required > capacity) {
+			dropped.incrementAndGet();
+			return -1;
+		}
+
+		long t;
+		int index;
+		int padding;
+
+		do {
+			t = tail.get();
+			index = (int) t & (capacity - 1);
+			padding = (index + required > capacity) ? capacity - index : 0;
+			if (t + padding + required - head > capacity) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+		}
+		while (!tail.compareAndSet(t, t + padding + required));
+
+		if (padding != 0) {
+			markers.lazySet(index / ALIGNMENT, -padding);
+			index = 0;
+		}
+		return index;
+	}
+
+	/**
+	 * Commits a record which has been written into the space claimed by {@link #claim(int)}.
+	 *
+	 * @param index
+	 * 		the offset returned by {@link #claim(int)}
+	 * @param length
+	 * 		the length in bytes of the record as passed to {@link #claim(int)}
+	 */
+	public void commit(int index, int length)
+	{
+		markers.lazySet(index / ALIGNMENT, length);
+	}
+
+	/**
+	 * Drains the committed records in the order in which their space was claimed. Stops at the
+	 * first record which has been claimed but not committed yet. Must only be called by a single
+	 * thread at a time.
+	 *
+	 * @param handler
+	 * 		the <tt>RecordHandler</tt> to hand the records to
+	 * @return the number of drained records
+	 * @throws IOException
+	 * 		if <tt>handler</tt> fails, in which case the failed record is discarded
+	 */
+	public int drain(RecordHandler handler)
+			throws IOException
+	{
+		long h = head;
+		int count = 0;
+
+		while (true) {
+			int index = (int) h & (capacity - 1);
+			int slot = index / ALIGNMENT;
+			int marker = markers.get(slot);
+
+			if (marker == 0)
+				break;
+
+			int size = (marker < 0) ? -marker : align(marker);
+
+			try {
+				if (marker > 0) {
+					count++;
+					handler.handleRecord(buffer, index, marker);
+				}
+			}
+			finally {
+				// Free the space before the writers get to see it.
+				markers.lazySet(slot, 0);
+				h += size;
+				head = h;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A <tt>long</tt> sum which many threads add to without contending on a single memory location.
+ * The additions are spread over cells which are selected by the ID of the adding thread and which
+ * are padded to lie in distinct cache lines; reading the sum adds the cells up. The sum read
+ * while additions are in progress is not an atomic snapshot, but every completed addition is
+ * accounted for.
+ *
+ * @author Eng Chong Meng
+ */
+public class StripedCounter
+{
+	/**
+	 * The number of cells, a power of two.
+	 */
+	private static final int STRIPES;
+
+	/**
+	 * The distance in <tt>long</tt>s between two cells, i.e. a cache line of 64 bytes.
+	 */
+	private static final int PADDING = 8;
+
+	static {
+		int stripes = 1;
+
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64)
+			stripes <<= 1;
+		STRIPES = stripes;
+	}
+
+	/**
+	 * The cells, of which every {@link #PADDING}th element is used.
+	 */
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Adds a value to this counter.
+	 *
+	 * @param delta
+	 * 		the value to add
+	 */
+	public void add(long delta)
+	{
+		cells.addAndGet(getCellIndex(), delta);
+	}
+
+	/**
+	 * Adds one to this counter.
+	 */
+	public void increment()
+	{
+		add(1);
+	}
+
+	/**
+	 * Gets the sum of the values added to this counter.
+	 *
+	 * @return the sum of the values added to this counter
+	 */
+	public long get()
+	{
+		long sum = 0;
+
+		for (int i = 0; i < STRIPES * PADDING; i += PADDING)
+			sum += cells.get(i);
+		return sum;
+	}
+
+	/**
+	 * Gets the index in {@link #cells} of the cell of the current thread.
+	 *
+	 * @return the index in {@link #cells} of the cell of the current thread
+	 */
+	private static int getCellIndex()
+	{
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString()
+	{
+		return Long.toString(get());
+	}
+}
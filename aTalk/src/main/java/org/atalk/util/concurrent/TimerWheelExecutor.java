@@ -0,0 +1,454 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.util.concurrent;
+
+import org.atalk.android.util.ApiLib;
+import org.atalk.util.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implements an {@link Executor} of {@link RecurringRunnable}s which is meant to be shared by a
+ * large number of them e.g. by all instances of a class which exists once per conference. Unlike
+ * {@link RecurringRunnableExecutor}, which asks every registered <tt>RecurringRunnable</tt> for
+ * its {@link RecurringRunnable#getTimeUntilNextRun()} whenever it wakes up, the
+ * <tt>RecurringRunnable</tt>s are kept in a hashed timer wheel: each of a fixed number of threads
+ * advances its own wheel of buckets by one bucket per tick and only looks at the
+ * <tt>RecurringRunnable</tt>s which fall due in the bucket of the current tick. A
+ * <tt>RecurringRunnable</tt> is asked about the time until its next run only after it has run so
+ * the cost of a tick does not grow with the number of idle <tt>RecurringRunnable</tt>s.
+ * <p>
+ * A <tt>RecurringRunnable</tt> is assigned to one of the threads (in a round-robin fashion) upon
+ * registration and is always run by that thread. The resolution of the scheduling is one tick
+ * and a <tt>RecurringRunnable</tt> is not run again before the next tick. The threads are daemons
+ * which are started on demand and which exit after they have been idle for a while.
+ *
+ * @author Eng Chong Meng
+ */
+public class TimerWheelExecutor implements Executor
+{
+	/**
+	 * The <tt>Logger</tt> used by the <tt>TimerWheelExecutor</tt> class and its instances to print
+	 * debug information.
+	 */
+	private static final Logger logger = Logger.getLogger(TimerWheelExecutor.class);
+
+	/**
+	 * The time in milliseconds after which a thread of a <tt>TimerWheelExecutor</tt> without
+	 * registered <tt>RecurringRunnable</tt>s exits.
+	 */
+	private static final long THREAD_IDLE_TIMEOUT = 1000L;
+
+	/**
+	 * The number of buckets of a wheel. Must be a power of two.
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * The mask which maps a tick to the index of its bucket in a wheel.
+	 */
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	/**
+	 * Whether this <tt>TimerWheelExecutor</tt> is closed. When it is closed, it should stop its
+	 * threads.
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * A <tt>String</tt> which will be added to the names of the threads of this instance. Meant to
+	 * facilitate debugging.
+	 */
+	private final String name;
+
+	/**
+	 * The index in {@link #wheels} of the <tt>Wheel</tt> to assign the next registered
+	 * <tt>RecurringRunnable</tt> to.
+	 */
+	private final AtomicInteger nextWheel = new AtomicInteger();
+
+	/**
+	 * The duration of a tick in milliseconds.
+	 */
+	private final long tickMillis;
+
+	/**
+	 * The <tt>Timeout</tt>s which represent the <tt>RecurringRunnable</tt>s registered with this
+	 * instance.
+	 */
+	private final ConcurrentMap<RecurringRunnable, Timeout> timeouts
+			= new ConcurrentHashMap<>();
+
+	/**
+	 * The <tt>Wheel</tt>s of this instance, one per thread.
+	 */
+	private final Wheel[] wheels;
+
+	/**
+	 * Initializes a new <tt>TimerWheelExecutor</tt> instance.
+	 *
+	 * @param name
+	 * 		a string to be added to the names of the threads which the new instance will start
+	 * @param threadCount
+	 * 		the number of threads to run the registered <tt>RecurringRunnable</tt>s on
+	 * @param tickMillis
+	 * 		the duration of a tick in milliseconds i.e. the resolution of the scheduling
+	 */
+	public TimerWheelExecutor(String name, int threadCount, long tickMillis)
+	{
+		if (threadCount < 1)
+			throw new IllegalArgumentException("threadCount " + threadCount);
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("tickMillis " + tickMillis);
+
+		this.name = name;
+		this.tickMillis = tickMillis;
+		wheels = new Wheel[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			wheels[i] = new Wheel(i);
+	}
+
+	/**
+	 * Closes this <tt>TimerWheelExecutor</tt>, signalling its threads to stop and de-registering
+	 * all registered <tt>RecurringRunnable</tt>s.
+	 */
+	public void close()
+	{
+		closed = true;
+		for (Timeout timeout : timeouts.values())
+			timeout.cancelled = true;
+		timeouts.clear();
+		for (Wheel wheel : wheels)
+			wheel.close();
+	}
+
+	/**
+	 * De-registers a <tt>RecurringRunnable</tt> from this <tt>Executor</tt> so that its
+	 * {@link RecurringRunnable#run()} is no longer invoked (by this instance). May be invoked by
+	 * the <tt>RecurringRunnable</tt> itself while it is running.
+	 *
+	 * @param recurringRunnable
+	 * 		the <tt>RecurringRunnable</tt> to de-register from this instance
+	 * @return <tt>true</tt> if the <tt>RecurringRunnable</tt>s of this instance changed because of
+	 * the method call; otherwise, <tt>false</tt>
+	 */
+	public boolean deRegisterRecurringRunnable(RecurringRunnable recurringRunnable)
+	{
+		if (recurringRunnable == null)
+			return false;
+
+		Timeout timeout = timeouts.remove(recurringRunnable);
+
+		if (timeout == null)
+			return false;
+		// The Timeout will be dropped by its Wheel when the latter next visits its bucket.
+		timeout.cancelled = true;
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Accepts for execution {@link RecurringRunnable}s only.
+	 */
+	@Override
+	public void execute(Runnable command)
+	{
+		// cmeng:  Objects not available in api-15 (added in API level 19)
+		ApiLib.requireNonNull(command, "command");
+		if (!(command instanceof RecurringRunnable)) {
+			throw new RejectedExecutionException("The class " + command.getClass().getName()
+					+ " of command does not implement " + RecurringRunnable.class.getName());
+		}
+		registerRecurringRunnable((RecurringRunnable) command);
+	}
+
+	/**
+	 * Registers a <tt>RecurringRunnable</tt> with this <tt>Executor</tt> so that its
+	 * {@link RecurringRunnable#run()} is invoked (by this instance). The first run takes place in
+	 * accord with its {@link RecurringRunnable#getTimeUntilNextRun()} at the time the assigned
+	 * thread picks it up.
+	 *
+	 * @param recurringRunnable
+	 * 		the <tt>RecurringRunnable</tt> to register with this instance
+	 * @return <tt>true</tt> if the <tt>RecurringRunnable</tt>s of this instance changed because of
+	 * the method call; otherwise, <tt>false</tt>
+	 */
+	public boolean registerRecurringRunnable(RecurringRunnable recurringRunnable)
+	{
+		// cmeng: Objects not available in API-15 (added in API level 19)
+		ApiLib.requireNonNull(recurringRunnable, "recurringRunnable");
+
+		if (closed)
+			return false;
+
+		Timeout timeout = new Timeout(recurringRunnable);
+
+		// Only allow recurringRunnable to be registered once.
+		if (timeouts.putIfAbsent(recurringRunnable, timeout) != null)
+			return false;
+
+		int index = (nextWheel.getAndIncrement() & Integer.MAX_VALUE) % wheels.length;
+
+		wheels[index].schedule(timeout);
+		return true;
+	}
+
+	/**
+	 * Represents the registration of a <tt>RecurringRunnable</tt> with a
+	 * <tt>TimerWheelExecutor</tt>.
+	 */
+	private static class Timeout
+	{
+		/**
+		 * Whether the <tt>RecurringRunnable</tt> has been de-registered.
+		 */
+		volatile boolean cancelled = false;
+
+		/**
+		 * The tick of the <tt>Wheel</tt> at which {@link #recurringRunnable} is to be run next.
+		 * Accessed by the thread of the <tt>Wheel</tt> only.
+		 */
+		long deadline;
+
+		/**
+		 * The registered <tt>RecurringRunnable</tt>.
+		 */
+		final RecurringRunnable recurringRunnable;
+
+		Timeout(RecurringRunnable recurringRunnable)
+		{
+			this.recurringRunnable = recurringRunnable;
+		}
+	}
+
+	/**
+	 * Represents a thread of a <tt>TimerWheelExecutor</tt> and the buckets of the
+	 * <tt>Timeout</tt>s which are run by it.
+	 */
+	private class Wheel implements Runnable
+	{
+		/**
+		 * The buckets of this wheel. The <tt>Timeout</tt>s which are due at a specific tick are
+		 * in the bucket at the index of the tick modulo {@link #WHEEL_SIZE}, along with the ones
+		 * which are due a number of rounds of the wheel later.
+		 */
+		private final List<List<Timeout>> buckets = new ArrayList<>(WHEEL_SIZE);
+
+		/**
+		 * The index of this <tt>Wheel</tt> in {@link #wheels}.
+		 */
+		private final int index;
+
+		/**
+		 * The <tt>Timeout</tt>s which have been assigned to this <tt>Wheel</tt> and which are yet
+		 * to be put in {@link #buckets} by {@link #thread}.
+		 */
+		private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * The number of <tt>Timeout</tt>s in {@link #buckets}.
+		 */
+		private int size = 0;
+
+		/**
+		 * The (background) <tt>Thread</tt> which advances this <tt>Wheel</tt>.
+		 */
+		private volatile Thread thread;
+
+		/**
+		 * The current tick of this <tt>Wheel</tt>. Survives the restarts of {@link #thread} so
+		 * that the deadlines of the <tt>Timeout</tt>s in {@link #buckets} remain valid.
+		 */
+		private long tick = 0;
+
+		Wheel(int index)
+		{
+			this.index = index;
+			for (int i = 0; i < WHEEL_SIZE; i++)
+				buckets.add(new ArrayList<Timeout>());
+		}
+
+		/**
+		 * Stops {@link #thread}.
+		 */
+		synchronized void close()
+		{
+			if (thread != null) {
+				LockSupport.unpark(thread);
+				thread = null;
+			}
+		}
+
+		/**
+		 * Runs the <tt>Timeout</tt>s in the bucket of {@link #tick} which are due and puts them
+		 * back in accord with their respective {@link RecurringRunnable#getTimeUntilNextRun()}.
+		 */
+		private void expire()
+		{
+			List<Timeout> bucket = buckets.get((int) tick & WHEEL_MASK);
+
+			for (int i = 0; i < bucket.size(); ) {
+				Timeout timeout = bucket.get(i);
+
+				if (!timeout.cancelled && timeout.deadline > tick) {
+					// It is due in a later round of this wheel.
+					i++;
+					continue;
+				}
+
+				// Remove the timeout without shifting the rest of the bucket.
+				int last = bucket.size() - 1;
+
+				bucket.set(i, bucket.get(last));
+				bucket.remove(last);
+				size--;
+				if (timeout.cancelled)
+					continue;
+
+				RecurringRunnable recurringRunnable = timeout.recurringRunnable;
+
+				try {
+					recurringRunnable.run();
+				}
+				catch (Throwable t) {
+					if (t instanceof InterruptedException) {
+						Thread.currentThread().interrupt();
+					}
+					else if (t instanceof ThreadDeath) {
+						throw (ThreadDeath) t;
+					}
+					else {
+						logger.error("The invocation of the method "
+								+ recurringRunnable.getClass().getName()
+								+ ".run() threw an exception.", t);
+					}
+				}
+				if (!timeout.cancelled)
+					put(timeout, Math.max(recurringRunnable.getTimeUntilNextRun(), 1L));
+			}
+		}
+
+		/**
+		 * Puts a <tt>Timeout</tt> in the bucket of the tick at which it is due.
+		 *
+		 * @param timeout
+		 * 		the <tt>Timeout</tt> to put in {@link #buckets}
+		 * @param delay
+		 * 		the time in milliseconds after which <tt>timeout</tt> is due. If not positive,
+		 * 		<tt>timeout</tt> is due at the current tick.
+		 */
+		private void put(Timeout timeout, long delay)
+		{
+			long ticks = (delay <= 0) ? 0 : (delay + tickMillis - 1) / tickMillis;
+
+			timeout.deadline = tick + ticks;
+			buckets.get((int) timeout.deadline & WHEEL_MASK).add(timeout);
+			size++;
+		}
+
+		/**
+		 * Advances this <tt>Wheel</tt> tick by tick until it is closed or idle long enough.
+		 */
+		@Override
+		public void run()
+		{
+			long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+			long idleTimeoutTicks = Math.max(THREAD_IDLE_TIMEOUT / tickMillis, 1L);
+			long idleTicks = 0;
+			// The time at which this wheel would have been at tick 0 had its thread kept running.
+			long startTime = System.nanoTime() - tick * tickNanos;
+
+			try {
+				while (!closed && (Thread.currentThread() == thread)) {
+					Timeout timeout;
+
+					while ((timeout = pending.poll()) != null) {
+						if (!timeout.cancelled)
+							put(timeout, timeout.recurringRunnable.getTimeUntilNextRun());
+					}
+					expire();
+					tick++;
+
+					if (size == 0) {
+						if (++idleTicks >= idleTimeoutTicks) {
+							synchronized (this) {
+								if (pending.isEmpty()) {
+									if (Thread.currentThread() == thread)
+										thread = null;
+									break;
+								}
+							}
+						}
+					}
+					else {
+						idleTicks = 0;
+					}
+
+					long sleep = startTime + tick * tickNanos - System.nanoTime();
+
+					// If the RecurringRunnables took longer than a tick, catch up without sleeping.
+					if (sleep > 0)
+						LockSupport.parkNanos(this, sleep);
+				}
+			} finally {
+				synchronized (this) {
+					if (Thread.currentThread() == thread) {
+						// The thread dies in an unexpected way. Make sure that a new thread will
+						// replace it.
+						thread = null;
+						startThread();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Assigns a <tt>Timeout</tt> to this <tt>Wheel</tt> and starts {@link #thread} if
+		 * necessary.
+		 *
+		 * @param timeout
+		 * 		the <tt>Timeout</tt> to assign to this <tt>Wheel</tt>
+		 */
+		void schedule(Timeout timeout)
+		{
+			pending.add(timeout);
+			synchronized (this) {
+				if (thread == null)
+					startThread();
+			}
+		}
+
+		/**
+		 * Starts {@link #thread} unless this <tt>TimerWheelExecutor</tt> has been closed. Invoked
+		 * with the monitor of this <tt>Wheel</tt> held.
+		 */
+		private void startThread()
+		{
+			if (closed)
+				return;
+
+			Thread thread = new Thread(this);
+
+			thread.setDaemon(true);
+			thread.setName(TimerWheelExecutor.class.getName() + ".thread-" + name + "-" + index);
+
+			boolean started = false;
+
+			this.thread = thread;
+			try {
+				thread.start();
+				started = true;
+			} finally {
+				if (!started && thread.equals(this.thread))
+					this.thread = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.util.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the values accumulated over a sliding window of milliseconds and converts them to a
+ * rate, like <tt>org.ice4j.util.RateStatistics</tt> but without a lock. Each millisecond of the
+ * window has a slot which packs the (low 32 bits of the) millisecond it counts for with the count
+ * itself, so an update is a compare-and-set of one slot which resets the slot if it still counts
+ * for an earlier pass over the window. Reading the rate adds up the slots which count for the
+ * current window.
+ *
+ * @author Eng Chong Meng
+ */
+public class ConcurrentRateStatistics
+{
+	/**
+	 * The default scale which converts bytes per millisecond window to bits per second.
+	 */
+	public static final float BITS_PER_SECOND_SCALE = 8000F;
+
+	/**
+	 * The slots of the window, one per millisecond.
+	 */
+	private final AtomicLongArray slots;
+
+	/**
+	 * The factor which converts the count accumulated in the window to the rate.
+	 */
+	private final float scale;
+
+	/**
+	 * Initializes a new <tt>ConcurrentRateStatistics</tt> instance which reports bits per second
+	 * for values in bytes.
+	 *
+	 * @param windowSizeMs
+	 * 		the size in milliseconds of the window
+	 */
+	public ConcurrentRateStatistics(int windowSizeMs)
+	{
+		this(windowSizeMs, BITS_PER_SECOND_SCALE);
+	}
+
+	/**
+	 * Initializes a new <tt>ConcurrentRateStatistics</tt> instance.
+	 *
+	 * @param windowSizeMs
+	 * 		the size in milliseconds of the window
+	 * @param scale
+	 * 		the factor which converts the count accumulated per millisecond to the rate, e.g.
+	 * 		<tt>1000</tt> for a rate per second
+	 */
+	public ConcurrentRateStatistics(int windowSizeMs, float scale)
+	{
+		slots = new AtomicLongArray(windowSizeMs + 1);
+		this.scale = scale / windowSizeMs;
+	}
+
+	/**
+	 * Adds a value to the count of a specific millisecond. Values for milliseconds which have
+	 * already left the window are ignored.
+	 *
+	 * @param count
+	 * 		the value to add, which may be negative
+	 * @param nowMs
+	 * 		the millisecond
+	 */
+	public void update(int count, long nowMs)
+	{
+		int index = (int) (nowMs % slots.length());
+		int now = (int) nowMs;
+
+		while (true) {
+			long slot = slots.get(index);
+			int time = (int) (slot >>> 32);
+			long update;
+
+			if (time == now)
+				update = pack(now, (int) slot + count);
+			else if (now - time > 0 || slot == 0)
+				update = pack(now, count);
+			else
+				return;
+
+			if (slots.compareAndSet(index, slot, update))
+				return;
+		}
+	}
+
+	/**
+	 * Gets the rate at the current time.
+	 *
+	 * @return the rate at the current time
+	 */
+	public long getRate()
+	{
+		return getRate(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the rate at a specific millisecond.
+	 *
+	 * @param nowMs
+	 * 		the millisecond
+	 * @return the rate at <tt>nowMs</tt>
+	 */
+	public long getRate(long nowMs)
+	{
+		return (long) (getAccumulatedCount(nowMs) * scale + 0.5F);
+	}
+
+	/**
+	 * Gets the count accumulated in the window which ends at the current time.
+	 *
+	 * @return the count accumulated in the window which ends at the current time
+	 */
+	public long getAccumulatedCount()
+	{
+		return getAccumulatedCount(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the count accumulated in the window which ends at a specific millisecond.
+	 *
+	 * @param nowMs
+	 * 		the millisecond
+	 * @return the count accumulated in the window which ends at <tt>nowMs</tt>
+	 */
+	public long getAccumulatedCount(long nowMs)
+	{
+		int length = slots.length();
+		int now = (int) nowMs;
+		long count = 0;
+
+		for (int i = 0; i < length; i++) {
+			long slot = slots.get(i);
+			int age = now - (int) (slot >>> 32);
+
+			if (slot != 0 && age >= 0 && age < length)
+				count += (int) slot;
+		}
+		return count;
+	}
+
+	/**
+	 * Packs a millisecond and a count into a slot value.
+	 *
+	 * @param time
+	 * 		the low 32 bits of the millisecond
+	 * @param count
+	 * 		the count
+	 * @return the slot value which packs <tt>time</tt> and <tt>count</tt>
+	 */
+	private static long pack(int time, int count)
+	{
+		return ((long) time << 32) | (count & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.util.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative <tt>long</tt> values which any number of threads record into
+ * without locking. The buckets are log-linear in the manner of HdrHistogram: the values below
+ * {@link #SUB_BUCKET_COUNT} have a bucket each and every further power of two is split into
+ * <tt>SUB_BUCKET_COUNT / 2</tt> buckets, so the value reported for a percentile is within about
+ * 3% of the recorded one whatever its magnitude. Values above the highest trackable value are
+ * recorded as that value.
+ * <p>
+ * Recording a value is an atomic increment of its bucket and of the sum; reading takes a pass
+ * over the buckets and sees every completed recording, although not as an atomic snapshot.
+ *
+ * @author Eng Chong Meng
+ */
+public class Histogram
+{
+	/**
+	 * The number of bits of the sub-bucket index.
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+
+	/**
+	 * The number of values which have a bucket each and twice the number of buckets per power
+	 * of two above them.
+	 */
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets per power of two above {@link #SUB_BUCKET_COUNT}.
+	 */
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+	/**
+	 * The highest value which is recorded as itself.
+	 */
+	private final long highestTrackableValue;
+
+	/**
+	 * The number of values recorded into each bucket.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * The sum of the recorded values.
+	 */
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * Initializes a new <tt>Histogram</tt> instance.
+	 *
+	 * @param highestTrackableValue
+	 * 		the highest value which is to be recorded as itself
+	 */
+	public Histogram(long highestTrackableValue)
+	{
+		if (highestTrackableValue < SUB_BUCKET_COUNT)
+			highestTrackableValue = SUB_BUCKET_COUNT;
+		this.highestTrackableValue = highestTrackableValue;
+		counts = new AtomicLongArray(getBucketIndex(highestTrackableValue) + 1);
+	}
+
+	/**
+	 * Gets the index of the bucket of a value.
+	 *
+	 * @param value
+	 * 		the value, between zero and the highest trackable value
+	 * @return the index of the bucket of <tt>value</tt>
+	 */
+	private static int getBucketIndex(long value)
+	{
+		if (value < SUB_BUCKET_COUNT)
+			return (int) value;
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+
+		return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the highest value which is recorded into a bucket.
+	 *
+	 * @param index
+	 * 		the index of the bucket
+	 * @return the highest value which is recorded into the bucket with index <tt>index</tt>
+	 */
+	private static long getHighestValue(int index)
+	{
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+
+		int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 * 		the value to record. Negative values are recorded as zero.
+	 */
+	public void record(long value)
+	{
+		record(value, 1);
+	}
+
+	/**
+	 * Records a value a number of times.
+	 *
+	 * @param value
+	 * 		the value to record. Negative values are recorded as zero.
+	 * @param count
+	 * 		the number of times to record <tt>value</tt>
+	 */
+	public void record(long value, int count)
+	{
+		if (count <= 0)
+			return;
+		if (value < 0)
+			value = 0;
+		else if (value > highestTrackableValue)
+			value = highestTrackableValue;
+
+		counts.addAndGet(getBucketIndex(value), count);
+		sum.addAndGet(value * count);
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the number of recorded values
+	 */
+	public long getCount()
+	{
+		long count = 0;
+
+		for (int i = 0, length = counts.length(); i < length; i++)
+			count += counts.get(i);
+		return count;
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return the mean of the recorded values or zero if no values have been recorded
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+
+		return (count == 0) ? 0 : sum.get() / (double) count;
+	}
+
+	/**
+	 * Gets the (upper bounds of the buckets of the) values below or at which specific
+	 * percentages of the recorded values lie. A percentile of zero yields the minimum and one of
+	 * 100 the maximum of the recorded values.
+	 *
+	 * @param percentiles
+	 * 		the percentiles in ascending order, between zero and 100
+	 * @return the values at <tt>percentiles</tt>, all zero if no values have been recorded
+	 */
+	public long[] getValuesAtPercentiles(double... percentiles)
+	{
+		int length = counts.length();
+		long[] snapshot = new long[length];
+		long count = 0;
+
+		for (int i = 0; i < length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+
+		long[] values = new long[percentiles.length];
+
+		if (count == 0)
+			return values;
+
+		long seen = 0;
+		int i = 0;
+
+		for (int p = 0; p < percentiles.length; p++) {
+			// The rank of the value at the percentile, at least one so that zero is the minimum.
+			long rank = Math.max((long) Math.ceil(percentiles[p] / 100d * count), 1);
+
+			while (i < length && seen + snapshot[i] < rank) {
+				seen += snapshot[i];
+				i++;
+			}
+			values[p] = (i < length)
+				? Math.min(getHighestValue(i), highestTrackableValue) : highestTrackableValue;
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the (upper bound of the bucket of the) value below or at which a specific percentage
+	 * of the recorded values lie.
+	 *
+	 * @param percentile
+	 * 		the percentile, between zero and 100
+	 * @return the value at <tt>percentile</tt> or zero if no values have been recorded
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		return getValuesAtPercentiles(percentile)[0];
+	}
+}
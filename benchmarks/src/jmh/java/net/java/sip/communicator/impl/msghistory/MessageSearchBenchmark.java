@@ -0,0 +1,249 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import org.atalk.android.gui.chat.ChatMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the keyword queries of <tt>MessageHistoryServiceImpl</tt> over a synthetic history of
+ * one million messages in a hundred chat sessions: the <tt>LIKE '%keyword%'</tt> scan which the
+ * {@link MessageSearchIndex} replaces, the same query through the index, and a ranked page of the
+ * best matches. SQLite is accessed through JDBC in place of the Android database API; the
+ * database is generated once in the temporary directory and reused by later runs.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSearchBenchmark
+{
+	private static final int SESSION_COUNT = 100;
+
+	private static final int WORD_COUNT = 20000;
+
+	private static final int PAGE_SIZE = 20;
+
+	@Param({ "1000000" })
+	public int messageCount;
+
+	/**
+	 * The rank of the searched word in the vocabulary, whose word frequencies follow Zipf's law.
+	 */
+	@Param({ "10", "1000" })
+	public int wordRank;
+
+	private Connection connection;
+
+	private String sessionUuid;
+
+	private String keyword;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws Exception
+	{
+		Class.forName("org.sqlite.JDBC");
+
+		File file = new File(System.getProperty("java.io.tmpdir"),
+				"MessageSearchBenchmark-" + messageCount + ".db");
+		boolean exists = file.exists();
+
+		connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+		if (!exists) {
+			try {
+				createDatabase();
+			}
+			catch (Exception e) {
+				connection.close();
+				file.delete();
+				throw e;
+			}
+		}
+
+		sessionUuid = sessionUuid(SESSION_COUNT / 2);
+		keyword = word(wordRank);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+			throws SQLException
+	{
+		connection.close();
+	}
+
+	private void createDatabase()
+			throws SQLException
+	{
+		Statement statement = connection.createStatement();
+
+		statement.execute("CREATE TABLE " + ChatMessage.TABLE_NAME + "( "
+				+ "uuid TEXT, "
+				+ ChatMessage.SESSION_UUID + " TEXT, "
+				+ ChatMessage.TIME_STAMP + " NUMBER, "
+				+ ChatMessage.MSG_BODY + " TEXT, "
+				+ ChatMessage.MSG_TYPE + " TEXT, UNIQUE(uuid) ON CONFLICT REPLACE)");
+		for (String sql : MessageSearchIndex.CREATE_STATEMENTS)
+			statement.execute(sql);
+		statement.close();
+
+		// The cumulative Zipf distribution of the vocabulary.
+		double[] cdf = new double[WORD_COUNT];
+		double sum = 0;
+		for (int i = 0; i < WORD_COUNT; i++) {
+			sum += 1.0 / (i + 1);
+			cdf[i] = sum;
+		}
+
+		Random random = new Random(0);
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO "
+				+ ChatMessage.TABLE_NAME + " VALUES (?, ?, ?, ?, ?)",
+				Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement unindex = connection.prepareStatement(
+				MessageSearchIndex.UNINDEX_STATEMENT);
+		PreparedStatement index = connection.prepareStatement(MessageSearchIndex.INDEX_STATEMENT);
+		long timestamp = System.currentTimeMillis() - messageCount * 60000L;
+
+		connection.setAutoCommit(false);
+		for (int i = 0; i < messageCount; i++) {
+			StringBuilder body = new StringBuilder();
+			int length = 3 + random.nextInt(15);
+
+			for (int j = 0; j < length; j++) {
+				int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+
+				body.append(word((rank < 0) ? -rank - 1 : rank)).append(' ');
+			}
+
+			// Index every message as it is written, like MessageHistoryServiceImpl does.
+			insert.setString(1, UUID.randomUUID().toString());
+			insert.setString(2, sessionUuid(random.nextInt(SESSION_COUNT)));
+			insert.setLong(3, timestamp += 60000);
+			insert.setString(4, body.toString());
+			insert.setString(5, "0");
+			insert.executeUpdate();
+
+			ResultSet keys = insert.getGeneratedKeys();
+			keys.next();
+			long rowId = keys.getLong(1);
+			keys.close();
+
+			unindex.setLong(1, rowId);
+			unindex.executeUpdate();
+			index.setLong(1, rowId);
+			index.setString(2, body.toString());
+			index.executeUpdate();
+			if (i % 10000 == 9999)
+				connection.commit();
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+		insert.close();
+		unindex.close();
+		index.close();
+	}
+
+	private static String sessionUuid(int session)
+	{
+		return "session-" + session;
+	}
+
+	/**
+	 * Gets a word of the vocabulary, the same letters for the same rank.
+	 */
+	private static String word(int rank)
+	{
+		StringBuilder word = new StringBuilder();
+		int n = rank + 26;
+
+		do {
+			word.append((char) ('a' + n % 26));
+			n /= 26;
+		}
+		while (n != 0);
+		return word.append('x').toString();
+	}
+
+	/**
+	 * The query which <tt>MessageHistoryServiceImpl.findByKeyword</tt> ran before the index.
+	 */
+	@Benchmark
+	public void like(Blackhole blackhole)
+			throws SQLException
+	{
+		PreparedStatement query = connection.prepareStatement("SELECT * FROM "
+				+ ChatMessage.TABLE_NAME + " WHERE " + ChatMessage.SESSION_UUID + "=? AND ( "
+				+ ChatMessage.MSG_BODY + " LIKE '%" + keyword + "%' ) ORDER BY "
+				+ ChatMessage.TIME_STAMP + " ASC");
+
+		query.setString(1, sessionUuid);
+		consume(query, blackhole);
+	}
+
+	@Benchmark
+	public void fullText(Blackhole blackhole)
+			throws SQLException
+	{
+		PreparedStatement query
+				= connection.prepareStatement(MessageSearchIndex.getMessagesQuery(true, 0, 1, false));
+
+		query.setString(1, MessageSearchIndex.toMatchQuery(new String[] { keyword }));
+		query.setString(2, sessionUuid);
+		consume(query, blackhole);
+	}
+
+	@Benchmark
+	public void rankedPage(Blackhole blackhole)
+			throws SQLException
+	{
+		PreparedStatement query
+				= connection.prepareStatement(MessageSearchIndex.getHitsQuery(1, false));
+		List<MessageSearchIndex.Hit> hits = new ArrayList<>();
+
+		query.setString(1, MessageSearchIndex.toMatchQuery(new String[] { keyword }));
+		query.setString(2, sessionUuid);
+
+		ResultSet resultSet = query.executeQuery();
+		while (resultSet.next()) {
+			hits.add(new MessageSearchIndex.Hit(resultSet.getLong(1), resultSet.getLong(2),
+					resultSet.getString(3), resultSet.getBytes(4)));
+		}
+		resultSet.close();
+		query.close();
+
+		MessageSearchIndex.rank(hits);
+		List<MessageSearchIndex.Hit> page = MessageSearchIndex.getPage(hits, 0, PAGE_SIZE);
+
+		query = connection.prepareStatement(MessageSearchIndex.getPageQuery(page.size()));
+		for (int i = 0; i < page.size(); i++)
+			query.setLong(i + 1, page.get(i).rowId);
+		consume(query, blackhole);
+	}
+
+	private static void consume(PreparedStatement query, Blackhole blackhole)
+			throws SQLException
+	{
+		ResultSet resultSet = query.executeQuery();
+		int columnCount = resultSet.getMetaData().getColumnCount();
+
+		while (resultSet.next()) {
+			for (int i = 1; i <= columnCount; i++)
+				blackhole.consume(resultSet.getString(i));
+		}
+		resultSet.close();
+		query.close();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia;
+
+import org.atalk.impl.neomedia.transform.PacketTransformer;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.protocol.PushSourceStream;
+import javax.media.protocol.SourceTransferHandler;
+
+/**
+ * Compares the per-packet receive loop of <tt>RTPConnectorInputStream</tt> with its batched
+ * <tt>DatagramChannel</tt> receive mode. Each invocation sends a burst of RTP-sized datagrams (as
+ * produced by a video frame) over the loopback interface to an
+ * <tt>RTPConnectorUDPInputStream</tt> and waits for its receive thread to hand all of them over,
+ * so the score is the latency of a burst. The secondary results report the number of
+ * <tt>reverseTransform</tt> calls the bursts took.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveBenchmark
+{
+	/**
+	 * The time in nanoseconds to wait for a burst to be received before the missing datagrams are
+	 * considered lost.
+	 */
+	private static final long RECEIVE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+	@Param({ "false", "true" })
+	public boolean batchReceive;
+
+	@Param({ "1", "16" })
+	public int burst;
+
+	@Param({ "1200" })
+	public int size;
+
+	private DatagramChannel channel;
+
+	/**
+	 * The number of datagrams sent so far less those which were lost.
+	 */
+	private long expected;
+
+	private RTPConnectorUDPInputStream in;
+
+	private DatagramPacket p;
+
+	private byte[] payload;
+
+	private final AtomicLong received = new AtomicLong();
+
+	private DatagramSocket sender;
+
+	private int seq;
+
+	private final CountingTransformer transformer = new CountingTransformer();
+
+	/**
+	 * The counts reported next to the score.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters
+	{
+		public long lostPackets;
+
+		public long receivedPackets;
+
+		public long reverseTransformCalls;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+
+		channel = DatagramChannel.open();
+		channel.socket().bind(new InetSocketAddress(loopback, 0));
+
+		final byte[] readBuffer = new byte[RTPConnectorInputStream.PACKET_RECEIVE_BUFFER_LENGTH];
+
+		in = new RTPConnectorUDPInputStream(channel.socket());
+		in.setBatchReceive(batchReceive);
+		in.setTransformer(transformer);
+		in.setTransferHandler(new SourceTransferHandler()
+		{
+			@Override
+			public void transferData(PushSourceStream stream)
+			{
+				try {
+					if (in.read(readBuffer, 0, readBuffer.length) > 0)
+						received.incrementAndGet();
+				}
+				catch (IOException ioe) {
+					throw new RuntimeException(ioe);
+				}
+			}
+		});
+
+		sender = new DatagramSocket(new InetSocketAddress(loopback, 0));
+		payload = new byte[size];
+		p = new DatagramPacket(payload, size, channel.socket().getLocalSocketAddress());
+
+		// A minimal RTP header so that the packets are not considered invalid.
+		payload[0] = (byte) 0x80;
+		payload[1] = (byte) 100;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+			throws IOException
+	{
+		in.close();
+		sender.close();
+		channel.close();
+	}
+
+	@Benchmark
+	public long receiveBurst(Counters counters)
+			throws IOException
+	{
+		long calls = transformer.calls.get();
+
+		for (int i = 0; i < burst; i++) {
+			payload[2] = (byte) (seq >> 8);
+			payload[3] = (byte) seq;
+			seq++;
+			sender.send(p);
+		}
+		expected += burst;
+
+		long deadline = System.nanoTime() + RECEIVE_TIMEOUT;
+		long lost = 0;
+		long n;
+
+		while ((n = received.get()) < expected) {
+			if (System.nanoTime() > deadline) {
+				lost = expected - n;
+				expected = n;
+				break;
+			}
+			Thread.yield();
+		}
+		counters.lostPackets += lost;
+		counters.receivedPackets += burst - lost;
+		counters.reverseTransformCalls += transformer.calls.get() - calls;
+		return n;
+	}
+
+	/**
+	 * A <tt>PacketTransformer</tt> which counts the invocations of its
+	 * {@link #reverseTransform(RawPacket[])} and leaves the packets as they are.
+	 */
+	private static class CountingTransformer
+		implements PacketTransformer
+	{
+		final AtomicLong calls = new AtomicLong();
+
+		@Override
+		public void close()
+		{
+		}
+
+		@Override
+		public RawPacket[] reverseTransform(RawPacket[] pkts)
+		{
+			calls.incrementAndGet();
+			return pkts;
+		}
+
+		@Override
+		public RawPacket[] transform(RawPacket[] pkts)
+		{
+			return pkts;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.conference;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the mixing of one 20 ms frame of a conference in which every participant hears the
+ * mix of all the others. <tt>mixMinus</tt> derives the mixes from a single total by
+ * <tt>MixMinusEngine</tt> while <tt>pairwise</tt> sums the inputs of every mix separately, which
+ * is what the audio mixer used to do, so the former is expected to grow linearly and the latter
+ * quadratically with {@link #inputCount}.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixMinusEngineBenchmark
+{
+	/**
+	 * The number of participants of the conference, each of which contributes an input and
+	 * receives a mix.
+	 */
+	@Param({ "2", "4", "8", "16", "32", "64" })
+	public int inputCount;
+
+	/**
+	 * The percentage of the participants which are silent.
+	 */
+	@Param({ "0", "75" })
+	public int silentPercentage;
+
+	/**
+	 * The number of samples of a frame: 20 ms at 16 kHz.
+	 */
+	@Param({ "320" })
+	public int sampleCount;
+
+	private short[][] inSamples;
+
+	/**
+	 * The audio levels of {@link #inSamples} as measured for the audio level indications.
+	 */
+	private int[] inLevels;
+
+	private final int[] excluded = new int[1];
+
+	private MixMinusEngine engine;
+
+	private short[][] mixes;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		Random random = new Random(inputCount);
+		int silentCount = inputCount * silentPercentage / 100;
+
+		inSamples = new short[inputCount][];
+		inLevels = new int[inputCount];
+		for (int i = 0; i < inputCount; i++) {
+			short[] samples = new short[sampleCount];
+
+			if (i >= silentCount) {
+				// A tone at a random frequency and with a random level.
+				double frequency = 200 + random.nextInt(800);
+				int level = 1000 + random.nextInt(8000);
+
+				for (int s = 0; s < sampleCount; s++)
+					samples[s] = (short) (level * Math.sin(2 * Math.PI * frequency * s / 16000));
+			}
+			inSamples[i] = samples;
+			inLevels[i] = (i >= silentCount) ? 100 : 0;
+		}
+		engine = new MixMinusEngine(0);
+		mixes = new short[inputCount][sampleCount];
+	}
+
+	@Benchmark
+	public void mixMinus(Blackhole blackhole)
+	{
+		engine.mixTotal(inSamples, inLevels, sampleCount);
+		for (int o = 0; o < inputCount; o++) {
+			excluded[0] = o;
+			engine.mixMinus(inSamples, excluded, 1, null, mixes[o], sampleCount);
+		}
+		blackhole.consume(mixes);
+	}
+
+	@Benchmark
+	public void pairwise(Blackhole blackhole)
+	{
+		for (int o = 0; o < inputCount; o++) {
+			short[] mix = mixes[o];
+
+			for (int s = 0; s < sampleCount; s++) {
+				int sample = 0;
+
+				for (int i = 0; i < inputCount; i++) {
+					if (i != o)
+						sample += inSamples[i][s];
+				}
+				mix[s] = MixMinusEngine.limit(sample);
+			}
+		}
+		blackhole.consume(mixes);
+	}
+}
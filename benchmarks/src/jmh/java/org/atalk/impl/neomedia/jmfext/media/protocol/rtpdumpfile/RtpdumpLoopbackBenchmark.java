@@ -0,0 +1,440 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jmfext.media.protocol.rtpdumpfile;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.*;
+import org.atalk.service.neomedia.codec.Constants;
+import org.atalk.service.neomedia.device.MediaDevice;
+import org.atalk.service.neomedia.format.MediaFormat;
+import org.atalk.service.neomedia.stats.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import ch.imvs.sdes4j.srtp.SrtpCryptoAttribute;
+
+/**
+ * Replays an rtpdump file through a sending and a receiving <tt>MediaStream</tt> connected over
+ * the loopback interface and reports the throughput, the per-packet latency and the allocation
+ * rate of the media stack, so that regressions show up without a phone or a network.
+ *
+ * The latency of a packet is measured from the external <tt>TransformEngine</tt> of the sending
+ * stream (i.e. before FEC, RED, RTX and SRTP) to the external <tt>TransformEngine</tt> of the
+ * receiving stream (i.e. after SRTP, RTX, FEC and RED). Packets may be dropped on their way by a
+ * relay on the loopback interface in order to exercise the recovery by FEC and RTX. The decoding
+ * and the rendering of the received media are not part of the measurement.
+ *
+ * It is not a JMH benchmark because it measures the whole stack over seconds of traffic rather
+ * than a method. It is run by the <tt>rtpdumpLoopback</tt> task of the benchmarks module:
+ * <tt>./gradlew :benchmarks:rtpdumpLoopback -Prtpdump.args="file.rtpdump [-encoding VP8] [-pt 100]
+ * [-clock 90000] [-rate 1] [-duration 30] [-srtp] [-red] [-fec] [-rtx] [-loss 0.0]"</tt>
+ *
+ * A <tt>-rate</tt> of 1 replays the file in real time, greater rates replay it faster and 0
+ * replays it as fast as possible.
+ *
+ * @author Eng Chong Meng
+ */
+public class RtpdumpLoopbackBenchmark
+{
+	private static final byte RED_PT = 116;
+
+	private static final byte RTX_PT = 96;
+
+	private static final byte ULPFEC_PT = 117;
+
+	/**
+	 * The maximum number of latency samples which are kept for the computation of the
+	 * percentiles.
+	 */
+	private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		if (args.length < 1) {
+			System.err.println("Usage: RtpdumpLoopbackBenchmark file.rtpdump [-encoding VP8]"
+				+ " [-pt 100] [-clock 90000] [-rate 1] [-duration 30] [-srtp] [-red] [-fec]"
+				+ " [-rtx] [-loss 0.0]");
+			return;
+		}
+
+		RtpdumpLoopbackBenchmark benchmark = new RtpdumpLoopbackBenchmark(args[0]);
+
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i];
+
+			if ("-encoding".equals(arg))
+				benchmark.encoding = args[++i];
+			else if ("-pt".equals(arg))
+				benchmark.payloadType = Byte.parseByte(args[++i]);
+			else if ("-clock".equals(arg))
+				benchmark.clockRate = Integer.parseInt(args[++i]);
+			else if ("-rate".equals(arg))
+				benchmark.rate = Double.parseDouble(args[++i]);
+			else if ("-duration".equals(arg))
+				benchmark.duration = Integer.parseInt(args[++i]);
+			else if ("-srtp".equals(arg))
+				benchmark.srtp = true;
+			else if ("-red".equals(arg))
+				benchmark.red = true;
+			else if ("-fec".equals(arg))
+				benchmark.fec = true;
+			else if ("-rtx".equals(arg))
+				benchmark.rtx = true;
+			else if ("-loss".equals(arg))
+				benchmark.loss = Double.parseDouble(args[++i]);
+			else
+				throw new IllegalArgumentException(arg);
+		}
+
+		LibJitsi.start();
+		try {
+			benchmark.run();
+		}
+		finally {
+			LibJitsi.stop();
+		}
+	}
+
+	/**
+	 * Gets the number of bytes allocated so far by all live threads of the JVM or <tt>-1</tt> if
+	 * the JVM does not tell.
+	 *
+	 * @return the number of bytes allocated so far or <tt>-1</tt>
+	 */
+	private static long getAllocatedBytes()
+	{
+		java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+
+		if (!(mxBean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+
+		long sum = 0;
+
+		for (long bytes : ((com.sun.management.ThreadMXBean) mxBean)
+			.getThreadAllocatedBytes(mxBean.getAllThreadIds())) {
+			if (bytes > 0)
+				sum += bytes;
+		}
+		return sum;
+	}
+
+	private int clockRate = 90000;
+
+	private int duration = 30;
+
+	private String encoding = Constants.VP8;
+
+	private final String filePath;
+
+	private boolean fec = false;
+
+	/**
+	 * The latencies in nanoseconds of the packets received so far, up to
+	 * {@link #MAX_LATENCY_SAMPLES}.
+	 */
+	private final long[] latencies = new long[MAX_LATENCY_SAMPLES];
+
+	private final AtomicInteger latencyCount = new AtomicInteger();
+
+	private double loss = 0;
+
+	private byte payloadType = 100;
+
+	private double rate = 1;
+
+	private final AtomicLong receivedPackets = new AtomicLong();
+
+	private boolean red = false;
+
+	private boolean rtx = false;
+
+	/**
+	 * The <tt>System.nanoTime()</tt> at which the packet with a specific RTP sequence number was
+	 * handed to the sending stack.
+	 */
+	private final AtomicLongArray sendTimes = new AtomicLongArray(1 << 16);
+
+	private final AtomicLong sentPackets = new AtomicLong();
+
+	private boolean srtp = false;
+
+	public RtpdumpLoopbackBenchmark(String filePath)
+	{
+		this.filePath = filePath;
+	}
+
+	/**
+	 * Adds the payload types of the media, RED, FEC and RTX to a specific <tt>MediaStream</tt>.
+	 */
+	private void addPayloadTypes(MediaStream stream, MediaFormat format)
+	{
+		MediaService mediaService = LibJitsi.getMediaService();
+
+		stream.addDynamicRTPPayloadType(payloadType, format);
+		if (red) {
+			stream.addDynamicRTPPayloadType(RED_PT,
+				mediaService.getFormatFactory().createMediaFormat(Constants.RED));
+		}
+		if (fec) {
+			stream.addDynamicRTPPayloadType(ULPFEC_PT,
+				mediaService.getFormatFactory().createMediaFormat(Constants.ULPFEC));
+		}
+		if (rtx) {
+			Map<String, String> formatParams = new HashMap<>();
+
+			formatParams.put("apt", Byte.toString(payloadType));
+			stream.addDynamicRTPPayloadType(RTX_PT,
+				mediaService.getFormatFactory().createMediaFormat(Constants.RTX, clockRate,
+					formatParams, null));
+		}
+	}
+
+	/**
+	 * Creates the <tt>TransformEngine</tt> which records the time at which the packets enter the
+	 * sending stack or computes their latency when they leave the receiving stack.
+	 */
+	private TransformEngine createProbe(final boolean sender)
+	{
+		final PacketTransformer rtpTransformer = new SinglePacketTransformerAdapter()
+		{
+			@Override
+			public RawPacket reverseTransform(RawPacket pkt)
+			{
+				if (!sender) {
+					long sendTime = sendTimes.getAndSet(pkt.getSequenceNumber(), 0);
+
+					receivedPackets.incrementAndGet();
+					if (sendTime != 0) {
+						int i = latencyCount.getAndIncrement();
+
+						if (i < latencies.length)
+							latencies[i] = System.nanoTime() - sendTime;
+					}
+				}
+				return pkt;
+			}
+
+			@Override
+			public RawPacket transform(RawPacket pkt)
+			{
+				if (sender) {
+					sendTimes.set(pkt.getSequenceNumber(), System.nanoTime());
+					sentPackets.incrementAndGet();
+				}
+				return pkt;
+			}
+		};
+
+		return new TransformEngine()
+		{
+			@Override
+			public PacketTransformer getRTCPTransformer()
+			{
+				return null;
+			}
+
+			@Override
+			public PacketTransformer getRTPTransformer()
+			{
+				return rtpTransformer;
+			}
+		};
+	}
+
+	/**
+	 * Starts a thread which relays the RTP packets received on a specific socket to a specific
+	 * address, dropping {@link #loss} of them at random.
+	 */
+	private Thread startRelay(final DatagramSocket socket, final InetSocketAddress target)
+	{
+		Thread thread = new Thread(getClass().getSimpleName() + "-relay")
+		{
+			@Override
+			public void run()
+			{
+				Random random = new Random();
+				DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+				while (!socket.isClosed()) {
+					try {
+						p.setLength(1500);
+						socket.receive(p);
+						if (random.nextDouble() >= loss) {
+							p.setSocketAddress(target);
+							socket.send(p);
+						}
+					}
+					catch (IOException ioe) {
+						if (!socket.isClosed())
+							System.err.println("relay: " + ioe);
+					}
+				}
+			}
+		};
+
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private void run()
+		throws Exception
+	{
+		ConfigurationService cfg = LibJitsi.getConfigurationService();
+		String rateStr = Double.toString(rate);
+
+		// The rtpdump file is replayed by the RtpdumpStream of the sending stream.
+		if (cfg == null)
+			System.setProperty(RtpdumpStream.RATE_PNAME, rateStr);
+		else
+			cfg.setProperty(RtpdumpStream.RATE_PNAME, rateStr);
+
+		MediaService mediaService = LibJitsi.getMediaService();
+		MediaFormat format = mediaService.getFormatFactory().createMediaFormat(encoding,
+			clockRate);
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		DatagramSocket senderData = new DatagramSocket(0, loopback);
+		DatagramSocket senderControl = new DatagramSocket(0, loopback);
+		DatagramSocket receiverData = new DatagramSocket(0, loopback);
+		DatagramSocket receiverControl = new DatagramSocket(0, loopback);
+		DatagramSocket relay = (loss > 0) ? new DatagramSocket(0, loopback) : null;
+
+		SrtpControl senderSrtp = null;
+		SrtpControl receiverSrtp = null;
+
+		if (srtp) {
+			SDesControl initiator = (SDesControl) mediaService.createSrtpControl(
+				SrtpControlType.SDES);
+			SDesControl responder = (SDesControl) mediaService.createSrtpControl(
+				SrtpControlType.SDES);
+			SrtpCryptoAttribute answer = responder.responderSelectAttribute(
+				Arrays.asList(initiator.getInitiatorCryptoAttributes()));
+
+			initiator.initiatorSelectAttribute(Collections.singletonList(answer));
+			senderSrtp = initiator;
+			receiverSrtp = responder;
+		}
+
+		MediaDevice device = RtpdumpMediaDevice.createRtpdumpVideoMediaDevice(filePath,
+			encoding + Constants._RTP, format);
+		MediaStream sender = mediaService.createMediaStream(
+			new DefaultStreamConnector(senderData, senderControl), device, senderSrtp);
+		MediaStream receiver = mediaService.createMediaStream(
+			new DefaultStreamConnector(receiverData, receiverControl), device, receiverSrtp);
+
+		sender.setName("sender");
+		receiver.setName("receiver");
+		sender.setDirection(MediaDirection.SENDONLY);
+		receiver.setDirection(MediaDirection.RECVONLY);
+		sender.setFormat(format);
+		receiver.setFormat(format);
+		addPayloadTypes(sender, format);
+		addPayloadTypes(receiver, format);
+		sender.setExternalTransformer(createProbe(true));
+		receiver.setExternalTransformer(createProbe(false));
+
+		InetSocketAddress receiverDataAddress
+			= (InetSocketAddress) receiverData.getLocalSocketAddress();
+
+		if (relay != null)
+			startRelay(relay, receiverDataAddress);
+		sender.setTarget(new MediaStreamTarget(
+			(InetSocketAddress) ((relay == null) ? receiverData : relay).getLocalSocketAddress(),
+			(InetSocketAddress) receiverControl.getLocalSocketAddress()));
+		receiver.setTarget(new MediaStreamTarget(
+			(InetSocketAddress) senderData.getLocalSocketAddress(),
+			(InetSocketAddress) senderControl.getLocalSocketAddress()));
+
+		receiver.start();
+		sender.start();
+		if (srtp) {
+			receiverSrtp.start(MediaType.VIDEO);
+			senderSrtp.start(MediaType.VIDEO);
+		}
+
+		System.err.println("Replaying " + filePath + " (" + encoding + ", rate " + rate
+			+ (srtp ? ", SRTP" : "") + (red ? ", RED" : "") + (fec ? ", FEC" : "")
+			+ (rtx ? ", RTX" : "") + ((loss > 0) ? ", loss " + loss : "") + ") for " + duration
+			+ " s");
+
+		long startTime = System.nanoTime();
+		long startAllocated = getAllocatedBytes();
+		long lastTime = startTime;
+		long lastAllocated = startAllocated;
+		long lastReceived = 0;
+
+		for (int s = 0; s < duration; s++) {
+			Thread.sleep(1000);
+
+			long time = System.nanoTime();
+			long allocated = getAllocatedBytes();
+			long received = receivedPackets.get();
+			double seconds = (time - lastTime) / 1e9;
+
+			System.err.println(String.format(Locale.US,
+				"%3d s: sent %d, received %d packets/s, allocated %s/s", s + 1,
+				sentPackets.get(), (long) ((received - lastReceived) / seconds),
+				formatBytes(allocated, lastAllocated, seconds)));
+			lastTime = time;
+			lastAllocated = allocated;
+			lastReceived = received;
+		}
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		long allocated = getAllocatedBytes();
+
+		sender.stop();
+		receiver.stop();
+
+		MediaStreamStats2 stats = receiver.getMediaStreamStats();
+		ReceiveTrackStats receiveStats = (stats == null) ? null : stats.getReceiveStats();
+
+		sender.close();
+		receiver.close();
+		if (relay != null)
+			relay.close();
+
+		int count = Math.min(latencyCount.get(), latencies.length);
+		long[] sorted = Arrays.copyOf(latencies, count);
+
+		Arrays.sort(sorted);
+		System.err.println(String.format(Locale.US,
+			"sent %d, received %d packets (%.0f packets/s), latency p50 %s us, p99 %s us,"
+				+ " allocated %s/s",
+			sentPackets.get(), receivedPackets.get(), receivedPackets.get() / seconds,
+			percentile(sorted, 50), percentile(sorted, 99),
+			formatBytes(allocated, startAllocated, seconds)));
+		if (receiveStats != null) {
+			System.err.println("receive stats: packets lost " + receiveStats.getPacketsLost()
+				+ ", jitter " + receiveStats.getJitter() + ", packets retransmitted "
+				+ receiveStats.getPacketsRetransmitted());
+		}
+	}
+
+	private static String formatBytes(long bytes, long lastBytes, double seconds)
+	{
+		if (bytes < 0 || lastBytes < 0)
+			return "n/a";
+		return String.format(Locale.US, "%.1f MB", (bytes - lastBytes) / seconds / 1e6);
+	}
+
+	private static String percentile(long[] sorted, int percentile)
+	{
+		if (sorted.length == 0)
+			return "n/a";
+
+		int i = (int) Math.min(sorted.length - 1, (long) sorted.length * percentile / 100);
+
+		return Long.toString(sorted[i] / 1000);
+	}
+}
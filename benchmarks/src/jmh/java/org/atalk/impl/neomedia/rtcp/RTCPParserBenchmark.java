@@ -0,0 +1,104 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtcp;
+
+import net.sf.fmj.media.rtp.RTCPPacket;
+import net.sf.fmj.media.rtp.util.BadFormatException;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Benchmarks the walk over the packets of RTCP compound packets by <tt>RTCPIterator</tt> and
+ * <tt>RTCPPacketCursor</tt> and the parsing of RTCP compound packets into FMJ <tt>RTCPPacket</tt>s
+ * by <tt>RTCPPacketParserEx</tt>. None modifies the packets so they are not restored between
+ * invocations.
+ *
+ * @author Eng Chong Meng
+ */
+public class RTCPParserBenchmark extends TransformEngineBenchmark
+{
+	private RawPacket[][] batches;
+
+	/**
+	 * The index in {@link #batches} of the next batch.
+	 */
+	private int index;
+
+	private final RTCPPacketParserEx parser = new RTCPPacketParserEx();
+
+	private final RTCPPacketCursor cursor = new RTCPPacketCursor();
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		List<RawPacket> pkts = Traffic.rtcp(rtpdump, TEMPLATE_COUNT);
+
+		if (batchSize > pkts.size())
+			throw new IllegalArgumentException("batchSize");
+
+		batches = new RawPacket[pkts.size() / batchSize][batchSize];
+		for (int i = 0; i < batches.length * batchSize; i++)
+			batches[i / batchSize][i % batchSize] = pkts.get(i);
+	}
+
+	@Benchmark
+	public int iterate()
+	{
+		int count = 0;
+
+		for (RawPacket pkt : nextBatch()) {
+			RTCPIterator it = new RTCPIterator(pkt);
+
+			while (it.hasNext()) {
+				ByteArrayBuffer next = it.next();
+
+				count += next.getLength();
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int cursor()
+	{
+		int count = 0;
+
+		for (RawPacket pkt : nextBatch()) {
+			RTCPPacketCursor cursor = this.cursor.reset(pkt);
+
+			while (cursor.next())
+				count += cursor.getLength();
+		}
+		return count;
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole)
+			throws BadFormatException
+	{
+		for (RawPacket pkt : nextBatch()) {
+			RTCPPacket rtcp = parser.parse(pkt.getBuffer(), pkt.getOffset(), pkt.getLength());
+
+			blackhole.consume(rtcp);
+		}
+	}
+
+	private RawPacket[] nextBatch()
+	{
+		RawPacket[] batch = batches[index];
+
+		if (++index == batches.length)
+			index = 0;
+		return batch;
+	}
+}
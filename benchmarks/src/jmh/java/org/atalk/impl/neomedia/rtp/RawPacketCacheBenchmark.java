@@ -0,0 +1,246 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the contention between the send path inserting packets into a <tt>RawPacketCache</tt>
+ * and NACK handlers looking packets up in it. In each group one writer thread caches RTP packets of
+ * a single SSRC while reader threads request recently sent sequence numbers. The
+ * <tt>RawPacketCache</tt> is compared with a cache which guards a <tt>TreeMap</tt> with a lock (as
+ * <tt>RawPacketCache</tt> used to). The hits and misses of the readers are reported next to the
+ * scores.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawPacketCacheBenchmark
+{
+	private static final long SSRC = 0x12345678L;
+
+	/**
+	 * The implementation of the cache, <tt>RawPacketCache</tt> or <tt>TreeMap</tt>.
+	 */
+	@Param({ "RawPacketCache", "TreeMap" })
+	public String cacheType;
+
+	@Param({ "1200" })
+	public int size;
+
+	private Cache cache;
+
+	/**
+	 * The sequence number of the packet cached last or <tt>-1</tt>.
+	 */
+	private volatile int lastSeq = -1;
+
+	/**
+	 * The number of readers which have been set up, used to seed their <tt>Random</tt>s.
+	 */
+	private final AtomicInteger readerCount = new AtomicInteger();
+
+	private RawPacket pkt;
+
+	private int seq;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		cache = "TreeMap".equals(cacheType) ? new LockedCache() : new RingCache();
+
+		byte[] buf = new byte[size];
+
+		// A minimal RTP header.
+		buf[0] = (byte) 0x80;
+		buf[1] = (byte) 100;
+		buf[8] = (byte) (SSRC >> 24);
+		buf[9] = (byte) (SSRC >> 16);
+		buf[10] = (byte) (SSRC >> 8);
+		buf[11] = (byte) SSRC;
+		pkt = new RawPacket(buf, 0, buf.length);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+			throws Exception
+	{
+		cache.close();
+	}
+
+	/**
+	 * The state of a reader thread. Its hits and misses are reported next to the scores.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Reader
+	{
+		public long hits;
+
+		public long misses;
+
+		Random random;
+
+		@Setup(Level.Trial)
+		public void setUp(RawPacketCacheBenchmark benchmark)
+		{
+			random = new Random(benchmark.readerCount.getAndIncrement());
+		}
+	}
+
+	@Benchmark
+	@Group("oneReader")
+	@GroupThreads(1)
+	public void insertWithOneReader()
+	{
+		insert();
+	}
+
+	@Benchmark
+	@Group("oneReader")
+	@GroupThreads(1)
+	public RawPacket getWithOneReader(Reader reader)
+	{
+		return get(reader);
+	}
+
+	@Benchmark
+	@Group("fourReaders")
+	@GroupThreads(1)
+	public void insertWithFourReaders()
+	{
+		insert();
+	}
+
+	@Benchmark
+	@Group("fourReaders")
+	@GroupThreads(4)
+	public RawPacket getWithFourReaders(Reader reader)
+	{
+		return get(reader);
+	}
+
+	private void insert()
+	{
+		int seq = this.seq;
+
+		pkt.setSequenceNumber(seq);
+		cache.insert(pkt);
+		lastSeq = seq;
+		this.seq = (seq + 1) & 0xffff;
+	}
+
+	private RawPacket get(Reader reader)
+	{
+		int last = lastSeq;
+
+		if (last < 0)
+			return null;
+
+		// NACKs are for packets sent within the last round trip.
+		RawPacket pkt = cache.get((last - reader.random.nextInt(64)) & 0xffff);
+
+		if (pkt != null) {
+			reader.hits++;
+			RawPacketPool.release(pkt);
+		}
+		else
+			reader.misses++;
+		return pkt;
+	}
+
+	private interface Cache
+	{
+		void insert(RawPacket pkt);
+
+		RawPacket get(int seq);
+
+		void close()
+			throws Exception;
+	}
+
+	private static class RingCache
+		implements Cache
+	{
+		private final RawPacketCache cache = new RawPacketCache(-1);
+
+		@Override
+		public void insert(RawPacket pkt)
+		{
+			cache.cachePacket(pkt);
+		}
+
+		@Override
+		public RawPacket get(int seq)
+		{
+			return cache.get(SSRC, seq);
+		}
+
+		@Override
+		public void close()
+			throws Exception
+		{
+			cache.close();
+		}
+	}
+
+	/**
+	 * A cache of the last 200 packets of a single SSRC in a <tt>TreeMap</tt> guarded by a lock.
+	 */
+	private static class LockedCache
+		implements Cache
+	{
+		private final TreeMap<Long, RawPacket> cache = new TreeMap<>();
+
+		private long roc = 0;
+
+		private int lastSeq = -1;
+
+		@Override
+		public synchronized void insert(RawPacket pkt)
+		{
+			int seq = pkt.getSequenceNumber();
+			RawPacket copy = RawPacketPool.acquireCopy(pkt.getBuffer(), pkt.getOffset(),
+				pkt.getLength());
+
+			// The writer of the benchmark sends in order.
+			if (seq < lastSeq)
+				roc++;
+			lastSeq = seq;
+			RawPacketPool.release(cache.put((roc << 16) | seq, copy));
+			while (cache.size() > 200)
+				RawPacketPool.release(cache.pollFirstEntry().getValue());
+		}
+
+		@Override
+		public synchronized RawPacket get(int seq)
+		{
+			RawPacket pkt = cache.get((roc << 16) | seq);
+
+			if (pkt == null && roc > 0)
+				pkt = cache.get(((roc - 1) << 16) | seq);
+			return RawPacketPool.retain(pkt);
+		}
+
+		@Override
+		public synchronized void close()
+		{
+			for (RawPacket pkt : cache.values())
+				RawPacketPool.release(pkt);
+			cache.clear();
+		}
+	}
+}
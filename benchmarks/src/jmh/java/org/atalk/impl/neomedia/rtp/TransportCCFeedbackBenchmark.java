@@ -0,0 +1,134 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp;
+
+import org.atalk.impl.neomedia.rtcp.RTCPTCCPacket;
+import org.atalk.service.neomedia.ByteArrayBufferImpl;
+import org.atalk.util.LRUCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the bookkeeping of <tt>TransportCCEngine</tt> for the packets it sends and the
+ * resolution of the packets reported by a transport-cc feedback packet into them. Each invocation
+ * sends {@link #packetCount} packets and processes the feedback which reports them, either through
+ * the <tt>SentPacketRing</tt> and the <tt>PacketVisitor</tt> of the FCI or through a
+ * <tt>LRUCache</tt> guarded by a lock and a <tt>PacketMap</tt> as <tt>TransportCCEngine</tt> used
+ * to. Every tenth packet is reported as not received.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportCCFeedbackBenchmark
+{
+	/**
+	 * The number of packets reported by a feedback packet, i.e. 100 ms worth of packets at
+	 * 1000 packets per second.
+	 */
+	@Param({ "100" })
+	public int packetCount;
+
+	/**
+	 * The FCI of the feedback packet.
+	 */
+	private byte[] fci;
+
+	/**
+	 * The transport-wide sequence number of the first packet reported by {@link #fci}.
+	 */
+	private int firstSeq;
+
+	private final SentPacketRing ring = new SentPacketRing();
+
+	private final Map<Integer, long[]> lruCache = new LRUCache<>(1000);
+
+	private final Object lruCacheSyncRoot = new Object();
+
+	/**
+	 * Sums up the resolved packets so that the resolution is not optimized away.
+	 */
+	private long sum;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		RTCPTCCPacket.PacketMap packets = new RTCPTCCPacket.PacketMap();
+
+		firstSeq = 1000;
+		for (int i = 0; i < packetCount; i++) {
+			if (i % 10 != 9)
+				packets.put(firstSeq + i, 1000000L + i);
+		}
+		fci = new RTCPTCCPacket(1, 2, packets, (byte) 0).fci;
+	}
+
+	@Benchmark
+	public long ring()
+	{
+		long now = System.currentTimeMillis();
+
+		for (int i = 0; i < packetCount; i++)
+			ring.put(firstSeq + i, 1200, now);
+
+		sum = 0;
+		RTCPTCCPacket.visitPacketsFci(fci, 0, fci.length, new RTCPTCCPacket.PacketVisitor()
+		{
+			@Override
+			public void visit(int seq, long arrivalTime250Us)
+			{
+				if (arrivalTime250Us == -1)
+					return;
+
+				long packet = ring.remove(seq);
+
+				if (packet != SentPacketRing.EMPTY) {
+					sum += arrivalTime250Us + SentPacketRing.getSendTime24Bits(packet)
+							+ SentPacketRing.getLength(packet);
+				}
+			}
+		});
+		return sum;
+	}
+
+	@Benchmark
+	public long packetMap()
+	{
+		long now = System.currentTimeMillis();
+
+		for (int i = 0; i < packetCount; i++) {
+			synchronized (lruCacheSyncRoot) {
+				lruCache.put(firstSeq + i, new long[] { 1200, now });
+			}
+		}
+
+		RTCPTCCPacket.PacketMap packets
+				= RTCPTCCPacket.getPacketsFci(new ByteArrayBufferImpl(fci, 0, fci.length));
+
+		sum = 0;
+		for (Map.Entry<Integer, Long> entry : packets.entrySet()) {
+			long arrivalTime250Us = entry.getValue();
+
+			if (arrivalTime250Us == -1)
+				continue;
+
+			long[] packet;
+
+			synchronized (lruCacheSyncRoot) {
+				packet = lruCache.remove(entry.getKey());
+			}
+			if (packet != null)
+				sum += arrivalTime250Us + packet[1] + packet[0];
+		}
+		return sum;
+	}
+}
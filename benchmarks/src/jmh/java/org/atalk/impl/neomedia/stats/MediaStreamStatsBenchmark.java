@@ -0,0 +1,89 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.stats;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the statistics which <tt>MediaStreamStats2Impl</tt> keeps for every RTP packet sent
+ * and received by a stream when the packets of several SSRCs are processed on several threads,
+ * which all update the aggregate statistics and histograms of the stream.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaStreamStatsBenchmark
+{
+	private BenchmarkMediaStream stream;
+
+	private MediaStreamStats2Impl stats;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		stream = new BenchmarkMediaStream(Traffic.SSRC, Traffic.RTX_SSRC, Traffic.FEC_SSRC, null);
+		stats = (MediaStreamStats2Impl) stream.getMediaStreamStats();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		stream.close();
+	}
+
+	/**
+	 * The SSRC and sequence numbers of the packets of a benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class Track
+	{
+		long ssrc;
+
+		int seq;
+
+		@Setup(Level.Trial)
+		public void setUp(MediaStreamStatsBenchmark benchmark)
+		{
+			ssrc = Traffic.SSRC + benchmark.threadCount.getAndIncrement();
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void rtpPacketReceived(Track track)
+	{
+		stats.rtpPacketReceived(track.ssrc, track.seq++ & 0xFFFF, 1200);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void rtpPacketSent(Track track)
+	{
+		stats.rtpPacketSent(track.ssrc, track.seq++ & 0xFFFF, 1200);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordLatency()
+	{
+		stats.getReceiveLatencyHistogram().record(System.nanoTime() & 0x3FF);
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks the stamping of outgoing RTP packets with the abs-send-time header extension by
+ * <tt>AbsSendTimeEngine</tt>, which adds the extension to the packets which do not have it.
+ *
+ * @author Eng Chong Meng
+ */
+public class AbsSendTimeEngineBenchmark extends TransformEngineBenchmark
+{
+	/**
+	 * The ID of the abs-send-time header extension.
+	 */
+	private static final int EXTENSION_ID = 3;
+
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private AbsSendTimeEngine engine;
+
+	private PacketBatch packets;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		engine = new AbsSendTimeEngine();
+		engine.setExtensionID(EXTENSION_ID);
+		packets = new PacketBatch(Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength), batchSize);
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return engine.transform(packets.next());
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.impl.neomedia.MediaStreamImpl;
+import org.atalk.impl.neomedia.rtp.*;
+import org.atalk.service.neomedia.codec.Constants;
+
+/**
+ * A <tt>MediaStreamImpl</tt> without a <tt>MediaDevice</tt> and <tt>StreamConnector</tt> which
+ * provides the <tt>TransformEngine</tt>s under benchmark with what they query from their stream:
+ * a single track of which the RTX and FEC SSRCs are known and the CSRCs to be sent.
+ *
+ * @author Eng Chong Meng
+ */
+public class BenchmarkMediaStream extends MediaStreamImpl
+{
+	private final long[] localContributingSourceIDs;
+
+	private final MediaStreamTrackReceiver mediaStreamTrackReceiver;
+
+	/**
+	 * Initializes a new <tt>BenchmarkMediaStream</tt>.
+	 *
+	 * @param primarySsrc
+	 * 		the SSRC of the media of the single track of the stream
+	 * @param rtxSsrc
+	 * 		the SSRC of the RTX of the track
+	 * @param fecSsrc
+	 * 		the SSRC of the FlexFEC of the track
+	 * @param localContributingSourceIDs
+	 * 		the CSRCs to be sent by the stream or <tt>null</tt>
+	 */
+	public BenchmarkMediaStream(long primarySsrc, long rtxSsrc, long fecSsrc,
+		long[] localContributingSourceIDs)
+	{
+		super(null, null, new NullSrtpControl());
+
+		this.localContributingSourceIDs = localContributingSourceIDs;
+
+		mediaStreamTrackReceiver = new MediaStreamTrackReceiver(this);
+
+		RTPEncodingDesc[] encodings = new RTPEncodingDesc[1];
+		MediaStreamTrackDesc track
+				= new MediaStreamTrackDesc(mediaStreamTrackReceiver, encodings, false);
+
+		encodings[0] = new RTPEncodingDesc(track, primarySsrc);
+		encodings[0].addSecondarySsrc(rtxSsrc, Constants.RTX);
+		encodings[0].addSecondarySsrc(fecSsrc, Constants.FLEXFEC_03);
+		mediaStreamTrackReceiver.setMediaStreamTracks(new MediaStreamTrackDesc[] { track });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long[] getLocalContributingSourceIDs()
+	{
+		return localContributingSourceIDs;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MediaStreamTrackReceiver getMediaStreamTrackReceiver()
+	{
+		return mediaStreamTrackReceiver;
+	}
+}
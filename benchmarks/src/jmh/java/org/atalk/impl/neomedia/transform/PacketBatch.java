@@ -0,0 +1,123 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.neomedia.RawPacket;
+
+import java.util.List;
+
+/**
+ * Hands out batches of packets restored from templates for the purposes of benchmarking
+ * <tt>PacketTransformer</tt>s which modify the packets in place. The <tt>RawPacket</tt>s, their
+ * buffers and the arrays of the batches are allocated once so that only the transformers under
+ * test allocate while measured. Successive batches cycle through the templates so that captured
+ * traffic is replayed in its order.
+ *
+ * @author Eng Chong Meng
+ */
+public class PacketBatch
+{
+	/**
+	 * The room left in the buffers after the templates for the transformers which grow the
+	 * packets (e.g. the authentication tag of SRTP, RTP header extensions or a CSRC list).
+	 */
+	private static final int HEADROOM = 256;
+
+	/**
+	 * The buffers which are restored from {@link #templates}.
+	 */
+	private final byte[][] buffers;
+
+	private final RawPacket[] pkts;
+
+	/**
+	 * The array which is handed out by {@link #next()}, refilled for every batch because the
+	 * transformers may replace or remove its elements.
+	 */
+	private final RawPacket[] batch;
+
+	private final byte[][] templates;
+
+	/**
+	 * The index in {@link #templates} of the first packet of the next batch.
+	 */
+	private int index;
+
+	/**
+	 * Initializes a new <tt>PacketBatch</tt> which hands out batches of a specific size.
+	 *
+	 * @param templates
+	 * 		the packets to hand out. They are copied.
+	 * @param batchSize
+	 * 		the number of packets in a batch, not greater than the number of templates so that a
+	 * 		packet does not appear twice in a batch
+	 */
+	public PacketBatch(List<RawPacket> templates, int batchSize)
+	{
+		if (batchSize < 1 || batchSize > templates.size())
+			throw new IllegalArgumentException("batchSize");
+
+		int count = templates.size();
+
+		this.templates = new byte[count][];
+		buffers = new byte[count][];
+		pkts = new RawPacket[count];
+		for (int i = 0; i < count; i++) {
+			RawPacket template = templates.get(i);
+			byte[] bytes = new byte[template.getLength()];
+
+			System.arraycopy(template.getBuffer(), template.getOffset(), bytes, 0, bytes.length);
+			this.templates[i] = bytes;
+			buffers[i] = new byte[bytes.length + HEADROOM];
+			pkts[i] = new RawPacket(buffers[i], 0, bytes.length);
+		}
+		batch = new RawPacket[batchSize];
+	}
+
+	/**
+	 * Gets the number of templates of this <tt>PacketBatch</tt>.
+	 *
+	 * @return the number of templates of this <tt>PacketBatch</tt>
+	 */
+	public int getTemplateCount()
+	{
+		return templates.length;
+	}
+
+	/**
+	 * Restores the next packets from their templates.
+	 *
+	 * @return the next batch of packets
+	 */
+	public RawPacket[] next()
+	{
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = restore(index);
+			if (++index == templates.length)
+				index = 0;
+		}
+		return batch;
+	}
+
+	/**
+	 * Restores a packet from its template.
+	 *
+	 * @param i
+	 * 		the index of the template
+	 * @return the restored packet
+	 */
+	private RawPacket restore(int i)
+	{
+		byte[] template = templates[i];
+		RawPacket pkt = pkts[i];
+
+		System.arraycopy(template, 0, buffers[i], 0, template.length);
+		pkt.setBuffer(buffers[i]);
+		pkt.setOffset(0);
+		pkt.setLength(template.length);
+		return pkt;
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Measures the restoration of the packets from their templates which precedes the transformation
+ * in the other benchmarks so that it can be told apart from the cost of the transformers.
+ *
+ * @author Eng Chong Meng
+ */
+public class PacketBatchBenchmark extends TransformEngineBenchmark
+{
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PacketBatch packets;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		packets = new PacketBatch(Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength), batchSize);
+	}
+
+	@Benchmark
+	public RawPacket[] restore()
+	{
+		return packets.next();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the encapsulation of RTP packets in RED (RFC 2198) and their decapsulation by
+ * <tt>REDTransformEngine</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+public class REDTransformEngineBenchmark extends TransformEngineBenchmark
+{
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PacketBatch mediaPackets;
+
+	private PacketBatch redPackets;
+
+	private REDTransformEngine receiver;
+
+	private REDTransformEngine sender;
+
+	/**
+	 * The array in which the RED packets are handed to {@link #receiver} one at a time.
+	 */
+	private final RawPacket[] single = new RawPacket[1];
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		sender = new REDTransformEngine((byte) -1, Traffic.RED_PAYLOAD_TYPE);
+		receiver = new REDTransformEngine(Traffic.RED_PAYLOAD_TYPE, (byte) -1);
+
+		List<RawPacket> pkts = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+		PacketBatch encapsulator = new PacketBatch(pkts, 1);
+		List<RawPacket> redPkts = new ArrayList<>(pkts.size());
+
+		for (int i = 0; i < pkts.size(); i++)
+			redPkts.add(sender.transform(encapsulator.next())[0]);
+
+		mediaPackets = new PacketBatch(pkts, batchSize);
+		redPackets = new PacketBatch(redPkts, batchSize);
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return sender.transform(mediaPackets.next());
+	}
+
+	/**
+	 * Decapsulates a batch of RED packets. <tt>REDTransformEngine</tt> reverse-transforms the
+	 * first packet of the array it is given only (as the RTP stack hands it a single packet at a
+	 * time) so the packets of the batch are handed to it one at a time.
+	 */
+	@Benchmark
+	public void reverseTransform(Blackhole blackhole)
+	{
+		for (RawPacket pkt : redPackets.next()) {
+			single[0] = pkt;
+			blackhole.consume(receiver.reverseTransform(single));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.codec.Constants;
+import org.atalk.service.neomedia.format.MediaFormatFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the decapsulation of RTX (RFC 4588) packets by <tt>RtxTransformer</tt>. The
+ * retransmission upon NACKs needs the packet cache and the connector of a real stream and is not
+ * covered.
+ *
+ * @author Eng Chong Meng
+ */
+public class RtxTransformerBenchmark extends TransformEngineBenchmark
+{
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PacketBatch packets;
+
+	private PacketTransformer rtpTransformer;
+
+	private RtxTransformer rtxTransformer;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		List<RawPacket> media = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+		RawPacket first = media.get(0);
+		BenchmarkMediaStream mediaStream = new BenchmarkMediaStream(first.getSSRCAsLong(),
+			Traffic.RTX_SSRC, Traffic.FEC_SSRC, null);
+		MediaFormatFactory formatFactory = LibJitsi.getMediaService().getFormatFactory();
+		Map<String, String> formatParams = new HashMap<>();
+
+		formatParams.put("apt", Byte.toString(first.getPayloadType()));
+		mediaStream.addDynamicRTPPayloadType(first.getPayloadType(),
+			formatFactory.createMediaFormat(Constants.VP8, 90000));
+		mediaStream.addDynamicRTPPayloadType(Traffic.RTX_PAYLOAD_TYPE,
+			formatFactory.createMediaFormat(Constants.RTX, 90000, formatParams, null));
+
+		rtxTransformer = new RtxTransformer(mediaStream);
+		rtxTransformer.onDynamicPayloadTypesChanged();
+		rtpTransformer = rtxTransformer.getRTPTransformer();
+		packets = new PacketBatch(Traffic.rtx(media, Traffic.RTX_SSRC, Traffic.RTX_PAYLOAD_TYPE),
+			batchSize);
+	}
+
+	@Benchmark
+	public RawPacket[] reverseTransform()
+	{
+		return rtpTransformer.reverseTransform(packets.next());
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.impl.neomedia.RTCPPacketPredicate;
+import org.atalk.impl.neomedia.jmfext.media.protocol.rtpdumpfile.RtpdumpFileReader;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.RawPacket;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Synthesizes or reads from rtpdump files the RTP and RTCP traffic fed to the benchmarks of the
+ * <tt>TransformEngine</tt>s. The synthetic traffic is the same from run to run.
+ *
+ * @author Eng Chong Meng
+ */
+public class Traffic
+{
+	/**
+	 * The SSRC of the synthetic media.
+	 */
+	public static final long SSRC = 0x11223344L;
+
+	/**
+	 * The SSRC of the synthetic RTX.
+	 */
+	public static final long RTX_SSRC = 0x55667788L;
+
+	/**
+	 * The SSRC of the synthetic FlexFEC.
+	 */
+	public static final long FEC_SSRC = 0x99aabbccL;
+
+	/**
+	 * The SSRC of the sender of the synthetic RTCP.
+	 */
+	public static final long RTCP_SSRC = 0x0d0e0f10L;
+
+	public static final byte PAYLOAD_TYPE = 100;
+
+	public static final byte RED_PAYLOAD_TYPE = 116;
+
+	public static final byte ULPFEC_PAYLOAD_TYPE = 117;
+
+	public static final byte FLEXFEC_PAYLOAD_TYPE = 118;
+
+	public static final byte RTX_PAYLOAD_TYPE = 96;
+
+	/**
+	 * The increment of the RTP timestamp of successive synthetic packets, that of 20ms of audio
+	 * at 48kHz.
+	 */
+	private static final int TIMESTAMP_INCREMENT = 960;
+
+	/**
+	 * The indicator which determines whether {@link #startLibJitsi()} has started
+	 * <tt>LibJitsi</tt>.
+	 */
+	private static boolean libJitsiStarted = false;
+
+	/**
+	 * Starts <tt>LibJitsi</tt> once per JVM for the <tt>TransformEngine</tt>s which read their
+	 * configuration or need the <tt>MediaService</tt>.
+	 */
+	public static synchronized void startLibJitsi()
+	{
+		if (!libJitsiStarted) {
+			LibJitsi.start();
+			libJitsiStarted = true;
+		}
+	}
+
+	/**
+	 * Synthesizes RTP packets of a single SSRC with consecutive sequence numbers.
+	 *
+	 * @param count
+	 * 		the number of packets
+	 * @param ssrc
+	 * 		the SSRC of the packets
+	 * @param payloadType
+	 * 		the payload type of the packets
+	 * @param payloadLength
+	 * 		the length in bytes of the payload of the packets
+	 * @return the synthesized packets
+	 */
+	public static List<RawPacket> rtp(int count, long ssrc, byte payloadType, int payloadLength)
+	{
+		List<RawPacket> pkts = new ArrayList<>(count);
+		Random random = new Random(ssrc);
+
+		for (int i = 0; i < count; i++) {
+			byte[] buf = new byte[RawPacket.FIXED_HEADER_SIZE + payloadLength];
+			RawPacket pkt = new RawPacket(buf, 0, buf.length);
+
+			random.nextBytes(buf);
+			buf[0] = (byte) 0x80;
+			pkt.setPayloadType(payloadType);
+			pkt.setSequenceNumber(i & 0xffff);
+			pkt.setTimestamp((long) i * TIMESTAMP_INCREMENT);
+			pkt.setSSRC((int) ssrc);
+			pkts.add(pkt);
+		}
+		return pkts;
+	}
+
+	/**
+	 * Encapsulates RTP packets in RTX (RFC 4588) the way a sender retransmits them.
+	 *
+	 * @param media
+	 * 		the RTP packets to encapsulate
+	 * @param rtxSsrc
+	 * 		the SSRC of the RTX stream
+	 * @param rtxPayloadType
+	 * 		the payload type of RTX
+	 * @return the RTX packets
+	 */
+	public static List<RawPacket> rtx(List<RawPacket> media, long rtxSsrc, byte rtxPayloadType)
+	{
+		List<RawPacket> pkts = new ArrayList<>(media.size());
+		int seq = 0;
+
+		for (RawPacket pkt : media) {
+			int hdrLen = pkt.getHeaderLength();
+			int len = pkt.getLength();
+			byte[] buf = new byte[len + 2];
+
+			System.arraycopy(pkt.getBuffer(), pkt.getOffset(), buf, 0, hdrLen);
+			System.arraycopy(pkt.getBuffer(), pkt.getOffset() + hdrLen, buf, hdrLen + 2,
+				len - hdrLen);
+
+			RawPacket rtx = new RawPacket(buf, 0, buf.length);
+			int osn = pkt.getSequenceNumber();
+
+			// The original sequence number precedes the original payload.
+			buf[hdrLen] = (byte) (osn >> 8);
+			buf[hdrLen + 1] = (byte) osn;
+			rtx.setPayloadType(rtxPayloadType);
+			rtx.setSequenceNumber(seq++ & 0xffff);
+			rtx.setSSRC((int) rtxSsrc);
+			pkts.add(rtx);
+		}
+		return pkts;
+	}
+
+	/**
+	 * Synthesizes RTCP compound packets made of a sender report with one report block, a generic
+	 * NACK (RFC 4585) and a REMB.
+	 *
+	 * @param count
+	 * 		the number of compound packets
+	 * @param senderSsrc
+	 * 		the SSRC of the sender of the packets
+	 * @param mediaSsrc
+	 * 		the SSRC which is reported on
+	 * @return the synthesized packets
+	 */
+	public static List<RawPacket> rtcp(int count, long senderSsrc, long mediaSsrc)
+	{
+		List<RawPacket> pkts = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			byte[] buf = new byte[52 + 20 + 24];
+			int off = 0;
+
+			// SR with one report block.
+			off = writeHeader(buf, off, 1, 200, 52);
+			off = writeInt(buf, off, senderSsrc);
+			off = writeInt(buf, off, 0xe0000000L + i); // NTP seconds
+			off = writeInt(buf, off, 0); // NTP fraction
+			off = writeInt(buf, off, (long) i * TIMESTAMP_INCREMENT * 50);
+			off = writeInt(buf, off, i * 50);
+			off = writeInt(buf, off, i * 50 * 1200);
+			off = writeInt(buf, off, mediaSsrc);
+			off = writeInt(buf, off, 0x01000002L); // fraction lost, cumulative lost
+			off = writeInt(buf, off, i * 50);
+			off = writeInt(buf, off, 20); // jitter
+			off = writeInt(buf, off, 0); // LSR
+			off = writeInt(buf, off, 0); // DLSR
+
+			// Generic NACK of two packets.
+			off = writeHeader(buf, off, 1, 205, 20);
+			off = writeInt(buf, off, senderSsrc);
+			off = writeInt(buf, off, mediaSsrc);
+			off = writeInt(buf, off, ((i * 50L) & 0xffff) << 16 | 0x0001);
+			off = writeInt(buf, off, ((i * 50L + 20) & 0xffff) << 16);
+
+			// REMB of 1.5Mbps (exponent 2, mantissa 375000) for one SSRC.
+			off = writeHeader(buf, off, 15, 206, 24);
+			off = writeInt(buf, off, senderSsrc);
+			off = writeInt(buf, off, 0);
+			off = writeInt(buf, off, 0x52454d42L); // "REMB"
+			off = writeInt(buf, off, (1L << 24) | (2L << 18) | 375000L);
+			writeInt(buf, off, mediaSsrc);
+
+			pkts.add(new RawPacket(buf, 0, buf.length));
+		}
+		return pkts;
+	}
+
+	/**
+	 * Reads the RTP or the RTCP packets of an rtpdump file.
+	 *
+	 * @param path
+	 * 		the path of the rtpdump file
+	 * @param rtcp
+	 * 		<tt>true</tt> to read the RTCP packets, <tt>false</tt> to read the RTP packets
+	 * @param maxCount
+	 * 		the maximum number of packets to read
+	 * @return the packets read
+	 * @throws IOException
+	 * 		if the file cannot be read
+	 */
+	public static List<RawPacket> readRtpdump(String path, boolean rtcp, int maxCount)
+			throws IOException
+	{
+		// RtpdumpFileReader only prints the failure to open the file.
+		if (!new File(path).isFile())
+			throw new FileNotFoundException(path);
+
+		RtpdumpFileReader reader = new RtpdumpFileReader(path);
+		List<RawPacket> pkts = new ArrayList<>();
+
+		while (pkts.size() < maxCount) {
+			RawPacket pkt;
+
+			try {
+				pkt = reader.getNextPacket(false);
+			}
+			catch (EOFException eofe) {
+				break;
+			}
+			if (pkt.getLength() >= 4
+					&& RTCPPacketPredicate.INSTANCE.test(pkt) == rtcp
+					&& (rtcp || pkt.getLength() >= RawPacket.FIXED_HEADER_SIZE))
+				pkts.add(pkt);
+		}
+		if (pkts.isEmpty()) {
+			throw new IOException("No " + (rtcp ? "RTCP" : "RTP") + " packets in " + path);
+		}
+		return pkts;
+	}
+
+	/**
+	 * Gets the RTP traffic of a benchmark: the RTP packets of an rtpdump file if one is
+	 * specified or synthetic packets of {@link #SSRC}.
+	 *
+	 * @param rtpdump
+	 * 		the path of the rtpdump file or an empty <tt>String</tt> for synthetic traffic
+	 * @param count
+	 * 		the number of packets
+	 * @param payloadLength
+	 * 		the length in bytes of the payload of the synthetic packets
+	 * @return the packets
+	 * @throws IOException
+	 * 		if the rtpdump file cannot be read
+	 */
+	public static List<RawPacket> rtp(String rtpdump, int count, int payloadLength)
+			throws IOException
+	{
+		return (rtpdump == null || rtpdump.length() == 0)
+				? rtp(count, SSRC, PAYLOAD_TYPE, payloadLength)
+				: readRtpdump(rtpdump, false, count);
+	}
+
+	/**
+	 * Gets the RTCP traffic of a benchmark: the RTCP packets of an rtpdump file if one is
+	 * specified or synthetic compound packets about {@link #SSRC}.
+	 *
+	 * @param rtpdump
+	 * 		the path of the rtpdump file or an empty <tt>String</tt> for synthetic traffic
+	 * @param count
+	 * 		the number of packets
+	 * @return the packets
+	 * @throws IOException
+	 * 		if the rtpdump file cannot be read
+	 */
+	public static List<RawPacket> rtcp(String rtpdump, int count)
+			throws IOException
+	{
+		return (rtpdump == null || rtpdump.length() == 0)
+				? rtcp(count, RTCP_SSRC, SSRC)
+				: readRtpdump(rtpdump, true, count);
+	}
+
+	/**
+	 * Writes the header of an RTCP packet.
+	 *
+	 * @return the offset after the header
+	 */
+	private static int writeHeader(byte[] buf, int off, int countOrFmt, int pt, int length)
+	{
+		buf[off] = (byte) (0x80 | countOrFmt);
+		buf[off + 1] = (byte) pt;
+		buf[off + 2] = (byte) ((length / 4 - 1) >> 8);
+		buf[off + 3] = (byte) (length / 4 - 1);
+		return off + 4;
+	}
+
+	/**
+	 * Writes 32 bits in network byte order.
+	 *
+	 * @return the offset after the written bits
+	 */
+	private static int writeInt(byte[] buf, int off, long value)
+	{
+		buf[off] = (byte) (value >> 24);
+		buf[off + 1] = (byte) (value >> 16);
+		buf[off + 2] = (byte) (value >> 8);
+		buf[off + 3] = (byte) value;
+		return off + 4;
+	}
+}
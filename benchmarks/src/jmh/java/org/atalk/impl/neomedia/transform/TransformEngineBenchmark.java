@@ -0,0 +1,48 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parameters and the settings shared by the benchmarks of the <tt>TransformEngine</tt>s.
+ * Each invocation of a benchmark method transforms or reverse-transforms one batch of
+ * {@link #batchSize} packets so the score with a batch of one packet is the cost per packet and
+ * the score with larger batches is the cost per batch. The packets are restored from their
+ * templates before every invocation, the cost of which {@link PacketBatchBenchmark} measures.
+ *
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class TransformEngineBenchmark
+{
+	/**
+	 * The number of distinct packets which are cycled through by a benchmark, large enough for
+	 * the transformers which keep per-packet state (e.g. the FEC receivers) to see a steady
+	 * stream rather than the same few packets over and over again.
+	 */
+	protected static final int TEMPLATE_COUNT = 512;
+
+	/**
+	 * The number of packets transformed by a single invocation of a benchmark method.
+	 */
+	@Param({ "1", "16" })
+	public int batchSize;
+
+	/**
+	 * The path of an rtpdump file with captured traffic or an empty <tt>String</tt> for synthetic
+	 * traffic.
+	 */
+	@Param({ "" })
+	public String rtpdump;
+}
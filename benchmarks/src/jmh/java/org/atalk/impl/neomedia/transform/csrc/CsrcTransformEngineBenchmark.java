@@ -0,0 +1,61 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.csrc;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks the insertion of the CSRC list of a conference into outgoing RTP packets by
+ * <tt>CsrcTransformEngine</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+public class CsrcTransformEngineBenchmark extends TransformEngineBenchmark
+{
+	/**
+	 * The number of contributing sources of the conference.
+	 */
+	@Param({ "4" })
+	public int csrcCount;
+
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private CsrcTransformEngine engine;
+
+	private PacketBatch packets;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		long[] csrcs = new long[csrcCount];
+
+		for (int i = 0; i < csrcs.length; i++)
+			csrcs[i] = Traffic.SSRC + 1 + i;
+		engine = new CsrcTransformEngine(new BenchmarkMediaStream(Traffic.SSRC, Traffic.RTX_SSRC,
+			Traffic.FEC_SSRC, csrcs));
+		packets = new PacketBatch(Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength), batchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		engine.close();
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return engine.transform(packets.next());
+	}
+}
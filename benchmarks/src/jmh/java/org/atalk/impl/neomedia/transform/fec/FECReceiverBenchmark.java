@@ -0,0 +1,170 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.fec;
+
+import org.atalk.impl.neomedia.rtp.RawPacketPool;
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the receipt of ulpfec protected media by <tt>FECTransformEngine</tt> under
+ * different patterns of packet loss, and the XOR of packet data on which the recovery relies.
+ *
+ * The protected traffic is generated by <tt>FECTransformEngine</tt> itself and the packets
+ * (media and ulpfec alike) are dropped according to {@link #lossPattern}:
+ * <ul>
+ * <li><tt>none</tt>: nothing is lost so the receiver only keeps track of the packets;</li>
+ * <li><tt>random</tt>: every packet is lost with a probability of {@link #lossRate};</li>
+ * <li><tt>burst</tt>: bursts of {@link #BURST_LENGTH} consecutive packets are lost at an
+ * average rate of {@link #lossRate};</li>
+ * <li><tt>periodic</tt>: the first media packet of every group protected by an ulpfec packet
+ * is lost so that every ulpfec packet recovers one.</li>
+ * </ul>
+ *
+ * @author Eng Chong Meng
+ */
+public class FECReceiverBenchmark extends TransformEngineBenchmark
+{
+	/**
+	 * The number of consecutive packets lost in a burst of the <tt>burst</tt> loss pattern.
+	 */
+	private static final int BURST_LENGTH = 3;
+
+	/**
+	 * The number of media packets protected by an ulpfec packet.
+	 */
+	@Param({ "5" })
+	public int fecRate;
+
+	@Param({ "none", "random", "burst", "periodic" })
+	public String lossPattern;
+
+	/**
+	 * The ratio of the packets lost by the <tt>random</tt> and <tt>burst</tt> loss patterns.
+	 */
+	@Param({ "0.05" })
+	public double lossRate;
+
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PacketBatch receivedPackets;
+
+	private FECTransformEngine ulpfecReceiver;
+
+	/**
+	 * The source of the XOR micro benchmarks.
+	 */
+	private byte[] xorSrc;
+
+	/**
+	 * The destination of the XOR micro benchmarks.
+	 */
+	private byte[] xorDst;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		List<RawPacket> pkts = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+
+		BenchmarkMediaStream mediaStream = new BenchmarkMediaStream(pkts.get(0).getSSRCAsLong(),
+			Traffic.RTX_SSRC, Traffic.FEC_SSRC, null);
+
+		ulpfecReceiver = new FECTransformEngine(FECTransformEngine.FecType.ULPFEC,
+			Traffic.ULPFEC_PAYLOAD_TYPE, (byte) -1, mediaStream);
+
+		FECTransformEngine protector = new FECTransformEngine(FECTransformEngine.FecType.ULPFEC,
+			(byte) -1, Traffic.ULPFEC_PAYLOAD_TYPE, mediaStream);
+		PacketBatch media = new PacketBatch(pkts, 1);
+		Random random = new Random(0);
+		List<RawPacket> received = new ArrayList<>();
+		int burstLeft = 0;
+
+		protector.setFecRate(fecRate);
+		for (int i = 0; i < pkts.size(); i++) {
+			RawPacket[] protectedPkts = protector.transform(media.next());
+
+			for (int j = 0; j < protectedPkts.length; j++) {
+				boolean lost;
+
+				switch (lossPattern) {
+				case "random":
+					lost = random.nextDouble() < lossRate;
+					break;
+				case "burst":
+					if (burstLeft == 0 && random.nextDouble() < lossRate / BURST_LENGTH)
+						burstLeft = BURST_LENGTH;
+					lost = burstLeft > 0;
+					if (lost)
+						burstLeft--;
+					break;
+				case "periodic":
+					lost = (j == 0 && (i % fecRate) == 0);
+					break;
+				default:
+					lost = false;
+					break;
+				}
+				if (!lost)
+					received.add(protectedPkts[j]);
+			}
+		}
+		protector.close();
+
+		receivedPackets = new PacketBatch(received, batchSize);
+
+		xorSrc = new byte[payloadLength];
+		xorDst = new byte[payloadLength];
+		random.nextBytes(xorSrc);
+		random.nextBytes(xorDst);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		ulpfecReceiver.close();
+	}
+
+	/**
+	 * Receives a batch of protected packets and returns the recovered ones to the pool as the
+	 * <tt>RTPConnectorInputStream</tt> does once they have been read.
+	 */
+	@Benchmark
+	public int ulpfecReverseTransform()
+	{
+		RawPacket[] pkts = ulpfecReceiver.reverseTransform(receivedPackets.next());
+		int count = 0;
+
+		for (RawPacket pkt : pkts) {
+			if (pkt != null) {
+				count++;
+				RawPacketPool.release(pkt);
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public byte[] xorUnrolled()
+	{
+		PacketXor.xor(xorSrc, 0, xorDst, 0, payloadLength);
+		return xorDst;
+	}
+
+	@Benchmark
+	public byte[] xorBytewise()
+	{
+		PacketXor.xorBytes(xorSrc, 0, xorDst, 0, payloadLength);
+		return xorDst;
+	}
+}
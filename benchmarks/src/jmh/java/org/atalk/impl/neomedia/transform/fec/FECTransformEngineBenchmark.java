@@ -0,0 +1,149 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.fec;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the generation of ulpfec and FlexFEC-03 packets by <tt>FECTransformEngine</tt>, the
+ * recovery of lost packets from ulpfec packets and the processing of media by the FlexFEC-03
+ * receiver (<tt>FlexFec03Receiver</tt>).
+ *
+ * The ulpfec traffic is generated by <tt>FECTransformEngine</tt> itself with one media packet of
+ * every {@link #fecRate} dropped so that every ulpfec packet recovers one. The FlexFEC-03 traffic
+ * is the media alone unless an rtpdump file with FlexFEC-03 packets of payload type
+ * {@link Traffic#FLEXFEC_PAYLOAD_TYPE} is specified.
+ *
+ * @author Eng Chong Meng
+ */
+public class FECTransformEngineBenchmark extends TransformEngineBenchmark
+{
+	/**
+	 * The number of media packets protected by an ulpfec packet.
+	 */
+	@Param({ "5" })
+	public int fecRate;
+
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private FECTransformEngine flexFecReceiver;
+
+	private FECTransformEngine flexFecSender;
+
+	private PacketBatch mediaPackets;
+
+	/**
+	 * The array in which the media packets are handed to {@link #ulpfecSender} one at a time.
+	 */
+	private final RawPacket[] single = new RawPacket[1];
+
+	private PacketBatch ulpfecPackets;
+
+	private FECTransformEngine ulpfecReceiver;
+
+	private FECTransformEngine ulpfecSender;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		List<RawPacket> pkts = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+
+		BenchmarkMediaStream mediaStream = new BenchmarkMediaStream(pkts.get(0).getSSRCAsLong(),
+			Traffic.RTX_SSRC, Traffic.FEC_SSRC, null);
+
+		ulpfecSender = new FECTransformEngine(FECTransformEngine.FecType.ULPFEC, (byte) -1,
+			Traffic.ULPFEC_PAYLOAD_TYPE, mediaStream);
+		ulpfecSender.setFecRate(fecRate);
+		ulpfecReceiver = new FECTransformEngine(FECTransformEngine.FecType.ULPFEC,
+			Traffic.ULPFEC_PAYLOAD_TYPE, (byte) -1, mediaStream);
+		flexFecReceiver = new FECTransformEngine(FECTransformEngine.FecType.FLEXFEC_03,
+			Traffic.FLEXFEC_PAYLOAD_TYPE, (byte) -1, mediaStream);
+		flexFecSender = new FECTransformEngine(FECTransformEngine.FecType.FLEXFEC_03,
+			(byte) -1, Traffic.FLEXFEC_PAYLOAD_TYPE, mediaStream);
+		flexFecSender.setFecRate(fecRate);
+
+		// Protect the media with a sender of its own so that ulpfecSender starts afresh.
+		FECTransformEngine protector = new FECTransformEngine(FECTransformEngine.FecType.ULPFEC,
+			(byte) -1, Traffic.ULPFEC_PAYLOAD_TYPE, mediaStream);
+		PacketBatch media = new PacketBatch(pkts, 1);
+		List<RawPacket> ulpfecPkts = new ArrayList<>();
+
+		protector.setFecRate(fecRate);
+		for (int i = 0; i < pkts.size(); i++) {
+			RawPacket[] protectedPkts = protector.transform(media.next());
+
+			for (int j = 0; j < protectedPkts.length; j++) {
+				// Lose the first media packet of every group protected by an ulpfec packet.
+				if (j == 0 && (i % fecRate) == 0)
+					continue;
+				ulpfecPkts.add(protectedPkts[j]);
+			}
+		}
+		protector.close();
+
+		mediaPackets = new PacketBatch(pkts, batchSize);
+		ulpfecPackets = new PacketBatch(ulpfecPkts, batchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		ulpfecSender.close();
+		ulpfecReceiver.close();
+		flexFecReceiver.close();
+		flexFecSender.close();
+	}
+
+	/**
+	 * Protects a batch of media packets with ulpfec. The ulpfec sender processes the first packet
+	 * of the array it is given only (as the RTP stack hands it a single packet at a time) so the
+	 * packets of the batch are handed to it one at a time.
+	 */
+	@Benchmark
+	public void ulpfecTransform(Blackhole blackhole)
+	{
+		for (RawPacket pkt : mediaPackets.next()) {
+			single[0] = pkt;
+			blackhole.consume(ulpfecSender.transform(single));
+		}
+	}
+
+	/**
+	 * Protects a batch of media packets with FlexFEC-03, one packet at a time as
+	 * {@link #ulpfecTransform(Blackhole)} does. The FlexFEC-03 packets are sent with
+	 * {@link Traffic#FEC_SSRC}, which <tt>BenchmarkMediaStream</tt> pairs with the media SSRC.
+	 */
+	@Benchmark
+	public void flexFec03Transform(Blackhole blackhole)
+	{
+		for (RawPacket pkt : mediaPackets.next()) {
+			single[0] = pkt;
+			blackhole.consume(flexFecSender.transform(single));
+		}
+	}
+
+	@Benchmark
+	public RawPacket[] ulpfecReverseTransform()
+	{
+		return ulpfecReceiver.reverseTransform(ulpfecPackets.next());
+	}
+
+	@Benchmark
+	public RawPacket[] flexFec03ReverseTransform()
+	{
+		return flexFecReceiver.reverseTransform(mediaPackets.next());
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.pt;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Benchmarks the overriding of the payload type of outgoing RTP packets by
+ * <tt>PayloadTypeTransformEngine</tt>.
+ *
+ * @author Eng Chong Meng
+ */
+public class PayloadTypeTransformEngineBenchmark extends TransformEngineBenchmark
+{
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PayloadTypeTransformEngine engine;
+
+	private PacketBatch packets;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		List<RawPacket> pkts = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+		byte payloadType = pkts.get(0).getPayloadType();
+
+		engine = new PayloadTypeTransformEngine();
+		engine.addPTMappingOverride(payloadType, (byte) (payloadType ^ 1));
+		packets = new PacketBatch(pkts, batchSize);
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return engine.transform(packets.next());
+	}
+}
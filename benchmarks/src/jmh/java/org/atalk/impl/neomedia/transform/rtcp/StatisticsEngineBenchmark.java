@@ -0,0 +1,54 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.rtcp;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks the RTCP statistics which <tt>StatisticsEngine</tt> gathers from the RTCP packets
+ * sent and received by a stream.
+ *
+ * @author Eng Chong Meng
+ */
+public class StatisticsEngineBenchmark extends TransformEngineBenchmark
+{
+	private StatisticsEngine engine;
+
+	private PacketBatch packets;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+
+		engine = new StatisticsEngine(new BenchmarkMediaStream(Traffic.SSRC, Traffic.RTX_SSRC,
+			Traffic.FEC_SSRC, null));
+		packets = new PacketBatch(Traffic.rtcp(rtpdump, TEMPLATE_COUNT), batchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		engine.close();
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return engine.transform(packets.next());
+	}
+
+	@Benchmark
+	public RawPacket[] reverseTransform()
+	{
+		return engine.reverseTransform(packets.next());
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.engines.AESFastEngine;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Benchmarks the cryptographic primitives SRTP is built upon with the implementations of
+ * BouncyCastle, of the <tt>java.security.Provider</tt>s of the JVM and of OpenSSL: the AES block
+ * cipher, the SHA-1 digest and HMAC-SHA1. Each invocation processes {@link #DATA_LENGTH} bytes,
+ * i.e. about the payload of a video packet.
+ *
+ * The OpenSSL HMAC-SHA1 needs the native OpenSSL wrapper of aTalk which a plain JVM does not have
+ * so it is only benchmarked on request: <tt>-p macProvider=OpenSSL</tt>. The protection of whole
+ * packets by <tt>SRTPTransformer</tt>, per packet and per batch and with AES-CM and AES-GCM, is
+ * benchmarked by {@link SRTPTransformerBenchmark}.
+ *
+ * @author Lyubomir Marinov
+ * @author Eng Chong Meng
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark
+{
+	/**
+	 * The number of bytes processed by a single invocation of a benchmark method, a multiple of
+	 * the block size of AES and of the block length of SHA-1.
+	 */
+	private static final int DATA_LENGTH = 1024;
+
+	private final byte[] in = new byte[DATA_LENGTH];
+
+	private final byte[] out = new byte[DATA_LENGTH];
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		new Random(0).nextBytes(in);
+	}
+
+	/**
+	 * The AES block cipher of a specific implementation.
+	 */
+	@State(Scope.Thread)
+	public static class BlockCipherState
+	{
+		@Param({ "BouncyCastle", "SunJCE" })
+		public String cipherProvider;
+
+		BlockCipher cipher;
+
+		@Setup(Level.Trial)
+		public void setUp()
+				throws GeneralSecurityException
+		{
+			cipher = "SunJCE".equals(cipherProvider)
+				? new BlockCipherAdapter(Cipher.getInstance("AES_128/ECB/NoPadding",
+					Security.getProvider("SunJCE")))
+				: new AESFastEngine();
+			cipher.init(true, new KeyParameter(new byte[16]));
+		}
+	}
+
+	/**
+	 * The SHA-1 digest of a specific implementation.
+	 */
+	@State(Scope.Thread)
+	public static class DigestState
+	{
+		@Param({ "BouncyCastle", "SUN" })
+		public String digestProvider;
+
+		SHA1Digest digest;
+
+		MessageDigest messageDigest;
+
+		@Setup(Level.Trial)
+		public void setUp()
+				throws GeneralSecurityException
+		{
+			if ("BouncyCastle".equals(digestProvider))
+				digest = new SHA1Digest();
+			else
+				messageDigest = MessageDigest.getInstance("SHA-1", digestProvider);
+		}
+	}
+
+	/**
+	 * The HMAC-SHA1 of a specific implementation.
+	 */
+	@State(Scope.Thread)
+	public static class MacState
+	{
+		@Param({ "BouncyCastle", "SunJCE" })
+		public String macProvider;
+
+		Mac mac;
+
+		javax.crypto.Mac jceMac;
+
+		@Setup(Level.Trial)
+		public void setUp()
+				throws GeneralSecurityException
+		{
+			byte[] key = new byte[20];
+
+			if ("SunJCE".equals(macProvider)) {
+				jceMac = javax.crypto.Mac.getInstance("HmacSHA1", macProvider);
+				jceMac.init(new SecretKeySpec(key, "HmacSHA1"));
+			}
+			else {
+				mac = "OpenSSL".equals(macProvider)
+					? new OpenSSLHMAC(OpenSSLHMAC.SHA1) : new HMac(new SHA1Digest());
+				mac.init(new KeyParameter(key));
+			}
+		}
+	}
+
+	@Benchmark
+	public byte[] blockCipher(BlockCipherState state)
+	{
+		BlockCipher cipher = state.cipher;
+		int blockSize = cipher.getBlockSize();
+
+		for (int off = 0; off < DATA_LENGTH; off += blockSize)
+			cipher.processBlock(in, off, out, off);
+		return out;
+	}
+
+	@Benchmark
+	public byte[] digest(DigestState state)
+			throws DigestException
+	{
+		if (state.digest != null) {
+			state.digest.update(in, 0, DATA_LENGTH);
+			state.digest.doFinal(out, 0);
+		}
+		else {
+			state.messageDigest.update(in, 0, DATA_LENGTH);
+			state.messageDigest.digest(out, 0, out.length);
+		}
+		return out;
+	}
+
+	@Benchmark
+	public byte[] hmac(MacState state)
+			throws GeneralSecurityException
+	{
+		if (state.mac != null) {
+			state.mac.update(in, 0, DATA_LENGTH);
+			state.mac.doFinal(out, 0);
+		}
+		else {
+			state.jceMac.update(in, 0, DATA_LENGTH);
+			state.jceMac.doFinal(out, 0);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.srtp;
+
+import org.atalk.impl.neomedia.transform.*;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.RawPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Benchmarks the protection and the unprotection of RTP packets by <tt>SRTPTransformer</tt> with
+ * the SRTP protection profiles of SDES and DTLS-SRTP.
+ *
+ * The <tt>perPacket</tt> benchmarks hand the packets of a batch to the transformer one at a time
+ * the way the receive loop used to, so that they compare with the batched ones.
+ *
+ * The replay protection is turned off so that the same packets may be protected and unprotected
+ * over and over again; it costs a comparison of indices per packet otherwise.
+ *
+ * @author Eng Chong Meng
+ */
+public class SRTPTransformerBenchmark extends TransformEngineBenchmark
+{
+	@Param({ "AES_CM_128_HMAC_SHA1_80", "AEAD_AES_128_GCM", "AEAD_AES_256_GCM" })
+	public String profile;
+
+	@Param({ "1200" })
+	public int payloadLength;
+
+	private PacketBatch plainPackets;
+
+	private PacketBatch protectedPackets;
+
+	private SRTPTransformer receiver;
+
+	private SRTPTransformer sender;
+
+	@Setup(Level.Trial)
+	public void setUp()
+			throws IOException
+	{
+		Traffic.startLibJitsi();
+		LibJitsi.getConfigurationService().setProperty(SRTPCryptoContext.CHECK_REPLAY_PNAME,
+			Boolean.FALSE.toString());
+
+		SRTPPolicy policy = createPolicy(profile);
+		Random random = new Random(0);
+		byte[] key = new byte[policy.getEncKeyLength()];
+		byte[] salt = new byte[policy.getSaltKeyLength()];
+
+		random.nextBytes(key);
+		random.nextBytes(salt);
+		sender = new SRTPTransformer(new SRTPContextFactory(true, key, salt, policy, policy));
+		receiver = new SRTPTransformer(new SRTPContextFactory(false, key, salt, policy, policy));
+
+		List<RawPacket> pkts = Traffic.rtp(rtpdump, TEMPLATE_COUNT, payloadLength);
+		PacketBatch protector = new PacketBatch(pkts, 1);
+		List<RawPacket> protectedPkts = new ArrayList<>(pkts.size());
+
+		for (int i = 0; i < pkts.size(); i++)
+			protectedPkts.add(sender.transform(protector.next())[0]);
+
+		plainPackets = new PacketBatch(pkts, batchSize);
+		protectedPackets = new PacketBatch(protectedPkts, batchSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		sender.close();
+		receiver.close();
+	}
+
+	@Benchmark
+	public RawPacket[] transform()
+	{
+		return sender.transform(plainPackets.next());
+	}
+
+	@Benchmark
+	public RawPacket[] reverseTransform()
+	{
+		return receiver.reverseTransform(protectedPackets.next());
+	}
+
+	@Benchmark
+	public RawPacket[] transformPerPacket()
+	{
+		RawPacket[] pkts = plainPackets.next();
+
+		for (int i = 0; i < pkts.length; i++)
+			pkts[i] = sender.transform(pkts[i]);
+		return pkts;
+	}
+
+	@Benchmark
+	public RawPacket[] reverseTransformPerPacket()
+	{
+		RawPacket[] pkts = protectedPackets.next();
+
+		for (int i = 0; i < pkts.length; i++)
+			pkts[i] = receiver.reverseTransform(pkts[i]);
+		return pkts;
+	}
+
+	/**
+	 * Creates the <tt>SRTPPolicy</tt> of an SRTP protection profile.
+	 *
+	 * @param profile
+	 * 		the name of the SRTP protection profile
+	 * @return the <tt>SRTPPolicy</tt> of <tt>profile</tt>
+	 */
+	private static SRTPPolicy createPolicy(String profile)
+	{
+		if ("AES_CM_128_HMAC_SHA1_80".equals(profile)) {
+			return new SRTPPolicy(SRTPPolicy.AESCM_ENCRYPTION, 16,
+				SRTPPolicy.HMACSHA1_AUTHENTICATION, 20, 10, 14);
+		}
+		else if ("AEAD_AES_128_GCM".equals(profile)) {
+			return new SRTPPolicy(SRTPPolicy.AESGCM_ENCRYPTION, 16,
+				SRTPPolicy.NULL_AUTHENTICATION, 0, 16, 12);
+		}
+		else if ("AEAD_AES_256_GCM".equals(profile)) {
+			return new SRTPPolicy(SRTPPolicy.AESGCM_ENCRYPTION, 32,
+				SRTPPolicy.NULL_AUTHENTICATION, 0, 16, 12);
+		}
+		throw new IllegalArgumentException(profile);
+	}
+}